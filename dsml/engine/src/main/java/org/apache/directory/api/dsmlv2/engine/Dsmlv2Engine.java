@@ -28,11 +28,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 
 import org.apache.commons.codec.Charsets;
 import org.apache.directory.api.dsmlv2.DsmlDecorator;
 import org.apache.directory.api.dsmlv2.Dsmlv2Parser;
+import org.apache.directory.api.dsmlv2.Dsmlv2ResponseWriter;
 import org.apache.directory.api.dsmlv2.ParserUtils;
 import org.apache.directory.api.dsmlv2.request.BatchRequestDsml;
 import org.apache.directory.api.dsmlv2.request.BatchRequestDsml.OnError;
@@ -127,6 +129,9 @@ public class Dsmlv2Engine
     /** flag to indicate to generate the response in a SOAP envelope */
     protected boolean generateSoapResp = false;
 
+    /** The writer streaming the responses */
+    private Dsmlv2ResponseWriter responseWriter;
+
     /** A logger for this class */
     private static final Logger LOG = LoggerFactory.getLogger( Dsmlv2Engine.class );
     
@@ -539,9 +544,33 @@ public class Dsmlv2Engine
     {
         if ( respWriter != null )
         {
-            Element xml = respDsml.toDsml( null );
-            xml.write( respWriter );
+            if ( respDsml instanceof Response )
+            {
+                getResponseWriter( respWriter ).write( ( Response ) respDsml );
+            }
+            else
+            {
+                Element xml = respDsml.toDsml( null );
+                xml.write( respWriter );
+            }
+        }
+    }
+
+
+    /**
+     * Gets the writer streaming the responses to the given writer
+     * 
+     * @param respWriter The writer used to write the responses
+     * @return The response writer
+     */
+    private Dsmlv2ResponseWriter getResponseWriter( Writer respWriter )
+    {
+        if ( ( responseWriter == null ) || ( responseWriter.getWriter() != respWriter ) )
+        {
+            responseWriter = new Dsmlv2ResponseWriter( connection.getCodecService(), respWriter );
         }
+
+        return responseWriter;
     }
 
 
@@ -666,26 +695,23 @@ public class Dsmlv2Engine
 
                 if ( respWriter != null )
                 {
-                    StringBuilder sb = new StringBuilder();
-                    sb.append( "<searchResponse" );
-
-                    if ( request.getDecorated().getMessageId() > 0 )
-                    {
-                        sb.append( " requestID=\"" );
-                        sb.append( request.getDecorated().getMessageId() );
-                        sb.append( '"' );
-                    }
-
-                    sb.append( '>' );
-
-                    respWriter.write( sb.toString() );
+                    getResponseWriter( respWriter ).writeSearchResponseStart( request.getDecorated().getMessageId() );
                 }
 
                 while ( searchResponses.next() )
                 {
                     Response searchResponse = searchResponses.get();
 
-                    if ( searchResponse.getType() == MessageTypeEnum.SEARCH_RESULT_ENTRY )
+                    if ( respWriter != null )
+                    {
+                        if ( ( searchResponse.getType() == MessageTypeEnum.SEARCH_RESULT_ENTRY )
+                            || ( searchResponse.getType() == MessageTypeEnum.SEARCH_RESULT_REFERENCE ) )
+                        {
+                            // Streamed, no DSML decorator is needed
+                            getResponseWriter( respWriter ).write( searchResponse );
+                        }
+                    }
+                    else if ( searchResponse.getType() == MessageTypeEnum.SEARCH_RESULT_ENTRY )
                     {
                         SearchResultEntry searchResultEntry = ( SearchResultEntry ) searchResponse;
 
@@ -693,15 +719,7 @@ public class Dsmlv2Engine
                             connection.getCodecService(), searchResultEntry );
                         searchResponseDsml = new SearchResponseDsml( connection.getCodecService(),
                             searchResultEntryDsml );
-
-                        if ( respWriter != null )
-                        {
-                            writeResponse( respWriter, searchResultEntryDsml );
-                        }
-                        else
-                        {
-                            searchResponseDsml.addResponse( searchResultEntryDsml );
-                        }
+                        searchResponseDsml.addResponse( searchResultEntryDsml );
                     }
                     else if ( searchResponse.getType() == MessageTypeEnum.SEARCH_RESULT_REFERENCE )
                     {
@@ -711,15 +729,7 @@ public class Dsmlv2Engine
                             connection.getCodecService(), searchResultReference );
                         searchResponseDsml = new SearchResponseDsml( connection.getCodecService(),
                             searchResultReferenceDsml );
-
-                        if ( respWriter != null )
-                        {
-                            writeResponse( respWriter, searchResultReferenceDsml );
-                        }
-                        else
-                        {
-                            searchResponseDsml.addResponse( searchResultReferenceDsml );
-                        }
+                        searchResponseDsml.addResponse( searchResultReferenceDsml );
                     }
                 }
 
@@ -729,15 +739,14 @@ public class Dsmlv2Engine
                 {
                     resultCode = srDone.getLdapResult().getResultCode();
 
-                    SearchResultDoneDsml srdDsml = new SearchResultDoneDsml( connection.getCodecService(), srDone );
-
                     if ( respWriter != null )
                     {
-                        writeResponse( respWriter, srdDsml );
-                        respWriter.write( "</searchResponse>" );
+                        getResponseWriter( respWriter ).write( srDone );
+                        getResponseWriter( respWriter ).writeSearchResponseEnd();
                     }
                     else
                     {
+                        SearchResultDoneDsml srdDsml = new SearchResultDoneDsml( connection.getCodecService(), srDone );
                         searchResponseDsml.addResponse( srdDsml );
                         batchResponse.addResponse( searchResponseDsml );
                     }
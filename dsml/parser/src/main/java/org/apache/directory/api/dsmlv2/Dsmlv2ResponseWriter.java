@@ -0,0 +1,710 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.dsmlv2;
+
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.dsmlv2.response.ErrorResponse;
+import org.apache.directory.api.dsmlv2.response.ExtendedResponseDsml;
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.codec.api.ControlFactory;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.message.Control;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.Referral;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultReference;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * Writes DSMLv2 responses to a Writer as they come, without building a dom4j tree for
+ * each response as the toDsml() methods of the DSML decorators do. The XML is written
+ * element by element, the texts and attribute values being escaped and the binary values
+ * base64 encoded in place, so that the memory used by a response does not depend on its
+ * size. Here is an example :
+ * <pre>
+ * Dsmlv2ResponseWriter responseWriter = new Dsmlv2ResponseWriter( codec, writer );
+ *
+ * responseWriter.writeBatchResponseStart( 0 );
+ * responseWriter.writeSearchResponseStart( searchRequest.getMessageId() );
+ *
+ * while ( cursor.next() )
+ * {
+ *     responseWriter.write( cursor.get() );
+ * }
+ *
+ * responseWriter.write( cursor.getSearchResultDone() );
+ * responseWriter.writeSearchResponseEnd();
+ * responseWriter.writeBatchResponseEnd();
+ * responseWriter.flush();
+ * </pre>
+ * The values which are not human readable, or which contain chars that can't be written
+ * in a XML document, are written base64 encoded, with the xsi:type attribute set to
+ * xsd:base64Binary. The xsi and xsd namespaces are expected to be declared by the
+ * batchResponse element.
+ * <p>
+ * A Dsmlv2ResponseWriter is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class Dsmlv2ResponseWriter implements Flushable
+{
+    /** The base64 alphabet */
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+        .toCharArray();
+
+    /** The attribute set on the base64 encoded values */
+    private static final String XSI_TYPE_BASE64 = " " + ParserUtils.XSI + ":" + DsmlLiterals.TYPE + "=\""
+        + ParserUtils.XSD_COLON + ParserUtils.BASE64BINARY + "\"";
+
+    /** The LDAP codec service, used to encode the controls */
+    private final LdapApiService codec;
+
+    /** The Writer */
+    private final Writer writer;
+
+    /** The buffer the base64 chars are encoded in */
+    private final char[] chars = new char[1024];
+
+    /** The buffer the control values are encoded in */
+    private final Asn1Buffer asn1Buffer = new Asn1Buffer();
+
+
+    /**
+     * Creates a new Dsmlv2ResponseWriter.
+     *
+     * @param codec The LDAP codec service, used to encode the controls
+     * @param writer The Writer the responses are written to
+     */
+    public Dsmlv2ResponseWriter( LdapApiService codec, Writer writer )
+    {
+        this.codec = codec;
+        this.writer = writer;
+    }
+
+
+    /**
+     * @return The Writer the responses are written to
+     */
+    public Writer getWriter()
+    {
+        return writer;
+    }
+
+
+    /**
+     * Writes the batchResponse start tag, with the DSML, xsd and xsi namespaces declarations.
+     *
+     * @param requestID The batch request ID, not written if 0
+     * @throws IOException If the tag can't be written
+     */
+    public void writeBatchResponseStart( int requestID ) throws IOException
+    {
+        writer.write( '<' );
+        writer.write( DsmlLiterals.BATCH_RESPONSE );
+        writeAttribute( "xmlns", ParserUtils.DSML_NAMESPACE.getURI() );
+        writeAttribute( "xmlns:" + ParserUtils.XSD, ParserUtils.XML_SCHEMA_URI );
+        writeAttribute( "xmlns:" + ParserUtils.XSI, ParserUtils.XML_SCHEMA_INSTANCE_URI );
+        writeRequestID( requestID );
+        writer.write( '>' );
+    }
+
+
+    /**
+     * Writes the batchResponse end tag.
+     *
+     * @throws IOException If the tag can't be written
+     */
+    public void writeBatchResponseEnd() throws IOException
+    {
+        writeEndTag( DsmlLiterals.BATCH_RESPONSE );
+    }
+
+
+    /**
+     * Writes the searchResponse start tag. The search results and the searchResultDone are
+     * then written with {@link #write(Response)}.
+     *
+     * @param requestID The search request ID, not written if 0
+     * @throws IOException If the tag can't be written
+     */
+    public void writeSearchResponseStart( int requestID ) throws IOException
+    {
+        writer.write( '<' );
+        writer.write( DsmlLiterals.SEARCH_RESPONSE );
+        writeRequestID( requestID );
+        writer.write( '>' );
+    }
+
+
+    /**
+     * Writes the searchResponse end tag.
+     *
+     * @throws IOException If the tag can't be written
+     */
+    public void writeSearchResponseEnd() throws IOException
+    {
+        writeEndTag( DsmlLiterals.SEARCH_RESPONSE );
+    }
+
+
+    /**
+     * Writes a LDAP response, or the response a DSML decorator decorates. A SearchResultEntry,
+     * a SearchResultReference and a SearchResultDone have to be written between
+     * {@link #writeSearchResponseStart(int)} and {@link #writeSearchResponseEnd()}.
+     *
+     * @param response The response
+     * @throws IOException If the response can't be written
+     */
+    public void write( Response response ) throws IOException
+    {
+        if ( response instanceof ErrorResponse )
+        {
+            writeErrorResponse( ( ErrorResponse ) response );
+
+            return;
+        }
+
+        if ( response instanceof ExtendedResponseDsml )
+        {
+            ExtendedResponseDsml extendedResponse = ( ExtendedResponseDsml ) response;
+
+            writeExtendedResponse( extendedResponse.getDecorated(), extendedResponse.getResponseValue() );
+
+            return;
+        }
+
+        if ( response instanceof DsmlDecorator )
+        {
+            // Written as the decorated response, as the toDsml() methods do
+            Object decorated = ( ( DsmlDecorator<?> ) response ).getDecorated();
+
+            if ( decorated instanceof Response )
+            {
+                response = ( Response ) decorated;
+            }
+        }
+
+        switch ( response.getType() )
+        {
+            case ADD_RESPONSE:
+                writeResultResponse( DsmlLiterals.ADD_RESPONSE, ( ResultResponse ) response );
+                break;
+
+            case BIND_RESPONSE:
+                writeResultResponse( DsmlLiterals.AUTH_RESPONSE, ( ResultResponse ) response );
+                break;
+
+            case COMPARE_RESPONSE:
+                writeResultResponse( DsmlLiterals.COMPARE_RESPONSE, ( ResultResponse ) response );
+                break;
+
+            case DEL_RESPONSE:
+                writeResultResponse( DsmlLiterals.DEL_RESPONSE, ( ResultResponse ) response );
+                break;
+
+            case EXTENDED_RESPONSE:
+                writeExtendedResponse( ( ExtendedResponse ) response, null );
+                break;
+
+            case MODIFY_RESPONSE:
+                writeResultResponse( DsmlLiterals.MODIFY_RESPONSE, ( ResultResponse ) response );
+                break;
+
+            case MODIFYDN_RESPONSE:
+                writeResultResponse( DsmlLiterals.MOD_DN_RESPONSE, ( ResultResponse ) response );
+                break;
+
+            case SEARCH_RESULT_DONE:
+                writeResultResponse( DsmlLiterals.SEARCH_RESULT_DONE, ( ResultResponse ) response );
+                break;
+
+            case SEARCH_RESULT_ENTRY:
+                writeSearchResultEntry( ( SearchResultEntry ) response );
+                break;
+
+            case SEARCH_RESULT_REFERENCE:
+                writeSearchResultReference( ( SearchResultReference ) response );
+                break;
+
+            default:
+                throw new IllegalArgumentException( I18n.err( I18n.ERR_03046_UNEXPECTED_RESPONSE_TYPE,
+                    response.getType() ) );
+        }
+    }
+
+
+    /**
+     * Flushes the Writer.
+     *
+     * @throws IOException If the Writer can't be flushed
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        writer.flush();
+    }
+
+
+    private void writeSearchResultEntry( SearchResultEntry searchResultEntry ) throws IOException
+    {
+        writer.write( '<' );
+        writer.write( DsmlLiterals.SEARCH_RESULT_ENTRY );
+        writeAttribute( DsmlLiterals.DN, searchResultEntry.getObjectName().getName() );
+
+        boolean isEmpty = true;
+
+        for ( Attribute attribute : searchResultEntry.getEntry() )
+        {
+            if ( isEmpty )
+            {
+                writer.write( '>' );
+                isEmpty = false;
+            }
+
+            writer.write( '<' );
+            writer.write( DsmlLiterals.ATTR );
+            writeAttribute( DsmlLiterals.NAME, attribute.getUpId() );
+
+            if ( attribute.size() == 0 )
+            {
+                writer.write( "/>" );
+
+                continue;
+            }
+
+            writer.write( '>' );
+
+            for ( Value value : attribute )
+            {
+                writeValue( value );
+            }
+
+            writeEndTag( DsmlLiterals.ATTR );
+        }
+
+        if ( isEmpty )
+        {
+            writer.write( "/>" );
+        }
+        else
+        {
+            writeEndTag( DsmlLiterals.SEARCH_RESULT_ENTRY );
+        }
+    }
+
+
+    private void writeValue( Value value ) throws IOException
+    {
+        writer.write( '<' );
+        writer.write( DsmlLiterals.VALUE );
+
+        if ( value.isHumanReadable() && isXmlSafe( value.getString() ) )
+        {
+            writer.write( '>' );
+            writeText( value.getString() );
+        }
+        else
+        {
+            writer.write( XSI_TYPE_BASE64 );
+            writer.write( '>' );
+            writeBase64( value.getBytes() );
+        }
+
+        writeEndTag( DsmlLiterals.VALUE );
+    }
+
+
+    private void writeSearchResultReference( SearchResultReference searchResultReference ) throws IOException
+    {
+        Collection<String> urls = searchResultReference.getReferral().getLdapUrls();
+
+        writer.write( '<' );
+        writer.write( DsmlLiterals.SEARCH_RESULT_REFERENCE );
+
+        if ( urls.isEmpty() )
+        {
+            writer.write( "/>" );
+
+            return;
+        }
+
+        writer.write( '>' );
+
+        for ( String url : urls )
+        {
+            writeTextElement( DsmlLiterals.REF, url );
+        }
+
+        writeEndTag( DsmlLiterals.SEARCH_RESULT_REFERENCE );
+    }
+
+
+    private void writeResultResponse( String tag, ResultResponse response ) throws IOException
+    {
+        writeLdapResult( tag, response );
+        writeEndTag( tag );
+    }
+
+
+    private void writeExtendedResponse( ExtendedResponse response, byte[] responseValue ) throws IOException
+    {
+        writeLdapResult( DsmlLiterals.EXTENDED_RESPONSE, response );
+
+        String responseName = response.getResponseName();
+
+        if ( responseName != null )
+        {
+            writeTextElement( DsmlLiterals.RESPONSE_NAME, responseName );
+        }
+
+        if ( responseValue != null )
+        {
+            writer.write( '<' );
+            writer.write( DsmlLiterals.RESPONSE );
+            writer.write( XSI_TYPE_BASE64 );
+            writer.write( '>' );
+            writeBase64( responseValue );
+            writeEndTag( DsmlLiterals.RESPONSE );
+        }
+
+        writeEndTag( DsmlLiterals.EXTENDED_RESPONSE );
+    }
+
+
+    /**
+     * Writes the start tag of a response and its LDAP result, as LdapResultDsml does.
+     */
+    private void writeLdapResult( String tag, ResultResponse response ) throws IOException
+    {
+        LdapResult result = response.getLdapResult();
+
+        writer.write( '<' );
+        writer.write( tag );
+        writeRequestID( response.getMessageId() );
+
+        Dn matchedDn = result.getMatchedDn();
+
+        if ( !Dn.isNullOrEmpty( matchedDn ) )
+        {
+            writeAttribute( DsmlLiterals.MATCHED_DN, matchedDn.getName() );
+        }
+
+        writer.write( '>' );
+
+        writeControls( response.getControls() );
+
+        writer.write( '<' );
+        writer.write( DsmlLiterals.RESULT_CODE );
+        writeAttribute( DsmlLiterals.CODE, Integer.toString( result.getResultCode().getResultCode() ) );
+        writeAttribute( DsmlLiterals.DESCR, result.getResultCode().getMessage() );
+        writer.write( "/>" );
+
+        String errorMessage = result.getDiagnosticMessage();
+
+        if ( !Strings.isEmpty( errorMessage ) )
+        {
+            writeTextElement( DsmlLiterals.ERROR_MESSAGE, errorMessage );
+        }
+
+        Referral referral = result.getReferral();
+
+        if ( ( referral != null ) && ( referral.getLdapUrls() != null ) )
+        {
+            for ( String ldapUrl : referral.getLdapUrls() )
+            {
+                writeTextElement( DsmlLiterals.REFERRAL, ldapUrl );
+            }
+        }
+    }
+
+
+    private void writeControls( Map<String, Control> controls ) throws IOException
+    {
+        if ( controls == null )
+        {
+            return;
+        }
+
+        for ( Control control : controls.values() )
+        {
+            writer.write( '<' );
+            writer.write( DsmlLiterals.CONTROL );
+
+            if ( control.getOid() != null )
+            {
+                writeAttribute( DsmlLiterals.TYPE, control.getOid() );
+            }
+
+            if ( control.isCritical() )
+            {
+                writeAttribute( DsmlLiterals.CRITICALITY, DsmlLiterals.TRUE );
+            }
+
+            ControlFactory<? extends Control> factory = codec.getResponseControlFactories().get( control.getOid() );
+
+            if ( factory == null )
+            {
+                writer.write( "/>" );
+
+                continue;
+            }
+
+            writer.write( '>' );
+
+            asn1Buffer.clear();
+            factory.encodeValue( asn1Buffer, control );
+
+            writer.write( '<' );
+            writer.write( DsmlLiterals.CONTROL_VALUE );
+            writer.write( XSI_TYPE_BASE64 );
+            writer.write( '>' );
+            writeBase64( asn1Buffer.getBytes().array() );
+            writeEndTag( DsmlLiterals.CONTROL_VALUE );
+
+            writeEndTag( DsmlLiterals.CONTROL );
+        }
+    }
+
+
+    private void writeErrorResponse( ErrorResponse errorResponse ) throws IOException
+    {
+        writer.write( '<' );
+        writer.write( DsmlLiterals.ERROR_RESPONSE );
+        writeRequestID( errorResponse.getRequestID() );
+        writeAttribute( DsmlLiterals.TYPE, errorResponse.getTypeDescr( errorResponse.getErrorType() ) );
+
+        if ( Strings.isNotEmpty( errorResponse.getMessage() ) )
+        {
+            writer.write( '>' );
+            writeTextElement( DsmlLiterals.MESSAGE, errorResponse.getMessage() );
+            writeEndTag( DsmlLiterals.ERROR_RESPONSE );
+        }
+        else
+        {
+            writer.write( "/>" );
+        }
+    }
+
+
+    private void writeRequestID( int requestID ) throws IOException
+    {
+        if ( requestID > 0 )
+        {
+            writeAttribute( DsmlLiterals.REQUEST_ID, Integer.toString( requestID ) );
+        }
+    }
+
+
+    private void writeTextElement( String tag, String text ) throws IOException
+    {
+        writer.write( '<' );
+        writer.write( tag );
+        writer.write( '>' );
+        writeText( text );
+        writeEndTag( tag );
+    }
+
+
+    private void writeEndTag( String tag ) throws IOException
+    {
+        writer.write( "</" );
+        writer.write( tag );
+        writer.write( '>' );
+    }
+
+
+    private void writeAttribute( String name, String value ) throws IOException
+    {
+        writer.write( ' ' );
+        writer.write( name );
+        writer.write( "=\"" );
+        writeEscaped( value, true );
+        writer.write( '"' );
+    }
+
+
+    private void writeText( String text ) throws IOException
+    {
+        writeEscaped( text, false );
+    }
+
+
+    /**
+     * Writes a String, replacing the chars which can't be written as is with entities. The
+     * chars which need not be escaped are written by runs, with no copy.
+     */
+    private void writeEscaped( String str, boolean isAttribute ) throws IOException
+    {
+        int length = str.length();
+        int start = 0;
+
+        for ( int pos = 0; pos < length; pos++ )
+        {
+            char c = str.charAt( pos );
+            String entity;
+
+            switch ( c )
+            {
+                case '<':
+                    entity = "&lt;";
+                    break;
+
+                case '>':
+                    entity = "&gt;";
+                    break;
+
+                case '&':
+                    entity = "&amp;";
+                    break;
+
+                case '"':
+                    entity = isAttribute ? "&quot;" : null;
+                    break;
+
+                case '\r':
+                    // Would be normalized by the parser otherwise
+                    entity = "&#13;";
+                    break;
+
+                case '\t':
+                    entity = isAttribute ? "&#9;" : null;
+                    break;
+
+                case '\n':
+                    entity = isAttribute ? "&#10;" : null;
+                    break;
+
+                default:
+                    entity = null;
+                    break;
+            }
+
+            if ( entity != null )
+            {
+                writer.write( str, start, pos - start );
+                writer.write( entity );
+                start = pos + 1;
+            }
+        }
+
+        writer.write( str, start, length - start );
+    }
+
+
+    /**
+     * Tells if a String only contains chars allowed in a XML 1.0 document.
+     */
+    private static boolean isXmlSafe( String str )
+    {
+        int length = str.length();
+
+        for ( int pos = 0; pos < length; pos++ )
+        {
+            char c = str.charAt( pos );
+
+            if ( c < 0x20 )
+            {
+                if ( ( c != '\t' ) && ( c != '\n' ) && ( c != '\r' ) )
+                {
+                    return false;
+                }
+            }
+            else if ( Character.isHighSurrogate( c ) )
+            {
+                if ( ( pos + 1 == length ) || !Character.isLowSurrogate( str.charAt( pos + 1 ) ) )
+                {
+                    return false;
+                }
+
+                pos++;
+            }
+            else if ( Character.isLowSurrogate( c ) || ( c == 0xFFFE ) || ( c == 0xFFFF ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Writes bytes base64 encoded, encoding them in the chars buffer.
+     */
+    private void writeBase64( byte[] bytes ) throws IOException
+    {
+        int length = bytes.length;
+        int pos = 0;
+        int charPos = 0;
+
+        while ( length - pos >= 3 )
+        {
+            if ( charPos == chars.length )
+            {
+                writer.write( chars, 0, charPos );
+                charPos = 0;
+            }
+
+            int bits = ( ( bytes[pos] & 0xFF ) << 16 ) | ( ( bytes[pos + 1] & 0xFF ) << 8 ) | ( bytes[pos + 2] & 0xFF );
+            chars[charPos++] = BASE64[bits >>> 18];
+            chars[charPos++] = BASE64[( bits >>> 12 ) & 0x3F];
+            chars[charPos++] = BASE64[( bits >>> 6 ) & 0x3F];
+            chars[charPos++] = BASE64[bits & 0x3F];
+            pos += 3;
+        }
+
+        if ( pos < length )
+        {
+            if ( charPos == chars.length )
+            {
+                writer.write( chars, 0, charPos );
+                charPos = 0;
+            }
+
+            int bits = ( bytes[pos] & 0xFF ) << 16;
+
+            if ( pos + 1 < length )
+            {
+                bits |= ( bytes[pos + 1] & 0xFF ) << 8;
+            }
+
+            chars[charPos++] = BASE64[bits >>> 18];
+            chars[charPos++] = BASE64[( bits >>> 12 ) & 0x3F];
+            chars[charPos++] = ( pos + 1 < length ) ? BASE64[( bits >>> 6 ) & 0x3F] : '=';
+            chars[charPos++] = '=';
+        }
+
+        writer.write( chars, 0, charPos );
+    }
+}
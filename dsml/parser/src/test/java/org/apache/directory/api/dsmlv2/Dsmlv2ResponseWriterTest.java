@@ -0,0 +1,441 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.dsmlv2;
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import org.apache.directory.api.dsmlv2.response.AddResponseDsml;
+import org.apache.directory.api.dsmlv2.response.BatchResponseDsml;
+import org.apache.directory.api.dsmlv2.response.DelResponseDsml;
+import org.apache.directory.api.dsmlv2.response.ErrorResponse;
+import org.apache.directory.api.dsmlv2.response.ErrorResponse.ErrorResponseType;
+import org.apache.directory.api.dsmlv2.response.SearchResponse;
+import org.apache.directory.api.dsmlv2.response.SearchResponseDsml;
+import org.apache.directory.api.dsmlv2.response.SearchResultDoneDsml;
+import org.apache.directory.api.dsmlv2.response.SearchResultEntryDsml;
+import org.apache.directory.api.dsmlv2.response.SearchResultReferenceDsml;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.message.AddResponse;
+import org.apache.directory.api.ldap.model.message.AddResponseImpl;
+import org.apache.directory.api.ldap.model.message.CompareResponseImpl;
+import org.apache.directory.api.ldap.model.message.DeleteResponse;
+import org.apache.directory.api.ldap.model.message.DeleteResponseImpl;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.ReferralImpl;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultReference;
+import org.apache.directory.api.ldap.model.message.SearchResultReferenceImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Tests for the Dsmlv2ResponseWriter.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution( ExecutionMode.CONCURRENT)
+public class Dsmlv2ResponseWriterTest extends AbstractResponseTest
+{
+    private static SearchResultEntry createEntry( int i ) throws Exception
+    {
+        SearchResultEntry searchResultEntry = new SearchResultEntryImpl( 2 );
+        Dn dn = new Dn( "cn=user" + i + ",ou=people,dc=example,dc=com" );
+
+        searchResultEntry.setObjectName( dn );
+        searchResultEntry.setEntry( new DefaultEntry( dn,
+            "objectClass: top",
+            "objectClass: person",
+            "cn", "user" + i,
+            "sn: Smith",
+            "jpegPhoto", new byte[]
+                { 0x00, 0x01, ( byte ) i } ) );
+
+        return searchResultEntry;
+    }
+
+
+    private static SearchResultReference createReference()
+    {
+        SearchResultReference searchResultReference = new SearchResultReferenceImpl( 2 );
+        searchResultReference.setReferral( new ReferralImpl() );
+        searchResultReference.getReferral().addLdapUrl( "ldap://server1/ou=people,dc=example,dc=com" );
+        searchResultReference.getReferral().addLdapUrl( "ldap://server2/ou=people,dc=example,dc=com" );
+
+        return searchResultReference;
+    }
+
+
+    private static void setResult( ResultResponse response, ResultCodeEnum resultCode, String message )
+        throws Exception
+    {
+        LdapResult result = response.getLdapResult();
+
+        result.setResultCode( resultCode );
+        result.setDiagnosticMessage( message );
+        result.setMatchedDn( new Dn( "dc=example,dc=com" ) );
+    }
+
+
+    private BatchResponseDsml parse( String dsml ) throws Exception
+    {
+        Dsmlv2ResponseParser parser = new Dsmlv2ResponseParser( getCodec() );
+
+        parser.setInput( dsml );
+        parser.parse();
+
+        return parser.getBatchResponse();
+    }
+
+
+    /**
+     * Test that a search response is written, and parsed back
+     */
+    @Test
+    public void testSearchResponse() throws Exception
+    {
+        StringWriter out = new StringWriter();
+        Dsmlv2ResponseWriter writer = new Dsmlv2ResponseWriter( getCodec(), out );
+
+        writer.writeBatchResponseStart( 1 );
+        writer.writeSearchResponseStart( 2 );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            writer.write( createEntry( i ) );
+        }
+
+        writer.write( createReference() );
+
+        SearchResultDone done = new SearchResultDoneImpl( 2 );
+        done.getLdapResult().setResultCode( ResultCodeEnum.SUCCESS );
+        writer.write( done );
+
+        writer.writeSearchResponseEnd();
+        writer.writeBatchResponseEnd();
+        writer.flush();
+
+        BatchResponseDsml batchResponse = parse( out.toString() );
+
+        assertEquals( 1, batchResponse.getRequestID() );
+        assertEquals( 1, batchResponse.getResponses().size() );
+
+        SearchResponse searchResponse = ( SearchResponse ) batchResponse.getCurrentResponse().getDecorated();
+        List<SearchResultEntryDsml> entries = searchResponse.getSearchResultEntryList();
+
+        assertEquals( 2, searchResponse.getMessageId() );
+        assertEquals( 10, entries.size() );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            SearchResultEntry expected = createEntry( i );
+
+            assertEquals( expected.getObjectName(), entries.get( i ).getObjectName() );
+            assertEquals( expected.getEntry(), entries.get( i ).getEntry() );
+        }
+
+        assertEquals( createReference().getReferral().getLdapUrls(),
+            searchResponse.getCurrentSearchResultReference().getReferral().getLdapUrls() );
+        assertEquals( ResultCodeEnum.SUCCESS,
+            searchResponse.getSearchResultDone().getLdapResult().getResultCode() );
+    }
+
+
+    /**
+     * Test that the texts and the attribute values are escaped, and that the values which
+     * can't be written in XML are base64 encoded
+     */
+    @Test
+    public void testEscaping() throws Exception
+    {
+        Dn dn = new Dn( "cn=R&D \\<1\\>,dc=example,dc=com" );
+        SearchResultEntry searchResultEntry = new SearchResultEntryImpl( 2 );
+        searchResultEntry.setObjectName( dn );
+        searchResultEntry.setEntry( new DefaultEntry( dn ) );
+        searchResultEntry.getEntry().add( "description", "a < b & c > \"d\"", "line 1\r\nline 2",
+            "control \u0001 char" );
+
+        StringWriter out = new StringWriter();
+        Dsmlv2ResponseWriter writer = new Dsmlv2ResponseWriter( getCodec(), out );
+
+        writer.writeBatchResponseStart( 0 );
+        writer.writeSearchResponseStart( 2 );
+        writer.write( searchResultEntry );
+        writer.write( new SearchResultDoneImpl( 2 ) );
+        writer.writeSearchResponseEnd();
+        writer.writeBatchResponseEnd();
+
+        String dsml = out.toString();
+
+        assertTrue( dsml.contains( "dn=\"cn=R&amp;D \\&lt;1\\&gt;,dc=example,dc=com\"" ), dsml );
+        assertTrue( dsml.contains( "<value>a &lt; b &amp; c &gt; \"d\"</value>" ), dsml );
+        assertTrue( dsml.contains( "<value>line 1&#13;\nline 2</value>" ), dsml );
+        assertTrue( dsml.contains( "<value xsi:type=\"xsd:base64Binary\">Y29udHJvbCABIGNoYXI=</value>" ), dsml );
+
+        SearchResponse searchResponse = ( SearchResponse ) parse( dsml ).getCurrentResponse().getDecorated();
+        SearchResultEntry parsed = searchResponse.getCurrentSearchResultEntry();
+
+        assertEquals( dn, parsed.getObjectName() );
+        assertTrue( parsed.getEntry().contains( "description", "a < b & c > \"d\"", "line 1\r\nline 2" ) );
+        assertTrue( parsed.getEntry().contains( "description", Strings.getBytesUtf8( "control \u0001 char" ) ) );
+    }
+
+
+    /**
+     * Test that the result responses and the error responses are written, and parsed back
+     */
+    @Test
+    public void testResultResponses() throws Exception
+    {
+        AddResponse addResponse = new AddResponseImpl( 3 );
+        setResult( addResponse, ResultCodeEnum.NO_SUCH_OBJECT, "No <such> entry" );
+
+        CompareResponseImpl compareResponse = new CompareResponseImpl( 4 );
+        setResult( compareResponse, ResultCodeEnum.COMPARE_TRUE, null );
+
+        DeleteResponse deleteResponse = new DeleteResponseImpl( 5 );
+        setResult( deleteResponse, ResultCodeEnum.REFERRAL, null );
+        deleteResponse.getLdapResult().setReferral( new ReferralImpl() );
+        deleteResponse.getLdapResult().getReferral().addLdapUrl( "ldap://server1/dc=example,dc=com" );
+
+        ErrorResponse errorResponse = new ErrorResponse( 6, ErrorResponseType.MALFORMED_REQUEST, "Bad & ugly" );
+
+        StringWriter out = new StringWriter();
+        Dsmlv2ResponseWriter writer = new Dsmlv2ResponseWriter( getCodec(), out );
+
+        writer.writeBatchResponseStart( 0 );
+        writer.write( addResponse );
+        writer.write( new AddResponseDsml( getCodec(), addResponse ) );
+        writer.write( compareResponse );
+        writer.write( deleteResponse );
+        writer.write( errorResponse );
+        writer.writeBatchResponseEnd();
+
+        List<DsmlDecorator<? extends Response>> responses = parse( out.toString() ).getResponses();
+
+        assertEquals( 5, responses.size() );
+        assertEquals( addResponse, responses.get( 0 ).getDecorated() );
+        assertEquals( addResponse, responses.get( 1 ).getDecorated() );
+        assertEquals( compareResponse, responses.get( 2 ).getDecorated() );
+        assertEquals( deleteResponse, responses.get( 3 ).getDecorated() );
+
+        ErrorResponse parsedError = ( ErrorResponse ) responses.get( 4 );
+
+        assertEquals( 6, parsedError.getRequestID() );
+        assertEquals( ErrorResponseType.MALFORMED_REQUEST, parsedError.getErrorType() );
+        assertEquals( "Bad & ugly", parsedError.getMessage() );
+    }
+
+
+    /**
+     * Test that the responses written by the Dsmlv2ResponseWriter are parsed as the ones
+     * written by the toDsml() methods
+     */
+    @Test
+    public void testSameAsDom4j() throws Exception
+    {
+        BatchResponseDsml batchResponse = new BatchResponseDsml();
+        batchResponse.setRequestID( 1 );
+
+        AddResponse addResponse = new AddResponseImpl( 3 );
+        setResult( addResponse, ResultCodeEnum.SUCCESS, null );
+        batchResponse.addResponse( new AddResponseDsml( getCodec(), addResponse ) );
+
+        DeleteResponse deleteResponse = new DeleteResponseImpl( 4 );
+        setResult( deleteResponse, ResultCodeEnum.NO_SUCH_OBJECT, "No such entry" );
+        batchResponse.addResponse( new DelResponseDsml( getCodec(), deleteResponse ) );
+
+        SearchResponseDsml searchResponseDsml = new SearchResponseDsml( getCodec(), new SearchResponse( 2 ) );
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            searchResponseDsml.addResponse( new SearchResultEntryDsml( getCodec(), createEntry( i ) ) );
+        }
+
+        searchResponseDsml.addResponse( new SearchResultReferenceDsml( getCodec(), createReference() ) );
+
+        SearchResultDone done = new SearchResultDoneImpl( 2 );
+        setResult( done, ResultCodeEnum.SIZE_LIMIT_EXCEEDED, "Size limit" );
+        searchResponseDsml.addResponse( new SearchResultDoneDsml( getCodec(), done ) );
+
+        batchResponse.addResponse( searchResponseDsml );
+
+        StringWriter out = new StringWriter();
+        Dsmlv2ResponseWriter writer = new Dsmlv2ResponseWriter( getCodec(), out );
+
+        writer.writeBatchResponseStart( 1 );
+        writer.write( addResponse );
+        writer.write( deleteResponse );
+        writer.writeSearchResponseStart( 2 );
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            writer.write( createEntry( i ) );
+        }
+
+        writer.write( createReference() );
+        writer.write( done );
+        writer.writeSearchResponseEnd();
+        writer.writeBatchResponseEnd();
+
+        List<DsmlDecorator<? extends Response>> expected = parse( batchResponse.toDsml( false ) ).getResponses();
+        List<DsmlDecorator<? extends Response>> streamed = parse( out.toString() ).getResponses();
+
+        assertEquals( expected.size(), streamed.size() );
+        assertEquals( expected.get( 0 ).getDecorated(), streamed.get( 0 ).getDecorated() );
+        assertEquals( expected.get( 1 ).getDecorated(), streamed.get( 1 ).getDecorated() );
+
+        SearchResponse expectedSearch = ( SearchResponse ) expected.get( 2 ).getDecorated();
+        SearchResponse streamedSearch = ( SearchResponse ) streamed.get( 2 ).getDecorated();
+
+        assertEquals( expectedSearch.getMessageId(), streamedSearch.getMessageId() );
+        assertEquals( expectedSearch.getSearchResultEntryList().size(),
+            streamedSearch.getSearchResultEntryList().size() );
+
+        for ( int i = 0; i < expectedSearch.getSearchResultEntryList().size(); i++ )
+        {
+            SearchResultEntry expectedEntry = expectedSearch.getSearchResultEntryList().get( i );
+            SearchResultEntry streamedEntry = streamedSearch.getSearchResultEntryList().get( i );
+
+            assertEquals( expectedEntry.getObjectName(), streamedEntry.getObjectName() );
+            assertEquals( expectedEntry.getEntry(), streamedEntry.getEntry() );
+        }
+
+        assertEquals( expectedSearch.getCurrentSearchResultReference().getReferral().getLdapUrls(),
+            streamedSearch.getCurrentSearchResultReference().getReferral().getLdapUrls() );
+        assertEquals( expectedSearch.getSearchResultDone().getLdapResult(),
+            streamedSearch.getSearchResultDone().getLdapResult() );
+    }
+
+
+    /**
+     * Test that a base64 value is split over the chars buffer correctly
+     */
+    @Test
+    public void testLargeBinaryValue() throws Exception
+    {
+        byte[] photo = new byte[10000];
+
+        for ( int i = 0; i < photo.length; i++ )
+        {
+            photo[i] = ( byte ) i;
+        }
+
+        Dn dn = new Dn( "cn=photo,dc=example,dc=com" );
+        SearchResultEntry searchResultEntry = new SearchResultEntryImpl( 2 );
+        searchResultEntry.setObjectName( dn );
+        searchResultEntry.setEntry( new DefaultEntry( dn, "jpegPhoto", photo ) );
+
+        StringWriter out = new StringWriter();
+        Dsmlv2ResponseWriter writer = new Dsmlv2ResponseWriter( getCodec(), out );
+
+        writer.writeBatchResponseStart( 0 );
+        writer.writeSearchResponseStart( 2 );
+        writer.write( searchResultEntry );
+        writer.write( new SearchResultDoneImpl( 2 ) );
+        writer.writeSearchResponseEnd();
+        writer.writeBatchResponseEnd();
+
+        SearchResponse searchResponse = ( SearchResponse ) parse( out.toString() ).getCurrentResponse().getDecorated();
+
+        assertArrayEquals( photo,
+            searchResponse.getCurrentSearchResultEntry().getEntry().get( "jpegPhoto" ).get().getBytes() );
+    }
+
+
+    /**
+     * Compares the time and the memory needed to write search result entries with the
+     * dom4j trees, and with the Dsmlv2ResponseWriter
+     */
+    @Disabled
+    @Test
+    public void testWriteSearchResultEntriesPerf() throws Exception
+    {
+        int nbEntries = 500000;
+        SearchResultEntry entry = createEntry( 1 );
+        Writer out = new Writer()
+        {
+            @Override
+            public void write( char[] cbuf, int off, int len ) throws IOException
+            {
+            }
+
+
+            @Override
+            public void flush() throws IOException
+            {
+            }
+
+
+            @Override
+            public void close() throws IOException
+            {
+            }
+        };
+
+        com.sun.management.ThreadMXBean threadMXBean =
+            ( com.sun.management.ThreadMXBean ) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long t0 = System.currentTimeMillis();
+        long a0 = threadMXBean.getThreadAllocatedBytes( threadId );
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            new SearchResultEntryDsml( getCodec(), entry ).toDsml( null ).write( out );
+        }
+
+        long t1 = System.currentTimeMillis();
+        long a1 = threadMXBean.getThreadAllocatedBytes( threadId );
+
+        Dsmlv2ResponseWriter writer = new Dsmlv2ResponseWriter( getCodec(), out );
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            writer.write( entry );
+        }
+
+        long t2 = System.currentTimeMillis();
+        long a2 = threadMXBean.getThreadAllocatedBytes( threadId );
+
+        System.out.println( "dom4j : " + ( t1 - t0 ) + " ms, " + ( ( a1 - a0 ) / nbEntries ) + " bytes per entry" );
+        System.out.println( "Dsmlv2ResponseWriter : " + ( t2 - t1 ) + " ms, " + ( ( a2 - a1 ) / nbEntries )
+            + " bytes per entry" );
+    }
+}
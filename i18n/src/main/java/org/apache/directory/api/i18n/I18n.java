@@ -129,6 +129,7 @@ public enum I18n
     ERR_03043_UNEXPECTED_DEREF_ALIAS( "ERR_03043_UNEXPECTED_DEREF_ALIAS" ),
     ERR_03044_SHOULD_NOT_BE_A_DECORATOR( "ERR_03044_SHOULD_NOT_BE_A_DECORATOR" ),
     ERR_03045_UNIDENTIFIED_RESPONSE_TYPE( "ERR_03045_UNIDENTIFIED_RESPONSE_TYPE" ),
+    ERR_03046_UNEXPECTED_RESPONSE_TYPE( "ERR_03046_UNEXPECTED_RESPONSE_TYPE" ),
 
     // api-ldap-client-api              4000-4999
     //     <>                               4000-4100
@@ -214,6 +215,26 @@ public enum I18n
     ERR_04178_CANT_LOAD_KEY_STORE( "ERR_04178_CANT_LOAD_KEY_STORE" ),
     ERR_04179_TRUST_STORE_CANT_BE_READ( "ERR_04179_TRUST_STORE_CANT_BE_READ" ),
     ERR_04180_FILE_DOES_NOT_EXIST_ON_CLASSPATH( "ERR_04180_FILE_DOES_NOT_EXIST_ON_CLASSPATH" ),
+    ERR_04181_IO_PROCESSOR_POOL_DISPOSED( "ERR_04181_IO_PROCESSOR_POOL_DISPOSED" ),
+    ERR_04182_SCHEMA_CACHE_CANT_BE_READ( "ERR_04182_SCHEMA_CACHE_CANT_BE_READ" ),
+    ERR_04183_SCHEMA_CACHE_CANT_BE_WRITTEN( "ERR_04183_SCHEMA_CACHE_CANT_BE_WRITTEN" ),
+    ERR_04184_SYNCREPL_NOT_AN_ASYNC_CONNECTION( "ERR_04184_SYNCREPL_NOT_AN_ASYNC_CONNECTION" ),
+    ERR_04185_SYNCREPL_SEARCH_FAILED( "ERR_04185_SYNCREPL_SEARCH_FAILED" ),
+    ERR_04186_SYNCREPL_CONNECTION_LOST( "ERR_04186_SYNCREPL_CONNECTION_LOST" ),
+    ERR_04187_SYNCREPL_CONSUMER_ALREADY_STARTED( "ERR_04187_SYNCREPL_CONSUMER_ALREADY_STARTED" ),
+    ERR_04188_NO_SORT_MATCHING_RULE( "ERR_04188_NO_SORT_MATCHING_RULE" ),
+    ERR_04189_SORT_RUN_IO_ERROR( "ERR_04189_SORT_RUN_IO_ERROR" ),
+    ERR_04190_SORT_KEY_NEEDED( "ERR_04190_SORT_KEY_NEEDED" ),
+    ERR_04191_REFERRAL_CHASING_FAILED( "ERR_04191_REFERRAL_CHASING_FAILED" ),
+    ERR_04192_LDIF_LOADER_NO_CONNECTION( "ERR_04192_LDIF_LOADER_NO_CONNECTION" ),
+    ERR_04193_LDIF_LOADER_NO_RESPONSE( "ERR_04193_LDIF_LOADER_NO_RESPONSE" ),
+    ERR_04194_LDIF_LOADER_INTERRUPTED( "ERR_04194_LDIF_LOADER_INTERRUPTED" ),
+    ERR_04195_LDIF_LOADER_CHECKPOINT_ERROR( "ERR_04195_LDIF_LOADER_CHECKPOINT_ERROR" ),
+    ERR_04196_SERVER_METADATA_REFRESH_FAILED( "ERR_04196_SERVER_METADATA_REFRESH_FAILED" ),
+    ERR_04197_TRUST_STORE_RELOAD_FAILED( "ERR_04197_TRUST_STORE_RELOAD_FAILED" ),
+    ERR_04198_SCHEMA_CACHE_CORRUPTED( "ERR_04198_SCHEMA_CACHE_CORRUPTED" ),
+    ERR_04199_SHARED_SCHEMA_MODE_MISMATCH( "ERR_04199_SHARED_SCHEMA_MODE_MISMATCH" ),
+    ERR_04200_SHARED_SCHEMA_READ_ONLY( "ERR_04200_SHARED_SCHEMA_READ_ONLY" ),
 
     //     template                     4200-4300
     // None
@@ -469,6 +490,7 @@ public enum I18n
     ERR_13039_INVALID_CHAR_AT_LDAP_URL_END( "ERR_13039_INVALID_CHAR_AT_LDAP_URL_END" ),
     ERR_13040_INVALID_URL_ENCODING( "ERR_13040_INVALID_URL_ENCODING" ),
     ERR_13041_INVALID_LDAP_URL_EMPTY_STRING( "ERR_13041_INVALID_LDAP_URL_EMPTY_STRING" ),
+    ERR_13042_NEGATIVE_CSN_COUNT( "ERR_13042_NEGATIVE_CSN_COUNT" ),
 
     //     cursor                           13100 - 13199
     ERR_13100_FAILURE_ON_UNDERLYING_CURSOR( "ERR_13100_FAILURE_ON_UNDERLYING_CURSOR" ),
@@ -559,6 +581,8 @@ public enum I18n
     ERR_13316_EMPTY_FILTER( "ERR_13316_EMPTY_FILTER" ),
     ERR_13317_NO_MORE_THAN_ONE_ELEM_IN_NOT( "ERR_13317_NO_MORE_THAN_ONE_ELEM_IN_NOT" ),
     ERR_13318_INVALID_ATTR_IN_REFINEMENT( "ERR_13318_INVALID_ATTR_IN_REFINEMENT" ),
+    ERR_13319_PLACE_HOLDER_NOT_A_WHOLE_VALUE( "ERR_13319_PLACE_HOLDER_NOT_A_WHOLE_VALUE" ),
+    ERR_13320_MISSING_PLACE_HOLDER( "ERR_13320_MISSING_PLACE_HOLDER" ),
 
     //     ldif                         13400 - 13499
     ERR_13400_ENTRY_WITH_TWO_DNS( "ERR_13400_ENTRY_WITH_TWO_DNS" ),
@@ -637,6 +661,7 @@ public enum I18n
     ERR_13473_MODDN_WITH_ATTRIBUTES( "ERR_13473_MODDN_WITH_ATTRIBUTES" ),
     ERR_13474_LINE_LENGTH_TOO_SHORT( "ERR_13474_LINE_LENGTH_TOO_SHORT" ),
     ERR_13475_UNKNOWN_ATTRIBUTETYPE( "ERR_13475_UNKNOWN_ATTRIBUTETYPE" ),
+    ERR_13476_UNEXPECTED_END_OF_MAPPING_FILE( "ERR_13476_UNEXPECTED_END_OF_MAPPING_FILE" ),
 
     //     message                          13500 - 13599
     ERR_13500_UNDEFINED_CHANGETYPE( "ERR_13500_UNDEFINED_CHANGETYPE" ),
@@ -687,6 +712,11 @@ public enum I18n
     ERR_13624_CANNOT_SERIALIZE_NULL_DN( "ERR_13624_CANNOT_SERIALIZE_NULL_DN" ),
     ERR_13625_INVALID_RDN( "ERR_13625_INVALID_RDN" ),
     ERR_13626_INVALID_RDN_DUPLICATE_AVA( "ERR_13626_INVALID_RDN_DUPLICATE_AVA" ),
+    ERR_13627_INVALID_ESCAPE_SEQUENCE( "ERR_13627_INVALID_ESCAPE_SEQUENCE" ),
+    ERR_13628_UNEXPECTED_CHAR_IN_VALUE( "ERR_13628_UNEXPECTED_CHAR_IN_VALUE" ),
+    ERR_13629_UNTERMINATED_QUOTED_VALUE( "ERR_13629_UNTERMINATED_QUOTED_VALUE" ),
+    ERR_13630_INVALID_HEXSTRING( "ERR_13630_INVALID_HEXSTRING" ),
+    ERR_13631_UNKNOWN_ATTRIBUTE_TYPE( "ERR_13631_UNKNOWN_ATTRIBUTE_TYPE" ),
 
     //     schema                           13700 - 13899
     ERR_13700_CANNOT_MODIFY_LOCKED_SCHEMA_OBJECT( "ERR_13700_CANNOT_MODIFY_LOCKED_SCHEMA_OBJECT" ),
@@ -1162,6 +1192,22 @@ public enum I18n
     MSG_04176_TRUST_MANAGER_ON_CLASSPATH( "MSG_04176_TRUST_MANAGER_ON_CLASSPATH" ),
     MSG_04177_CONNECTION_TIMEOUT( "MSG_04177_CONNECTION_TIMEOUT" ),
     MSH_04178_CLOSE_LATCH_ABORTED( "MSH_04178_CLOSE_LATCH_ABORTED" ),
+    MSG_04179_SCHEMA_LOADED_FROM_CACHE( "MSG_04179_SCHEMA_LOADED_FROM_CACHE" ),
+    MSG_04180_SYNCREPL_RECONNECTING( "MSG_04180_SYNCREPL_RECONNECTING" ),
+    MSG_04181_SYNCREPL_REFRESH_REQUIRED( "MSG_04181_SYNCREPL_REFRESH_REQUIRED" ),
+    MSG_04182_SYNCREPL_REFRESH_DONE( "MSG_04182_SYNCREPL_REFRESH_DONE" ),
+    MSG_04183_SORT_SPILLING_RUN( "MSG_04183_SORT_SPILLING_RUN" ),
+    MSG_04184_SORT_REFERRAL_IGNORED( "MSG_04184_SORT_REFERRAL_IGNORED" ),
+    MSG_04185_CHASING_REFERRAL( "MSG_04185_CHASING_REFERRAL" ),
+    MSG_04186_REFERRAL_LOOP( "MSG_04186_REFERRAL_LOOP" ),
+    MSG_04187_REFERRAL_HOP_LIMIT( "MSG_04187_REFERRAL_HOP_LIMIT" ),
+    MSG_04188_LDIF_LOADER_PROGRESS( "MSG_04188_LDIF_LOADER_PROGRESS" ),
+    MSG_04189_LDIF_LOADER_RETRY( "MSG_04189_LDIF_LOADER_RETRY" ),
+    MSG_04190_LDIF_LOADER_RESUMING( "MSG_04190_LDIF_LOADER_RESUMING" ),
+    MSG_04191_SERVER_SCHEMA_CHANGED( "MSG_04191_SERVER_SCHEMA_CHANGED" ),
+    MSG_04192_TRUST_STORE_LOADED( "MSG_04192_TRUST_STORE_LOADED" ),
+    MSG_04193_SCHEMA_NOT_CACHED( "MSG_04193_SCHEMA_NOT_CACHED" ),
+    MSG_04194_LDIF_LOADER_FAILED( "MSG_04194_LDIF_LOADER_FAILED" ),
 
     // api-ldap-codec-core              5000-5999
     //     <>                               5000-5099
@@ -23,9 +23,16 @@ package org.apache.directory.api.ldap.aci;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.schema.loader.JarLdifSchemaLoader;
@@ -47,6 +54,9 @@ public class ACIItemParserTest
     /** the ACIItem parser wrapper */
     private static ACIItemParser parser;
 
+    /** The schema manager */
+    private static SchemaManager schemaManager;
+
 
     /**
      * Initialization
@@ -55,7 +65,7 @@ public class ACIItemParserTest
     public static void init() throws Exception
     {
         JarLdifSchemaLoader loader = new JarLdifSchemaLoader();
-        SchemaManager schemaManager = new DefaultSchemaManager( loader );
+        schemaManager = new DefaultSchemaManager( loader );
         schemaManager.loadAllEnabled();
 
         parser = new ACIItemParser( schemaManager );
@@ -860,4 +870,45 @@ public class ACIItemParserTest
             // Expected
         }
     }
+
+
+    /**
+     * Tests the ACIItem cache, and the parser use by many threads.
+     */
+    @Test
+    public void testCacheMultiThreaded() throws Exception
+    {
+        ACIItemParser cachingParser = new ACIItemParser( schemaManager, 16 );
+        String[] specs = new String[8];
+
+        for ( int i = 0; i < specs.length; i++ )
+        {
+            specs[i] = "{ identificationTag \"id" + i + "\", precedence " + i + ", authenticationLevel none, "
+                + "itemOrUserFirst userFirst: { userClasses { allUsers }, userPermissions { "
+                + "{ protectedItems { entry }, grantsAndDenials { grantRead } } } } }";
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        List<Future<ACIItem>> futures = new ArrayList<>();
+
+        for ( int i = 0; i < 400; i++ )
+        {
+            String spec = specs[i % specs.length];
+            futures.add( executor.submit( () -> cachingParser.parse( spec ) ) );
+        }
+
+        for ( int i = 0; i < futures.size(); i++ )
+        {
+            ACIItem item = futures.get( i ).get();
+            assertEquals( "id" + ( i % specs.length ), item.getIdentificationTag() );
+            assertEquals( i % specs.length, item.getPrecedence() );
+        }
+
+        executor.shutdown();
+
+        // Each ACIItem is parsed at least once, and then (mostly) read from the cache
+        assertEquals( 400L, cachingParser.getCacheHitCount() + cachingParser.getCacheMissCount() );
+        assertTrue( cachingParser.getCacheMissCount() >= specs.length );
+        assertSame( cachingParser.parse( specs[0] ), cachingParser.parse( specs[0] ) );
+    }
 }
@@ -0,0 +1,351 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec.search;
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import org.apache.directory.api.asn1.ber.Asn1Decoder;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
+import org.apache.directory.api.ldap.codec.api.SchemaBinaryAttributeDetector;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.name.DefaultDnFactory;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Test the schema aware decoding of the SearchResultEntry : the decoded entries must be
+ * the same as the schema agnostic entries copied into schema aware entries.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution( ExecutionMode.CONCURRENT )
+public class SchemaAwareSearchResultEntryTest
+{
+    private static SchemaManager schemaManager;
+
+    private static LdapApiService codec;
+
+
+    @BeforeAll
+    public static void setup() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+        codec = LdapApiServiceFactory.getSingleton();
+    }
+
+
+    private static ByteBuffer encode( Entry entry ) throws Exception
+    {
+        SearchResultEntry searchResultEntry = new SearchResultEntryImpl( 1 );
+        searchResultEntry.setEntry( entry );
+
+        return LdapEncoder.encodeMessage( new Asn1Buffer(), codec, searchResultEntry );
+    }
+
+
+    /**
+     * Creates a container as the connection does, knowing the SchemaManager or not
+     */
+    private static LdapMessageContainer<SearchResultEntry> createContainer( boolean schemaAware )
+    {
+        LdapMessageContainer<SearchResultEntry> container = new LdapMessageContainer<>( codec,
+            new SchemaBinaryAttributeDetector( schemaManager ) );
+        container.setDnFactory( new DefaultDnFactory( schemaManager, 1000 ) );
+
+        if ( schemaAware )
+        {
+            container.setSchemaManager( schemaManager );
+        }
+
+        return container;
+    }
+
+
+    private static Entry decode( ByteBuffer stream, LdapMessageContainer<SearchResultEntry> container )
+        throws Exception
+    {
+        stream.rewind();
+        container.clean();
+        Asn1Decoder.decode( stream, container );
+
+        return container.getMessage().getEntry();
+    }
+
+
+    private static Entry decode( ByteBuffer stream, boolean schemaAware ) throws Exception
+    {
+        return decode( stream, createContainer( schemaAware ) );
+    }
+
+
+    /**
+     * Checks that the entry decoded as a schema aware entry is the same as the entry
+     * decoded as a schema agnostic entry, then copied.
+     */
+    private static void assertSameEntry( Entry entry ) throws Exception
+    {
+        ByteBuffer stream = encode( entry );
+        Entry expected = new DefaultEntry( schemaManager, decode( stream, false ) );
+        Entry decoded = decode( stream, true );
+
+        assertTrue( decoded.isSchemaAware() );
+        assertEquals( expected, decoded );
+        assertEquals( expected.getDn(), decoded.getDn() );
+        assertEquals( expected.getDn().getName(), decoded.getDn().getName() );
+        assertEquals( expected.getDn().getNormName(), decoded.getDn().getNormName() );
+        assertEquals( expected.size(), decoded.size() );
+
+        for ( Attribute expectedAttribute : expected )
+        {
+            Attribute attribute = decoded.get( expectedAttribute.getAttributeType() );
+
+            assertNotNull( attribute, expectedAttribute.getUpId() );
+            assertEquals( expectedAttribute.getId(), attribute.getId() );
+            assertEquals( expectedAttribute.getUpId(), attribute.getUpId() );
+            assertEquals( expectedAttribute.getAttributeType(), attribute.getAttributeType() );
+            assertEquals( expectedAttribute.isHumanReadable(), attribute.isHumanReadable() );
+            assertEquals( expectedAttribute.size(), attribute.size() );
+
+            Iterator<Value> values = attribute.iterator();
+
+            for ( Value expectedValue : expectedAttribute )
+            {
+                Value value = values.next();
+
+                assertTrue( value.isSchemaAware() );
+                assertEquals( expectedValue, value );
+                assertEquals( expectedValue.isHumanReadable(), value.isHumanReadable() );
+                assertEquals( expectedValue.getString(), value.getString() );
+                assertEquals( expectedValue.getNormalized(), value.getNormalized() );
+                assertArrayEquals( expectedValue.getBytes(), value.getBytes() );
+            }
+        }
+
+        assertEquals( expected.toString(), decoded.toString() );
+    }
+
+
+    private static Entry createWideEntry( int nbValues ) throws Exception
+    {
+        Entry entry = new DefaultEntry( "cn=Group,ou=Groups,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: groupOfNames",
+            "cn: Group",
+            "description: A wide group" );
+
+        for ( int i = 0; i < nbValues; i++ )
+        {
+            entry.add( "member", "uid=User " + i + ",ou=People,dc=example,dc=com" );
+        }
+
+        return entry;
+    }
+
+
+    private static Entry createEntry() throws Exception
+    {
+        return new DefaultEntry( "CN=John  Doe+uid=jdoe,OU=People,dc=Example,dc=COM",
+            "objectClass: top",
+            "objectClass: person",
+            "objectClass: organizationalPerson",
+            "objectClass: inetOrgPerson",
+            "CN: John  Doe",
+            "cn: Johnny",
+            "SN: Doe",
+            "givenName:: w4ltaWxl",
+            "uid: jdoe",
+            "2.5.4.20: +1 555 1234",
+            "description;lang-fr: Un  utilisateur",
+            "mail: jdoe@example.com",
+            "userPassword", new byte[]
+                { 0x01, 0x02, ( byte ) 0xFF },
+            "audio;binary", new byte[]
+                { 0x30, 0x03, 0x02, 0x01, 0x01 } );
+    }
+
+
+    /**
+     * Test the decoding of an entry with various attributes
+     */
+    @Test
+    public void testDecodeSchemaAwareEntry() throws Exception
+    {
+        assertSameEntry( createEntry() );
+    }
+
+
+    /**
+     * Test the decoding of an entry with many values
+     */
+    @Test
+    public void testDecodeWideEntry() throws Exception
+    {
+        assertSameEntry( createWideEntry( 500 ) );
+    }
+
+
+    /**
+     * Test the decoding of an entry with an empty DN and no attribute
+     */
+    @Test
+    public void testDecodeEmptyEntry() throws Exception
+    {
+        assertSameEntry( new DefaultEntry( "" ) );
+    }
+
+
+    /**
+     * Test that an entry with an unknown attribute is decoded as a schema agnostic entry,
+     * so that copying it reports the error as before
+     */
+    @Test
+    public void testDecodeUnknownAttribute() throws Exception
+    {
+        Entry entry = createEntry();
+        entry.add( "unknownAttribute", "value" );
+        entry.add( "description", "after" );
+
+        ByteBuffer stream = encode( entry );
+        Entry decoded = decode( stream, true );
+
+        assertFalse( decoded.isSchemaAware() );
+        assertEquals( decode( stream, false ), decoded );
+        assertThrows( LdapException.class, () -> new DefaultEntry( schemaManager, decoded ) );
+    }
+
+
+    /**
+     * Test that an entry with an invalid value is decoded as a schema agnostic entry
+     */
+    @Test
+    public void testDecodeInvalidValue() throws Exception
+    {
+        Entry entry = createEntry();
+        entry.add( "title", "" );
+
+        ByteBuffer stream = encode( entry );
+        Entry decoded = decode( stream, true );
+
+        assertFalse( decoded.isSchemaAware() );
+        assertEquals( decode( stream, false ), decoded );
+        assertThrows( LdapException.class, () -> new DefaultEntry( schemaManager, decoded ) );
+    }
+
+
+    /**
+     * Test the decoding of entries with trusted values, which are not checked
+     */
+    @Test
+    public void testDecodeTrustedValues() throws Exception
+    {
+        LdapMessageContainer<SearchResultEntry> container = createContainer( true );
+        container.setTrustedValues( true );
+
+        for ( Entry entry : new Entry[]
+            { createEntry(), createWideEntry( 20 ) } )
+        {
+            ByteBuffer stream = encode( entry );
+            Entry expected = decode( stream, true );
+            Entry decoded = decode( stream, container );
+
+            assertTrue( decoded.isSchemaAware() );
+            assertEquals( expected, decoded );
+            assertEquals( expected.toString(), decoded.toString() );
+        }
+
+        // The invalid value is kept as is
+        Entry entry = createEntry();
+        entry.add( "title", "" );
+        Entry decoded = decode( encode( entry ), container );
+
+        assertTrue( decoded.isSchemaAware() );
+        assertEquals( "", decoded.get( "title" ).getString() );
+    }
+
+
+    /**
+     * Compares the cost of decoding entries as schema agnostic entries copied into schema
+     * aware entries, and as schema aware entries.
+     */
+    @Test
+    @Disabled
+    public void testDecodePerf() throws Exception
+    {
+        ByteBuffer typical = encode( createEntry() );
+        ByteBuffer wide = encode( createWideEntry( 200 ) );
+        LdapMessageContainer<SearchResultEntry> schemaAgnosticContainer = createContainer( false );
+        LdapMessageContainer<SearchResultEntry> schemaAwareContainer = createContainer( true );
+        int nbLoops = 200000;
+
+        for ( int round = 0; round < 3; round++ )
+        {
+            for ( ByteBuffer stream : new ByteBuffer[]
+                { typical, wide } )
+            {
+                int loops = stream == typical ? nbLoops : nbLoops / 50;
+
+                long t0 = System.nanoTime();
+
+                for ( int i = 0; i < loops; i++ )
+                {
+                    new DefaultEntry( schemaManager, decode( stream, schemaAgnosticContainer ) );
+                }
+
+                long t1 = System.nanoTime();
+
+                for ( int i = 0; i < loops; i++ )
+                {
+                    decode( stream, schemaAwareContainer );
+                }
+
+                long t2 = System.nanoTime();
+
+                System.out.println( ( stream == typical ? "Typical" : "Wide" ) + " entry, decode + copy : "
+                    + ( ( t1 - t0 ) / loops ) + " ns/entry, schema aware decode : " + ( ( t2 - t1 ) / loops )
+                    + " ns/entry" );
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.entry;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.AttributeUtils;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.EntryDiff;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Test the EntryDiff class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution( ExecutionMode.CONCURRENT )
+public class EntryDiffTest
+{
+    private static SchemaManager schemaManager;
+
+
+    @BeforeAll
+    public static void setup() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    private static Entry createGroup( int first, int last ) throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager, "cn=Group,ou=Groups,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: groupOfNames",
+            "cn: Group" );
+
+        for ( int i = first; i < last; i++ )
+        {
+            entry.add( "member", "uid=User " + i + ",ou=People,dc=example,dc=com" );
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * Checks that applying the modifications on the current entry gives the desired entry,
+     * and that applying the reverse modifications gives back the current entry.
+     */
+    private static List<Modification> assertDiff( Entry current, Entry desired ) throws Exception
+    {
+        List<Modification> reverse = new ArrayList<>();
+        List<Modification> modifications = EntryDiff.diff( current, desired, reverse );
+
+        Entry modified = current.clone();
+
+        for ( Modification modification : modifications )
+        {
+            AttributeUtils.applyModification( modified, modification );
+        }
+
+        assertEquals( desired, modified );
+
+        for ( Modification modification : reverse )
+        {
+            AttributeUtils.applyModification( modified, modification );
+        }
+
+        assertEquals( current, modified );
+
+        return modifications;
+    }
+
+
+    /**
+     * Test that there is no modification between identical entries
+     */
+    @Test
+    public void testSameEntries() throws Exception
+    {
+        Entry entry = createGroup( 0, 100 );
+
+        assertTrue( EntryDiff.diff( entry, entry.clone() ).isEmpty() );
+        assertTrue( EntryDiff.diff( entry, createGroup( 0, 100 ) ).isEmpty() );
+    }
+
+
+    /**
+     * Test that the values are compared in their normalized form
+     */
+    @Test
+    public void testNormalizedValues() throws Exception
+    {
+        Entry current = new DefaultEntry( schemaManager, "cn=test,dc=example,dc=com",
+            "objectClass: person",
+            "cn: John  DOE",
+            "sn: Doe" );
+        Entry desired = new DefaultEntry( schemaManager, "cn=test,dc=example,dc=com",
+            "objectClass: PERSON",
+            "CN: john doe",
+            "2.5.4.4: DOE" );
+
+        assertTrue( EntryDiff.diff( current, desired ).isEmpty() );
+    }
+
+
+    /**
+     * Test that only the modified values of a big attribute are sent
+     */
+    @Test
+    public void testModifiedValues() throws Exception
+    {
+        Entry current = createGroup( 0, 1000 );
+        Entry desired = createGroup( 2, 1001 );
+
+        List<Modification> modifications = assertDiff( current, desired );
+
+        assertEquals( 2, modifications.size() );
+        assertEquals( ModificationOperation.REMOVE_ATTRIBUTE, modifications.get( 0 ).getOperation() );
+        assertEquals( 2, modifications.get( 0 ).getAttribute().size() );
+        assertEquals( ModificationOperation.ADD_ATTRIBUTE, modifications.get( 1 ).getOperation() );
+        assertEquals( 1, modifications.get( 1 ).getAttribute().size() );
+        assertEquals( "uid=User 1000,ou=People,dc=example,dc=com", modifications.get( 1 ).getAttribute().getString() );
+    }
+
+
+    /**
+     * Test that the values are replaced when it's cheaper
+     */
+    @Test
+    public void testReplacedValues() throws Exception
+    {
+        Entry current = new DefaultEntry( schemaManager, "cn=test,dc=example,dc=com",
+            "objectClass: person",
+            "cn: test",
+            "sn: test",
+            "description: old description",
+            "telephoneNumber: 1",
+            "telephoneNumber: 2" );
+        Entry desired = new DefaultEntry( schemaManager, "cn=test,dc=example,dc=com",
+            "objectClass: person",
+            "cn: test",
+            "sn: test",
+            "description: new description",
+            "telephoneNumber: 3" );
+
+        List<Modification> modifications = assertDiff( current, desired );
+
+        assertEquals( 2, modifications.size() );
+
+        for ( Modification modification : modifications )
+        {
+            assertEquals( ModificationOperation.REPLACE_ATTRIBUTE, modification.getOperation() );
+        }
+    }
+
+
+    /**
+     * Test the addition and the removal of whole attributes
+     */
+    @Test
+    public void testAddedAndRemovedAttributes() throws Exception
+    {
+        Entry current = new DefaultEntry( schemaManager, "cn=test,dc=example,dc=com",
+            "objectClass: person",
+            "cn: test",
+            "sn: test",
+            "description: a description",
+            "description: another description" );
+        Entry desired = new DefaultEntry( schemaManager, "cn=test,dc=example,dc=com",
+            "objectClass: person",
+            "cn: test",
+            "sn: test",
+            "userPassword", new byte[]
+                { 0x01, 0x02 } );
+
+        List<Modification> modifications = assertDiff( current, desired );
+
+        assertEquals( 2, modifications.size() );
+        assertEquals( ModificationOperation.ADD_ATTRIBUTE, modifications.get( 0 ).getOperation() );
+        assertEquals( "userPassword", modifications.get( 0 ).getAttribute().getAttributeType().getName() );
+        assertEquals( ModificationOperation.REMOVE_ATTRIBUTE, modifications.get( 1 ).getOperation() );
+        assertEquals( "description", modifications.get( 1 ).getAttribute().getAttributeType().getName() );
+
+        // The values of the removed attribute are not sent
+        assertEquals( 0, modifications.get( 1 ).getAttribute().size() );
+    }
+
+
+    /**
+     * Test the difference between schema agnostic entries
+     */
+    @Test
+    public void testSchemaAgnosticEntries() throws Exception
+    {
+        Entry current = new DefaultEntry( "cn=test,dc=example,dc=com",
+            "objectClass: person",
+            "cn: test",
+            "sn: test",
+            "description: a description" );
+        Entry desired = new DefaultEntry( "cn=test,dc=example,dc=com",
+            "objectClass: person",
+            "cn: test",
+            "cn: other",
+            "sn: test" );
+
+        List<Modification> modifications = assertDiff( current, desired );
+
+        assertEquals( 2, modifications.size() );
+        assertEquals( ModificationOperation.ADD_ATTRIBUTE, modifications.get( 0 ).getOperation() );
+        assertEquals( "other", modifications.get( 0 ).getAttribute().getString() );
+        assertEquals( ModificationOperation.REMOVE_ATTRIBUTE, modifications.get( 1 ).getOperation() );
+    }
+
+
+    /**
+     * Measures the cost of computing the difference between two big groups
+     */
+    @Test
+    @Disabled
+    public void testDiffPerf() throws Exception
+    {
+        Entry current = createGroup( 0, 10000 );
+        Entry desired = createGroup( 10, 10010 );
+        int nbLoops = 1000;
+
+        for ( int round = 0; round < 3; round++ )
+        {
+            long t0 = System.nanoTime();
+
+            for ( int i = 0; i < nbLoops; i++ )
+            {
+                EntryDiff.diff( current, desired );
+            }
+
+            long t1 = System.nanoTime();
+
+            System.out.println( "10000 members : " + ( ( t1 - t0 ) / nbLoops / 1000 ) + " us/diff" );
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.entry;
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.Strings;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Test that the trusted values, which are lazily normalized, behave as the values
+ * checked and normalized when created.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution( ExecutionMode.CONCURRENT )
+public class TrustedValueTest
+{
+    private static SchemaManager schemaManager;
+
+
+    @BeforeAll
+    public static void setup() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    private static byte[] serialize( Value value ) throws Exception
+    {
+        byte[] buffer = new byte[1024];
+        int length = value.serialize( buffer, 0 );
+        byte[] result = new byte[length];
+        System.arraycopy( buffer, 0, result, 0, length );
+
+        return result;
+    }
+
+
+    private static byte[] writeExternal( Value value ) throws Exception
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try ( ObjectOutputStream out = new ObjectOutputStream( baos ) )
+        {
+            value.writeExternal( out );
+        }
+
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * Checks that a trusted value is the same as a checked value
+     */
+    private static void assertSameValue( Value expected, Value trusted ) throws Exception
+    {
+        assertEquals( expected.isHumanReadable(), trusted.isHumanReadable() );
+        assertEquals( expected.getString(), trusted.getString() );
+        assertEquals( expected.toString(), trusted.toString() );
+        assertEquals( expected.length(), trusted.length() );
+        assertEquals( expected, trusted );
+        assertEquals( trusted, expected );
+        assertEquals( expected.hashCode(), trusted.hashCode() );
+        assertEquals( 0, expected.compareTo( trusted ) );
+        assertEquals( 0, trusted.compareTo( expected ) );
+        assertEquals( expected.getNormalized(), trusted.getNormalized() );
+        assertArrayEquals( expected.getBytes(), trusted.getBytes() );
+        assertEquals( expected.getEscaped(), trusted.getEscaped() );
+        assertArrayEquals( serialize( expected ), serialize( trusted ) );
+        assertArrayEquals( writeExternal( expected ), writeExternal( trusted ) );
+
+        if ( expected.isHumanReadable() )
+        {
+            assertTrue( trusted.equals( expected.getString() ) );
+            assertEquals( 0, trusted.compareTo( expected.getString() ) );
+        }
+    }
+
+
+    private static void assertSameValue( String attributeType, String value ) throws Exception
+    {
+        AttributeType at = schemaManager.lookupAttributeTypeRegistry( attributeType );
+
+        assertSameValue( new Value( at, value ), Value.createTrusted( at, value ) );
+    }
+
+
+    /**
+     * Test the String values
+     */
+    @Test
+    public void testStringValues() throws Exception
+    {
+        assertSameValue( "cn", "  John   DOE " );
+        assertSameValue( "cn", "Émile" );
+        assertSameValue( "mail", "JDoe@Example.COM" );
+        assertSameValue( "telephoneNumber", "+1 555 1234" );
+        assertSameValue( "objectClass", "inetOrgPerson" );
+        assertSameValue( "member", "UID=jdoe , ou=People,DC=example,dc=com" );
+        assertSameValue( "uid", "JDoe" );
+    }
+
+
+    /**
+     * Test the binary values
+     */
+    @Test
+    public void testBinaryValues() throws Exception
+    {
+        AttributeType userPassword = schemaManager.lookupAttributeTypeRegistry( "userPassword" );
+        byte[] password = new byte[]
+            { 0x01, 0x02, ( byte ) 0xFF };
+
+        assertSameValue( new Value( userPassword, password ), Value.createTrusted( userPassword, password ) );
+        assertSameValue( new Value( userPassword, Strings.EMPTY_BYTES ),
+            Value.createTrusted( userPassword, Strings.EMPTY_BYTES ) );
+        assertSameValue( new Value( userPassword, ( byte[] ) null ),
+            Value.createTrusted( userPassword, ( byte[] ) null ) );
+
+        // A String value of a binary attribute
+        assertSameValue( new Value( userPassword, "secret" ), Value.createTrusted( userPassword, "secret" ) );
+    }
+
+
+    /**
+     * Test that a trusted value is not checked, and is only normalized when needed
+     */
+    @Test
+    public void testNotChecked() throws Exception
+    {
+        AttributeType title = schemaManager.lookupAttributeTypeRegistry( "title" );
+
+        assertThrows( LdapInvalidAttributeValueException.class, () -> new Value( title, "" ) );
+
+        Value value = Value.createTrusted( title, "" );
+
+        assertEquals( "", value.getString() );
+        assertEquals( Value.createTrusted( title, "" ), value );
+
+        // The normalization fails when the normalized value is needed
+        AttributeType member = schemaManager.lookupAttributeTypeRegistry( "member" );
+        Value dn = Value.createTrusted( member, "not a DN" );
+
+        assertEquals( "not a DN", dn.getString() );
+        assertArrayEquals( Strings.getBytesUtf8( "not a DN" ), dn.getBytes() );
+        assertThrows( IllegalArgumentException.class, () -> dn.getNormalized() );
+    }
+
+
+    /**
+     * Test that a trusted value can be normalized by many threads at once
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception
+    {
+        AttributeType cn = schemaManager.lookupAttributeTypeRegistry( "cn" );
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+
+        try
+        {
+            for ( int i = 0; i < 100; i++ )
+            {
+                Value expected = new Value( cn, "  User   " + i + " " );
+                Value trusted = Value.createTrusted( cn, "  User   " + i + " " );
+                CountDownLatch start = new CountDownLatch( 1 );
+                List<Future<Boolean>> results = new ArrayList<>();
+
+                for ( int j = 0; j < 8; j++ )
+                {
+                    Callable<Boolean> check = () ->
+                    {
+                        start.await();
+
+                        return ( trusted.hashCode() == expected.hashCode() )
+                            && expected.getNormalized().equals( trusted.getNormalized() )
+                            && trusted.equals( expected );
+                    };
+
+                    results.add( executor.submit( check ) );
+                }
+
+                start.countDown();
+
+                for ( Future<Boolean> result : results )
+                {
+                    assertTrue( result.get() );
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Compares the cost of creating checked values and trusted values, which are only read
+     */
+    @Test
+    @Disabled
+    public void testPerf() throws Exception
+    {
+        AttributeType cn = schemaManager.lookupAttributeTypeRegistry( "cn" );
+        AttributeType member = schemaManager.lookupAttributeTypeRegistry( "member" );
+        int nbLoops = 1000000;
+
+        for ( int round = 0; round < 3; round++ )
+        {
+            for ( AttributeType attributeType : new AttributeType[]
+                { cn, member } )
+            {
+                String prefix = attributeType == cn ? "User " : "uid=User ";
+                String suffix = attributeType == cn ? "" : ",ou=People,dc=example,dc=com";
+                long length = 0L;
+
+                long t0 = System.nanoTime();
+
+                for ( int i = 0; i < nbLoops; i++ )
+                {
+                    length += new Value( attributeType, prefix + i + suffix ).getString().length();
+                }
+
+                long t1 = System.nanoTime();
+
+                for ( int i = 0; i < nbLoops; i++ )
+                {
+                    length += Value.createTrusted( attributeType, prefix + i + suffix ).getString().length();
+                }
+
+                long t2 = System.nanoTime();
+
+                System.out.println( attributeType.getName() + ", checked : " + ( ( t1 - t0 ) / nbLoops )
+                    + " ns/value, trusted : " + ( ( t2 - t1 ) / nbLoops ) + " ns/value (" + length + ")" );
+            }
+        }
+    }
+}
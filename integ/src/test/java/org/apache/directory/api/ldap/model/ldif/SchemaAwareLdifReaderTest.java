@@ -2568,4 +2568,47 @@ public class SchemaAwareLdifReaderTest
             assertEquals( entry1, entry2 );
         }
     }
+
+
+    @Test
+    public void testLdifParserTrustedValues() throws Exception
+    {
+        String ldif =
+            "dn: cn=John Doe,ou=people,dc=example,dc=com\n" +
+            "objectClass: top\n" +
+            "objectClass: person\n" +
+            "cn: John Doe\n" +
+            "cn: JDoe\n" +
+            "sn: Doe\n" +
+            "title:\n" +
+            "userPassword:: AQL/\n";
+
+        LdifEntry checked;
+        LdifEntry trusted;
+
+        try ( LdifReader reader = new LdifReader( schemaManager ) )
+        {
+            assertFalse( reader.isTrustedValues() );
+            checked = reader.parseLdif( ldif ).get( 0 );
+        }
+
+        try ( LdifReader reader = new LdifReader( schemaManager ) )
+        {
+            reader.setTrustedValues( true );
+            trusted = reader.parseLdif( ldif ).get( 0 );
+        }
+
+        // The trusted values are equal to the checked ones
+        assertEquals( checked.get( "objectClass" ), trusted.get( "objectClass" ) );
+        assertEquals( checked.get( "cn" ), trusted.get( "cn" ) );
+        assertEquals( checked.get( "sn" ), trusted.get( "sn" ) );
+        assertEquals( checked.get( "userPassword" ), trusted.get( "userPassword" ) );
+        assertTrue( trusted.get( "cn" ).contains( "  john   DOE " ) );
+        assertTrue( trusted.get( "userPassword" ).contains( new byte[] { 0x01, 0x02, ( byte ) 0xFF } ) );
+
+        // The empty title is not a valid DirectoryString, it's only kept when the values are trusted
+        assertEquals( 0, checked.get( "title" ).size() );
+        assertEquals( 1, trusted.get( "title" ).size() );
+        assertEquals( "", trusted.get( "title" ).getString() );
+    }
 }
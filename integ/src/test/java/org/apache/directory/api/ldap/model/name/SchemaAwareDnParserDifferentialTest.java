@@ -0,0 +1,279 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.name;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Checks that the DnParser and the Antlr based ComplexDnParser produce the same
+ * schema aware DNs and RDNs, normalized with a loaded SchemaManager, and reject
+ * the same names.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.CONCURRENT)
+public class SchemaAwareDnParserDifferentialTest
+{
+    private static SchemaManager schemaManager;
+
+    /** Some valid DNs */
+    private static final String[] VALID_DNS =
+        {
+            "",
+            "cn=John Doe",
+            "  CN  =  John   DOE ,  OU  =  Example ,  DC = COM ",
+            "commonName=John,dc=example,dc=com",
+            "2.5.4.3=John,dc=example,dc=com",
+            "OID.2.5.4.3=John,dc=example,dc=com",
+            "cn=Doe\\, John,ou=people,dc=example,dc=com",
+            "cn=Doe\\2C John,ou=people,dc=example,dc=com",
+            "cn=J\\C3\\A9r\\C3\\B4me,dc=example,dc=com",
+            "cn=\\ leading and trailing\\ ,dc=com",
+            "cn=\\#hash,dc=com",
+            "cn=#0403414243,dc=com",
+            "cn=\"Doe, John\",dc=com",
+            "cn=John+sn=Doe,dc=com",
+            "sn=Doe+cn=John,dc=com",
+            " CN = John + SN = Doe ,dc=com",
+            "cn=a+cn=b+cn=c,dc=com",
+            "ou=a;ou=b;dc=com",
+            "uid=jdoe,ou=People,o=Example,c=US",
+            "uid=JDOE+ou=People,o=Example",
+            "cn=café,dc=com",
+            "cn=a\\\\b,dc=com",
+            "ou=system",
+            "ou=schema",
+            "uid=admin,ou=system"
+        };
+
+    /** Some invalid DNs, including unknown attribute types */
+    private static final String[] INVALID_DNS =
+        {
+            "a",
+            "cn",
+            "cn=b,",
+            "cn=b+",
+            "cn=b<c",
+            "cn=\\z",
+            "cn=#041",
+            "unknown=b",
+            "cn=John,unknown=b",
+            "cn=John+unknown=Doe",
+            "1.2.3.4.5.6=b",
+            "OID.1.2.3.4.5.6=b"
+        };
+
+    /** The types used to generate some random DNs */
+    private static final String[] TYPES =
+        { "cn", "CN", "sn", "ou", "dc", "commonName", "2.5.4.3", "OID.2.5.4.11", "uid", "o", "description" };
+
+    /** The pieces used to generate some random values */
+    private static final String[] PIECES =
+        { "a", "Doe", "John", "JOHN", " ", "  ", "\\,", "\\+", "\\;", "\\\"","\\<", "\\>", "\\=", "\\#", "#", "=",
+            "\\2C", "\\C3\\A9", "é", "中文", "-", "_", "." };
+
+
+    @BeforeAll
+    public static void setup() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    /**
+     * Parses a DN with both parsers, and checks that the results are the same
+     */
+    private static void checkDn( String name )
+    {
+        List<Rdn> expectedRdns = new ArrayList<>();
+        String expectedNormName = null;
+        Exception expectedException = null;
+
+        try
+        {
+            expectedNormName = new ComplexDnParser().parseDn( schemaManager, name, expectedRdns );
+        }
+        catch ( LdapInvalidDnException lide )
+        {
+            expectedException = lide;
+        }
+
+        List<Rdn> rdns = new ArrayList<>();
+        String normName = null;
+
+        try
+        {
+            normName = DnParser.parseDn( schemaManager, name, rdns );
+        }
+        catch ( LdapInvalidDnException lide )
+        {
+            if ( expectedException == null )
+            {
+                fail( "'" + name + "' has been rejected : " + lide.getMessage() );
+            }
+
+            return;
+        }
+
+        if ( expectedException != null )
+        {
+            fail( "'" + name + "' should have been rejected : " + expectedException.getMessage() );
+        }
+
+        assertEquals( expectedNormName, normName, name );
+        assertEquals( expectedRdns.size(), rdns.size(), name );
+
+        for ( int i = 0; i < rdns.size(); i++ )
+        {
+            checkRdn( name, expectedRdns.get( i ), rdns.get( i ) );
+        }
+    }
+
+
+    /**
+     * Checks that two schema aware RDNs are the same. The user provided name of a single
+     * Ava is trimmed by the DnParser, so it is not compared.
+     */
+    private static void checkRdn( String name, Rdn expected, Rdn rdn )
+    {
+        assertEquals( expected.getName(), rdn.getName(), name );
+        assertEquals( expected.getNormName(), rdn.getNormName(), name );
+        assertEquals( expected.size(), rdn.size(), name );
+        assertEquals( expected, rdn, name );
+        assertEquals( expected.hashCode(), rdn.hashCode(), name );
+        assertEquals( expected.isSchemaAware(), rdn.isSchemaAware(), name );
+
+        Iterator<Ava> expectedAvas = expected.iterator();
+        Iterator<Ava> avas = rdn.iterator();
+
+        while ( expectedAvas.hasNext() )
+        {
+            Ava expectedAva = expectedAvas.next();
+            Ava ava = avas.next();
+
+            assertEquals( expectedAva.getType(), ava.getType(), name );
+            assertEquals( expectedAva.getNormType(), ava.getNormType(), name );
+            assertEquals( expectedAva.getAttributeType(), ava.getAttributeType(), name );
+            assertEquals( expectedAva.getValue(), ava.getValue(), name );
+            assertEquals( expectedAva.getValue().getNormalized(), ava.getValue().getNormalized(), name );
+            assertEquals( expectedAva.getValue().isHumanReadable(), ava.getValue().isHumanReadable(), name );
+        }
+    }
+
+
+    /**
+     * Generates a random DN, made of RDNs using known attribute types
+     */
+    private static String randomDn( Random random )
+    {
+        StringBuilder sb = new StringBuilder();
+        int nbRdns = 1 + random.nextInt( 4 );
+
+        for ( int i = 0; i < nbRdns; i++ )
+        {
+            if ( i > 0 )
+            {
+                sb.append( random.nextInt( 5 ) == 0 ? ';' : ',' );
+            }
+
+            int nbAvas = random.nextInt( 4 ) == 0 ? 2 + random.nextInt( 2 ) : 1;
+
+            for ( int j = 0; j < nbAvas; j++ )
+            {
+                if ( j > 0 )
+                {
+                    sb.append( '+' );
+                }
+
+                sb.append( random.nextBoolean() ? " " : "" );
+                sb.append( TYPES[random.nextInt( TYPES.length )] );
+                sb.append( random.nextBoolean() ? " = " : "=" );
+
+                if ( random.nextInt( 6 ) == 0 )
+                {
+                    // A quoted string, without any '#'
+                    sb.append( "\"Doe, " ).append( random.nextInt( 100 ) ).append( "+\\\"x\\\";\"" );
+                }
+                else
+                {
+                    // A string, which can't start with a '#' or a space
+                    sb.append( ( char ) ( 'a' + random.nextInt( 26 ) ) );
+
+                    for ( int k = random.nextInt( 6 ); k > 0; k-- )
+                    {
+                        sb.append( PIECES[random.nextInt( PIECES.length )] );
+                    }
+                }
+
+                sb.append( random.nextBoolean() ? " " : "" );
+            }
+        }
+
+        return sb.toString();
+    }
+
+
+    @Test
+    public void testValidDns()
+    {
+        for ( String name : VALID_DNS )
+        {
+            checkDn( name );
+        }
+    }
+
+
+    @Test
+    public void testInvalidDns()
+    {
+        for ( String name : INVALID_DNS )
+        {
+            checkDn( name );
+        }
+    }
+
+
+    @Test
+    public void testRandomDns()
+    {
+        Random random = new Random( 4514L );
+
+        for ( int i = 0; i < 5000; i++ )
+        {
+            checkDn( randomDn( random ) );
+        }
+    }
+}
@@ -24,12 +24,17 @@ package org.apache.directory.api.ldap.subtree;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.ObjectClass;
@@ -44,6 +49,7 @@ import org.apache.directory.api.ldap.model.subtree.SubtreeSpecificationParser;
 import org.apache.directory.api.ldap.schema.loader.JarLdifSchemaLoader;
 import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.parallel.Execution;
 import org.junit.jupiter.api.parallel.ExecutionMode;
@@ -452,6 +458,105 @@ public class SubtreeSpecificationParserTest
         assertTrue( isSuccessMultithreaded );
     }
 
+    /**
+     * Tests the SubtreeSpecification cache.
+     */
+    @Test
+    public void testCache() throws Exception
+    {
+        SubtreeSpecificationParser cachingParser = new SubtreeSpecificationParser( schemaManager, 2 );
+
+        assertEquals( 0d, cachingParser.getCacheHitRate() );
+
+        SubtreeSpecification ss = cachingParser.parse( SPEC_WITH_ALL_IN_ONE );
+        assertSame( ss, cachingParser.parse( SPEC_WITH_ALL_IN_ONE ) );
+        assertSame( ss, cachingParser.parse( SPEC_WITH_ALL_IN_ONE ) );
+        assertEquals( 7, ss.getMinBaseDistance() );
+
+        assertEquals( 2L, cachingParser.getCacheHitCount() );
+        assertEquals( 1L, cachingParser.getCacheMissCount() );
+        assertEquals( 2d / 3d, cachingParser.getCacheHitRate() );
+
+        // Invalid specifications are not cached
+        for ( int i = 0; i < 2; i++ )
+        {
+            try
+            {
+                cachingParser.parse( INVALID_SILLY_THING );
+                fail( "testInvalidSillyThing() should never come here..." );
+            }
+            catch ( ParseException e )
+            {
+                assertNotNull( e );
+            }
+        }
+
+        assertEquals( 3L, cachingParser.getCacheMissCount() );
+
+        // The parser without cache
+        assertFalse( ss == parser.parse( SPEC_WITH_ALL_IN_ONE ) );
+        assertEquals( 0L, parser.getCacheHitCount() + parser.getCacheMissCount() );
+    }
+
+
+    /**
+     * Compares the parsing throughput with and without cache, from 1 to 32 threads.
+     * Enable it to get some numbers.
+     */
+    @Test
+    @Disabled
+    public void testParsingPerf() throws Exception
+    {
+        String[] specs = { EMPTY_SPEC, SPEC_WITH_SPECIFICEXCLUSIONS, SPEC_WITH_MINIMUM_AND_MAXIMUM,
+            SPEC_WITH_REFINEMENT, SPEC_WITH_ALL_IN_ONE };
+        int nbParses = 100000;
+
+        for ( int nbThreads = 1; nbThreads <= 32; nbThreads *= 2 )
+        {
+            SubtreeSpecificationParser cachingParser = new SubtreeSpecificationParser( schemaManager, 100 );
+            long uncachedTime = measure( parser, nbThreads, nbParses, specs );
+            long cachedTime = measure( cachingParser, nbThreads, nbParses, specs );
+
+            System.out.println( nbThreads + " threads, " + nbParses + " parses per thread : no cache "
+                + uncachedTime + " ms, cache " + cachedTime + " ms (hit rate " + cachingParser.getCacheHitRate()
+                + ")" );
+        }
+    }
+
+
+    private static long measure( SubtreeSpecificationParser ssParser, int nbThreads, int nbParses, String[] specs )
+        throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( nbThreads );
+        List<Callable<Object>> tasks = new ArrayList<>();
+
+        for ( int t = 0; t < nbThreads; t++ )
+        {
+            tasks.add( () ->
+            {
+                for ( int i = 0; i < nbParses; i++ )
+                {
+                    ssParser.parse( specs[i % specs.length] );
+                }
+
+                return null;
+            } );
+        }
+
+        long t0 = System.currentTimeMillis();
+
+        for ( Future<Object> future : executor.invokeAll( tasks ) )
+        {
+            future.get();
+        }
+
+        long t1 = System.currentTimeMillis();
+        executor.shutdown();
+
+        return t1 - t0;
+    }
+
+
     /**
      * Used to test multithreaded use of a single parser.
      */
@@ -43,6 +43,7 @@ public class DefaultLdapConnectionFactory implements LdapConnectionFactory
     private LdapApiService apiService;
     private LdapConnectionConfig connectionConfig;
     private long timeout;
+    private LdapServerMetadata serverMetadata;
 
 
     /**
@@ -105,6 +106,12 @@ public class DefaultLdapConnectionFactory implements LdapConnectionFactory
     {
         connection.setTimeOut( timeout );
         connection.setBinaryAttributeDetector( connectionConfig.getBinaryAttributeDetector() );
+
+        if ( ( serverMetadata != null ) && ( connection instanceof LdapNetworkConnection ) )
+        {
+            ( ( LdapNetworkConnection ) connection ).setServerMetadata( serverMetadata );
+        }
+
         return connection;
     }
 
@@ -171,4 +178,27 @@ public class DefaultLdapConnectionFactory implements LdapConnectionFactory
     {
         this.timeout = timeout;
     }
+
+
+    /**
+     * @return The server metadata shared by the connections created by this factory, or null
+     */
+    public LdapServerMetadata getServerMetadata()
+    {
+        return serverMetadata;
+    }
+
+
+    /**
+     * Sets the server metadata shared by all the connections created by this factory : the
+     * rootDSE, the supported controls and the schema are fetched once for all of them.
+     *
+     * @param serverMetadata The shared server metadata, or null
+     *
+     * @see LdapServerMetadata
+     */
+    public void setServerMetadata( LdapServerMetadata serverMetadata )
+    {
+        this.serverMetadata = serverMetadata;
+    }
 }
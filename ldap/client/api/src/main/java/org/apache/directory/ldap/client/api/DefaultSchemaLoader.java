@@ -24,8 +24,11 @@ package org.apache.directory.ldap.client.api;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.directory.api.i18n.I18n;
@@ -90,6 +93,31 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
     /** the subschemaSubentry DN */
     private Dn subschemaSubentryDn;
 
+    /** The local schema cache, if any */
+    private SchemaCache schemaCache;
+
+    /** The server identity used as the cache key, if given by the caller */
+    private String serverId;
+
+    /** The schema entries, per schema name and SubschemaSubentry attribute, when the schema is cached */
+    private Map<String, Map<String, List<Entry>>> schemaEntries;
+
+    /** The subschemaSubentry attributes containing the schema descriptions, in loading order */
+    private static final String[] SCHEMA_ATTRIBUTES =
+        {
+            SchemaConstants.ATTRIBUTE_TYPES_AT,
+            SchemaConstants.COMPARATORS_AT,
+            SchemaConstants.DIT_CONTENT_RULES_AT,
+            SchemaConstants.DIT_STRUCTURE_RULES_AT,
+            SchemaConstants.LDAP_SYNTAXES_AT,
+            SchemaConstants.MATCHING_RULES_AT,
+            SchemaConstants.MATCHING_RULE_USE_AT,
+            SchemaConstants.NORMALIZERS_AT,
+            SchemaConstants.NAME_FORMS_AT,
+            SchemaConstants.OBJECT_CLASSES_AT,
+            SchemaConstants.SYNTAX_CHECKERS_AT
+        };
+
     /** The SubschemaSubentry descriptions parsers */
     private static final AttributeTypeDescriptionSchemaParser AT_DESCR_SCHEMA_PARSER = new AttributeTypeDescriptionSchemaParser();
     private static final DitStructureRuleDescriptionSchemaParser DSR_DESCR_SCHEMA_PARSER = new DitStructureRuleDescriptionSchemaParser();
@@ -131,6 +159,44 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
      *                   while loading the schema entries
      */
     public DefaultSchemaLoader( LdapConnection connection, boolean relaxed ) throws LdapException
+    {
+        this( connection, relaxed, null );
+    }
+
+
+    /**
+     * Creates a new instance of DefaultSchemaLoader, using a local schema cache. The schema
+     * is only downloaded if it is not in the cache, or if the subschemaSubentry modifyTimestamp
+     * or entryCSN have changed since it was cached.
+     *
+     * @param connection the LDAP connection
+     * @param relaxed initial setting for the relaxed mode
+     * @param schemaCache the local schema cache, or null
+     * @throws LdapException if the connection is not authenticated or if there are any problems
+     *                   while loading the schema entries
+     */
+    public DefaultSchemaLoader( LdapConnection connection, boolean relaxed, SchemaCache schemaCache )
+        throws LdapException
+    {
+        this( connection, relaxed, schemaCache, null );
+    }
+
+
+    /**
+     * Creates a new instance of DefaultSchemaLoader, using a local schema cache. The cached
+     * schemas are identified by the server host and port, taken from the connection
+     * configuration, or by the given server identity. The schema is not cached if the server
+     * can't be identified.
+     *
+     * @param connection the LDAP connection
+     * @param relaxed initial setting for the relaxed mode
+     * @param schemaCache the local schema cache, or null
+     * @param serverId the server identity, or null to use the connection host and port
+     * @throws LdapException if the connection is not authenticated or if there are any problems
+     *                   while loading the schema entries
+     */
+    public DefaultSchemaLoader( LdapConnection connection, boolean relaxed, SchemaCache schemaCache,
+        String serverId ) throws LdapException
     {
         if ( connection == null )
         {
@@ -138,6 +204,8 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
         }
 
         this.connection = connection;
+        this.schemaCache = schemaCache;
+        this.serverId = serverId;
         setRelaxed( relaxed );
         setQuirksMode( relaxed );
 
@@ -270,7 +338,10 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
 
 
     /**
-     * Load all the schemas.
+     * Load all the schemas, from the local cache if the subschemaSubentry has not been
+     * modified since it was cached, or from the server. On a cache hit, the schemas
+     * contain no SchemaObject : the loader directly gives the cached schema entries to
+     * the SchemaManager, without parsing the descriptions.
      * 
      * @throws LdapException If one schema can't be loaded
      */
@@ -281,78 +352,247 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
             LOG.debug( I18n.msg( I18n.MSG_04160_INITIALIZING_SCHEMAS ) );
         }
 
+        String cacheKey = null;
+
+        if ( schemaCache != null )
+        {
+            cacheKey = getCacheKey();
+
+            if ( ( cacheKey == null ) && LOG.isDebugEnabled() )
+            {
+                LOG.debug( I18n.msg( I18n.MSG_04193_SCHEMA_NOT_CACHED, subschemaSubentryDn ) );
+            }
+        }
+
+        if ( cacheKey != null )
+        {
+            // Check if the cached schema is still valid
+            Entry stamps = connection.lookup( subschemaSubentryDn, SchemaConstants.MODIFY_TIMESTAMP_AT,
+                SchemaConstants.ENTRY_CSN_AT );
+            Map<String, Map<String, List<Entry>>> cachedSchemas = schemaCache.load( cacheKey, getValidator( stamps ) );
+
+            if ( cachedSchemas != null )
+            {
+                if ( LOG.isDebugEnabled() )
+                {
+                    LOG.debug( I18n.msg( I18n.MSG_04179_SCHEMA_LOADED_FROM_CACHE, cacheKey ) );
+                }
+
+                for ( String schemaName : cachedSchemas.keySet() )
+                {
+                    schemaMap.put( schemaName, new DefaultSchema( this, schemaName ) );
+                }
+
+                schemaEntries = cachedSchemas;
+
+                return;
+            }
+        }
+
+        Entry subschemaSubentry = downloadSchemas( cacheKey != null );
+
+        loadAttributeTypes( getDescriptions( subschemaSubentry, SchemaConstants.ATTRIBUTE_TYPES_AT ) );
+        loadComparators( getDescriptions( subschemaSubentry, SchemaConstants.COMPARATORS_AT ) );
+        loadDitContentRules( getDescriptions( subschemaSubentry, SchemaConstants.DIT_CONTENT_RULES_AT ) );
+        loadDitStructureRules( getDescriptions( subschemaSubentry, SchemaConstants.DIT_STRUCTURE_RULES_AT ) );
+        loadLdapSyntaxes( getDescriptions( subschemaSubentry, SchemaConstants.LDAP_SYNTAXES_AT ) );
+        loadMatchingRules( getDescriptions( subschemaSubentry, SchemaConstants.MATCHING_RULES_AT ) );
+        loadMatchingRuleUses( getDescriptions( subschemaSubentry, SchemaConstants.MATCHING_RULE_USE_AT ) );
+        loadNormalizers( getDescriptions( subschemaSubentry, SchemaConstants.NORMALIZERS_AT ) );
+        loadNameForms( getDescriptions( subschemaSubentry, SchemaConstants.NAME_FORMS_AT ) );
+        loadObjectClasses( getDescriptions( subschemaSubentry, SchemaConstants.OBJECT_CLASSES_AT ) );
+        loadSyntaxCheckers( getDescriptions( subschemaSubentry, SchemaConstants.SYNTAX_CHECKERS_AT ) );
+
+        if ( cacheKey != null )
+        {
+            // The converted entries are kept, the SchemaManager will ask for them
+            Map<String, Map<String, List<Entry>>> convertedSchemas = convertSchemas();
+            schemaCache.store( cacheKey, getValidator( subschemaSubentry ), convertedSchemas );
+            schemaEntries = convertedSchemas;
+        }
+    }
+
+
+    /**
+     * Reads all the schema descriptions from the SubschemaSubentry.
+     * 
+     * @param cached Tells if the schema will be cached : the stamps are then fetched too
+     * @return The SubschemaSubentry
+     * @throws LdapException If the SubschemaSubentry can't be read
+     */
+    private Entry downloadSchemas( boolean cached ) throws LdapException
+    {
+        String[] attributes = SCHEMA_ATTRIBUTES;
+
+        if ( cached )
+        {
+            // Also fetch the stamps, to tag the cached schema
+            attributes = Arrays.copyOf( SCHEMA_ATTRIBUTES, SCHEMA_ATTRIBUTES.length + 2 );
+            attributes[SCHEMA_ATTRIBUTES.length] = SchemaConstants.MODIFY_TIMESTAMP_AT;
+            attributes[SCHEMA_ATTRIBUTES.length + 1] = SchemaConstants.ENTRY_CSN_AT;
+        }
+
         // Load all the elements from the SubschemaSubentry
-        Entry subschemaSubentry = connection.lookup( subschemaSubentryDn,
-            SchemaConstants.ATTRIBUTE_TYPES_AT,
-            SchemaConstants.COMPARATORS_AT,
-            SchemaConstants.DIT_CONTENT_RULES_AT,
-            SchemaConstants.DIT_STRUCTURE_RULES_AT,
-            SchemaConstants.LDAP_SYNTAXES_AT,
-            SchemaConstants.MATCHING_RULES_AT,
-            SchemaConstants.MATCHING_RULE_USE_AT,
-            SchemaConstants.NAME_FORMS_AT,
-            SchemaConstants.NORMALIZERS_AT,
-            SchemaConstants.OBJECT_CLASSES_AT,
-            SchemaConstants.SYNTAX_CHECKERS_AT
-            );
+        return connection.lookup( subschemaSubentryDn, attributes );
+    }
 
-        // Load all the AT
-        Attribute attributeTypes = subschemaSubentry.get( SchemaConstants.ATTRIBUTE_TYPES_AT );
-        loadAttributeTypes( attributeTypes );
 
-        // Load all the C
-        Attribute comparators = subschemaSubentry.get( SchemaConstants.COMPARATORS_AT );
-        loadComparators( comparators );
+    /**
+     * @return The descriptions stored in a SubschemaSubentry attribute, or null if it's absent
+     */
+    private static List<String> getDescriptions( Entry subschemaSubentry, String attributeId )
+    {
+        Attribute attribute = subschemaSubentry.get( attributeId );
 
-        // Load all the DCR
-        Attribute ditContentRules = subschemaSubentry.get( SchemaConstants.DIT_CONTENT_RULES_AT );
-        loadDitContentRules( ditContentRules );
+        if ( attribute == null )
+        {
+            return null;
+        }
 
-        // Load all the DSR
-        Attribute ditStructureRules = subschemaSubentry.get( SchemaConstants.DIT_STRUCTURE_RULES_AT );
-        loadDitStructureRules( ditStructureRules );
+        List<String> values = new ArrayList<>( attribute.size() );
 
-        // Load all the LS
-        Attribute ldapSytaxes = subschemaSubentry.get( SchemaConstants.LDAP_SYNTAXES_AT );
-        loadLdapSyntaxes( ldapSytaxes );
+        for ( Value value : attribute )
+        {
+            values.add( value.getString() );
+        }
 
-        // Load all the MR
-        Attribute matchingRules = subschemaSubentry.get( SchemaConstants.MATCHING_RULES_AT );
-        loadMatchingRules( matchingRules );
+        return values;
+    }
 
-        // Load all the MRU
-        Attribute matchingRuleUse = subschemaSubentry.get( SchemaConstants.MATCHING_RULE_USE_AT );
-        loadMatchingRuleUses( matchingRuleUse );
 
-        // Load all the N
-        Attribute normalizers = subschemaSubentry.get( SchemaConstants.NORMALIZERS_AT );
-        loadNormalizers( normalizers );
+    /**
+     * Converts the parsed schemas to the entries given to the SchemaManager.
+     * 
+     * @return The entries, per schema name and per SubschemaSubentry attribute
+     * @throws LdapException If a SchemaObject can't be converted
+     */
+    private Map<String, Map<String, List<Entry>>> convertSchemas() throws LdapException
+    {
+        Map<String, Map<String, List<Entry>>> schemas = new LinkedHashMap<>();
+
+        try
+        {
+            for ( Schema schema : schemaMap.values() )
+            {
+                Map<String, List<Entry>> entries = new LinkedHashMap<>();
+                entries.put( SchemaConstants.ATTRIBUTE_TYPES_AT, loadAttributeTypes( schema ) );
+                entries.put( SchemaConstants.COMPARATORS_AT, loadComparators( schema ) );
+                entries.put( SchemaConstants.DIT_CONTENT_RULES_AT, loadDitContentRules( schema ) );
+                entries.put( SchemaConstants.DIT_STRUCTURE_RULES_AT, loadDitStructureRules( schema ) );
+                entries.put( SchemaConstants.LDAP_SYNTAXES_AT, loadSyntaxes( schema ) );
+                entries.put( SchemaConstants.MATCHING_RULES_AT, loadMatchingRules( schema ) );
+                entries.put( SchemaConstants.MATCHING_RULE_USE_AT, loadMatchingRuleUses( schema ) );
+                entries.put( SchemaConstants.NORMALIZERS_AT, loadNormalizers( schema ) );
+                entries.put( SchemaConstants.NAME_FORMS_AT, loadNameForms( schema ) );
+                entries.put( SchemaConstants.OBJECT_CLASSES_AT, loadObjectClasses( schema ) );
+                entries.put( SchemaConstants.SYNTAX_CHECKERS_AT, loadSyntaxCheckers( schema ) );
+                schemas.put( schema.getSchemaName(), entries );
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapException( ioe.getMessage(), ioe );
+        }
+
+        return schemas;
+    }
 
-        // Load all the NF
-        Attribute nameForms = subschemaSubentry.get( SchemaConstants.NAME_FORMS_AT );
-        loadNameForms( nameForms );
 
-        // Load all the OC
-        Attribute objectClasses = subschemaSubentry.get( SchemaConstants.OBJECT_CLASSES_AT );
-        loadObjectClasses( objectClasses );
+    /**
+     * @return The converted entries of some schemas, for a SubschemaSubentry attribute
+     */
+    private List<Entry> getSchemaEntries( String attributeId, Schema... schemas )
+    {
+        List<Entry> entries = new ArrayList<>();
+
+        for ( Schema schema : schemas )
+        {
+            Map<String, List<Entry>> entriesPerAttribute = schemaEntries.get( schema.getSchemaName() );
 
-        // Load all the SC
-        Attribute syntaxCheckers = subschemaSubentry.get( SchemaConstants.SYNTAX_CHECKERS_AT );
-        loadSyntaxCheckers( syntaxCheckers );
+            if ( ( entriesPerAttribute != null ) && ( entriesPerAttribute.get( attributeId ) != null ) )
+            {
+                entries.addAll( entriesPerAttribute.get( attributeId ) );
+            }
+        }
+
+        return entries;
     }
 
 
-    private void loadAttributeTypes( Attribute attributeTypes ) throws LdapException
+    /**
+     * @return The key of the cached schema : the server identity, given by the caller or
+     * built with the connection host and port, and the subschemaSubentry DN. null if the
+     * server is unknown.
+     */
+    private String getCacheKey()
+    {
+        String server = serverId;
+
+        if ( server == null )
+        {
+            LdapConnection unwrapped = connection;
+
+            // The pooled and monitored connections are wrappers
+            while ( unwrapped instanceof LdapConnectionWrapper )
+            {
+                unwrapped = ( ( LdapConnectionWrapper ) unwrapped ).wrapped();
+            }
+
+            if ( unwrapped instanceof LdapAsyncConnection )
+            {
+                LdapConnectionConfig config = ( ( LdapAsyncConnection ) unwrapped ).getConfig();
+
+                if ( ( config != null ) && !Strings.isEmpty( config.getLdapHost() ) )
+                {
+                    server = Strings.toLowerCaseAscii( config.getLdapHost() ) + ':' + config.getLdapPort();
+                }
+            }
+        }
+
+        if ( server == null )
+        {
+            return null;
+        }
+
+        return server + '/' + subschemaSubentryDn.getNormName();
+    }
+
+
+    /**
+     * @return The cache validator built with the SubschemaSubentry modifyTimestamp and entryCSN.
+     * The schemas parsed in relaxed mode are cached apart, as a strict parser may reject them.
+     */
+    private String getValidator( Entry subschemaSubentry ) throws LdapInvalidAttributeValueException
+    {
+        if ( subschemaSubentry == null )
+        {
+            return null;
+        }
+
+        Attribute modifyTimestamp = subschemaSubentry.get( SchemaConstants.MODIFY_TIMESTAMP_AT );
+        Attribute entryCsn = subschemaSubentry.get( SchemaConstants.ENTRY_CSN_AT );
+
+        String validator = SchemaCache.getValidator( modifyTimestamp == null ? null : modifyTimestamp.getString(),
+            entryCsn == null ? null : entryCsn.getString() );
+
+        if ( ( validator != null ) && isRelaxed() )
+        {
+            return validator + "/relaxed";
+        }
+
+        return validator;
+    }
+
+
+    private void loadAttributeTypes( List<String> attributeTypes ) throws LdapException
     {
         if ( attributeTypes == null )
         {
             return;
         }
 
-        for ( Value value : attributeTypes )
+        for ( String desc : attributeTypes )
         {
-            String desc = value.getString();
-
             try
             {
                 AttributeType attributeType = AT_DESCR_SCHEMA_PARSER.parse( desc );
@@ -367,17 +607,15 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
     }
 
 
-    private void loadComparators( Attribute comparators ) throws LdapException
+    private void loadComparators( List<String> comparators ) throws LdapException
     {
         if ( comparators == null )
         {
             return;
         }
 
-        for ( Value value : comparators )
+        for ( String desc : comparators )
         {
-            String desc = value.getString();
-
             try
             {
                 LdapComparatorDescription comparator = C_DESCR_SCHEMA_PARSER.parse( desc );
@@ -392,17 +630,15 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
     }
 
 
-    private void loadDitContentRules( Attribute ditContentRules ) throws LdapException
+    private void loadDitContentRules( List<String> ditContentRules ) throws LdapException
     {
         if ( ditContentRules == null )
         {
             return;
         }
 
-        for ( Value value : ditContentRules )
+        for ( String desc : ditContentRules )
         {
-            String desc = value.getString();
-
             try
             {
                 DitContentRule ditContentRule = DCR_DESCR_SCHEMA_PARSER.parse( desc );
@@ -417,17 +653,15 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
     }
 
 
-    private void loadDitStructureRules( Attribute ditStructureRules ) throws LdapException
+    private void loadDitStructureRules( List<String> ditStructureRules ) throws LdapException
     {
         if ( ditStructureRules == null )
         {
             return;
         }
 
-        for ( Value value : ditStructureRules )
+        for ( String desc : ditStructureRules )
         {
-            String desc = value.getString();
-
             try
             {
                 DitStructureRule ditStructureRule = DSR_DESCR_SCHEMA_PARSER.parse( desc );
@@ -442,17 +676,15 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
     }
 
 
-    private void loadLdapSyntaxes( Attribute ldapSyntaxes ) throws LdapException
+    private void loadLdapSyntaxes( List<String> ldapSyntaxes ) throws LdapException
     {
         if ( ldapSyntaxes == null )
         {
             return;
         }
 
-        for ( Value value : ldapSyntaxes )
+        for ( String desc : ldapSyntaxes )
         {
-            String desc = value.getString();
-
             try
             {
                 LdapSyntax ldapSyntax = LS_DESCR_SCHEMA_PARSER.parse( desc );
@@ -467,17 +699,15 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
     }
 
 
-    private void loadMatchingRules( Attribute matchingRules ) throws LdapException
+    private void loadMatchingRules( List<String> matchingRules ) throws LdapException
     {
         if ( matchingRules == null )
         {
             return;
         }
 
-        for ( Value value : matchingRules )
+        for ( String desc : matchingRules )
         {
-            String desc = value.getString();
-
             try
             {
                 MatchingRule matchingRule = MR_DESCR_SCHEMA_PARSER.parse( desc );
@@ -492,17 +722,15 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
     }
 
 
-    private void loadMatchingRuleUses( Attribute matchingRuleUses ) throws LdapException
+    private void loadMatchingRuleUses( List<String> matchingRuleUses ) throws LdapException
     {
         if ( matchingRuleUses == null )
         {
             return;
         }
 
-        for ( Value value : matchingRuleUses )
+        for ( String desc : matchingRuleUses )
         {
-            String desc = value.getString();
-
             try
             {
                 MatchingRuleUse matchingRuleUse = MRU_DESCR_SCHEMA_PARSER.parse( desc );
@@ -517,17 +745,15 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
     }
 
 
-    private void loadNameForms( Attribute nameForms ) throws LdapException
+    private void loadNameForms( List<String> nameForms ) throws LdapException
     {
         if ( nameForms == null )
         {
             return;
         }
 
-        for ( Value value : nameForms )
+        for ( String desc : nameForms )
         {
-            String desc = value.getString();
-
             try
             {
                 NameForm nameForm = NF_DESCR_SCHEMA_PARSER.parse( desc );
@@ -542,17 +768,15 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
     }
 
 
-    private void loadNormalizers( Attribute normalizers ) throws LdapException
+    private void loadNormalizers( List<String> normalizers ) throws LdapException
     {
         if ( normalizers == null )
         {
             return;
         }
 
-        for ( Value value : normalizers )
+        for ( String desc : normalizers )
         {
-            String desc = value.getString();
-
             try
             {
                 NormalizerDescription normalizer = N_DESCR_SCHEMA_PARSER.parse( desc );
@@ -567,17 +791,15 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
     }
 
 
-    private void loadObjectClasses( Attribute objectClasses ) throws LdapException
+    private void loadObjectClasses( List<String> objectClasses ) throws LdapException
     {
         if ( objectClasses == null )
         {
             return;
         }
 
-        for ( Value value : objectClasses )
+        for ( String desc : objectClasses )
         {
-            String desc = value.getString();
-
             try
             {
                 ObjectClass objectClass = OC_DESCR_SCHEMA_PARSER.parse( desc );
@@ -592,17 +814,15 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
     }
 
 
-    private void loadSyntaxCheckers( Attribute syntaxCheckers ) throws LdapException
+    private void loadSyntaxCheckers( List<String> syntaxCheckers ) throws LdapException
     {
         if ( syntaxCheckers == null )
         {
             return;
         }
 
-        for ( Value value : syntaxCheckers )
+        for ( String desc : syntaxCheckers )
         {
-            String desc = value.getString();
-
             try
             {
                 SyntaxCheckerDescription syntaxChecker = SC_DESCR_SCHEMA_PARSER.parse( desc );
@@ -657,6 +877,11 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
             return attributeTypeEntries;
         }
 
+        if ( schemaEntries != null )
+        {
+            return getSchemaEntries( SchemaConstants.ATTRIBUTE_TYPES_AT, schemas );
+        }
+
         AttributesFactory factory = new AttributesFactory();
 
         for ( Schema schema : schemas )
@@ -695,6 +920,11 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
             return comparatorEntries;
         }
 
+        if ( schemaEntries != null )
+        {
+            return getSchemaEntries( SchemaConstants.COMPARATORS_AT, schemas );
+        }
+
         for ( Schema schema : schemas )
         {
             Set<SchemaObjectWrapper> schemaObjectWrappers = schema.getContent();
@@ -730,6 +960,11 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
             return ditContentRuleEntries;
         }
 
+        if ( schemaEntries != null )
+        {
+            return getSchemaEntries( SchemaConstants.DIT_CONTENT_RULES_AT, schemas );
+        }
+
         AttributesFactory factory = new AttributesFactory();
 
         for ( Schema schema : schemas )
@@ -768,6 +1003,11 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
             return ditStructureRuleEntries;
         }
 
+        if ( schemaEntries != null )
+        {
+            return getSchemaEntries( SchemaConstants.DIT_STRUCTURE_RULES_AT, schemas );
+        }
+
         AttributesFactory factory = new AttributesFactory();
 
         for ( Schema schema : schemas )
@@ -806,6 +1046,11 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
             return matchingRuleUseEntries;
         }
 
+        if ( schemaEntries != null )
+        {
+            return getSchemaEntries( SchemaConstants.MATCHING_RULE_USE_AT, schemas );
+        }
+
         AttributesFactory factory = new AttributesFactory();
 
         for ( Schema schema : schemas )
@@ -844,6 +1089,11 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
             return matchingRuleEntries;
         }
 
+        if ( schemaEntries != null )
+        {
+            return getSchemaEntries( SchemaConstants.MATCHING_RULES_AT, schemas );
+        }
+
         AttributesFactory factory = new AttributesFactory();
 
         for ( Schema schema : schemas )
@@ -882,6 +1132,11 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
             return nameFormEntries;
         }
 
+        if ( schemaEntries != null )
+        {
+            return getSchemaEntries( SchemaConstants.NAME_FORMS_AT, schemas );
+        }
+
         AttributesFactory factory = new AttributesFactory();
 
         for ( Schema schema : schemas )
@@ -920,6 +1175,11 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
             return normalizerEntries;
         }
 
+        if ( schemaEntries != null )
+        {
+            return getSchemaEntries( SchemaConstants.NORMALIZERS_AT, schemas );
+        }
+
         for ( Schema schema : schemas )
         {
             Set<SchemaObjectWrapper> schemaObjectWrappers = schema.getContent();
@@ -955,6 +1215,11 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
             return objectClassEntries;
         }
 
+        if ( schemaEntries != null )
+        {
+            return getSchemaEntries( SchemaConstants.OBJECT_CLASSES_AT, schemas );
+        }
+
         AttributesFactory factory = new AttributesFactory();
 
         for ( Schema schema : schemas )
@@ -993,6 +1258,11 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
             return syntaxCheckerEntries;
         }
 
+        if ( schemaEntries != null )
+        {
+            return getSchemaEntries( SchemaConstants.SYNTAX_CHECKERS_AT, schemas );
+        }
+
         for ( Schema schema : schemas )
         {
             Set<SchemaObjectWrapper> schemaObjectWrappers = schema.getContent();
@@ -1028,6 +1298,11 @@ public class DefaultSchemaLoader extends AbstractSchemaLoader
             return syntaxEntries;
         }
 
+        if ( schemaEntries != null )
+        {
+            return getSchemaEntries( SchemaConstants.LDAP_SYNTAXES_AT, schemas );
+        }
+
         AttributesFactory factory = new AttributesFactory();
 
         for ( Schema schema : schemas )
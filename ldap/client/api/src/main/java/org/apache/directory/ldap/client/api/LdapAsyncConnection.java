@@ -22,6 +22,8 @@ package org.apache.directory.ldap.client.api;
 
 import java.io.IOException;
 
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.codec.api.PreparedSearchRequest;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.AddRequest;
@@ -196,6 +198,27 @@ public interface LdapAsyncConnection extends LdapConnection
     SearchFuture searchAsync( SearchRequest searchRequest ) throws LdapException;
 
 
+    /**
+     * Do an asynchronous prepared search. Only the message ID and the values are encoded.
+     * The default implementation binds the values and performs a regular asynchronous search.
+     *
+     * @param preparedSearchRequest The prepared search request, see {@link #prepareSearch(SearchRequest, String)}
+     * @param values The values replacing the place-holders, in their order
+     * @return the search operation's future
+     * @throws LdapException if some error occurred
+     */
+    default SearchFuture searchAsync( PreparedSearchRequest preparedSearchRequest, String... values )
+        throws LdapException
+    {
+        if ( preparedSearchRequest == null )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_04130_CANNOT_PROCESS_NULL_SEARCH_REQ ) );
+        }
+
+        return searchAsync( preparedSearchRequest.newSearchRequest( values ) );
+    }
+
+
     /**
      * Performs an asynchronous modify operation based on the modifications present in
      * the ModifyRequest.
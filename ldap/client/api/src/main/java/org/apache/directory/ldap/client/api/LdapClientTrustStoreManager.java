@@ -21,6 +21,7 @@ package org.apache.directory.ldap.client.api;
 
 
 import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,18 +29,26 @@ import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
@@ -48,6 +57,13 @@ import java.util.List;
  * It is used during certificate validation operations within JSSE.
  *
  * Note: This class allows self-signed certificates to pass the validation checks.
+ * <p>
+ * The trust store is loaded once, and kept in an immutable snapshot shared by all the
+ * concurrent handshakes. The trust store file is checked for modifications at most once per
+ * {@link #setReloadCheckInterval(long) reload check interval}, and reloaded if it has changed.
+ * The successfully validated certificate chains are remembered, keyed by their SHA-256
+ * fingerprint, until one of their certificates expires or the trust store is reloaded, so that
+ * the reconnections to the same servers don't validate the same chains again.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -67,8 +83,96 @@ public final class LdapClientTrustStoreManager implements X509TrustManager, Seri
     // This is found on the classpath if trust.store.onclasspath = true (default), otherwise must include exact location on filepath:
     private String trustStoreFile;
     private String trustStoreFormat;
-    
-    private X509TrustManager[] x509TrustManagers;
+
+    /** The default interval between two checks of the trust store file modification, in ms */
+    public static final long DEFAULT_RELOAD_CHECK_INTERVAL = 1000L;
+
+    /** The maximum number of remembered valid chains */
+    private static final int MAX_VALID_CHAINS = 1024;
+
+    /** The interval between two checks of the trust store file modification, in ms */
+    private volatile long reloadCheckInterval = DEFAULT_RELOAD_CHECK_INTERVAL;
+
+    /** The loaded trust store */
+    private transient volatile TrustStoreSnapshot snapshot;
+
+    /** The last time the trust store file modification has been checked */
+    private transient volatile long lastReloadCheck;
+
+
+    /**
+     * The trust managers built from a loaded trust store, and the chains they have validated.
+     * A new snapshot is created when the trust store is reloaded.
+     */
+    private static final class TrustStoreSnapshot
+    {
+        /** The trust managers */
+        private final X509TrustManager[] trustManagers;
+
+        /** The certificates accepted by the trust managers */
+        private final X509Certificate[] acceptedIssuers;
+
+        /** The trust store file modification date when it was loaded */
+        private final long lastModified;
+
+        /** The trust store file length when it was loaded */
+        private final long length;
+
+        /** The validated chains, and the time until which they stay valid */
+        private final ConcurrentMap<ByteBuffer, ValidChain> validChains = new ConcurrentHashMap<>();
+
+
+        private TrustStoreSnapshot( X509TrustManager[] trustManagers, long lastModified, long length )
+        {
+            this.trustManagers = trustManagers;
+            this.lastModified = lastModified;
+            this.length = length;
+
+            List<X509Certificate> certificates = new ArrayList<>();
+
+            for ( X509TrustManager trustManager : trustManagers )
+            {
+                for ( X509Certificate certificate : trustManager.getAcceptedIssuers() )
+                {
+                    certificates.add( certificate );
+                }
+            }
+
+            acceptedIssuers = certificates.toArray( new X509Certificate[]{} );
+        }
+    }
+
+
+    /**
+     * The validity period of a validated chain, ie the intersection of its certificates' ones
+     */
+    private static final class ValidChain
+    {
+        private final long notBefore;
+        private final long notAfter;
+
+
+        private ValidChain( X509Certificate[] x509Chain )
+        {
+            long start = Long.MIN_VALUE;
+            long end = Long.MAX_VALUE;
+
+            for ( X509Certificate x509Cert : x509Chain )
+            {
+                start = Math.max( start, x509Cert.getNotBefore().getTime() );
+                end = Math.min( end, x509Cert.getNotAfter().getTime() );
+            }
+
+            notBefore = start;
+            notAfter = end;
+        }
+
+
+        private boolean isValid( long now )
+        {
+            return ( now >= notBefore ) && ( now <= notAfter );
+        }
+    }
 
 
     /**
@@ -108,6 +212,17 @@ public final class LdapClientTrustStoreManager implements X509TrustManager, Seri
     }
 
 
+    /**
+     * Sets the interval between two checks of the trust store file modification.
+     *
+     * @param reloadCheckInterval The interval in ms, 0 to check the file on every validation
+     */
+    public void setReloadCheckInterval( long reloadCheckInterval )
+    {
+        this.reloadCheckInterval = reloadCheckInterval;
+    }
+
+
     /**
      * Determine if client certificate is to be trusted.
      *
@@ -115,13 +230,9 @@ public final class LdapClientTrustStoreManager implements X509TrustManager, Seri
      * @param authNType The key exchange algorithm being used
      * @throws CertificateException If the trustManager cannot be found 
      */
-    public synchronized void checkClientTrusted( X509Certificate[] x509Chain, String authNType ) throws CertificateException
+    public void checkClientTrusted( X509Certificate[] x509Chain, String authNType ) throws CertificateException
     {
-        // For each certificate in the chain, check validity:
-        for ( X509TrustManager trustMgr : getTrustManagers( x509Chain ) )
-        {
-            trustMgr.checkClientTrusted( x509Chain, authNType );
-        }
+        checkTrusted( x509Chain, authNType, true );
     }
 
 
@@ -132,13 +243,10 @@ public final class LdapClientTrustStoreManager implements X509TrustManager, Seri
      * @param authNType The key exchange algorithm being used
      * @throws CertificateException If the trustManager cannot be found 
      */
-    public synchronized void checkServerTrusted( X509Certificate[] x509Chain, String authNType ) throws
+    public void checkServerTrusted( X509Certificate[] x509Chain, String authNType ) throws
         CertificateException
     {
-        for ( X509TrustManager trustManager : getTrustManagers( x509Chain ) )
-        {
-            trustManager.checkServerTrusted( x509Chain, authNType );
-        }
+        checkTrusted( x509Chain, authNType, false );
     }
 
 
@@ -147,50 +255,33 @@ public final class LdapClientTrustStoreManager implements X509TrustManager, Seri
      *
      * @return array of accepted issuers
      */
-    public synchronized X509Certificate[] getAcceptedIssuers()
+    public X509Certificate[] getAcceptedIssuers()
     {
-        List<X509Certificate> certificates = new ArrayList<>();
-        
-        for ( X509TrustManager trustManager : x509TrustManagers )
+        try
         {
-            for ( X509Certificate certificate : trustManager.getAcceptedIssuers() )
-            { 
-                certificates.add( certificate );
-            }
+            return getSnapshot().acceptedIssuers.clone();
         }
-            
-        return certificates.toArray( new X509Certificate[]{} );
-    }
-
+        catch ( CertificateException ce )
+        {
+            LOG.warn( ce.getMessage() );
 
-    /**
-     * Return array of trust managers to caller.  Will verify that current date is within certs validity period.
-     *
-     * @param x509Chain contains input X.509 certificate chain.
-     * @return array of X.509 trust managers.
-     * @throws CertificateException if trustStoreFile instance variable is null.
-     */
-    private synchronized X509TrustManager[] getTrustManagers( X509Certificate[] x509Chain ) throws
-        CertificateException
-    {
-        if ( LOG.isInfoEnabled() )
-        {            
-            LOG.info( I18n.msg( I18n.MSG_04176_TRUST_MANAGER_ON_CLASSPATH, CLS_NM ) );
+            return new X509Certificate[]{};
         }
-        
-        return getTrustManagersOnClasspath( x509Chain );
     }
 
 
     /**
-     * Return array of trust managers to caller.  Will verify that current date is within certs validity period.
+     * Validates a certificate chain with the trust managers, unless it has already been
+     * validated with the same trust store. Will verify that current date is within certs
+     * validity period.
      *
-     * @param x509Chain contains input X.509 certificate chain.
-     * @return array of X.509 trust managers.
-     * @throws CertificateException if trustStoreFile instance variable is null.
+     * @param x509Chain The certificate chain
+     * @param authNType The key exchange algorithm being used
+     * @param client <tt>true</tt> for a client certificate chain
+     * @throws CertificateException If the chain is not trusted
      */
-    private synchronized X509TrustManager[] getTrustManagersOnClasspath( X509Certificate[] x509Chain ) throws
-        CertificateException
+    private void checkTrusted( X509Certificate[] x509Chain, String authNType, boolean client )
+        throws CertificateException
     {
         // If true, verify the current date is within each certificates validity period.
         if ( isExamineValidityDates )
@@ -202,40 +293,192 @@ public final class LdapClientTrustStoreManager implements X509TrustManager, Seri
                 x509Cert.checkValidity( currentDate );
             }
         }
-        
-        InputStream trustStoreInputStream;
-        
-        if ( trustStoreFile != null )
+
+        TrustStoreSnapshot current = getSnapshot();
+        ByteBuffer fingerprint = fingerprint( x509Chain, authNType, client );
+
+        if ( fingerprint != null )
         {
-            try
+            ValidChain validChain = current.validChains.get( fingerprint );
+
+            if ( ( validChain != null ) && validChain.isValid( System.currentTimeMillis() ) )
             {
-                trustStoreInputStream = new FileInputStream( trustStoreFile );
+                return;
             }
-            catch ( IOException ioe )
+        }
+
+        for ( X509TrustManager trustManager : current.trustManagers )
+        {
+            if ( client )
             {
-                throw new CertificateException( I18n.err( I18n.ERR_04175_TRUST_STORE_FILE_NULL ) );
+                trustManager.checkClientTrusted( x509Chain, authNType );
+            }
+            else
+            {
+                trustManager.checkServerTrusted( x509Chain, authNType );
             }
         }
-        else
+
+        if ( fingerprint != null )
         {
-            trustStoreInputStream = getTrustStoreInputStream();
+            if ( current.validChains.size() >= MAX_VALID_CHAINS )
+            {
+                evict( current.validChains );
+            }
+
+            current.validChains.put( fingerprint, new ValidChain( x509Chain ) );
+        }
+    }
+
+
+    /**
+     * Removes the expired chains, or all of them if none has expired
+     */
+    private static void evict( Map<ByteBuffer, ValidChain> validChains )
+    {
+        long now = System.currentTimeMillis();
+        boolean evicted = false;
+        Iterator<ValidChain> iterator = validChains.values().iterator();
+
+        while ( iterator.hasNext() )
+        {
+            if ( !iterator.next().isValid( now ) )
+            {
+                iterator.remove();
+                evicted = true;
+            }
+        }
+
+        if ( !evicted )
+        {
+            validChains.clear();
         }
-       
-        if ( trustStoreInputStream == null )
+    }
+
+
+    /**
+     * Computes the SHA-256 fingerprint of a certificate chain, used with a given key exchange algorithm.
+     *
+     * @return The fingerprint, or null if it can't be computed
+     */
+    private static ByteBuffer fingerprint( X509Certificate[] x509Chain, String authNType, boolean client )
+        throws CertificateException
+    {
+        if ( ( x509Chain == null ) || ( x509Chain.length == 0 ) )
         {
-            throw new CertificateException( I18n.err( I18n.ERR_04176_TRUST_MANAGER_NOT_FOUND ) );
+            return null;
         }
+
         try
         {
-            trustStoreInputStream.close();
+            MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+            digest.update( ( byte ) ( client ? 1 : 0 ) );
+
+            if ( authNType != null )
+            {
+                digest.update( Strings.getBytesUtf8( authNType ) );
+            }
+
+            for ( X509Certificate x509Cert : x509Chain )
+            {
+                digest.update( x509Cert.getEncoded() );
+            }
+
+            return ByteBuffer.wrap( digest.digest() );
         }
-        catch ( IOException e )
+        catch ( NoSuchAlgorithmException nsae )
         {
-            // Eat this ioexception because it shouldn't be a problem, but log just in case:
-            LOG.warn( I18n.msg( I18n.MSG_04175_TRUST_MANAGER_IO_EXCEPTION, e.getMessage() ) );
+            return null;
         }
-        
-        return loadTrustManagers( getTrustStore() );
+    }
+
+
+    /**
+     * Return the loaded trust store, loading it the first time, and reloading it if the
+     * trust store file has been modified.
+     *
+     * @return The trust store snapshot
+     * @throws CertificateException if the trust store can't be loaded
+     */
+    private TrustStoreSnapshot getSnapshot() throws CertificateException
+    {
+        TrustStoreSnapshot current = snapshot;
+
+        if ( current == null )
+        {
+            synchronized ( this )
+            {
+                current = snapshot;
+
+                if ( current == null )
+                {
+                    current = loadSnapshot();
+                    snapshot = current;
+                    lastReloadCheck = System.currentTimeMillis();
+                }
+            }
+
+            return current;
+        }
+
+        long now = System.currentTimeMillis();
+
+        if ( now - lastReloadCheck < reloadCheckInterval )
+        {
+            return current;
+        }
+
+        lastReloadCheck = now;
+        File file = new File( trustStoreFile );
+
+        if ( ( file.lastModified() == current.lastModified ) && ( file.length() == current.length ) )
+        {
+            return current;
+        }
+
+        synchronized ( this )
+        {
+            // Another thread may have reloaded it already
+            if ( snapshot == current )
+            {
+                try
+                {
+                    snapshot = loadSnapshot();
+                }
+                catch ( CertificateException ce )
+                {
+                    // The file may be being written : keep the previous trust store
+                    LOG.warn( I18n.err( I18n.ERR_04197_TRUST_STORE_RELOAD_FAILED, trustStoreFile, ce.getMessage() ) );
+                }
+            }
+
+            return snapshot;
+        }
+    }
+
+
+    /**
+     * Loads the trust store and builds its trust managers.
+     *
+     * @return The trust store snapshot
+     * @throws CertificateException if the trust store can't be loaded
+     */
+    private TrustStoreSnapshot loadSnapshot() throws CertificateException
+    {
+        // Read the file attributes first, so that a modification done while loading it is not missed
+        File file = new File( trustStoreFile );
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        TrustStoreSnapshot loaded = new TrustStoreSnapshot( loadTrustManagers( getTrustStore() ), lastModified,
+            length );
+
+        if ( LOG.isInfoEnabled() )
+        {
+            LOG.info( I18n.msg( I18n.MSG_04192_TRUST_STORE_LOADED, trustStoreFile ) );
+        }
+
+        return loaded;
     }
 
 
@@ -254,12 +497,14 @@ public final class LdapClientTrustStoreManager implements X509TrustManager, Seri
                 .getDefaultAlgorithm() );
             trustManagerFactory.init( trustStore );
             TrustManager[] trustManagers = trustManagerFactory.getTrustManagers();
-            x509TrustManagers = new X509TrustManager[trustManagers.length];
+            X509TrustManager[] x509TrustManagers = new X509TrustManager[trustManagers.length];
             
             for ( int i = 0; i < trustManagers.length; i++ )
             {
                 x509TrustManagers[i] = ( X509TrustManager ) trustManagers[i];
             }
+
+            return x509TrustManagers;
         }
         catch ( NoSuchAlgorithmException e )
         {
@@ -269,8 +514,6 @@ public final class LdapClientTrustStoreManager implements X509TrustManager, Seri
         {
             throw new CertificateException( I18n.err( I18n.ERR_04178_CANT_LOAD_KEY_STORE ), e );
         }
-        
-        return x509TrustManagers;
     }
 
 
@@ -308,6 +551,10 @@ public final class LdapClientTrustStoreManager implements X509TrustManager, Seri
             
             trustStore.load( trustStoreInputStream, trustStorePw );
         }
+        catch ( FileNotFoundException e )
+        {
+            throw new CertificateException( I18n.err( I18n.ERR_04175_TRUST_STORE_FILE_NULL ), e );
+        }
         catch ( NoSuchAlgorithmException e )
         {
             throw new CertificateException( I18n.err( I18n.ERR_04177_NO_SUCH_ALGORITHM ), e );
@@ -22,11 +22,15 @@ package org.apache.directory.ldap.client.api;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.text.ParseException;
 import java.util.List;
 
+import org.apache.directory.api.asn1.EncoderException;
 import org.apache.directory.api.asn1.util.Oid;
+import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.api.BinaryAttributeDetector;
 import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.PreparedSearchRequest;
 import org.apache.directory.api.ldap.model.cursor.EntryCursor;
 import org.apache.directory.api.ldap.model.cursor.SearchCursor;
 import org.apache.directory.api.ldap.model.entry.Entry;
@@ -34,7 +38,10 @@ import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.entry.ModificationOperation;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidSearchFilterException;
+import org.apache.directory.api.ldap.model.filter.FilterTemplate;
 import org.apache.directory.api.ldap.model.message.AbandonRequest;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
 import org.apache.directory.api.ldap.model.message.AddRequest;
 import org.apache.directory.api.ldap.model.message.AddResponse;
 import org.apache.directory.api.ldap.model.message.BindRequest;
@@ -51,7 +58,9 @@ import org.apache.directory.api.ldap.model.message.ModifyDnResponse;
 import org.apache.directory.api.ldap.model.message.ModifyRequest;
 import org.apache.directory.api.ldap.model.message.ModifyResponse;
 import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
 import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.ManageDsaITImpl;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
@@ -306,6 +315,120 @@ public interface LdapConnection extends Closeable
     SearchCursor search( SearchRequest searchRequest ) throws LdapException;
 
 
+    /**
+     * Prepares a search : the filter template is parsed and checked, and the request is
+     * encoded once. The place-holders use the {@link org.apache.directory.api.ldap.model.filter.FilterEncoder#format(String, String...)}
+     * syntax, and must be whole assertion values, like in <code>(&amp;(objectClass=person)(uid={0}))</code>.
+     * The returned request can be executed many times, by many threads, with
+     * {@link #search(PreparedSearchRequest, String...)}.
+     *
+     * @param baseDn The base for the search. It must be a valid distinguished name, and can't be emtpy
+     * @param filterTemplate The filter template to use for this search. It can't be empty
+     * @param scope The search scope : OBJECT, ONELEVEL or SUBTREE
+     * @param attributes The attributes to use for this search
+     * @return The prepared search request
+     * @throws LdapException if the filter template is invalid
+     */
+    default PreparedSearchRequest prepareSearch( Dn baseDn, String filterTemplate, SearchScope scope,
+        String... attributes ) throws LdapException
+    {
+        // Create a new SearchRequest object
+        SearchRequest searchRequest = new SearchRequestImpl();
+
+        searchRequest.setBase( baseDn );
+        searchRequest.setScope( scope );
+        searchRequest.addAttributes( attributes );
+        searchRequest.setDerefAliases( AliasDerefMode.DEREF_ALWAYS );
+
+        return prepareSearch( searchRequest, filterTemplate );
+    }
+
+
+    /**
+     * Prepares a search, using a search request object. Its filter is ignored, the given
+     * filter template is used instead. The request is encoded once, later changes to the
+     * search request object are not taken into account.
+     *
+     * @param searchRequest The search request object containing all the needed information but the filter
+     * @param filterTemplate The filter template to use for this search. It can't be empty
+     * @return The prepared search request
+     * @throws LdapException if the filter template is invalid
+     */
+    default PreparedSearchRequest prepareSearch( SearchRequest searchRequest, String filterTemplate )
+        throws LdapException
+    {
+        if ( searchRequest == null )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_04130_CANNOT_PROCESS_NULL_SEARCH_REQ ) );
+        }
+
+        if ( searchRequest.getBase() == null )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_04131_CANNOT_PROCESS_SEARCH_NULL_DN ) );
+        }
+
+        FilterTemplate template;
+
+        try
+        {
+            template = FilterTemplate.parse( filterTemplate );
+        }
+        catch ( ParseException pe )
+        {
+            throw new LdapInvalidSearchFilterException( I18n.err( I18n.ERR_13508_INVALID_FILTER, filterTemplate,
+                pe.getMessage() ) );
+        }
+
+        SearchRequest preparedRequest = searchRequest;
+
+        if ( searchRequest.isIgnoreReferrals() )
+        {
+            // We want to ignore the referral, inject the ManageDSAIT control in a copy of
+            // the request, as the caller may still use it
+            preparedRequest = new SearchRequestImpl();
+            preparedRequest.setBase( searchRequest.getBase() );
+            preparedRequest.setScope( searchRequest.getScope() );
+            preparedRequest.setDerefAliases( searchRequest.getDerefAliases() );
+            preparedRequest.setSizeLimit( searchRequest.getSizeLimit() );
+            preparedRequest.setTimeLimit( searchRequest.getTimeLimit() );
+            preparedRequest.setTypesOnly( searchRequest.getTypesOnly() );
+            preparedRequest.addAttributes( searchRequest.getAttributes().toArray( new String[0] ) );
+            preparedRequest.addAllControls( searchRequest.getControls().values().toArray( new Control[0] ) );
+            preparedRequest.addControl( new ManageDsaITImpl() );
+        }
+
+        try
+        {
+            return new PreparedSearchRequest( getCodecService(), preparedRequest, template );
+        }
+        catch ( EncoderException ee )
+        {
+            throw new LdapException( ee.getMessage(), ee );
+        }
+    }
+
+
+    /**
+     * Performs a prepared search. The values are not escaped : they are the assertion
+     * values themselves, and can't change the filter structure. The default implementation
+     * binds the values and performs a regular search.
+     *
+     * @param preparedSearchRequest The prepared search request
+     * @param values The values replacing the place-holders, in their order
+     * @return a search cursor on the result.
+     * @throws LdapException if some error occurred
+     */
+    default SearchCursor search( PreparedSearchRequest preparedSearchRequest, String... values ) throws LdapException
+    {
+        if ( preparedSearchRequest == null )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_04130_CANNOT_PROCESS_NULL_SEARCH_REQ ) );
+        }
+
+        return search( preparedSearchRequest.newSearchRequest( values ) );
+    }
+
+
     //------------------------ The LDAP operations ------------------------//
     // Unbind operations                                                   //
     //---------------------------------------------------------------------//
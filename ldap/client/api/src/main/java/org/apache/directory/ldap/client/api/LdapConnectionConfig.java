@@ -34,6 +34,7 @@ import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.api.BinaryAttributeDetector;
 import org.apache.directory.api.ldap.codec.api.LdapApiService;
 import org.apache.directory.api.util.Network;
+import org.apache.directory.ldap.client.api.referral.ReferralChaser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -124,9 +125,21 @@ public class LdapConnectionConfig
     /** The class used to detect if an attribute is HR or not */
     private BinaryAttributeDetector binaryAttributeDetector;
 
+    /** Tells if the values received from the server are trusted */
+    private boolean trustedValues;
+
     /** The Service to use internally when creating connections */
     private LdapApiService ldapApiService;
 
+    /** The I/O processors shared by the connections, if any */
+    private LdapIoProcessorPool ioProcessorPool;
+
+    /** The SSLContext shared by the connections, if any */
+    private LdapTlsContext tlsContext;
+
+    /** The chaser following the referrals of the searches requesting it, if any */
+    private ReferralChaser referralChaser;
+
 
     /**
      * Creates a default LdapConnectionConfig instance
@@ -684,6 +697,28 @@ public class LdapConnectionConfig
     }
 
 
+    /**
+     * @return <code>true</code> if the values received from the server are trusted
+     */
+    public boolean isTrustedValues()
+    {
+        return trustedValues;
+    }
+
+
+    /**
+     * Tells if the values of the entries received from the server are trusted. When the
+     * connection knows the schema, the trusted values are not checked against their syntax,
+     * and their normalized form is computed when first needed. Default to false.
+     *
+     * @param trustedValues <code>true</code> if the values received from the server are trusted
+     */
+    public void setTrustedValues( boolean trustedValues )
+    {
+        this.trustedValues = trustedValues;
+    }
+
+
     /**
      * Checks if TLS is used.
      *
@@ -722,4 +757,74 @@ public class LdapConnectionConfig
     {
         this.ldapApiService = ldapApiService;
     }
+
+
+    /**
+     * @return the I/O processor pool shared by the connections, or null if each
+     * connection uses its own I/O processor
+     */
+    public LdapIoProcessorPool getIoProcessorPool()
+    {
+        return ioProcessorPool;
+    }
+
+
+    /**
+     * Sets the I/O processor pool the connections will share. The pool is not
+     * closed when the connections are closed.
+     *
+     * @param ioProcessorPool the I/O processor pool to set, or null to use one I/O
+     * processor per connection
+     */
+    public void setIoProcessorPool( LdapIoProcessorPool ioProcessorPool )
+    {
+        this.ioProcessorPool = ioProcessorPool;
+    }
+
+
+    /**
+     * @return the TLS context shared by the connections, or null if each connection
+     * creates its own SSLContext
+     */
+    public LdapTlsContext getTlsContext()
+    {
+        return tlsContext;
+    }
+
+
+    /**
+     * Sets the TLS context the connections will share. When set, the SSL protocol, the
+     * KeyManagers, the TrustManagers and the SecureRandom of this configuration are not
+     * used anymore to create the SSLContext.
+     *
+     * @param tlsContext the TLS context to set, or null to use one SSLContext per connection
+     */
+    public void setTlsContext( LdapTlsContext tlsContext )
+    {
+        this.tlsContext = tlsContext;
+    }
+
+
+    /**
+     * @return the referral chaser used by the connections, or null if the referrals
+     * are never followed
+     */
+    public ReferralChaser getReferralChaser()
+    {
+        return referralChaser;
+    }
+
+
+    /**
+     * Sets the referral chaser used by the connections : the references returned by a
+     * search are followed when the search request asks for it, with
+     * {@link org.apache.directory.api.ldap.model.message.SearchRequest#followReferrals()}.
+     * The chaser is not closed when the connections are closed.
+     *
+     * @param referralChaser the referral chaser to set, or null to never follow the referrals
+     */
+    public void setReferralChaser( ReferralChaser referralChaser )
+    {
+        this.referralChaser = referralChaser;
+    }
 }
@@ -26,6 +26,7 @@ import java.util.List;
 import org.apache.directory.api.asn1.util.Oid;
 import org.apache.directory.api.ldap.codec.api.BinaryAttributeDetector;
 import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.PreparedSearchRequest;
 import org.apache.directory.api.ldap.model.cursor.EntryCursor;
 import org.apache.directory.api.ldap.model.cursor.SearchCursor;
 import org.apache.directory.api.ldap.model.entry.Entry;
@@ -291,6 +292,38 @@ public class LdapConnectionWrapper implements LdapConnection, Wrapper<LdapConnec
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedSearchRequest prepareSearch( Dn baseDn, String filterTemplate, SearchScope scope,
+        String... attributes ) throws LdapException
+    {
+        return connection.prepareSearch( baseDn, filterTemplate, scope, attributes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedSearchRequest prepareSearch( SearchRequest searchRequest, String filterTemplate )
+        throws LdapException
+    {
+        return connection.prepareSearch( searchRequest, filterTemplate );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SearchCursor search( PreparedSearchRequest preparedSearchRequest, String... values ) throws LdapException
+    {
+        return connection.search( preparedSearchRequest, values );
+    }
+
+
     /**
      * {@inheritDoc}
      */
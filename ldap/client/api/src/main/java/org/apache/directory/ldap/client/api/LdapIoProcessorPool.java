@@ -0,0 +1,257 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.io.Closeable;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.service.IoHandler;
+import org.apache.mina.core.service.SimpleIoProcessorPool;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.session.IoSessionInitializer;
+import org.apache.mina.filter.FilterEvent;
+import org.apache.mina.transport.socket.nio.NioProcessor;
+import org.apache.mina.transport.socket.nio.NioSession;
+import org.apache.mina.transport.socket.nio.NioSocketConnector;
+
+
+/**
+ * A pool of MINA I/O processors (each one owning a selector and a thread) and a connector
+ * shared by many {@link LdapNetworkConnection}s. By default, each connection creates its own
+ * connector with a dedicated I/O processor, so 500 pooled connections use 500 threads.
+ * When a pool is set in the {@link LdapConnectionConfig}, all the connections created
+ * with this configuration (by a {@link LdapConnectionFactory} or a {@link LdapConnectionPool})
+ * are established by the same connector, and share the pool processors. Each connection
+ * sets its own handler, filters and socket configuration on its session.
+ * <p>
+ * The pool is owned by the application : it must be closed once all the connections
+ * using it have been closed. Here is an example :
+ * <pre>
+ * LdapIoProcessorPool ioProcessorPool = new LdapIoProcessorPool();
+ * LdapConnectionConfig config = new LdapConnectionConfig();
+ * config.setIoProcessorPool( ioProcessorPool );
+ * ...
+ * LdapConnectionPool connectionPool = new LdapConnectionPool(
+ *     new DefaultPoolableLdapConnectionFactory( config ) );
+ * ...
+ * connectionPool.close();
+ * ioProcessorPool.close();
+ * </pre>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapIoProcessorPool implements Closeable
+{
+    /** The default number of I/O processors : one per CPU, plus one */
+    public static final int DEFAULT_SIZE = Runtime.getRuntime().availableProcessors() + 1;
+
+    /** The session attribute storing the handler of the connection owning the session */
+    private static final AttributeKey HANDLER_KEY = new AttributeKey( LdapIoProcessorPool.class, "handler" );
+
+    /** The shared I/O processors */
+    private final SimpleIoProcessorPool<NioSession> processors;
+
+    /** The connector shared by all the connections */
+    private final NioSocketConnector connector;
+
+    /** The number of I/O processors */
+    private final int size;
+
+    /** A flag set when the pool has been closed */
+    private final AtomicBoolean closed = new AtomicBoolean( false );
+
+
+    /**
+     * Creates a new LdapIoProcessorPool, with {@link #DEFAULT_SIZE} I/O processors
+     */
+    public LdapIoProcessorPool()
+    {
+        this( DEFAULT_SIZE );
+    }
+
+
+    /**
+     * Creates a new LdapIoProcessorPool
+     *
+     * @param size The number of I/O processors
+     */
+    public LdapIoProcessorPool( int size )
+    {
+        this.size = size;
+        processors = new SimpleIoProcessorPool<>( NioProcessor.class, size );
+        connector = new NioSocketConnector( processors );
+        connector.getSessionConfig().setReuseAddress( true );
+        connector.getSessionConfig().setTcpNoDelay( true );
+        connector.setHandler( new SessionHandler() );
+    }
+
+
+    /**
+     * Establishes a connection using the shared connector. The given handler receives
+     * all the events of the created session, and the initializer sets up the session
+     * before any event is fired : it's where the filters and the socket configuration
+     * of the connection are set.
+     *
+     * @param address The remote address
+     * @param handler The handler of the session
+     * @param initializer The session initializer
+     * @return The future used to wait for the connection
+     * @throws IllegalStateException If the pool has been closed
+     */
+    public ConnectFuture connect( SocketAddress address, IoHandler handler,
+        IoSessionInitializer<ConnectFuture> initializer )
+    {
+        if ( closed.get() )
+        {
+            throw new IllegalStateException( I18n.err( I18n.ERR_04181_IO_PROCESSOR_POOL_DISPOSED ) );
+        }
+
+        return connector.connect( address, ( IoSession session, ConnectFuture future ) ->
+        {
+            session.setAttribute( HANDLER_KEY, handler );
+            initializer.initializeSession( session, future );
+        } );
+    }
+
+
+    /**
+     * @return The number of I/O processors
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return <code>true</code> if the pool has been closed
+     */
+    public boolean isClosed()
+    {
+        return closed.get();
+    }
+
+
+    /**
+     * Closes the pool : the connector, the I/O processors and their threads are stopped,
+     * and the sessions still using them are closed.
+     */
+    @Override
+    public void close()
+    {
+        if ( closed.compareAndSet( false, true ) )
+        {
+            connector.dispose();
+            processors.dispose();
+        }
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "LdapIoProcessorPool[size: " + size + ", closed: " + closed.get() + "]";
+    }
+
+
+    /**
+     * The handler of the shared connector, which forwards the events to the handler
+     * of the connection owning the session.
+     */
+    private static final class SessionHandler implements IoHandler
+    {
+        private static IoHandler getHandler( IoSession session )
+        {
+            return ( IoHandler ) session.getAttribute( HANDLER_KEY );
+        }
+
+
+        @Override
+        public void sessionCreated( IoSession session ) throws Exception
+        {
+            getHandler( session ).sessionCreated( session );
+        }
+
+
+        @Override
+        public void sessionOpened( IoSession session ) throws Exception
+        {
+            getHandler( session ).sessionOpened( session );
+        }
+
+
+        @Override
+        public void sessionClosed( IoSession session ) throws Exception
+        {
+            getHandler( session ).sessionClosed( session );
+        }
+
+
+        @Override
+        public void sessionIdle( IoSession session, IdleStatus status ) throws Exception
+        {
+            getHandler( session ).sessionIdle( session, status );
+        }
+
+
+        @Override
+        public void exceptionCaught( IoSession session, Throwable cause ) throws Exception
+        {
+            getHandler( session ).exceptionCaught( session, cause );
+        }
+
+
+        @Override
+        public void messageReceived( IoSession session, Object message ) throws Exception
+        {
+            getHandler( session ).messageReceived( session, message );
+        }
+
+
+        @Override
+        public void messageSent( IoSession session, Object message ) throws Exception
+        {
+            getHandler( session ).messageSent( session, message );
+        }
+
+
+        @Override
+        public void inputClosed( IoSession session ) throws Exception
+        {
+            getHandler( session ).inputClosed( session );
+        }
+
+
+        @Override
+        public void event( IoSession session, FilterEvent event ) throws Exception
+        {
+            getHandler( session ).event( session, event );
+        }
+    }
+}
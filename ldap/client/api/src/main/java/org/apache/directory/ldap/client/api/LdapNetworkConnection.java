@@ -29,6 +29,7 @@ import java.io.Writer;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.UnresolvedAddressException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -48,6 +49,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.TrustManager;
 import javax.security.auth.Subject;
@@ -57,6 +59,7 @@ import javax.security.sasl.Sasl;
 import javax.security.sasl.SaslClient;
 
 import org.apache.directory.api.asn1.DecoderException;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
 import org.apache.directory.api.asn1.util.Oid;
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.api.BinaryAttributeDetector;
@@ -67,6 +70,7 @@ import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
 import org.apache.directory.api.ldap.codec.api.LdapDecoder;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
 import org.apache.directory.api.ldap.codec.api.MessageEncoderException;
+import org.apache.directory.api.ldap.codec.api.PreparedSearchRequest;
 import org.apache.directory.api.ldap.codec.api.SaslFilter;
 import org.apache.directory.api.ldap.codec.api.SchemaBinaryAttributeDetector;
 import org.apache.directory.api.ldap.extras.controls.ad.TreeDelete;
@@ -121,7 +125,6 @@ import org.apache.directory.api.ldap.model.message.ModifyRequestImpl;
 import org.apache.directory.api.ldap.model.message.ModifyResponse;
 import org.apache.directory.api.ldap.model.message.OpaqueExtendedRequest;
 import org.apache.directory.api.ldap.model.message.OpaqueExtendedResponse;
-import org.apache.directory.api.ldap.model.message.Request;
 import org.apache.directory.api.ldap.model.message.Response;
 import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.message.SearchRequest;
@@ -145,6 +148,7 @@ import org.apache.directory.api.ldap.model.message.extended.NoticeOfDisconnect;
 import org.apache.directory.api.ldap.model.message.extended.SearchNoDResponse;
 import org.apache.directory.api.ldap.model.name.DefaultDnFactory;
 import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.DnFactory;
 import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.ObjectClass;
@@ -152,7 +156,6 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.schema.parsers.OpenLdapSchemaParser;
 import org.apache.directory.api.ldap.model.schema.registries.Registries;
 import org.apache.directory.api.ldap.model.schema.registries.SchemaLoader;
-import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
 import org.apache.directory.api.util.Network;
 import org.apache.directory.api.util.StringConstants;
 import org.apache.directory.api.util.Strings;
@@ -169,6 +172,8 @@ import org.apache.directory.ldap.client.api.future.ModifyDnFuture;
 import org.apache.directory.ldap.client.api.future.ModifyFuture;
 import org.apache.directory.ldap.client.api.future.ResponseFuture;
 import org.apache.directory.ldap.client.api.future.SearchFuture;
+import org.apache.directory.ldap.client.api.referral.ReferralChaser;
+import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.filterchain.IoFilter;
 import org.apache.mina.core.filterchain.IoFilterChain;
 import org.apache.mina.core.future.CloseFuture;
@@ -203,6 +208,9 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     /** logger for reporting errors that might not be handled properly upstream */
     private static final Logger LOG = LoggerFactory.getLogger( LdapNetworkConnection.class );
 
+    /** The buffers used to encode the prepared searches, one per thread */
+    private static final ThreadLocal<Asn1Buffer> PREPARED_SEARCH_BUFFER = ThreadLocal.withInitial( Asn1Buffer::new );
+
     /** The timeout used for response we are waiting for */
     private long timeout = LdapConnectionConfig.DEFAULT_TIMEOUT;
 
@@ -227,9 +235,12 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     /** The Socket configuration */
     private SocketSessionConfig socketSessionConfig;
 
-    /** The connector open with the remote server */
+    /** The connector open with the remote server, null when the connector of the I/O processor pool is used */
     private IoConnector connector;
 
+    /** The SslFilter to add to the session established by the shared connector */
+    private SslFilter sessionSslFilter;
+
     /** A mutex used to avoid a double close of the connector */
     private ReentrantLock connectorMutex = new ReentrantLock();
 
@@ -248,6 +259,12 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     /** The ROOT DSE entry */
     private Entry rootDse;
 
+    /** The server metadata shared with other connections, if any */
+    private LdapServerMetadata serverMetadata;
+
+    /** Tells if the SchemaManager is the one shared by the server metadata */
+    private volatile boolean sharedSchema;
+
     /** A flag indicating that the BindRequest has been issued and successfully authenticated the user */
     private AtomicBoolean authenticated = new AtomicBoolean( false );
 
@@ -539,6 +556,18 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
      */
     private void createConnector() throws LdapException
     {
+        if ( config.getIoProcessorPool() != null )
+        {
+            // The pool connector is shared with the other connections : the filters
+            // are added to the session when it's created, in initializeSession()
+            if ( config.isUseSsl() )
+            {
+                addSslFilter();
+            }
+
+            return;
+        }
+
         // Use only one thread inside the connector
         connector = new NioSocketConnector( 1 );
         
@@ -549,6 +578,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         else
         {
             ( ( SocketSessionConfig ) connector.getSessionConfig() ).setReuseAddress( true );
+            ( ( SocketSessionConfig ) connector.getSessionConfig() ).setTcpNoDelay( true );
         }
 
         // Add the codec to the chain
@@ -565,6 +595,31 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     }
 
 
+    /**
+     * Initialize a session established by the connector of the I/O processor pool, before
+     * any event is fired : the session gets the socket configuration and the filters the
+     * dedicated connector would have had.
+     * 
+     * @param session The created session
+     * @param connectFuture The future of the connection
+     */
+    private void initializeSession( IoSession session, ConnectFuture connectFuture )
+    {
+        if ( socketSessionConfig != null )
+        {
+            ( ( SocketSessionConfig ) session.getConfig() ).setAll( socketSessionConfig );
+        }
+
+        session.getFilterChain().addLast( LDAP_CODEC_FILTER_KEY, ldapProtocolFilter );
+
+        if ( sessionSslFilter != null )
+        {
+            session.getFilterChain().addFirst( SSL_FILTER_KEY, sessionSslFilter );
+            sessionSslFilter = null;
+        }
+    }
+
+
     //--------------------------- Helper methods ---------------------------//
     /**
      * {@inheritDoc}
@@ -625,6 +680,43 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         {
             throw new InvalidConnectionException( I18n.err( I18n.ERR_04108_INVALID_CONNECTION ) );
         }
+
+        updateSharedSchema();
+    }
+
+
+    /**
+     * Switches to the SchemaManager and DnFactory currently shared by the server metadata, if
+     * this connection uses the shared schema and it has been reloaded since.
+     */
+    private void updateSharedSchema()
+    {
+        if ( !sharedSchema )
+        {
+            return;
+        }
+
+        SchemaManager current = serverMetadata.getSchemaManager();
+
+        if ( ( current == null ) || ( current == schemaManager ) )
+        {
+            return;
+        }
+
+        schemaManager = current;
+
+        // Update the container in place, a response may be being decoded
+        @SuppressWarnings("unchecked")
+        LdapMessageContainer<? extends Message> container =
+            ( LdapMessageContainer<? extends Message> ) ioSession
+                .getAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR );
+
+        if ( container != null )
+        {
+            container.setBinaryAttributeDetector( new SchemaBinaryAttributeDetector( current ) );
+            container.setDnFactory( createDnFactory() );
+            container.setSchemaManager( current );
+        }
     }
 
 
@@ -709,7 +801,19 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     {
         // Build the connection address
         SocketAddress address = new InetSocketAddress( config.getLdapHost(), config.getLdapPort() );
-        ConnectFuture connectionFuture = connector.connect( address );
+        LdapIoProcessorPool ioProcessorPool = config.getIoProcessorPool();
+        ConnectFuture connectionFuture;
+
+        if ( ( connector == null ) && ( ioProcessorPool != null ) )
+        {
+            // Use the shared connector
+            connectionFuture = ioProcessorPool.connect( address, this, this::initializeSession );
+        }
+        else
+        {
+            connectionFuture = connector.connect( address );
+        }
+
         boolean result = false;
 
         // Wait until it's established
@@ -719,8 +823,13 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         }
         catch ( InterruptedException e )
         {
-            connector.dispose();
-            connector = null;
+            connectionFuture.cancel();
+
+            if ( connector != null )
+            {
+                connector.dispose();
+                connector = null;
+            }
 
             if ( LOG.isDebugEnabled() )
             {
@@ -736,6 +845,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         {
             // It may be an exception, or a timeout
             Throwable connectionException = connectionFuture.getException();
+            connectionFuture.cancel();
 
             if ( ( connector != null ) && !connector.isDisposing() && !connector.isDisposed() )
             { 
@@ -954,6 +1064,8 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             {
                 container.setBinaryAttributeDetector( new SchemaBinaryAttributeDetector( schemaManager ) );
             }
+
+            container.setSchemaManager( schemaManager );
         }
         else
         {
@@ -964,8 +1076,11 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
                 atDetector = new SchemaBinaryAttributeDetector( schemaManager );
             }
 
-            ioSession.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR,
-                new LdapMessageContainer<Message>( codec, atDetector ) );
+            LdapMessageContainer<Message> ldapMessageContainer = new LdapMessageContainer<>( codec, atDetector );
+            ldapMessageContainer.setSchemaManager( schemaManager );
+            ldapMessageContainer.setTrustedValues( config.isTrustedValues() );
+
+            ioSession.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR, ldapMessageContainer );
         }
     }
     
@@ -983,6 +1098,8 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             return true;
         }
         
+        ConnectFuture connectionFuture = null;
+
         try
         {
             // Create the connector if needed
@@ -992,7 +1109,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             }
     
             // And create the connection future
-            ConnectFuture connectionFuture = tryConnect();
+            connectionFuture = tryConnect();
     
             // Check if we are good to go
             if ( !connectionFuture.isConnected() )
@@ -1039,6 +1156,11 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
                 connector.dispose();
                 connector = null;
             }
+            else if ( ( connector == null ) && ( connectionFuture != null ) && connectionFuture.isConnected() )
+            {
+                // The shared connector is not disposed : close the session
+                connectionFuture.getSession().closeNow();
+            }
 
             throw e;
         }
@@ -2436,10 +2558,111 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         }
 
         SearchFuture searchFuture = searchAsync( searchRequest );
+        SearchCursor searchCursor = new SearchCursorImpl( searchFuture, localSearchTimeout, TimeUnit.MILLISECONDS );
+        ReferralChaser referralChaser = config.getReferralChaser();
+
+        if ( ( referralChaser != null ) && searchRequest.isFollowReferrals() )
+        {
+            return referralChaser.chase( searchCursor, searchRequest,
+                config.isUseSsl() || config.isUseTls() || isSecured() );
+        }
+
+        return searchCursor;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SearchFuture searchAsync( PreparedSearchRequest preparedSearchRequest, String... values )
+        throws LdapException
+    {
+        if ( preparedSearchRequest == null )
+        {
+            String msg = I18n.err( I18n.ERR_04130_CANNOT_PROCESS_NULL_SEARCH_REQ );
+
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( msg );
+            }
+
+            throw new IllegalArgumentException( msg );
+        }
+
+        // Check the values before sending anything
+        preparedSearchRequest.getFilterTemplate().checkValues( values );
+
+        // try to connect, if we aren't already connected.
+        connect();
+
+        // If the session has not been establish, or is closed, we get out immediately
+        checkSession();
+
+        int newId = messageId.incrementAndGet();
+
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( I18n.msg( I18n.MSG_04104_SENDING_REQUEST, preparedSearchRequest ) );
+        }
+
+        // Only the message ID and the values are encoded, the PDU is then written
+        // as is to the session, bypassing the LDAP encoder
+        Asn1Buffer buffer = PREPARED_SEARCH_BUFFER.get();
+        ByteBuffer pdu;
+
+        try
+        {
+            pdu = preparedSearchRequest.encode( buffer, newId, values );
+        }
+        finally
+        {
+            buffer.clear();
+        }
+
+        SearchFuture searchFuture = new SearchFuture( this, newId );
+        addToFutureMap( newId, searchFuture );
+
+        // Send the request to the server
+        writeRequest( IoBuffer.wrap( pdu ) );
+
+        // Check that the future hasn't be canceled
+        if ( searchFuture.isCancelled() )
+        {
+            // Throw an exception here
+            throw new LdapException( searchFuture.getCause() );
+        }
+
+        // Ok, done return the future
+        return searchFuture;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SearchCursor search( PreparedSearchRequest preparedSearchRequest, String... values ) throws LdapException
+    {
+        if ( preparedSearchRequest == null )
+        {
+            String msg = I18n.err( I18n.ERR_04130_CANNOT_PROCESS_NULL_SEARCH_REQ );
+
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( msg );
+            }
+
+            throw new IllegalArgumentException( msg );
+        }
+
+        long localSearchTimeout = getTimeout( readOperationTimeout, preparedSearchRequest.getTimeLimit() );
+        SearchFuture searchFuture = searchAsync( preparedSearchRequest, values );
 
         return new SearchCursorImpl( searchFuture, localSearchTimeout, TimeUnit.MILLISECONDS );
     }
 
+
     //------------------------ The LDAP operations ------------------------//
     // Unbind operations                                                   //
     //---------------------------------------------------------------------//
@@ -2910,7 +3133,8 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     private void searchResultEntryReceived( SearchResultEntry searchResultEntry, SearchFuture searchFuture ) 
         throws InterruptedException, LdapException
     {
-        if ( schemaManager != null )
+        // The entry is already schema aware when the decoder knows the SchemaManager
+        if ( ( schemaManager != null ) && !searchResultEntry.getEntry().isSchemaAware() )
         {
             searchResultEntry.setEntry( new DefaultEntry( schemaManager, searchResultEntry.getEntry() ) );
         }
@@ -4500,6 +4724,11 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     @Override
     public List<String> getSupportedControls() throws LdapException
     {
+        if ( serverMetadata != null )
+        {
+            return serverMetadata.getSupportedControls( this );
+        }
+
         if ( supportedControls != null )
         {
             return supportedControls;
@@ -4542,7 +4771,15 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     @Override
     public void loadSchema() throws LdapException
     {
-        loadSchema( new DefaultSchemaLoader( this ) );
+        if ( serverMetadata != null )
+        {
+            installSchemaManager( serverMetadata.loadSchema( this, false ) );
+            sharedSchema = true;
+        }
+        else
+        {
+            loadSchema( new DefaultSchemaLoader( this ) );
+        }
     }
 
 
@@ -4552,7 +4789,15 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     @Override
     public void loadSchemaRelaxed() throws LdapException
     {
-        loadSchema( new DefaultSchemaLoader( this, true ) );
+        if ( serverMetadata != null )
+        {
+            installSchemaManager( serverMetadata.loadSchema( this, true ) );
+            sharedSchema = true;
+        }
+        else
+        {
+            loadSchema( new DefaultSchemaLoader( this, true ) );
+        }
     }
 
 
@@ -4566,34 +4811,8 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     {
         try
         {
-            SchemaManager tmp = new DefaultSchemaManager( loader );
-
-            tmp.loadAllEnabled();
-
-            if ( !tmp.getErrors().isEmpty() && loader.isStrict() )
-            {
-                String msg = I18n.err( I18n.ERR_04115_ERROR_LOADING_SCHEMA );
-                
-                if ( LOG.isErrorEnabled() )
-                {
-                    LOG.error( I18n.err( I18n.ERR_05114_ERROR_MESSAGE, msg, Strings.listToString( tmp.getErrors() ) ) );
-                }
-                
-                throw new LdapException( msg );
-            }
-
-            schemaManager = tmp;
-
-            // Change the container's BinaryDetector
-            LdapMessageContainer<Message> ldapMessageContainer = 
-                new LdapMessageContainer<>( codec,
-                    new SchemaBinaryAttributeDetector( schemaManager ) );
-            
-            // Associate a DnFactory to the container
-            ldapMessageContainer.setDnFactory( new DefaultDnFactory( schemaManager, 1000 ) );
-            
-            ioSession.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR, ldapMessageContainer );
-
+            installSchemaManager( LdapServerMetadata.createSchemaManager( loader ) );
+            sharedSchema = false;
         }
         catch ( LdapException le )
         {
@@ -4607,22 +4826,73 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     }
 
 
+    /**
+     * Uses a loaded SchemaManager to decode the messages received on this connection
+     *
+     * @param loaded The SchemaManager to use
+     */
+    private void installSchemaManager( SchemaManager loaded )
+    {
+        schemaManager = loaded;
+
+        // Change the container's BinaryDetector
+        LdapMessageContainer<Message> ldapMessageContainer = 
+            new LdapMessageContainer<>( codec,
+                new SchemaBinaryAttributeDetector( schemaManager ) );
+        
+        // Associate a DnFactory to the container
+        ldapMessageContainer.setDnFactory( createDnFactory() );
+        ldapMessageContainer.setSchemaManager( schemaManager );
+        ldapMessageContainer.setTrustedValues( config.isTrustedValues() );
+        
+        ioSession.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR, ldapMessageContainer );
+    }
+
+
+    /**
+     * @return The DnFactory shared with the other connections if the SchemaManager is the shared one,
+     * otherwise a new DnFactory
+     */
+    private DnFactory createDnFactory()
+    {
+        if ( serverMetadata != null )
+        {
+            DnFactory dnFactory = serverMetadata.getDnFactory( schemaManager );
+
+            if ( dnFactory != null )
+            {
+                return dnFactory;
+            }
+        }
+
+        return new DefaultDnFactory( schemaManager, 1000 );
+    }
+
+
     /**
      * parses the given schema file present in OpenLDAP schema format
-     * and adds all the SchemaObjects present in it to the SchemaManager
+     * and adds all the SchemaObjects present in it to the SchemaManager.
+     * The SchemaManager shared by the server metadata can't be modified : a
+     * connection using server metadata must load its own SchemaManager with
+     * {@link #loadSchema(SchemaLoader)} before adding a schema file.
      *
      * @param schemaFile the schema file in OpenLDAP schema format
-     * @throws LdapException in case of any errors while parsing
+     * @throws LdapException in case of any errors while parsing, or if the SchemaManager is shared
      */
     public void addSchema( File schemaFile ) throws LdapException
     {
+        if ( schemaManager == null )
+        {
+            loadSchema();
+        }
+
+        if ( sharedSchema )
+        {
+            throw new LdapException( I18n.err( I18n.ERR_04200_SHARED_SCHEMA_READ_ONLY, schemaFile.getAbsolutePath() ) );
+        }
+
         try
         {
-            if ( schemaManager == null )
-            {
-                loadSchema();
-            }
-            
             if ( schemaManager == null )
             {
                 throw new LdapException( I18n.err( I18n.ERR_04116_FAIL_LOAD_SCHEMA ) );
@@ -4686,6 +4956,11 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     @Override
     public SchemaManager getSchemaManager()
     {
+        if ( ioSession != null )
+        {
+            updateSharedSchema();
+        }
+
         return schemaManager;
     }
 
@@ -4842,7 +5117,9 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             new LdapMessageContainer<>(
                 codec, config.getBinaryAttributeDetector() );
         
-        ldapMessageContainer.setDnFactory( new DefaultDnFactory( schemaManager, 1000 ) );
+        ldapMessageContainer.setDnFactory( createDnFactory() );
+        ldapMessageContainer.setSchemaManager( schemaManager );
+        ldapMessageContainer.setTrustedValues( config.isTrustedValues() );
 
         session.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR, ldapMessageContainer );
     }
@@ -4988,11 +5265,33 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     {
         try
         {
-            SSLContext sslContext = SSLContext.getInstance( config.getSslProtocol() );
-            
-            sslContext.init( config.getKeyManagers(), config.getTrustManagers(), config.getSecureRandom() );
+            LdapTlsContext tlsContext = config.getTlsContext();
+            SSLContext sslContext;
+
+            if ( tlsContext != null )
+            {
+                // Use the shared context, so that the TLS sessions can be resumed
+                sslContext = tlsContext.getSslContext();
+            }
+            else
+            {
+                sslContext = SSLContext.getInstance( config.getSslProtocol() );
+                sslContext.init( config.getKeyManagers(), config.getTrustManagers(), config.getSecureRandom() );
+            }
+
+            // The SSLEngine is created for the configured host and port, for LDAPS and StartTLS :
+            // the JSSE client session cache is keyed on them, and can resume the TLS session
+            InetSocketAddress peerAddress = InetSocketAddress.createUnresolved( config.getLdapHost(),
+                config.getLdapPort() );
 
-            SslFilter sslFilter = new SslFilter( sslContext );
+            SslFilter sslFilter = new SslFilter( sslContext )
+            {
+                @Override
+                protected SSLEngine createEngine( IoSession session, InetSocketAddress address )
+                {
+                    return super.createEngine( session, peerAddress );
+                }
+            };
             //sslFilter.setUseClientMode( true );
 
             // Configure the enabled cipher lists
@@ -5022,7 +5321,15 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             
             if ( ( ioSession == null ) || !isConnected() )
             {
-                connector.getFilterChain().addFirst( SSL_FILTER_KEY, sslFilter );
+                if ( connector != null )
+                {
+                    connector.getFilterChain().addFirst( SSL_FILTER_KEY, sslFilter );
+                }
+                else
+                {
+                    // The shared connector : the filter is added when the session is created
+                    sessionSslFilter = sslFilter;
+                }
             }
             else
             // for StartTLS
@@ -5259,10 +5566,10 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     /**
      * A reusable code block to be used in various bind methods
      * 
-     * @param request The request to send
+     * @param request The request to send, or its encoded PDU
      * @throws LdapException If the request was ot properly sent
      */
-    private void writeRequest( Request request ) throws LdapException
+    private void writeRequest( Object request ) throws LdapException
     {
         // Send the request to the server
         WriteFuture writeFuture = ioSession.write( request );
@@ -5418,6 +5725,41 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     public void setSchemaManager( SchemaManager schemaManager )
     {
         this.schemaManager = schemaManager;
+        sharedSchema = false;
+
+        if ( ioSession != null )
+        {
+            @SuppressWarnings("unchecked")
+            LdapMessageContainer<? extends Message> container =
+                ( LdapMessageContainer<? extends Message> ) ioSession
+                    .getAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR );
+
+            if ( container != null )
+            {
+                container.setSchemaManager( schemaManager );
+            }
+        }
+    }
+
+
+    /**
+     * @return The server metadata shared with other connections, or null
+     */
+    public LdapServerMetadata getServerMetadata()
+    {
+        return serverMetadata;
+    }
+
+
+    /**
+     * Sets the server metadata shared with other connections to the same server. The supported
+     * controls and the schema are then fetched once for all those connections.
+     *
+     * @param serverMetadata The shared server metadata, or null
+     */
+    public void setServerMetadata( LdapServerMetadata serverMetadata )
+    {
+        this.serverMetadata = serverMetadata;
     }
 
 
@@ -5431,6 +5773,10 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
 
 
     /**
+     * Sets the socket configuration. Without it, the address is reused and Nagle's algorithm is
+     * disabled, so that a request written just after the client ends a TLS handshake (which is
+     * what happens when a session is resumed) isn't delayed until the server acknowledges it.
+     *
      * @param socketSessionConfig the socketSessionConfig to set
      */
     public void setSocketSessionConfig( SocketSessionConfig socketSessionConfig )
@@ -5448,6 +5794,13 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         // Check if it's a SSLevent 
         if ( ( event instanceof SslEvent ) && ( ( SslEvent ) event == SslEvent.SECURED ) )
         {
+            LdapTlsContext tlsContext = config.getTlsContext();
+
+            if ( tlsContext != null )
+            {
+                tlsContext.handshakeCompleted( ( SSLSession ) session.getAttribute( SslFilter.SSL_SECURED ) );
+            }
+
             handshakeFuture.secured();
         }
     }
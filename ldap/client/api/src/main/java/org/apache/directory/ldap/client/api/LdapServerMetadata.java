@@ -0,0 +1,495 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.DefaultDnFactory;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.DnFactory;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.registries.SchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The metadata of a LDAP server, shared by all the connections opened on this server :
+ * the rootDSE, the supported controls, the SchemaManager and a DnFactory using it. They are
+ * fetched once, by the first connection needing them, instead of being fetched and held by
+ * each connection. A pool of connections can share those metadata by setting them in its
+ * connection factory :
+ * <pre>
+ * LdapServerMetadata metadata = new LdapServerMetadata();
+ * DefaultLdapConnectionFactory factory = new DefaultLdapConnectionFactory( config );
+ * factory.setServerMetadata( metadata );
+ * LdapConnectionPool pool = new LdapConnectionPool( new DefaultPoolableLdapConnectionFactory( factory ) );
+ * metadata.startRefresh( factory, 5, TimeUnit.MINUTES );
+ * </pre>
+ * The {@link LdapNetworkConnection#loadSchema()} and {@link LdapNetworkConnection#getSupportedControls()}
+ * methods then use the shared metadata. The metadata are periodically refreshed : the rootDSE
+ * is fetched again, and the schema is reloaded if the subschemaSubentry modifyTimestamp or
+ * entryCSN have changed. The connections which have loaded the shared schema switch to the new
+ * SchemaManager and DnFactory when they send their next request. A server exposing neither of
+ * those two attributes is never reloaded.
+ * <p>
+ * The shared SchemaManager is loaded once, either strict or relaxed, and can't be modified : a
+ * connection can't load it in the other mode, nor add a schema file to it. A connection needing
+ * a different schema has to load its own one with {@link LdapNetworkConnection#loadSchema(SchemaLoader)}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapServerMetadata
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( LdapServerMetadata.class );
+
+    /** The default size of the shared DnFactory cache */
+    public static final int DEFAULT_DN_CACHE_SIZE = 10_000;
+
+    /** The rootDSE attributes */
+    private static final String[] ROOT_DSE_ATTRIBUTES =
+        { SchemaConstants.ALL_USER_ATTRIBUTES, SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES };
+
+    /** The size of the shared DnFactory cache */
+    private final int dnCacheSize;
+
+    /** The local schema cache, if any */
+    private SchemaCache schemaCache;
+
+    /** The rootDSE and the controls it lists */
+    private volatile RootDse rootDse;
+
+    /** The loaded schema, if any */
+    private volatile LoadedSchema loadedSchema;
+
+    /** The executor refreshing the metadata, if started */
+    private ScheduledExecutorService refresher;
+
+
+    /**
+     * A rootDSE, and the supported controls it lists
+     */
+    private static final class RootDse
+    {
+        private final Entry entry;
+        private final List<String> supportedControls;
+
+
+        private RootDse( Entry entry, List<String> supportedControls )
+        {
+            this.entry = entry;
+            this.supportedControls = supportedControls;
+        }
+    }
+
+
+    /**
+     * A SchemaManager, the DnFactory using it, and the subschemaSubentry validator
+     * when it was loaded. They are replaced all together.
+     */
+    private static final class LoadedSchema
+    {
+        private final SchemaManager schemaManager;
+        private final DnFactory dnFactory;
+        private final boolean relaxed;
+        private final String validator;
+
+
+        private LoadedSchema( SchemaManager schemaManager, DnFactory dnFactory, boolean relaxed, String validator )
+        {
+            this.schemaManager = schemaManager;
+            this.dnFactory = dnFactory;
+            this.relaxed = relaxed;
+            this.validator = validator;
+        }
+    }
+
+
+    /**
+     * Creates a new LdapServerMetadata instance, with a DnFactory caching up to
+     * {@link #DEFAULT_DN_CACHE_SIZE} Dns.
+     */
+    public LdapServerMetadata()
+    {
+        this( DEFAULT_DN_CACHE_SIZE );
+    }
+
+
+    /**
+     * Creates a new LdapServerMetadata instance.
+     *
+     * @param dnCacheSize The size of the DnFactory cache shared by all the connections
+     */
+    public LdapServerMetadata( int dnCacheSize )
+    {
+        this.dnCacheSize = dnCacheSize;
+    }
+
+
+    /**
+     * Sets the local cache used when the schema is loaded.
+     *
+     * @param schemaCache The schema cache, or null
+     */
+    public void setSchemaCache( SchemaCache schemaCache )
+    {
+        this.schemaCache = schemaCache;
+    }
+
+
+    /**
+     * Gets the rootDSE, fetching it with the given connection if it has not been fetched yet.
+     *
+     * @param connection The connection to use
+     * @return The rootDSE entry, with all its user and operational attributes
+     * @throws LdapException If the rootDSE can't be fetched
+     */
+    public Entry getRootDse( LdapConnection connection ) throws LdapException
+    {
+        return getRootDseHolder( connection ).entry;
+    }
+
+
+    /**
+     * Gets the controls supported by the server, fetching the rootDSE with the given
+     * connection if it has not been fetched yet.
+     *
+     * @param connection The connection to use
+     * @return The unmodifiable list of supported control OIDs
+     * @throws LdapException If the rootDSE can't be fetched
+     */
+    public List<String> getSupportedControls( LdapConnection connection ) throws LdapException
+    {
+        return getRootDseHolder( connection ).supportedControls;
+    }
+
+
+    private RootDse getRootDseHolder( LdapConnection connection ) throws LdapException
+    {
+        RootDse current = rootDse;
+
+        if ( current == null )
+        {
+            synchronized ( this )
+            {
+                current = rootDse;
+
+                if ( current == null )
+                {
+                    current = fetchRootDse( connection );
+                    rootDse = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+
+    /**
+     * Gets the shared SchemaManager, loading it with the given connection if it has not been
+     * loaded yet. All the connections share the same SchemaManager, so they must all use the
+     * same mode : asking for a relaxed SchemaManager when a strict one has been loaded, or the
+     * opposite, is an error.
+     *
+     * @param connection The connection to use
+     * @param relaxed If the schema should be loaded in relaxed mode
+     * @return The shared SchemaManager
+     * @throws LdapException If the schema can't be loaded, or has been loaded in the other mode
+     */
+    public SchemaManager loadSchema( LdapConnection connection, boolean relaxed ) throws LdapException
+    {
+        LoadedSchema current = loadedSchema;
+
+        if ( current == null )
+        {
+            synchronized ( this )
+            {
+                current = loadedSchema;
+
+                if ( current == null )
+                {
+                    current = load( connection, relaxed, getSchemaValidator( connection ) );
+                    loadedSchema = current;
+                }
+            }
+        }
+
+        if ( current.relaxed != relaxed )
+        {
+            throw new LdapException( I18n.err( I18n.ERR_04199_SHARED_SCHEMA_MODE_MISMATCH, current.relaxed, relaxed ) );
+        }
+
+        return current.schemaManager;
+    }
+
+
+    /**
+     * @return The shared SchemaManager, or null if it has not been loaded yet
+     */
+    public SchemaManager getSchemaManager()
+    {
+        LoadedSchema current = loadedSchema;
+
+        return current == null ? null : current.schemaManager;
+    }
+
+
+    /**
+     * Gets the shared DnFactory associated with a SchemaManager.
+     *
+     * @param schemaManager The SchemaManager used by a connection
+     * @return The shared DnFactory, or null if the given SchemaManager is not the shared one
+     */
+    public DnFactory getDnFactory( SchemaManager schemaManager )
+    {
+        LoadedSchema current = loadedSchema;
+
+        if ( ( current != null ) && ( current.schemaManager == schemaManager ) )
+        {
+            return current.dnFactory;
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Fetches the rootDSE again, and reloads the schema if it has been loaded and has
+     * changed on the server since.
+     *
+     * @param connection The connection to use
+     * @return <tt>true</tt> if the schema has been reloaded
+     * @throws LdapException If the metadata can't be fetched
+     */
+    public boolean refresh( LdapConnection connection ) throws LdapException
+    {
+        RootDse newRootDse = fetchRootDse( connection );
+        LoadedSchema current = loadedSchema;
+        rootDse = newRootDse;
+
+        if ( current == null )
+        {
+            return false;
+        }
+
+        String validator = getSchemaValidator( connection, newRootDse.entry );
+
+        if ( ( validator == null ) || validator.equals( current.validator ) )
+        {
+            return false;
+        }
+
+        // The schema has changed : load it again, the connections using the previous
+        // SchemaManager will switch to the new one on their next request
+        LoadedSchema reloaded = load( connection, current.relaxed, validator );
+
+        synchronized ( this )
+        {
+            loadedSchema = reloaded;
+        }
+
+        if ( LOG.isInfoEnabled() )
+        {
+            LOG.info( I18n.msg( I18n.MSG_04191_SERVER_SCHEMA_CHANGED, validator ) );
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Starts refreshing the metadata periodically, in a background thread, using a new
+     * connection created by the given factory each time. The errors are logged.
+     *
+     * @param connectionFactory The factory creating the connections
+     * @param period The refresh period
+     * @param unit The period unit
+     */
+    public synchronized void startRefresh( LdapConnectionFactory connectionFactory, long period, TimeUnit unit )
+    {
+        stopRefresh();
+
+        refresher = Executors.newSingleThreadScheduledExecutor( runnable ->
+        {
+            Thread thread = new Thread( runnable, "ldap-server-metadata-refresh" );
+            thread.setDaemon( true );
+
+            return thread;
+        } );
+
+        refresher.scheduleWithFixedDelay( () -> refreshWith( connectionFactory ), period, period, unit );
+    }
+
+
+    /**
+     * Stops refreshing the metadata.
+     */
+    public synchronized void stopRefresh()
+    {
+        if ( refresher != null )
+        {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+
+    private void refreshWith( LdapConnectionFactory connectionFactory )
+    {
+        try ( LdapConnection connection = connectionFactory.newLdapConnection() )
+        {
+            refresh( connection );
+        }
+        catch ( LdapException | IOException | RuntimeException e )
+        {
+            LOG.warn( I18n.err( I18n.ERR_04196_SERVER_METADATA_REFRESH_FAILED, e.getMessage() ) );
+        }
+    }
+
+
+    /**
+     * Creates a SchemaManager and loads all the enabled schemas with the given loader.
+     *
+     * @param loader The SchemaLoader to use
+     * @return The loaded SchemaManager
+     * @throws LdapException If the schema can't be loaded, or has errors and the loader is strict
+     */
+    static SchemaManager createSchemaManager( SchemaLoader loader ) throws LdapException
+    {
+        SchemaManager schemaManager = new DefaultSchemaManager( loader );
+
+        schemaManager.loadAllEnabled();
+
+        if ( !schemaManager.getErrors().isEmpty() && loader.isStrict() )
+        {
+            String msg = I18n.err( I18n.ERR_04115_ERROR_LOADING_SCHEMA );
+
+            if ( LOG.isErrorEnabled() )
+            {
+                LOG.error( I18n.err( I18n.ERR_05114_ERROR_MESSAGE, msg,
+                    Strings.listToString( schemaManager.getErrors() ) ) );
+            }
+
+            throw new LdapException( msg );
+        }
+
+        return schemaManager;
+    }
+
+
+    private LoadedSchema load( LdapConnection connection, boolean relaxed, String validator ) throws LdapException
+    {
+        SchemaManager schemaManager = createSchemaManager(
+            new DefaultSchemaLoader( connection, relaxed, schemaCache ) );
+
+        return new LoadedSchema( schemaManager, new DefaultDnFactory( schemaManager, dnCacheSize ), relaxed,
+            validator );
+    }
+
+
+    private static RootDse fetchRootDse( LdapConnection connection ) throws LdapException
+    {
+        Entry entry = connection.lookup( Dn.ROOT_DSE, ROOT_DSE_ATTRIBUTES );
+
+        if ( entry == null )
+        {
+            throw new LdapException( I18n.err( I18n.ERR_04155_ROOT_DSE_SEARCH_FAILED ) );
+        }
+
+        Attribute attr = entry.get( SchemaConstants.SUPPORTED_CONTROL_AT );
+
+        if ( attr == null )
+        {
+            // Some servers (such as 389ds) do not return it for the "+" attribute : let's
+            // be more explicit
+            Entry explicit = connection.lookup( Dn.ROOT_DSE, SchemaConstants.ALL_USER_ATTRIBUTES,
+                SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES, SchemaConstants.SUPPORTED_CONTROL_AT );
+
+            if ( explicit != null )
+            {
+                entry = explicit;
+                attr = entry.get( SchemaConstants.SUPPORTED_CONTROL_AT );
+            }
+        }
+
+        List<String> supportedControls = new ArrayList<>();
+
+        if ( attr != null )
+        {
+            for ( Value value : attr )
+            {
+                supportedControls.add( value.getString() );
+            }
+        }
+
+        return new RootDse( entry, Collections.unmodifiableList( supportedControls ) );
+    }
+
+
+    private String getSchemaValidator( LdapConnection connection ) throws LdapException
+    {
+        return getSchemaValidator( connection, getRootDseHolder( connection ).entry );
+    }
+
+
+    /**
+     * @return The validator built with the SubschemaSubentry modifyTimestamp and entryCSN, or null
+     */
+    private static String getSchemaValidator( LdapConnection connection, Entry rootDseEntry ) throws LdapException
+    {
+        Attribute subschemaSubentry = rootDseEntry.get( SchemaConstants.SUBSCHEMA_SUBENTRY_AT );
+
+        if ( ( subschemaSubentry == null ) || ( subschemaSubentry.size() == 0 ) )
+        {
+            return null;
+        }
+
+        Entry stamps = connection.lookup( new Dn( subschemaSubentry.getString() ),
+            SchemaConstants.MODIFY_TIMESTAMP_AT, SchemaConstants.ENTRY_CSN_AT );
+
+        if ( stamps == null )
+        {
+            return null;
+        }
+
+        Attribute modifyTimestamp = stamps.get( SchemaConstants.MODIFY_TIMESTAMP_AT );
+        Attribute entryCsn = stamps.get( SchemaConstants.ENTRY_CSN_AT );
+
+        return SchemaCache.getValidator( modifyTimestamp == null ? null : modifyTimestamp.getString(),
+            entryCsn == null ? null : entryCsn.getString() );
+    }
+}
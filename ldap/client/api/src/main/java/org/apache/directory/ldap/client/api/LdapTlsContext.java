@@ -0,0 +1,254 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An initialized {@link SSLContext} shared by many {@link LdapNetworkConnection}s. By
+ * default, each connection creates and initializes its own SSLContext, for LDAPS and
+ * for StartTLS, so every connection goes through a full TLS handshake. When a
+ * LdapTlsContext is set in the {@link LdapConnectionConfig}, all the connections
+ * created with this configuration use the same SSLContext, and its client session
+ * cache : the connections to a server which has already been contacted resume the
+ * TLS session, without any key exchange nor certificate validation.
+ * <p>
+ * The number of full and resumed handshakes are counted. Here is an example :
+ * <pre>
+ * LdapConnectionConfig config = new LdapConnectionConfig();
+ * config.setUseSsl( true );
+ * config.setTrustManagers( trustManagers );
+ * config.setTlsContext( new LdapTlsContext( config ) );
+ * ...
+ * System.out.println( config.getTlsContext().getResumptionRate() );
+ * </pre>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapTlsContext
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( LdapTlsContext.class );
+
+    /** The default number of cached TLS sessions */
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 1000;
+
+    /** The default lifetime of a cached TLS session, in seconds : one hour */
+    public static final int DEFAULT_SESSION_TIMEOUT = 3600;
+
+    /** The shared SSLContext */
+    private final SSLContext sslContext;
+
+    /** The number of full handshakes */
+    private final LongAdder fullHandshakeCount = new LongAdder();
+
+    /** The number of resumed handshakes */
+    private final LongAdder resumedHandshakeCount = new LongAdder();
+
+    /** The ids and identities of the TLS sessions already established, the least recently used first */
+    private final Map<Object, Boolean> knownSessions;
+
+
+    /**
+     * Creates a new LdapTlsContext, using the SSL protocol, the KeyManagers, the TrustManagers
+     * and the SecureRandom of a configuration. The TLS sessions are cached with the default
+     * size and timeout.
+     *
+     * @param config The configuration to use
+     * @throws LdapException If the SSLContext can't be initialized
+     */
+    public LdapTlsContext( LdapConnectionConfig config ) throws LdapException
+    {
+        this( config, DEFAULT_SESSION_CACHE_SIZE, DEFAULT_SESSION_TIMEOUT );
+    }
+
+
+    /**
+     * Creates a new LdapTlsContext, using the SSL protocol, the KeyManagers, the TrustManagers
+     * and the SecureRandom of a configuration.
+     *
+     * @param config The configuration to use
+     * @param sessionCacheSize The maximum number of cached TLS sessions, 0 for no limit
+     * @param sessionTimeout The lifetime of a cached TLS session, in seconds, 0 for no limit
+     * @throws LdapException If the SSLContext can't be initialized
+     */
+    public LdapTlsContext( LdapConnectionConfig config, int sessionCacheSize, int sessionTimeout )
+        throws LdapException
+    {
+        try
+        {
+            sslContext = SSLContext.getInstance( config.getSslProtocol() );
+            sslContext.init( config.getKeyManagers(), config.getTrustManagers(), config.getSecureRandom() );
+        }
+        catch ( GeneralSecurityException gse )
+        {
+            String msg = I18n.err( I18n.ERR_04122_SSL_CONTEXT_INIT_FAILURE );
+            LOG.error( msg, gse );
+            throw new LdapException( msg, gse );
+        }
+
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        sessionContext.setSessionCacheSize( sessionCacheSize );
+        sessionContext.setSessionTimeout( sessionTimeout );
+        knownSessions = createKnownSessions( sessionCacheSize );
+    }
+
+
+    /**
+     * Creates a new LdapTlsContext, sharing an already initialized SSLContext
+     *
+     * @param sslContext The SSLContext to share
+     */
+    public LdapTlsContext( SSLContext sslContext )
+    {
+        this.sslContext = sslContext;
+        knownSessions = createKnownSessions( sslContext.getClientSessionContext().getSessionCacheSize() );
+    }
+
+
+    /**
+     * Creates the map of the known sessions, keeping the ids and identities of as many
+     * sessions as the session cache, or DEFAULT_SESSION_CACHE_SIZE if the cache is not limited.
+     */
+    private static Map<Object, Boolean> createKnownSessions( int sessionCacheSize )
+    {
+        int maxSize = 2 * ( sessionCacheSize > 0 ? sessionCacheSize : DEFAULT_SESSION_CACHE_SIZE );
+
+        return Collections.synchronizedMap( new LinkedHashMap<Object, Boolean>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Object, Boolean> eldest )
+            {
+                return size() > maxSize;
+            }
+        } );
+    }
+
+
+    /**
+     * @return The shared SSLContext
+     */
+    public SSLContext getSslContext()
+    {
+        return sslContext;
+    }
+
+
+    /**
+     * Records a completed handshake. Up to TLS 1.2, a resumed session has the id of a session
+     * already established by another connection. A TLS 1.3 resumption gives a new id to the
+     * session, but it keeps the peer and the creation time of the resumed session.
+     *
+     * @param session The established TLS session
+     */
+    /* No qualifier */ void handshakeCompleted( SSLSession session )
+    {
+        if ( session == null )
+        {
+            return;
+        }
+
+        byte[] id = session.getId();
+        boolean knownId = ( id != null ) && ( id.length != 0 )
+            && ( knownSessions.put( ByteBuffer.wrap( id.clone() ), Boolean.TRUE ) != null );
+
+        String identity = session.getPeerHost() + ':' + session.getPeerPort() + '@' + session.getCreationTime();
+        boolean knownIdentity = knownSessions.put( identity, Boolean.TRUE ) != null;
+
+        if ( knownId || knownIdentity )
+        {
+            resumedHandshakeCount.increment();
+        }
+        else
+        {
+            fullHandshakeCount.increment();
+        }
+    }
+
+
+    /**
+     * @return The number of full TLS handshakes
+     */
+    public long getFullHandshakeCount()
+    {
+        return fullHandshakeCount.sum();
+    }
+
+
+    /**
+     * @return The number of resumed TLS handshakes
+     */
+    public long getResumedHandshakeCount()
+    {
+        return resumedHandshakeCount.sum();
+    }
+
+
+    /**
+     * @return The ratio of resumed TLS handshakes, between 0 and 1
+     */
+    public double getResumptionRate()
+    {
+        long resumed = resumedHandshakeCount.sum();
+        long total = resumed + fullHandshakeCount.sum();
+
+        return total == 0L ? 0d : ( double ) resumed / total;
+    }
+
+
+    /**
+     * Resets the handshake counters
+     */
+    public void resetStatistics()
+    {
+        fullHandshakeCount.reset();
+        resumedHandshakeCount.reset();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "LdapTlsContext[protocol: " + sslContext.getProtocol() + ", full handshakes: " + getFullHandshakeCount()
+            + ", resumed handshakes: " + getResumedHandshakeCount() + "]";
+    }
+}
@@ -26,18 +26,27 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 
+import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
@@ -57,6 +66,7 @@ import org.apache.directory.api.ldap.model.ldif.anonymizer.Anonymizer;
 import org.apache.directory.api.ldap.model.ldif.anonymizer.BinaryAnonymizer;
 import org.apache.directory.api.ldap.model.ldif.anonymizer.CaseSensitiveStringAnonymizer;
 import org.apache.directory.api.ldap.model.ldif.anonymizer.IntegerAnonymizer;
+import org.apache.directory.api.ldap.model.ldif.anonymizer.SpillableValueMap;
 import org.apache.directory.api.ldap.model.ldif.anonymizer.StringAnonymizer;
 import org.apache.directory.api.ldap.model.ldif.anonymizer.TelephoneNumberAnonymizer;
 import org.apache.directory.api.ldap.model.name.Ava;
@@ -68,6 +78,7 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.schema.syntaxCheckers.DnSyntaxChecker;
 import org.apache.directory.api.ldap.model.schema.syntaxCheckers.NameAndOptionalUIDSyntaxChecker;
 import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.Strings;
 
 
 /**
@@ -116,10 +127,10 @@ import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
 public class LdifAnonymizer
 {
     /** The map that stores the anonymized values associated to the original value */
-    private Map<Value, Value> valueMap = new HashMap<>();
+    private Map<Value, Value> valueMap = new ConcurrentHashMap<>();
     
     /** The set that contains all the values we already have anonymized */
-    private Set<Value> valueSet = new HashSet<>();
+    private Set<Value> valueSet = ConcurrentHashMap.newKeySet();
     
     /** The latest anonymized String value Map */
     private Map<Integer, String> latestStringMap;
@@ -138,6 +149,42 @@ public class LdifAnonymizer
     
     /** The PrintStream used to write informations about the processing */
     private PrintStream out = null;
+    
+    /** The maximum number of entries waiting to be written, per thread */
+    private static final int MAX_PENDING_ENTRIES_PER_THREAD = 16;
+    
+    /** The number of locks the values to anonymize are spread over */
+    private static final int NB_VALUE_LOCKS = 64;
+    
+    /** The maximum number of anonymized values derived from a value, when they are already used */
+    private static final int MAX_ATTEMPTS = 1000;
+    
+    /** The locks protecting the values being anonymized from a seed */
+    private final Object[] valueLocks = new Object[NB_VALUE_LOCKS];
+    
+    /** The seed the anonymized values are derived from, in the keyed mode */
+    private long seed;
+    
+    /** Tells if the anonymized values are derived from the original values and the seed */
+    private volatile boolean keyed;
+    
+    /**
+     * An entry being anonymized, waiting to be written
+     */
+    private final class PendingEntry
+    {
+        /** The original entry */
+        private final LdifEntry ldifEntry;
+        
+        /** The anonymized entry, as a LDIF String */
+        private final FutureTask<String> result;
+        
+        private PendingEntry( LdifEntry ldifEntry )
+        {
+            this.ldifEntry = ldifEntry;
+            result = new FutureTask<>( () -> anonymizeLdifEntry( ldifEntry ) );
+        }
+    }
 
     /**
      * Creates a default instance of LdifAnonymizer. The list of anonymized attribute
@@ -146,6 +193,11 @@ public class LdifAnonymizer
      */
     public LdifAnonymizer()
     {
+        for ( int i = 0; i < NB_VALUE_LOCKS; i++ )
+        {
+            valueLocks[i] = new Object();
+        }
+
         try
         {
             schemaManager = new DefaultSchemaManager();
@@ -170,6 +222,11 @@ public class LdifAnonymizer
     {
         this.schemaManager = schemaManager;
 
+        for ( int i = 0; i < NB_VALUE_LOCKS; i++ )
+        {
+            valueLocks[i] = new Object();
+        }
+
         init( null, null, null, null );
     }
     
@@ -406,6 +463,7 @@ public class LdifAnonymizer
         Value value = ava.getValue();
         AttributeType attributeType = ava.getAttributeType();
         Value anonymizedValue = valueMap.get( value );
+
         Ava anonymizedAva;
         
         if ( anonymizedValue == null )
@@ -422,7 +480,7 @@ public class LdifAnonymizer
                 }
                 else
                 {
-                    Attribute anonymizedAttribute = anonymizer.anonymize( valueMap, valueSet, attribute );
+                    Attribute anonymizedAttribute = anonymizeAttribute( anonymizer, attribute );
                     anonymizedAva = new Ava( schemaManager, ava.getType(), anonymizedAttribute.getString() );
                 }
             }
@@ -434,7 +492,7 @@ public class LdifAnonymizer
                 }
                 else
                 {
-                    Attribute anonymizedAttribute = anonymizer.anonymize( valueMap, valueSet, attribute );
+                    Attribute anonymizedAttribute = anonymizeAttribute( anonymizer, attribute );
 
                     anonymizedAva = new Ava( schemaManager, ava.getType(), anonymizedAttribute.getBytes() );
                 }
@@ -524,6 +582,28 @@ public class LdifAnonymizer
      * @throws IOException If we had some issue during some IO operations
      */
     public void anonymizeFile( String ldifFile, Writer writer ) throws LdapException, IOException
+    {
+        anonymizeFile( ldifFile, writer, 1 );
+    }
+
+
+    /**
+     * Anonymize a LDIF, using many threads. The entries are read and written in the same order,
+     * and never more than a few entries per thread are waiting to be written, so the file is
+     * streamed whatever its size. With more than one thread, the anonymizer switches to the
+     * keyed mode (see {@link #setSeed(long)}) : each anonymized value is derived from the
+     * original value and the seed, so the result does not depend on the order the threads
+     * process the values in, and is the same from one run to another.
+     * <p>
+     * Combined with a {@link SpillableValueMap}, the memory used to anonymize a file is bounded.
+     * 
+     * @param ldifFile The ldif file to anonymize
+     * @param writer The Writer to use to write the result
+     * @param nbThreads The number of threads anonymizing the entries
+     * @throws LdapException If we got some LDAP related exception
+     * @throws IOException If we had some issue during some IO operations
+     */
+    public void anonymizeFile( String ldifFile, Writer writer, int nbThreads ) throws LdapException, IOException
     {
         File inputFile = new File( ldifFile );
         
@@ -533,92 +613,50 @@ public class LdifAnonymizer
             return;
         }
         
+        ExecutorService executor = null;
+        
+        if ( nbThreads > 1 )
+        {
+            keyed = true;
+            executor = Executors.newFixedThreadPool( nbThreads );
+        }
+
         try ( LdifReader ldifReader = new LdifReader( inputFile, schemaManager ) )
         {
             int count = 0;
             List<LdifEntry> errors = new ArrayList<>();
             List<String> errorTexts = new ArrayList<>();
+            Deque<PendingEntry> pendingEntries = new ArrayDeque<>();
     
             try
             {
                 for ( LdifEntry ldifEntry : ldifReader )
                 {
-                    count++;
-                    
-                    try
+                    PendingEntry pendingEntry = new PendingEntry( ldifEntry );
+
+                    if ( executor == null )
                     {
-                        if ( ldifEntry.isEntry() && !ldifEntry.isChangeAdd() )
-                        {
-                            // process a full entry. Add changes aren't processed here.
-                            Entry newEntry = anonymizeEntry( ldifEntry );
-                            
-                            writer.write( LdifUtils.convertToLdif( newEntry ) );
-                            writer.write( "\n" );
-                        }
-                        else if ( ldifEntry.isChangeDelete() )
-                        {
-                            // A Delete operation
-                            LdifEntry newLdifEntry = anonymizeChangeDelete( ldifEntry );
-    
-                            if ( ldifEntry != null )
-                            {
-                                writer.write( newLdifEntry.toString() );
-                                writer.write( "\n" );
-                            }
-                        }
-                        else if ( ldifEntry.isChangeAdd() )
-                        {
-                            // A Add operation
-                            LdifEntry newLdifEntry = anonymizeChangeAdd( ldifEntry );
-    
-                            if ( ldifEntry != null )
-                            {
-                                writer.write( newLdifEntry.toString() );
-                                writer.write( "\n" );
-                            }
-                        }
-                        else if ( ldifEntry.isChangeModify() )
-                        {
-                            // A Modify operation
-                            LdifEntry newLdifEntry = anonymizeChangeModify( ldifEntry );
-    
-                            if ( ldifEntry != null )
-                            {
-                                writer.write( newLdifEntry.toString() );
-                                writer.write( "\n" );
-                            }
-                        }
-                        else if ( ldifEntry.isChangeModDn() ||  ldifEntry.isChangeModRdn() )
-                        {
-                            // A MODDN operation
-                            LdifEntry newLdifEntry = anonymizeChangeModDn( ldifEntry );
-    
-                            if ( ldifEntry != null )
-                            {
-                                writer.write( newLdifEntry.toString() );
-                                writer.write( "\n" );
-                            }
-                        }
-    
-                        System.out.print( '.' );
-                        
-                        if ( count % 100  == 0 )
-                        {
-                            println();
-                        }
+                        pendingEntry.result.run();
                     }
-                    catch ( Exception e )
+                    else
                     {
-                        System.out.print( '*' );
-    
-                        if ( count % 100  == 0 )
-                        {
-                            println();
-                        }
-                        
-                        errors.add( ldifEntry );
-                        errorTexts.add( e.getMessage() );
+                        executor.execute( pendingEntry.result );
                     }
+
+                    pendingEntries.add( pendingEntry );
+                    
+                    // Don't keep too many entries in memory
+                    while ( pendingEntries.size() > nbThreads * MAX_PENDING_ENTRIES_PER_THREAD )
+                    {
+                        count++;
+                        write( pendingEntries.poll(), writer, count, errors, errorTexts );
+                    }
+                }
+                
+                while ( !pendingEntries.isEmpty() )
+                {
+                    count++;
+                    write( pendingEntries.poll(), writer, count, errors, errorTexts );
                 }
     
                 println();
@@ -649,6 +687,293 @@ public class LdifAnonymizer
                 println( "Nb entries : " + count ); 
             }
         }
+        finally
+        {
+            if ( executor != null )
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+    
+    
+    /**
+     * Writes an anonymized entry, once it has been processed, or stores the error.
+     */
+    private void write( PendingEntry pendingEntry, Writer writer, int count, List<LdifEntry> errors,
+        List<String> errorTexts ) throws IOException
+    {
+        try
+        {
+            String anonymized = pendingEntry.result.get();
+            
+            if ( anonymized != null )
+            {
+                writer.write( anonymized );
+                writer.write( "\n" );
+            }
+
+            System.out.print( '.' );
+        }
+        catch ( ExecutionException ee )
+        {
+            System.out.print( '*' );
+
+            errors.add( pendingEntry.ldifEntry );
+            errorTexts.add( ee.getCause().getMessage() );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            
+            throw new InterruptedIOException( ie.getMessage() );
+        }
+        
+        if ( count % 100  == 0 )
+        {
+            println();
+        }
+    }
+    
+    
+    /**
+     * Anonymize an entry or a change
+     * 
+     * @param ldifEntry The entry to anonymize
+     * @return The anonymized entry, as a LDIF String, or null if it can't be anonymized
+     * @throws LdapException If the anonymization failed
+     */
+    private String anonymizeLdifEntry( LdifEntry ldifEntry ) throws LdapException
+    {
+        LdifEntry newLdifEntry = null;
+
+        if ( ldifEntry.isEntry() && !ldifEntry.isChangeAdd() )
+        {
+            // process a full entry. Add changes aren't processed here.
+            Entry newEntry = anonymizeEntry( ldifEntry );
+            
+            return LdifUtils.convertToLdif( newEntry );
+        }
+        else if ( ldifEntry.isChangeDelete() )
+        {
+            // A Delete operation
+            newLdifEntry = anonymizeChangeDelete( ldifEntry );
+        }
+        else if ( ldifEntry.isChangeAdd() )
+        {
+            // A Add operation
+            newLdifEntry = anonymizeChangeAdd( ldifEntry );
+        }
+        else if ( ldifEntry.isChangeModify() )
+        {
+            // A Modify operation
+            newLdifEntry = anonymizeChangeModify( ldifEntry );
+        }
+        else if ( ldifEntry.isChangeModDn() ||  ldifEntry.isChangeModRdn() )
+        {
+            // A MODDN operation
+            newLdifEntry = anonymizeChangeModDn( ldifEntry );
+        }
+        
+        if ( newLdifEntry == null )
+        {
+            return null;
+        }
+
+        return newLdifEntry.toString();
+    }
+    
+    
+    /**
+     * Anonymize an attribute. The mappings are shared by all the threads : a value is
+     * anonymized only once, when it's added to the value map. In the keyed mode, the
+     * anonymized values are derived from the original values, and are computed in
+     * parallel. Otherwise, an anonymizer computes a new value from the latest one it has
+     * generated, so it's used by one thread at a time.
+     * 
+     * @param anonymizer The anonymizer to use
+     * @param attribute The attribute to anonymize
+     * @return The anonymized attribute
+     * @throws LdapInvalidAttributeValueException If an anonymized value is invalid
+     */
+    private Attribute anonymizeAttribute( Anonymizer anonymizer, Attribute attribute )
+        throws LdapInvalidAttributeValueException
+    {
+        AttributeType attributeType = attribute.getAttributeType();
+        Attribute result = new DefaultAttribute( attributeType );
+
+        for ( Value value : attribute )
+        {
+            Value anonymizedValue = valueMap.get( value );
+
+            if ( anonymizedValue == null )
+            {
+                if ( keyed )
+                {
+                    anonymizedValue = anonymizeKeyedValue( anonymizer, attributeType, value );
+                }
+                else
+                {
+                    anonymizedValue = valueMap.computeIfAbsent( value, v -> anonymizeValue( anonymizer, attributeType, v ) );
+                }
+            }
+
+            if ( anonymizedValue != null )
+            {
+                result.add( anonymizedValue );
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Anonymize a single value in the keyed mode. The anonymized value is derived from the
+     * original value and the seed. When it's already used by another value, which is
+     * unlikely unless the value is very short, a new one is derived, so that two values are
+     * never anonymized the same way. Only in this case does the result depend on the order
+     * the values are processed in.
+     * <p>
+     * The values are spread over some locks, so that a value is anonymized only once while
+     * the other values are anonymized in parallel.
+     *
+     * @param anonymizer The anonymizer to use
+     * @param attributeType The value AttributeType
+     * @param value The value to anonymize
+     * @return The anonymized value, or null if the anonymizer does not handle it
+     */
+    private Value anonymizeKeyedValue( Anonymizer<?> anonymizer, AttributeType attributeType, Value value )
+    {
+        synchronized ( valueLocks[( value.hashCode() & 0x7FFFFFFF ) % NB_VALUE_LOCKS] )
+        {
+            Value anonymizedValue = valueMap.get( value );
+
+            if ( anonymizedValue != null )
+            {
+                return anonymizedValue;
+            }
+
+            for ( int attempt = 0; attempt < MAX_ATTEMPTS; attempt++ )
+            {
+                try
+                {
+                    anonymizedValue = anonymizer.anonymize( attributeType, value, getSeed( value, attempt ) );
+                }
+                catch ( LdapInvalidAttributeValueException liave )
+                {
+                    throw new RuntimeException( I18n.err( I18n.ERR_13436_ERROR_ANONYMIZING_VALUE, value ), liave );
+                }
+
+                if ( anonymizedValue == null )
+                {
+                    return null;
+                }
+
+                if ( valueSet.add( anonymizedValue ) )
+                {
+                    valueMap.put( value, anonymizedValue );
+
+                    return anonymizedValue;
+                }
+            }
+
+            throw new RuntimeException( I18n.err( I18n.ERR_13435_CANNOT_COMPUTE_NEW_VALUE, value ) );
+        }
+    }
+
+
+    /**
+     * Computes the seed an anonymized value is derived from : a FNV-1a hash of the value
+     * AttributeType OID and normalized form, starting from the anonymizer seed and the
+     * attempt number.
+     *
+     * @param value The original value
+     * @param attempt The number of anonymized values already derived from this value
+     * @return The value seed
+     */
+    private long getSeed( Value value, int attempt )
+    {
+        long hash = 0xCBF29CE484222325L ^ seed ^ ( attempt * 0x9E3779B97F4A7C15L );
+        AttributeType attributeType = value.getAttributeType();
+
+        if ( attributeType != null )
+        {
+            hash = hash( hash, Strings.getBytesUtf8( attributeType.getOid() ) );
+        }
+
+        byte[] bytes;
+
+        if ( value.isHumanReadable() )
+        {
+            String normalized = value.getNormalized();
+            bytes = Strings.getBytesUtf8( normalized == null ? value.getString() : normalized );
+        }
+        else
+        {
+            bytes = value.getBytes();
+        }
+
+        // Separates the OID from the value
+        hash = ( hash ^ 0xFF ) * 0x100000001B3L;
+
+        return hash( hash, bytes );
+    }
+
+
+    private static long hash( long hash, byte[] bytes )
+    {
+        long result = hash;
+
+        for ( byte b : bytes )
+        {
+            result = ( result ^ ( b & 0xFF ) ) * 0x100000001B3L;
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Anonymize a single value which has no mapping yet, and add the result to the set
+     * of anonymized values.
+     *
+     * @param anonymizer The anonymizer to use
+     * @param attributeType The value AttributeType
+     * @param value The value to anonymize
+     * @return The anonymized value, or null if the anonymizer does not handle it
+     */
+    @SuppressWarnings("unchecked")
+    private Value anonymizeValue( Anonymizer anonymizer, AttributeType attributeType, Value value )
+    {
+        Attribute attribute;
+
+        try
+        {
+            attribute = new DefaultAttribute( attributeType, value );
+        }
+        catch ( LdapInvalidAttributeValueException liave )
+        {
+            // The value comes from a valid attribute
+            throw new RuntimeException( I18n.err( I18n.ERR_13436_ERROR_ANONYMIZING_VALUE, value ), liave );
+        }
+
+        Attribute anonymizedAttribute;
+
+        synchronized ( anonymizer )
+        {
+            // The mapping is stored by the caller
+            anonymizedAttribute = anonymizer.anonymize( new HashMap<>(), new HashSet<>(), attribute );
+        }
+
+        Value anonymizedValue = anonymizedAttribute.get();
+
+        if ( anonymizedValue != null )
+        {
+            valueSet.add( anonymizedValue );
+        }
+
+        return anonymizedValue;
     }
     
     
@@ -711,7 +1036,7 @@ public class LdifAnonymizer
                 }
                 else
                 {
-                    Attribute anonymizedAttribute = anonymizer.anonymize( valueMap, valueSet, attribute );
+                    Attribute anonymizedAttribute = anonymizeAttribute( anonymizer, attribute );
                     
                     Modification anonymizedModification = new DefaultModification( modification.getOperation(), anonymizedAttribute );
                     newLdifEntry.addModification( anonymizedModification );
@@ -770,7 +1095,7 @@ public class LdifAnonymizer
                 }
                 else
                 {
-                    anonymizedAttribute = anonymizer.anonymize( valueMap, valueSet, attribute );
+                    anonymizedAttribute = anonymizeAttribute( anonymizer, attribute );
                     
                     if ( anonymizedAttribute != null )
                     {
@@ -917,7 +1242,7 @@ public class LdifAnonymizer
                 }
                 else
                 {
-                    Attribute anonymizedAttribute = anonymizer.anonymize( valueMap, valueSet, attribute );
+                    Attribute anonymizedAttribute = anonymizeAttribute( anonymizer, attribute );
                     
                     if ( anonymizedAttribute != null )
                     {
@@ -952,57 +1277,12 @@ public class LdifAnonymizer
 
             for ( LdifEntry ldifEntry : entries )
             {
-                if ( ldifEntry.isEntry() && !ldifEntry.isChangeAdd() )
-                {
-                    // process a full entry. Add changes aren't preocessed ghere.
-                    Entry newEntry = anonymizeEntry( ldifEntry );
-                    
-                    result.append( LdifUtils.convertToLdif( newEntry ) );
-                    result.append( "\n" );
-                }
-                else if ( ldifEntry.isChangeDelete() )
-                {
-                    // A Delete operation
-                    LdifEntry newLdifEntry = anonymizeChangeDelete( ldifEntry );
-
-                    if ( newLdifEntry != null )
-                    {
-                        result.append( newLdifEntry );
-                        result.append( "\n" );
-                    }
-                }
-                else if ( ldifEntry.isChangeAdd() )
-                {
-                    // A Add operation
-                    LdifEntry newLdifEntry = anonymizeChangeAdd( ldifEntry );
+                String anonymized = anonymizeLdifEntry( ldifEntry );
 
-                    if ( newLdifEntry != null )
-                    {
-                        result.append( newLdifEntry );
-                        result.append( "\n" );
-                    }
-                }
-                else if ( ldifEntry.isChangeModify() )
+                if ( anonymized != null )
                 {
-                    // A Modify operation
-                    LdifEntry newLdifEntry = anonymizeChangeModify( ldifEntry );
-
-                    if ( newLdifEntry != null )
-                    {
-                        result.append( newLdifEntry );
-                        result.append( "\n" );
-                    }
-                }
-                else if ( ldifEntry.isChangeModDn() ||  ldifEntry.isChangeModRdn() )
-                {
-                    // A MODDN operation
-                    LdifEntry newLdifEntry = anonymizeChangeModDn( ldifEntry );
-
-                    if ( newLdifEntry != null )
-                    {
-                        result.append( newLdifEntry );
-                        result.append( "\n" );
-                    }
+                    result.append( anonymized );
+                    result.append( "\n" );
                 }
             }
 
@@ -1030,11 +1310,45 @@ public class LdifAnonymizer
 
 
     /**
+     * Sets the map of values to their anonymized counterpart. The set of anonymized values
+     * is rebuilt from this map, unless it's a {@link SpillableValueMap}, which stores this
+     * set. When many threads are anonymizing a file, the map must be thread safe, like a
+     * ConcurrentHashMap. It must not be changed while a file is being anonymized.
+     * 
      * @param valueMap the valueMap to set
      */
     public void setValueMap( Map<Value, Value> valueMap )
     {
         this.valueMap = valueMap;
+        
+        if ( valueMap instanceof SpillableValueMap )
+        {
+            // Don't keep all the anonymized values in memory
+            valueSet = ( ( SpillableValueMap ) valueMap ).anonymizedValueSet();
+        }
+        else
+        {
+            valueSet = ConcurrentHashMap.newKeySet();
+            valueSet.addAll( valueMap.values() );
+        }
+    }
+
+
+    /**
+     * Switches to the keyed mode, where each anonymized value is derived from the original
+     * value and this seed, instead of being the next one in a sequence. The anonymized values
+     * then don't depend on the order the values are processed in : two runs using the same
+     * seed anonymize a value the same way, whatever the number of threads. The default seed
+     * is 0. Anyone knowing the seed can check a guess of an original value, so a seed kept
+     * secret should be used for sensitive data. The keyed mode is always used when a file
+     * is anonymized by many threads.
+     *
+     * @param seed The seed to use
+     */
+    public void setSeed( long seed )
+    {
+        this.seed = seed;
+        keyed = true;
     }
 
 
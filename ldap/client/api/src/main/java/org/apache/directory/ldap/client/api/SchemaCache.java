@@ -0,0 +1,442 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A local cache for the schemas loaded by the {@link DefaultSchemaLoader}. The
+ * schema descriptions read from a server subschemaSubentry are parsed, and the
+ * resulting schema entries, which the loader gives to the SchemaManager, are
+ * stored in a compressed binary file, one file per server. On a cache hit, the
+ * loader neither downloads nor parses the descriptions. The file is tagged with the
+ * subschemaSubentry modifyTimestamp and entryCSN : when a new DefaultSchemaLoader
+ * is created, those two attributes are fetched with a cheap base lookup, and the
+ * schema is only downloaded again if one of them has changed. Here is an example :
+ * <pre>
+ * SchemaCache schemaCache = new SchemaCache( Paths.get( "/var/cache/ldap-schemas" ) );
+ * SchemaLoader loader = new DefaultSchemaLoader( connection, false, schemaCache );
+ * SchemaManager schemaManager = new DefaultSchemaManager( loader );
+ * schemaManager.loadAllEnabled();
+ * </pre>
+ * A server which does not expose any of those two attributes is never cached.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SchemaCache
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( SchemaCache.class );
+
+    /** The magic number starting a cache file */
+    private static final int MAGIC = 0x4C534331;
+
+    /** The cache file format version */
+    private static final int VERSION = 2;
+
+    /** The cache files suffix */
+    private static final String SUFFIX = ".schema";
+
+    /** The maximum length of a stored String, in bytes */
+    private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+    /** The maximum number of stored schemas, entries, attributes, or values per attribute */
+    private static final int MAX_COUNT = 1024 * 1024;
+
+    /** The directory containing the cache files */
+    private final Path directory;
+
+
+    /**
+     * Creates a new SchemaCache, storing its files in the given directory. The
+     * directory is created if needed.
+     *
+     * @param directory The cache directory
+     */
+    public SchemaCache( Path directory )
+    {
+        this.directory = directory;
+    }
+
+
+    /**
+     * @return The cache directory
+     */
+    public Path getDirectory()
+    {
+        return directory;
+    }
+
+
+    /**
+     * Builds the validator for a cached schema, from the subschemaSubentry
+     * modifyTimestamp and entryCSN.
+     *
+     * @param modifyTimestamp The subschemaSubentry modifyTimestamp, or null
+     * @param entryCsn The subschemaSubentry entryCSN, or null
+     * @return The validator, or null if both values are null
+     */
+    public static String getValidator( String modifyTimestamp, String entryCsn )
+    {
+        if ( ( modifyTimestamp == null ) && ( entryCsn == null ) )
+        {
+            return null;
+        }
+
+        return modifyTimestamp + '/' + entryCsn;
+    }
+
+
+    /**
+     * Reads a schema from the cache.
+     *
+     * @param serverId The server and subschemaSubentry identity
+     * @param validator The current subschemaSubentry validator
+     * @return The schema entries, per schema name and per subschemaSubentry attribute, or null
+     * if the schema is not cached or has changed since it was stored
+     */
+    public Map<String, Map<String, List<Entry>>> load( String serverId, String validator )
+    {
+        if ( validator == null )
+        {
+            return null;
+        }
+
+        Path file = getFile( serverId );
+
+        try ( DataInputStream in = new DataInputStream(
+            new GZIPInputStream( new BufferedInputStream( Files.newInputStream( file ) ) ) ) )
+        {
+            if ( ( in.readInt() != MAGIC ) || ( in.readInt() != VERSION ) || !serverId.equals( readString( in ) )
+                || !validator.equals( readString( in ) ) )
+            {
+                // Another server with the same hash, an outdated schema or file format
+                return null;
+            }
+
+            int nbSchemas = readCount( in );
+            Map<String, Map<String, List<Entry>>> schemas = new LinkedHashMap<>();
+
+            for ( int i = 0; i < nbSchemas; i++ )
+            {
+                String schemaName = readString( in );
+                int nbAttributes = readCount( in );
+                Map<String, List<Entry>> schemaEntries = new LinkedHashMap<>();
+
+                for ( int j = 0; j < nbAttributes; j++ )
+                {
+                    String attribute = readString( in );
+                    int nbEntries = readCount( in );
+                    List<Entry> entries = new ArrayList<>( nbEntries );
+
+                    for ( int k = 0; k < nbEntries; k++ )
+                    {
+                        entries.add( readEntry( in ) );
+                    }
+
+                    schemaEntries.put( attribute, entries );
+                }
+
+                schemas.put( schemaName, schemaEntries );
+            }
+
+            return schemas;
+        }
+        catch ( NoSuchFileException nsfe )
+        {
+            return null;
+        }
+        catch ( IOException | LdapException | RuntimeException e )
+        {
+            LOG.warn( I18n.err( I18n.ERR_04182_SCHEMA_CACHE_CANT_BE_READ, file, e.getMessage() ) );
+
+            return null;
+        }
+    }
+
+
+    /**
+     * Stores a schema in the cache, replacing the previous one. The file is written
+     * in a temporary file first, then moved, so a concurrent reader never sees a
+     * partial file. The errors are logged, and the schema is simply not cached.
+     *
+     * @param serverId The server and subschemaSubentry identity
+     * @param validator The subschemaSubentry validator
+     * @param schemas The schema entries, per schema name and per subschemaSubentry attribute
+     */
+    public void store( String serverId, String validator, Map<String, Map<String, List<Entry>>> schemas )
+    {
+        if ( validator == null )
+        {
+            return;
+        }
+
+        Path file = getFile( serverId );
+        Path tmpFile = null;
+
+        try
+        {
+            Files.createDirectories( directory );
+            tmpFile = Files.createTempFile( directory, file.getFileName().toString(), ".tmp" );
+
+            try ( DataOutputStream out = new DataOutputStream(
+                new GZIPOutputStream( new BufferedOutputStream( Files.newOutputStream( tmpFile ) ) ) ) )
+            {
+                out.writeInt( MAGIC );
+                out.writeInt( VERSION );
+                writeString( out, serverId );
+                writeString( out, validator );
+                out.writeInt( schemas.size() );
+
+                for ( Map.Entry<String, Map<String, List<Entry>>> schema : schemas.entrySet() )
+                {
+                    writeString( out, schema.getKey() );
+                    out.writeInt( schema.getValue().size() );
+
+                    for ( Map.Entry<String, List<Entry>> entries : schema.getValue().entrySet() )
+                    {
+                        writeString( out, entries.getKey() );
+                        out.writeInt( entries.getValue().size() );
+
+                        for ( Entry entry : entries.getValue() )
+                        {
+                            writeEntry( out, entry );
+                        }
+                    }
+                }
+            }
+
+            Files.move( tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( IOException ioe )
+        {
+            LOG.warn( I18n.err( I18n.ERR_04183_SCHEMA_CACHE_CANT_BE_WRITTEN, file, ioe.getMessage() ) );
+
+            if ( tmpFile != null )
+            {
+                try
+                {
+                    Files.deleteIfExists( tmpFile );
+                }
+                catch ( IOException e )
+                {
+                    // Nothing we can do
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Removes a schema from the cache
+     *
+     * @param serverId The server and subschemaSubentry identity
+     * @throws IOException If the cache file can't be deleted
+     */
+    public void invalidate( String serverId ) throws IOException
+    {
+        Files.deleteIfExists( getFile( serverId ) );
+    }
+
+
+    /**
+     * The file name is derived from the server identity hash. The identity itself is
+     * stored in the file, to detect collisions.
+     */
+    private Path getFile( String serverId )
+    {
+        return directory.resolve( Integer.toHexString( serverId.hashCode() ) + SUFFIX );
+    }
+
+
+    /**
+     * Writes an entry : its DN, the number of attributes, then for each attribute its user
+     * provided ID, a human readable flag, the number of values and the values
+     */
+    private static void writeEntry( DataOutputStream out, Entry entry ) throws IOException
+    {
+        writeString( out, entry.getDn().getName() );
+        out.writeInt( entry.size() );
+
+        for ( Attribute attribute : entry )
+        {
+            writeString( out, attribute.getUpId() );
+            out.writeBoolean( attribute.isHumanReadable() );
+            out.writeInt( attribute.size() );
+
+            for ( Value value : attribute )
+            {
+                writeBytes( out, value.getBytes() );
+            }
+        }
+    }
+
+
+    /**
+     * Reads an entry written by writeEntry
+     */
+    private static Entry readEntry( DataInputStream in ) throws IOException, LdapException
+    {
+        String dn = readString( in );
+        Entry entry = dn.isEmpty() ? new DefaultEntry() : new DefaultEntry( dn );
+        int nbAttributes = readCount( in );
+
+        for ( int i = 0; i < nbAttributes; i++ )
+        {
+            String upId = readString( in );
+            boolean humanReadable = in.readBoolean();
+            int nbValues = readCount( in );
+
+            if ( humanReadable )
+            {
+                String[] values = new String[nbValues];
+
+                for ( int j = 0; j < nbValues; j++ )
+                {
+                    values[j] = Strings.utf8ToString( readBytes( in ) );
+                }
+
+                entry.add( upId, values );
+            }
+            else
+            {
+                byte[][] values = new byte[nbValues][];
+
+                for ( int j = 0; j < nbValues; j++ )
+                {
+                    values[j] = readBytes( in );
+                }
+
+                entry.add( upId, values );
+            }
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * Writes a String as a length prefixed UTF-8 byte array (DataOutput.writeUTF
+     * is limited to 64K)
+     */
+    private static void writeString( DataOutputStream out, String value ) throws IOException
+    {
+        writeBytes( out, Strings.getBytesUtf8( value ) );
+    }
+
+
+    /**
+     * Writes a length prefixed byte array. A null array is written as an empty one.
+     */
+    private static void writeBytes( DataOutputStream out, byte[] bytes ) throws IOException
+    {
+        if ( bytes == null )
+        {
+            out.writeInt( 0 );
+        }
+        else
+        {
+            out.writeInt( bytes.length );
+            out.write( bytes );
+        }
+    }
+
+
+    /**
+     * Reads a length prefixed UTF-8 String
+     */
+    private static String readString( DataInputStream in ) throws IOException
+    {
+        return Strings.utf8ToString( readBytes( in ) );
+    }
+
+
+    /**
+     * Reads a length prefixed byte array
+     */
+    private static byte[] readBytes( DataInputStream in ) throws IOException
+    {
+        byte[] bytes = new byte[readLength( in, MAX_STRING_LENGTH )];
+        in.readFully( bytes );
+
+        return bytes;
+    }
+
+
+    /**
+     * Reads a number of schemas, entries, attributes or values
+     */
+    private static int readCount( DataInputStream in ) throws IOException
+    {
+        return readLength( in, MAX_COUNT );
+    }
+
+
+    /**
+     * Reads a length, checking it so that a corrupted file can't make us allocate a huge array
+     */
+    private static int readLength( DataInputStream in, int max ) throws IOException
+    {
+        int length = in.readInt();
+
+        if ( ( length < 0 ) || ( length > max ) )
+        {
+            throw new IOException( I18n.err( I18n.ERR_04198_SCHEMA_CACHE_CORRUPTED, length ) );
+        }
+
+        return length;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "SchemaCache[" + directory + "]";
+    }
+}
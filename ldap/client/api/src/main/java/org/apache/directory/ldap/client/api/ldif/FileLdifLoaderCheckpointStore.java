@@ -0,0 +1,118 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.ldif;
+
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A {@link LdifLoaderCheckpointStore} keeping the checkpoint in a file, as a decimal
+ * number. The checkpoint is written in a temporary file first, then moved, so that a
+ * crash never leaves a partial checkpoint.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class FileLdifLoaderCheckpointStore implements LdifLoaderCheckpointStore
+{
+    /** The checkpoint file */
+    private final Path file;
+
+
+    /**
+     * Creates a new FileLdifLoaderCheckpointStore
+     *
+     * @param file The file containing the checkpoint. Its parent directory is created if needed.
+     */
+    public FileLdifLoaderCheckpointStore( Path file )
+    {
+        this.file = file.toAbsolutePath();
+    }
+
+
+    /**
+     * @return The file containing the checkpoint
+     */
+    public Path getFile()
+    {
+        return file;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long load() throws IOException
+    {
+        try
+        {
+            String position = Strings.utf8ToString( Files.readAllBytes( file ) ).trim();
+
+            return position.isEmpty() ? 0L : Long.parseLong( position );
+        }
+        catch ( NoSuchFileException nsfe )
+        {
+            return 0L;
+        }
+        catch ( NumberFormatException nfe )
+        {
+            throw new IOException( nfe.getMessage(), nfe );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void save( long position ) throws IOException
+    {
+        Path directory = file.getParent();
+        Files.createDirectories( directory );
+        Path tmpFile = Files.createTempFile( directory, file.getFileName().toString(), ".tmp" );
+
+        try
+        {
+            Files.write( tmpFile, Strings.getBytesUtf8( Long.toString( position ) ) );
+            Files.move( tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        finally
+        {
+            Files.deleteIfExists( tmpFile );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return file.toString();
+    }
+}
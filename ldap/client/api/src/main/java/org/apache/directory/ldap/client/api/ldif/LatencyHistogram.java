@@ -0,0 +1,155 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.ldif;
+
+
+/**
+ * A fixed size histogram of latencies, in microseconds. The values below 16 have their
+ * own bucket, and each power of 2 above is split in 16 buckets, so the percentiles are
+ * computed with a relative error below 1/16, whatever the number of recorded values.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class LatencyHistogram
+{
+    /** The number of buckets per power of 2, as a number of bits */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /** The number of buckets per power of 2 */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** The buckets */
+    private final long[] counts = new long[SUB_BUCKETS * ( Long.SIZE - SUB_BUCKET_BITS )];
+
+    /** The number of recorded values */
+    private long count;
+
+    /** The sum of the recorded values */
+    private long sum;
+
+    /** The greatest recorded value */
+    private long max;
+
+
+    /**
+     * Records a latency.
+     *
+     * @param micros The latency, in microseconds
+     */
+    void record( long micros )
+    {
+        long value = Math.max( 0L, micros );
+        counts[index( value )]++;
+        count++;
+        sum += value;
+        max = Math.max( max, value );
+    }
+
+
+    /**
+     * @return The number of recorded values
+     */
+    long getCount()
+    {
+        return count;
+    }
+
+
+    /**
+     * @return The mean latency, in microseconds
+     */
+    long getMean()
+    {
+        return count == 0 ? 0L : sum / count;
+    }
+
+
+    /**
+     * @return The greatest latency, in microseconds
+     */
+    long getMax()
+    {
+        return max;
+    }
+
+
+    /**
+     * Computes a percentile.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The latency below which this percentile of the values are, in microseconds
+     */
+    long getPercentile( double percentile )
+    {
+        if ( count == 0 )
+        {
+            return 0L;
+        }
+
+        long rank = ( long ) Math.ceil( count * Math.min( 100d, Math.max( 0d, percentile ) ) / 100d );
+        long seen = 0L;
+
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            seen += counts[i];
+
+            if ( ( seen >= rank ) && ( seen > 0 ) )
+            {
+                return Math.min( max, upperBound( i ) );
+            }
+        }
+
+        return max;
+    }
+
+
+    /**
+     * @return The bucket of a value
+     */
+    private static int index( long value )
+    {
+        if ( value < SUB_BUCKETS )
+        {
+            return ( int ) value;
+        }
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros( value );
+        int shift = exponent - SUB_BUCKET_BITS;
+
+        return ( ( shift + 1 ) << SUB_BUCKET_BITS ) + ( int ) ( ( value >>> shift ) & ( SUB_BUCKETS - 1 ) );
+    }
+
+
+    /**
+     * @return The greatest value of a bucket
+     */
+    private static long upperBound( int index )
+    {
+        if ( index < SUB_BUCKETS )
+        {
+            return index;
+        }
+
+        int shift = ( index >>> SUB_BUCKET_BITS ) - 1;
+        long lowerBound = ( long ) ( SUB_BUCKETS + ( index & ( SUB_BUCKETS - 1 ) ) ) << shift;
+
+        return lowerBound + ( 1L << shift ) - 1;
+    }
+}
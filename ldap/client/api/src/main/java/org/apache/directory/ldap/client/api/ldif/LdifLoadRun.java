@@ -0,0 +1,902 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.ldif;
+
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifControl;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.AddRequestImpl;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
+import org.apache.directory.api.ldap.model.message.DeleteRequestImpl;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequestImpl;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequestImpl;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
+import org.apache.directory.api.ldap.model.name.Ava;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.LdapAsyncConnection;
+import org.apache.directory.ldap.client.api.future.ResponseFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A load done by a {@link LdifLoader}. The records are read, scheduled and sent by the
+ * thread calling {@link #run()}, while one thread per connection waits for the responses,
+ * in the order the requests were sent, and hands the completed records back.
+ * <p>
+ * The ordering constraints are tracked with an index of the entries the pending records
+ * (the records read and not yet processed) are on : the last pending record on each
+ * entry, and the pending records below each entry. A new record depends on the last
+ * record on its entry and on each of its ancestors, and on all the records below its
+ * entry. It is sent once all the records it depends on have been processed.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class LdifLoadRun
+{
+    /** The logger */
+    private static final Logger LOG = LoggerFactory.getLogger( LdifLoader.class );
+
+    /** The number of records read ahead, per request in flight */
+    private static final int READ_AHEAD_FACTOR = 4;
+
+    /** The thread numbers */
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    /** The loader configuration */
+    private final LdifLoader loader;
+
+    /** The records */
+    private final Iterator<LdifEntry> records;
+
+    /** The connections */
+    private final Slot[] slots;
+
+    /** The records whose response has been read, or which could not be sent */
+    private final BlockingQueue<Record> completions = new LinkedBlockingQueue<>();
+
+    /** The last pending record on each entry */
+    private final Map<String, Record> lastRecords = new HashMap<>();
+
+    /** The pending records below each entry */
+    private final Map<String, Set<Record>> descendants = new HashMap<>();
+
+    /** The records which can be sent */
+    private final Deque<Record> ready = new ArrayDeque<>();
+
+    /** The records waiting for a retry, the earliest first */
+    private final PriorityQueue<Record> delayed = new PriorityQueue<>(
+        ( record1, record2 ) -> Long.compare( record1.retryTime, record2.retryTime ) );
+
+    /** The positions of the records read and not processed, to compute the checkpoint */
+    private final TreeSet<Long> unprocessed = new TreeSet<>();
+
+    /** The report */
+    private final LdifLoaderReport report = new LdifLoaderReport();
+
+    /** The maximum number of pending records */
+    private final int maxPending;
+
+    /** The position of the next record */
+    private long position;
+
+    /** The number of records to skip */
+    private long skip;
+
+    /** The number of pending records */
+    private int pending;
+
+    /** The number of requests in flight */
+    private int inFlight;
+
+    /** Tells if all the records have been read */
+    private boolean exhausted;
+
+    /** Tells if the load is stopped by a failure */
+    private boolean stopped;
+
+    /** The last saved checkpoint */
+    private long savedCheckpoint;
+
+    /** The number of processed records */
+    private long processed;
+
+    /** The number of processed records at the last checkpoint */
+    private long processedAtCheckpoint;
+
+    /** The load start time */
+    private long startTime;
+
+
+    /**
+     * A LDIF record, and its scheduling state
+     */
+    private static final class Record
+    {
+        /** The record position in the LDIF */
+        final long position;
+
+        /** The record */
+        final LdifEntry entry;
+
+        /** The request */
+        final ResultResponseRequest request;
+
+        /** The keys of the entries the record is on, and of their ancestors */
+        final String[][] paths;
+
+        /** The number of records this record waits for */
+        int dependencies;
+
+        /** The records waiting for this record */
+        List<Record> dependants;
+
+        /** The number of retries */
+        int retries;
+
+        /** The time of the next retry */
+        long retryTime;
+
+        /** The connection the request is sent on */
+        Slot slot;
+
+        /** The time the request was sent */
+        long sendTime;
+
+        /** The response future */
+        ResponseFuture<? extends Response> future;
+
+        /** The response, null if none has been received */
+        Response response;
+
+        /** The error, if there is no response */
+        String error;
+
+
+        Record( long position, LdifEntry entry ) throws LdapException
+        {
+            this.position = position;
+            this.entry = entry;
+
+            Dn dn = entry.getDn();
+
+            if ( entry.isChangeModify() )
+            {
+                ModifyRequest modifyRequest = new ModifyRequestImpl();
+                modifyRequest.setName( dn );
+
+                for ( Modification modification : entry.getModifications() )
+                {
+                    modifyRequest.addModification( modification );
+                }
+
+                request = modifyRequest;
+                paths = new String[][] { getPath( dn ) };
+            }
+            else if ( entry.isChangeDelete() )
+            {
+                DeleteRequest deleteRequest = new DeleteRequestImpl();
+                deleteRequest.setName( dn );
+
+                request = deleteRequest;
+                paths = new String[][] { getPath( dn ) };
+            }
+            else if ( entry.isChangeModDn() || entry.isChangeModRdn() )
+            {
+                ModifyDnRequest modifyDnRequest = new ModifyDnRequestImpl();
+                Rdn newRdn = new Rdn( entry.getNewRdn() );
+                Dn newSuperior = dn.getParent();
+                modifyDnRequest.setName( dn );
+                modifyDnRequest.setNewRdn( newRdn );
+                modifyDnRequest.setDeleteOldRdn( entry.isDeleteOldRdn() );
+
+                if ( !Strings.isEmpty( entry.getNewSuperior() ) )
+                {
+                    newSuperior = new Dn( entry.getNewSuperior() );
+                    modifyDnRequest.setNewSuperior( newSuperior );
+                }
+
+                request = modifyDnRequest;
+                paths = new String[][] { getPath( dn ), getPath( new Dn( newRdn, newSuperior ) ) };
+            }
+            else
+            {
+                // A content record or an add change
+                AddRequest addRequest = new AddRequestImpl();
+                addRequest.setEntry( entry.getEntry() );
+
+                request = addRequest;
+                paths = new String[][] { getPath( dn ) };
+            }
+
+            if ( entry.hasControls() )
+            {
+                for ( LdifControl control : entry.getControls().values() )
+                {
+                    request.addControl( control );
+                }
+            }
+        }
+
+
+        /**
+         * @return The keys of an entry and of its ancestors, the entry first
+         */
+        private static String[] getPath( Dn dn )
+        {
+            List<Rdn> rdns = dn.getRdns();
+            String[] path = new String[rdns.size()];
+            StringBuilder key = new StringBuilder();
+
+            for ( int i = rdns.size() - 1; i >= 0; i-- )
+            {
+                if ( key.length() > 0 )
+                {
+                    key.insert( 0, ',' );
+                }
+
+                StringBuilder rdnKey = new StringBuilder();
+
+                for ( Ava ava : rdns.get( i ) )
+                {
+                    if ( rdnKey.length() > 0 )
+                    {
+                        rdnKey.append( '+' );
+                    }
+
+                    rdnKey.append( Strings.toLowerCaseAscii( Strings.trim( ava.getType() ) ) ).append( '=' );
+
+                    if ( ava.getValue().isHumanReadable() )
+                    {
+                        rdnKey.append( Strings.toLowerCaseAscii( Strings.trim( ava.getValue().getString() ) ) );
+                    }
+                    else
+                    {
+                        rdnKey.append( '#' ).append( Strings.dumpHexPairs( ava.getValue().getBytes() ) );
+                    }
+                }
+
+                key.insert( 0, rdnKey );
+                path[i] = key.toString();
+            }
+
+            return path;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return "#" + position + " " + entry.getDn();
+        }
+    }
+
+
+    /**
+     * A connection, with the requests in flight on it. Its thread reads the responses.
+     */
+    private final class Slot implements Runnable
+    {
+        /** The connection */
+        final LdapAsyncConnection connection;
+
+        /** The records whose request has been sent, in the sending order */
+        final BlockingQueue<Record> sent = new LinkedBlockingQueue<>();
+
+        /** The number of requests in flight */
+        int inFlight;
+
+
+        Slot( LdapAsyncConnection connection )
+        {
+            this.connection = connection;
+        }
+
+
+        /**
+         * Waits for the responses, and hands the records back to the loading thread
+         */
+        @Override
+        public void run()
+        {
+            try
+            {
+                while ( true )
+                {
+                    Record record = sent.take();
+                    ResponseFuture<? extends Response> future = record.future;
+
+                    // The timeout runs from the time the request was sent, not from the time
+                    // the previous responses have been read. The future waits forever on 0 ms.
+                    long remaining = loader.getTimeout()
+                        - TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - record.sendTime );
+
+                    try
+                    {
+                        record.response = future.get( Math.max( remaining, 1L ), TimeUnit.MILLISECONDS );
+                    }
+                    catch ( ExecutionException | TimeoutException e )
+                    {
+                        record.error = e.getMessage();
+                    }
+
+                    if ( record.response == null )
+                    {
+                        if ( future.getCause() != null )
+                        {
+                            record.error = future.getCause().getMessage();
+                        }
+                        else if ( record.error == null )
+                        {
+                            future.cancel( true );
+                            record.error = I18n.err( I18n.ERR_04193_LDIF_LOADER_NO_RESPONSE, record.position,
+                                record.entry.getDn(), loader.getTimeout() );
+                        }
+                    }
+
+                    completions.add( record );
+                }
+            }
+            catch ( InterruptedException ie )
+            {
+                // The load is done
+            }
+        }
+    }
+
+
+    /**
+     * Creates a new load
+     *
+     * @param loader The loader configuration
+     * @param records The records
+     */
+    LdifLoadRun( LdifLoader loader, Iterator<LdifEntry> records )
+    {
+        this.loader = loader;
+        this.records = records;
+
+        List<LdapAsyncConnection> connections = loader.getConnections();
+        slots = new Slot[connections.size()];
+
+        for ( int i = 0; i < slots.length; i++ )
+        {
+            slots[i] = new Slot( connections.get( i ) );
+        }
+
+        maxPending = slots.length * loader.getWindowSize() * READ_AHEAD_FACTOR;
+    }
+
+
+    /**
+     * Loads the records.
+     *
+     * @return The report
+     * @throws LdapException If the checkpoint can't be read, or if the load is interrupted
+     */
+    LdifLoaderReport run() throws LdapException
+    {
+        LdifLoaderCheckpointStore checkpointStore = loader.getCheckpointStore();
+
+        if ( checkpointStore != null )
+        {
+            try
+            {
+                skip = checkpointStore.load();
+                savedCheckpoint = skip;
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapException( I18n.err( I18n.ERR_04195_LDIF_LOADER_CHECKPOINT_ERROR, checkpointStore,
+                    ioe.getMessage() ), ioe );
+            }
+
+            if ( ( skip > 0 ) && LOG.isInfoEnabled() )
+            {
+                LOG.info( I18n.msg( I18n.MSG_04190_LDIF_LOADER_RESUMING, skip ) );
+            }
+        }
+
+        startTime = System.nanoTime();
+        ExecutorService readers = Executors.newFixedThreadPool( slots.length, runnable ->
+        {
+            Thread thread = new Thread( runnable, "ldif-loader-" + THREAD_NUMBER.incrementAndGet() );
+            thread.setDaemon( true );
+
+            return thread;
+        } );
+
+        try
+        {
+            for ( Slot slot : slots )
+            {
+                readers.execute( slot );
+            }
+
+            while ( true )
+            {
+                read();
+                retry();
+                send();
+
+                if ( stopped ? ( inFlight == 0 ) : ( exhausted && ( pending == 0 ) ) )
+                {
+                    break;
+                }
+
+                Record record;
+
+                if ( delayed.isEmpty() )
+                {
+                    record = completions.take();
+                }
+                else
+                {
+                    long wait = TimeUnit.NANOSECONDS.toMillis( delayed.peek().retryTime - System.nanoTime() );
+                    record = completions.poll( Math.max( 1L, wait ), TimeUnit.MILLISECONDS );
+                }
+
+                while ( record != null )
+                {
+                    complete( record );
+                    record = completions.poll();
+                }
+
+                if ( processed - processedAtCheckpoint >= loader.getCheckpointInterval() )
+                {
+                    checkpoint();
+                }
+            }
+
+            checkpoint();
+        }
+        catch ( InterruptedException ie )
+        {
+            checkpoint();
+            Thread.currentThread().interrupt();
+
+            throw new LdapException( I18n.err( I18n.ERR_04194_LDIF_LOADER_INTERRUPTED, processed ), ie );
+        }
+        finally
+        {
+            readers.shutdownNow();
+            report.setElapsed( System.nanoTime() - startTime );
+        }
+
+        return report;
+    }
+
+
+    /**
+     * Reads records, until enough records are pending.
+     */
+    private void read()
+    {
+        while ( !exhausted && !stopped && ( pending < maxPending ) )
+        {
+            if ( !records.hasNext() )
+            {
+                exhausted = true;
+
+                break;
+            }
+
+            LdifEntry entry = records.next();
+            long recordPosition = position++;
+
+            if ( recordPosition < skip )
+            {
+                report.skipped( 1L );
+
+                continue;
+            }
+
+            Record record;
+
+            try
+            {
+                record = new Record( recordPosition, entry );
+            }
+            catch ( LdapException le )
+            {
+                failed( recordPosition, entry, ResultCodeEnum.OTHER, le.getMessage() );
+
+                if ( stopped )
+                {
+                    unprocessed.add( recordPosition );
+                }
+
+                continue;
+            }
+
+            unprocessed.add( recordPosition );
+            pending++;
+            register( record );
+
+            if ( record.dependencies == 0 )
+            {
+                ready.add( record );
+            }
+        }
+    }
+
+
+    /**
+     * Makes the records whose retry time has come ready.
+     */
+    private void retry()
+    {
+        long now = System.nanoTime();
+
+        while ( !delayed.isEmpty() && ( delayed.peek().retryTime - now <= 0L ) )
+        {
+            ready.add( delayed.poll() );
+        }
+    }
+
+
+    /**
+     * Sends the ready records, as long as a connection has room for them.
+     */
+    private void send()
+    {
+        while ( !stopped && !ready.isEmpty() )
+        {
+            Slot slot = null;
+
+            for ( Slot candidate : slots )
+            {
+                if ( ( candidate.inFlight < loader.getWindowSize() )
+                    && ( ( slot == null ) || ( candidate.inFlight < slot.inFlight ) ) )
+                {
+                    slot = candidate;
+                }
+            }
+
+            if ( slot == null )
+            {
+                return;
+            }
+
+            Record record = ready.poll();
+            record.slot = slot;
+            slot.inFlight++;
+            inFlight++;
+            record.sendTime = System.nanoTime();
+
+            try
+            {
+                record.future = send( slot.connection, record.request );
+                slot.sent.add( record );
+            }
+            catch ( LdapException | RuntimeException e )
+            {
+                record.future = null;
+                record.error = e.getMessage();
+                completions.add( record );
+            }
+        }
+    }
+
+
+    private static ResponseFuture<? extends Response> send( LdapAsyncConnection connection,
+        ResultResponseRequest request ) throws LdapException
+    {
+        if ( request instanceof AddRequest )
+        {
+            return connection.addAsync( ( AddRequest ) request );
+        }
+        else if ( request instanceof ModifyRequest )
+        {
+            return connection.modifyAsync( ( ModifyRequest ) request );
+        }
+        else if ( request instanceof DeleteRequest )
+        {
+            return connection.deleteAsync( ( DeleteRequest ) request );
+        }
+        else
+        {
+            return connection.modifyDnAsync( ( ModifyDnRequest ) request );
+        }
+    }
+
+
+    /**
+     * Handles a record whose response has been received, or which could not be sent.
+     */
+    private void complete( Record record )
+    {
+        record.slot.inFlight--;
+        inFlight--;
+
+        if ( record.future != null )
+        {
+            report.latency( System.nanoTime() - record.sendTime );
+        }
+
+        ResultCodeEnum resultCode = ResultCodeEnum.OTHER;
+        String diagnosticMessage = record.error;
+
+        if ( record.response instanceof ResultResponse )
+        {
+            LdapResult result = ( ( ResultResponse ) record.response ).getLdapResult();
+            resultCode = result.getResultCode();
+            diagnosticMessage = result.getDiagnosticMessage();
+        }
+
+        record.slot = null;
+        record.future = null;
+        record.response = null;
+        record.error = null;
+
+        if ( resultCode == ResultCodeEnum.SUCCESS )
+        {
+            if ( record.request instanceof AddRequest )
+            {
+                report.added();
+            }
+            else if ( record.request instanceof ModifyRequest )
+            {
+                report.modified();
+            }
+            else if ( record.request instanceof DeleteRequest )
+            {
+                report.deleted();
+            }
+            else
+            {
+                report.renamed();
+            }
+
+            processed( record, true );
+        }
+        else if ( ( ( resultCode == ResultCodeEnum.BUSY ) || ( resultCode == ResultCodeEnum.UNAVAILABLE ) )
+            && ( record.retries < loader.getMaxRetries() ) )
+        {
+            long delay = Math.min( loader.getMaxRetryDelay(), loader.getRetryDelay() << Math.min( 30, record.retries ) );
+
+            // Spread the retries, not to hit the server again all at once
+            delay = delay / 2 + ThreadLocalRandom.current().nextLong( delay / 2 + 1 );
+            record.retries++;
+            record.retryTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( delay );
+            delayed.add( record );
+            report.retried();
+
+            if ( LOG.isInfoEnabled() )
+            {
+                LOG.info( I18n.msg( I18n.MSG_04189_LDIF_LOADER_RETRY, record.position, record.entry.getDn(),
+                    resultCode, record.retries, delay ) );
+            }
+        }
+        else
+        {
+            failed( record.position, record.entry, resultCode, diagnosticMessage );
+            processed( record, !stopped );
+        }
+    }
+
+
+    /**
+     * Reports a failed record, and stops the load if needed.
+     */
+    private void failed( long recordPosition, LdifEntry entry, ResultCodeEnum resultCode, String diagnosticMessage )
+    {
+        report.failed( recordPosition, entry, resultCode, diagnosticMessage );
+
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( I18n.msg( I18n.MSG_04194_LDIF_LOADER_FAILED, recordPosition, entry.getDn(), resultCode,
+                diagnosticMessage ) );
+        }
+
+        if ( !loader.isContinueOnError() )
+        {
+            stopped = true;
+        }
+    }
+
+
+    /**
+     * Removes a processed record, and makes the records waiting for it ready.
+     *
+     * @param record The processed record
+     * @param done Tells if the checkpoint can move past the record
+     */
+    private void processed( Record record, boolean done )
+    {
+        pending--;
+        processed++;
+
+        if ( done )
+        {
+            unprocessed.remove( record.position );
+        }
+
+        unregister( record );
+
+        if ( ( processed % loader.getProgressInterval() == 0 ) && LOG.isInfoEnabled() )
+        {
+            long elapsed = System.nanoTime() - startTime;
+
+            LOG.info( I18n.msg( I18n.MSG_04188_LDIF_LOADER_PROGRESS, processed,
+                elapsed == 0L ? 0L : processed * 1000000000L / elapsed ) );
+        }
+    }
+
+
+    /**
+     * Adds a record to the index, and computes the records it depends on.
+     */
+    private void register( Record record )
+    {
+        for ( String[] path : record.paths )
+        {
+            // The previous records on the entry itself, and on its ancestors
+            for ( String key : path )
+            {
+                Record last = lastRecords.get( key );
+
+                if ( last != null )
+                {
+                    dependsOn( record, last );
+                }
+            }
+
+            // The previous records below the entry
+            Set<Record> below = descendants.get( path[0] );
+
+            if ( below != null )
+            {
+                for ( Record descendant : below )
+                {
+                    dependsOn( record, descendant );
+                }
+            }
+        }
+
+        for ( String[] path : record.paths )
+        {
+            lastRecords.put( path[0], record );
+
+            for ( int i = 1; i < path.length; i++ )
+            {
+                descendants.computeIfAbsent( path[i], key -> new HashSet<>() ).add( record );
+            }
+        }
+    }
+
+
+    private static void dependsOn( Record record, Record previous )
+    {
+        if ( previous.dependants == null )
+        {
+            previous.dependants = new ArrayList<>();
+        }
+
+        previous.dependants.add( record );
+        record.dependencies++;
+    }
+
+
+    /**
+     * Removes a processed record from the index, and makes the records waiting for it ready.
+     */
+    private void unregister( Record record )
+    {
+        for ( String[] path : record.paths )
+        {
+            lastRecords.remove( path[0], record );
+
+            for ( int i = 1; i < path.length; i++ )
+            {
+                Set<Record> below = descendants.get( path[i] );
+
+                if ( below != null )
+                {
+                    below.remove( record );
+
+                    if ( below.isEmpty() )
+                    {
+                        descendants.remove( path[i] );
+                    }
+                }
+            }
+        }
+
+        if ( record.dependants != null )
+        {
+            for ( Record dependant : record.dependants )
+            {
+                dependant.dependencies--;
+
+                if ( dependant.dependencies == 0 )
+                {
+                    ready.add( dependant );
+                }
+            }
+
+            record.dependants = null;
+        }
+    }
+
+
+    /**
+     * Saves the checkpoint, if it has moved. A failure is logged, and the load goes on.
+     */
+    private void checkpoint()
+    {
+        long checkpoint = unprocessed.isEmpty() ? position : unprocessed.first();
+        report.setCheckpoint( checkpoint );
+        processedAtCheckpoint = processed;
+        LdifLoaderCheckpointStore checkpointStore = loader.getCheckpointStore();
+
+        if ( ( checkpointStore == null ) || ( checkpoint <= savedCheckpoint ) )
+        {
+            return;
+        }
+
+        try
+        {
+            checkpointStore.save( checkpoint );
+            savedCheckpoint = checkpoint;
+        }
+        catch ( IOException ioe )
+        {
+            LOG.warn( I18n.err( I18n.ERR_04195_LDIF_LOADER_CHECKPOINT_ERROR, checkpointStore, ioe.getMessage() ) );
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.ldif;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.ldap.client.api.LdapAsyncConnection;
+import org.apache.directory.ldap.client.api.LdapConnectionConfig;
+
+
+/**
+ * Loads LDIF records into a server, sending them concurrently on several connections.
+ * The LDIF content records are added, and the change records are applied : add, modify,
+ * delete, moddn and modrdn. Here is an example :
+ * <pre>
+ * try ( LdifReader reader = new LdifReader( Paths.get( "data.ldif" ).toFile() ) )
+ * {
+ *     LdifLoader loader = new LdifLoader( connection1, connection2, connection3 );
+ *     loader.setCheckpointStore( new FileLdifLoaderCheckpointStore( Paths.get( "data.checkpoint" ) ) );
+ *
+ *     LdifLoaderReport report = loader.load( reader );
+ * }
+ * </pre>
+ * The records are streamed : each connection has at most {@link #setWindowSize(int)}
+ * requests in flight, pipelined without waiting for the previous responses, and only a few
+ * times that many records are read ahead. The connections must be bound before the load.
+ * <p>
+ * The records are not applied in the LDIF order, but a record is never sent before the
+ * preceding records on the same entry, on one of its ancestors or on one of its
+ * descendants have been processed : a parent is added before its children, the children are
+ * deleted before their parent, and a renamed entry is handled after the previous records
+ * on both its old and its new name, and before the next ones.
+ * <p>
+ * The operations the server returns BUSY or UNAVAILABLE for are retried, waiting twice as
+ * long before each retry. The other failures are reported in the {@link LdifLoaderReport}
+ * and the load goes on, unless {@link #setContinueOnError(boolean)} is set to false. The
+ * progress is regularly saved in the {@link LdifLoaderCheckpointStore}, if any, so that an
+ * interrupted load can be resumed by calling {@link #load(Iterable)} again on the same LDIF.
+ * <p>
+ * A LdifLoader runs one load at a time.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdifLoader
+{
+    /** The default number of requests in flight per connection */
+    public static final int DEFAULT_WINDOW_SIZE = 32;
+
+    /** The default number of retries for a BUSY or UNAVAILABLE operation */
+    public static final int DEFAULT_MAX_RETRIES = 5;
+
+    /** The default delay before the first retry, in milliseconds */
+    public static final long DEFAULT_RETRY_DELAY = 100L;
+
+    /** The default longest delay between two retries, in milliseconds */
+    public static final long DEFAULT_MAX_RETRY_DELAY = 10000L;
+
+    /** The default number of processed records between two checkpoints */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+    /** The default number of processed records between two progress logs */
+    public static final int DEFAULT_PROGRESS_INTERVAL = 10000;
+
+    /** The connections */
+    private final List<LdapAsyncConnection> connections;
+
+    /** The number of requests in flight per connection */
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+
+    /** The number of retries for a BUSY or UNAVAILABLE operation */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /** The delay before the first retry */
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+
+    /** The longest delay between two retries */
+    private long maxRetryDelay = DEFAULT_MAX_RETRY_DELAY;
+
+    /** The time to wait for a response */
+    private long timeout = LdapConnectionConfig.DEFAULT_TIMEOUT;
+
+    /** Tells if the load goes on after a failure */
+    private boolean continueOnError = true;
+
+    /** The checkpoint store */
+    private LdifLoaderCheckpointStore checkpointStore;
+
+    /** The number of processed records between two checkpoints */
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    /** The number of processed records between two progress logs */
+    private int progressInterval = DEFAULT_PROGRESS_INTERVAL;
+
+
+    /**
+     * Creates a new LdifLoader
+     *
+     * @param connections The bound connections to load the records on
+     */
+    public LdifLoader( LdapAsyncConnection... connections )
+    {
+        this( Arrays.asList( connections ) );
+    }
+
+
+    /**
+     * Creates a new LdifLoader
+     *
+     * @param connections The bound connections to load the records on
+     */
+    public LdifLoader( List<? extends LdapAsyncConnection> connections )
+    {
+        if ( ( connections == null ) || connections.isEmpty() )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_04192_LDIF_LOADER_NO_CONNECTION ) );
+        }
+
+        this.connections = Collections.unmodifiableList( new ArrayList<>( connections ) );
+    }
+
+
+    /**
+     * Loads LDIF records. It returns once all the records have been processed, or once
+     * the load has stopped after a failure.
+     *
+     * @param records The records, a {@link org.apache.directory.api.ldap.model.ldif.LdifReader}
+     * for instance
+     * @return The load report
+     * @throws LdapException If the checkpoint can't be read, or if the load is interrupted
+     */
+    public LdifLoaderReport load( Iterable<LdifEntry> records ) throws LdapException
+    {
+        return new LdifLoadRun( this, records.iterator() ).run();
+    }
+
+
+    /**
+     * @return The connections the records are loaded on
+     */
+    public List<LdapAsyncConnection> getConnections()
+    {
+        return connections;
+    }
+
+
+    /**
+     * @return The number of requests in flight per connection
+     */
+    public int getWindowSize()
+    {
+        return windowSize;
+    }
+
+
+    /**
+     * @param windowSize The number of requests sent on a connection without waiting for
+     * their responses
+     */
+    public void setWindowSize( int windowSize )
+    {
+        this.windowSize = Math.max( 1, windowSize );
+    }
+
+
+    /**
+     * @return The number of retries for a BUSY or UNAVAILABLE operation
+     */
+    public int getMaxRetries()
+    {
+        return maxRetries;
+    }
+
+
+    /**
+     * @param maxRetries The number of retries for a BUSY or UNAVAILABLE operation
+     */
+    public void setMaxRetries( int maxRetries )
+    {
+        this.maxRetries = Math.max( 0, maxRetries );
+    }
+
+
+    /**
+     * @return The delay before the first retry, in milliseconds
+     */
+    public long getRetryDelay()
+    {
+        return retryDelay;
+    }
+
+
+    /**
+     * @param retryDelay The delay before the first retry, in milliseconds. It is doubled
+     * after each retry.
+     */
+    public void setRetryDelay( long retryDelay )
+    {
+        this.retryDelay = Math.max( 1L, retryDelay );
+    }
+
+
+    /**
+     * @return The longest delay between two retries, in milliseconds
+     */
+    public long getMaxRetryDelay()
+    {
+        return maxRetryDelay;
+    }
+
+
+    /**
+     * @param maxRetryDelay The longest delay between two retries, in milliseconds
+     */
+    public void setMaxRetryDelay( long maxRetryDelay )
+    {
+        this.maxRetryDelay = Math.max( 1L, maxRetryDelay );
+    }
+
+
+    /**
+     * @return The time to wait for a response, in milliseconds
+     */
+    public long getTimeout()
+    {
+        return timeout;
+    }
+
+
+    /**
+     * @param timeout The time to wait for a response, in milliseconds. An operation
+     * without response is abandoned, and reported as failed.
+     */
+    public void setTimeout( long timeout )
+    {
+        this.timeout = Math.max( 1L, timeout );
+    }
+
+
+    /**
+     * @return true if the load goes on after a failure
+     */
+    public boolean isContinueOnError()
+    {
+        return continueOnError;
+    }
+
+
+    /**
+     * @param continueOnError If false, the load stops after the first failure, once the
+     * requests in flight are done. The checkpoint is then before the failed record.
+     */
+    public void setContinueOnError( boolean continueOnError )
+    {
+        this.continueOnError = continueOnError;
+    }
+
+
+    /**
+     * @return The checkpoint store, or null if the progress is not saved
+     */
+    public LdifLoaderCheckpointStore getCheckpointStore()
+    {
+        return checkpointStore;
+    }
+
+
+    /**
+     * @param checkpointStore The store where the progress is saved, and which is read
+     * to resume a load
+     */
+    public void setCheckpointStore( LdifLoaderCheckpointStore checkpointStore )
+    {
+        this.checkpointStore = checkpointStore;
+    }
+
+
+    /**
+     * @return The number of processed records between two checkpoints
+     */
+    public int getCheckpointInterval()
+    {
+        return checkpointInterval;
+    }
+
+
+    /**
+     * @param checkpointInterval The number of processed records between two checkpoints
+     */
+    public void setCheckpointInterval( int checkpointInterval )
+    {
+        this.checkpointInterval = Math.max( 1, checkpointInterval );
+    }
+
+
+    /**
+     * @return The number of processed records between two progress logs
+     */
+    public int getProgressInterval()
+    {
+        return progressInterval;
+    }
+
+
+    /**
+     * @param progressInterval The number of processed records between two progress logs
+     */
+    public void setProgressInterval( int progressInterval )
+    {
+        this.progressInterval = Math.max( 1, progressInterval );
+    }
+}
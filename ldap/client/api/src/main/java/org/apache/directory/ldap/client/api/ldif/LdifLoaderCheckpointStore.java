@@ -0,0 +1,52 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.ldif;
+
+
+import java.io.IOException;
+
+
+/**
+ * Stores the progress of a {@link LdifLoader}. The checkpoint is the number of records,
+ * counted from the beginning of the LDIF, which have all been processed : the records are
+ * loaded concurrently, so some records after the checkpoint may have been processed too.
+ * A load resumed from a checkpoint skips the records before it.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface LdifLoaderCheckpointStore
+{
+    /**
+     * Loads the last saved checkpoint
+     *
+     * @return The number of records to skip, 0 if there is no checkpoint
+     * @throws IOException If the checkpoint can't be read
+     */
+    long load() throws IOException;
+
+
+    /**
+     * Saves a checkpoint, replacing the previous one
+     *
+     * @param position The number of records processed from the beginning of the LDIF
+     * @throws IOException If the checkpoint can't be written
+     */
+    void save( long position ) throws IOException;
+}
@@ -0,0 +1,376 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.ldif;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+
+
+/**
+ * The outcome of a {@link LdifLoader} load : the number of processed records per
+ * operation, the failures, the throughput and the operations latency. The latency is
+ * measured from the moment a request is sent to the moment its response is read, so it
+ * includes the time spent by the response in the pipeline.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdifLoaderReport
+{
+    /** The maximum number of failures kept in the report */
+    public static final int MAX_FAILURES = 1000;
+
+    /** The number of records skipped because they were before the checkpoint */
+    private long skipped;
+
+    /** The number of added entries */
+    private long added;
+
+    /** The number of modified entries */
+    private long modified;
+
+    /** The number of deleted entries */
+    private long deleted;
+
+    /** The number of renamed or moved entries */
+    private long renamed;
+
+    /** The number of failed records */
+    private long failed;
+
+    /** The number of retried operations */
+    private long retries;
+
+    /** The checkpoint reached */
+    private long checkpoint;
+
+    /** The load duration, in nanoseconds */
+    private long elapsed;
+
+    /** The operations latency */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /** The first failures */
+    private final List<Failure> failures = new ArrayList<>();
+
+
+    /**
+     * A record which can't be loaded
+     */
+    public static final class Failure
+    {
+        /** The record position in the LDIF */
+        private final long position;
+
+        /** The record */
+        private final LdifEntry entry;
+
+        /** The result code */
+        private final ResultCodeEnum resultCode;
+
+        /** The diagnostic message */
+        private final String diagnosticMessage;
+
+
+        Failure( long position, LdifEntry entry, ResultCodeEnum resultCode, String diagnosticMessage )
+        {
+            this.position = position;
+            this.entry = entry;
+            this.resultCode = resultCode;
+            this.diagnosticMessage = diagnosticMessage;
+        }
+
+
+        /**
+         * @return The record position in the LDIF, starting at 0
+         */
+        public long getPosition()
+        {
+            return position;
+        }
+
+
+        /**
+         * @return The record
+         */
+        public LdifEntry getEntry()
+        {
+            return entry;
+        }
+
+
+        /**
+         * @return The result code returned by the server, or OTHER if the request could
+         * not be sent or got no response
+         */
+        public ResultCodeEnum getResultCode()
+        {
+            return resultCode;
+        }
+
+
+        /**
+         * @return The diagnostic message
+         */
+        public String getDiagnosticMessage()
+        {
+            return diagnosticMessage;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return "#" + position + " " + entry.getDn() + " : " + resultCode + " " + diagnosticMessage;
+        }
+    }
+
+
+    /**
+     * @return The number of records skipped because they were before the checkpoint
+     */
+    public long getSkipped()
+    {
+        return skipped;
+    }
+
+
+    /**
+     * @return The number of added entries
+     */
+    public long getAdded()
+    {
+        return added;
+    }
+
+
+    /**
+     * @return The number of modified entries
+     */
+    public long getModified()
+    {
+        return modified;
+    }
+
+
+    /**
+     * @return The number of deleted entries
+     */
+    public long getDeleted()
+    {
+        return deleted;
+    }
+
+
+    /**
+     * @return The number of renamed or moved entries
+     */
+    public long getRenamed()
+    {
+        return renamed;
+    }
+
+
+    /**
+     * @return The number of records which can't be loaded
+     */
+    public long getFailed()
+    {
+        return failed;
+    }
+
+
+    /**
+     * @return The number of records processed, successfully or not
+     */
+    public long getProcessed()
+    {
+        return added + modified + deleted + renamed + failed;
+    }
+
+
+    /**
+     * @return The number of operations retried because the server was busy or unavailable
+     */
+    public long getRetries()
+    {
+        return retries;
+    }
+
+
+    /**
+     * @return The checkpoint reached : all the records before this position have been processed
+     */
+    public long getCheckpoint()
+    {
+        return checkpoint;
+    }
+
+
+    /**
+     * @return The first {@link #MAX_FAILURES} failures
+     */
+    public List<Failure> getFailures()
+    {
+        return Collections.unmodifiableList( failures );
+    }
+
+
+    /**
+     * @return The load duration, in milliseconds
+     */
+    public long getElapsedTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( elapsed );
+    }
+
+
+    /**
+     * @return The number of processed records per second
+     */
+    public double getThroughput()
+    {
+        return elapsed == 0L ? 0d : getProcessed() * 1e9d / elapsed;
+    }
+
+
+    /**
+     * @return The mean latency of the operations, in microseconds
+     */
+    public long getMeanLatency()
+    {
+        return latency.getMean();
+    }
+
+
+    /**
+     * @return The greatest latency of the operations, in microseconds
+     */
+    public long getMaxLatency()
+    {
+        return latency.getMax();
+    }
+
+
+    /**
+     * Gets a latency percentile, with a relative error below 1/16.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The latency below which this percentile of the operations are, in microseconds
+     */
+    public long getLatency( double percentile )
+    {
+        return latency.getPercentile( percentile );
+    }
+
+
+    void skipped( long nbSkipped )
+    {
+        skipped += nbSkipped;
+    }
+
+
+    void added()
+    {
+        added++;
+    }
+
+
+    void modified()
+    {
+        modified++;
+    }
+
+
+    void deleted()
+    {
+        deleted++;
+    }
+
+
+    void renamed()
+    {
+        renamed++;
+    }
+
+
+    void retried()
+    {
+        retries++;
+    }
+
+
+    void failed( long position, LdifEntry entry, ResultCodeEnum resultCode, String diagnosticMessage )
+    {
+        failed++;
+
+        if ( failures.size() < MAX_FAILURES )
+        {
+            failures.add( new Failure( position, entry, resultCode, diagnosticMessage ) );
+        }
+    }
+
+
+    void latency( long nanos )
+    {
+        latency.record( TimeUnit.NANOSECONDS.toMicros( nanos ) );
+    }
+
+
+    void setCheckpoint( long checkpoint )
+    {
+        this.checkpoint = checkpoint;
+    }
+
+
+    void setElapsed( long elapsed )
+    {
+        this.elapsed = elapsed;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "LdifLoaderReport : " ).append( getProcessed() ).append( " records in " )
+            .append( getElapsedTime() ).append( " ms (" ).append( ( long ) getThroughput() ).append( " records/s)\n" );
+        sb.append( "    added : " ).append( added ).append( ", modified : " ).append( modified )
+            .append( ", deleted : " ).append( deleted ).append( ", renamed : " ).append( renamed )
+            .append( ", failed : " ).append( failed ).append( ", skipped : " ).append( skipped )
+            .append( ", retries : " ).append( retries ).append( '\n' );
+        sb.append( "    latency (us) : mean " ).append( getMeanLatency() ).append( ", p50 " ).append( getLatency( 50 ) )
+            .append( ", p99 " ).append( getLatency( 99 ) ).append( ", max " ).append( getMaxLatency() );
+
+        return sb.toString();
+    }
+}
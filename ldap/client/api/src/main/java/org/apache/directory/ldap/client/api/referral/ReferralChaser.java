@@ -0,0 +1,447 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.referral;
+
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.model.cursor.SearchCursor;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.Control;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.url.LdapUrl;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.DefaultPoolableLdapConnectionFactory;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapConnectionConfig;
+import org.apache.directory.ldap.client.api.LdapConnectionPool;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+
+
+/**
+ * Follows the referrals and the continuation references (RFC 4511, 4.1.10 and 4.5.3)
+ * returned by a search. The references are chased concurrently, up to
+ * {@link #setParallelism(int)} searches at a time, using a pool of connections per
+ * target server, and their results are merged into the original search cursor.
+ * <br>
+ * A reference is not chased again if it has already been chased for the same search,
+ * which breaks the loops, and the references are followed up to
+ * {@link #setMaxHops(int)} hops. The references which can't be chased are returned
+ * as is by the cursor.
+ * <br>
+ * The connections to the referred servers are created from the chaser configuration, the
+ * host, port and SSL flag being taken from the reference URL. As any server can return a
+ * reference to any host, the referred servers are searched anonymously : the configuration
+ * credentials are only sent to the servers added with {@link #addBindServer(String, int)}.
+ * Override {@link #createConfig(LdapUrl, boolean)} to use other credentials on some servers.
+ * <br>
+ * When the original search has been done on a secured connection, using SSL or StartTLS,
+ * the referred searches are secured too : an <em>ldap://</em> reference is then followed
+ * using StartTLS.
+ * <br>
+ * A ReferralChaser is thread safe, and is meant to be shared : it can be set in an
+ * {@link LdapConnectionConfig} so that the searches requesting it with
+ * {@link SearchRequest#followReferrals()} chase the referrals. It must be closed to
+ * release the connections.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReferralChaser implements Closeable
+{
+    /** The default maximum number of hops */
+    public static final int DEFAULT_MAX_HOPS = 10;
+
+    /** The default number of references chased concurrently */
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    /** The connections configuration */
+    private final LdapConnectionConfig config;
+
+    /** The connection pools, per target server */
+    private final Map<String, LdapConnectionPool> pools = new ConcurrentHashMap<>();
+
+    /** The servers the configuration credentials are sent to, as host:port keys */
+    private final Set<String> bindServers = ConcurrentHashMap.newKeySet();
+
+    /** The maximum number of hops */
+    private int maxHops = DEFAULT_MAX_HOPS;
+
+    /** The number of references chased concurrently */
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    /** The chasing threads, created on the first chase */
+    private ExecutorService executor;
+
+
+    /**
+     * Creates a new ReferralChaser.
+     *
+     * @param config The configuration used to connect to the referred servers
+     */
+    public ReferralChaser( LdapConnectionConfig config )
+    {
+        this.config = config;
+    }
+
+
+    /**
+     * @return The maximum number of hops
+     */
+    public int getMaxHops()
+    {
+        return maxHops;
+    }
+
+
+    /**
+     * @param maxHops The maximum number of hops : a reference returned by a search
+     * done to follow a reference is one more hop away from the original search
+     */
+    public void setMaxHops( int maxHops )
+    {
+        this.maxHops = maxHops;
+    }
+
+
+    /**
+     * @return The number of references chased concurrently
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+
+    /**
+     * @param parallelism The number of references chased concurrently, shared by all the
+     * searches. It must be set before the first search.
+     */
+    public void setParallelism( int parallelism )
+    {
+        this.parallelism = Math.max( 1, parallelism );
+    }
+
+
+    /**
+     * Allows the chaser to bind on a referred server with the configuration credentials.
+     * The searches on the other servers are anonymous.
+     *
+     * @param host The server host
+     * @param port The server port
+     */
+    public void addBindServer( String host, int port )
+    {
+        bindServers.add( Strings.toLowerCaseAscii( host ) + ":" + port );
+    }
+
+
+    /**
+     * Searches, chasing the referrals.
+     *
+     * @param connection The connection to the original server
+     * @param searchRequest The search request
+     * @return A cursor returning the entries of the original search and of the
+     * referred searches
+     * @throws LdapException If the search fails
+     */
+    public SearchCursor search( LdapConnection connection, SearchRequest searchRequest ) throws LdapException
+    {
+        boolean secured = isSecured( config ) || ( ( connection instanceof LdapNetworkConnection )
+            && ( ( LdapNetworkConnection ) connection ).isSecured() );
+
+        return chase( connection.search( searchRequest ), searchRequest, secured );
+    }
+
+
+    /**
+     * Chases the referrals returned by a search. The referred searches are secured if the
+     * chaser configuration uses SSL or StartTLS.
+     *
+     * @param searchCursor The original search cursor
+     * @param searchRequest The original search request
+     * @return A cursor returning the entries of the original search and of the
+     * referred searches
+     */
+    public SearchCursor chase( SearchCursor searchCursor, SearchRequest searchRequest )
+    {
+        return chase( searchCursor, searchRequest, isSecured( config ) );
+    }
+
+
+    /**
+     * Chases the referrals returned by a search.
+     *
+     * @param searchCursor The original search cursor
+     * @param searchRequest The original search request
+     * @param secured Tells if the original search has been done on a secured connection, in
+     * which case the referred searches are secured too
+     * @return A cursor returning the entries of the original search and of the
+     * referred searches
+     */
+    public SearchCursor chase( SearchCursor searchCursor, SearchRequest searchRequest, boolean secured )
+    {
+        return new ReferralSearchCursor( this, searchCursor, searchRequest, secured );
+    }
+
+
+    /**
+     * Creates the configuration of the connections to a referred server. The connections
+     * are anonymous, unless the server has been added with {@link #addBindServer(String, int)}.
+     *
+     * @param ldapUrl The reference URL
+     * @param secured Tells if the connections must be secured, using SSL or StartTLS
+     * @return The connections configuration
+     */
+    protected LdapConnectionConfig createConfig( LdapUrl ldapUrl, boolean secured )
+    {
+        LdapConnectionConfig serverConfig = new LdapConnectionConfig();
+        boolean useSsl = LdapUrl.LDAPS_SCHEME.equals( ldapUrl.getScheme() );
+        int port = getPort( ldapUrl );
+
+        serverConfig.setLdapHost( ldapUrl.getHost() );
+        serverConfig.setLdapPort( port );
+        serverConfig.setUseSsl( useSsl );
+
+        // Never downgrade the transport security of the original search
+        serverConfig.setUseTls( secured && !useSsl );
+
+        if ( bindServers.contains( Strings.toLowerCaseAscii( ldapUrl.getHost() ) + ":" + port ) )
+        {
+            serverConfig.setName( config.getName() );
+            serverConfig.setCredentials( config.getCredentials() );
+        }
+
+        serverConfig.setTimeout( config.getTimeout() );
+
+        // The specific timeouts are not set by default, the global timeout is then used
+        if ( config.getConnectTimeout() != null )
+        {
+            serverConfig.setConnectTimeout( config.getConnectTimeout() );
+        }
+
+        if ( config.getReadOperationTimeout() != null )
+        {
+            serverConfig.setReadOperationTimeout( config.getReadOperationTimeout() );
+        }
+
+        if ( config.getWriteOperationTimeout() != null )
+        {
+            serverConfig.setWriteOperationTimeout( config.getWriteOperationTimeout() );
+        }
+
+        if ( config.getCloseTimeout() != null )
+        {
+            serverConfig.setCloseTimeout( config.getCloseTimeout() );
+        }
+
+        if ( config.getSendTimeout() != null )
+        {
+            serverConfig.setSendTimeout( config.getSendTimeout() );
+        }
+        serverConfig.setTrustManagers( config.getTrustManagers() );
+        serverConfig.setKeyManagers( config.getKeyManagers() );
+        serverConfig.setSecureRandom( config.getSecureRandom() );
+        serverConfig.setSslProtocol( config.getSslProtocol() );
+        serverConfig.setEnabledCipherSuites( config.getEnabledCipherSuites() );
+        serverConfig.setEnabledProtocols( config.getEnabledProtocols() );
+        serverConfig.setBinaryAttributeDetector( config.getBinaryAttributeDetector() );
+        serverConfig.setLdapApiService( config.getLdapApiService() );
+        serverConfig.setIoProcessorPool( config.getIoProcessorPool() );
+        serverConfig.setTlsContext( config.getTlsContext() );
+
+        return serverConfig;
+    }
+
+
+    /**
+     * Creates the pool of connections to a referred server.
+     *
+     * @param ldapUrl The reference URL
+     * @param secured Tells if the connections must be secured, using SSL or StartTLS
+     * @return The connection pool
+     */
+    protected LdapConnectionPool createPool( LdapUrl ldapUrl, boolean secured )
+    {
+        return new LdapConnectionPool( new DefaultPoolableLdapConnectionFactory( createConfig( ldapUrl, secured ) ) );
+    }
+
+
+    /**
+     * Gets the pool of connections to the server a reference points to.
+     *
+     * @param ldapUrl The reference URL
+     * @param secured Tells if the connections must be secured
+     * @return The connection pool
+     */
+    LdapConnectionPool getPool( LdapUrl ldapUrl, boolean secured )
+    {
+        return pools.computeIfAbsent( getServerKey( ldapUrl, secured ), key -> createPool( ldapUrl, secured ) );
+    }
+
+
+    /**
+     * Creates the request sent to follow a reference.
+     *
+     * @param searchRequest The original request
+     * @param ldapUrl The reference URL
+     * @param continuation Tells if the reference is a continuation reference, or a
+     * referral returned instead of the search result
+     * @param explicitScope Tells if the URL contains a scope
+     * @return The referred request
+     * @throws LdapException If the URL filter is invalid
+     */
+    SearchRequest createRequest( SearchRequest searchRequest, LdapUrl ldapUrl, boolean continuation,
+        boolean explicitScope ) throws LdapException
+    {
+        SearchRequest referredRequest = new SearchRequestImpl();
+
+        if ( ( ldapUrl.getDn() == null ) || ldapUrl.getDn().isEmpty() )
+        {
+            referredRequest.setBase( searchRequest.getBase() );
+        }
+        else
+        {
+            referredRequest.setBase( ldapUrl.getDn() );
+        }
+
+        if ( explicitScope )
+        {
+            referredRequest.setScope( ldapUrl.getScope() );
+        }
+        else if ( continuation && ( searchRequest.getScope() == SearchScope.ONELEVEL ) )
+        {
+            // The referred entry is the one level entry itself
+            referredRequest.setScope( SearchScope.OBJECT );
+        }
+        else
+        {
+            referredRequest.setScope( searchRequest.getScope() );
+        }
+
+        if ( ldapUrl.getFilter() == null )
+        {
+            referredRequest.setFilter( searchRequest.getFilter() );
+        }
+        else
+        {
+            referredRequest.setFilter( ldapUrl.getFilter() );
+        }
+
+        referredRequest.addAttributes( searchRequest.getAttributes().toArray( Strings.EMPTY_STRING_ARRAY ) );
+        referredRequest.setDerefAliases( searchRequest.getDerefAliases() );
+        referredRequest.setSizeLimit( searchRequest.getSizeLimit() );
+        referredRequest.setTimeLimit( searchRequest.getTimeLimit() );
+        referredRequest.setTypesOnly( searchRequest.getTypesOnly() );
+        referredRequest.addAllControls( searchRequest.getControls().values().toArray( new Control[0] ) );
+
+        return referredRequest;
+    }
+
+
+    /**
+     * Gets the executor running the chasing tasks.
+     *
+     * @return The executor
+     */
+    synchronized ExecutorService getExecutor()
+    {
+        if ( executor == null )
+        {
+            AtomicInteger threadNumber = new AtomicInteger();
+
+            executor = Executors.newFixedThreadPool( parallelism, runnable ->
+            {
+                Thread thread = new Thread( runnable, "ldap-referral-chaser-" + threadNumber.incrementAndGet() );
+                thread.setDaemon( true );
+
+                return thread;
+            } );
+        }
+
+        return executor;
+    }
+
+
+    /**
+     * Closes the connection pools and stops the chasing threads.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if ( executor != null )
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+
+        for ( LdapConnectionPool pool : pools.values() )
+        {
+            pool.close();
+        }
+
+        pools.clear();
+    }
+
+
+    /**
+     * @return true if the configuration uses SSL or StartTLS
+     */
+    private static boolean isSecured( LdapConnectionConfig config )
+    {
+        return config.isUseSsl() || config.isUseTls();
+    }
+
+
+    /**
+     * @return The port a reference points to, the scheme default port if the URL has none
+     */
+    private static int getPort( LdapUrl ldapUrl )
+    {
+        if ( ldapUrl.getPort() > 0 )
+        {
+            return ldapUrl.getPort();
+        }
+
+        if ( LdapUrl.LDAPS_SCHEME.equals( ldapUrl.getScheme() ) )
+        {
+            return LdapConnectionConfig.DEFAULT_LDAPS_PORT;
+        }
+
+        return LdapConnectionConfig.DEFAULT_LDAP_PORT;
+    }
+
+
+    /**
+     * @return The key identifying the server a reference points to, and the connections security
+     */
+    private static String getServerKey( LdapUrl ldapUrl, boolean secured )
+    {
+        return ldapUrl.getScheme() + Strings.toLowerCaseAscii( ldapUrl.getHost() ) + ":" + getPort( ldapUrl )
+            + ( secured ? "/secured" : "" );
+    }
+}
@@ -0,0 +1,747 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.referral;
+
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.cursor.SearchCursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapReferralException;
+import org.apache.directory.api.ldap.model.exception.LdapURLEncodingException;
+import org.apache.directory.api.ldap.model.message.IntermediateResponse;
+import org.apache.directory.api.ldap.model.message.Referral;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultReference;
+import org.apache.directory.api.ldap.model.message.SearchResultReferenceImpl;
+import org.apache.directory.api.ldap.model.url.LdapUrl;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapConnectionPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A SearchCursor merging the responses of a search with the responses of the searches
+ * done to follow its references. The original search is read by the cursor thread, the
+ * references are chased by the {@link ReferralChaser} threads, which push the responses
+ * they get in a bounded queue. The entries are returned as soon as they are received,
+ * so the entries of the different servers are interleaved.
+ * <br>
+ * Note: This is a forward only cursor hence the only valid operations are next(), get()
+ * and close()
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class ReferralSearchCursor extends AbstractCursor<Response> implements SearchCursor
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** The maximum number of responses waiting to be read */
+    private static final int QUEUE_SIZE = 1024;
+
+    /** The delay between two checks of the cursor state by a blocked chasing thread, in ms */
+    private static final long OFFER_DELAY = 100L;
+
+    /** The marker pushed when a chase is done, to wake up the cursor */
+    private static final Response CHASE_DONE = new SearchResultReferenceImpl();
+
+    /** The referral chaser */
+    private final ReferralChaser chaser;
+
+    /** The original search */
+    private final SearchCursor searchCursor;
+
+    /** The original request */
+    private final SearchRequest searchRequest;
+
+    /** Tells if the referred searches must be done on secured connections */
+    private final boolean secured;
+
+    /** The responses of the referred searches */
+    private final BlockingQueue<Response> responses = new LinkedBlockingQueue<>( QUEUE_SIZE );
+
+    /** The number of chases in progress */
+    private final AtomicInteger pendingChases = new AtomicInteger();
+
+    /** The references already chased, to detect the loops */
+    private final Set<String> chasedUrls = ConcurrentHashMap.newKeySet();
+
+    /** Tells if the original search is done */
+    private boolean searchDone;
+
+    /** The result of the original search, once it is done */
+    private volatile SearchResultDone searchResultDone;
+
+    /** Tells if the cursor has been closed */
+    private volatile boolean closed;
+
+    /** The current response */
+    private Response response;
+
+
+    /**
+     * Creates a new ReferralSearchCursor.
+     *
+     * @param chaser The referral chaser
+     * @param searchCursor The original search
+     * @param searchRequest The original request
+     * @param secured Tells if the referred searches must be done on secured connections
+     */
+    ReferralSearchCursor( ReferralChaser chaser, SearchCursor searchCursor, SearchRequest searchRequest,
+        boolean secured )
+    {
+        this.chaser = chaser;
+        this.searchCursor = searchCursor;
+        this.searchRequest = searchRequest;
+        this.secured = secured;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        response = null;
+
+        try
+        {
+            while ( true )
+            {
+                Response chased = responses.poll();
+
+                if ( chased == null )
+                {
+                    if ( !searchDone )
+                    {
+                        if ( !searchCursor.next() )
+                        {
+                            searchDone = true;
+                            searchResultDone = searchCursor.getSearchResultDone();
+                            response = chaseSearchResultDone();
+
+                            if ( response != null )
+                            {
+                                return true;
+                            }
+
+                            continue;
+                        }
+
+                        Response original = searchCursor.get();
+
+                        if ( ( original instanceof SearchResultReference )
+                            && chase( ( ( SearchResultReference ) original ).getReferral(), true, 1 ) )
+                        {
+                            continue;
+                        }
+
+                        response = original;
+
+                        return true;
+                    }
+
+                    if ( pendingChases.get() == 0 )
+                    {
+                        // A chase may have pushed its last response and be done since
+                        // the last poll
+                        chased = responses.poll();
+
+                        if ( chased == null )
+                        {
+                            return false;
+                        }
+                    }
+                    else
+                    {
+                        chased = responses.take();
+                    }
+                }
+
+                if ( chased != CHASE_DONE )
+                {
+                    response = chased;
+
+                    return true;
+                }
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new CursorException( ie );
+        }
+    }
+
+
+    /**
+     * When the base of the original search is on another server, the server returns a
+     * referral instead of the search result : chase it.
+     *
+     * @return The referral, as a reference, if it can't be chased
+     */
+    private Response chaseSearchResultDone()
+    {
+        if ( ( searchResultDone != null )
+            && ( searchResultDone.getLdapResult().getResultCode() == ResultCodeEnum.REFERRAL )
+            && ( searchResultDone.getLdapResult().getReferral() != null ) )
+        {
+            SearchResultReference reference = toReference( searchResultDone );
+
+            if ( !chase( reference.getReferral(), false, 1 ) )
+            {
+                return reference;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Schedules the chase of a reference.
+     *
+     * @param referral The reference URLs, alternative to each other
+     * @param continuation Tells if the reference is a continuation reference
+     * @param hop The number of hops from the original search
+     * @return false if the reference can't be chased
+     */
+    private boolean chase( Referral referral, boolean continuation, int hop )
+    {
+        if ( closed )
+        {
+            return false;
+        }
+
+        if ( hop > chaser.getMaxHops() )
+        {
+            if ( LOG_CURSOR.isInfoEnabled() )
+            {
+                LOG_CURSOR.info( I18n.msg( I18n.MSG_04187_REFERRAL_HOP_LIMIT, chaser.getMaxHops(),
+                    referral.getLdapUrls() ) );
+            }
+
+            return false;
+        }
+
+        pendingChases.incrementAndGet();
+
+        try
+        {
+            chaser.getExecutor().execute( () ->
+            {
+                try
+                {
+                    if ( !doChase( referral.getLdapUrls(), continuation, hop ) )
+                    {
+                        push( toReference( referral ) );
+                    }
+                }
+                finally
+                {
+                    pendingChases.decrementAndGet();
+                    push( CHASE_DONE );
+                }
+            } );
+
+            return true;
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            // The chaser has been closed
+            pendingChases.decrementAndGet();
+
+            return false;
+        }
+    }
+
+
+    /**
+     * Follows a reference, trying its URLs in turn until one succeeds.
+     *
+     * @return false if none of the URLs could be followed
+     */
+    private boolean doChase( Collection<String> urls, boolean continuation, int hop )
+    {
+        boolean loop = false;
+
+        for ( String url : urls )
+        {
+            if ( closed )
+            {
+                return true;
+            }
+
+            LdapUrl ldapUrl;
+
+            try
+            {
+                ldapUrl = new LdapUrl( url );
+            }
+            catch ( LdapURLEncodingException luee )
+            {
+                LOG_CURSOR.warn( I18n.err( I18n.ERR_04191_REFERRAL_CHASING_FAILED, url, luee.getMessage() ) );
+
+                continue;
+            }
+
+            if ( Strings.isEmpty( ldapUrl.getHost() ) )
+            {
+                // We don't know which server is meant
+                continue;
+            }
+
+            try
+            {
+                boolean explicitScope = hasExplicitScope( url );
+                SearchRequest referredRequest = chaser.createRequest( searchRequest, ldapUrl, continuation,
+                    explicitScope );
+
+                if ( !chasedUrls.add( getChaseKey( ldapUrl, referredRequest ) ) )
+                {
+                    if ( LOG_CURSOR.isDebugEnabled() )
+                    {
+                        LOG_CURSOR.debug( I18n.msg( I18n.MSG_04186_REFERRAL_LOOP, url ) );
+                    }
+
+                    loop = true;
+
+                    continue;
+                }
+
+                if ( LOG_CURSOR.isDebugEnabled() )
+                {
+                    LOG_CURSOR.debug( I18n.msg( I18n.MSG_04185_CHASING_REFERRAL, url, hop ) );
+                }
+
+                search( ldapUrl, referredRequest, hop );
+
+                return true;
+            }
+            catch ( LdapException | CursorException | IOException e )
+            {
+                LOG_CURSOR.warn( I18n.err( I18n.ERR_04191_REFERRAL_CHASING_FAILED, url, e.getMessage() ) );
+            }
+        }
+
+        // A loop is not an error, the referred entries have already been returned
+        return loop;
+    }
+
+
+    /**
+     * Runs a referred search, pushing its entries and chasing its references.
+     */
+    private void search( LdapUrl ldapUrl, SearchRequest referredRequest, int hop )
+        throws LdapException, CursorException, IOException
+    {
+        LdapConnectionPool pool = chaser.getPool( ldapUrl, secured );
+        LdapConnection connection = pool.getConnection();
+
+        try ( SearchCursor referredCursor = connection.search( referredRequest ) )
+        {
+            while ( !closed && referredCursor.next() )
+            {
+                Response referredResponse = referredCursor.get();
+
+                if ( referredResponse instanceof SearchResultReference )
+                {
+                    if ( !chase( ( ( SearchResultReference ) referredResponse ).getReferral(), true, hop + 1 ) )
+                    {
+                        push( referredResponse );
+                    }
+                }
+                else if ( referredResponse instanceof SearchResultEntry )
+                {
+                    push( referredResponse );
+                }
+            }
+
+            SearchResultDone referredDone = referredCursor.getSearchResultDone();
+
+            if ( ( referredDone != null )
+                && ( referredDone.getLdapResult().getResultCode() == ResultCodeEnum.REFERRAL )
+                && ( referredDone.getLdapResult().getReferral() != null ) )
+            {
+                if ( !chase( referredDone.getLdapResult().getReferral(), false, hop + 1 ) )
+                {
+                    push( toReference( referredDone ) );
+                }
+            }
+        }
+        finally
+        {
+            pool.releaseConnection( connection );
+        }
+    }
+
+
+    /**
+     * Pushes a response, waiting for the cursor to read the previous ones if the queue
+     * is full.
+     */
+    private void push( Response chasedResponse )
+    {
+        try
+        {
+            // Wait while the cursor is not read fast enough
+            boolean pushed = false;
+
+            while ( !closed && !pushed )
+            {
+                pushed = responses.offer( chasedResponse, OFFER_DELAY, TimeUnit.MILLISECONDS );
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * @return A search result referral as a reference
+     */
+    private static SearchResultReference toReference( SearchResultDone done )
+    {
+        SearchResultReference reference = new SearchResultReferenceImpl( done.getMessageId() );
+        reference.setReferral( done.getLdapResult().getReferral() );
+
+        return reference;
+    }
+
+
+    /**
+     * @return The URLs of a reference which can't be chased, as a reference
+     */
+    private static SearchResultReference toReference( Referral referral )
+    {
+        SearchResultReference reference = new SearchResultReferenceImpl();
+        reference.setReferral( referral );
+
+        return reference;
+    }
+
+
+    /**
+     * Tells if a reference URL contains a scope, as the LdapUrl defaults it to base.
+     */
+    private static boolean hasExplicitScope( String url )
+    {
+        int start = url.indexOf( "://" );
+        int slash = url.indexOf( '/', start < 0 ? 0 : start + 3 );
+
+        if ( slash < 0 )
+        {
+            return false;
+        }
+
+        // dn ? attributes ? scope ? ...
+        String[] parts = url.substring( slash + 1 ).split( "\\?", -1 );
+
+        return ( parts.length > 2 ) && !parts[2].isEmpty();
+    }
+
+
+    /**
+     * @return The key identifying a referred search
+     */
+    private static String getChaseKey( LdapUrl ldapUrl, SearchRequest referredRequest )
+    {
+        return ldapUrl.getScheme() + Strings.toLowerCaseAscii( ldapUrl.getHost() ) + ":" + ldapUrl.getPort() + "/"
+            + referredRequest.getBase().getNormName() + "?" + referredRequest.getScope() + "?"
+            + referredRequest.getFilter();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Response get() throws InvalidCursorPositionException
+    {
+        if ( response == null )
+        {
+            throw new InvalidCursorPositionException();
+        }
+
+        return response;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean available()
+    {
+        return response != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDone()
+    {
+        return searchDone && ( pendingChases.get() == 0 ) && responses.isEmpty();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SearchResultDone getSearchResultDone()
+    {
+        return searchResultDone;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isReferral()
+    {
+        return response instanceof SearchResultReference;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Referral getReferral() throws LdapException
+    {
+        if ( isReferral() )
+        {
+            return ( ( SearchResultReference ) response ).getReferral();
+        }
+
+        throw new LdapException();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEntry()
+    {
+        return response instanceof SearchResultEntry;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry getEntry() throws LdapException
+    {
+        if ( isEntry() )
+        {
+            return ( ( SearchResultEntry ) response ).getEntry();
+        }
+
+        if ( isReferral() )
+        {
+            throw new LdapReferralException( ( ( SearchResultReference ) response ).getReferral().getLdapUrls() );
+        }
+
+        throw new LdapException();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIntermediate()
+    {
+        return response instanceof IntermediateResponse;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IntermediateResponse getIntermediate() throws LdapException
+    {
+        if ( isIntermediate() )
+        {
+            return ( IntermediateResponse ) response;
+        }
+
+        throw new LdapException();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        responses.clear();
+
+        try
+        {
+            searchCursor.close();
+        }
+        finally
+        {
+            super.close();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        closed = true;
+        responses.clear();
+
+        try
+        {
+            searchCursor.close( cause );
+        }
+        finally
+        {
+            super.close( cause );
+        }
+    }
+
+
+    // rest of all operations will throw UnsupportedOperationException
+
+    /**
+     * This operation is not supported in ReferralSearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void after( Response element ) throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "after( Response element )" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in ReferralSearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "afterLast()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in ReferralSearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void before( Response element ) throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "before( Response element )" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in ReferralSearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "beforeFirst()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in ReferralSearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "first()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in ReferralSearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "last()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in ReferralSearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "previous()" ) ) );
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.sort;
+
+
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.MatchingRule;
+import org.apache.directory.api.ldap.model.schema.Normalizer;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * The resolved sort keys of a {@link SortedEntryCursor}. When a SchemaManager is
+ * available, each key uses the matching rule given in the {@link SortKey}, or the
+ * attribute type ORDERING rule, or its EQUALITY rule when it has no ORDERING rule : the
+ * rule Normalizer computes the key, its LdapComparator compares the keys. Without a SchemaManager, the values are compared ignoring the case.
+ * <br>
+ * The keys have the type of the matching rule syntax : a String for a human readable
+ * syntax, a byte[] otherwise, whatever the type of the entries values. A comparator which
+ * still can't compare two keys falls back to comparing their UTF-8 bytes.
+ * <br>
+ * As stated by RFC 2891, the least value of a multi-valued attribute is used, and an
+ * entry which does not have the attribute sorts after all the others.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class EntrySortKeys implements Comparator<SortRecord>
+{
+    /** The comparator used when there is no schema */
+    private static final Comparator<Object> DEFAULT_COMPARATOR = new Comparator<Object>()
+    {
+        @Override
+        public int compare( Object key1, Object key2 )
+        {
+            if ( ( key1 instanceof String ) && ( key2 instanceof String ) )
+            {
+                return String.CASE_INSENSITIVE_ORDER.compare( ( String ) key1, ( String ) key2 );
+            }
+
+            return Strings.compare( toBytes( key1 ), toBytes( key2 ) );
+        }
+    };
+
+    /**
+     * A matching rule comparator, comparing the keys as bytes when it can't handle them.
+     */
+    private static final class KeyComparator implements Comparator<Object>
+    {
+        /** The matching rule comparator */
+        private final Comparator<Object> comparator;
+
+
+        private KeyComparator( Comparator<Object> comparator )
+        {
+            this.comparator = comparator;
+        }
+
+
+        @Override
+        public int compare( Object key1, Object key2 )
+        {
+            try
+            {
+                return comparator.compare( key1, key2 );
+            }
+            catch ( ClassCastException cce )
+            {
+                return Strings.compare( toBytes( key1 ), toBytes( key2 ) );
+            }
+        }
+    }
+
+    /** The sorted attributes */
+    private final String[] attributeIds;
+
+    /** The normalizers, null when the values are not normalized */
+    private final Normalizer[] normalizers;
+
+    /** Tells if a key is a byte[] rather than a String */
+    private final boolean[] binaryKeys;
+
+    /** The key comparators */
+    private final Comparator<Object>[] comparators;
+
+    /** Tells if a key is sorted in reverse order */
+    private final boolean[] reverseOrders;
+
+
+    /**
+     * Resolves the sort keys.
+     *
+     * @param schemaManager The SchemaManager, or null
+     * @param sortKeys The sort keys
+     * @throws LdapException If an attribute type or a matching rule is unknown, or if
+     * an attribute type has neither an ordering nor an equality rule
+     */
+    @SuppressWarnings("unchecked")
+    EntrySortKeys( SchemaManager schemaManager, List<SortKey> sortKeys ) throws LdapException
+    {
+        int size = sortKeys.size();
+        attributeIds = new String[size];
+        normalizers = new Normalizer[size];
+        binaryKeys = new boolean[size];
+        comparators = new Comparator[size];
+        reverseOrders = new boolean[size];
+
+        for ( int i = 0; i < size; i++ )
+        {
+            SortKey sortKey = sortKeys.get( i );
+            attributeIds[i] = sortKey.getAttributeTypeDesc();
+            reverseOrders[i] = sortKey.isReverseOrder();
+            comparators[i] = DEFAULT_COMPARATOR;
+
+            if ( schemaManager != null )
+            {
+                AttributeType attributeType = schemaManager.lookupAttributeTypeRegistry( attributeIds[i] );
+                MatchingRule matchingRule;
+
+                if ( sortKey.getMatchingRuleId() != null )
+                {
+                    matchingRule = schemaManager.lookupMatchingRuleRegistry( sortKey.getMatchingRuleId() );
+                }
+                else
+                {
+                    matchingRule = attributeType.getOrdering();
+
+                    if ( matchingRule == null )
+                    {
+                        // Many attributes, like cn, have no ORDERING rule : their EQUALITY
+                        // rule comparator still gives a consistent order
+                        matchingRule = attributeType.getEquality();
+                    }
+                }
+
+                if ( matchingRule == null )
+                {
+                    throw new LdapException( I18n.err( I18n.ERR_04188_NO_SORT_MATCHING_RULE, attributeIds[i] ) );
+                }
+
+                binaryKeys[i] = ( matchingRule.getSyntax() != null ) && !matchingRule.getSyntax().isHumanReadable();
+
+                if ( !binaryKeys[i] )
+                {
+                    normalizers[i] = matchingRule.getNormalizer();
+                }
+
+                if ( matchingRule.getLdapComparator() != null )
+                {
+                    comparators[i] = new KeyComparator( matchingRule.getLdapComparator() );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Computes the sort keys of an entry.
+     *
+     * @param entry The entry
+     * @return The keys, a null key standing for a missing attribute
+     * @throws LdapException If a value can't be normalized
+     */
+    Object[] getKeys( Entry entry ) throws LdapException
+    {
+        Object[] keys = new Object[attributeIds.length];
+
+        for ( int i = 0; i < attributeIds.length; i++ )
+        {
+            Attribute attribute = entry.get( attributeIds[i] );
+
+            if ( attribute == null )
+            {
+                continue;
+            }
+
+            for ( Value value : attribute )
+            {
+                Object key = normalize( i, value );
+
+                if ( ( keys[i] == null ) || ( comparators[i].compare( key, keys[i] ) < 0 ) )
+                {
+                    keys[i] = key;
+                }
+            }
+        }
+
+        return keys;
+    }
+
+
+    /**
+     * Computes the key of an assertion value on the first sort key, as sent in a VLV
+     * request.
+     *
+     * @param assertionValue The assertion value
+     * @return The normalized key
+     * @throws LdapException If the value can't be normalized
+     */
+    Object getAssertionKey( byte[] assertionValue ) throws LdapException
+    {
+        if ( binaryKeys[0] )
+        {
+            return assertionValue;
+        }
+
+        if ( normalizers[0] == null )
+        {
+            return Strings.utf8ToString( assertionValue );
+        }
+
+        return normalizers[0].normalize( Strings.utf8ToString( assertionValue ) );
+    }
+
+
+    /**
+     * Compares the first key of a record with an assertion key.
+     *
+     * @param record The record
+     * @param assertionKey The assertion key
+     * @return A negative value if the record sorts before the assertion key
+     */
+    int compareFirstKey( SortRecord record, Object assertionKey )
+    {
+        Object key = record.keys[0];
+        int result;
+
+        if ( key == null )
+        {
+            result = 1;
+        }
+        else
+        {
+            result = comparators[0].compare( key, assertionKey );
+        }
+
+        return reverseOrders[0] ? -result : result;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compare( SortRecord record1, SortRecord record2 )
+    {
+        for ( int i = 0; i < attributeIds.length; i++ )
+        {
+            Object key1 = record1.keys[i];
+            Object key2 = record2.keys[i];
+            int result;
+
+            if ( key1 == null )
+            {
+                result = key2 == null ? 0 : 1;
+            }
+            else if ( key2 == null )
+            {
+                result = -1;
+            }
+            else
+            {
+                result = comparators[i].compare( key1, key2 );
+            }
+
+            if ( result != 0 )
+            {
+                return reverseOrders[i] ? -result : result;
+            }
+        }
+
+        return 0;
+    }
+
+
+    /**
+     * @return The number of sort keys
+     */
+    int size()
+    {
+        return attributeIds.length;
+    }
+
+
+    private Object normalize( int index, Value value ) throws LdapException
+    {
+        if ( binaryKeys[index] )
+        {
+            return value.getBytes();
+        }
+
+        if ( normalizers[index] == null )
+        {
+            return value.isHumanReadable() ? value.getString() : value.getBytes();
+        }
+
+        // The comparator expects a String key, even for a value received as a byte[]
+        String string = value.isHumanReadable() ? value.getString() : Strings.utf8ToString( value.getBytes() );
+
+        return normalizers[index].normalize( string );
+    }
+
+
+    private static byte[] toBytes( Object key )
+    {
+        if ( key instanceof String )
+        {
+            return Strings.getBytesUtf8( ( String ) key );
+        }
+
+        return ( byte[] ) key;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.sort;
+
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+
+
+/**
+ * An entry to sort, with its sort keys. The keys are computed once, when the entry
+ * is read from the search, and are stored with the entry in the run files so that
+ * the merge never has to normalize a value again.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class SortRecord
+{
+    /** The normalized sort keys, a null key standing for a missing attribute */
+    final Object[] keys;
+
+    /** The entry */
+    final Entry entry;
+
+
+    /**
+     * Creates a new SortRecord
+     *
+     * @param keys The normalized sort keys
+     * @param entry The entry
+     */
+    SortRecord( Object[] keys, Entry entry )
+    {
+        this.keys = keys;
+        this.entry = entry;
+    }
+}
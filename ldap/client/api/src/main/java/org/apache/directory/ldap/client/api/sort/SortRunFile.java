@@ -0,0 +1,348 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.sort;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A sorted run spilled on disk by a {@link SortedEntryCursor}. Each record is stored as :
+ * <pre>
+ * keys       : for each key, a tag (0 : missing, 1 : String, 2 : byte[]) followed by the key
+ * schema     : a flag telling if the entry is schema aware
+ * dn         : the user provided DN
+ * attributes : the number of attributes, then for each attribute its user provided ID,
+ *              a human readable flag, the number of values and the values
+ * </pre>
+ * Strings and byte[] are written as their length followed by their bytes, so the records
+ * are read back without any parsing but the DN one.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class SortRunFile
+{
+    /** The tag of a missing key */
+    private static final byte NO_KEY = 0;
+
+    /** The tag of a String key */
+    private static final byte STRING_KEY = 1;
+
+    /** The tag of a byte[] key */
+    private static final byte BINARY_KEY = 2;
+
+    /** The buffers size */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The run file */
+    private final Path path;
+
+
+    /**
+     * Creates a new SortRunFile
+     *
+     * @param path The run file
+     */
+    SortRunFile( Path path )
+    {
+        this.path = path;
+    }
+
+
+    /**
+     * Opens the run file for writing.
+     *
+     * @return The writer
+     * @throws IOException If the file can't be created
+     */
+    Writer openWriter() throws IOException
+    {
+        return new Writer( new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( path ),
+            BUFFER_SIZE ) ) );
+    }
+
+
+    /**
+     * Opens the run file for reading.
+     *
+     * @param schemaManager The SchemaManager used to rebuild the schema aware entries
+     * @param nbKeys The number of keys of each record
+     * @return The reader
+     * @throws IOException If the file can't be opened
+     */
+    Reader openReader( SchemaManager schemaManager, int nbKeys ) throws IOException
+    {
+        return new Reader( new DataInputStream( new BufferedInputStream( Files.newInputStream( path ), BUFFER_SIZE ) ),
+            schemaManager, nbKeys );
+    }
+
+
+    /**
+     * Deletes the run file, if it still exists.
+     *
+     * @throws IOException If the file can't be deleted
+     */
+    void delete() throws IOException
+    {
+        Files.deleteIfExists( path );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return path.toString();
+    }
+
+
+    /**
+     * Writes the records of a run.
+     */
+    static final class Writer implements Closeable
+    {
+        /** The output */
+        private final DataOutputStream out;
+
+
+        private Writer( DataOutputStream out )
+        {
+            this.out = out;
+        }
+
+
+        /**
+         * Writes a record.
+         *
+         * @param record The record
+         * @throws IOException If the record can't be written
+         */
+        void write( SortRecord record ) throws IOException
+        {
+            for ( Object key : record.keys )
+            {
+                if ( key == null )
+                {
+                    out.writeByte( NO_KEY );
+                }
+                else if ( key instanceof String )
+                {
+                    out.writeByte( STRING_KEY );
+                    writeBytes( Strings.getBytesUtf8( ( String ) key ) );
+                }
+                else
+                {
+                    out.writeByte( BINARY_KEY );
+                    writeBytes( ( byte[] ) key );
+                }
+            }
+
+            Entry entry = record.entry;
+            out.writeBoolean( entry.isSchemaAware() );
+            writeBytes( Strings.getBytesUtf8( entry.getDn().getName() ) );
+            out.writeInt( entry.size() );
+
+            for ( Attribute attribute : entry )
+            {
+                writeBytes( Strings.getBytesUtf8( attribute.getUpId() ) );
+                out.writeBoolean( attribute.isHumanReadable() );
+                out.writeInt( attribute.size() );
+
+                for ( Value value : attribute )
+                {
+                    writeBytes( value.getBytes() );
+                }
+            }
+        }
+
+
+        private void writeBytes( byte[] bytes ) throws IOException
+        {
+            if ( bytes == null )
+            {
+                out.writeInt( 0 );
+            }
+            else
+            {
+                out.writeInt( bytes.length );
+                out.write( bytes );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+        }
+    }
+
+
+    /**
+     * Reads back the records of a run, in the order they were written.
+     */
+    static final class Reader implements Closeable
+    {
+        /** The input */
+        private final DataInputStream in;
+
+        /** The SchemaManager used to rebuild the schema aware entries */
+        private final SchemaManager schemaManager;
+
+        /** The number of keys of each record */
+        private final int nbKeys;
+
+
+        private Reader( DataInputStream in, SchemaManager schemaManager, int nbKeys )
+        {
+            this.in = in;
+            this.schemaManager = schemaManager;
+            this.nbKeys = nbKeys;
+        }
+
+
+        /**
+         * Reads the next record.
+         *
+         * @return The record, or null at the end of the run
+         * @throws IOException If the record can't be read
+         * @throws LdapException If the entry can't be rebuilt
+         */
+        SortRecord read() throws IOException, LdapException
+        {
+            Object[] keys = new Object[nbKeys];
+
+            for ( int i = 0; i < nbKeys; i++ )
+            {
+                byte tag;
+
+                try
+                {
+                    tag = in.readByte();
+                }
+                catch ( EOFException eofe )
+                {
+                    if ( i == 0 )
+                    {
+                        return null;
+                    }
+
+                    throw eofe;
+                }
+
+                if ( tag == STRING_KEY )
+                {
+                    keys[i] = Strings.utf8ToString( readBytes() );
+                }
+                else if ( tag == BINARY_KEY )
+                {
+                    keys[i] = readBytes();
+                }
+            }
+
+            boolean schemaAware = in.readBoolean();
+            String dn = Strings.utf8ToString( readBytes() );
+            Entry entry;
+
+            if ( schemaAware )
+            {
+                entry = new DefaultEntry( schemaManager, dn );
+            }
+            else
+            {
+                entry = new DefaultEntry( dn );
+            }
+
+            int nbAttributes = in.readInt();
+
+            for ( int i = 0; i < nbAttributes; i++ )
+            {
+                String upId = Strings.utf8ToString( readBytes() );
+                boolean humanReadable = in.readBoolean();
+                int nbValues = in.readInt();
+
+                if ( humanReadable )
+                {
+                    String[] values = new String[nbValues];
+
+                    for ( int j = 0; j < nbValues; j++ )
+                    {
+                        values[j] = Strings.utf8ToString( readBytes() );
+                    }
+
+                    entry.add( upId, values );
+                }
+                else
+                {
+                    byte[][] values = new byte[nbValues][];
+
+                    for ( int j = 0; j < nbValues; j++ )
+                    {
+                        values[j] = readBytes();
+                    }
+
+                    entry.add( upId, values );
+                }
+            }
+
+            return new SortRecord( keys, entry );
+        }
+
+
+        private byte[] readBytes() throws IOException
+        {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully( bytes );
+
+            return bytes;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,960 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.sort;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewRequest;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewResponse;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewResponseImpl;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewResultCode;
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.CursorLdapReferralException;
+import org.apache.directory.api.ldap.model.cursor.EntryCursor;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.cursor.SearchCursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.ldap.client.api.EntryCursorImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Cursor sorting on the client side the entries returned by a search, for the servers
+ * which don't support the Server Side Sort control (RFC 2891), or when the sort must use
+ * the client schema. The entries are sorted on the {@link SortKey}s using the ordering
+ * rules of the SchemaManager, see {@link EntrySortKeys}. The sort is stable : entries
+ * with equal keys are returned in the order the server sent them.
+ * <br>
+ * The search is fully read on the first call to {@link #next()}. At most
+ * {@link #setMaxEntriesInMemory(int)} entries are kept in memory : the larger results
+ * are sorted by runs, which are spilled to temporary files using a compact encoding and
+ * merged back while the cursor is read. The temporary files are deleted when the cursor
+ * is exhausted or closed.
+ * <br>
+ * A window of the sorted entries can be selected, either by offset and count with
+ * {@link #setWindow(long, long)}, or with a {@link VirtualListViewRequest}, as the
+ * Virtual List View control would do on the server side. In the latter case, the
+ * resulting {@link VirtualListViewResponse} is available once the cursor has been
+ * positioned.
+ * <br>
+ * The search references are ignored. Note: This is a forward only cursor hence the only
+ * valid operations are next(), get() and close()
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SortedEntryCursor extends AbstractCursor<Entry> implements EntryCursor
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** The default maximum number of entries kept in memory */
+    public static final int DEFAULT_MAX_ENTRIES_IN_MEMORY = 10000;
+
+    /** The maximum number of runs merged at once */
+    static final int MAX_MERGE_WIDTH = 64;
+
+    /** The sorted entries */
+    private final Cursor<Entry> source;
+
+    /** The SchemaManager, or null */
+    private final SchemaManager schemaManager;
+
+    /** The resolved sort keys */
+    private final EntrySortKeys sortKeys;
+
+    /** The maximum number of entries kept in memory */
+    private int maxEntriesInMemory = DEFAULT_MAX_ENTRIES_IN_MEMORY;
+
+    /** The directory where the runs are spilled, the default temporary directory if null */
+    private Path tempDirectory;
+
+    /** The position of the first returned entry, starting at 0 */
+    private long windowOffset;
+
+    /** The maximum number of returned entries, or -1 */
+    private long windowCount = -1L;
+
+    /** The VLV request, if any */
+    private VirtualListViewRequest virtualListViewRequest;
+
+    /** The VLV response, once the cursor has been positioned */
+    private VirtualListViewResponse virtualListViewResponse;
+
+    /** The runs spilled on disk */
+    private final List<SortRunFile> runs = new ArrayList<>();
+
+    /** The number of runs spilled on disk */
+    private int runCount;
+
+    /** The merge of the sorted runs */
+    private RunMerger merger;
+
+    /** The number of sorted entries */
+    private long contentCount;
+
+    /** The number of entries still to skip before the window */
+    private long toSkip;
+
+    /** The number of entries still to return, or -1 */
+    private long remaining;
+
+    /** The entries of a VLV window selected by an assertion value */
+    private Iterator<Entry> windowEntries;
+
+    /** Tells if the entries have been sorted */
+    private boolean sorted;
+
+    /** The current entry */
+    private Entry entry;
+
+
+    /**
+     * Creates a cursor sorting the entries returned by a search.
+     *
+     * @param searchCursor The search cursor
+     * @param schemaManager The SchemaManager providing the ordering rules, or null
+     * @param sortKeys The sort keys
+     * @throws LdapException If a sort key can't be used
+     */
+    public SortedEntryCursor( SearchCursor searchCursor, SchemaManager schemaManager, SortKey... sortKeys )
+        throws LdapException
+    {
+        this( new EntryCursorImpl( searchCursor ), schemaManager, sortKeys );
+    }
+
+
+    /**
+     * Creates a cursor sorting the entries returned by another cursor.
+     *
+     * @param source The cursor returning the entries to sort
+     * @param schemaManager The SchemaManager providing the ordering rules, or null
+     * @param sortKeys The sort keys
+     * @throws LdapException If a sort key can't be used
+     */
+    public SortedEntryCursor( Cursor<Entry> source, SchemaManager schemaManager, SortKey... sortKeys )
+        throws LdapException
+    {
+        if ( ( sortKeys == null ) || ( sortKeys.length == 0 ) )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_04190_SORT_KEY_NEEDED ) );
+        }
+
+        this.source = source;
+        this.schemaManager = schemaManager;
+        this.sortKeys = new EntrySortKeys( schemaManager, Arrays.asList( sortKeys ) );
+    }
+
+
+    /**
+     * @param maxEntriesInMemory The maximum number of entries kept in memory, defaults to
+     * {@link #DEFAULT_MAX_ENTRIES_IN_MEMORY}
+     */
+    public void setMaxEntriesInMemory( int maxEntriesInMemory )
+    {
+        this.maxEntriesInMemory = Math.max( 1, maxEntriesInMemory );
+    }
+
+
+    /**
+     * @param tempDirectory The directory where the sorted runs are spilled, the default
+     * temporary directory when null
+     */
+    public void setTempDirectory( Path tempDirectory )
+    {
+        this.tempDirectory = tempDirectory;
+    }
+
+
+    /**
+     * Only returns a window of the sorted entries.
+     *
+     * @param offset The position of the first returned entry, starting at 0
+     * @param count The maximum number of returned entries, or -1 for all of them
+     */
+    public void setWindow( long offset, long count )
+    {
+        windowOffset = Math.max( 0L, offset );
+        windowCount = count;
+        virtualListViewRequest = null;
+    }
+
+
+    /**
+     * Only returns the window of the sorted entries selected by a VLV request. The
+     * target entry is selected by offset, or, when the request has an assertion value,
+     * as the first entry which first sort key is greater than or equal to the assertion
+     * value.
+     *
+     * @param virtualListViewRequest The VLV request
+     */
+    public void setVirtualListView( VirtualListViewRequest virtualListViewRequest )
+    {
+        this.virtualListViewRequest = virtualListViewRequest;
+    }
+
+
+    /**
+     * @return The VLV response, once the cursor has been positioned, or null if no VLV
+     * request was given
+     */
+    public VirtualListViewResponse getVirtualListViewResponse()
+    {
+        return virtualListViewResponse;
+    }
+
+
+    /**
+     * @return The number of sorted entries, once the cursor has been positioned
+     */
+    public long getContentCount()
+    {
+        return contentCount;
+    }
+
+
+    /**
+     * @return The number of runs spilled on disk while sorting, 0 if all the entries fit
+     * in memory
+     */
+    public int getRunCount()
+    {
+        return runCount;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        if ( !sorted )
+        {
+            sort();
+            sorted = true;
+        }
+
+        entry = null;
+
+        try
+        {
+            if ( windowEntries != null )
+            {
+                if ( windowEntries.hasNext() )
+                {
+                    entry = windowEntries.next();
+                }
+            }
+            else if ( remaining != 0L )
+            {
+                while ( toSkip > 0L )
+                {
+                    nextRecord();
+                    toSkip--;
+                }
+
+                SortRecord record = nextRecord();
+
+                if ( record != null )
+                {
+                    entry = record.entry;
+
+                    if ( remaining > 0L )
+                    {
+                        remaining--;
+                    }
+                }
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new CursorException( I18n.err( I18n.ERR_04189_SORT_RUN_IO_ERROR, runs, ioe.getMessage() ), ioe );
+        }
+
+        return entry != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry get() throws CursorException
+    {
+        if ( entry == null )
+        {
+            throw new InvalidCursorPositionException();
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean available()
+    {
+        return entry != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SearchResultDone getSearchResultDone()
+    {
+        if ( source instanceof EntryCursor )
+        {
+            return ( ( EntryCursor ) source ).getSearchResultDone();
+        }
+
+        return null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMessageId()
+    {
+        if ( source instanceof EntryCursor )
+        {
+            return ( ( EntryCursor ) source ).getMessageId();
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            cleanup();
+            source.close();
+        }
+        finally
+        {
+            super.close();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        try
+        {
+            cleanup();
+            source.close( cause );
+        }
+        finally
+        {
+            super.close( cause );
+        }
+    }
+
+
+    /**
+     * Reads the whole source, spilling the sorted runs on disk when there are too many
+     * entries, then prepares the merge and the window.
+     */
+    private void sort() throws LdapException, CursorException
+    {
+        List<SortRecord> buffer = new ArrayList<>();
+
+        try
+        {
+            while ( source.next() )
+            {
+                Entry sourceEntry;
+
+                try
+                {
+                    sourceEntry = source.get();
+                }
+                catch ( CursorLdapReferralException clre )
+                {
+                    if ( LOG_CURSOR.isDebugEnabled() )
+                    {
+                        LOG_CURSOR.debug( I18n.msg( I18n.MSG_04184_SORT_REFERRAL_IGNORED, clre.getReferralInfo() ) );
+                    }
+
+                    continue;
+                }
+
+                if ( sourceEntry == null )
+                {
+                    continue;
+                }
+
+                buffer.add( new SortRecord( sortKeys.getKeys( sourceEntry ), sourceEntry ) );
+                contentCount++;
+
+                if ( buffer.size() >= maxEntriesInMemory )
+                {
+                    buffer.sort( sortKeys );
+                    spill( buffer );
+                    buffer.clear();
+                }
+            }
+
+            // The last run stays in memory
+            buffer.sort( sortKeys );
+
+            // Too many runs to be merged at once : merge consecutive groups of runs, so
+            // that the sort stays stable, until there are few enough runs
+            while ( runs.size() > MAX_MERGE_WIDTH )
+            {
+                List<SortRunFile> pass = new ArrayList<>( runs );
+
+                for ( int i = 0; i < pass.size(); i += MAX_MERGE_WIDTH )
+                {
+                    mergeRuns( pass.subList( i, Math.min( i + MAX_MERGE_WIDTH, pass.size() ) ) );
+                }
+
+                runs.subList( 0, pass.size() ).clear();
+            }
+
+            List<SortRunFile.Reader> readers = new ArrayList<>( runs.size() );
+            merger = new RunMerger( readers, buffer.iterator(), sortKeys );
+
+            for ( SortRunFile run : runs )
+            {
+                readers.add( run.openReader( schemaManager, sortKeys.size() ) );
+            }
+
+            merger.init();
+            positionWindow();
+        }
+        catch ( IOException ioe )
+        {
+            throw new CursorException( I18n.err( I18n.ERR_04189_SORT_RUN_IO_ERROR, runs, ioe.getMessage() ), ioe );
+        }
+    }
+
+
+    /**
+     * Creates a new run file, which will be deleted by {@link #cleanup()}.
+     */
+    private SortRunFile createRun() throws IOException
+    {
+        Path path;
+
+        if ( tempDirectory == null )
+        {
+            path = Files.createTempFile( "ldap-sort-", ".run" );
+        }
+        else
+        {
+            path = Files.createTempFile( tempDirectory, "ldap-sort-", ".run" );
+        }
+
+        SortRunFile run = new SortRunFile( path );
+        runs.add( run );
+
+        return run;
+    }
+
+
+    /**
+     * Writes a sorted run on disk.
+     */
+    private void spill( List<SortRecord> records ) throws IOException
+    {
+        SortRunFile run = createRun();
+        runCount++;
+
+        if ( LOG_CURSOR.isDebugEnabled() )
+        {
+            LOG_CURSOR.debug( I18n.msg( I18n.MSG_04183_SORT_SPILLING_RUN, records.size(), run ) );
+        }
+
+        try ( SortRunFile.Writer writer = run.openWriter() )
+        {
+            for ( SortRecord record : records )
+            {
+                writer.write( record );
+            }
+        }
+    }
+
+
+    /**
+     * Merges some consecutive runs into a new one, added at the end of the runs, and
+     * deletes them.
+     */
+    private void mergeRuns( List<SortRunFile> merged ) throws IOException, LdapException
+    {
+        if ( merged.size() == 1 )
+        {
+            runs.add( merged.get( 0 ) );
+
+            return;
+        }
+
+        List<SortRunFile.Reader> readers = new ArrayList<>( merged.size() );
+
+        try ( RunMerger runMerger = new RunMerger( readers, null, sortKeys ) )
+        {
+            for ( SortRunFile run : merged )
+            {
+                readers.add( run.openReader( schemaManager, sortKeys.size() ) );
+            }
+
+            runMerger.init();
+
+            try ( SortRunFile.Writer writer = createRun().openWriter() )
+            {
+                SortRecord record = runMerger.next();
+
+                while ( record != null )
+                {
+                    writer.write( record );
+                    record = runMerger.next();
+                }
+            }
+        }
+
+        for ( SortRunFile run : merged )
+        {
+            run.delete();
+        }
+    }
+
+
+    /**
+     * Computes the window once the number of sorted entries is known.
+     */
+    private void positionWindow() throws IOException, LdapException
+    {
+        toSkip = windowOffset;
+        remaining = windowCount;
+
+        if ( virtualListViewRequest == null )
+        {
+            return;
+        }
+
+        VirtualListViewResponseImpl response = new VirtualListViewResponseImpl();
+        response.setContentCount( ( int ) contentCount );
+        response.setContextId( virtualListViewRequest.getContextId() );
+        response.setVirtualListViewResult( VirtualListViewResultCode.SUCCESS );
+        virtualListViewResponse = response;
+
+        int beforeCount = Math.max( 0, virtualListViewRequest.getBeforeCount() );
+        int afterCount = Math.max( 0, virtualListViewRequest.getAfterCount() );
+
+        if ( virtualListViewRequest.hasAssertionValue() )
+        {
+            positionAssertionWindow( response, beforeCount, afterCount );
+
+            return;
+        }
+
+        int offset = virtualListViewRequest.getOffset();
+        int clientCount = virtualListViewRequest.getContentCount();
+
+        if ( ( offset < 1 ) || ( clientCount < 0 ) )
+        {
+            response.setVirtualListViewResult( VirtualListViewResultCode.OFFSETRANGEERROR );
+            remaining = 0L;
+
+            return;
+        }
+
+        long target;
+
+        if ( ( clientCount == 0 ) || ( offset == 1 ) )
+        {
+            target = offset;
+        }
+        else if ( offset > clientCount )
+        {
+            target = contentCount + 1;
+        }
+        else if ( offset == clientCount )
+        {
+            target = contentCount;
+        }
+        else
+        {
+            // Scale the client offset to the actual number of entries
+            target = Math.round( ( double ) offset * contentCount / clientCount );
+        }
+
+        target = Math.max( 1L, Math.min( target, contentCount + 1 ) );
+        response.setTargetPosition( ( int ) target );
+
+        long first = Math.max( 1L, target - beforeCount );
+        long last = Math.min( contentCount, target + afterCount );
+        toSkip = first - 1;
+        remaining = Math.max( 0L, last - first + 1 );
+    }
+
+
+    /**
+     * Selects the VLV window around the first entry greater than or equal to the
+     * assertion value. The window is small, it is read in memory.
+     */
+    private void positionAssertionWindow( VirtualListViewResponseImpl response, int beforeCount, int afterCount )
+        throws IOException, LdapException
+    {
+        Object assertionKey = sortKeys.getAssertionKey( virtualListViewRequest.getAssertionValue() );
+        Deque<Entry> window = new ArrayDeque<>();
+        long position = 0L;
+        long target = contentCount + 1;
+        SortRecord record = nextRecord();
+
+        while ( record != null )
+        {
+            position++;
+
+            if ( sortKeys.compareFirstKey( record, assertionKey ) >= 0 )
+            {
+                target = position;
+                break;
+            }
+
+            window.addLast( record.entry );
+
+            if ( window.size() > beforeCount )
+            {
+                window.removeFirst();
+            }
+
+            record = nextRecord();
+        }
+
+        if ( record != null )
+        {
+            window.addLast( record.entry );
+
+            for ( int i = 0; i < afterCount; i++ )
+            {
+                record = nextRecord();
+
+                if ( record == null )
+                {
+                    break;
+                }
+
+                window.addLast( record.entry );
+            }
+        }
+
+        response.setTargetPosition( ( int ) target );
+        windowEntries = window.iterator();
+        cleanup();
+    }
+
+
+    private SortRecord nextRecord() throws IOException, LdapException
+    {
+        if ( merger == null )
+        {
+            return null;
+        }
+
+        SortRecord record = merger.next();
+
+        if ( record == null )
+        {
+            // The runs are not needed anymore
+            cleanup();
+        }
+
+        return record;
+    }
+
+
+    /**
+     * Closes the merge and deletes the runs files.
+     */
+    private void cleanup() throws IOException
+    {
+        try
+        {
+            if ( merger != null )
+            {
+                merger.close();
+                merger = null;
+            }
+        }
+        finally
+        {
+            for ( SortRunFile run : runs )
+            {
+                run.delete();
+            }
+
+            runs.clear();
+        }
+    }
+
+
+    // rest of all operations will throw UnsupportedOperationException
+
+    /**
+     * This operation is not supported in SortedEntryCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void after( Entry element ) throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "after( Entry element )" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SortedEntryCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "afterLast()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SortedEntryCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void before( Entry element ) throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "before( Entry element )" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SortedEntryCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "beforeFirst()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SortedEntryCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "first()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SortedEntryCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "last()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SortedEntryCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "previous()" ) ) );
+    }
+
+
+    /**
+     * A k-way merge of sorted runs, the in-memory run, if any, being the last one. The
+     * records with equal keys are returned in the runs order.
+     */
+    private static final class RunMerger implements Closeable
+    {
+        /** The runs on disk */
+        private final List<SortRunFile.Reader> readers;
+
+        /** The run in memory, or null */
+        private final Iterator<SortRecord> memory;
+
+        /** The next record of each run */
+        private final PriorityQueue<Head> heads;
+
+
+        private RunMerger( List<SortRunFile.Reader> readers, Iterator<SortRecord> memory, EntrySortKeys sortKeys )
+        {
+            this.readers = readers;
+            this.memory = memory;
+            heads = new PriorityQueue<>( readers.size() + 2, ( head1, head2 ) ->
+            {
+                int result = sortKeys.compare( head1.record, head2.record );
+
+                return result != 0 ? result : Integer.compare( head1.run, head2.run );
+            } );
+        }
+
+
+        private void init() throws IOException, LdapException
+        {
+            for ( int run = 0; run <= readers.size(); run++ )
+            {
+                SortRecord record = read( run );
+
+                if ( record != null )
+                {
+                    heads.add( new Head( record, run ) );
+                }
+            }
+        }
+
+
+        private SortRecord next() throws IOException, LdapException
+        {
+            Head head = heads.poll();
+
+            if ( head == null )
+            {
+                return null;
+            }
+
+            SortRecord record = head.record;
+            head.record = read( head.run );
+
+            if ( head.record != null )
+            {
+                heads.add( head );
+            }
+
+            return record;
+        }
+
+
+        private SortRecord read( int run ) throws IOException, LdapException
+        {
+            if ( run < readers.size() )
+            {
+                return readers.get( run ).read();
+            }
+
+            if ( ( memory != null ) && memory.hasNext() )
+            {
+                return memory.next();
+            }
+
+            return null;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException
+        {
+            IOException exception = null;
+
+            for ( SortRunFile.Reader reader : readers )
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch ( IOException ioe )
+                {
+                    exception = ioe;
+                }
+            }
+
+            heads.clear();
+
+            if ( exception != null )
+            {
+                throw exception;
+            }
+        }
+    }
+
+
+    /**
+     * The next record of a run.
+     */
+    private static final class Head
+    {
+        /** The record */
+        private SortRecord record;
+
+        /** The run index */
+        private final int run;
+
+
+        private Head( SortRecord record, int run )
+        {
+            this.record = record;
+            this.run = run;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.syncrepl;
+
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+
+/**
+ * A {@link SyncReplCheckpointStore} keeping the cookie in a file. The cookie is written
+ * in a temporary file first, then moved, so that a crash never leaves a partial cookie.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class FileSyncReplCheckpointStore implements SyncReplCheckpointStore
+{
+    /** The cookie file */
+    private final Path file;
+
+
+    /**
+     * Creates a new FileSyncReplCheckpointStore
+     *
+     * @param file The file containing the cookie. Its parent directory is created if needed.
+     */
+    public FileSyncReplCheckpointStore( Path file )
+    {
+        this.file = file.toAbsolutePath();
+    }
+
+
+    /**
+     * @return The file containing the cookie
+     */
+    public Path getFile()
+    {
+        return file;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] load() throws IOException
+    {
+        try
+        {
+            return Files.readAllBytes( file );
+        }
+        catch ( NoSuchFileException nsfe )
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void save( byte[] cookie ) throws IOException
+    {
+        if ( cookie == null )
+        {
+            Files.deleteIfExists( file );
+
+            return;
+        }
+
+        Path directory = file.getParent();
+        Files.createDirectories( directory );
+        Path tmpFile = Files.createTempFile( directory, file.getFileName().toString(), ".tmp" );
+
+        try
+        {
+            Files.write( tmpFile, cookie );
+            Files.move( tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        finally
+        {
+            Files.deleteIfExists( tmpFile );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return file.toString();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.syncrepl;
+
+
+/**
+ * A {@link SyncReplCheckpointStore} keeping the cookie in memory. The cookie survives
+ * the reconnections, but not a restart.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MemorySyncReplCheckpointStore implements SyncReplCheckpointStore
+{
+    /** The saved cookie */
+    private volatile byte[] cookie;
+
+
+    /**
+     * Creates a new, empty, MemorySyncReplCheckpointStore
+     */
+    public MemorySyncReplCheckpointStore()
+    {
+    }
+
+
+    /**
+     * Creates a new MemorySyncReplCheckpointStore, starting with a given cookie
+     *
+     * @param cookie The initial cookie
+     */
+    public MemorySyncReplCheckpointStore( byte[] cookie )
+    {
+        this.cookie = cookie;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] load()
+    {
+        return cookie;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void save( byte[] cookie )
+    {
+        this.cookie = cookie;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.syncrepl;
+
+
+import java.util.UUID;
+
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateTypeEnum;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+
+
+/**
+ * A change received by a {@link SyncReplConsumer}. The entries are identified by their
+ * entryUUID, as the DN may change. An ADD, MODIFY or MODDN change contains the whole
+ * entry, a DELETE change only contains the entryUUID and, when it is known, the DN of
+ * the deleted entry.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SyncReplChange
+{
+    /** The change type */
+    private final SyncStateTypeEnum type;
+
+    /** The entryUUID */
+    private final UUID entryUuid;
+
+    /** The entry DN, if known */
+    private final Dn dn;
+
+    /** The entry, if any */
+    private final Entry entry;
+
+
+    /**
+     * Creates a new SyncReplChange
+     *
+     * @param type The change type
+     * @param entryUuid The changed entry entryUUID
+     * @param dn The changed entry DN, or null
+     * @param entry The changed entry, or null
+     */
+    public SyncReplChange( SyncStateTypeEnum type, UUID entryUuid, Dn dn, Entry entry )
+    {
+        this.type = type;
+        this.entryUuid = entryUuid;
+        this.dn = dn;
+        this.entry = entry;
+    }
+
+
+    /**
+     * @return The change type : ADD, MODIFY, MODDN or DELETE
+     */
+    public SyncStateTypeEnum getType()
+    {
+        return type;
+    }
+
+
+    /**
+     * @return The changed entry entryUUID
+     */
+    public UUID getEntryUuid()
+    {
+        return entryUuid;
+    }
+
+
+    /**
+     * @return The changed entry DN. It may be null for a DELETE change.
+     */
+    public Dn getDn()
+    {
+        return dn;
+    }
+
+
+    /**
+     * @return The changed entry, or null for a DELETE change
+     */
+    public Entry getEntry()
+    {
+        return entry;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return type + " " + entryUuid + ( dn == null ? "" : " " + dn );
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.syncrepl;
+
+
+import java.io.IOException;
+
+
+/**
+ * Stores the syncrepl cookie of a {@link SyncReplConsumer}. The cookie is saved
+ * once the changes it covers have been applied by the {@link SyncReplListener}, and
+ * it is loaded when the consumer (re)connects, to resume the synchronization where
+ * it stopped.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface SyncReplCheckpointStore
+{
+    /**
+     * Loads the last saved cookie
+     *
+     * @return The cookie, or null if there is none
+     * @throws IOException If the cookie can't be read
+     */
+    byte[] load() throws IOException;
+
+
+    /**
+     * Saves a cookie, replacing the previous one
+     *
+     * @param cookie The cookie to save, or null to remove the saved cookie
+     * @throws IOException If the cookie can't be written
+     */
+    void save( byte[] cookie ) throws IOException;
+}
@@ -0,0 +1,283 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.syncrepl;
+
+
+import org.apache.directory.api.ldap.extras.controls.SynchronizationModeEnum;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+
+
+/**
+ * The configuration of a {@link SyncReplConsumer} : the replicated content, the
+ * synchronization mode, the way the changes are batched and the reconnection delays.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SyncReplConfig
+{
+    /** The default number of changes in a batch */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** The default maximum time a change waits before being delivered, in ms */
+    public static final long DEFAULT_BATCH_DELAY = 500L;
+
+    /** The default delay before the first reconnection attempt, in ms */
+    public static final long DEFAULT_RECONNECT_DELAY = 1000L;
+
+    /** The default maximum delay between two reconnection attempts, in ms */
+    public static final long DEFAULT_MAX_RECONNECT_DELAY = 60000L;
+
+    /** The replicated subtree */
+    private Dn baseDn;
+
+    /** The replicated entries filter */
+    private String filter = "(" + SchemaConstants.OBJECT_CLASS_AT + "=*)";
+
+    /** The search scope */
+    private SearchScope scope = SearchScope.SUBTREE;
+
+    /** The replicated attributes */
+    private String[] attributes = new String[]
+        { SchemaConstants.ALL_USER_ATTRIBUTES };
+
+    /** The aliases dereferencing mode */
+    private AliasDerefMode derefAliases = AliasDerefMode.NEVER_DEREF_ALIASES;
+
+    /** The synchronization mode */
+    private SynchronizationModeEnum mode = SynchronizationModeEnum.REFRESH_AND_PERSIST;
+
+    /** The delay between two refreshes, in refreshOnly mode */
+    private long refreshInterval;
+
+    /** The maximum number of changes in a batch */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /** The maximum time a change waits before being delivered */
+    private long batchDelay = DEFAULT_BATCH_DELAY;
+
+    /** The delay before the first reconnection attempt */
+    private long reconnectDelay = DEFAULT_RECONNECT_DELAY;
+
+    /** The maximum delay between two reconnection attempts */
+    private long maxReconnectDelay = DEFAULT_MAX_RECONNECT_DELAY;
+
+
+    /**
+     * @return The replicated subtree
+     */
+    public Dn getBaseDn()
+    {
+        return baseDn;
+    }
+
+
+    /**
+     * @param baseDn The replicated subtree
+     */
+    public void setBaseDn( Dn baseDn )
+    {
+        this.baseDn = baseDn;
+    }
+
+
+    /**
+     * @return The replicated entries filter, (objectClass=*) by default
+     */
+    public String getFilter()
+    {
+        return filter;
+    }
+
+
+    /**
+     * @param filter The replicated entries filter
+     */
+    public void setFilter( String filter )
+    {
+        this.filter = filter;
+    }
+
+
+    /**
+     * @return The search scope, SUBTREE by default
+     */
+    public SearchScope getScope()
+    {
+        return scope;
+    }
+
+
+    /**
+     * @param scope The search scope
+     */
+    public void setScope( SearchScope scope )
+    {
+        this.scope = scope;
+    }
+
+
+    /**
+     * @return The replicated attributes, all the user attributes by default
+     */
+    public String[] getAttributes()
+    {
+        return attributes;
+    }
+
+
+    /**
+     * @param attributes The replicated attributes
+     */
+    public void setAttributes( String... attributes )
+    {
+        this.attributes = attributes;
+    }
+
+
+    /**
+     * @return The aliases dereferencing mode, NEVER_DEREF_ALIASES by default
+     */
+    public AliasDerefMode getDerefAliases()
+    {
+        return derefAliases;
+    }
+
+
+    /**
+     * @param derefAliases The aliases dereferencing mode
+     */
+    public void setDerefAliases( AliasDerefMode derefAliases )
+    {
+        this.derefAliases = derefAliases;
+    }
+
+
+    /**
+     * @return The synchronization mode, REFRESH_AND_PERSIST by default
+     */
+    public SynchronizationModeEnum getMode()
+    {
+        return mode;
+    }
+
+
+    /**
+     * @param mode The synchronization mode, REFRESH_ONLY or REFRESH_AND_PERSIST
+     */
+    public void setMode( SynchronizationModeEnum mode )
+    {
+        this.mode = mode;
+    }
+
+
+    /**
+     * @return The delay between two refreshes in refreshOnly mode, in ms. When 0, the
+     * default, a single refresh is done.
+     */
+    public long getRefreshInterval()
+    {
+        return refreshInterval;
+    }
+
+
+    /**
+     * @param refreshInterval The delay between two refreshes in refreshOnly mode, in ms
+     */
+    public void setRefreshInterval( long refreshInterval )
+    {
+        this.refreshInterval = refreshInterval;
+    }
+
+
+    /**
+     * @return The maximum number of changes in a batch
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+
+    /**
+     * @param batchSize The maximum number of changes in a batch
+     */
+    public void setBatchSize( int batchSize )
+    {
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * @return The maximum time a change waits before being delivered, in ms
+     */
+    public long getBatchDelay()
+    {
+        return batchDelay;
+    }
+
+
+    /**
+     * @param batchDelay The maximum time a change waits before being delivered, in ms
+     */
+    public void setBatchDelay( long batchDelay )
+    {
+        this.batchDelay = batchDelay;
+    }
+
+
+    /**
+     * @return The delay before the first reconnection attempt, in ms
+     */
+    public long getReconnectDelay()
+    {
+        return reconnectDelay;
+    }
+
+
+    /**
+     * @param reconnectDelay The delay before the first reconnection attempt, in ms. It
+     * is doubled after each failed attempt.
+     */
+    public void setReconnectDelay( long reconnectDelay )
+    {
+        this.reconnectDelay = reconnectDelay;
+    }
+
+
+    /**
+     * @return The maximum delay between two reconnection attempts, in ms
+     */
+    public long getMaxReconnectDelay()
+    {
+        return maxReconnectDelay;
+    }
+
+
+    /**
+     * @param maxReconnectDelay The maximum delay between two reconnection attempts, in ms
+     */
+    public void setMaxReconnectDelay( long maxReconnectDelay )
+    {
+        this.maxReconnectDelay = maxReconnectDelay;
+    }
+}
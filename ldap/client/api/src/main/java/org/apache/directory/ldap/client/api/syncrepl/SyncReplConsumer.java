@@ -0,0 +1,760 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.syncrepl;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.extras.controls.SynchronizationModeEnum;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncDone.SyncDoneValue;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncRequest.SyncRequestValue;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncRequest.SyncRequestValueImpl;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateTypeEnum;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateValue;
+import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SyncInfoValue;
+import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SynchronizationInfoEnum;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOperationException;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.ldap.client.api.LdapAsyncConnection;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapConnectionFactory;
+import org.apache.directory.ldap.client.api.LdapConnectionWrapper;
+import org.apache.directory.ldap.client.api.future.SearchFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A syncrepl consumer, as described in <a href="https://tools.ietf.org/html/rfc4533">RFC 4533</a>.
+ * It supports the refreshOnly and refreshAndPersist modes, and delivers the received changes
+ * to a {@link SyncReplListener}, in batches. Here is an example :
+ * <pre>
+ * SyncReplConfig config = new SyncReplConfig();
+ * config.setBaseDn( new Dn( "ou=people,dc=example,dc=com" ) );
+ *
+ * SyncReplConsumer consumer = new SyncReplConsumer( new DefaultLdapConnectionFactory( connectionConfig ),
+ *     config, new FileSyncReplCheckpointStore( Paths.get( "people.cookie" ) ), listener );
+ * consumer.start();
+ * ...
+ * consumer.stop();
+ * </pre>
+ * The cookie is saved in the {@link SyncReplCheckpointStore} once the changes it covers have
+ * been applied : during the refresh phase, at the end of each present or delete phase, then
+ * after each batch. When the connection is lost, or when a callback fails, the consumer
+ * reconnects, waiting longer after each failed attempt, and resumes from the last saved cookie.
+ * <p>
+ * The present phase is handled by collecting the entryUUIDs of the present entries, so that
+ * the unchanged entries are never delivered : {@link SyncReplListener#retainOnly(Set)} is
+ * called at the end of the phase, to remove the entries deleted on the server.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SyncReplConsumer
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( SyncReplConsumer.class );
+
+    /** The time we wait for a message before checking if the consumer has been stopped, or disconnected */
+    private static final long IDLE_POLL_DELAY = 1000L;
+
+    /** The factory creating the bound connections */
+    private final LdapConnectionFactory connectionFactory;
+
+    /** The consumer configuration */
+    private final SyncReplConfig config;
+
+    /** The cookie store */
+    private final SyncReplCheckpointStore checkpointStore;
+
+    /** The application callbacks */
+    private final SyncReplListener listener;
+
+    /** Tells if the consumer is running */
+    private volatile boolean running;
+
+    /** Released when the consumer is stopped, to interrupt the waits */
+    private volatile CountDownLatch stopLatch = new CountDownLatch( 0 );
+
+    /** The consumer thread, when started with start() */
+    private Thread thread;
+
+    /** Tells if the current session refresh phase is done */
+    private volatile boolean refreshDone;
+
+    /** The number of changes delivered to the listener */
+    private final AtomicLong changeCount = new AtomicLong();
+
+    /** The number of reconnections */
+    private final AtomicLong reconnectCount = new AtomicLong();
+
+    // The session state, only used by the consumer thread
+    /** The changes not yet delivered */
+    private List<SyncReplChange> batch;
+
+    /** The time the first change of the batch has been received */
+    private long batchStart;
+
+    /** The entryUUIDs of the entries present on the server, during a refresh */
+    private Set<UUID> presentUuids;
+
+    /** The last cookie received */
+    private byte[] pendingCookie;
+
+    /** The last cookie saved */
+    private byte[] savedCookie;
+
+    /** Tells if the session is in its refresh phase */
+    private boolean refreshing;
+
+
+    /**
+     * Creates a new SyncReplConsumer
+     *
+     * @param connectionFactory The factory creating the bound connections. They must be
+     * {@link LdapAsyncConnection}s, like the ones created by a DefaultLdapConnectionFactory.
+     * @param config The consumer configuration
+     * @param checkpointStore The store used to save the cookie
+     * @param listener The application callbacks
+     */
+    public SyncReplConsumer( LdapConnectionFactory connectionFactory, SyncReplConfig config,
+        SyncReplCheckpointStore checkpointStore, SyncReplListener listener )
+    {
+        this.connectionFactory = connectionFactory;
+        this.config = config;
+        this.checkpointStore = checkpointStore;
+        this.listener = listener;
+    }
+
+
+    /**
+     * Starts the consumer in a new thread
+     */
+    public synchronized void start()
+    {
+        if ( running )
+        {
+            throw new IllegalStateException( I18n.err( I18n.ERR_04187_SYNCREPL_CONSUMER_ALREADY_STARTED,
+                config.getBaseDn() ) );
+        }
+
+        running = true;
+        stopLatch = new CountDownLatch( 1 );
+
+        thread = new Thread( () ->
+        {
+            try
+            {
+                loop();
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }, "syncrepl-" + config.getBaseDn() );
+
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+
+    /**
+     * Runs the consumer in the current thread. It returns when the consumer is stopped,
+     * or, in refreshOnly mode without refresh interval, when the refresh is done.
+     *
+     * @throws InterruptedException If the thread has been interrupted
+     */
+    public void sync() throws InterruptedException
+    {
+        synchronized ( this )
+        {
+            if ( running )
+            {
+                throw new IllegalStateException( I18n.err( I18n.ERR_04187_SYNCREPL_CONSUMER_ALREADY_STARTED,
+                    config.getBaseDn() ) );
+            }
+
+            running = true;
+            stopLatch = new CountDownLatch( 1 );
+        }
+
+        loop();
+    }
+
+
+    /**
+     * Stops the consumer. The pending changes are delivered, the search is abandoned and
+     * the connection is closed. If the consumer has been started with {@link #start()}, we
+     * wait for its thread to end.
+     *
+     * @throws InterruptedException If the thread has been interrupted while waiting
+     */
+    public void stop() throws InterruptedException
+    {
+        Thread consumerThread;
+
+        synchronized ( this )
+        {
+            running = false;
+            stopLatch.countDown();
+            consumerThread = thread;
+            thread = null;
+        }
+
+        if ( ( consumerThread != null ) && ( consumerThread != Thread.currentThread() ) )
+        {
+            consumerThread.join();
+        }
+    }
+
+
+    /**
+     * @return true if the consumer is running
+     */
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+
+    /**
+     * @return true if the refresh phase of the current session is done
+     */
+    public boolean isRefreshDone()
+    {
+        return refreshDone;
+    }
+
+
+    /**
+     * @return The number of changes delivered to the listener
+     */
+    public long getChangeCount()
+    {
+        return changeCount.get();
+    }
+
+
+    /**
+     * @return The number of reconnections
+     */
+    public long getReconnectCount()
+    {
+        return reconnectCount.get();
+    }
+
+
+    /**
+     * Runs the sessions, reconnecting when needed, until the consumer is stopped
+     */
+    private void loop() throws InterruptedException
+    {
+        long delay = config.getReconnectDelay();
+
+        try
+        {
+            while ( running )
+            {
+                try
+                {
+                    if ( session() )
+                    {
+                        if ( ( config.getMode() != SynchronizationModeEnum.REFRESH_ONLY )
+                            || ( config.getRefreshInterval() <= 0 )
+                            || stopLatch.await( config.getRefreshInterval(), TimeUnit.MILLISECONDS ) )
+                        {
+                            break;
+                        }
+                    }
+
+                    delay = config.getReconnectDelay();
+                }
+                catch ( InterruptedException ie )
+                {
+                    throw ie;
+                }
+                catch ( Exception e )
+                {
+                    if ( !running )
+                    {
+                        break;
+                    }
+
+                    reconnectCount.incrementAndGet();
+
+                    if ( LOG.isWarnEnabled() )
+                    {
+                        LOG.warn( I18n.msg( I18n.MSG_04180_SYNCREPL_RECONNECTING, config.getBaseDn(), e.getMessage(),
+                            delay ) );
+                    }
+
+                    if ( stopLatch.await( delay, TimeUnit.MILLISECONDS ) )
+                    {
+                        break;
+                    }
+
+                    delay = Math.min( delay * 2, config.getMaxReconnectDelay() );
+                }
+            }
+        }
+        finally
+        {
+            running = false;
+        }
+    }
+
+
+    /**
+     * Runs a syncrepl search, from the last saved cookie.
+     *
+     * @return true if the synchronization is done, false if a new session must be started
+     * @throws Exception If the session has failed
+     */
+    private boolean session() throws Exception
+    {
+        LdapConnection connection = connectionFactory.newLdapConnection();
+
+        try
+        {
+            byte[] cookie = checkpointStore.load();
+
+            batch = new ArrayList<>();
+            presentUuids = new HashSet<>();
+            pendingCookie = cookie;
+            savedCookie = cookie;
+            refreshing = true;
+            refreshDone = false;
+
+            SearchFuture future = getAsyncConnection( connection ).searchAsync( newSearchRequest( cookie ) );
+
+            while ( running )
+            {
+                Response response = future.get( getPollDelay(), TimeUnit.MILLISECONDS );
+
+                if ( response == null )
+                {
+                    if ( future.isCancelled() || !connection.isConnected() )
+                    {
+                        throw new LdapException( I18n.err( I18n.ERR_04186_SYNCREPL_CONNECTION_LOST,
+                            config.getBaseDn() ) );
+                    }
+                }
+                else if ( response instanceof SearchResultEntry )
+                {
+                    entryReceived( ( SearchResultEntry ) response );
+                }
+                else if ( response instanceof SyncInfoValue )
+                {
+                    syncInfoReceived( ( SyncInfoValue ) response );
+                }
+                else if ( response instanceof SearchResultDone )
+                {
+                    return searchDone( ( SearchResultDone ) response );
+                }
+
+                // The references and the unknown intermediate responses are ignored
+                if ( !batch.isEmpty() && ( System.currentTimeMillis() - batchStart >= config.getBatchDelay() ) )
+                {
+                    flush();
+                }
+            }
+
+            // The consumer has been stopped
+            future.cancel( true );
+            flush();
+
+            return true;
+        }
+        finally
+        {
+            try
+            {
+                connection.close();
+            }
+            catch ( IOException ioe )
+            {
+                if ( LOG.isDebugEnabled() )
+                {
+                    LOG.debug( ioe.getMessage(), ioe );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Creates the syncrepl SearchRequest
+     */
+    private SearchRequest newSearchRequest( byte[] cookie ) throws LdapException
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setBase( config.getBaseDn() );
+        searchRequest.setFilter( config.getFilter() );
+        searchRequest.setScope( config.getScope() );
+        searchRequest.addAttributes( config.getAttributes() );
+        searchRequest.setDerefAliases( config.getDerefAliases() );
+
+        SyncRequestValue syncRequest = new SyncRequestValueImpl( true );
+        syncRequest.setMode( config.getMode() );
+        syncRequest.setCookie( cookie );
+        searchRequest.addControl( syncRequest );
+
+        return searchRequest;
+    }
+
+
+    /**
+     * Gets the LdapAsyncConnection from a connection created by the factory
+     */
+    private static LdapAsyncConnection getAsyncConnection( LdapConnection connection )
+    {
+        LdapConnection unwrapped = connection;
+
+        while ( unwrapped instanceof LdapConnectionWrapper )
+        {
+            unwrapped = ( ( LdapConnectionWrapper ) unwrapped ).wrapped();
+        }
+
+        if ( unwrapped instanceof LdapAsyncConnection )
+        {
+            return ( LdapAsyncConnection ) unwrapped;
+        }
+
+        throw new IllegalArgumentException( I18n.err( I18n.ERR_04184_SYNCREPL_NOT_AN_ASYNC_CONNECTION,
+            connection.getClass().getName() ) );
+    }
+
+
+    /**
+     * @return The time to wait for the next message : at most the time left before the
+     * batch must be delivered, if there is a batch
+     */
+    private long getPollDelay()
+    {
+        if ( batch.isEmpty() )
+        {
+            return IDLE_POLL_DELAY;
+        }
+
+        long left = batchStart + config.getBatchDelay() - System.currentTimeMillis();
+
+        return Math.max( 1L, Math.min( left, IDLE_POLL_DELAY ) );
+    }
+
+
+    /**
+     * Processes an entry, and its SyncState control
+     */
+    private void entryReceived( SearchResultEntry searchResultEntry ) throws Exception
+    {
+        SyncStateValue syncState = ( SyncStateValue ) searchResultEntry.getControl( SyncStateValue.OID );
+
+        if ( syncState == null )
+        {
+            // Not a syncrepl entry
+            return;
+        }
+
+        UUID entryUuid = toUuid( syncState.getEntryUUID() );
+        Entry entry = searchResultEntry.getEntry();
+        SyncStateTypeEnum type = syncState.getSyncStateType();
+
+        switch ( type )
+        {
+            case PRESENT:
+                if ( refreshing )
+                {
+                    presentUuids.add( entryUuid );
+                }
+
+                break;
+
+            case DELETE:
+                addChange( new SyncReplChange( type, entryUuid, entry.getDn(), null ) );
+                break;
+
+            default:
+                if ( refreshing )
+                {
+                    presentUuids.add( entryUuid );
+                }
+
+                addChange( new SyncReplChange( type, entryUuid, entry.getDn(), entry ) );
+                break;
+        }
+
+        setCookie( syncState.getCookie() );
+    }
+
+
+    /**
+     * Processes a SyncInfo intermediate response
+     */
+    private void syncInfoReceived( SyncInfoValue syncInfo ) throws Exception
+    {
+        switch ( syncInfo.getSyncInfoValueType() )
+        {
+            case NEW_COOKIE:
+                setCookie( syncInfo.getCookie() );
+
+                if ( !refreshing && batch.isEmpty() )
+                {
+                    checkpoint();
+                }
+
+                break;
+
+            case REFRESH_DELETE:
+            case REFRESH_PRESENT:
+                setCookie( syncInfo.getCookie() );
+
+                if ( refreshing )
+                {
+                    endPhase( syncInfo.getSyncInfoValueType() == SynchronizationInfoEnum.REFRESH_PRESENT );
+
+                    if ( syncInfo.isRefreshDone() )
+                    {
+                        refreshDone();
+                    }
+                }
+
+                break;
+
+            case SYNC_ID_SET:
+                if ( syncInfo.getSyncUUIDs() != null )
+                {
+                    for ( byte[] syncUuid : syncInfo.getSyncUUIDs() )
+                    {
+                        if ( syncInfo.isRefreshDeletes() )
+                        {
+                            addChange( new SyncReplChange( SyncStateTypeEnum.DELETE, toUuid( syncUuid ), null, null ) );
+                        }
+                        else if ( refreshing )
+                        {
+                            presentUuids.add( toUuid( syncUuid ) );
+                        }
+                    }
+                }
+
+                // The cookie covers all the UUIDs : it can't be saved before they are
+                // all delivered, even if the batch is flushed in the middle of the set
+                setCookie( syncInfo.getCookie() );
+
+                if ( !refreshing && batch.isEmpty() )
+                {
+                    checkpoint();
+                }
+
+                break;
+
+            default:
+                setCookie( syncInfo.getCookie() );
+                break;
+        }
+    }
+
+
+    /**
+     * Processes the SearchResultDone
+     *
+     * @return true if the synchronization is done, false if a new session must be started
+     */
+    private boolean searchDone( SearchResultDone searchResultDone ) throws Exception
+    {
+        LdapResult ldapResult = searchResultDone.getLdapResult();
+
+        if ( ldapResult.getResultCode() == ResultCodeEnum.E_SYNC_REFRESH_REQUIRED )
+        {
+            // The cookie is too old : start again from scratch
+            if ( LOG.isInfoEnabled() )
+            {
+                LOG.info( I18n.msg( I18n.MSG_04181_SYNCREPL_REFRESH_REQUIRED, config.getBaseDn() ) );
+            }
+
+            batch.clear();
+            presentUuids.clear();
+            checkpointStore.save( null );
+            listener.reload();
+
+            return false;
+        }
+
+        if ( ldapResult.getResultCode() != ResultCodeEnum.SUCCESS )
+        {
+            throw new LdapOperationException( ldapResult.getResultCode(), I18n.err(
+                I18n.ERR_04185_SYNCREPL_SEARCH_FAILED, config.getBaseDn(), ldapResult.getDiagnosticMessage() ) );
+        }
+
+        SyncDoneValue syncDone = ( SyncDoneValue ) searchResultDone.getControl( SyncDoneValue.OID );
+
+        if ( syncDone != null )
+        {
+            setCookie( syncDone.getCookie() );
+        }
+
+        if ( refreshing )
+        {
+            // Without the control, we don't know which entries are present
+            endPhase( ( syncDone != null ) && !syncDone.isRefreshDeletes() );
+            refreshDone();
+        }
+        else
+        {
+            flush();
+        }
+
+        // In refreshAndPersist mode, the server has ended the persist phase : start a new session
+        return config.getMode() == SynchronizationModeEnum.REFRESH_ONLY;
+    }
+
+
+    /**
+     * Ends a present or delete phase : the pending changes are delivered, then
+     * the absent entries are removed if it was a present phase, and the cookie
+     * is saved.
+     */
+    private void endPhase( boolean presentPhase ) throws Exception
+    {
+        flush();
+
+        if ( presentPhase )
+        {
+            listener.retainOnly( Collections.unmodifiableSet( presentUuids ) );
+        }
+
+        presentUuids = new HashSet<>();
+        checkpoint();
+    }
+
+
+    /**
+     * Ends the refresh phase
+     */
+    private void refreshDone()
+    {
+        refreshing = false;
+        refreshDone = true;
+
+        if ( LOG.isInfoEnabled() )
+        {
+            LOG.info( I18n.msg( I18n.MSG_04182_SYNCREPL_REFRESH_DONE, config.getBaseDn() ) );
+        }
+    }
+
+
+    /**
+     * Adds a change to the batch, delivering the batch if it's full
+     */
+    private void addChange( SyncReplChange change ) throws Exception
+    {
+        if ( batch.isEmpty() )
+        {
+            batchStart = System.currentTimeMillis();
+        }
+
+        batch.add( change );
+
+        if ( batch.size() >= config.getBatchSize() )
+        {
+            flush();
+        }
+    }
+
+
+    /**
+     * Delivers the pending changes. The cookie is saved, unless we are in the
+     * refresh phase, where it's only saved at the end of each phase.
+     */
+    private void flush() throws Exception
+    {
+        if ( !batch.isEmpty() )
+        {
+            List<SyncReplChange> changes = batch;
+            batch = new ArrayList<>();
+            listener.apply( changes );
+            changeCount.addAndGet( changes.size() );
+        }
+
+        if ( !refreshing )
+        {
+            checkpoint();
+        }
+    }
+
+
+    /**
+     * Keeps the last received cookie
+     */
+    private void setCookie( byte[] cookie )
+    {
+        if ( cookie != null )
+        {
+            pendingCookie = cookie;
+        }
+    }
+
+
+    /**
+     * Saves the last received cookie, if it has changed
+     */
+    private void checkpoint() throws IOException
+    {
+        if ( ( pendingCookie != null ) && !Arrays.equals( pendingCookie, savedCookie ) )
+        {
+            checkpointStore.save( pendingCookie );
+            savedCookie = pendingCookie;
+        }
+    }
+
+
+    /**
+     * Converts a 16 bytes entryUUID
+     */
+    private static UUID toUuid( byte[] bytes )
+    {
+        if ( ( bytes == null ) || ( bytes.length != 16 ) )
+        {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap( bytes );
+
+        return new UUID( buffer.getLong(), buffer.getLong() );
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.syncrepl;
+
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+
+/**
+ * The application callbacks of a {@link SyncReplConsumer}. They are all called by the
+ * consumer thread, in the order the changes were received. If a callback throws an
+ * exception, the cookie is not saved, and the consumer reconnects and resumes from
+ * the last saved cookie : the changes may then be delivered again, so applying them
+ * must be idempotent.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface SyncReplListener
+{
+    /**
+     * Applies a batch of changes.
+     *
+     * @param changes The changes, in the order they were received
+     * @throws Exception If the changes can't be applied
+     */
+    void apply( List<SyncReplChange> changes ) throws Exception;
+
+
+    /**
+     * Called at the end of a present phase : all the local entries which entryUUID
+     * is not in the given set have been deleted on the server, and must be removed.
+     *
+     * @param presentUuids The entryUUIDs of the entries still present on the server
+     * @throws Exception If the absent entries can't be removed
+     */
+    void retainOnly( Set<UUID> presentUuids ) throws Exception;
+
+
+    /**
+     * Called when the server can't resume the synchronization from the saved cookie : all
+     * the local entries must be removed, they will all be received again.
+     *
+     * @throws Exception If the local entries can't be removed
+     */
+    void reload() throws Exception;
+}
@@ -22,6 +22,7 @@ package org.apache.directory.ldap.client.template;
 
 import java.util.List;
 
+import org.apache.directory.api.ldap.codec.api.PreparedSearchRequest;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.message.AddRequest;
 import org.apache.directory.api.ldap.model.message.AddResponse;
@@ -445,6 +446,32 @@ public interface LdapConnectionOperations
         EntryMapper<T> entryMapper );
 
 
+    /**
+     * Prepares a search, parsing the <code>filterTemplate</code> and encoding
+     * the <code>searchRequest</code> once. See
+     * {@link org.apache.directory.ldap.client.api.LdapConnection#prepareSearch(SearchRequest, String)}.
+     *
+     * @param searchRequest The search request, its filter is ignored
+     * @param filterTemplate The filter template, like <code>(&amp;(objectClass=person)(uid={0}))</code>
+     * @return The prepared search request
+     */
+    PreparedSearchRequest prepareSearch( SearchRequest searchRequest, String filterTemplate );
+
+
+    /**
+     * Searches for the entries matching the supplied prepared search request
+     * and values, feeding the result into the <code>entryMapper</code>.
+     *
+     * @param preparedSearchRequest The prepared search request
+     * @param entryMapper The mapper
+     * @param values The values replacing the place-holders, in their order
+     * @param <T> The type of the mapped entry
+     * @return The mapped entries
+     */
+    <T> List<T> search( PreparedSearchRequest preparedSearchRequest, EntryMapper<T> entryMapper,
+        String... values );
+
+
     /**
      * Searches for the first entry matching the supplied criteria, feeding the 
      * result into the <code>entryMapper</code>.
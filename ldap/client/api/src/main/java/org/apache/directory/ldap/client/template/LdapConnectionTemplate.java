@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.codec.api.PreparedSearchRequest;
 import org.apache.directory.api.ldap.extras.controls.ppolicy.PasswordPolicyResponse;
 import org.apache.directory.api.ldap.extras.controls.ppolicy.PasswordPolicyResponseImpl;
 import org.apache.directory.api.ldap.model.entry.Attribute;
@@ -844,6 +845,62 @@ public class LdapConnectionTemplate implements LdapConnectionOperations, ModelFa
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedSearchRequest prepareSearch( SearchRequest searchRequest, String filterTemplate )
+    {
+        LdapConnection connection = null;
+        try
+        {
+            connection = connectionPool.getConnection();
+
+            return connection.prepareSearch( searchRequest, filterTemplate );
+        }
+        catch ( LdapException e )
+        {
+            throw new LdapRuntimeException( e );
+        }
+        finally
+        {
+            returnLdapConnection( connection );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> List<T> search( PreparedSearchRequest preparedSearchRequest, EntryMapper<T> entryMapper,
+        String... values )
+    {
+        List<T> entries = new ArrayList<>();
+
+        LdapConnection connection = null;
+        try
+        {
+            connection = connectionPool.getConnection();
+
+            for ( Entry entry : new EntryCursorImpl( connection.search( preparedSearchRequest, values ) ) )
+            {
+                entries.add( entryMapper.map( entry ) );
+            }
+        }
+        catch ( LdapException e )
+        {
+            throw new LdapRuntimeException( e );
+        }
+        finally
+        {
+            returnLdapConnection( connection );
+        }
+
+        return entries;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,237 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * Tests the LdapClientTrustStoreManager class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapClientTrustStoreManagerTest
+{
+    private static final char[] PASSWORD = "secret".toCharArray();
+
+    /** The self signed certificate of the TLS stub server */
+    private static X509Certificate[] chain;
+
+    /** A certificate which has not signed the TLS stub server certificate */
+    private static X509Certificate other;
+
+    @TempDir
+    File tmpDir;
+
+
+    @BeforeAll
+    public static void loadCertificate() throws Exception
+    {
+        KeyStore keyStore = KeyStore.getInstance( "PKCS12" );
+
+        try ( InputStream in = new FileInputStream( "src/test/resources/tls-stub.p12" ) )
+        {
+            keyStore.load( in, PASSWORD );
+        }
+
+        chain = new X509Certificate[]
+            { ( X509Certificate ) keyStore.getCertificate( "localhost" ) };
+
+        // Any of the JRE CA certificates
+        KeyStore cacerts = KeyStore.getInstance( KeyStore.getDefaultType() );
+
+        try ( InputStream in = new FileInputStream( System.getProperty( "java.home" ) + "/lib/security/cacerts" ) )
+        {
+            cacerts.load( in, null );
+        }
+
+        other = ( X509Certificate ) cacerts.getCertificate( cacerts.aliases().nextElement() );
+    }
+
+
+    /**
+     * Writes a trust store, containing the given certificates
+     */
+    private File writeTrustStore( String name, X509Certificate... certificates ) throws Exception
+    {
+        KeyStore trustStore = KeyStore.getInstance( "PKCS12" );
+        trustStore.load( null, PASSWORD );
+
+        for ( int i = 0; i < certificates.length; i++ )
+        {
+            trustStore.setCertificateEntry( "cert" + i, certificates[i] );
+        }
+
+        File file = new File( tmpDir, name );
+
+        try ( OutputStream out = new FileOutputStream( file ) )
+        {
+            trustStore.store( out, PASSWORD );
+        }
+
+        return file;
+    }
+
+
+    @Test
+    public void testTrustedChain() throws Exception
+    {
+        File file = writeTrustStore( "trusted.p12", chain[0] );
+        LdapClientTrustStoreManager trustManager = new LdapClientTrustStoreManager( file.getPath(), PASSWORD,
+            "PKCS12", true );
+
+        trustManager.checkServerTrusted( chain, "RSA" );
+
+        // Validated again, from the cache this time
+        trustManager.checkServerTrusted( chain, "RSA" );
+        trustManager.checkClientTrusted( chain, "RSA" );
+
+        assertEquals( 1, trustManager.getAcceptedIssuers().length );
+        assertEquals( chain[0], trustManager.getAcceptedIssuers()[0] );
+    }
+
+
+    @Test
+    public void testUntrustedChain() throws Exception
+    {
+        File file = writeTrustStore( "untrusted.p12", other );
+        LdapClientTrustStoreManager trustManager = new LdapClientTrustStoreManager( file.getPath(), PASSWORD,
+            "PKCS12", false );
+
+        assertThrows( CertificateException.class, () -> trustManager.checkServerTrusted( chain, "RSA" ) );
+
+        // A rejected chain is never cached
+        assertThrows( CertificateException.class, () -> trustManager.checkServerTrusted( chain, "RSA" ) );
+        assertEquals( other, trustManager.getAcceptedIssuers()[0] );
+    }
+
+
+    @Test
+    public void testMissingTrustStore() throws Exception
+    {
+        LdapClientTrustStoreManager trustManager = new LdapClientTrustStoreManager(
+            new File( tmpDir, "missing.p12" ).getPath(), PASSWORD, "PKCS12", false );
+
+        assertThrows( CertificateException.class, () -> trustManager.checkServerTrusted( chain, "RSA" ) );
+        assertEquals( 0, trustManager.getAcceptedIssuers().length );
+    }
+
+
+    @Test
+    public void testReload() throws Exception
+    {
+        File file = writeTrustStore( "reloaded.p12", other );
+        LdapClientTrustStoreManager trustManager = new LdapClientTrustStoreManager( file.getPath(), PASSWORD,
+            "PKCS12", false );
+        trustManager.setReloadCheckInterval( 0L );
+
+        assertThrows( CertificateException.class, () -> trustManager.checkServerTrusted( chain, "RSA" ) );
+
+        // The certificate is added to the trust store : the file is loaded again
+        long lastModified = file.lastModified();
+        writeTrustStore( "reloaded.p12", other, chain[0] );
+        file.setLastModified( lastModified + 2000L );
+
+        trustManager.checkServerTrusted( chain, "RSA" );
+        assertEquals( 2, trustManager.getAcceptedIssuers().length );
+
+        // The certificate is removed : the cached chain must not be used anymore
+        writeTrustStore( "reloaded.p12", other );
+        file.setLastModified( lastModified + 4000L );
+
+        assertThrows( CertificateException.class, () -> trustManager.checkServerTrusted( chain, "RSA" ) );
+    }
+
+
+    /**
+     * Measures the number of chains validated per second by concurrent TLS handshakes
+     */
+    @Test
+    @Disabled
+    public void testConcurrentValidationPerf() throws Exception
+    {
+        File file = writeTrustStore( "perf.p12", chain[0] );
+        LdapClientTrustStoreManager trustManager = new LdapClientTrustStoreManager( file.getPath(), PASSWORD,
+            "PKCS12", true );
+        int nbThreads = Runtime.getRuntime().availableProcessors();
+        int nbLoops = 1_000_000;
+
+        for ( int round = 0; round < 3; round++ )
+        {
+            AtomicLong failures = new AtomicLong();
+            List<Thread> threads = new ArrayList<>();
+
+            for ( int i = 0; i < nbThreads; i++ )
+            {
+                threads.add( new Thread( () ->
+                {
+                    for ( int j = 0; j < nbLoops; j++ )
+                    {
+                        try
+                        {
+                            trustManager.checkServerTrusted( chain, "RSA" );
+                        }
+                        catch ( CertificateException e )
+                        {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } ) );
+            }
+
+            long t0 = System.nanoTime();
+
+            for ( Thread thread : threads )
+            {
+                thread.start();
+            }
+
+            for ( Thread thread : threads )
+            {
+                thread.join();
+            }
+
+            long t1 = System.nanoTime();
+
+            assertEquals( 0, failures.get() );
+            System.out.println( nbThreads + " threads : " + ( nbThreads * nbLoops * 1_000_000_000L / ( t1 - t0 ) )
+                + " validations/s" );
+        }
+    }
+}
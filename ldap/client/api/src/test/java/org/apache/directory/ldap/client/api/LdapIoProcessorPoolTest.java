@@ -0,0 +1,190 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the LdapIoProcessorPool class, against a local LDAP stub.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapIoProcessorPoolTest
+{
+    private static LdapConnectionConfig createConfig( LdapServerStub server, LdapIoProcessorPool ioProcessorPool )
+    {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost( "localhost" );
+        config.setLdapPort( server.getPort() );
+        config.setIoProcessorPool( ioProcessorPool );
+
+        return config;
+    }
+
+
+    @Test
+    public void testSharedConnections() throws Exception
+    {
+        LdapApiService codec = LdapApiServiceFactory.getSingleton();
+        LdapServerStub server = new LdapServerStub( codec, null );
+        LdapIoProcessorPool ioProcessorPool = new LdapIoProcessorPool( 2 );
+
+        try
+        {
+            LdapConnectionConfig config = createConfig( server, ioProcessorPool );
+            List<LdapNetworkConnection> connections = new ArrayList<>();
+
+            for ( int i = 0; i < 10; i++ )
+            {
+                LdapNetworkConnection connection = new LdapNetworkConnection( config, codec );
+                connection.bind();
+                connections.add( connection );
+            }
+
+            for ( LdapNetworkConnection connection : connections )
+            {
+                assertTrue( connection.isAuthenticated() );
+            }
+
+            // Closing a connection does not close the other ones
+            connections.get( 0 ).close();
+            assertTrue( connections.get( 1 ).isConnected() );
+            connections.get( 1 ).bind();
+            assertTrue( connections.get( 1 ).isAuthenticated() );
+
+            for ( LdapNetworkConnection connection : connections.subList( 1, connections.size() ) )
+            {
+                connection.unBind();
+                connection.close();
+            }
+
+            // The pool must still be usable once the connections are closed
+            LdapNetworkConnection connection = new LdapNetworkConnection( config, codec );
+            connection.bind();
+            assertTrue( connection.isAuthenticated() );
+            connection.close();
+        }
+        finally
+        {
+            ioProcessorPool.close();
+            server.stop();
+        }
+    }
+
+
+    @Test
+    public void testClosedPool()
+    {
+        LdapIoProcessorPool ioProcessorPool = new LdapIoProcessorPool( 1 );
+        InetSocketAddress address = new InetSocketAddress( "localhost", 10389 );
+
+        assertFalse( ioProcessorPool.isClosed() );
+
+        ioProcessorPool.close();
+
+        assertTrue( ioProcessorPool.isClosed() );
+        assertThrows( IllegalStateException.class,
+            () -> ioProcessorPool.connect( address, new IoHandlerAdapter(), ( session, future ) -> { } ) );
+
+        // Closing twice is harmless
+        ioProcessorPool.close();
+    }
+
+
+    /**
+     * Measure the time needed to open and bind 1, 100 and 1000 connections, and the
+     * number of threads used, with and without a shared I/O processor pool. Enable
+     * it to get some numbers.
+     */
+    @Test
+    @Disabled
+    public void testScalingPerf() throws Exception
+    {
+        LdapApiService codec = LdapApiServiceFactory.getSingleton();
+        LdapServerStub server = new LdapServerStub( codec, null );
+
+        try
+        {
+            for ( int nbConnections : new int[] { 1, 100, 1000 } )
+            {
+                for ( boolean shared : new boolean[] { false, true } )
+                {
+                    LdapIoProcessorPool ioProcessorPool = shared ? new LdapIoProcessorPool() : null;
+                    LdapConnectionConfig config = createConfig( server, ioProcessorPool );
+                    List<LdapNetworkConnection> connections = new ArrayList<>( nbConnections );
+                    int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+                    long t0 = System.currentTimeMillis();
+
+                    for ( int i = 0; i < nbConnections; i++ )
+                    {
+                        LdapNetworkConnection connection = new LdapNetworkConnection( config, codec );
+                        connection.bind();
+                        connections.add( connection );
+                    }
+
+                    long t1 = System.currentTimeMillis();
+
+                    // Send a bind on each connection, as a request/response round trip
+                    for ( LdapNetworkConnection connection : connections )
+                    {
+                        connection.bind();
+                    }
+
+                    long t2 = System.currentTimeMillis();
+                    int threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+
+                    for ( LdapNetworkConnection connection : connections )
+                    {
+                        connection.close();
+                    }
+
+                    if ( ioProcessorPool != null )
+                    {
+                        ioProcessorPool.close();
+                    }
+
+                    System.out.println( nbConnections + " connections, " + ( shared ? "shared" : "dedicated" )
+                        + " I/O processors : connect + bind " + ( t1 - t0 ) + " ms, bind " + ( t2 - t1 )
+                        + " ms, " + threads + " new threads" );
+                }
+            }
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+}
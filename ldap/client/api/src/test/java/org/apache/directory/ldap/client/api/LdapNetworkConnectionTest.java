@@ -21,10 +21,19 @@ package org.apache.directory.ldap.client.api;
 
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.util.stream.Stream;
 
+import org.apache.directory.api.ldap.codec.api.PreparedSearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.ManageDsaIT;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -84,4 +93,24 @@ public class LdapNetworkConnectionTest
         }
     }
 
+
+    @Test
+    public void testPrepareSearchDoesNotModifyRequest() throws Exception
+    {
+        try ( LdapNetworkConnection ldapConnection = new LdapNetworkConnection( "localhost", 389 ) )
+        {
+            SearchRequest searchRequest = new SearchRequestImpl();
+            searchRequest.setBase( new Dn( "dc=example,dc=com" ) );
+            searchRequest.setScope( SearchScope.SUBTREE );
+            searchRequest.addAttributes( "cn" );
+            searchRequest.ignoreReferrals();
+
+            PreparedSearchRequest prepared = ldapConnection.prepareSearch( searchRequest, "(uid={0})" );
+
+            // The ManageDsaIT control is only added to the prepared request
+            assertFalse( searchRequest.hasControl( ManageDsaIT.OID ) );
+            assertTrue( prepared.newSearchRequest( "jdoe" ).hasControl( ManageDsaIT.OID ) );
+            assertEquals( "(uid=jdoe)", prepared.newSearchRequest( "jdoe" ).getFilter().toString() );
+        }
+    }
 }
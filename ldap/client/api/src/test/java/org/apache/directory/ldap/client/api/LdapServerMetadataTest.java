@@ -0,0 +1,301 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the LdapServerMetadata class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapServerMetadataTest
+{
+    /**
+     * A fake server, exposing a rootDSE and the minimal schema, and counting the requests
+     */
+    private static class MetadataServer
+    {
+        Entry schemaEntry;
+        AtomicInteger rootDseLookups = new AtomicInteger();
+        AtomicInteger downloads = new AtomicInteger();
+
+
+        MetadataServer() throws Exception
+        {
+            try ( LdifReader ldifReader = new LdifReader( "src/test/resources/schema-minimal.ldif" ) )
+            {
+                schemaEntry = ldifReader.next().getEntry();
+            }
+
+            schemaEntry.add( SchemaConstants.MODIFY_TIMESTAMP_AT, "20240101000000Z" );
+        }
+
+
+        LdapConnection createConnection()
+        {
+            return ( LdapConnection ) Proxy.newProxyInstance( getClass().getClassLoader(),
+                new Class<?>[] { LdapConnection.class }, ( proxy, method, args ) ->
+                {
+                    switch ( method.getName() )
+                    {
+                        case "lookup":
+                            return lookup( ( Dn ) args[0], ( String[] ) args[1] );
+
+                        case "isConnected":
+                        case "isAuthenticated":
+                            return Boolean.TRUE;
+
+                        default:
+                            return null;
+                    }
+                } );
+        }
+
+
+        LdapServerStub createStub() throws Exception
+        {
+            LdapServerStub stub = new LdapServerStub( LdapApiServiceFactory.getSingleton(), null );
+
+            stub.setSearchHandler( ( session, searchRequest ) ->
+            {
+                SearchResultEntry searchResultEntry = new SearchResultEntryImpl( searchRequest.getMessageId() );
+                searchResultEntry.setEntry( lookup( searchRequest.getBase(),
+                    searchRequest.getAttributes().toArray( new String[0] ) ) );
+                session.write( searchResultEntry );
+
+                SearchResultDone searchResultDone = ( SearchResultDone ) searchRequest.getResultResponse();
+                searchResultDone.getLdapResult().setResultCode( ResultCodeEnum.SUCCESS );
+                session.write( searchResultDone );
+            } );
+
+            return stub;
+        }
+
+
+        void modifySchema( String modifyTimestamp ) throws Exception
+        {
+            schemaEntry.removeAttributes( SchemaConstants.MODIFY_TIMESTAMP_AT );
+            schemaEntry.add( SchemaConstants.MODIFY_TIMESTAMP_AT, modifyTimestamp );
+        }
+
+
+        private Entry lookup( Dn dn, String[] attributes ) throws Exception
+        {
+            if ( dn.isRootDse() )
+            {
+                rootDseLookups.incrementAndGet();
+
+                return new DefaultEntry( dn,
+                    SchemaConstants.SUBSCHEMA_SUBENTRY_AT + ": cn=schema",
+                    SchemaConstants.SUPPORTED_CONTROL_AT + ": 1.2.840.113556.1.4.319",
+                    SchemaConstants.SUPPORTED_CONTROL_AT + ": 2.16.840.1.113730.3.4.2" );
+            }
+
+            if ( !dn.equals( schemaEntry.getDn() ) )
+            {
+                return new DefaultEntry( dn,
+                    "objectClass: person",
+                    "cn: test",
+                    "sn: test" );
+            }
+
+            List<String> attributeIds = Arrays.asList( attributes );
+
+            if ( attributeIds.contains( SchemaConstants.ATTRIBUTE_TYPES_AT ) )
+            {
+                downloads.incrementAndGet();
+
+                return schemaEntry;
+            }
+
+            Entry stamps = new DefaultEntry( dn );
+            stamps.add( schemaEntry.get( SchemaConstants.MODIFY_TIMESTAMP_AT ) );
+
+            return stamps;
+        }
+    }
+
+
+    @Test
+    public void testSharedRootDse() throws Exception
+    {
+        MetadataServer server = new MetadataServer();
+        LdapServerMetadata metadata = new LdapServerMetadata();
+
+        List<String> controls = metadata.getSupportedControls( server.createConnection() );
+        assertEquals( Arrays.asList( "1.2.840.113556.1.4.319", "2.16.840.1.113730.3.4.2" ), controls );
+
+        // The other connections use the same rootDSE
+        assertSame( controls, metadata.getSupportedControls( server.createConnection() ) );
+        assertNotNull( metadata.getRootDse( server.createConnection() ) );
+        assertEquals( 1, server.rootDseLookups.get() );
+    }
+
+
+    @Test
+    public void testSharedSchema() throws Exception
+    {
+        MetadataServer server = new MetadataServer();
+        LdapServerMetadata metadata = new LdapServerMetadata( 100 );
+
+        assertNull( metadata.getSchemaManager() );
+
+        SchemaManager schemaManager = metadata.loadSchema( server.createConnection(), false );
+        assertNotNull( schemaManager.getObjectClassRegistry().lookup( "person" ) );
+        assertEquals( 1, server.downloads.get() );
+
+        // The other connections use the same SchemaManager and DnFactory
+        assertSame( schemaManager, metadata.loadSchema( server.createConnection(), false ) );
+        assertSame( schemaManager, metadata.getSchemaManager() );
+        assertEquals( 1, server.downloads.get() );
+        assertNotNull( metadata.getDnFactory( schemaManager ) );
+        assertSame( metadata.getDnFactory( schemaManager ), metadata.getDnFactory( schemaManager ) );
+        assertTrue( metadata.getDnFactory( schemaManager ).create( "cn=test" ).isSchemaAware() );
+        assertSame( metadata.getDnFactory( schemaManager ).create( "cn=test" ),
+            metadata.getDnFactory( schemaManager ).create( "cn=test" ) );
+    }
+
+
+    @Test
+    public void testRefresh() throws Exception
+    {
+        MetadataServer server = new MetadataServer();
+        LdapServerMetadata metadata = new LdapServerMetadata();
+
+        // Nothing to reload yet
+        assertFalse( metadata.refresh( server.createConnection() ) );
+
+        SchemaManager schemaManager = metadata.loadSchema( server.createConnection(), false );
+
+        // The schema hasn't changed
+        assertFalse( metadata.refresh( server.createConnection() ) );
+        assertSame( schemaManager, metadata.getSchemaManager() );
+        assertEquals( 1, server.downloads.get() );
+
+        // The schema has been modified : it's loaded again
+        server.modifySchema( "20240202000000Z" );
+
+        assertTrue( metadata.refresh( server.createConnection() ) );
+        assertEquals( 2, server.downloads.get() );
+
+        SchemaManager reloaded = metadata.getSchemaManager();
+        assertNotSame( schemaManager, reloaded );
+        assertSame( reloaded, metadata.loadSchema( server.createConnection(), false ) );
+
+        // The previous SchemaManager is not shared anymore
+        assertNull( metadata.getDnFactory( schemaManager ) );
+        assertNotNull( metadata.getDnFactory( reloaded ) );
+
+        assertFalse( metadata.refresh( server.createConnection() ) );
+        assertEquals( 2, server.downloads.get() );
+    }
+
+
+    @Test
+    public void testSchemaModeMismatch() throws Exception
+    {
+        MetadataServer server = new MetadataServer();
+        LdapServerMetadata metadata = new LdapServerMetadata();
+
+        SchemaManager schemaManager = metadata.loadSchema( server.createConnection(), true );
+
+        // The shared SchemaManager is relaxed, it can't be used as a strict one
+        assertThrows( LdapException.class, () -> metadata.loadSchema( server.createConnection(), false ) );
+        assertSame( schemaManager, metadata.loadSchema( server.createConnection(), true ) );
+        assertEquals( 1, server.downloads.get() );
+    }
+
+
+    @Test
+    public void testConnectionsFollowRefresh() throws Exception
+    {
+        MetadataServer server = new MetadataServer();
+        LdapServerStub stub = server.createStub();
+        LdapServerMetadata metadata = new LdapServerMetadata();
+
+        try ( LdapNetworkConnection connection = new LdapNetworkConnection( "localhost", stub.getPort() );
+            LdapNetworkConnection own = new LdapNetworkConnection( "localhost", stub.getPort() ) )
+        {
+            connection.setServerMetadata( metadata );
+            connection.connect();
+            connection.loadSchema();
+
+            SchemaManager schemaManager = connection.getSchemaManager();
+            assertSame( metadata.getSchemaManager(), schemaManager );
+
+            // The shared SchemaManager can't be modified
+            assertThrows( LdapException.class, () -> connection.addSchema( new File( "test.schema" ) ) );
+
+            // A connection loading its own SchemaManager does not follow the shared one
+            own.setServerMetadata( metadata );
+            own.connect();
+            own.loadSchema( new DefaultSchemaLoader( own ) );
+            SchemaManager ownSchemaManager = own.getSchemaManager();
+            assertNotSame( schemaManager, ownSchemaManager );
+
+            // The schema is modified and the metadata refreshed : the connection uses the new
+            // SchemaManager on its next request
+            server.modifySchema( "20240202000000Z" );
+            assertTrue( metadata.refresh( server.createConnection() ) );
+
+            SchemaManager reloaded = metadata.getSchemaManager();
+            assertNotSame( schemaManager, reloaded );
+
+            Entry entry = connection.lookup( "cn=test,dc=example,dc=com" );
+            assertTrue( entry.isSchemaAware() );
+            assertSame( reloaded, connection.getSchemaManager() );
+            assertSame( ownSchemaManager, own.getSchemaManager() );
+        }
+        finally
+        {
+            stub.stop();
+        }
+    }
+}
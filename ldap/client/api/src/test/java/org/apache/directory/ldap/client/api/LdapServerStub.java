@@ -0,0 +1,201 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapDecoder;
+import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
+import org.apache.directory.api.ldap.extras.extended.startTls.StartTlsRequest;
+import org.apache.directory.api.ldap.model.message.BindRequest;
+import org.apache.directory.api.ldap.model.message.BindResponse;
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.Message;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.UnbindRequest;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.ssl.SslFilter;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+
+
+/**
+ * A local LDAP server stub, which accepts any BindRequest. It can be secured using
+ * a self signed certificate for localhost, with LDAPS or StartTLS. The SearchRequests
+ * are given to a {@link SearchHandler}, which scripts the responses.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapServerStub
+{
+    /** The acceptor */
+    private final NioSocketAcceptor acceptor;
+
+    /** The SearchRequests handler */
+    private volatile SearchHandler searchHandler;
+
+    /** The SSLContext used for StartTLS, null if StartTLS is not supported */
+    private volatile SSLContext startTlsContext;
+
+
+    /**
+     * Scripts the responses to a SearchRequest
+     */
+    public interface SearchHandler
+    {
+        /**
+         * Handles a SearchRequest, writing the responses to the session
+         *
+         * @param session The client session
+         * @param searchRequest The received SearchRequest
+         * @throws Exception If the responses can't be created
+         */
+        void search( IoSession session, SearchRequest searchRequest ) throws Exception;
+    }
+
+
+    /**
+     * Starts a new stub on a random port
+     *
+     * @param codec The LDAP API Service to use
+     * @param sslContext The SSLContext to use for LDAPS, or null
+     * @throws Exception If the stub can't be started
+     */
+    public LdapServerStub( LdapApiService codec, SSLContext sslContext ) throws Exception
+    {
+        acceptor = new NioSocketAcceptor();
+        acceptor.setBacklog( 1024 );
+
+        if ( sslContext != null )
+        {
+            acceptor.getFilterChain().addLast( "sslFilter", new SslFilter( sslContext ) );
+        }
+
+        acceptor.getFilterChain().addLast( "ldapCodec", new ProtocolCodecFilter( codec.getProtocolCodecFactory() ) );
+        acceptor.setHandler( new IoHandlerAdapter()
+        {
+            @Override
+            public void sessionCreated( IoSession session )
+            {
+                session.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR, new LdapMessageContainer<Message>( codec ) );
+            }
+
+
+            @Override
+            public void messageReceived( IoSession session, Object message ) throws Exception
+            {
+                if ( message instanceof BindRequest )
+                {
+                    BindResponse response = ( BindResponse ) ( ( BindRequest ) message ).getResultResponse();
+                    response.getLdapResult().setResultCode( ResultCodeEnum.SUCCESS );
+                    session.write( response );
+                }
+                else if ( ( message instanceof ExtendedRequest ) && ( startTlsContext != null )
+                    && StartTlsRequest.EXTENSION_OID.equals( ( ( ExtendedRequest ) message ).getRequestName() ) )
+                {
+                    // The response is sent in clear, then the session is secured
+                    ExtendedResponse response = ( ExtendedResponse ) ( ( ExtendedRequest ) message ).getResultResponse();
+                    response.getLdapResult().setResultCode( ResultCodeEnum.SUCCESS );
+                    session.write( response );
+                    session.getFilterChain().addFirst( "sslFilter", new SslFilter( startTlsContext ) );
+                }
+                else if ( ( message instanceof SearchRequest ) && ( searchHandler != null ) )
+                {
+                    searchHandler.search( session, ( SearchRequest ) message );
+                }
+                else if ( message instanceof UnbindRequest )
+                {
+                    session.closeNow();
+                }
+            }
+        } );
+
+        acceptor.bind( new InetSocketAddress( "localhost", 0 ) );
+    }
+
+
+    /**
+     * @return A SSLContext using the self signed certificate for localhost
+     * @throws Exception If the SSLContext can't be created
+     */
+    public static SSLContext createServerSslContext() throws Exception
+    {
+        KeyStore keyStore = KeyStore.getInstance( "PKCS12" );
+
+        try ( InputStream in = LdapServerStub.class.getResourceAsStream( "/tls-stub.p12" ) )
+        {
+            keyStore.load( in, "secret".toCharArray() );
+        }
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance( KeyManagerFactory.getDefaultAlgorithm() );
+        keyManagerFactory.init( keyStore, "secret".toCharArray() );
+
+        SSLContext sslContext = SSLContext.getInstance( "TLS" );
+        sslContext.init( keyManagerFactory.getKeyManagers(), null, null );
+
+        return sslContext;
+    }
+
+
+    /**
+     * @param searchHandler The SearchRequests handler
+     */
+    public void setSearchHandler( SearchHandler searchHandler )
+    {
+        this.searchHandler = searchHandler;
+    }
+
+
+    /**
+     * @param startTlsContext The SSLContext to use for StartTLS, or null to refuse it
+     */
+    public void setStartTlsContext( SSLContext startTlsContext )
+    {
+        this.startTlsContext = startTlsContext;
+    }
+
+
+    /**
+     * @return The port the stub is listening on
+     */
+    public int getPort()
+    {
+        return acceptor.getLocalAddress().getPort();
+    }
+
+
+    /**
+     * Stops the stub
+     */
+    public void stop()
+    {
+        acceptor.dispose();
+    }
+}
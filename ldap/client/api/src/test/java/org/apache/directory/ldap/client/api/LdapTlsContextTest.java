@@ -0,0 +1,223 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the LdapTlsContext class, against a local LDAPS stub.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapTlsContextTest
+{
+    private static LdapConnectionConfig createConfig( LdapServerStub server )
+    {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost( "localhost" );
+        config.setLdapPort( server.getPort() );
+        config.setUseSsl( true );
+        config.setTrustManagers( new NoVerificationTrustManager() );
+        config.setEnabledProtocols( "TLSv1.2" );
+
+        return config;
+    }
+
+
+    private static void bindAndClose( LdapConnectionConfig config, LdapApiService codec ) throws Exception
+    {
+        try ( LdapNetworkConnection connection = new LdapNetworkConnection( config, codec ) )
+        {
+            if ( !config.isUseSsl() )
+            {
+                connection.startTls();
+            }
+
+            connection.bind();
+            assertTrue( connection.isAuthenticated() );
+            assertTrue( connection.isSecured() );
+        }
+    }
+
+
+    @Test
+    public void testResumedSessions() throws Exception
+    {
+        LdapApiService codec = LdapApiServiceFactory.getSingleton();
+        LdapServerStub server = new LdapServerStub( codec, LdapServerStub.createServerSslContext() );
+
+        try
+        {
+            LdapConnectionConfig config = createConfig( server );
+            LdapTlsContext tlsContext = new LdapTlsContext( config );
+            config.setTlsContext( tlsContext );
+
+            for ( int i = 0; i < 5; i++ )
+            {
+                bindAndClose( config, codec );
+            }
+
+            // Only the first connection does a full handshake
+            assertEquals( 1L, tlsContext.getFullHandshakeCount() );
+            assertEquals( 4L, tlsContext.getResumedHandshakeCount() );
+            assertEquals( 0.8d, tlsContext.getResumptionRate(), 0.0001d );
+
+            tlsContext.resetStatistics();
+
+            assertEquals( 0L, tlsContext.getFullHandshakeCount() );
+            assertEquals( 0d, tlsContext.getResumptionRate(), 0.0001d );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+
+    @Test
+    public void testResumedTls13Sessions() throws Exception
+    {
+        LdapApiService codec = LdapApiServiceFactory.getSingleton();
+        LdapServerStub server = new LdapServerStub( codec, LdapServerStub.createServerSslContext() );
+
+        try
+        {
+            LdapConnectionConfig config = createConfig( server );
+            config.setEnabledProtocols( "TLSv1.3" );
+            LdapTlsContext tlsContext = new LdapTlsContext( config );
+            config.setTlsContext( tlsContext );
+
+            for ( int i = 0; i < 5; i++ )
+            {
+                bindAndClose( config, codec );
+            }
+
+            assertEquals( 1L, tlsContext.getFullHandshakeCount() );
+            assertEquals( 4L, tlsContext.getResumedHandshakeCount() );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+
+    @Test
+    public void testResumedStartTlsSessions() throws Exception
+    {
+        LdapApiService codec = LdapApiServiceFactory.getSingleton();
+        LdapServerStub server = new LdapServerStub( codec, null );
+        server.setStartTlsContext( LdapServerStub.createServerSslContext() );
+
+        try
+        {
+            LdapConnectionConfig config = createConfig( server );
+            config.setUseSsl( false );
+            LdapTlsContext tlsContext = new LdapTlsContext( config );
+            config.setTlsContext( tlsContext );
+
+            for ( int i = 0; i < 5; i++ )
+            {
+                bindAndClose( config, codec );
+            }
+
+            // StartTLS resumes the session established by the first connection too
+            assertEquals( 1L, tlsContext.getFullHandshakeCount() );
+            assertEquals( 4L, tlsContext.getResumedHandshakeCount() );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+
+    @Test
+    public void testWithoutTlsContext() throws Exception
+    {
+        LdapApiService codec = LdapApiServiceFactory.getSingleton();
+        LdapServerStub server = new LdapServerStub( codec, LdapServerStub.createServerSslContext() );
+
+        try
+        {
+            LdapConnectionConfig config = createConfig( server );
+
+            // Without a shared context, the connections still work
+            for ( int i = 0; i < 2; i++ )
+            {
+                bindAndClose( config, codec );
+            }
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+
+    /**
+     * Measure the time needed to open 1000 LDAPS connections, with and without a
+     * shared TLS context. Enable it to get some numbers.
+     */
+    @Test
+    @Disabled
+    public void testHandshakePerf() throws Exception
+    {
+        LdapApiService codec = LdapApiServiceFactory.getSingleton();
+        LdapServerStub server = new LdapServerStub( codec, LdapServerStub.createServerSslContext() );
+
+        try
+        {
+            for ( boolean shared : new boolean[] { false, true } )
+            {
+                LdapConnectionConfig config = createConfig( server );
+
+                if ( shared )
+                {
+                    config.setTlsContext( new LdapTlsContext( config ) );
+                }
+
+                long t0 = System.currentTimeMillis();
+
+                for ( int i = 0; i < 1000; i++ )
+                {
+                    bindAndClose( config, codec );
+                }
+
+                long t1 = System.currentTimeMillis();
+
+                System.out.println( "1000 LDAPS connections, " + ( shared ? "shared TLS context " + config.getTlsContext()
+                    : "no TLS context" ) + " : " + ( t1 - t0 ) + " ms" );
+            }
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+}
@@ -21,14 +21,25 @@
 package org.apache.directory.ldap.client.api;
 
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.Entry;
@@ -38,11 +49,13 @@ import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.ldif.anonymizer.SpillableValueMap;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 
 /**
@@ -409,4 +422,126 @@ public class LdifAnonymizerTest
             assertEquals( str.length(), value.length() );
         }
     }
+
+
+    @Test
+    public void testAnonymizeFileParallel( @TempDir Path tmpDir ) throws Exception
+    {
+        // A tiny hot set, to force the mappings to be read back from the disk
+        try ( SpillableValueMap valueMap = new SpillableValueMap( schemaManager, tmpDir, 10, 64 ) )
+        {
+            checkAnonymizeFileParallel( tmpDir, valueMap, 4, null );
+        }
+    }
+
+
+    @Test
+    public void testAnonymizeFileParallelInMemory( @TempDir Path tmpDir ) throws Exception
+    {
+        checkAnonymizeFileParallel( tmpDir, new ConcurrentHashMap<>(), 4, null );
+    }
+
+
+    @Test
+    public void testAnonymizeFileParallelDeterministic( @TempDir Path tmpDir ) throws Exception
+    {
+        byte[] expected;
+
+        try ( SpillableValueMap valueMap = new SpillableValueMap( schemaManager, tmpDir, 10, 64 ) )
+        {
+            expected = checkAnonymizeFileParallel( tmpDir, valueMap, 4, null );
+        }
+
+        // The result depends neither on the number of threads, nor on the value map
+        assertArrayEquals( expected, checkAnonymizeFileParallel( tmpDir, new ConcurrentHashMap<>(), 3, null ) );
+        assertArrayEquals( expected, checkAnonymizeFileParallel( tmpDir, new ConcurrentHashMap<>(), 1, 0L ) );
+
+        // but it depends on the seed
+        assertFalse( Arrays.equals( expected,
+            checkAnonymizeFileParallel( tmpDir, new ConcurrentHashMap<>(), 4, 1L ) ) );
+    }
+
+
+    /**
+     * Anonymizes a file with some threads, and checks that the values are anonymized consistently
+     * 
+     * @return The anonymized file
+     */
+    private byte[] checkAnonymizeFileParallel( Path tmpDir, Map<Value, Value> valueMap, int nbThreads, Long seed )
+        throws Exception
+    {
+        int nbEntries = 2000;
+        Random random = new Random( 33L );
+        int[] references = new int[nbEntries];
+        StringBuilder ldif = new StringBuilder();
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            references[i] = random.nextInt( i + 1 );
+            ldif.append( "dn: uid=user" ).append( i ).append( ",dc=example,dc=com\n" );
+            ldif.append( "objectClass: top\n" );
+            ldif.append( "objectClass: person\n" );
+            ldif.append( "objectClass: uidObject\n" );
+            ldif.append( "uid: user" ).append( i ).append( "\n" );
+            ldif.append( "cn: name" ).append( i % 37 ).append( "\n" );
+            ldif.append( "sn: " ).append( i ).append( "\n" );
+            ldif.append( "seeAlso: uid=user" ).append( references[i] ).append( ",dc=example,dc=com\n\n" );
+        }
+
+        Path ldifFile = tmpDir.resolve( "input.ldif" );
+        Files.write( ldifFile, Strings.getBytesUtf8( ldif.toString() ) );
+        Path result = tmpDir.resolve( "output.ldif" );
+
+        LdifAnonymizer anonymizer = new LdifAnonymizer( schemaManager );
+        anonymizer.addNamingContext( "dc=example,dc=com" );
+        anonymizer.removeAnonAttributeType( schemaManager.getAttributeType( "sn" ) );
+
+        if ( seed != null )
+        {
+            anonymizer.setSeed( seed );
+        }
+
+        try ( Writer writer = Files.newBufferedWriter( result, StandardCharsets.UTF_8 ) )
+        {
+            anonymizer.setValueMap( valueMap );
+            anonymizer.anonymizeFile( ldifFile.toString(), writer, nbThreads );
+        }
+
+        byte[] anonymized = Files.readAllBytes( result );
+        List<LdifEntry> entries = ldifReader.parseLdif( new String( anonymized, StandardCharsets.UTF_8 ) );
+
+        assertEquals( nbEntries, entries.size() );
+
+        Map<String, String> cns = new HashMap<>();
+        Set<String> anonymizedCns = new HashSet<>();
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            Entry entry = entries.get( i ).getEntry();
+
+            // The entries order is preserved
+            assertEquals( Integer.toString( i ), entry.get( "sn" ).getString() );
+
+            // The references are anonymized the same way as the referenced entry DN
+            assertEquals( entries.get( references[i] ).getDn().toString(), entry.get( "seeAlso" ).getString() );
+
+            // A value is always anonymized the same way
+            String cn = entry.get( "cn" ).getString();
+            String expected = cns.putIfAbsent( "name" + ( i % 37 ), cn );
+
+            if ( expected == null )
+            {
+                assertTrue( anonymizedCns.add( cn ) );
+            }
+            else
+            {
+                assertEquals( expected, cn );
+            }
+        }
+
+        // Two original values are never anonymized the same way
+        assertEquals( new HashSet<>( valueMap.values() ).size(), valueMap.size() );
+
+        return anonymized;
+    }
 }
@@ -0,0 +1,314 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.registries.Schema;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * Tests the SchemaCache, and its use by the DefaultSchemaLoader.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SchemaCacheTest
+{
+    @TempDir
+    Path cacheDir;
+
+
+    /**
+     * A fake server, exposing the minimal schema, and counting the schema downloads
+     */
+    private static class SchemaServer
+    {
+        Entry schemaEntry;
+        AtomicInteger downloads = new AtomicInteger();
+
+
+        SchemaServer() throws Exception
+        {
+            try ( LdifReader ldifReader = new LdifReader( "src/test/resources/schema-minimal.ldif" ) )
+            {
+                schemaEntry = ldifReader.next().getEntry();
+            }
+
+            schemaEntry.add( SchemaConstants.MODIFY_TIMESTAMP_AT, "20240101000000Z" );
+        }
+
+
+        LdapConnection createConnection()
+        {
+            return createConnection( null );
+        }
+
+
+        /**
+         * Creates a connection, which is an LdapAsyncConnection with this configuration if
+         * it's not null
+         */
+        LdapConnection createConnection( LdapConnectionConfig config )
+        {
+            Class<?> connectionClass = ( config == null ) ? LdapConnection.class : LdapAsyncConnection.class;
+
+            return ( LdapConnection ) Proxy.newProxyInstance( getClass().getClassLoader(),
+                new Class<?>[] { connectionClass }, ( proxy, method, args ) ->
+                {
+                    switch ( method.getName() )
+                    {
+                        case "lookup":
+                            return lookup( ( Dn ) args[0], ( String[] ) args[1] );
+
+                        case "getConfig":
+                            return config;
+
+                        case "isConnected":
+                        case "isAuthenticated":
+                            return Boolean.TRUE;
+
+                        default:
+                            return null;
+                    }
+                } );
+        }
+
+
+        private Entry lookup( Dn dn, String[] attributes ) throws Exception
+        {
+            if ( dn.isRootDse() )
+            {
+                return new DefaultEntry( dn, SchemaConstants.SUBSCHEMA_SUBENTRY_AT + ": cn=schema" );
+            }
+
+            List<String> attributeIds = Arrays.asList( attributes );
+
+            if ( attributeIds.contains( SchemaConstants.ATTRIBUTE_TYPES_AT ) )
+            {
+                downloads.incrementAndGet();
+
+                return schemaEntry;
+            }
+
+            Entry stamps = new DefaultEntry( dn );
+            stamps.add( schemaEntry.get( SchemaConstants.MODIFY_TIMESTAMP_AT ) );
+
+            return stamps;
+        }
+    }
+
+
+    /**
+     * @return A schema with a single entry
+     */
+    private static Map<String, Map<String, List<Entry>>> createSchemas() throws Exception
+    {
+        Entry entry = new DefaultEntry();
+        entry.add( "objectClass", "top", "metaAttributeType" );
+        entry.add( "m-oid", "2.5.4.3" );
+
+        return Collections.singletonMap( "core",
+            Collections.singletonMap( "attributeTypes", Collections.singletonList( entry ) ) );
+    }
+
+
+    @Test
+    public void testStoreAndLoad() throws Exception
+    {
+        SchemaCache schemaCache = new SchemaCache( cacheDir.resolve( "schemas" ) );
+        Map<String, List<Entry>> core = new HashMap<>();
+        Entry cn = new DefaultEntry();
+        cn.add( "objectClass", "top", "metaAttributeType" );
+        cn.add( "m-oid", "2.5.4.3" );
+        cn.add( "m-name", "cn", "commonName" );
+        Entry comparator = new DefaultEntry();
+        comparator.add( "m-oid", "1.2.3" );
+        comparator.add( "m-bytecode", new byte[] { 0x00, ( byte ) 0xFF } );
+        core.put( "attributeTypes", Arrays.asList( cn, new DefaultEntry( "cn=empty" ) ) );
+        core.put( "comparators", Collections.singletonList( comparator ) );
+        core.put( "objectClasses", Collections.emptyList() );
+        Map<String, Map<String, List<Entry>>> schemas = new HashMap<>();
+        schemas.put( "core", core );
+        schemas.put( "other", Collections.emptyMap() );
+
+        assertNull( schemaCache.load( "server", "v1" ) );
+
+        schemaCache.store( "server", "v1", schemas );
+
+        assertEquals( schemas, schemaCache.load( "server", "v1" ) );
+
+        // Another validator or another server
+        assertNull( schemaCache.load( "server", "v2" ) );
+        assertNull( schemaCache.load( "other", "v1" ) );
+        assertNull( schemaCache.load( "server", null ) );
+    }
+
+
+    @Test
+    public void testCorruptedFile() throws Exception
+    {
+        SchemaCache schemaCache = new SchemaCache( cacheDir );
+        schemaCache.store( "server", "v1", createSchemas() );
+
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( cacheDir ) )
+        {
+            for ( Path file : files )
+            {
+                Files.write( file, new byte[] { 1, 2, 3 } );
+            }
+        }
+
+        assertNull( schemaCache.load( "server", "v1" ) );
+    }
+
+
+    @Test
+    public void testSchemaLoaderWithCache() throws Exception
+    {
+        SchemaServer server = new SchemaServer();
+        SchemaCache schemaCache = new SchemaCache( cacheDir );
+
+        // First load : the schema is downloaded, parsed and cached
+        DefaultSchemaLoader loader = new DefaultSchemaLoader( server.createConnection(), false, schemaCache, "localhost:10389" );
+        assertEquals( 1, server.downloads.get() );
+        Schema schema = loader.getAllEnabled().iterator().next();
+        assertEquals( 26, schema.getContent().size() );
+        List<Entry> attributeTypes = loader.loadAttributeTypes( schema );
+        List<Entry> objectClasses = loader.loadObjectClasses( schema );
+
+        // Second load : the schema hasn't changed, the parsed entries are read from the cache
+        loader = new DefaultSchemaLoader( server.createConnection(), false, schemaCache, "localhost:10389" );
+        assertEquals( 1, server.downloads.get() );
+        schema = loader.getAllEnabled().iterator().next();
+        assertTrue( schema.getContent().isEmpty() );
+        assertEquals( attributeTypes, loader.loadAttributeTypes( schema ) );
+        assertEquals( objectClasses, loader.loadObjectClasses( schema ) );
+        assertEquals( 26, attributeTypes.size() + objectClasses.size() + loader.loadSyntaxes( schema ).size()
+            + loader.loadMatchingRules( schema ).size() );
+
+        SchemaManager schemaManager = new DefaultSchemaManager( loader );
+        assertTrue( schemaManager.loadAllEnabled() );
+        assertNotNull( schemaManager.getObjectClassRegistry().lookup( "person" ) );
+
+        // The schema has been modified : it's downloaded again
+        server.schemaEntry.removeAttributes( SchemaConstants.MODIFY_TIMESTAMP_AT );
+        server.schemaEntry.add( SchemaConstants.MODIFY_TIMESTAMP_AT, "20240202000000Z" );
+        new DefaultSchemaLoader( server.createConnection(), false, schemaCache, "localhost:10389" );
+        assertEquals( 2, server.downloads.get() );
+
+        new DefaultSchemaLoader( server.createConnection(), false, schemaCache, "localhost:10389" );
+        assertEquals( 2, server.downloads.get() );
+
+        // A relaxed loader doesn't use the schema parsed by a strict one
+        new DefaultSchemaLoader( server.createConnection(), true, schemaCache, "localhost:10389" );
+        assertEquals( 3, server.downloads.get() );
+
+        // No cache
+        new DefaultSchemaLoader( server.createConnection(), false );
+        assertEquals( 4, server.downloads.get() );
+    }
+
+
+    @Test
+    public void testInvalidLength() throws Exception
+    {
+        SchemaCache schemaCache = new SchemaCache( cacheDir );
+        schemaCache.store( "server", "v1", createSchemas() );
+
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( cacheDir ) )
+        {
+            for ( Path file : files )
+            {
+                // A valid header, followed by a huge server identity length
+                try ( DataOutputStream out = new DataOutputStream( new GZIPOutputStream(
+                    Files.newOutputStream( file ) ) ) )
+                {
+                    out.writeInt( 0x4C534331 );
+                    out.writeInt( 2 );
+                    out.writeInt( Integer.MAX_VALUE );
+                }
+            }
+        }
+
+        assertNull( schemaCache.load( "server", "v1" ) );
+    }
+
+
+    @Test
+    public void testServerIdentity() throws Exception
+    {
+        SchemaServer server = new SchemaServer();
+        SchemaCache schemaCache = new SchemaCache( cacheDir );
+
+        // The server is unknown : the schema is not cached
+        new DefaultSchemaLoader( server.createConnection(), false, schemaCache );
+        new DefaultSchemaLoader( server.createConnection(), false, schemaCache );
+        assertEquals( 2, server.downloads.get() );
+
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( cacheDir ) )
+        {
+            assertFalse( files.iterator().hasNext() );
+        }
+
+        // The host and port are read through the connection wrappers
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost( "ldap.example.com" );
+        config.setLdapPort( 389 );
+
+        new DefaultSchemaLoader( new LdapConnectionWrapper( server.createConnection( config ) ), false, schemaCache );
+        new DefaultSchemaLoader( new LdapConnectionWrapper( server.createConnection( config ) ), false, schemaCache );
+        assertEquals( 3, server.downloads.get() );
+
+        // Another server, with the same subschemaSubentry, doesn't use the same cached schema
+        LdapConnectionConfig otherConfig = new LdapConnectionConfig();
+        otherConfig.setLdapHost( "other.example.com" );
+        otherConfig.setLdapPort( 389 );
+
+        new DefaultSchemaLoader( server.createConnection( otherConfig ), false, schemaCache );
+        assertEquals( 4, server.downloads.get() );
+    }
+}
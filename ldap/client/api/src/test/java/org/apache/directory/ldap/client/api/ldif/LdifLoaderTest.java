@@ -0,0 +1,542 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.ldif;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.ldap.client.api.LdapAsyncConnection;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.future.AddFuture;
+import org.apache.directory.ldap.client.api.future.DeleteFuture;
+import org.apache.directory.ldap.client.api.future.ModifyDnFuture;
+import org.apache.directory.ldap.client.api.future.ModifyFuture;
+import org.apache.directory.ldap.client.api.future.ResponseFuture;
+import org.apache.directory.ldap.client.api.future.UniqueResponseFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * Tests the LdifLoader, with connections to an in memory server stub which answers
+ * asynchronously, after a random delay, so that the responses come out of order.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdifLoaderTest
+{
+    /** The suffix, which exists in the stub */
+    private static final String SUFFIX = "dc=example,dc=com";
+
+    private ScheduledExecutorService scheduler;
+
+    private Server server;
+
+
+    /**
+     * An in memory server, storing the entries DNs only
+     */
+    private class Server
+    {
+        /** The existing entries */
+        final Set<Dn> entries = new HashSet<>();
+
+        /** The entries to answer BUSY to, once */
+        final Set<Dn> busy = new HashSet<>();
+
+        /** The entries never answered to */
+        final Set<Dn> silent = new HashSet<>();
+
+        /** The number of requests in flight, and its greatest value */
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        /** The number of requests received */
+        final AtomicInteger requests = new AtomicInteger();
+
+
+        Server() throws Exception
+        {
+            entries.add( new Dn( SUFFIX ) );
+        }
+
+
+        synchronized ResultCodeEnum process( ResultResponseRequest request ) throws Exception
+        {
+            requests.incrementAndGet();
+
+            if ( request instanceof AddRequest )
+            {
+                Dn dn = ( ( AddRequest ) request ).getEntryDn();
+
+                if ( busy.remove( dn ) )
+                {
+                    return ResultCodeEnum.BUSY;
+                }
+                else if ( entries.contains( dn ) )
+                {
+                    return ResultCodeEnum.ENTRY_ALREADY_EXISTS;
+                }
+                else if ( !entries.contains( dn.getParent() ) )
+                {
+                    return ResultCodeEnum.NO_SUCH_OBJECT;
+                }
+
+                entries.add( dn );
+            }
+            else if ( request instanceof ModifyRequest )
+            {
+                if ( !entries.contains( ( ( ModifyRequest ) request ).getName() ) )
+                {
+                    return ResultCodeEnum.NO_SUCH_OBJECT;
+                }
+            }
+            else if ( request instanceof DeleteRequest )
+            {
+                Dn dn = ( ( DeleteRequest ) request ).getName();
+
+                if ( !entries.contains( dn ) )
+                {
+                    return ResultCodeEnum.NO_SUCH_OBJECT;
+                }
+
+                for ( Dn entry : entries )
+                {
+                    if ( entry.isDescendantOf( dn ) && !entry.equals( dn ) )
+                    {
+                        return ResultCodeEnum.NOT_ALLOWED_ON_NON_LEAF;
+                    }
+                }
+
+                entries.remove( dn );
+            }
+            else
+            {
+                ModifyDnRequest modifyDnRequest = ( ModifyDnRequest ) request;
+                Dn dn = modifyDnRequest.getName();
+                Dn superior = modifyDnRequest.getNewSuperior() == null ? dn.getParent()
+                    : modifyDnRequest.getNewSuperior();
+                Dn newDn = superior.add( modifyDnRequest.getNewRdn() );
+
+                if ( !entries.contains( dn ) || !entries.contains( superior ) )
+                {
+                    return ResultCodeEnum.NO_SUCH_OBJECT;
+                }
+                else if ( entries.contains( newDn ) )
+                {
+                    return ResultCodeEnum.ENTRY_ALREADY_EXISTS;
+                }
+
+                // Move the subtree
+                for ( Dn entry : new ArrayList<>( entries ) )
+                {
+                    if ( entry.isDescendantOf( dn ) )
+                    {
+                        entries.remove( entry );
+                        entries.add( newDn.add( entry.getDescendantOf( dn ) ) );
+                    }
+                }
+            }
+
+            return ResultCodeEnum.SUCCESS;
+        }
+
+
+        synchronized Set<String> getEntries()
+        {
+            Set<String> names = new TreeSet<>();
+
+            for ( Dn entry : entries )
+            {
+                names.add( entry.getName() );
+            }
+
+            return names;
+        }
+
+
+        LdapAsyncConnection connect()
+        {
+            AtomicInteger messageId = new AtomicInteger();
+            LdapConnection[] connection = new LdapConnection[1];
+
+            connection[0] = ( LdapConnection ) Proxy.newProxyInstance( getClass().getClassLoader(),
+                new Class<?>[] { LdapAsyncConnection.class }, ( proxy, method, args ) ->
+                {
+                    int id = messageId.incrementAndGet();
+
+                    switch ( method.getName() )
+                    {
+                        case "addAsync":
+                            return send( ( ResultResponseRequest ) args[0], new AddFuture( connection[0], id ) );
+
+                        case "modifyAsync":
+                            return send( ( ResultResponseRequest ) args[0], new ModifyFuture( connection[0], id ) );
+
+                        case "deleteAsync":
+                            return send( ( ResultResponseRequest ) args[0], new DeleteFuture( connection[0], id ) );
+
+                        case "modifyDnAsync":
+                            return send( ( ResultResponseRequest ) args[0], new ModifyDnFuture( connection[0], id ) );
+
+                        case "isRequestCompleted":
+                            return true;
+
+                        default:
+                            return null;
+                    }
+                } );
+
+            return ( LdapAsyncConnection ) connection[0];
+        }
+
+
+        @SuppressWarnings(
+            { "unchecked", "rawtypes" })
+        ResponseFuture<?> send( ResultResponseRequest request, UniqueResponseFuture future )
+        {
+            maxInFlight.accumulateAndGet( inFlight.incrementAndGet(), Math::max );
+
+            if ( ( request instanceof AddRequest ) && silent.contains( ( ( AddRequest ) request ).getEntryDn() ) )
+            {
+                return future;
+            }
+
+            scheduler.schedule( () ->
+            {
+                try
+                {
+                    ResultResponse response = request.getResultResponse();
+                    response.getLdapResult().setResultCode( process( request ) );
+                    inFlight.decrementAndGet();
+                    future.set( response );
+                }
+                catch ( Exception e )
+                {
+                    future.setCause( e );
+                    future.cancel();
+                }
+            }, ThreadLocalRandom.current().nextInt( 2000 ), TimeUnit.MICROSECONDS );
+
+            return future;
+        }
+    }
+
+
+    /**
+     * Creates a tree of groups and persons, then applies some changes to it.
+     */
+    private static List<LdifEntry> createLdif( int nbGroups, int nbPersons ) throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for ( int i = 0; i < nbGroups; i++ )
+        {
+            sb.append( "dn: ou=g" ).append( i ).append( ',' ).append( SUFFIX ).append( '\n' );
+            sb.append( "changetype: add\n" );
+            sb.append( "objectClass: organizationalUnit\n" );
+            sb.append( "ou: g" ).append( i ).append( "\n\n" );
+
+            for ( int j = 0; j < nbPersons; j++ )
+            {
+                sb.append( "dn: cn=p" ).append( j ).append( ",ou=g" ).append( i ).append( ',' ).append( SUFFIX ).append( '\n' );
+                sb.append( "changetype: add\n" );
+                sb.append( "objectClass: person\n" );
+                sb.append( "cn: p" ).append( j ).append( '\n' );
+                sb.append( "sn: p" ).append( j ).append( "\n\n" );
+            }
+        }
+
+        // Move a person to another group, then modify it
+        sb.append( "dn: cn=p1,ou=g0," ).append( SUFFIX ).append( '\n' );
+        sb.append( "changetype: moddn\n" );
+        sb.append( "newrdn: cn=q1\n" );
+        sb.append( "deleteoldrdn: 1\n" );
+        sb.append( "newsuperior: ou=g1," ).append( SUFFIX ).append( "\n\n" );
+
+        sb.append( "dn: cn=q1,ou=g1," ).append( SUFFIX ).append( '\n' );
+        sb.append( "changetype: modify\n" );
+        sb.append( "replace: sn\n" );
+        sb.append( "sn: q1\n" );
+        sb.append( "-\n\n" );
+
+        // Delete the last group, its persons first
+        for ( int j = 0; j < nbPersons; j++ )
+        {
+            sb.append( "dn: cn=p" ).append( j ).append( ",ou=g" ).append( nbGroups - 1 ).append( ',' ).append( SUFFIX ).append( '\n' );
+            sb.append( "changetype: delete\n\n" );
+        }
+
+        sb.append( "dn: ou=g" ).append( nbGroups - 1 ).append( ',' ).append( SUFFIX ).append( '\n' );
+        sb.append( "changetype: delete\n\n" );
+
+        // Recreate it with a new person, and rename the group
+        sb.append( "dn: ou=g" ).append( nbGroups - 1 ).append( ',' ).append( SUFFIX ).append( '\n' );
+        sb.append( "changetype: add\n" );
+        sb.append( "objectClass: organizationalUnit\n" );
+        sb.append( "ou: g" ).append( nbGroups - 1 ).append( "\n\n" );
+
+        sb.append( "dn: cn=new,ou=g" ).append( nbGroups - 1 ).append( ',' ).append( SUFFIX ).append( '\n' );
+        sb.append( "changetype: add\n" );
+        sb.append( "objectClass: person\n" );
+        sb.append( "cn: new\n" );
+        sb.append( "sn: new\n\n" );
+
+        sb.append( "dn: ou=g" ).append( nbGroups - 1 ).append( ',' ).append( SUFFIX ).append( '\n' );
+        sb.append( "changetype: modrdn\n" );
+        sb.append( "newrdn: ou=last\n" );
+        sb.append( "deleteoldrdn: 1\n\n" );
+
+        try ( LdifReader reader = new LdifReader() )
+        {
+            return reader.parseLdif( sb.toString() );
+        }
+    }
+
+
+    /**
+     * @return The entries expected once the LDIF created by createLdif is loaded
+     */
+    private static Set<String> expected( int nbGroups, int nbPersons )
+    {
+        Set<String> expected = new TreeSet<>();
+        expected.add( SUFFIX );
+
+        for ( int i = 0; i < nbGroups - 1; i++ )
+        {
+            expected.add( "ou=g" + i + "," + SUFFIX );
+
+            for ( int j = 0; j < nbPersons; j++ )
+            {
+                if ( ( i != 0 ) || ( j != 1 ) )
+                {
+                    expected.add( "cn=p" + j + ",ou=g" + i + "," + SUFFIX );
+                }
+            }
+        }
+
+        expected.add( "cn=q1,ou=g1," + SUFFIX );
+        expected.add( "ou=last," + SUFFIX );
+        expected.add( "cn=new,ou=last," + SUFFIX );
+
+        return expected;
+    }
+
+
+    private LdifLoader createLoader( int nbConnections )
+    {
+        List<LdapAsyncConnection> connections = new ArrayList<>();
+
+        for ( int i = 0; i < nbConnections; i++ )
+        {
+            connections.add( server.connect() );
+        }
+
+        return new LdifLoader( connections );
+    }
+
+
+    @BeforeEach
+    public void init() throws Exception
+    {
+        scheduler = Executors.newScheduledThreadPool( 4 );
+        server = new Server();
+    }
+
+
+    @AfterEach
+    public void close()
+    {
+        scheduler.shutdownNow();
+    }
+
+
+    @Test
+    public void testLoad() throws Exception
+    {
+        List<LdifEntry> ldif = createLdif( 10, 30 );
+        LdifLoader loader = createLoader( 4 );
+        loader.setWindowSize( 8 );
+
+        LdifLoaderReport report = loader.load( ldif );
+
+        assertEquals( 0, report.getFailed(), report.getFailures().toString() );
+        assertEquals( 10 * 30 + 10 + 2, report.getAdded() );
+        assertEquals( 1, report.getModified() );
+        assertEquals( 31, report.getDeleted() );
+        assertEquals( 2, report.getRenamed() );
+        assertEquals( ldif.size(), report.getProcessed() );
+        assertEquals( ldif.size(), report.getCheckpoint() );
+        assertEquals( expected( 10, 30 ), server.getEntries() );
+
+        // The requests are pipelined on all the connections, within the window
+        assertTrue( server.maxInFlight.get() > 4 );
+        assertTrue( server.maxInFlight.get() <= 4 * 8 );
+        assertTrue( report.getThroughput() > 0d );
+        assertTrue( report.getLatency( 50 ) <= report.getLatency( 99 ) );
+        assertTrue( report.getLatency( 99 ) <= report.getMaxLatency() );
+    }
+
+
+    @Test
+    public void testSingleConnectionWindow() throws Exception
+    {
+        LdifLoader loader = createLoader( 1 );
+        loader.setWindowSize( 1 );
+
+        LdifLoaderReport report = loader.load( createLdif( 3, 5 ) );
+
+        assertEquals( 0, report.getFailed(), report.getFailures().toString() );
+        assertEquals( expected( 3, 5 ), server.getEntries() );
+        assertEquals( 1, server.maxInFlight.get() );
+    }
+
+
+    @Test
+    public void testRetryBusy() throws Exception
+    {
+        server.busy.add( new Dn( "ou=g0," + SUFFIX ) );
+        server.busy.add( new Dn( "cn=p3,ou=g1," + SUFFIX ) );
+
+        LdifLoader loader = createLoader( 2 );
+        loader.setRetryDelay( 5L );
+
+        LdifLoaderReport report = loader.load( createLdif( 4, 10 ) );
+
+        assertEquals( 0, report.getFailed(), report.getFailures().toString() );
+        assertEquals( 2, report.getRetries() );
+        assertEquals( expected( 4, 10 ), server.getEntries() );
+    }
+
+
+    @Test
+    public void testRetryExhausted() throws Exception
+    {
+        server.busy.add( new Dn( "cn=p3,ou=g1," + SUFFIX ) );
+
+        LdifLoader loader = createLoader( 2 );
+        loader.setMaxRetries( 0 );
+
+        LdifLoaderReport report = loader.load( createLdif( 4, 10 ) );
+
+        assertEquals( 1, report.getFailed() );
+        assertEquals( ResultCodeEnum.BUSY, report.getFailures().get( 0 ).getResultCode() );
+        assertEquals( "cn=p3,ou=g1," + SUFFIX, report.getFailures().get( 0 ).getEntry().getDn().getName() );
+    }
+
+
+    @Test
+    public void testTimeoutFromSendTime() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for ( int i = 0; i < 8; i++ )
+        {
+            server.silent.add( new Dn( "ou=g" + i + "," + SUFFIX ) );
+            sb.append( "dn: ou=g" ).append( i ).append( ',' ).append( SUFFIX ).append( '\n' );
+            sb.append( "objectClass: organizationalUnit\n" );
+            sb.append( "ou: g" ).append( i ).append( "\n\n" );
+        }
+
+        LdifLoader loader = createLoader( 1 );
+        loader.setWindowSize( 8 );
+        loader.setTimeout( 500L );
+
+        LdifLoaderReport report;
+
+        try ( LdifReader reader = new LdifReader() )
+        {
+            report = loader.load( reader.parseLdif( sb.toString() ) );
+        }
+
+        // The 8 requests are in flight together, they time out together
+        assertEquals( 8, report.getFailed() );
+        assertEquals( ResultCodeEnum.OTHER, report.getFailures().get( 0 ).getResultCode() );
+        assertTrue( report.getElapsedTime() < 4 * 500L, "elapsed " + report.getElapsedTime() );
+    }
+
+
+    @Test
+    public void testCheckpointAndResume( @TempDir Path tmpDir ) throws Exception
+    {
+        List<LdifEntry> ldif = createLdif( 3, 20 );
+        Path file = tmpDir.resolve( "load.checkpoint" );
+
+        // The first load is sequential, and stops on the first failure : g1 can't be added
+        server.busy.add( new Dn( "ou=g1," + SUFFIX ) );
+        LdifLoader loader = createLoader( 1 );
+        loader.setWindowSize( 1 );
+        loader.setMaxRetries( 0 );
+        loader.setContinueOnError( false );
+        loader.setCheckpointInterval( 5 );
+        loader.setCheckpointStore( new FileLdifLoaderCheckpointStore( file ) );
+
+        LdifLoaderReport report = loader.load( ldif );
+
+        assertEquals( 1, report.getFailed() );
+        assertEquals( 21, report.getCheckpoint() );
+        assertEquals( 22, server.getEntries().size() );
+        assertEquals( "21", new String( Files.readAllBytes( file ), "UTF-8" ) );
+
+        // The second load resumes at g1
+        loader.setWindowSize( 8 );
+        report = loader.load( ldif );
+
+        assertEquals( 0, report.getFailed(), report.getFailures().toString() );
+        assertEquals( 21, report.getSkipped() );
+        assertEquals( expected( 3, 20 ), server.getEntries() );
+        assertEquals( ldif.size(), new FileLdifLoaderCheckpointStore( file ).load() );
+    }
+
+
+    @Test
+    public void testNoConnection()
+    {
+        assertThrows( IllegalArgumentException.class, () -> new LdifLoader( new ArrayList<LdapAsyncConnection>() ) );
+    }
+}
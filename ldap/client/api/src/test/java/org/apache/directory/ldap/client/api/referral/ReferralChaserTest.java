@@ -0,0 +1,565 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.referral;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.directory.api.ldap.model.cursor.SearchCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.Referral;
+import org.apache.directory.api.ldap.model.message.ReferralImpl;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultReference;
+import org.apache.directory.api.ldap.model.message.SearchResultReferenceImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.url.LdapUrl;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapConnectionConfig;
+import org.apache.directory.ldap.client.api.LdapConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the ReferralChaser, with fake servers.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReferralChaserTest
+{
+    /** The fake servers, per host */
+    private Map<String, FakeServer> servers;
+
+    private TestReferralChaser chaser;
+
+
+    /**
+     * A fake server, returning predefined responses per search base
+     */
+    private static class FakeServer
+    {
+        Map<String, List<Response>> responses = new HashMap<>();
+        List<SearchRequest> requests = Collections.synchronizedList( new ArrayList<>() );
+        AtomicInteger connections = new AtomicInteger();
+        CountDownLatch latch;
+        boolean down;
+
+
+        FakeServer add( String base, Response... baseResponses )
+        {
+            responses.put( base, Arrays.asList( baseResponses ) );
+
+            return this;
+        }
+
+
+        LdapConnection connect() throws LdapException
+        {
+            if ( down )
+            {
+                throw new LdapException( "Connection refused" );
+            }
+
+            connections.incrementAndGet();
+
+            return ( LdapConnection ) Proxy.newProxyInstance( getClass().getClassLoader(),
+                new Class<?>[] { LdapConnection.class }, ( proxy, method, args ) ->
+                {
+                    if ( "search".equals( method.getName() ) )
+                    {
+                        return search( ( SearchRequest ) args[0] );
+                    }
+
+                    return null;
+                } );
+        }
+
+
+        SearchCursor search( SearchRequest request ) throws Exception
+        {
+            requests.add( request );
+
+            if ( latch != null )
+            {
+                // Wait for the other searches, which must run concurrently
+                latch.countDown();
+                assertTrue( latch.await( 10, TimeUnit.SECONDS ) );
+            }
+
+            List<Response> baseResponses = responses.get( request.getBase().getName() );
+
+            if ( baseResponses == null )
+            {
+                return cursor( done( ResultCodeEnum.NO_SUCH_OBJECT ) );
+            }
+
+            return cursor( done( ResultCodeEnum.SUCCESS ), baseResponses.toArray( new Response[0] ) );
+        }
+    }
+
+
+    /**
+     * A ReferralChaser connecting to the fake servers
+     */
+    private class TestReferralChaser extends ReferralChaser
+    {
+        Set<String> pools = ConcurrentHashMap.newKeySet();
+        AtomicInteger poolCount = new AtomicInteger();
+
+
+        TestReferralChaser()
+        {
+            super( new LdapConnectionConfig() );
+        }
+
+
+        @Override
+        protected LdapConnectionPool createPool( LdapUrl ldapUrl, boolean secured )
+        {
+            FakeServer server = servers.get( ldapUrl.getHost() );
+            pools.add( ldapUrl.getHost() );
+            poolCount.incrementAndGet();
+
+            return new LdapConnectionPool( new PooledObjectFactory<LdapConnection>()
+            {
+                @Override
+                public PooledObject<LdapConnection> makeObject() throws Exception
+                {
+                    return new DefaultPooledObject<>( server.connect() );
+                }
+
+
+                @Override
+                public void destroyObject( PooledObject<LdapConnection> pooledObject )
+                {
+                }
+
+
+                @Override
+                public boolean validateObject( PooledObject<LdapConnection> pooledObject )
+                {
+                    return true;
+                }
+
+
+                @Override
+                public void activateObject( PooledObject<LdapConnection> pooledObject )
+                {
+                }
+
+
+                @Override
+                public void passivateObject( PooledObject<LdapConnection> pooledObject )
+                {
+                }
+            } );
+        }
+    }
+
+
+    private static SearchCursor cursor( SearchResultDone done, Response... responses )
+    {
+        Iterator<Response> iterator = Arrays.asList( responses ).iterator();
+        Response[] current = new Response[1];
+
+        return ( SearchCursor ) Proxy.newProxyInstance( ReferralChaserTest.class.getClassLoader(),
+            new Class<?>[] { SearchCursor.class }, ( proxy, method, args ) ->
+            {
+                switch ( method.getName() )
+                {
+                    case "next":
+                        current[0] = iterator.hasNext() ? iterator.next() : null;
+
+                        return current[0] != null;
+
+                    case "get":
+                        return current[0];
+
+                    case "getSearchResultDone":
+                        return iterator.hasNext() ? null : done;
+
+                    default:
+                        return null;
+                }
+            } );
+    }
+
+
+    private static Response entry( String dn ) throws LdapException
+    {
+        SearchResultEntryImpl entry = new SearchResultEntryImpl();
+        entry.setEntry( new DefaultEntry( dn, "objectClass: top" ) );
+
+        return entry;
+    }
+
+
+    private static Referral referral( String... urls )
+    {
+        Referral referral = new ReferralImpl();
+
+        for ( String url : urls )
+        {
+            referral.addLdapUrl( url );
+        }
+
+        return referral;
+    }
+
+
+    private static Response reference( String... urls )
+    {
+        SearchResultReference reference = new SearchResultReferenceImpl();
+        reference.setReferral( referral( urls ) );
+
+        return reference;
+    }
+
+
+    private static SearchResultDone done( ResultCodeEnum resultCode, String... urls )
+    {
+        SearchResultDone done = new SearchResultDoneImpl();
+        done.getLdapResult().setResultCode( resultCode );
+
+        if ( urls.length > 0 )
+        {
+            done.getLdapResult().setReferral( referral( urls ) );
+        }
+
+        return done;
+    }
+
+
+    private static SearchRequest request( String base, SearchScope scope ) throws LdapException
+    {
+        SearchRequest request = new SearchRequestImpl();
+        request.setBase( new Dn( base ) );
+        request.setScope( scope );
+        request.setFilter( "(objectClass=*)" );
+        request.addAttributes( "cn" );
+        request.followReferrals();
+
+        return request;
+    }
+
+
+    /**
+     * Reads a cursor, returning the entries DNs and the remaining references URLs
+     */
+    private static Set<String> read( SearchCursor cursor ) throws Exception
+    {
+        Set<String> results = new TreeSet<>();
+
+        while ( cursor.next() )
+        {
+            if ( cursor.isEntry() )
+            {
+                assertTrue( results.add( cursor.getEntry().getDn().getName() ) );
+            }
+            else
+            {
+                results.addAll( cursor.getReferral().getLdapUrls() );
+            }
+        }
+
+        cursor.close();
+
+        return results;
+    }
+
+
+    @BeforeEach
+    public void init()
+    {
+        servers = new HashMap<>();
+        chaser = new TestReferralChaser();
+    }
+
+
+    @AfterEach
+    public void close()
+    {
+        chaser.close();
+    }
+
+
+    @Test
+    public void testContinuationReferences() throws Exception
+    {
+        servers.put( "hosta", new FakeServer()
+            .add( "ou=a,dc=example,dc=com", entry( "cn=a1,ou=a,dc=example,dc=com" ),
+                reference( "ldap://hostb/ou=b2,dc=example,dc=com" ), entry( "cn=a2,ou=a,dc=example,dc=com" ) ) );
+        servers.put( "hostb", new FakeServer()
+            .add( "ou=b,dc=example,dc=com", entry( "cn=b1,ou=b,dc=example,dc=com" ) )
+            .add( "ou=b2,dc=example,dc=com", entry( "cn=b2,ou=b2,dc=example,dc=com" ) ) );
+
+        SearchRequest request = request( "dc=example,dc=com", SearchScope.SUBTREE );
+        SearchCursor cursor = chaser.chase( cursor( done( ResultCodeEnum.SUCCESS ),
+            entry( "dc=example,dc=com" ),
+            reference( "ldap://hosta/ou=a,dc=example,dc=com" ),
+            reference( "ldap://hostb/ou=b,dc=example,dc=com" ),
+            entry( "ou=c,dc=example,dc=com" ) ), request );
+
+        assertEquals( new TreeSet<>( Arrays.asList( "dc=example,dc=com", "ou=c,dc=example,dc=com",
+            "cn=a1,ou=a,dc=example,dc=com", "cn=a2,ou=a,dc=example,dc=com", "cn=b1,ou=b,dc=example,dc=com",
+            "cn=b2,ou=b2,dc=example,dc=com" ) ), read( cursor ) );
+        assertEquals( ResultCodeEnum.SUCCESS, cursor.getSearchResultDone().getLdapResult().getResultCode() );
+
+        // One pool per server
+        assertEquals( 2, chaser.pools.size() );
+
+        // The referred searches keep the original parameters
+        SearchRequest referred = servers.get( "hosta" ).requests.get( 0 );
+        assertEquals( SearchScope.SUBTREE, referred.getScope() );
+        assertEquals( "(objectClass=*)", referred.getFilter().toString() );
+        assertEquals( Arrays.asList( "cn" ), referred.getAttributes() );
+    }
+
+
+    @Test
+    public void testOneLevelScope() throws Exception
+    {
+        servers.put( "hosta", new FakeServer()
+            .add( "ou=a,dc=example,dc=com", entry( "ou=a,dc=example,dc=com" ) )
+            .add( "ou=b,dc=example,dc=com", entry( "ou=b,dc=example,dc=com" ) ) );
+
+        SearchRequest request = request( "dc=example,dc=com", SearchScope.ONELEVEL );
+        SearchCursor cursor = chaser.chase( cursor( done( ResultCodeEnum.SUCCESS ),
+            reference( "ldap://hosta/ou=a,dc=example,dc=com" ),
+            reference( "ldap://hosta/ou=b,dc=example,dc=com??sub?(cn=b*)" ) ), request );
+
+        assertEquals( 2, read( cursor ).size() );
+
+        Map<String, SearchRequest> requests = new HashMap<>();
+
+        for ( SearchRequest referred : servers.get( "hosta" ).requests )
+        {
+            requests.put( referred.getBase().getName(), referred );
+        }
+
+        // A one level search continues on the referred entry only, unless the URL says otherwise
+        assertEquals( SearchScope.OBJECT, requests.get( "ou=a,dc=example,dc=com" ).getScope() );
+        assertEquals( SearchScope.SUBTREE, requests.get( "ou=b,dc=example,dc=com" ).getScope() );
+        assertEquals( "(cn=b*)", requests.get( "ou=b,dc=example,dc=com" ).getFilter().toString() );
+    }
+
+
+    @Test
+    public void testLoop() throws Exception
+    {
+        servers.put( "hosta", new FakeServer()
+            .add( "ou=a,dc=example,dc=com", entry( "cn=a1,ou=a,dc=example,dc=com" ),
+                reference( "ldap://hostb/ou=b,dc=example,dc=com" ) ) );
+        servers.put( "hostb", new FakeServer()
+            .add( "ou=b,dc=example,dc=com", entry( "cn=b1,ou=b,dc=example,dc=com" ),
+                reference( "ldap://hosta/ou=a,dc=example,dc=com" ) ) );
+
+        SearchCursor cursor = chaser.chase( cursor( done( ResultCodeEnum.SUCCESS ),
+            reference( "ldap://hosta/ou=a,dc=example,dc=com" ) ),
+            request( "dc=example,dc=com", SearchScope.SUBTREE ) );
+
+        assertEquals( new TreeSet<>( Arrays.asList( "cn=a1,ou=a,dc=example,dc=com",
+            "cn=b1,ou=b,dc=example,dc=com" ) ), read( cursor ) );
+        assertEquals( 1, servers.get( "hosta" ).requests.size() );
+        assertEquals( 1, servers.get( "hostb" ).requests.size() );
+    }
+
+
+    @Test
+    public void testHopLimit() throws Exception
+    {
+        servers.put( "hosta", new FakeServer()
+            .add( "ou=a,dc=example,dc=com", entry( "cn=a1,ou=a,dc=example,dc=com" ),
+                reference( "ldap://hostb/ou=b,dc=example,dc=com" ) ) );
+        chaser.setMaxHops( 1 );
+
+        SearchCursor cursor = chaser.chase( cursor( done( ResultCodeEnum.SUCCESS ),
+            reference( "ldap://hosta/ou=a,dc=example,dc=com" ) ),
+            request( "dc=example,dc=com", SearchScope.SUBTREE ) );
+
+        // The second hop reference is returned as is
+        assertEquals( new TreeSet<>( Arrays.asList( "cn=a1,ou=a,dc=example,dc=com",
+            "ldap://hostb/ou=b,dc=example,dc=com" ) ), read( cursor ) );
+    }
+
+
+    @Test
+    public void testUnreachableServer() throws Exception
+    {
+        FakeServer down = new FakeServer();
+        down.down = true;
+        servers.put( "down", down );
+        servers.put( "hosta", new FakeServer()
+            .add( "ou=a,dc=example,dc=com", entry( "cn=a1,ou=a,dc=example,dc=com" ) ) );
+
+        SearchCursor cursor = chaser.chase( cursor( done( ResultCodeEnum.SUCCESS ),
+            reference( "ldap://down/ou=a,dc=example,dc=com", "ldap://hosta/ou=a,dc=example,dc=com" ),
+            reference( "ldap://down/ou=d,dc=example,dc=com" ) ),
+            request( "dc=example,dc=com", SearchScope.SUBTREE ) );
+
+        // The alternative URL is used, the reference which can't be chased is returned
+        assertEquals( new TreeSet<>( Arrays.asList( "cn=a1,ou=a,dc=example,dc=com",
+            "ldap://down/ou=d,dc=example,dc=com" ) ), read( cursor ) );
+    }
+
+
+    @Test
+    public void testBaseReferral() throws Exception
+    {
+        servers.put( "hosta", new FakeServer()
+            .add( "ou=a,dc=example,dc=com", entry( "ou=a,dc=example,dc=com" ),
+                entry( "cn=a1,ou=a,dc=example,dc=com" ) ) );
+
+        SearchCursor cursor = chaser.chase( cursor( done( ResultCodeEnum.REFERRAL,
+            "ldap://hosta/ou=a,dc=example,dc=com" ) ), request( "ou=a,dc=example,dc=com", SearchScope.SUBTREE ) );
+
+        assertEquals( new TreeSet<>( Arrays.asList( "ou=a,dc=example,dc=com",
+            "cn=a1,ou=a,dc=example,dc=com" ) ), read( cursor ) );
+    }
+
+
+    @Test
+    public void testConcurrentChasing() throws Exception
+    {
+        FakeServer server = new FakeServer();
+        server.latch = new CountDownLatch( 4 );
+        List<Response> references = new ArrayList<>();
+
+        for ( int i = 0; i < 4; i++ )
+        {
+            String base = "ou=" + i + ",dc=example,dc=com";
+            server.add( base, entry( "cn=e,"  + base ) );
+            references.add( reference( "ldap://hosta/" + base ) );
+        }
+
+        servers.put( "hosta", server );
+        chaser.setParallelism( 4 );
+
+        // The searches wait for each other : they only end if they are done concurrently
+        SearchCursor cursor = chaser.chase( cursor( done( ResultCodeEnum.SUCCESS ),
+            references.toArray( new Response[0] ) ), request( "dc=example,dc=com", SearchScope.SUBTREE ) );
+
+        assertEquals( 4, read( cursor ).size() );
+        assertEquals( 4, server.connections.get() );
+    }
+
+
+    @Test
+    public void testReferredConfig() throws Exception
+    {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setName( "uid=admin,ou=system" );
+        config.setCredentials( "secret" );
+
+        try ( ReferralChaser referralChaser = new ReferralChaser( config ) )
+        {
+            referralChaser.addBindServer( "HostA", 389 );
+
+            // The credentials are only sent to the allowed servers
+            LdapConnectionConfig serverConfig = referralChaser.createConfig( new LdapUrl( "ldap://hosta/" ), false );
+            assertEquals( "uid=admin,ou=system", serverConfig.getName() );
+            assertEquals( "secret", serverConfig.getCredentials() );
+            assertEquals( LdapConnectionConfig.DEFAULT_LDAP_PORT, serverConfig.getLdapPort() );
+
+            serverConfig = referralChaser.createConfig( new LdapUrl( "ldap://hosta:10389/" ), false );
+            assertNull( serverConfig.getName() );
+            assertNull( serverConfig.getCredentials() );
+
+            serverConfig = referralChaser.createConfig( new LdapUrl( "ldap://evil/" ), false );
+            assertNull( serverConfig.getName() );
+            assertNull( serverConfig.getCredentials() );
+        }
+    }
+
+
+    @Test
+    public void testNoSecurityDowngrade() throws Exception
+    {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setUseSsl( true );
+
+        try ( ReferralChaser referralChaser = new ReferralChaser( config ) )
+        {
+            // An ldap:// reference is followed using StartTLS
+            LdapConnectionConfig serverConfig = referralChaser.createConfig( new LdapUrl( "ldap://hosta/" ), true );
+            assertFalse( serverConfig.isUseSsl() );
+            assertTrue( serverConfig.isUseTls() );
+
+            serverConfig = referralChaser.createConfig( new LdapUrl( "ldaps://hosta/" ), true );
+            assertTrue( serverConfig.isUseSsl() );
+            assertFalse( serverConfig.isUseTls() );
+            assertEquals( LdapConnectionConfig.DEFAULT_LDAPS_PORT, serverConfig.getLdapPort() );
+
+            serverConfig = referralChaser.createConfig( new LdapUrl( "ldap://hosta/" ), false );
+            assertFalse( serverConfig.isUseSsl() );
+            assertFalse( serverConfig.isUseTls() );
+        }
+    }
+
+
+    @Test
+    public void testDefaultPort() throws Exception
+    {
+        servers.put( "hosta", new FakeServer()
+            .add( "ou=a,dc=example,dc=com", entry( "cn=a1,ou=a,dc=example,dc=com" ) )
+            .add( "ou=b,dc=example,dc=com", entry( "cn=b1,ou=b,dc=example,dc=com" ) ) );
+
+        SearchCursor cursor = chaser.chase( cursor( done( ResultCodeEnum.SUCCESS ),
+            reference( "ldap://hosta/ou=a,dc=example,dc=com" ),
+            reference( "ldap://hosta:389/ou=b,dc=example,dc=com" ) ),
+            request( "dc=example,dc=com", SearchScope.SUBTREE ) );
+
+        assertEquals( 2, read( cursor ).size() );
+
+        // The implicit and the explicit default port are the same server
+        assertEquals( 1, chaser.poolCount.get() );
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.sort;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewRequest;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewRequestImpl;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewResponse;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewResultCode;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.Strings;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * Tests the SortedEntryCursor.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SortedEntryCursorTest
+{
+    private static SchemaManager schemaManager;
+
+    @TempDir
+    Path tempDir;
+
+
+    @BeforeAll
+    public static void init() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    private static List<Entry> entries( String... cns ) throws LdapException
+    {
+        List<Entry> entries = new ArrayList<>();
+
+        for ( int i = 0; i < cns.length; i++ )
+        {
+            Entry entry = new DefaultEntry( "uid=" + i + ",ou=people,dc=example,dc=com" );
+            entry.add( "objectClass", "top", "person" );
+            entry.add( "uid", Integer.toString( i ) );
+
+            if ( cns[i] != null )
+            {
+                entry.add( "cn", cns[i] );
+                entry.add( "sn", cns[i] );
+            }
+
+            entries.add( entry );
+        }
+
+        return entries;
+    }
+
+
+    private static List<String> read( SortedEntryCursor cursor, String attributeId ) throws Exception
+    {
+        List<String> values = new ArrayList<>();
+
+        try
+        {
+            while ( cursor.next() )
+            {
+                Entry entry = cursor.get();
+
+                if ( entry.get( attributeId ) == null )
+                {
+                    values.add( null );
+                }
+                else
+                {
+                    values.add( entry.get( attributeId ).getString() );
+                }
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+
+        return values;
+    }
+
+
+    @Test
+    public void testSortWithoutSchema() throws Exception
+    {
+        SortedEntryCursor cursor = new SortedEntryCursor( new ListCursor<>( entries( "delta", "Alpha", null,
+            "charlie", "BRAVO" ) ), null, new SortKey( "cn" ) );
+
+        assertEquals( Arrays.asList( "Alpha", "BRAVO", "charlie", "delta", null ), read( cursor, "cn" ) );
+        assertEquals( 5L, cursor.getContentCount() );
+        assertEquals( 0, cursor.getRunCount() );
+        assertTrue( cursor.isClosed() );
+    }
+
+
+    @Test
+    public void testReverseSortWithSchema() throws Exception
+    {
+        List<Entry> entries = entries( "delta", "Alpha", null, "charlie", "BRAVO" );
+        entries.get( 0 ).add( "cn", "echo" );
+        entries.get( 3 ).add( "cn", "Aaron" );
+
+        SortedEntryCursor cursor = new SortedEntryCursor( new ListCursor<>( entries ), schemaManager,
+            new SortKey( "cn", null, true ) );
+
+        // The least value is used for the multi-valued attributes, and the entries
+        // without the attribute come first in reverse order
+        assertEquals( Arrays.asList( "2", "0", "4", "1", "3" ), read( cursor, "uid" ) );
+    }
+
+
+    @Test
+    public void testSortMixedKeyTypes() throws Exception
+    {
+        // A value of a String attribute received as a byte[]
+        List<Entry> entries = entries( "delta", "Alpha", null, "charlie", null );
+        entries.get( 2 ).add( "cn", Strings.getBytesUtf8( "BRAVO" ) );
+
+        SortedEntryCursor cursor = new SortedEntryCursor( new ListCursor<>( entries ), schemaManager,
+            new SortKey( "cn" ) );
+
+        assertEquals( Arrays.asList( "1", "2", "3", "0", "4" ), read( cursor, "uid" ) );
+
+        // The values of a binary attribute received as Strings
+        entries = entries( null, null, null );
+        entries.get( 0 ).add( "userPassword", "secret2" );
+        entries.get( 1 ).add( "userPassword", Strings.getBytesUtf8( "secret3" ) );
+        entries.get( 2 ).add( "userPassword", "secret1" );
+
+        cursor = new SortedEntryCursor( new ListCursor<>( entries ), schemaManager, new SortKey( "userPassword" ) );
+
+        assertEquals( Arrays.asList( "2", "0", "1" ), read( cursor, "uid" ) );
+    }
+
+
+    @Test
+    public void testSortOnSeveralKeys() throws Exception
+    {
+        List<Entry> entries = entries( "smith", "doe", "smith", "doe" );
+        entries.get( 0 ).add( "givenName", "john" );
+        entries.get( 1 ).add( "givenName", "jane" );
+        entries.get( 2 ).add( "givenName", "jack" );
+        entries.get( 3 ).add( "givenName", "jill" );
+
+        SortedEntryCursor cursor = new SortedEntryCursor( new ListCursor<>( entries ), schemaManager,
+            new SortKey( "sn" ), new SortKey( "givenName", null, true ) );
+
+        assertEquals( Arrays.asList( "3", "1", "0", "2" ), read( cursor, "uid" ) );
+    }
+
+
+    @Test
+    public void testNoOrderingRule() throws Exception
+    {
+        // jpegPhoto has no matching rule
+        assertThrows( LdapException.class, () -> new SortedEntryCursor( new ListCursor<Entry>(), schemaManager,
+            new SortKey( "jpegPhoto" ) ) );
+
+        // unless one is given
+        new SortedEntryCursor( new ListCursor<Entry>(), schemaManager,
+            new SortKey( "jpegPhoto", "octetStringOrderingMatch" ) ).close();
+
+        assertThrows( IllegalArgumentException.class, () -> new SortedEntryCursor( new ListCursor<Entry>(),
+            schemaManager ) );
+    }
+
+
+    @Test
+    public void testExternalMergeSort() throws Exception
+    {
+        Random random = new Random( 42L );
+        String[] cns = new String[1000];
+
+        for ( int i = 0; i < cns.length; i++ )
+        {
+            cns[i] = "name" + random.nextInt( 100 );
+        }
+
+        List<Entry> entries = new ArrayList<>();
+
+        for ( Entry entry : entries( cns ) )
+        {
+            entries.add( new DefaultEntry( schemaManager, entry ) );
+        }
+
+        entries.get( 10 ).add( "userCertificate", new byte[]
+            { 0x00, 0x01, ( byte ) 0xFF } );
+
+        SortedEntryCursor cursor = new SortedEntryCursor( new ListCursor<>( entries ), schemaManager,
+            new SortKey( "cn" ) );
+        cursor.setMaxEntriesInMemory( 37 );
+        cursor.setTempDirectory( tempDir );
+
+        List<Entry> sorted = new ArrayList<>();
+
+        while ( cursor.next() )
+        {
+            sorted.add( cursor.get() );
+        }
+
+        cursor.close();
+
+        assertEquals( 1000, sorted.size() );
+        assertEquals( 27, cursor.getRunCount() );
+
+        // The sort is stable
+        List<Entry> expected = new ArrayList<>( entries );
+        expected.sort( Comparator.comparing( entry -> cns[Integer.parseInt( entry.getDn().getRdn().getValue() )] ) );
+
+        for ( int i = 0; i < expected.size(); i++ )
+        {
+            assertEquals( expected.get( i ), sorted.get( i ) );
+        }
+
+        // The entries read back from the runs are still schema aware
+        assertTrue( sorted.get( 500 ).isSchemaAware() );
+
+        try ( Stream<Path> files = Files.list( tempDir ) )
+        {
+            assertEquals( 0L, files.count() );
+        }
+    }
+
+
+    @Test
+    public void testMultiPassMerge() throws Exception
+    {
+        String[] cns = new String[300];
+
+        for ( int i = 0; i < cns.length; i++ )
+        {
+            cns[i] = "name" + ( cns.length - i ) % 10;
+        }
+
+        SortedEntryCursor cursor = new SortedEntryCursor( new ListCursor<>( entries( cns ) ), null,
+            new SortKey( "cn" ) );
+        cursor.setMaxEntriesInMemory( 2 );
+        cursor.setTempDirectory( tempDir );
+
+        List<String> uids = read( cursor, "uid" );
+
+        assertEquals( 150, cursor.getRunCount() );
+        assertEquals( 300, uids.size() );
+        assertEquals( Arrays.asList( "0", "10", "20" ), uids.subList( 0, 3 ) );
+        assertEquals( "290", uids.get( 29 ) );
+        assertEquals( "9", uids.get( 30 ) );
+
+        try ( Stream<Path> files = Files.list( tempDir ) )
+        {
+            assertEquals( 0L, files.count() );
+        }
+    }
+
+
+    @Test
+    public void testWindow() throws Exception
+    {
+        String[] cns = new String[100];
+
+        for ( int i = 0; i < cns.length; i++ )
+        {
+            cns[i] = String.format( Locale.ROOT, "name%03d", cns.length - 1 - i );
+        }
+
+        SortedEntryCursor cursor = new SortedEntryCursor( new ListCursor<>( entries( cns ) ), null,
+            new SortKey( "cn" ) );
+        cursor.setMaxEntriesInMemory( 30 );
+        cursor.setTempDirectory( tempDir );
+        cursor.setWindow( 10, 5 );
+
+        assertEquals( Arrays.asList( "name010", "name011", "name012", "name013", "name014" ), read( cursor, "cn" ) );
+        assertEquals( 100L, cursor.getContentCount() );
+
+        cursor = new SortedEntryCursor( new ListCursor<>( entries( cns ) ), null, new SortKey( "cn" ) );
+        cursor.setWindow( 98, -1 );
+
+        assertEquals( Arrays.asList( "name098", "name099" ), read( cursor, "cn" ) );
+    }
+
+
+    @Test
+    public void testVirtualListViewByOffset() throws Exception
+    {
+        String[] cns = new String[100];
+
+        for ( int i = 0; i < cns.length; i++ )
+        {
+            cns[i] = String.format( Locale.ROOT, "name%03d", i );
+        }
+
+        VirtualListViewRequest vlvRequest = new VirtualListViewRequestImpl();
+        vlvRequest.setOffset( 50 );
+        vlvRequest.setContentCount( 0 );
+        vlvRequest.setBeforeCount( 2 );
+        vlvRequest.setAfterCount( 1 );
+
+        SortedEntryCursor cursor = new SortedEntryCursor( new ListCursor<>( entries( cns ) ), schemaManager,
+            new SortKey( "cn" ) );
+        cursor.setVirtualListView( vlvRequest );
+
+        assertEquals( Arrays.asList( "name047", "name048", "name049", "name050" ), read( cursor, "cn" ) );
+
+        VirtualListViewResponse vlvResponse = cursor.getVirtualListViewResponse();
+        assertEquals( 50, vlvResponse.getTargetPosition() );
+        assertEquals( 100, vlvResponse.getContentCount() );
+        assertEquals( VirtualListViewResultCode.SUCCESS, vlvResponse.getVirtualListViewResult() );
+
+        // The client thinks there are 200 entries : the offset is scaled
+        vlvRequest.setOffset( 100 );
+        vlvRequest.setContentCount( 200 );
+        vlvRequest.setBeforeCount( 0 );
+        vlvRequest.setAfterCount( 0 );
+        cursor = new SortedEntryCursor( new ListCursor<>( entries( cns ) ), schemaManager, new SortKey( "cn" ) );
+        cursor.setVirtualListView( vlvRequest );
+
+        assertEquals( Arrays.asList( "name049" ), read( cursor, "cn" ) );
+        assertEquals( 50, cursor.getVirtualListViewResponse().getTargetPosition() );
+
+        // Last page
+        vlvRequest.setOffset( 200 );
+        vlvRequest.setBeforeCount( 3 );
+        vlvRequest.setAfterCount( 3 );
+        cursor = new SortedEntryCursor( new ListCursor<>( entries( cns ) ), schemaManager, new SortKey( "cn" ) );
+        cursor.setVirtualListView( vlvRequest );
+
+        assertEquals( Arrays.asList( "name096", "name097", "name098", "name099" ), read( cursor, "cn" ) );
+        assertEquals( 100, cursor.getVirtualListViewResponse().getTargetPosition() );
+
+        // An offset of 0 is invalid
+        vlvRequest.setOffset( 0 );
+        cursor = new SortedEntryCursor( new ListCursor<>( entries( cns ) ), schemaManager, new SortKey( "cn" ) );
+        cursor.setVirtualListView( vlvRequest );
+
+        assertTrue( read( cursor, "cn" ).isEmpty() );
+        assertEquals( VirtualListViewResultCode.OFFSETRANGEERROR,
+            cursor.getVirtualListViewResponse().getVirtualListViewResult() );
+    }
+
+
+    @Test
+    public void testVirtualListViewByAssertion() throws Exception
+    {
+        String[] cns = new String[100];
+
+        for ( int i = 0; i < cns.length; i++ )
+        {
+            cns[i] = String.format( Locale.ROOT, "name%03d", i * 2 );
+        }
+
+        VirtualListViewRequest vlvRequest = new VirtualListViewRequestImpl();
+        vlvRequest.setAssertionValue( Strings.getBytesUtf8( "NAME051" ) );
+        vlvRequest.setBeforeCount( 1 );
+        vlvRequest.setAfterCount( 2 );
+
+        SortedEntryCursor cursor = new SortedEntryCursor( new ListCursor<>( entries( cns ) ), schemaManager,
+            new SortKey( "cn" ) );
+        cursor.setMaxEntriesInMemory( 16 );
+        cursor.setTempDirectory( tempDir );
+        cursor.setVirtualListView( vlvRequest );
+
+        assertEquals( Arrays.asList( "name050", "name052", "name054", "name056" ), read( cursor, "cn" ) );
+        assertEquals( 27, cursor.getVirtualListViewResponse().getTargetPosition() );
+        assertEquals( 100, cursor.getVirtualListViewResponse().getContentCount() );
+
+        // After the last entry
+        vlvRequest.setAssertionValue( Strings.getBytesUtf8( "zzz" ) );
+        cursor = new SortedEntryCursor( new ListCursor<>( entries( cns ) ), schemaManager, new SortKey( "cn" ) );
+        cursor.setVirtualListView( vlvRequest );
+
+        assertEquals( Arrays.asList( "name198" ), read( cursor, "cn" ) );
+        assertEquals( 101, cursor.getVirtualListViewResponse().getTargetPosition() );
+
+        try ( Stream<Path> files = Files.list( tempDir ) )
+        {
+            assertFalse( files.findAny().isPresent() );
+        }
+    }
+}
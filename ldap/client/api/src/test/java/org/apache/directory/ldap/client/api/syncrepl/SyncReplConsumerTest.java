@@ -0,0 +1,498 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.syncrepl;
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.extras.controls.SynchronizationModeEnum;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncDone.SyncDoneValue;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncDone.SyncDoneValueImpl;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncRequest.SyncRequestValue;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateTypeEnum;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateValue;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateValueImpl;
+import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SyncInfoValue;
+import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SyncInfoValueImpl;
+import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SynchronizationInfoEnum;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.DefaultLdapConnectionFactory;
+import org.apache.directory.ldap.client.api.LdapConnectionConfig;
+import org.apache.directory.ldap.client.api.LdapServerStub;
+import org.apache.mina.core.session.IoSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * Tests the SyncReplConsumer class, against a local scripted server stub.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SyncReplConsumerTest
+{
+    /** The server stub */
+    private LdapServerStub server;
+
+    /** The cookies sent by the consumer, "null" when there is none */
+    private List<String> requestCookies;
+
+
+    /**
+     * A listener recording the callbacks
+     */
+    private static class RecordingListener implements SyncReplListener
+    {
+        private final List<List<SyncReplChange>> batches = new CopyOnWriteArrayList<>();
+
+        private final List<Set<UUID>> retained = new CopyOnWriteArrayList<>();
+
+        private final AtomicInteger reloads = new AtomicInteger();
+
+
+        @Override
+        public void apply( List<SyncReplChange> changes )
+        {
+            batches.add( new ArrayList<>( changes ) );
+        }
+
+
+        @Override
+        public void retainOnly( Set<UUID> presentUuids )
+        {
+            retained.add( new HashSet<>( presentUuids ) );
+        }
+
+
+        @Override
+        public void reload()
+        {
+            reloads.incrementAndGet();
+        }
+
+
+        private List<SyncReplChange> getChanges()
+        {
+            List<SyncReplChange> changes = new ArrayList<>();
+
+            for ( List<SyncReplChange> batch : batches )
+            {
+                changes.addAll( batch );
+            }
+
+            return changes;
+        }
+    }
+
+
+    @BeforeEach
+    public void startServer() throws Exception
+    {
+        server = new LdapServerStub( LdapApiServiceFactory.getSingleton(), null );
+        requestCookies = new CopyOnWriteArrayList<>();
+    }
+
+
+    @AfterEach
+    public void stopServer()
+    {
+        server.stop();
+    }
+
+
+    private SyncReplConsumer createConsumer( SynchronizationModeEnum mode, SyncReplCheckpointStore store,
+        SyncReplListener listener, int batchSize, long batchDelay ) throws Exception
+    {
+        LdapConnectionConfig connectionConfig = new LdapConnectionConfig();
+        connectionConfig.setLdapHost( "localhost" );
+        connectionConfig.setLdapPort( server.getPort() );
+        connectionConfig.setName( "cn=consumer" );
+        connectionConfig.setCredentials( "secret" );
+
+        SyncReplConfig config = new SyncReplConfig();
+        config.setBaseDn( new Dn( "ou=people,dc=example,dc=com" ) );
+        config.setMode( mode );
+        config.setBatchSize( batchSize );
+        config.setBatchDelay( batchDelay );
+        config.setReconnectDelay( 10L );
+
+        return new SyncReplConsumer( new DefaultLdapConnectionFactory( connectionConfig ), config, store, listener );
+    }
+
+
+    private static UUID uuid( int i )
+    {
+        return new UUID( 0L, i );
+    }
+
+
+    private static byte[] uuidBytes( int i )
+    {
+        byte[] bytes = new byte[16];
+        bytes[15] = ( byte ) i;
+
+        return bytes;
+    }
+
+
+    private static byte[] cookie( String cookie )
+    {
+        return cookie == null ? null : Strings.getBytesUtf8( cookie );
+    }
+
+
+    private String recordCookie( SearchRequest searchRequest )
+    {
+        SyncRequestValue syncRequest = ( SyncRequestValue ) searchRequest.getControl( SyncRequestValue.OID );
+        String cookie = syncRequest.getCookie() == null ? null : Strings.utf8ToString( syncRequest.getCookie() );
+        requestCookies.add( String.valueOf( cookie ) );
+
+        return cookie;
+    }
+
+
+    private static void sendEntry( IoSession session, SearchRequest searchRequest, int i, SyncStateTypeEnum type,
+        String cookie ) throws Exception
+    {
+        SearchResultEntry searchResultEntry = new SearchResultEntryImpl( searchRequest.getMessageId() );
+        searchResultEntry.setEntry( new DefaultEntry( "cn=user" + i + ",ou=people,dc=example,dc=com",
+            "objectClass: person",
+            "cn: user" + i,
+            "sn: user" ) );
+
+        SyncStateValue syncState = new SyncStateValueImpl();
+        syncState.setSyncStateType( type );
+        syncState.setEntryUUID( uuidBytes( i ) );
+        syncState.setCookie( cookie( cookie ) );
+        searchResultEntry.addControl( syncState );
+
+        session.write( searchResultEntry );
+    }
+
+
+    private static void sendSyncInfo( IoSession session, SearchRequest searchRequest, SynchronizationInfoEnum type,
+        String cookie, boolean refreshDeletes, int... uuids )
+    {
+        SyncInfoValue syncInfo = new SyncInfoValueImpl();
+        syncInfo.setMessageId( searchRequest.getMessageId() );
+        syncInfo.setSyncInfoValueType( type );
+        syncInfo.setCookie( cookie( cookie ) );
+        syncInfo.setRefreshDeletes( refreshDeletes );
+
+        for ( int i : uuids )
+        {
+            syncInfo.addSyncUUID( uuidBytes( i ) );
+        }
+
+        session.write( syncInfo );
+    }
+
+
+    private static void sendDone( IoSession session, SearchRequest searchRequest, ResultCodeEnum resultCode,
+        String cookie, boolean refreshDeletes )
+    {
+        SearchResultDone searchResultDone = ( SearchResultDone ) searchRequest.getResultResponse();
+        searchResultDone.getLdapResult().setResultCode( resultCode );
+
+        if ( resultCode == ResultCodeEnum.SUCCESS )
+        {
+            SyncDoneValue syncDone = new SyncDoneValueImpl();
+            syncDone.setCookie( cookie( cookie ) );
+            syncDone.setRefreshDeletes( refreshDeletes );
+            searchResultDone.addControl( syncDone );
+        }
+
+        session.write( searchResultDone );
+    }
+
+
+    private static void waitFor( MemorySyncReplCheckpointStore store, String cookie ) throws InterruptedException
+    {
+        for ( int i = 0; ( i < 1000 ) && !Arrays.equals( cookie( cookie ), store.load() ); i++ )
+        {
+            Thread.sleep( 10L );
+        }
+
+        assertArrayEquals( cookie( cookie ), store.load() );
+    }
+
+
+    @Test
+    public void testRefreshOnly() throws Exception
+    {
+        server.setSearchHandler( ( session, searchRequest ) ->
+        {
+            if ( recordCookie( searchRequest ) == null )
+            {
+                // Initial content
+                sendEntry( session, searchRequest, 1, SyncStateTypeEnum.ADD, null );
+                sendEntry( session, searchRequest, 2, SyncStateTypeEnum.ADD, null );
+                sendEntry( session, searchRequest, 3, SyncStateTypeEnum.ADD, null );
+                sendDone( session, searchRequest, ResultCodeEnum.SUCCESS, "c1", false );
+            }
+            else
+            {
+                // Present phase : 1 is unchanged, 2 is modified, 3 is deleted
+                sendEntry( session, searchRequest, 1, SyncStateTypeEnum.PRESENT, null );
+                sendEntry( session, searchRequest, 2, SyncStateTypeEnum.MODIFY, null );
+                sendDone( session, searchRequest, ResultCodeEnum.SUCCESS, "c2", false );
+            }
+        } );
+
+        MemorySyncReplCheckpointStore store = new MemorySyncReplCheckpointStore();
+        RecordingListener listener = new RecordingListener();
+        SyncReplConsumer consumer = createConsumer( SynchronizationModeEnum.REFRESH_ONLY, store, listener, 2, 10000L );
+
+        consumer.sync();
+
+        assertTrue( consumer.isRefreshDone() );
+        assertEquals( 2, listener.batches.size() );
+        assertEquals( 2, listener.batches.get( 0 ).size() );
+        assertEquals( 1, listener.batches.get( 1 ).size() );
+        assertEquals( SyncStateTypeEnum.ADD, listener.batches.get( 1 ).get( 0 ).getType() );
+        assertEquals( uuid( 3 ), listener.batches.get( 1 ).get( 0 ).getEntryUuid() );
+        assertEquals( "cn=user3,ou=people,dc=example,dc=com", listener.batches.get( 1 ).get( 0 ).getDn().getName() );
+        assertEquals( new HashSet<>( Arrays.asList( uuid( 1 ), uuid( 2 ), uuid( 3 ) ) ), listener.retained.get( 0 ) );
+        assertArrayEquals( cookie( "c1" ), store.load() );
+
+        // Resume from the cookie : only the modified entry is delivered
+        consumer.sync();
+
+        assertEquals( 3, listener.batches.size() );
+        assertEquals( SyncStateTypeEnum.MODIFY, listener.batches.get( 2 ).get( 0 ).getType() );
+        assertEquals( new HashSet<>( Arrays.asList( uuid( 1 ), uuid( 2 ) ) ), listener.retained.get( 1 ) );
+        assertArrayEquals( cookie( "c2" ), store.load() );
+        assertEquals( Arrays.asList( "null", "c1" ), requestCookies );
+        assertEquals( 4L, consumer.getChangeCount() );
+    }
+
+
+    @Test
+    public void testRefreshAndPersist() throws Exception
+    {
+        server.setSearchHandler( ( session, searchRequest ) ->
+        {
+            recordCookie( searchRequest );
+
+            // Refresh, ended by a delete phase
+            sendEntry( session, searchRequest, 1, SyncStateTypeEnum.ADD, null );
+            sendEntry( session, searchRequest, 2, SyncStateTypeEnum.ADD, null );
+            sendSyncInfo( session, searchRequest, SynchronizationInfoEnum.REFRESH_DELETE, "c1", false );
+
+            // Persist
+            sendEntry( session, searchRequest, 3, SyncStateTypeEnum.ADD, "c2" );
+            sendEntry( session, searchRequest, 1, SyncStateTypeEnum.DELETE, "c3" );
+            sendSyncInfo( session, searchRequest, SynchronizationInfoEnum.SYNC_ID_SET, "c4", true, 2 );
+        } );
+
+        MemorySyncReplCheckpointStore store = new MemorySyncReplCheckpointStore();
+        RecordingListener listener = new RecordingListener();
+        SyncReplConsumer consumer = createConsumer( SynchronizationModeEnum.REFRESH_AND_PERSIST, store, listener,
+            100, 50L );
+
+        consumer.start();
+
+        try
+        {
+            waitFor( store, "c4" );
+        }
+        finally
+        {
+            consumer.stop();
+        }
+
+        assertTrue( consumer.isRefreshDone() );
+        assertTrue( listener.retained.isEmpty() );
+
+        List<SyncReplChange> changes = listener.getChanges();
+
+        assertEquals( 5, changes.size() );
+        assertEquals( SyncStateTypeEnum.ADD, changes.get( 2 ).getType() );
+        assertEquals( uuid( 3 ), changes.get( 2 ).getEntryUuid() );
+        assertEquals( SyncStateTypeEnum.DELETE, changes.get( 3 ).getType() );
+        assertEquals( uuid( 1 ), changes.get( 3 ).getEntryUuid() );
+        assertNull( changes.get( 3 ).getEntry() );
+        assertEquals( SyncStateTypeEnum.DELETE, changes.get( 4 ).getType() );
+        assertEquals( uuid( 2 ), changes.get( 4 ).getEntryUuid() );
+        assertNull( changes.get( 4 ).getDn() );
+    }
+
+
+    @Test
+    public void testSyncIdSetCookieSavedAfterDeletes() throws Exception
+    {
+        server.setSearchHandler( ( session, searchRequest ) ->
+        {
+            recordCookie( searchRequest );
+
+            sendEntry( session, searchRequest, 1, SyncStateTypeEnum.ADD, null );
+            sendEntry( session, searchRequest, 2, SyncStateTypeEnum.ADD, null );
+            sendEntry( session, searchRequest, 3, SyncStateTypeEnum.ADD, null );
+            sendSyncInfo( session, searchRequest, SynchronizationInfoEnum.REFRESH_DELETE, "c1", false );
+
+            // The batch is flushed for each UUID, before the end of the set
+            sendSyncInfo( session, searchRequest, SynchronizationInfoEnum.SYNC_ID_SET, "c2", true, 1, 2, 3 );
+        } );
+
+        RecordingListener listener = new RecordingListener();
+        List<String> savedCookies = new CopyOnWriteArrayList<>();
+        MemorySyncReplCheckpointStore store = new MemorySyncReplCheckpointStore()
+        {
+            @Override
+            public void save( byte[] cookie )
+            {
+                savedCookies.add( Strings.utf8ToString( cookie ) + "@" + listener.getChanges().size() );
+                super.save( cookie );
+            }
+        };
+
+        SyncReplConsumer consumer = createConsumer( SynchronizationModeEnum.REFRESH_AND_PERSIST, store, listener,
+            1, 10000L );
+
+        consumer.start();
+
+        try
+        {
+            waitFor( store, "c2" );
+        }
+        finally
+        {
+            consumer.stop();
+        }
+
+        // c2 is only saved once the 3 deletes have been delivered
+        assertEquals( 6, listener.getChanges().size() );
+        assertEquals( "c2@6", savedCookies.get( savedCookies.size() - 1 ) );
+
+        for ( String savedCookie : savedCookies )
+        {
+            assertTrue( savedCookie.startsWith( "c1@" ) || "c2@6".equals( savedCookie ), savedCookie );
+        }
+    }
+
+
+    @Test
+    public void testReconnect() throws Exception
+    {
+        AtomicInteger searches = new AtomicInteger();
+
+        server.setSearchHandler( ( session, searchRequest ) ->
+        {
+            recordCookie( searchRequest );
+            sendEntry( session, searchRequest, 1, SyncStateTypeEnum.ADD, null );
+
+            if ( searches.incrementAndGet() == 1 )
+            {
+                // The connection is lost during the refresh
+                session.closeOnFlush();
+
+                return;
+            }
+
+            sendEntry( session, searchRequest, 2, SyncStateTypeEnum.ADD, null );
+            sendDone( session, searchRequest, ResultCodeEnum.SUCCESS, "c1", false );
+        } );
+
+        MemorySyncReplCheckpointStore store = new MemorySyncReplCheckpointStore();
+        RecordingListener listener = new RecordingListener();
+        SyncReplConsumer consumer = createConsumer( SynchronizationModeEnum.REFRESH_ONLY, store, listener, 100,
+            10000L );
+
+        consumer.sync();
+
+        assertEquals( 1L, consumer.getReconnectCount() );
+        assertEquals( Arrays.asList( "null", "null" ), requestCookies );
+        assertEquals( 2, listener.getChanges().size() );
+        assertEquals( new HashSet<>( Arrays.asList( uuid( 1 ), uuid( 2 ) ) ), listener.retained.get( 0 ) );
+        assertArrayEquals( cookie( "c1" ), store.load() );
+    }
+
+
+    @Test
+    public void testRefreshRequired() throws Exception
+    {
+        server.setSearchHandler( ( session, searchRequest ) ->
+        {
+            if ( recordCookie( searchRequest ) != null )
+            {
+                sendDone( session, searchRequest, ResultCodeEnum.E_SYNC_REFRESH_REQUIRED, null, false );
+
+                return;
+            }
+
+            sendEntry( session, searchRequest, 1, SyncStateTypeEnum.ADD, null );
+            sendDone( session, searchRequest, ResultCodeEnum.SUCCESS, "c1", false );
+        } );
+
+        MemorySyncReplCheckpointStore store = new MemorySyncReplCheckpointStore( cookie( "old" ) );
+        RecordingListener listener = new RecordingListener();
+        SyncReplConsumer consumer = createConsumer( SynchronizationModeEnum.REFRESH_ONLY, store, listener, 100,
+            10000L );
+
+        consumer.sync();
+
+        assertEquals( 1, listener.reloads.get() );
+        assertEquals( 0L, consumer.getReconnectCount() );
+        assertEquals( Arrays.asList( "old", "null" ), requestCookies );
+        assertEquals( 1, listener.getChanges().size() );
+        assertArrayEquals( cookie( "c1" ), store.load() );
+    }
+
+
+    @Test
+    public void testFileCheckpointStore( @TempDir Path tempDir ) throws Exception
+    {
+        FileSyncReplCheckpointStore store = new FileSyncReplCheckpointStore( tempDir.resolve( "sync/people.cookie" ) );
+
+        assertNull( store.load() );
+
+        store.save( cookie( "c1" ) );
+        store.save( cookie( "c2" ) );
+
+        assertArrayEquals( cookie( "c2" ), new FileSyncReplCheckpointStore( store.getFile() ).load() );
+
+        store.save( null );
+
+        assertNull( store.load() );
+    }
+}
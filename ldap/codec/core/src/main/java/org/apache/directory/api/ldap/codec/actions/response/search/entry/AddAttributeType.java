@@ -27,8 +27,13 @@ import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -83,8 +88,22 @@ public class AddAttributeType extends GrammarAction<LdapMessageContainer<SearchR
             try
             {
                 Attribute attribute = new DefaultAttribute( tlv.getValue().getData() );
+                SchemaManager schemaManager = container.getSchemaManager();
+                Entry entry = searchResultEntry.getEntry();
+
+                // The binary-ness is the same for all the values
+                container.setCurrentAttributeBinary( container.isBinary( attribute.getId() ) );
+
+                if ( ( schemaManager != null ) && entry.isSchemaAware() )
+                {
+                    attribute = addSchemaAware( container, schemaManager, attribute );
+                }
+                else
+                {
+                    entry.put( attribute );
+                }
+
                 container.setCurrentAttribute( attribute );
-                searchResultEntry.getEntry().put( attribute );
             }
             catch ( LdapException ine )
             {
@@ -102,4 +121,92 @@ public class AddAttributeType extends GrammarAction<LdapMessageContainer<SearchR
             LOG.debug( I18n.msg( I18n.MSG_05179_ATTRIBUTE_TYPE, type ) );
         }
     }
+
+
+    /**
+     * Adds an attribute to a schema aware entry, resolving its AttributeType. The entry is
+     * switched to a schema agnostic entry if the AttributeType is unknown.
+     *
+     * @return The attribute the values will be added to
+     */
+    private Attribute addSchemaAware( LdapMessageContainer<SearchResultEntry> container, SchemaManager schemaManager,
+        Attribute attribute ) throws LdapException
+    {
+        AttributeType attributeType;
+
+        try
+        {
+            attributeType = schemaManager.lookupAttributeTypeRegistry( attribute.getId() );
+        }
+        catch ( LdapException le )
+        {
+            toSchemaAgnostic( container );
+            container.getMessage().getEntry().put( attribute );
+
+            return attribute;
+        }
+
+        // This is the attribute a schema aware entry would create when copying the attribute
+        Attribute schemaAttribute = new DefaultAttribute( attributeType, attribute );
+        Entry entry = container.getMessage().getEntry();
+        Attribute existing = entry.get( attributeType );
+
+        if ( ( existing == null ) || existing.getId().equals( schemaAttribute.getId() ) )
+        {
+            // The same attribute may be sent twice : the last one wins
+            entry.put( schemaAttribute );
+
+            return schemaAttribute;
+        }
+
+        // Another ID of the same AttributeType : the values are merged
+        existing.setUpId( schemaAttribute.getUpId() );
+
+        return existing;
+    }
+
+
+    /**
+     * Switches the entry being decoded to a schema agnostic entry, when one of its attributes
+     * or values does not comply with the schema. The entry will then be checked against the
+     * schema once decoded, which will report the error.
+     *
+     * @param container The container
+     * @throws LdapException If the attributes can't be copied
+     */
+    static void toSchemaAgnostic( LdapMessageContainer<SearchResultEntry> container ) throws LdapException
+    {
+        SearchResultEntry searchResultEntry = container.getMessage();
+        Attribute currentAttribute = container.getCurrentAttribute();
+        Entry entry = new DefaultEntry( searchResultEntry.getObjectName() );
+
+        for ( Attribute schemaAttribute : searchResultEntry.getEntry() )
+        {
+            Attribute attribute = new DefaultAttribute( Strings.getBytesUtf8( schemaAttribute.getUpId() ) );
+            boolean isBinary = container.isBinary( attribute.getId() );
+
+            for ( Value value : schemaAttribute )
+            {
+                byte[] bytes = value.getBytes();
+
+                if ( isBinary && !Strings.isEmpty( bytes ) )
+                {
+                    attribute.add( bytes );
+                }
+                else
+                {
+                    attribute.add( value.getString() );
+                }
+            }
+
+            entry.put( attribute );
+
+            if ( schemaAttribute == currentAttribute )
+            {
+                container.setCurrentAttribute( attribute );
+            }
+        }
+
+        searchResultEntry.setEntry( entry );
+    }
 }
@@ -22,8 +22,10 @@ package org.apache.directory.api.ldap.codec.actions.response.search.entry;
 
 import org.apache.directory.api.asn1.ber.grammar.GrammarAction;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.message.SearchResultEntry;
 import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
 
 
 /**
@@ -52,6 +54,14 @@ public class InitSearchResultEntry extends GrammarAction<LdapMessageContainer<Se
     {
         // Now, we can allocate the SearchResultEntry Object
         SearchResultEntry searchResultEntry = new SearchResultEntryImpl( container.getMessageId() );
+        SchemaManager schemaManager = container.getSchemaManager();
+
+        // The attributes will be directly created as schema aware attributes
+        if ( schemaManager != null )
+        {
+            searchResultEntry.setEntry( new DefaultEntry( schemaManager ) );
+        }
+
         container.setMessage( searchResultEntry );
     }
 }
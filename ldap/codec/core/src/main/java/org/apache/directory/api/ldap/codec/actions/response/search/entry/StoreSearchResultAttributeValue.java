@@ -25,8 +25,10 @@ import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
 import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,46 +71,136 @@ public class StoreSearchResultAttributeValue extends GrammarAction<LdapMessageCo
         // Store the value
         try
         {
-            if ( tlv.getLength() == 0 )
+            if ( ( currentAttribute.getAttributeType() == null ) || !addSchemaAware( container, tlv ) )
             {
-                currentAttribute.add( "" );
+                addSchemaAgnostic( container, tlv );
+            }
+        }
+        catch ( LdapException le )
+        {
+            // Just swallow the exception, it can't occur here
+        }
+
+        // We can have an END transition
+        container.setGrammarEndAllowed( true );
+    }
+
+
+    /**
+     * Adds the value to a schema agnostic attribute, as a byte[] if the attribute is binary
+     */
+    private void addSchemaAgnostic( LdapMessageContainer<SearchResultEntry> container, TLV tlv )
+        throws LdapException
+    {
+        Attribute currentAttribute = container.getCurrentAttribute();
+
+        if ( tlv.getLength() == 0 )
+        {
+            currentAttribute.add( "" );
+
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( I18n.msg( I18n.MSG_05180_NULL_ATTRIBUTE_VALUE ) );
+            }
+        }
+        else
+        {
+            if ( container.isCurrentAttributeBinary() )
+            {
+                byte[] value = tlv.getValue().getData();
+                currentAttribute.add( value );
 
                 if ( LOG.isDebugEnabled() )
                 {
-                    LOG.debug( I18n.msg( I18n.MSG_05180_NULL_ATTRIBUTE_VALUE ) );
+                    LOG.debug( I18n.msg( I18n.MSG_05181_ATTRIBUTE_VALUE, Strings.dumpBytes( ( byte[] ) value ) ) );
                 }
             }
             else
             {
-                if ( container.isBinary( container.getCurrentAttribute().getId() ) )
-                {
-                    byte[] value = tlv.getValue().getData();
-                    currentAttribute.add( value );
+                String value = Strings.utf8ToString( tlv.getValue().getData() );
+                currentAttribute.add( value );
 
-                    if ( LOG.isDebugEnabled() )
-                    {
-                        LOG.debug( I18n.msg( I18n.MSG_05181_ATTRIBUTE_VALUE, Strings.dumpBytes( ( byte[] ) value ) ) );
-                    }
-                }
-                else
+                if ( LOG.isDebugEnabled() )
                 {
-                    String value = Strings.utf8ToString( tlv.getValue().getData() );
-                    currentAttribute.add( value );
-
-                    if ( LOG.isDebugEnabled() )
-                    {
-                        LOG.debug( I18n.msg( I18n.MSG_05181_ATTRIBUTE_VALUE, value ) );
-                    }
+                    LOG.debug( I18n.msg( I18n.MSG_05181_ATTRIBUTE_VALUE, value ) );
                 }
+            }
+        }
+    }
+
+
+    /**
+     * Adds the value to a schema aware attribute, creating the value the way a
+     * schema aware entry would when copying a schema agnostic value. The entry is
+     * switched to a schema agnostic entry if the value is invalid.
+     *
+     * @return <code>true</code> if the value has been added
+     */
+    private boolean addSchemaAware( LdapMessageContainer<SearchResultEntry> container, TLV tlv )
+        throws LdapException
+    {
+        Attribute currentAttribute = container.getCurrentAttribute();
+        AttributeType attributeType = currentAttribute.getAttributeType();
+        byte[] data = tlv.getLength() == 0 ? Strings.EMPTY_BYTES : tlv.getValue().getData();
+        Value value;
 
+        try
+        {
+            if ( container.isTrustedValues() )
+            {
+                value = createTrustedValue( container, attributeType, data );
+            }
+            else if ( currentAttribute.isHumanReadable() )
+            {
+                value = new Value( attributeType, Strings.utf8ToString( data ) );
+            }
+            else if ( container.isCurrentAttributeBinary() )
+            {
+                value = new Value( attributeType, data );
+            }
+            else
+            {
+                // The value would have been decoded as a String first
+                value = new Value( attributeType, Strings.getBytesUtf8( Strings.utf8ToString( data ) ) );
             }
         }
-        catch ( LdapException le )
+        catch ( LdapException | IllegalArgumentException e )
         {
-            // Just swallow the exception, it can't occur here
+            AddAttributeType.toSchemaAgnostic( container );
+
+            return false;
         }
 
-        // We can have an END transition
-        container.setGrammarEndAllowed( true );
+        currentAttribute.add( value );
+
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( I18n.msg( I18n.MSG_05181_ATTRIBUTE_VALUE, value ) );
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Creates a trusted value : it is not checked against its syntax, and its normalized
+     * form is computed when first needed.
+     */
+    private Value createTrustedValue( LdapMessageContainer<SearchResultEntry> container, AttributeType attributeType,
+        byte[] data )
+    {
+        if ( container.getCurrentAttribute().isHumanReadable() )
+        {
+            return Value.createTrusted( attributeType, Strings.utf8ToString( data ) );
+        }
+        else if ( container.isCurrentAttributeBinary() )
+        {
+            return Value.createTrusted( attributeType, data );
+        }
+        else
+        {
+            // The value would have been decoded as a String first
+            return Value.createTrusted( attributeType, Strings.getBytesUtf8( Strings.utf8ToString( data ) ) );
+        }
     }
 }
@@ -29,6 +29,7 @@ import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.ldap.model.message.SearchResultEntry;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.name.DnFactory;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -103,9 +104,38 @@ public class StoreSearchResultEntryObjectName extends GrammarAction<LdapMessageC
             }
         }
 
+        SchemaManager schemaManager = container.getSchemaManager();
+
+        if ( ( schemaManager != null ) && !searchResultEntry.getObjectName().isSchemaAware() )
+        {
+            searchResultEntry.setObjectName( normalize( schemaManager, searchResultEntry.getObjectName() ) );
+        }
+
         if ( LOG.isDebugEnabled() )
         {
             LOG.debug( I18n.msg( I18n.MSG_05182_SEARCH_RESULT_ENTRY_DN, searchResultEntry.getObjectName() ) );
         }
     }
+
+
+    /**
+     * Normalizes the entry Dn, as a schema aware entry would do. The Dn is kept as is
+     * if it can't be normalized.
+     */
+    private Dn normalize( SchemaManager schemaManager, Dn dn )
+    {
+        try
+        {
+            return new Dn( schemaManager, dn );
+        }
+        catch ( LdapInvalidDnException lide )
+        {
+            if ( LOG.isWarnEnabled() )
+            {
+                LOG.warn( I18n.msg( I18n.MSG_13201_DN_CANT_BE_NORMALIZED, dn ) );
+            }
+
+            return dn;
+        }
+    }
 }
@@ -91,7 +91,7 @@ public final class LdapEncoder
      * @param isRequest A flag set to <tt>true</tt> if the LdapMessage is a request
      * @throws EncoderException If the encoding failed
      */
-    private static void encodeControls( Asn1Buffer buffer, LdapApiService codec,
+    static void encodeControls( Asn1Buffer buffer, LdapApiService codec,
         Map<String, Control> controls, Iterator<String> iterator, boolean isRequest ) throws EncoderException
     {
         if ( iterator.hasNext() )
@@ -36,6 +36,7 @@ import org.apache.directory.api.ldap.model.message.LdapResult;
 import org.apache.directory.api.ldap.model.message.Message;
 import org.apache.directory.api.ldap.model.message.ResultResponse;
 import org.apache.directory.api.ldap.model.name.DnFactory;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
 
 
 /**
@@ -82,6 +83,15 @@ public class LdapMessageContainer<E extends Message> extends AbstractContainer
     /** The current attribute being decoded */
     private Attribute currentAttribute;
 
+    /** Tells if the current attribute values are binary */
+    private boolean currentAttributeBinary;
+
+    /** The SchemaManager used to decode schema aware entries, if any */
+    private SchemaManager schemaManager;
+
+    /** Tells if the values of the schema aware entries are trusted */
+    private boolean trustedValues;
+
     /** A local storage for the MODIFY operation */
     private Modification currentModification;
     
@@ -172,6 +182,7 @@ public class LdapMessageContainer<E extends Message> extends AbstractContainer
         ldapResult = null;
         currentControl = null;
         currentAttribute = null;
+        currentAttributeBinary = false;
         currentFilter = null;
         terminalFilter = null;
         topFilter = null;
@@ -304,6 +315,71 @@ public class LdapMessageContainer<E extends Message> extends AbstractContainer
     }
 
 
+    /**
+     * @return <code>true</code> if the current attribute values are binary
+     */
+    public boolean isCurrentAttributeBinary()
+    {
+        return currentAttributeBinary;
+    }
+
+
+    /**
+     * @param currentAttributeBinary Tells if the current attribute values are binary
+     */
+    public void setCurrentAttributeBinary( boolean currentAttributeBinary )
+    {
+        this.currentAttributeBinary = currentAttributeBinary;
+    }
+
+
+    /**
+     * @return The SchemaManager used to decode schema aware entries, or null
+     */
+    public SchemaManager getSchemaManager()
+    {
+        return schemaManager;
+    }
+
+
+    /**
+     * Sets the SchemaManager used to decode the SearchResultEntry. When set, the
+     * entries are decoded as schema aware entries, the AttributeType of each attribute
+     * being resolved once, so that they don't have to be copied afterward. An entry
+     * containing an attribute or a value which does not comply with the schema is
+     * decoded as a schema agnostic entry.
+     *
+     * @param schemaManager The SchemaManager, or null to decode schema agnostic entries
+     */
+    public void setSchemaManager( SchemaManager schemaManager )
+    {
+        this.schemaManager = schemaManager;
+    }
+
+
+    /**
+     * @return <code>true</code> if the values of the schema aware entries are trusted
+     */
+    public boolean isTrustedValues()
+    {
+        return trustedValues;
+    }
+
+
+    /**
+     * Tells if the values of the schema aware entries come from a trusted server. A trusted
+     * value is not checked against its syntax, and its normalized form is only computed when
+     * first needed (see {@link org.apache.directory.api.ldap.model.entry.Value#createTrusted(
+     * org.apache.directory.api.ldap.model.schema.AttributeType, String)}).
+     *
+     * @param trustedValues <code>true</code> if the values are trusted
+     */
+    public void setTrustedValues( boolean trustedValues )
+    {
+        this.trustedValues = trustedValues;
+    }
+
+
     /**
      * @return the currentModification
      */
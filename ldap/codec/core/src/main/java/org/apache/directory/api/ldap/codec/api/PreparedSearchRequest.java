@@ -0,0 +1,663 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec.api;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.asn1.EncoderException;
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
+import org.apache.directory.api.asn1.ber.tlv.UniversalTag;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.model.filter.AndNode;
+import org.apache.directory.api.ldap.model.filter.ApproximateNode;
+import org.apache.directory.api.ldap.model.filter.BranchNode;
+import org.apache.directory.api.ldap.model.filter.EqualityNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.ExtensibleNode;
+import org.apache.directory.api.ldap.model.filter.FilterTemplate;
+import org.apache.directory.api.ldap.model.filter.GreaterEqNode;
+import org.apache.directory.api.ldap.model.filter.LessEqNode;
+import org.apache.directory.api.ldap.model.filter.NotNode;
+import org.apache.directory.api.ldap.model.filter.OrNode;
+import org.apache.directory.api.ldap.model.filter.PresenceNode;
+import org.apache.directory.api.ldap.model.filter.SimpleNode;
+import org.apache.directory.api.ldap.model.filter.SubstringNode;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.Control;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A SearchRequest which filter is a {@link FilterTemplate}, encoded once. The parts of the
+ * PDU which don't depend on the place-holder values (the base, the scope, the limits, the
+ * attributes, the controls and the filter parts without place-holders) are pre-encoded,
+ * and each execution only encodes the message ID and the assertion values, and computes
+ * the lengths of the elements which contain them.
+ * <p>
+ * The encoding is a short program, executed in the same order as the {@link LdapEncoder} reverse
+ * encoding : the pre-encoded byte[] are copied, and the sequences which contain a place-holder
+ * are closed when all their elements have been written.
+ * <p>
+ * This class is immutable, and can be shared by many threads and connections.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class PreparedSearchRequest
+{
+    /** Copies some pre-encoded bytes */
+    private static final byte OP_CONSTANT = 0;
+
+    /** Encodes a place-holder value as an OctetString */
+    private static final byte OP_VALUE = 1;
+
+    /** Stores the position at the end of a sequence, before its elements are written */
+    private static final byte OP_MARK = 2;
+
+    /** Closes a sequence, when all its elements have been written */
+    private static final byte OP_SEQUENCE = 3;
+
+    /** Encodes the message ID */
+    private static final byte OP_MESSAGE_ID = 4;
+
+    /** The filter template */
+    private final FilterTemplate filterTemplate;
+
+    /** The search base */
+    private final Dn base;
+
+    /** The search scope */
+    private final SearchScope scope;
+
+    /** The alias dereferencing mode */
+    private final AliasDerefMode derefAliases;
+
+    /** The size limit */
+    private final long sizeLimit;
+
+    /** The time limit */
+    private final int timeLimit;
+
+    /** The typesOnly flag */
+    private final boolean typesOnly;
+
+    /** The requested attributes */
+    private final List<String> attributes;
+
+    /** The request controls */
+    private final Control[] controls;
+
+    /** The operations */
+    private final byte[] operations;
+
+    /** The operations tag : the OctetString tag for a value, the sequence tag for a sequence */
+    private final byte[] tags;
+
+    /** The operations argument : the constant index or the value index */
+    private final int[] arguments;
+
+    /** The pre-encoded constants */
+    private final byte[][] constants;
+
+    /** The maximum number of sequences being encoded at the same time */
+    private final int maxDepth;
+
+
+    /**
+     * Prepares a SearchRequest.
+     *
+     * @param codec The LdapApiService instance used to encode the controls
+     * @param searchRequest The SearchRequest containing the search parameters. Its filter is not used.
+     * @param filterTemplate The filter template
+     * @throws EncoderException If the controls can't be encoded
+     */
+    public PreparedSearchRequest( LdapApiService codec, SearchRequest searchRequest, FilterTemplate filterTemplate )
+        throws EncoderException
+    {
+        this.filterTemplate = filterTemplate;
+        base = searchRequest.getBase();
+        scope = searchRequest.getScope();
+        derefAliases = searchRequest.getDerefAliases();
+        sizeLimit = searchRequest.getSizeLimit();
+        timeLimit = searchRequest.getTimeLimit();
+        typesOnly = searchRequest.getTypesOnly();
+        attributes = Collections.unmodifiableList( new ArrayList<>( searchRequest.getAttributes() ) );
+
+        Map<String, Control> requestControls = searchRequest.getControls();
+        controls = requestControls.values().toArray( new Control[0] );
+
+        Compiler compiler = new Compiler();
+
+        // The LdapMessage sequence
+        compiler.mark();
+
+        // The controls, if any
+        if ( !requestControls.isEmpty() )
+        {
+            Asn1Buffer buffer = compiler.pending;
+            int start = buffer.getPos();
+            LdapEncoder.encodeControls( buffer, codec, requestControls, requestControls.keySet().iterator(), true );
+            BerValue.encodeSequence( buffer, ( byte ) LdapCodecConstants.CONTROLS_TAG, start );
+        }
+
+        // The SearchRequest
+        compiler.mark();
+        Asn1Buffer buffer = compiler.pending;
+
+        // The attributes, if any
+        int start = buffer.getPos();
+
+        for ( int i = attributes.size(); i > 0; i-- )
+        {
+            BerValue.encodeOctetString( buffer, attributes.get( i - 1 ) );
+        }
+
+        BerValue.encodeSequence( buffer, start );
+
+        // The filter
+        compiler.filter( filterTemplate.getFilter() );
+
+        buffer = compiler.pending;
+        BerValue.encodeBoolean( buffer, typesOnly );
+        BerValue.encodeInteger( buffer, timeLimit );
+        BerValue.encodeInteger( buffer, sizeLimit );
+        BerValue.encodeEnumerated( buffer, derefAliases.getValue() );
+        BerValue.encodeEnumerated( buffer, scope.getScope() );
+        BerValue.encodeOctetString( buffer, Strings.getBytesUtf8( base.getName() ) );
+        compiler.sequence( LdapCodecConstants.SEARCH_REQUEST_TAG );
+
+        // The message ID, and the LdapMessage sequence
+        compiler.messageId();
+        compiler.sequence( UniversalTag.SEQUENCE.getValue() );
+
+        operations = new byte[compiler.operations.size()];
+        tags = new byte[operations.length];
+        arguments = new int[operations.length];
+
+        for ( int i = 0; i < operations.length; i++ )
+        {
+            int[] operation = compiler.operations.get( i );
+            operations[i] = ( byte ) operation[0];
+            tags[i] = ( byte ) operation[1];
+            arguments[i] = operation[2];
+        }
+
+        constants = compiler.constants.toArray( new byte[0][] );
+        maxDepth = compiler.maxDepth;
+    }
+
+
+    /**
+     * Builds the encoding program.
+     */
+    private static final class Compiler
+    {
+        /** The operations, as { operation, tag, argument } */
+        private final List<int[]> operations = new ArrayList<>();
+
+        /** The pre-encoded constants */
+        private final List<byte[]> constants = new ArrayList<>();
+
+        /** The invariant bytes not yet stored as a constant */
+        private Asn1Buffer pending = new Asn1Buffer();
+
+        /** The current depth */
+        private int depth;
+
+        /** The maximum depth */
+        private int maxDepth;
+
+
+        /**
+         * Stores the pending bytes as a constant
+         */
+        private void flush()
+        {
+            if ( pending.getPos() > 0 )
+            {
+                operations.add( new int[] { OP_CONSTANT, 0, constants.size() } );
+                constants.add( pending.getBytes().array() );
+                pending = new Asn1Buffer();
+            }
+        }
+
+
+        private void mark()
+        {
+            flush();
+            operations.add( new int[] { OP_MARK, 0, 0 } );
+            depth++;
+            maxDepth = Math.max( maxDepth, depth );
+        }
+
+
+        private void sequence( byte tag )
+        {
+            flush();
+            operations.add( new int[] { OP_SEQUENCE, tag, 0 } );
+            depth--;
+        }
+
+
+        private void value( int tag, int index )
+        {
+            flush();
+            operations.add( new int[] { OP_VALUE, tag, index } );
+        }
+
+
+        private void messageId()
+        {
+            flush();
+            operations.add( new int[] { OP_MESSAGE_ID, 0, 0 } );
+        }
+
+
+        /**
+         * Encodes an OctetString which may be a place-holder
+         */
+        private void octetString( int tag, String value )
+        {
+            int index = FilterTemplate.getPlaceHolderIndex( value );
+
+            if ( index >= 0 )
+            {
+                value( tag, index );
+            }
+            else
+            {
+                BerValue.encodeOctetString( pending, ( byte ) tag, Strings.getBytesUtf8( value ) );
+            }
+        }
+
+
+        /**
+         * Starts a sequence. The sequence of a filter without place-holder is directly
+         * encoded in the pending bytes.
+         *
+         * @return The sequence start position in the pending bytes
+         */
+        private int begin( boolean constant )
+        {
+            if ( constant )
+            {
+                return pending.getPos();
+            }
+
+            mark();
+
+            return 0;
+        }
+
+
+        /**
+         * Ends a sequence started with {@link #begin(boolean)}
+         */
+        private void end( boolean constant, byte tag, int start )
+        {
+            if ( constant )
+            {
+                BerValue.encodeSequence( pending, tag, start );
+            }
+            else
+            {
+                sequence( tag );
+            }
+        }
+
+
+        /**
+         * Compiles a filter, following the SearchRequestFactory encoding. The filters without
+         * place-holder are pre-encoded.
+         */
+        private void filter( ExprNode node )
+        {
+            boolean constant = !hasPlaceHolder( node );
+
+            if ( ( node instanceof AndNode ) || ( node instanceof OrNode ) || ( node instanceof NotNode ) )
+            {
+                int tag;
+
+                if ( node instanceof OrNode )
+                {
+                    tag = LdapCodecConstants.OR_FILTER_TAG;
+                }
+                else if ( node instanceof NotNode )
+                {
+                    tag = LdapCodecConstants.NOT_FILTER_TAG;
+                }
+                else
+                {
+                    tag = LdapCodecConstants.AND_FILTER_TAG;
+                }
+
+                int start = begin( constant );
+                List<ExprNode> children = ( ( BranchNode ) node ).getChildren();
+
+                if ( children != null )
+                {
+                    for ( int i = children.size(); i > 0; i-- )
+                    {
+                        filter( children.get( i - 1 ) );
+                    }
+                }
+
+                end( constant, ( byte ) tag, start );
+            }
+            else if ( ( node instanceof EqualityNode ) || ( node instanceof GreaterEqNode )
+                || ( node instanceof LessEqNode ) || ( node instanceof ApproximateNode ) )
+            {
+                int tag;
+
+                if ( node instanceof EqualityNode )
+                {
+                    tag = LdapCodecConstants.EQUALITY_MATCH_FILTER_TAG;
+                }
+                else if ( node instanceof GreaterEqNode )
+                {
+                    tag = LdapCodecConstants.GREATER_OR_EQUAL_FILTER_TAG;
+                }
+                else if ( node instanceof LessEqNode )
+                {
+                    tag = LdapCodecConstants.LESS_OR_EQUAL_FILTER_TAG;
+                }
+                else
+                {
+                    tag = LdapCodecConstants.APPROX_MATCH_FILTER_TAG;
+                }
+
+                SimpleNode<?> simpleNode = ( SimpleNode<?> ) node;
+                int start = begin( constant );
+
+                if ( constant )
+                {
+                    BerValue.encodeOctetString( pending, simpleNode.getValue().getBytes() );
+                }
+                else
+                {
+                    value( UniversalTag.OCTET_STRING.getValue(), FilterTemplate.getPlaceHolderIndex( simpleNode.getValue() ) );
+                }
+
+                BerValue.encodeOctetString( pending, simpleNode.getAttribute() );
+                end( constant, ( byte ) tag, start );
+            }
+            else if ( node instanceof PresenceNode )
+            {
+                BerValue.encodeOctetString( pending, ( byte ) LdapCodecConstants.PRESENT_FILTER_TAG,
+                    Strings.getBytesUtf8( ( ( PresenceNode ) node ).getAttribute() ) );
+            }
+            else if ( node instanceof SubstringNode )
+            {
+                SubstringNode substringNode = ( SubstringNode ) node;
+
+                // The SubstringFilter, and the substrings sequences
+                int start = begin( constant );
+                int substringsStart = begin( constant );
+
+                if ( substringNode.getFinal() != null )
+                {
+                    octetString( LdapCodecConstants.SUBSTRINGS_FILTER_FINAL_TAG, substringNode.getFinal() );
+                }
+
+                List<String> any = substringNode.getAny();
+
+                if ( any != null )
+                {
+                    for ( int i = any.size(); i > 0; i-- )
+                    {
+                        octetString( LdapCodecConstants.SUBSTRINGS_FILTER_ANY_TAG, any.get( i - 1 ) );
+                    }
+                }
+
+                if ( substringNode.getInitial() != null )
+                {
+                    octetString( LdapCodecConstants.SUBSTRINGS_FILTER_INITIAL_TAG, substringNode.getInitial() );
+                }
+
+                end( constant, UniversalTag.SEQUENCE.getValue(), substringsStart );
+                BerValue.encodeOctetString( pending, substringNode.getAttribute() );
+                end( constant, ( byte ) LdapCodecConstants.SUBSTRINGS_FILTER_TAG, start );
+            }
+            else if ( node instanceof ExtensibleNode )
+            {
+                ExtensibleNode extensibleNode = ( ExtensibleNode ) node;
+                int start = begin( constant );
+
+                if ( extensibleNode.hasDnAttributes() )
+                {
+                    BerValue.encodeBoolean( pending, ( byte ) LdapCodecConstants.DN_ATTRIBUTES_FILTER_TAG, true );
+                }
+
+                if ( !constant )
+                {
+                    value( LdapCodecConstants.MATCH_VALUE_TAG, FilterTemplate.getPlaceHolderIndex( extensibleNode.getValue() ) );
+                }
+                else if ( extensibleNode.getValue() != null )
+                {
+                    BerValue.encodeOctetString( pending, ( byte ) LdapCodecConstants.MATCH_VALUE_TAG,
+                        extensibleNode.getValue().getBytes() );
+                }
+
+                if ( extensibleNode.getAttribute() != null )
+                {
+                    BerValue.encodeOctetString( pending, ( byte ) LdapCodecConstants.MATCHING_RULE_TYPE_TAG,
+                        Strings.getBytesUtf8( extensibleNode.getAttribute() ) );
+                }
+
+                if ( extensibleNode.getMatchingRuleId() != null )
+                {
+                    BerValue.encodeOctetString( pending, ( byte ) LdapCodecConstants.MATCHING_RULE_ID_TAG,
+                        Strings.getBytesUtf8( extensibleNode.getMatchingRuleId() ) );
+                }
+
+                end( constant, ( byte ) LdapCodecConstants.EXTENSIBLE_MATCH_FILTER_TAG, start );
+            }
+        }
+
+
+        /**
+         * Tells if a filter contains a place-holder
+         */
+        private static boolean hasPlaceHolder( ExprNode node )
+        {
+            if ( node instanceof BranchNode )
+            {
+                for ( ExprNode child : ( ( BranchNode ) node ).getChildren() )
+                {
+                    if ( hasPlaceHolder( child ) )
+                    {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+            else if ( ( node instanceof EqualityNode ) || ( node instanceof GreaterEqNode )
+                || ( node instanceof LessEqNode ) || ( node instanceof ApproximateNode ) )
+            {
+                return FilterTemplate.getPlaceHolderIndex( ( ( SimpleNode<?> ) node ).getValue() ) >= 0;
+            }
+            else if ( node instanceof SubstringNode )
+            {
+                SubstringNode substringNode = ( SubstringNode ) node;
+
+                if ( ( FilterTemplate.getPlaceHolderIndex( substringNode.getInitial() ) >= 0 )
+                    || ( FilterTemplate.getPlaceHolderIndex( substringNode.getFinal() ) >= 0 ) )
+                {
+                    return true;
+                }
+
+                if ( substringNode.getAny() != null )
+                {
+                    for ( String any : substringNode.getAny() )
+                    {
+                        if ( FilterTemplate.getPlaceHolderIndex( any ) >= 0 )
+                        {
+                            return true;
+                        }
+                    }
+                }
+
+                return false;
+            }
+            else if ( node instanceof ExtensibleNode )
+            {
+                return FilterTemplate.getPlaceHolderIndex( ( ( ExtensibleNode ) node ).getValue() ) >= 0;
+            }
+
+            return false;
+        }
+    }
+
+
+    /**
+     * Encodes the SearchRequest, with the given message ID and place-holder values.
+     *
+     * @param buffer The Asn1Buffer instance in which we store the temporary result. It must be empty.
+     * @param messageId The message ID
+     * @param values The place-holder values, not escaped
+     * @return A ByteBuffer that contains the PDU
+     * @throws IllegalArgumentException if the number of values does not match the number of place-holders
+     */
+    public ByteBuffer encode( Asn1Buffer buffer, int messageId, String... values )
+    {
+        filterTemplate.checkValues( values );
+
+        byte[][] encodedValues = new byte[values.length][];
+
+        for ( int i = 0; i < values.length; i++ )
+        {
+            encodedValues[i] = Strings.getBytesUtf8( values[i] );
+        }
+
+        int[] marks = new int[maxDepth];
+        int depth = 0;
+
+        for ( int i = 0; i < operations.length; i++ )
+        {
+            switch ( operations[i] )
+            {
+                case OP_CONSTANT:
+                    buffer.put( constants[arguments[i]] );
+                    break;
+
+                case OP_VALUE:
+                    BerValue.encodeOctetString( buffer, tags[i], encodedValues[arguments[i]] );
+                    break;
+
+                case OP_MARK:
+                    marks[depth++] = buffer.getPos();
+                    break;
+
+                case OP_SEQUENCE:
+                    BerValue.encodeSequence( buffer, tags[i], marks[--depth] );
+                    break;
+
+                case OP_MESSAGE_ID:
+                    BerValue.encodeInteger( buffer, messageId );
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        return buffer.getBytes();
+    }
+
+
+    /**
+     * Creates the SearchRequest a prepared search is equivalent to, for the given values.
+     *
+     * @param values The place-holder values, not escaped
+     * @return A new SearchRequest
+     * @throws IllegalArgumentException if the number of values does not match the number of place-holders
+     */
+    public SearchRequest newSearchRequest( String... values )
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setBase( base );
+        searchRequest.setScope( scope );
+        searchRequest.setDerefAliases( derefAliases );
+        searchRequest.setSizeLimit( sizeLimit );
+        searchRequest.setTimeLimit( timeLimit );
+        searchRequest.setTypesOnly( typesOnly );
+        searchRequest.setFilter( filterTemplate.bind( values ) );
+        searchRequest.addAttributes( attributes.toArray( Strings.EMPTY_STRING_ARRAY ) );
+        searchRequest.addAllControls( controls );
+
+        return searchRequest;
+    }
+
+
+    /**
+     * @return The filter template
+     */
+    public FilterTemplate getFilterTemplate()
+    {
+        return filterTemplate;
+    }
+
+
+    /**
+     * @return The search base
+     */
+    public Dn getBase()
+    {
+        return base;
+    }
+
+
+    /**
+     * @return The search scope
+     */
+    public SearchScope getScope()
+    {
+        return scope;
+    }
+
+
+    /**
+     * @return The time limit, in seconds
+     */
+    public int getTimeLimit()
+    {
+        return timeLimit;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "PreparedSearchRequest[" + base + ", " + scope + ", " + filterTemplate + ", " + attributes + ", "
+            + operations.length + " operations, " + constants.length + " constants]";
+    }
+}
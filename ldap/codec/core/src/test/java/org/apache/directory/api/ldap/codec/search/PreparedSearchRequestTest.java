@@ -0,0 +1,221 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec.search;
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.asn1.ber.Asn1Decoder;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
+import org.apache.directory.api.ldap.codec.api.PreparedSearchRequest;
+import org.apache.directory.api.ldap.codec.osgi.AbstractCodecServiceTest;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.filter.FilterTemplate;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.ManageDsaITImpl;
+import org.apache.directory.api.ldap.model.message.controls.SubentriesImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Test the PreparedSearchRequest encoding
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution( ExecutionMode.CONCURRENT)
+public class PreparedSearchRequestTest extends AbstractCodecServiceTest
+{
+    private SearchRequest createSearchRequest() throws Exception
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setBase( new Dn( "ou=people,dc=example,dc=com" ) );
+        searchRequest.setScope( SearchScope.SUBTREE );
+        searchRequest.setDerefAliases( AliasDerefMode.DEREF_FINDING_BASE_OBJ );
+        searchRequest.setSizeLimit( 2 );
+        searchRequest.setTimeLimit( 30 );
+        searchRequest.addAttributes( "cn", "mail" );
+
+        return searchRequest;
+    }
+
+
+    /**
+     * Check that the prepared encoding is the same as the standard one, and that it can be decoded
+     */
+    private void check( PreparedSearchRequest prepared, int messageId, String... values ) throws Exception
+    {
+        SearchRequest expected = prepared.newSearchRequest( values );
+        expected.setMessageId( messageId );
+
+        Asn1Buffer buffer = new Asn1Buffer();
+        ByteBuffer expectedBytes = LdapEncoder.encodeMessage( buffer, codec, expected );
+        buffer.clear();
+        ByteBuffer preparedBytes = prepared.encode( buffer, messageId, values );
+
+        assertArrayEquals( expectedBytes.array(), preparedBytes.array() );
+
+        LdapMessageContainer<SearchRequest> container = new LdapMessageContainer<>( codec );
+        Asn1Decoder.decode( preparedBytes, container );
+        SearchRequest decoded = container.getMessage();
+
+        assertEquals( messageId, decoded.getMessageId() );
+        assertEquals( expected.getFilter().toString(), decoded.getFilter().toString() );
+        assertEquals( expected.getBase(), decoded.getBase() );
+        assertEquals( expected.getAttributes(), decoded.getAttributes() );
+    }
+
+
+    @Test
+    public void testSimpleFilter() throws Exception
+    {
+        PreparedSearchRequest prepared = new PreparedSearchRequest( codec, createSearchRequest(),
+            FilterTemplate.parse( "(&(objectClass=person)(uid={0}))" ) );
+
+        check( prepared, 1, "jdoe" );
+        check( prepared, 300, "" );
+        check( prepared, Integer.MAX_VALUE, "*)(uid=*" );
+
+        // A long value, which changes the length encoding of all the enclosing elements
+        StringBuilder sb = new StringBuilder();
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            sb.append( 'x' );
+        }
+
+        check( prepared, 12, sb.toString() );
+        check( prepared, 13, "éléonore" );
+    }
+
+
+    @Test
+    public void testAllFilterTypes() throws Exception
+    {
+        PreparedSearchRequest prepared = new PreparedSearchRequest( codec, createSearchRequest(),
+            FilterTemplate.parse( "(|(&(cn={0}*)(!(sn=*{1}*x*{0})))(uid>={1})(uid<=z)(cn~={2})"
+                + "(cn:dn:2.5.13.5:={1})(ou:={0})(mail=*)(&(objectClass=top)(cn=x)))" ) );
+
+        check( prepared, 5, "a", "b", "c" );
+        check( prepared, 6, "\\c", "(b)", "" );
+    }
+
+
+    @Test
+    public void testNoPlaceHolder() throws Exception
+    {
+        PreparedSearchRequest prepared = new PreparedSearchRequest( codec, createSearchRequest(),
+            FilterTemplate.parse( "(objectClass=*)" ) );
+
+        check( prepared, 1 );
+        check( prepared, 70000 );
+    }
+
+
+    @Test
+    public void testConstantSubFilters() throws Exception
+    {
+        PreparedSearchRequest prepared = new PreparedSearchRequest( codec, createSearchRequest(),
+            FilterTemplate.parse( "(&(|(cn=a\\00b)(!(sn=\\2A*x)))(uid={0})(cn:dn:2.5.13.5:=\\c3\\a9)(ou>=m)(mail=*))" ) );
+
+        check( prepared, 1, "jdoe" );
+        check( prepared, 128, "\\00" );
+    }
+
+
+    @Test
+    public void testControls() throws Exception
+    {
+        SearchRequest searchRequest = createSearchRequest();
+        searchRequest.addControl( new ManageDsaITImpl() );
+        searchRequest.addControl( new SubentriesImpl() );
+
+        PreparedSearchRequest prepared = new PreparedSearchRequest( codec, searchRequest,
+            FilterTemplate.parse( "(uid={0})" ) );
+
+        check( prepared, 1, "jdoe" );
+    }
+
+
+    @Test
+    public void testBadValuesNumber() throws Exception
+    {
+        PreparedSearchRequest prepared = new PreparedSearchRequest( codec, createSearchRequest(),
+            FilterTemplate.parse( "(uid={0})" ) );
+
+        assertThrows( IllegalArgumentException.class, () -> prepared.encode( new Asn1Buffer(), 1 ) );
+        assertThrows( IllegalArgumentException.class, () -> prepared.encode( new Asn1Buffer(), 1, "a", "b" ) );
+    }
+
+
+    /**
+     * Compare the encoding of a prepared SearchRequest with the parsing and encoding
+     * of a SearchRequest. Enable it to get some numbers.
+     */
+    @Test
+    @Disabled
+    public void testPerf() throws Exception
+    {
+        String template = "(&(objectClass=person)(uid={0}))";
+        PreparedSearchRequest prepared = new PreparedSearchRequest( codec, createSearchRequest(),
+            FilterTemplate.parse( template ) );
+        Asn1Buffer buffer = new Asn1Buffer();
+        int nbLoops = 1000000;
+
+        for ( int loop = 0; loop < 3; loop++ )
+        {
+            long t0 = System.currentTimeMillis();
+
+            for ( int i = 0; i < nbLoops; i++ )
+            {
+                SearchRequest searchRequest = createSearchRequest();
+                searchRequest.setFilter( FilterParser.parse( "(&(objectClass=person)(uid=user" + i + "))" ) );
+                searchRequest.setMessageId( i + 1 );
+                LdapEncoder.encodeMessage( buffer, codec, searchRequest );
+                buffer.clear();
+            }
+
+            long t1 = System.currentTimeMillis();
+
+            for ( int i = 0; i < nbLoops; i++ )
+            {
+                prepared.encode( buffer, i + 1, "user" + i );
+                buffer.clear();
+            }
+
+            long t2 = System.currentTimeMillis();
+
+            System.out.println( nbLoops + " SearchRequests : parsed and encoded " + ( t1 - t0 )
+                + " ms, prepared " + ( t2 - t1 ) + " ms" );
+        }
+    }
+}
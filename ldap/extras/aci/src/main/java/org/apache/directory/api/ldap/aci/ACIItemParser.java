@@ -23,6 +23,9 @@ package org.apache.directory.api.ldap.aci;
 
 import java.io.StringReader;
 import java.text.ParseException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
@@ -32,25 +35,65 @@ import org.apache.directory.api.util.StringConstants;
 import antlr.RecognitionException;
 import antlr.TokenStreamException;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 
 /**
  * A reusable wrapper around the antlr generated parser for an ACIItem as
- * defined by X.501. This class enables the reuse of the antlr parser/lexer pair
+ * defined by X.501. This class enables the reuse of the antlr parser/lexer pairs
  * without having to recreate them every time.
+ * <p>
+ * This parser is thread safe : each thread parsing an ACIItem borrows a parser/lexer
+ * pair from a pool, which contains as many pairs as the maximum number of concurrent
+ * parsings. The parsed ACIItems can also be cached, keyed by their source string : a
+ * cached ACIItem is shared by all the callers, and must not be modified.
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class ACIItemParser
 {
-    /** the antlr generated parser being wrapped */
-    private ReusableAntlrACIItemParser parser;
+    /** The parser/lexer pairs which are not currently used */
+    private final Queue<ParserPair> parsers = new ConcurrentLinkedQueue<>();
+
+    /** The SchemaManager used by the parsers */
+    private final SchemaManager schemaManager;
 
-    /** the antlr generated lexer being wrapped */
-    private ReusableAntlrACIItemLexer lexer;
+    /** The normalizer used by the normalizing parsers */
+    private final NameComponentNormalizer normalizer;
 
     /** The is normalizing flag. */
     private final boolean isNormalizing;
 
+    /** The parsed ACIItems, if the cache is enabled */
+    private final Cache<String, ACIItem> cache;
+
+    /** The cache hits */
+    private final LongAdder hitCount = new LongAdder();
+
+    /** The cache misses */
+    private final LongAdder missCount = new LongAdder();
+
+
+    /**
+     * An antlr generated parser, and its lexer
+     */
+    private static final class ParserPair
+    {
+        /** the antlr generated parser being wrapped */
+        private final ReusableAntlrACIItemParser parser;
+
+        /** the antlr generated lexer being wrapped */
+        private final ReusableAntlrACIItemLexer lexer;
+
+
+        private ParserPair( ReusableAntlrACIItemParser parser, ReusableAntlrACIItemLexer lexer )
+        {
+            this.parser = parser;
+            this.lexer = lexer;
+        }
+    }
+
 
     /**
      * Creates a ACIItem parser.
@@ -59,14 +102,19 @@ public class ACIItemParser
      */
     public ACIItemParser( SchemaManager schemaManager )
     {
-        this.lexer = new ReusableAntlrACIItemLexer( new StringReader( "" ) );
-        this.parser = new ReusableAntlrACIItemParser( lexer );
+        this( null, schemaManager, 0, false );
+    }
 
-        // this method MUST be called while we cannot do
-        // constructor overloading for antlr generated parser
-        this.parser.init( schemaManager );
 
-        this.isNormalizing = false;
+    /**
+     * Creates a ACIItem parser, caching the parsed ACIItems.
+     *
+     * @param schemaManager the schema manager
+     * @param cacheSize The maximum number of cached ACIItems. 0 disables the cache.
+     */
+    public ACIItemParser( SchemaManager schemaManager, int cacheSize )
+    {
+        this( null, schemaManager, cacheSize, false );
     }
 
 
@@ -78,29 +126,64 @@ public class ACIItemParser
      */
     public ACIItemParser( NameComponentNormalizer normalizer, SchemaManager schemaManager )
     {
-        this.lexer = new ReusableAntlrACIItemLexer( new StringReader( "" ) );
-        this.parser = new ReusableAntlrACIItemParser( lexer );
+        this( normalizer, schemaManager, 0, true );
+    }
 
-        this.parser.setNormalizer( normalizer );
-        this.isNormalizing = true;
 
-        // this method MUST be called while we cannot do
-        // constructor overloading for antlr generated parser
-        this.parser.init( schemaManager );
+    /**
+     * Creates a normalizing ACIItem parser, caching the parsed ACIItems.
+     *
+     * @param normalizer the normalizer
+     * @param schemaManager the schema manager
+     * @param cacheSize The maximum number of cached ACIItems. 0 disables the cache.
+     */
+    public ACIItemParser( NameComponentNormalizer normalizer, SchemaManager schemaManager, int cacheSize )
+    {
+        this( normalizer, schemaManager, cacheSize, true );
+    }
+
+
+    private ACIItemParser( NameComponentNormalizer normalizer, SchemaManager schemaManager, int cacheSize,
+        boolean isNormalizing )
+    {
+        this.normalizer = normalizer;
+        this.schemaManager = schemaManager;
+        this.isNormalizing = isNormalizing;
+
+        if ( cacheSize > 0 )
+        {
+            cache = Caffeine.newBuilder().maximumSize( cacheSize ).build();
+        }
+        else
+        {
+            cache = null;
+        }
+
+        // Create the first pair now, so that a schema problem is immediately detected
+        parsers.add( createParser() );
     }
 
 
     /**
-     * Initializes the plumbing by creating a pipe and coupling the parser/lexer
-     * pair with it. 
+     * Creates a new parser/lexer pair
      * 
-     * @param spec the specification to be parsed
+     * @return The new pair
      */
-    private synchronized void reset( String spec )
+    private ParserPair createParser()
     {
-        StringReader in = new StringReader( spec );
-        this.lexer.prepareNextInput( in );
-        this.parser.resetState();
+        ReusableAntlrACIItemLexer lexer = new ReusableAntlrACIItemLexer( new StringReader( "" ) );
+        ReusableAntlrACIItemParser parser = new ReusableAntlrACIItemParser( lexer );
+
+        if ( isNormalizing )
+        {
+            parser.setNormalizer( normalizer );
+        }
+
+        // this method MUST be called while we cannot do
+        // constructor overloading for antlr generated parser
+        parser.init( schemaManager );
+
+        return new ParserPair( parser, lexer );
     }
 
 
@@ -113,21 +196,58 @@ public class ACIItemParser
      * @throws ParseException
      *             if there are any recognition errors (bad syntax)
      */
-    public synchronized ACIItem parse( String spec ) throws ParseException
+    public ACIItem parse( String spec ) throws ParseException
     {
-        ACIItem aCIItem;
-
         if ( ( spec == null ) || StringConstants.EMPTY.equals( spec.trim() ) )
         {
             return null;
         }
 
-        // reset and initialize the parser / lexer pair
-        reset( spec );
+        if ( cache == null )
+        {
+            return doParse( spec );
+        }
+
+        ACIItem aCIItem = cache.getIfPresent( spec );
+
+        if ( aCIItem != null )
+        {
+            hitCount.increment();
+
+            return aCIItem;
+        }
+
+        missCount.increment();
+        aCIItem = doParse( spec );
+        cache.put( spec, aCIItem );
+
+        return aCIItem;
+    }
+
+
+    /**
+     * Parses an ACIItem with a parser/lexer pair taken from the pool
+     * 
+     * @param spec the specification to be parsed
+     * @return the specification bean
+     * @throws ParseException if there are any recognition errors (bad syntax)
+     */
+    private ACIItem doParse( String spec ) throws ParseException
+    {
+        ParserPair pair = parsers.poll();
+
+        if ( pair == null )
+        {
+            pair = createParser();
+        }
 
         try
         {
-            aCIItem = this.parser.wrapperEntryPoint();
+            // reset and initialize the parser / lexer pair
+            pair.lexer.prepareNextInput( new StringReader( spec ) );
+            pair.parser.resetState();
+
+            return pair.parser.wrapperEntryPoint();
         }
         catch ( TokenStreamException e )
         {
@@ -141,8 +261,10 @@ public class ACIItemParser
                     .err( I18n.ERR_07004_PARSER_FAILURE_ACI_ITEM, spec, e.getLocalizedMessage(), e.getLine(),
                         e.getColumn() ), e.getColumn() );
         }
-
-        return aCIItem;
+        finally
+        {
+            parsers.add( pair );
+        }
     }
 
 
@@ -155,4 +277,34 @@ public class ACIItemParser
     {
         return this.isNormalizing;
     }
+
+
+    /**
+     * @return The number of ACIItems found in the cache
+     */
+    public long getCacheHitCount()
+    {
+        return hitCount.sum();
+    }
+
+
+    /**
+     * @return The number of ACIItems which had to be parsed, as they were not in the cache
+     */
+    public long getCacheMissCount()
+    {
+        return missCount.sum();
+    }
+
+
+    /**
+     * @return The ratio of ACIItems found in the cache, between 0 and 1
+     */
+    public double getCacheHitRate()
+    {
+        long hits = hitCount.sum();
+        long requests = hits + missCount.sum();
+
+        return requests == 0L ? 0d : ( double ) hits / requests;
+    }
 }
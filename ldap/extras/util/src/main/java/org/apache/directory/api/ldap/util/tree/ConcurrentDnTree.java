@@ -0,0 +1,748 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.util.tree;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A tree mapping DNs to elements, like the {@link DnNode}, designed for concurrent
+ * accesses where the reads are much more frequent than the writes.
+ * <br>
+ * The tree nodes are never modified once they are visible : a write copies the nodes
+ * on the path from the root to the modified node, and publishes the new root. The
+ * reads never lock, and each of them sees a consistent version of the tree. A whole
+ * version of the tree can be read using {@link #snapshot()}, and iterated while the
+ * tree is being modified.
+ * <br>
+ * The writes are serialized. {@link #addAll(Map)} adds many elements in one single
+ * write, copying each node only once.
+ * <br>
+ * The read methods have the same semantic as the {@link DnNode} methods with the same name.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @param <N> The type of element we store
+ */
+public class ConcurrentDnTree<N>
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( ConcurrentDnTree.class );
+
+    /** The current version of the tree */
+    private volatile Node<N> root;
+
+    /** The lock serializing the writes */
+    private final Object writeLock = new Object();
+
+
+    /**
+     * A node of the tree. A node is never modified once it's been published, and can
+     * be safely read by many threads.
+     *
+     * @param <N> The type of element we store
+     */
+    public static final class Node<N>
+    {
+        /** The node's Rdn */
+        private Rdn nodeRdn;
+
+        /** The node's Dn */
+        private Dn nodeDn;
+
+        /** The stored element, if any */
+        private N nodeElement;
+
+        /** The children, by Rdn normalized name */
+        private Map<String, Node<N>> children;
+
+        /** The write operation which created this node, and can still modify it */
+        private Object owner;
+
+
+        private Node( Rdn rdn, Dn dn, N element, Map<String, Node<N>> children, Object owner )
+        {
+            this.nodeRdn = rdn;
+            this.nodeDn = dn;
+            this.nodeElement = element;
+            this.children = children;
+            this.owner = owner;
+        }
+
+
+        /**
+         * @return The node's Dn
+         */
+        public Dn getDn()
+        {
+            return nodeDn;
+        }
+
+
+        /**
+         * @return The node's Rdn
+         */
+        public Rdn getRdn()
+        {
+            return nodeRdn;
+        }
+
+
+        /**
+         * @return The stored element, if any
+         */
+        public N getElement()
+        {
+            return nodeElement;
+        }
+
+
+        /**
+         * @return True if the Node stores an element
+         */
+        public boolean hasElement()
+        {
+            return nodeElement != null;
+        }
+
+
+        /**
+         * @return The children, by Rdn normalized name
+         */
+        public Map<String, Node<N>> getChildren()
+        {
+            return Collections.unmodifiableMap( children );
+        }
+
+
+        /**
+         * @return <code>true</code> if the node has some children
+         */
+        public boolean hasChildren()
+        {
+            return !children.isEmpty();
+        }
+
+
+        /**
+         * @param rdn The child's Rdn
+         * @return The child node, or null
+         */
+        public Node<N> getChild( Rdn rdn )
+        {
+            return children.get( rdn.getNormName() );
+        }
+
+
+        /**
+         * @return The number of nodes in this subtree, including this node
+         */
+        public int size()
+        {
+            int size = 1;
+
+            for ( Node<N> child : children.values() )
+            {
+                size += child.size();
+            }
+
+            return size;
+        }
+
+
+        /**
+         * @see Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            return "Node[" + nodeDn + "]: '" + nodeElement + "'";
+        }
+    }
+
+
+    /**
+     * Creates a new empty ConcurrentDnTree.
+     */
+    public ConcurrentDnTree()
+    {
+        root = new Node<>( Rdn.EMPTY_RDN, Dn.EMPTY_DN, null, Collections.emptyMap(), null );
+    }
+
+
+    //-------------------------------------------------------------------------
+    // Helper methods
+    //-------------------------------------------------------------------------
+    /**
+     * Check that the Dn is not null
+     *
+     * @param dn The Dn to check
+     * @throws LdapException If the Dn is null or empty
+     */
+    private static void checkDn( Dn dn ) throws LdapException
+    {
+        if ( ( dn == null ) || dn.isEmpty() )
+        {
+            String message = I18n.err( I18n.ERR_12000_CANNOT_PROCESS_EMPTY_DN );
+            LOG.error( message );
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM, message );
+        }
+    }
+
+
+    /**
+     * Returns a node the current write operation can modify : either the node itself
+     * if it has been created by this operation, or a copy.
+     */
+    private static <N> Node<N> editable( Node<N> node, Object owner )
+    {
+        if ( node.owner == owner )
+        {
+            return node;
+        }
+
+        return new Node<>( node.nodeRdn, node.nodeDn, node.nodeElement, new HashMap<>( node.children ), owner );
+    }
+
+
+    /**
+     * Adds an element in the tree, copying the modified nodes which have not been
+     * created by the current write operation.
+     *
+     * @param node The node to start from
+     * @param dn The Dn to add
+     * @param element The element to add. Can be null
+     * @param owner The current write operation
+     * @return The new version of the node
+     * @throws LdapException If the Dn already exists
+     */
+    private static <N> Node<N> add( Node<N> node, Dn dn, N element, Object owner ) throws LdapException
+    {
+        int depth = node.nodeDn.size();
+
+        if ( depth == dn.size() )
+        {
+            // The node already exists. Check if it already has an element
+            if ( node.hasElement() )
+            {
+                String message = I18n.err( I18n.ERR_12001_CANNOT_ADD_NODE_CHILD_EXISTS );
+                LOG.error( message );
+                throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM, message );
+            }
+            // We may try to add twice the same Dn, without any element
+            else if ( element == null )
+            {
+                String message = I18n.err( I18n.ERR_12002_CANNOT_ADD_NODE_ALREADY_EXISTS );
+                LOG.error( message );
+                throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM, message );
+            }
+
+            Node<N> newNode = editable( node, owner );
+            newNode.nodeElement = element;
+
+            return newNode;
+        }
+
+        Rdn rdn = dn.getRdn( dn.size() - depth - 1 );
+        Node<N> child = node.children.get( rdn.getNormName() );
+        Node<N> newChild;
+
+        if ( child == null )
+        {
+            Dn childDn = ( depth + 1 == dn.size() ) ? dn : node.nodeDn.add( rdn );
+            newChild = add( new Node<>( rdn, childDn, null, new HashMap<>(), owner ), dn, element, owner );
+        }
+        else
+        {
+            newChild = add( child, dn, element, owner );
+
+            if ( ( newChild == child ) && ( node.owner == owner ) )
+            {
+                // The child has been modified in place
+                return node;
+            }
+        }
+
+        Node<N> newNode = editable( node, owner );
+        newNode.children.put( rdn.getNormName(), newChild );
+
+        return newNode;
+    }
+
+
+    /**
+     * Removes a node from the tree, and its ancestors which don't have any element
+     * nor any other child.
+     *
+     * @param node The node to start from
+     * @param dn The Dn to remove
+     * @return The new version of the node, null if it has to be removed, or the same
+     * node if nothing has changed
+     */
+    private static <N> Node<N> remove( Node<N> node, Dn dn )
+    {
+        int depth = node.nodeDn.size();
+
+        if ( depth == dn.size() )
+        {
+            // We can't remove a node which has children
+            return node.hasChildren() ? node : null;
+        }
+
+        Rdn rdn = dn.getRdn( dn.size() - depth - 1 );
+        Node<N> child = node.children.get( rdn.getNormName() );
+
+        if ( child == null )
+        {
+            return node;
+        }
+
+        Node<N> newChild = remove( child, dn );
+
+        if ( newChild == child )
+        {
+            return node;
+        }
+
+        Node<N> newNode = editable( node, new Object() );
+
+        if ( newChild != null )
+        {
+            newNode.children.put( rdn.getNormName(), newChild );
+        }
+        else
+        {
+            newNode.children.remove( rdn.getNormName() );
+
+            if ( !newNode.hasChildren() && !newNode.hasElement() && ( depth > 0 ) )
+            {
+                return null;
+            }
+        }
+
+        return newNode;
+    }
+
+
+    //-------------------------------------------------------------------------
+    // Write operations
+    //-------------------------------------------------------------------------
+    /**
+     * Add a new node in the tree. The added node won't have any element.
+     *
+     * @param dn The node's Dn
+     * @throws LdapException if the Dn is null or empty, or already exists
+     */
+    public void add( Dn dn ) throws LdapException
+    {
+        add( dn, null );
+    }
+
+
+    /**
+     * Add a new node in the tree. We can't add a node if its Dn is empty. The
+     * added element is attached to the node, which is named by the Dn's Rdn.<br>
+     *
+     * @param dn The node's Dn
+     * @param element The element to associate with this Node. Can be null.
+     * @throws LdapException if the Dn is null or empty, or already has an element
+     */
+    public void add( Dn dn, N element ) throws LdapException
+    {
+        checkDn( dn );
+
+        synchronized ( writeLock )
+        {
+            root = add( root, dn, element, new Object() );
+        }
+    }
+
+
+    /**
+     * Adds many elements in the tree, in one single operation : the readers see either
+     * none or all of them. If one of the elements can't be added, none of them is.
+     *
+     * @param elements The elements to add, by Dn
+     * @throws LdapException if one of the Dn is null or empty, or already has an element
+     */
+    public void addAll( Map<Dn, N> elements ) throws LdapException
+    {
+        for ( Dn dn : elements.keySet() )
+        {
+            checkDn( dn );
+        }
+
+        synchronized ( writeLock )
+        {
+            // All the nodes created by this operation can be modified in place
+            Object owner = new Object();
+            Node<N> newRoot = root;
+
+            for ( Map.Entry<Dn, N> entry : elements.entrySet() )
+            {
+                newRoot = add( newRoot, entry.getKey(), entry.getValue(), owner );
+            }
+
+            root = newRoot;
+        }
+    }
+
+
+    /**
+     * Removes a node from the tree. The node is not removed if it has some children.
+     * Its ancestors which have no element and no other children are removed too.
+     *
+     * @param dn the node's Dn
+     * @throws LdapException if the Dn is null or empty
+     */
+    public void remove( Dn dn ) throws LdapException
+    {
+        checkDn( dn );
+
+        synchronized ( writeLock )
+        {
+            root = remove( root, dn );
+        }
+    }
+
+
+    /**
+     * Removes all the nodes from the tree
+     */
+    public void clear()
+    {
+        synchronized ( writeLock )
+        {
+            root = new Node<>( Rdn.EMPTY_RDN, Dn.EMPTY_DN, null, Collections.emptyMap(), null );
+        }
+    }
+
+
+    //-------------------------------------------------------------------------
+    // Read operations
+    //-------------------------------------------------------------------------
+    /**
+     * @return The current version of the tree root. It won't change, whatever the
+     * modifications done on the tree afterward.
+     */
+    public Node<N> snapshot()
+    {
+        return root;
+    }
+
+
+    /**
+     * @return The number of nodes in the tree, including the root
+     */
+    public int size()
+    {
+        return root.size();
+    }
+
+
+    /**
+     * Get the Node for a given Dn, if present in the tree.<br>
+     * For instance, if we have stored dc=acme, dc=org into the tree,
+     * the Dn: ou=example, dc=acme, dc=org will have a parent, and
+     * dc=acme, dc=org will be returned.
+     * <br>For the Dn ou=apache, dc=org, there is no parent, so null will be returned.
+     *
+     * @param dn the normalized distinguished name to resolve to a parent
+     * @return the Node associated with the normalized dn
+     */
+    public Node<N> getNode( Dn dn )
+    {
+        return getNode( root, dn );
+    }
+
+
+    private static <N> Node<N> getNode( Node<N> currentNode, Dn dn )
+    {
+        Node<N> parentNode = null;
+
+        for ( int i = dn.size() - 1; i >= 0; i-- )
+        {
+            currentNode = currentNode.children.get( dn.getRdn( i ).getNormName() );
+
+            if ( currentNode == null )
+            {
+                break;
+            }
+
+            parentNode = currentNode;
+        }
+
+        return parentNode;
+    }
+
+
+    /**
+     * @param dn The Dn we want to get the element for
+     * @return The element stored in the closest node of the given Dn, if any
+     */
+    public N getElement( Dn dn )
+    {
+        Node<N> node = getNode( dn );
+
+        if ( node == null )
+        {
+            return null;
+        }
+
+        return node.nodeElement;
+    }
+
+
+    /**
+     * @param dn The Dn we want to get the element for
+     * @return True if the closest node of the given Dn stores an element
+     */
+    public boolean hasElement( Dn dn )
+    {
+        return getElement( dn ) != null;
+    }
+
+
+    /**
+     * Tells if a node has some children or not.
+     *
+     * @param dn the node's Dn
+     * @return <code>true</code> if the node has some children
+     * @throws LdapException if the Dn is null or empty
+     */
+    public boolean hasChildren( Dn dn ) throws LdapException
+    {
+        checkDn( dn );
+
+        Node<N> node = getNode( dn );
+
+        return ( node != null ) && node.hasChildren();
+    }
+
+
+    /**
+     * @param dn The Dn we want to check
+     * @return <code>true</code> if the node exists and has no children
+     */
+    public boolean isLeaf( Dn dn )
+    {
+        Node<N> node = getNode( dn );
+
+        return ( node != null ) && !node.hasChildren();
+    }
+
+
+    /**
+     * Tells if there is a node in the tree for the given Dn, or one of its ancestors.
+     *
+     * @param dn the normalized distinguished name to resolve to a parent
+     * @return true if there is a parent associated with the normalized dn
+     */
+    public boolean hasParent( Dn dn )
+    {
+        return getNode( dn ) != null;
+    }
+
+
+    /**
+     * Tells if the given Dn or one of its ancestors has an element.
+     *
+     * @param dn the normalized distinguished name to resolve to a parent
+     * @return <code>true</code> if a node on the Dn path has an element
+     */
+    public boolean hasParentElement( Dn dn )
+    {
+        Node<N> currentNode = root;
+
+        for ( int i = dn.size() - 1; i >= 0; i-- )
+        {
+            currentNode = currentNode.children.get( dn.getRdn( i ).getNormName() );
+
+            if ( currentNode == null )
+            {
+                return false;
+            }
+
+            if ( currentNode.hasElement() )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Get the closest ancestor of a given Dn which has an element, if present in the tree.<br>
+     * For instance, if we have stored dc=acme, dc=org into the tree,
+     * the Dn: ou=example, dc=acme, dc=org will have a parent, and
+     * dc=acme, dc=org will be returned if it has an associated element.
+     * <br>For the Dn ou=apache, dc=org, there is no parent, so null will be returned.
+     *
+     * @param dn the normalized distinguished name to resolve to a parent
+     * @return the Node associated with the normalized dn
+     */
+    public Node<N> getParentWithElement( Dn dn )
+    {
+        Node<N> currentNode = root;
+        Node<N> element = null;
+
+        for ( int i = dn.size() - 1; i >= 1; i-- )
+        {
+            currentNode = currentNode.children.get( dn.getRdn( i ).getNormName() );
+
+            if ( currentNode == null )
+            {
+                break;
+            }
+
+            if ( currentNode.hasElement() )
+            {
+                element = currentNode;
+            }
+        }
+
+        return element;
+    }
+
+
+    /**
+     * @param dn The Dn we want to check
+     * @return True if one of the node below the given Dn has one element,
+     * False otherwise
+     */
+    public boolean hasDescendantElement( Dn dn )
+    {
+        Node<N> node = getNode( dn );
+
+        // We must be at the right place in the tree
+        if ( ( node == null ) || ( node.nodeDn.size() != dn.size() ) )
+        {
+            return false;
+        }
+
+        for ( Node<N> child : node.children.values() )
+        {
+            if ( hasDescendantElement( child ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private static <N> boolean hasDescendantElement( Node<N> node )
+    {
+        if ( node.hasElement() )
+        {
+            return true;
+        }
+
+        for ( Node<N> child : node.children.values() )
+        {
+            if ( hasDescendantElement( child ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * @param dn The Dn we want to get the descendant elements for
+     * @return The elements of the closest nodes below the given Dn which have an element
+     */
+    public List<N> getDescendantElements( Dn dn )
+    {
+        List<N> descendants = new ArrayList<>();
+        Node<N> node = getNode( dn );
+
+        // We must be at the right place in the tree
+        if ( ( node == null ) || ( node.nodeDn.size() != dn.size() ) )
+        {
+            return descendants;
+        }
+
+        for ( Node<N> child : node.children.values() )
+        {
+            getDescendantElements( child, descendants );
+        }
+
+        return descendants;
+    }
+
+
+    private static <N> void getDescendantElements( Node<N> node, List<N> descendants )
+    {
+        if ( node.hasElement() )
+        {
+            descendants.add( node.nodeElement );
+
+            // Stop here
+            return;
+        }
+
+        for ( Node<N> child : node.children.values() )
+        {
+            getDescendantElements( child, descendants );
+        }
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        toString( root, "", sb );
+
+        return sb.toString();
+    }
+
+
+    private static <N> void toString( Node<N> node, String tabs, StringBuilder sb )
+    {
+        for ( Node<N> child : node.children.values() )
+        {
+            sb.append( tabs ).append( child ).append( '\n' );
+            toString( child, tabs + "    ", sb );
+        }
+    }
+}
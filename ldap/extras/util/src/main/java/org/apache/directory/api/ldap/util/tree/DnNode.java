@@ -797,8 +797,6 @@ public class DnNode<N>
                 {
                     hasElement = true;
                 }
-
-                parent = currentNode;
             }
             else
             {
@@ -845,8 +843,6 @@ public class DnNode<N>
                 {
                     element = currentNode;
                 }
-
-                parent = currentNode;
             }
             else
             {
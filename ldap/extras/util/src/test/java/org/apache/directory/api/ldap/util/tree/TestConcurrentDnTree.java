@@ -0,0 +1,315 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.util.tree;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Test the ConcurrentDnTree
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution( ExecutionMode.CONCURRENT)
+public class TestConcurrentDnTree
+{
+    @Test
+    public void testAddAndLookup() throws LdapException
+    {
+        ConcurrentDnTree<String> tree = new ConcurrentDnTree<>();
+        Dn dnAcme = new Dn( "dc=acme,dc=org" );
+        Dn dnExample = new Dn( "ou=example,dc=acme,dc=org" );
+        Dn dnApache = new Dn( "ou=apache,dc=org" );
+
+        assertThrows( LdapUnwillingToPerformException.class, () -> tree.add( null ) );
+        assertThrows( LdapUnwillingToPerformException.class, () -> tree.add( Dn.EMPTY_DN ) );
+
+        tree.add( dnAcme, "acme" );
+
+        // The root, dc=org and dc=acme,dc=org
+        assertEquals( 3, tree.size() );
+        assertEquals( "acme", tree.getElement( dnAcme ) );
+        assertEquals( "acme", tree.getElement( dnExample ) );
+        assertTrue( tree.hasElement( dnAcme ) );
+        assertFalse( tree.hasElement( new Dn( "dc=org" ) ) );
+        assertTrue( tree.hasParentElement( dnExample ) );
+        assertFalse( tree.hasParentElement( dnApache ) );
+        assertEquals( dnAcme, tree.getParentWithElement( dnExample ).getDn() );
+        assertNull( tree.getParentWithElement( dnAcme ) );
+        assertTrue( tree.isLeaf( dnAcme ) );
+        assertTrue( tree.hasChildren( new Dn( "dc=org" ) ) );
+        assertTrue( tree.hasParent( dnApache ) );
+        assertFalse( tree.hasParent( new Dn( "dc=com" ) ) );
+
+        // Adding twice the same DN
+        assertThrows( LdapUnwillingToPerformException.class, () -> tree.add( dnAcme, "other" ) );
+        assertThrows( LdapUnwillingToPerformException.class, () -> tree.add( new Dn( "dc=org" ) ) );
+
+        // Injecting an element into an existing node
+        tree.add( new Dn( "dc=org" ), "org" );
+        tree.add( dnExample, "example" );
+
+        assertTrue( tree.hasDescendantElement( new Dn( "dc=org" ) ) );
+        assertFalse( tree.hasDescendantElement( dnExample ) );
+        assertEquals( new HashSet<>( Arrays.asList( "acme" ) ),
+            new HashSet<>( tree.getDescendantElements( new Dn( "dc=org" ) ) ) );
+        assertEquals( "example", tree.getDescendantElements( dnAcme ).get( 0 ) );
+    }
+
+
+    @Test
+    public void testRemove() throws LdapException
+    {
+        ConcurrentDnTree<String> tree = new ConcurrentDnTree<>();
+        Dn dnA = new Dn( "ou=a,ou=b,dc=c" );
+        Dn dnB = new Dn( "ou=b,dc=c" );
+
+        tree.add( dnA, "a" );
+        tree.add( dnB, "b" );
+
+        // A node with children can't be removed
+        tree.remove( dnB );
+        assertEquals( "b", tree.getElement( dnB ) );
+
+        // The ancestors with an element are kept
+        tree.remove( dnA );
+        assertEquals( 3, tree.size() );
+        assertEquals( "b", tree.getElement( dnA ) );
+
+        // The ancestors without element are removed
+        tree.remove( dnB );
+        assertEquals( 1, tree.size() );
+        assertFalse( tree.hasParent( dnB ) );
+    }
+
+
+    @Test
+    public void testSnapshot() throws LdapException
+    {
+        ConcurrentDnTree<String> tree = new ConcurrentDnTree<>();
+        tree.add( new Dn( "dc=a,dc=com" ), "a" );
+
+        ConcurrentDnTree.Node<String> snapshot = tree.snapshot();
+
+        tree.add( new Dn( "dc=b,dc=com" ), "b" );
+        tree.remove( new Dn( "dc=a,dc=com" ) );
+
+        // The snapshot hasn't changed
+        assertEquals( 3, snapshot.size() );
+        assertEquals( "a", snapshot.getChildren().get( "dc=com" ).getChildren().get( "dc=a" ).getElement() );
+        assertEquals( 1, snapshot.getChildren().get( "dc=com" ).getChildren().size() );
+
+        assertEquals( 3, tree.size() );
+        assertEquals( "b", tree.getElement( new Dn( "dc=b,dc=com" ) ) );
+        assertNull( tree.getElement( new Dn( "dc=a,dc=com" ) ) );
+    }
+
+
+    @Test
+    public void testAddAll() throws LdapException
+    {
+        ConcurrentDnTree<String> tree = new ConcurrentDnTree<>();
+        tree.add( new Dn( "dc=com" ), "com" );
+
+        Map<Dn, String> elements = new LinkedHashMap<>();
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            elements.put( new Dn( "ou=people,dc=example" + i + ",dc=com" ), "people" + i );
+            elements.put( new Dn( "dc=example" + i + ",dc=com" ), "example" + i );
+        }
+
+        tree.addAll( elements );
+
+        assertEquals( 2 + 200, tree.size() );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertEquals( "people" + i, tree.getElement( new Dn( "uid=x,ou=people,dc=example" + i + ",dc=com" ) ) );
+            assertEquals( "example" + i, tree.getParentWithElement(
+                new Dn( "ou=people,dc=example" + i + ",dc=com" ) ).getElement() );
+        }
+
+        // A failing bulk load doesn't add anything
+        elements.clear();
+        elements.put( new Dn( "dc=other,dc=com" ), "other" );
+        elements.put( new Dn( "dc=example1,dc=com" ), "duplicate" );
+
+        assertThrows( LdapUnwillingToPerformException.class, () -> tree.addAll( elements ) );
+        assertEquals( 2 + 200, tree.size() );
+        assertEquals( "com", tree.getElement( new Dn( "dc=other,dc=com" ) ) );
+    }
+
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws Exception
+    {
+        ConcurrentDnTree<Integer> tree = new ConcurrentDnTree<>();
+        int nbDns = 500;
+        Dn[] dns = new Dn[nbDns];
+
+        for ( int i = 0; i < nbDns; i++ )
+        {
+            dns[i] = new Dn( "ou=" + i + ",dc=example,dc=com" );
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        List<Future<?>> futures = new ArrayList<>();
+
+        // One writer, adding the elements in order, and three readers
+        futures.add( executor.submit( () ->
+        {
+            for ( int i = 0; i < nbDns; i++ )
+            {
+                tree.add( dns[i], i );
+            }
+
+            return null;
+        } ) );
+
+        for ( int t = 0; t < 3; t++ )
+        {
+            futures.add( executor.submit( () ->
+            {
+                for ( int loop = 0; loop < 20; loop++ )
+                {
+                    // A snapshot contains a prefix of the added elements
+                    ConcurrentDnTree.Node<Integer> snapshot = tree.snapshot();
+                    int size = snapshot.size();
+
+                    for ( int i = 0; i < nbDns; i++ )
+                    {
+                        ConcurrentDnTree.Node<Integer> node = snapshot.getChildren().isEmpty() ? null
+                            : snapshot.getChild( dns[i].getRdn( 2 ) ).getChild( dns[i].getRdn( 1 ) ).getChild(
+                                dns[i].getRdn( 0 ) );
+
+                        assertEquals( i < size - 3, node != null );
+                    }
+                }
+
+                return null;
+            } ) );
+        }
+
+        for ( Future<?> future : futures )
+        {
+            future.get();
+        }
+
+        executor.shutdown();
+
+        assertEquals( nbDns + 3, tree.size() );
+    }
+
+
+    /**
+     * Compare the DnNode and the ConcurrentDnTree lookup throughput, from 1 to 64
+     * threads. Enable it to get some numbers.
+     */
+    @Test
+    @Disabled
+    public void testContention() throws Exception
+    {
+        DnNode<Integer> dnNode = new DnNode<>();
+        ConcurrentDnTree<Integer> concurrentTree = new ConcurrentDnTree<>();
+        int nbContexts = 100;
+        Dn[] dns = new Dn[nbContexts];
+
+        for ( int i = 0; i < nbContexts; i++ )
+        {
+            Dn context = new Dn( "ou=context" + i + ",dc=example,dc=com" );
+            dnNode.add( context, i );
+            concurrentTree.add( context, i );
+            dns[i] = new Dn( "uid=user" + i + ",ou=people,ou=context" + i + ",dc=example,dc=com" );
+        }
+
+        int nbLookups = 1000000;
+
+        for ( int nbThreads = 1; nbThreads <= 64; nbThreads *= 2 )
+        {
+            long dnNodeTime = measure( nbThreads, nbLookups, dns, dnNode::getParentWithElement );
+            long concurrentTime = measure( nbThreads, nbLookups, dns, concurrentTree::getParentWithElement );
+
+            System.out.println( nbThreads + " threads, " + nbLookups + " lookups per thread : DnNode "
+                + dnNodeTime + " ms, ConcurrentDnTree " + concurrentTime + " ms" );
+        }
+    }
+
+
+    private static long measure( int nbThreads, int nbLookups, Dn[] dns, Function<Dn, Object> lookup )
+        throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( nbThreads );
+        List<Callable<Object>> tasks = new ArrayList<>();
+
+        for ( int t = 0; t < nbThreads; t++ )
+        {
+            tasks.add( () ->
+            {
+                for ( int i = 0; i < nbLookups; i++ )
+                {
+                    if ( lookup.apply( dns[i % dns.length] ) == null )
+                    {
+                        throw new IllegalStateException();
+                    }
+                }
+
+                return null;
+            } );
+        }
+
+        long t0 = System.currentTimeMillis();
+
+        for ( Future<Object> future : executor.invokeAll( tasks ) )
+        {
+            future.get();
+        }
+
+        long t1 = System.currentTimeMillis();
+        executor.shutdown();
+
+        return t1 - t0;
+    }
+}
@@ -858,6 +858,35 @@ public class TestDnNode
     }
 
 
+    /**
+     * Test that looking up a parent element does not modify the tree
+     */
+    @Test
+    public void testParentLookupsDoNotModifyTree() throws Exception
+    {
+        DnNode<Dn> dnLookupTree = new DnNode<Dn>();
+        Dn org = new Dn( "dc=org" );
+        Dn dn1 = new Dn( "dc=directory,dc=apache,dc=org" );
+        Dn test = new Dn( "dc=test,dc=directory,dc=apache,dc=org" );
+
+        dnLookupTree.add( org, org );
+        dnLookupTree.add( dn1, dn1 );
+
+        DnNode<Dn> dn1Node = dnLookupTree.getNode( dn1 );
+        DnNode<Dn> apacheNode = dn1Node.getParent();
+
+        assertTrue( dnLookupTree.hasParentElement( test ) );
+        assertEquals( dn1, dnLookupTree.getParentWithElement( test ).getElement() );
+
+        // The root and the intermediate nodes keep their parent
+        assertNull( dnLookupTree.getParent() );
+        assertEquals( apacheNode, dn1Node.getParent() );
+        assertEquals( dn1, dn1Node.getDn() );
+        assertEquals( dn1, dnLookupTree.getNode( dn1 ).getElement() );
+        assertEquals( org, dnLookupTree.getParentWithElement( dn1 ).getElement() );
+    }
+
+
     @Test
     public void testRename() throws Exception
     {
@@ -0,0 +1,768 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.entry;
+
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+
+/**
+ * The map of attributes stored in a {@link DefaultEntry}, keyed by the attribute ID
+ * (the AttributeType OID for a schema aware entry). Most entries have a few dozens of
+ * attributes, so they are stored in two parallel arrays and looked up with a linear scan,
+ * until the entry grows beyond {@link #SMALL_MAP_MAX_SIZE} attributes, where we switch
+ * to a {@link LinkedHashMap}.
+ * <p>
+ * For schema aware entries, the keys are the OIDs hold by the AttributeTypes, which are
+ * shared instances, so the lookup is most of the time an identity check. Otherwise, we
+ * compare the (cached) String hashCodes before checking for equality.
+ * <p>
+ * The attributes are kept in insertion order. This class is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class AttributeMap extends AbstractMap<String, Attribute> implements Cloneable
+{
+    /** The maximum number of attributes stored in arrays before we switch to a hashed map */
+    static final int SMALL_MAP_MAX_SIZE = 32;
+
+    /** The default arrays size */
+    private static final int DEFAULT_CAPACITY = 8;
+
+    /** The attribute IDs, when we don't use a Map */
+    private String[] keys;
+
+    /** The attributes, when we don't use a Map */
+    private Attribute[] values;
+
+    /** The number of attributes, when we don't use a Map */
+    private int size;
+
+    /** The hashed map, used when we have more than SMALL_MAP_MAX_SIZE attributes */
+    private Map<String, Attribute> map;
+
+    /** The number of structural modifications, used to detect concurrent modifications */
+    private int modCount;
+
+    /** The entry set view, created on demand */
+    private transient Set<Map.Entry<String, Attribute>> entrySet;
+
+    /** The key set view, created on demand */
+    private transient Set<String> keySet;
+
+    /** The values view, created on demand */
+    private transient Collection<Attribute> valuesView;
+
+
+    /**
+     * Creates a new, empty, AttributeMap
+     */
+    AttributeMap()
+    {
+    }
+
+
+    /**
+     * Creates a new, empty, AttributeMap, sized to contain the given number of attributes
+     *
+     * @param capacity The expected number of attributes
+     */
+    AttributeMap( int capacity )
+    {
+        if ( capacity > SMALL_MAP_MAX_SIZE )
+        {
+            map = new LinkedHashMap<>( capacity * 2 );
+        }
+        else if ( capacity > 0 )
+        {
+            keys = new String[capacity];
+            values = new Attribute[capacity];
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        if ( map != null )
+        {
+            return map.size();
+        }
+
+        return size;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey( Object key )
+    {
+        if ( map != null )
+        {
+            return map.containsKey( key );
+        }
+
+        return indexOf( key ) >= 0;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Attribute get( Object key )
+    {
+        if ( map != null )
+        {
+            return map.get( key );
+        }
+
+        int pos = indexOf( key );
+
+        if ( pos < 0 )
+        {
+            return null;
+        }
+
+        return values[pos];
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Attribute put( String key, Attribute value )
+    {
+        if ( map != null )
+        {
+            return map.put( key, value );
+        }
+
+        int pos = indexOf( key );
+
+        if ( pos >= 0 )
+        {
+            Attribute previous = values[pos];
+            values[pos] = value;
+
+            return previous;
+        }
+
+        if ( size == SMALL_MAP_MAX_SIZE )
+        {
+            // Too many attributes, switch to a hashed map
+            map = new LinkedHashMap<>( SMALL_MAP_MAX_SIZE * 4 );
+
+            for ( int i = 0; i < size; i++ )
+            {
+                map.put( keys[i], values[i] );
+            }
+
+            map.put( key, value );
+            keys = null;
+            values = null;
+            size = 0;
+            modCount++;
+
+            return null;
+        }
+
+        if ( keys == null )
+        {
+            keys = new String[DEFAULT_CAPACITY];
+            values = new Attribute[DEFAULT_CAPACITY];
+        }
+        else if ( size == keys.length )
+        {
+            int newCapacity = Math.min( size << 1, SMALL_MAP_MAX_SIZE );
+            String[] newKeys = new String[newCapacity];
+            Attribute[] newValues = new Attribute[newCapacity];
+            System.arraycopy( keys, 0, newKeys, 0, size );
+            System.arraycopy( values, 0, newValues, 0, size );
+            keys = newKeys;
+            values = newValues;
+        }
+
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        modCount++;
+
+        return null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Attribute remove( Object key )
+    {
+        if ( map != null )
+        {
+            return map.remove( key );
+        }
+
+        int pos = indexOf( key );
+
+        if ( pos < 0 )
+        {
+            return null;
+        }
+
+        Attribute previous = values[pos];
+        removeAt( pos );
+
+        return previous;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear()
+    {
+        map = null;
+        keys = null;
+        values = null;
+        size = 0;
+        modCount++;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Map.Entry<String, Attribute>> entrySet()
+    {
+        if ( entrySet == null )
+        {
+            entrySet = new EntrySet();
+        }
+
+        return entrySet;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> keySet()
+    {
+        if ( keySet == null )
+        {
+            keySet = new KeySet();
+        }
+
+        return keySet;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<Attribute> values()
+    {
+        if ( valuesView == null )
+        {
+            valuesView = new Values();
+        }
+
+        return valuesView;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AttributeMap clone()
+    {
+        try
+        {
+            AttributeMap clone = ( AttributeMap ) super.clone();
+            clone.entrySet = null;
+            clone.keySet = null;
+            clone.valuesView = null;
+
+            if ( map != null )
+            {
+                clone.map = new LinkedHashMap<>( map );
+            }
+            else if ( keys != null )
+            {
+                clone.keys = keys.clone();
+                clone.values = values.clone();
+            }
+
+            return clone;
+        }
+        catch ( CloneNotSupportedException cnse )
+        {
+            throw new AssertionError( cnse );
+        }
+    }
+
+
+    /**
+     * Search for a key in the arrays.
+     *
+     * @param key The searched key
+     * @return The key position, or -1 if not found
+     */
+    private int indexOf( Object key )
+    {
+        if ( key == null )
+        {
+            for ( int i = 0; i < size; i++ )
+            {
+                if ( keys[i] == null )
+                {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        // First, try with an identity check : the OIDs are shared by the AttributeTypes
+        for ( int i = 0; i < size; i++ )
+        {
+            if ( keys[i] == key )
+            {
+                return i;
+            }
+        }
+
+        int hash = key.hashCode();
+
+        for ( int i = 0; i < size; i++ )
+        {
+            String current = keys[i];
+
+            if ( ( current != null ) && ( current.hashCode() == hash ) && key.equals( current ) )
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Remove the attribute at the given position in the arrays
+     */
+    private void removeAt( int pos )
+    {
+        int moved = size - pos - 1;
+
+        if ( moved > 0 )
+        {
+            System.arraycopy( keys, pos + 1, keys, pos, moved );
+            System.arraycopy( values, pos + 1, values, pos, moved );
+        }
+
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        modCount++;
+    }
+
+
+    /**
+     * The entry set view
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Attribute>>
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size()
+        {
+            return AttributeMap.this.size();
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void clear()
+        {
+            AttributeMap.this.clear();
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Iterator<Map.Entry<String, Attribute>> iterator()
+        {
+            if ( map != null )
+            {
+                return map.entrySet().iterator();
+            }
+
+            return new EntryIterator();
+        }
+    }
+
+
+    /**
+     * The key set view
+     */
+    private final class KeySet extends AbstractSet<String>
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size()
+        {
+            return AttributeMap.this.size();
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean contains( Object key )
+        {
+            return containsKey( key );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void clear()
+        {
+            AttributeMap.this.clear();
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Iterator<String> iterator()
+        {
+            if ( map != null )
+            {
+                return map.keySet().iterator();
+            }
+
+            return new ArrayIterator<String>()
+            {
+                @Override
+                protected String get( int pos )
+                {
+                    return keys[pos];
+                }
+            };
+        }
+    }
+
+
+    /**
+     * The values view
+     */
+    private final class Values extends AbstractCollection<Attribute>
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size()
+        {
+            return AttributeMap.this.size();
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void clear()
+        {
+            AttributeMap.this.clear();
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Iterator<Attribute> iterator()
+        {
+            if ( map != null )
+            {
+                return map.values().iterator();
+            }
+
+            return new ArrayIterator<Attribute>()
+            {
+                @Override
+                protected Attribute get( int pos )
+                {
+                    return values[pos];
+                }
+            };
+        }
+    }
+
+
+    /**
+     * An iterator over the arrays, returning the element built from a position
+     *
+     * @param <E> The element type
+     */
+    private abstract class ArrayIterator<E> implements Iterator<E>
+    {
+        /** The position of the next element to return */
+        private int next;
+
+        /** The position of the last returned element, -1 if none */
+        private int last = -1;
+
+        /** The expected modCount */
+        protected int expectedModCount = modCount;
+
+
+        /**
+         * @param pos The position in the arrays
+         * @return The element at this position
+         */
+        protected abstract E get( int pos );
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean hasNext()
+        {
+            return next < size;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public E next()
+        {
+            if ( expectedModCount != modCount )
+            {
+                throw new ConcurrentModificationException();
+            }
+
+            if ( next >= size )
+            {
+                throw new NoSuchElementException();
+            }
+
+            last = next++;
+
+            return get( last );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void remove()
+        {
+            if ( last < 0 )
+            {
+                throw new IllegalStateException();
+            }
+
+            if ( expectedModCount != modCount )
+            {
+                throw new ConcurrentModificationException();
+            }
+
+            removeAt( last );
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+
+    /**
+     * An iterator over the arrays entries. The entries are only created when the
+     * entry set is iterated : the keys and the values are iterated directly.
+     */
+    private final class EntryIterator extends ArrayIterator<Map.Entry<String, Attribute>>
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Map.Entry<String, Attribute> get( int pos )
+        {
+            return new ArrayEntry( pos, this );
+        }
+    }
+
+
+    /**
+     * An entry of the arrays. Like a {@link java.util.HashMap} entry, it keeps its key and
+     * value once the iterator has moved or removed it, and setValue writes through
+     * to the arrays.
+     */
+    private final class ArrayEntry implements Map.Entry<String, Attribute>
+    {
+        /** The entry position */
+        private final int pos;
+
+        /** The iterator which has returned this entry */
+        private final EntryIterator iterator;
+
+        /** The key */
+        private final String key;
+
+        /** The value */
+        private Attribute value;
+
+
+        private ArrayEntry( int pos, EntryIterator iterator )
+        {
+            this.pos = pos;
+            this.iterator = iterator;
+            key = keys[pos];
+            value = values[pos];
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getKey()
+        {
+            return key;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Attribute getValue()
+        {
+            return value;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Attribute setValue( Attribute newValue )
+        {
+            if ( iterator.expectedModCount != modCount )
+            {
+                throw new ConcurrentModificationException();
+            }
+
+            Attribute previous = values[pos];
+            values[pos] = newValue;
+            value = newValue;
+
+            return previous;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( !( o instanceof Map.Entry ) )
+            {
+                return false;
+            }
+
+            Map.Entry<?, ?> that = ( Map.Entry<?, ?> ) o;
+
+            return Objects.equals( key, that.getKey() ) && Objects.equals( value, that.getValue() );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode( key ) ^ Objects.hashCode( value );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return key + "=" + value;
+        }
+    }
+}
@@ -23,7 +23,6 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.Set;
 
 import org.apache.directory.api.asn1.util.Oid;
@@ -53,8 +52,8 @@ public class DefaultAttribute implements Attribute, Cloneable
     /** The associated AttributeType */
     private AttributeType attributeType;
 
-    /** The set of contained values */
-    private Set<Value> values = new LinkedHashSet<>();
+    /** The set of contained values. Its storage adapts to the number of values */
+    private Set<Value> values = new ValueSet();
 
     /** The User provided ID */
     private String upId;
@@ -197,6 +196,9 @@ public class DefaultAttribute implements Attribute, Cloneable
      */
     public DefaultAttribute( String upId, Value... vals )
     {
+        // Set the ID first, so that the values can be pooled
+        setUpId( upId );
+
         // The value can be null, this is a valid value.
         if ( vals[0] == null )
         {
@@ -210,7 +212,7 @@ public class DefaultAttribute implements Attribute, Cloneable
             }
         }
 
-        setUpId( upId );
+        rehash();
     }
 
 
@@ -313,6 +315,9 @@ public class DefaultAttribute implements Attribute, Cloneable
      */
     public DefaultAttribute( String upId, String... vals )
     {
+        // Set the ID first, so that the values can be pooled
+        setUpId( upId );
+
         try
         {
             add( vals );
@@ -322,7 +327,7 @@ public class DefaultAttribute implements Attribute, Cloneable
             // Do nothing, it can't happen
         }
 
-        setUpId( upId );
+        rehash();
     }
 
 
@@ -334,6 +339,9 @@ public class DefaultAttribute implements Attribute, Cloneable
      */
     public DefaultAttribute( String upId, byte[]... vals )
     {
+        // Set the ID first, so that the values can be pooled
+        setUpId( upId );
+
         try
         {
             add( vals );
@@ -343,7 +351,7 @@ public class DefaultAttribute implements Attribute, Cloneable
             // Do nothing, this can't happen
         }
 
-        setUpId( upId );
+        rehash();
     }
 
 
@@ -776,6 +784,25 @@ public class DefaultAttribute implements Attribute, Cloneable
     }
 
 
+    /**
+     * Gets the canonical instance of a value from the installed {@link ValuePool}, if any.
+     *
+     * @param value The value to intern
+     * @return The pooled value, or the value itself if it's not pooled
+     */
+    private Value intern( Value value )
+    {
+        ValuePool pool = ValuePool.getInstalled();
+
+        if ( pool == null )
+        {
+            return value;
+        }
+
+        return pool.intern( id, value );
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -828,9 +855,9 @@ public class DefaultAttribute implements Attribute, Cloneable
                             {
                                 // Replace the value
                                 values.remove( val );
-                                values.add( val );
+                                values.add( intern( val ) );
                             }
-                            else if ( values.add( val ) )
+                            else if ( values.add( intern( val ) ) )
                             {
                                 nbAdded++;
                             }
@@ -883,7 +910,7 @@ public class DefaultAttribute implements Attribute, Cloneable
                                     val = new Value( attributeType, val.getBytes() );
                                 }
 
-                                if ( values.add( val ) )
+                                if ( values.add( intern( val ) ) )
                                 {
                                     nbAdded++;
                                 }
@@ -960,7 +987,7 @@ public class DefaultAttribute implements Attribute, Cloneable
                         {
                             // The attribute type will be set to HR
                             isHR = true;
-                            values.add( val );
+                            values.add( intern( val ) );
                             nbAdded++;
                         }
                         else if ( !isHR )
@@ -971,7 +998,7 @@ public class DefaultAttribute implements Attribute, Cloneable
 
                             if ( !contains( bv ) )
                             {
-                                values.add( bv );
+                                values.add( intern( bv ) );
                                 nbAdded++;
                             }
                         }
@@ -980,7 +1007,7 @@ public class DefaultAttribute implements Attribute, Cloneable
                             // The attributeType is HR, simply add the value
                             if ( !contains( val ) )
                             {
-                                values.add( val );
+                                values.add( intern( val ) );
                                 nbAdded++;
                             }
                         }
@@ -992,7 +1019,7 @@ public class DefaultAttribute implements Attribute, Cloneable
                         {
                             // The attribute type will be set to binary
                             isHR = false;
-                            values.add( val );
+                            values.add( intern( val ) );
                             nbAdded++;
                         }
                         else if ( !isHR )
@@ -1000,7 +1027,7 @@ public class DefaultAttribute implements Attribute, Cloneable
                             // The attributeType is not HR, simply add the value if it does not already exist
                             if ( !contains( val ) )
                             {
-                                values.add( val );
+                                values.add( intern( val ) );
                                 nbAdded++;
                             }
                         }
@@ -1012,7 +1039,7 @@ public class DefaultAttribute implements Attribute, Cloneable
 
                             if ( !contains( sv ) )
                             {
-                                values.add( sv );
+                                values.add( intern( sv ) );
                                 nbAdded++;
                             }
                         }
@@ -1839,7 +1866,7 @@ public class DefaultAttribute implements Attribute, Cloneable
 
         if ( values != null )
         {
-            Set<Value> newValues = new LinkedHashSet<>( values.size() );
+            Set<Value> newValues = new ValueSet();
 
             for ( Value value : values )
             {
@@ -2019,7 +2046,7 @@ public class DefaultAttribute implements Attribute, Cloneable
                 attribute.attributeType = attributeType;
             }
 
-            attribute.values = new LinkedHashSet<>( values.size() );
+            attribute.values = new ValueSet();
 
             for ( Value value : values )
             {
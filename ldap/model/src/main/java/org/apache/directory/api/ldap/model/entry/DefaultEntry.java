@@ -27,7 +27,6 @@ import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -68,7 +67,7 @@ public final class DefaultEntry implements Entry
     private Dn dn;
 
     /** A map containing all the attributes for this entry */
-    private Map<String, Attribute> attributes = new HashMap<>();
+    private Map<String, Attribute> attributes = new AttributeMap();
 
     /** A speedup to get the ObjectClass attribute */
     private static AttributeType objectClassAttributeType;
@@ -306,7 +305,7 @@ public final class DefaultEntry implements Entry
         }
 
         // Init the attributes map
-        attributes = new HashMap<>( entry.size() );
+        attributes = new AttributeMap( entry.size() );
 
         // and copy all the attributes
         for ( Attribute attribute : entry )
@@ -1088,7 +1087,7 @@ public final class DefaultEntry implements Entry
         try
         {
             DefaultEntry clone = ( DefaultEntry ) super.clone();
-            clone.attributes = new HashMap<>( attributes.size() );
+            clone.attributes = new AttributeMap( attributes.size() );
 
             // now clone all the attributes
             //clone.attributes.clear();
@@ -1123,7 +1122,6 @@ public final class DefaultEntry implements Entry
     /**
      * Shallow clone an entry. We don't clone the Attributes
      */
-    @SuppressWarnings("unchecked")
     @Override
     public Entry shallowClone()
     {
@@ -1137,8 +1135,7 @@ public final class DefaultEntry implements Entry
             clone.dn = dn;
 
             // then clone the ClientAttribute Map.
-            clone.attributes = ( Map<String, Attribute> ) ( ( ( HashMap<String, Attribute> ) attributes )
-                .clone() );
+            clone.attributes = ( ( AttributeMap ) attributes ).clone();
 
             // We are done !
             return clone;
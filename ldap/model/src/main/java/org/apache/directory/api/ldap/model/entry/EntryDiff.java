@@ -0,0 +1,261 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.entry;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+
+
+/**
+ * Computes the modifications to apply on an entry to get another entry. The
+ * modifications are kept as small as possible :
+ * <ul>
+ *   <li>an attribute which is not present in the current entry is added</li>
+ *   <li>an attribute which is not present in the desired entry is removed, without
+ *   sending its values</li>
+ *   <li>for an attribute present in both entries, only the values to delete and the
+ *   values to add are sent, unless replacing all the values is cheaper</li>
+ * </ul>
+ * The values are compared the way the attribute compares them : when the entries
+ * are schema aware, using their normalized form. Each attribute is processed in a time
+ * proportional to its number of values, as the values are looked up in hashed sets.
+ * <br>
+ * The entries' Dn are not compared.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class EntryDiff
+{
+    private EntryDiff()
+    {
+    }
+
+
+    /**
+     * Computes the modifications to apply on the current entry to get the desired entry.
+     *
+     * @param current The current entry
+     * @param desired The desired entry
+     * @return The list of modifications, empty if the entries have the same attributes
+     * @throws LdapInvalidAttributeValueException If one of the modified attributes can't be created
+     */
+    public static List<Modification> diff( Entry current, Entry desired ) throws LdapInvalidAttributeValueException
+    {
+        return diff( current, desired, null );
+    }
+
+
+    /**
+     * Computes the modifications to apply on the current entry to get the desired entry,
+     * and the modifications to apply on the desired entry to get back the current entry.
+     *
+     * @param current The current entry
+     * @param desired The desired entry
+     * @param reverse The list which will receive the reverse modifications, if not null
+     * @return The list of modifications, empty if the entries have the same attributes
+     * @throws LdapInvalidAttributeValueException If one of the modified attributes can't be created
+     */
+    public static List<Modification> diff( Entry current, Entry desired, List<Modification> reverse )
+        throws LdapInvalidAttributeValueException
+    {
+        List<Modification> modifications = new ArrayList<>();
+
+        // First process the desired attributes : they are either new or modified
+        for ( Attribute desiredAttribute : desired )
+        {
+            if ( desiredAttribute.size() == 0 )
+            {
+                // An attribute without value is an absent attribute, it will be removed
+                continue;
+            }
+
+            Attribute currentAttribute = getAttribute( current, desiredAttribute );
+
+            if ( ( currentAttribute == null ) || ( currentAttribute.size() == 0 ) )
+            {
+                // A new attribute
+                modifications.add( createModification( ModificationOperation.ADD_ATTRIBUTE, desiredAttribute,
+                    desiredAttribute ) );
+
+                if ( reverse != null )
+                {
+                    reverse.add( createModification( ModificationOperation.REMOVE_ATTRIBUTE, desiredAttribute, null ) );
+                }
+            }
+            else
+            {
+                diff( currentAttribute, desiredAttribute, modifications, reverse );
+            }
+        }
+
+        // Then the current attributes which are not desired anymore
+        for ( Attribute currentAttribute : current )
+        {
+            if ( currentAttribute.size() == 0 )
+            {
+                continue;
+            }
+
+            Attribute desiredAttribute = getAttribute( desired, currentAttribute );
+
+            if ( ( desiredAttribute == null ) || ( desiredAttribute.size() == 0 ) )
+            {
+                // No need to send the values, the whole attribute is removed
+                modifications.add( createModification( ModificationOperation.REMOVE_ATTRIBUTE, currentAttribute, null ) );
+
+                if ( reverse != null )
+                {
+                    reverse.add( createModification( ModificationOperation.ADD_ATTRIBUTE, currentAttribute,
+                        currentAttribute ) );
+                }
+            }
+        }
+
+        return modifications;
+    }
+
+
+    /**
+     * Computes the modifications for an attribute present in both entries
+     */
+    private static void diff( Attribute currentAttribute, Attribute desiredAttribute, List<Modification> modifications,
+        List<Modification> reverse ) throws LdapInvalidAttributeValueException
+    {
+        List<Value> deleted = new ArrayList<>();
+        List<Value> added = new ArrayList<>();
+        int deletedLength = 0;
+        int addedLength = 0;
+        int desiredLength = 0;
+
+        for ( Value value : currentAttribute )
+        {
+            if ( !desiredAttribute.contains( value ) )
+            {
+                deleted.add( value );
+                deletedLength += value.length();
+            }
+        }
+
+        for ( Value value : desiredAttribute )
+        {
+            desiredLength += value.length();
+
+            if ( !currentAttribute.contains( value ) )
+            {
+                added.add( value );
+                addedLength += value.length();
+            }
+        }
+
+        if ( deleted.isEmpty() && added.isEmpty() )
+        {
+            // Nothing to do
+            return;
+        }
+
+        if ( desiredLength + desiredAttribute.size() < deletedLength + deleted.size() + addedLength + added.size() )
+        {
+            // Sending all the values is cheaper than sending the differences. The number of
+            // values is added to the lengths, so that empty values have a cost too.
+            modifications.add( createModification( ModificationOperation.REPLACE_ATTRIBUTE, desiredAttribute,
+                desiredAttribute ) );
+
+            if ( reverse != null )
+            {
+                reverse.add( createModification( ModificationOperation.REPLACE_ATTRIBUTE, currentAttribute,
+                    currentAttribute ) );
+            }
+
+            return;
+        }
+
+        // The deletions first, then the additions
+        if ( !deleted.isEmpty() )
+        {
+            modifications.add( createModification( ModificationOperation.REMOVE_ATTRIBUTE, currentAttribute, deleted ) );
+        }
+
+        if ( !added.isEmpty() )
+        {
+            modifications.add( createModification( ModificationOperation.ADD_ATTRIBUTE, desiredAttribute, added ) );
+        }
+
+        if ( reverse != null )
+        {
+            if ( !added.isEmpty() )
+            {
+                reverse.add( createModification( ModificationOperation.REMOVE_ATTRIBUTE, desiredAttribute, added ) );
+            }
+
+            if ( !deleted.isEmpty() )
+            {
+                reverse.add( createModification( ModificationOperation.ADD_ATTRIBUTE, currentAttribute, deleted ) );
+            }
+        }
+    }
+
+
+    /**
+     * Gets the attribute of an entry having the same AttributeType or ID as the given attribute
+     */
+    private static Attribute getAttribute( Entry entry, Attribute attribute )
+    {
+        if ( entry.isSchemaAware() && ( attribute.getAttributeType() != null ) )
+        {
+            return entry.get( attribute.getAttributeType() );
+        }
+        else
+        {
+            return entry.get( attribute.getUpId() );
+        }
+    }
+
+
+    /**
+     * Creates a modification on an attribute, with the given values
+     */
+    private static Modification createModification( ModificationOperation operation, Attribute attribute,
+        Iterable<Value> values ) throws LdapInvalidAttributeValueException
+    {
+        Attribute modified;
+
+        if ( attribute.getAttributeType() != null )
+        {
+            modified = new DefaultAttribute( attribute.getUpId(), attribute.getAttributeType() );
+        }
+        else
+        {
+            modified = new DefaultAttribute( attribute.getUpId() );
+        }
+
+        if ( values != null )
+        {
+            for ( Value value : values )
+            {
+                modified.add( value );
+            }
+        }
+
+        return new DefaultModification( operation, modified );
+    }
+}
@@ -24,6 +24,7 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.text.ParseException;
 import java.util.Arrays;
 
 import org.apache.directory.api.i18n.I18n;
@@ -38,6 +39,7 @@ import org.apache.directory.api.ldap.model.schema.Normalizer;
 import org.apache.directory.api.ldap.model.schema.SyntaxChecker;
 import org.apache.directory.api.ldap.model.schema.comparators.StringComparator;
 import org.apache.directory.api.ldap.model.schema.normalizers.NoOpNormalizer;
+import org.apache.directory.api.util.GeneralizedTime;
 import org.apache.directory.api.util.Serialize;
 import org.apache.directory.api.util.Strings;
 import org.slf4j.Logger;
@@ -78,23 +80,32 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
     /** logger for reporting errors that might not be handled properly upstream */
     private static final Logger LOG = LoggerFactory.getLogger( Value.class );
 
+    /** The marker used when the value has not yet been parsed as a GeneralizedTime */
+    private static final long NOT_PARSED = Long.MIN_VALUE;
+
     /** reference to the attributeType associated with the value */
     private transient AttributeType attributeType;
 
     /** the User Provided value if it's a String */
     private String upValue;
 
-    /** the prepared representation of the user provided value if it's a String */
-    private String normValue;
+    /** the prepared representation of the user provided value if it's a String. Lazily computed for a trusted value */
+    private volatile String normValue;
 
     /** The computed hashcode. We don't want to compute it each time the hashcode() method is called */
     private volatile int h;
 
-    /** The UTF-8 bytes for this value (we use the UP value) */
-    private byte[] bytes;
+    /** The UTF-8 bytes for this value (we use the UP value). Lazily computed for a trusted value */
+    private volatile byte[] bytes;
+
+    /** Tells if the bytes and the normalized value are computed when first needed */
+    private transient boolean lazy;
 
     /** Two flags used to tell if the value is HR or not in serialization */
     private boolean isHR = true;
+
+    /** The value parsed as a GeneralizedTime, in microseconds since the epoch. Lazily computed */
+    private transient volatile long epochMicros = NOT_PARSED;
     
     /** A default comparator if we don't have an EQUALITY MR */
     private static StringComparator stringComparator = new StringComparator( null );
@@ -355,6 +366,7 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
      */
     public Value( AttributeType attributeType, Value value ) throws LdapInvalidAttributeValueException
     {
+        value.materialize();
         init( attributeType );
         
         if ( isHR )
@@ -416,6 +428,112 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
     {
         return new Value( attributeType );
     }
+
+
+    /**
+     * Creates a schema aware Value from a trusted source, like a server response. The value
+     * is not checked against its syntax, and its UTF-8 bytes, its normalized value and its
+     * hash code are only computed when first needed, so that a value which is only displayed
+     * or passed through costs nothing more than its String. Otherwise, the value behaves as a
+     * value created with {@link #Value(AttributeType, String)}.
+     *
+     * @param attributeType the schema type associated with the value
+     * @param upValue the value to wrap
+     * @return The created value
+     * @throws IllegalArgumentException If the value can't be normalized, when its normalized
+     * value is computed
+     */
+    public static Value createTrusted( AttributeType attributeType, String upValue )
+    {
+        if ( attributeType == null )
+        {
+            return new Value( upValue );
+        }
+
+        Value value = new Value( attributeType );
+        value.upValue = upValue;
+        value.lazy = true;
+
+        if ( !value.isHR && ( upValue != null ) )
+        {
+            // The bytes are the value of a binary Value
+            value.bytes = Strings.getBytesUtf8( upValue );
+        }
+
+        return value;
+    }
+
+
+    /**
+     * Creates a schema aware Value from a trusted binary value, like a value received from a
+     * server. The value is not checked against its syntax, and its hash code is only computed
+     * when first needed. Otherwise, the value behaves as a value created with
+     * {@link #Value(AttributeType, byte[])}.
+     *
+     * @param attributeType the schema type associated with the value
+     * @param upValue the value to wrap
+     * @return The created value
+     */
+    public static Value createTrusted( AttributeType attributeType, byte[] upValue )
+    {
+        if ( attributeType == null )
+        {
+            return new Value( upValue );
+        }
+
+        Value value = new Value( attributeType );
+
+        if ( upValue != null )
+        {
+            value.bytes = new byte[upValue.length];
+            System.arraycopy( upValue, 0, value.bytes, 0, upValue.length );
+
+            if ( value.isHR )
+            {
+                value.upValue = Strings.utf8ToString( upValue );
+            }
+        }
+
+        return value;
+    }
+
+
+    /**
+     * Computes the UTF-8 bytes of a trusted value, if not already done. Two threads may both
+     * compute them, but they will get the same result.
+     */
+    private void materializeBytes()
+    {
+        if ( lazy && ( bytes == null ) && ( upValue != null ) )
+        {
+            bytes = Strings.getBytesUtf8( upValue );
+        }
+    }
+
+
+    /**
+     * Computes the UTF-8 bytes and the normalized value of a trusted value, if not already done
+     */
+    private void materialize()
+    {
+        if ( lazy )
+        {
+            materializeBytes();
+
+            if ( ( normValue == null ) && ( upValue != null ) )
+            {
+                try
+                {
+                    computeNormValue();
+                }
+                catch ( LdapException le )
+                {
+                    LOG.error( le.getMessage() );
+                    throw new IllegalArgumentException( I18n.err( I18n.ERR_13247_INVALID_VALUE_CANT_NORMALIZE, upValue ) );
+                }
+            }
+        }
+    }
     
 
     /**
@@ -508,6 +626,8 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
      */
     public String getEscaped()
     {
+        materializeBytes();
+
         if ( Strings.isEmpty( bytes ) )
         {
             return Strings.EMPTY_STRING;
@@ -1003,9 +1123,9 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
                         break;
                     }
                     
-                    if ( pos == bytes.length - 3 )
+                    if ( pos >= bytes.length - 3 )
                     {
-                        // We only have 2 bytes : not an UTF-4
+                        // We only have 1 or 2 more bytes : not an UTF-4
                         sb.append( '\\' ).append( Strings.byteToString( b ) );
                     }
                     else
@@ -1062,9 +1182,9 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
                         break;
                     }
                     
-                    if ( pos == bytes.length - 3 )
+                    if ( pos >= bytes.length - 3 )
                     {
-                        // We only have 2 bytes : not an UTF-4
+                        // We only have 1 or 2 more bytes : not an UTF-4
                         sb.append( '\\' ).append( Strings.byteToString( b ) );
                     }
                     else
@@ -1118,9 +1238,9 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
                         break;
                     }
                     
-                    if ( pos == bytes.length - 3 )
+                    if ( pos >= bytes.length - 3 )
                     {
-                        // We only have 2 bytes : not an UTF-4
+                        // We only have 1 or 2 more bytes : not an UTF-4
                         sb.append( '\\' ).append( Strings.byteToString( b ) );
                     }
                     else
@@ -1266,10 +1386,35 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
      */
     public String getNormalized()
     {
+        materialize();
+
         return normValue;
     }
     
     
+    /**
+     * Gets the value as a GeneralizedTime, in microseconds since the epoch. The value
+     * is parsed once, and the result is kept, so that a time value can be compared
+     * many times (when evaluating an ordering filter, or checking a password policy)
+     * without being parsed again.
+     *
+     * @return The time, in microseconds since the epoch
+     * @throws ParseException If the value is not a valid GeneralizedTime
+     */
+    public long getEpochMicros() throws ParseException
+    {
+        long micros = epochMicros;
+
+        if ( micros == NOT_PARSED )
+        {
+            micros = GeneralizedTime.parseEpochMicros( getString() );
+            epochMicros = micros;
+        }
+
+        return micros;
+    }
+
+
     /**
      * @return The User Provided value
      */
@@ -1294,6 +1439,8 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
      */
     public byte[] getBytes()
     {
+        materializeBytes();
+
         if ( bytes == null )
         {
             return null;
@@ -1410,6 +1557,8 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
      */
     public int serialize( byte[] buffer, int pos )
     {
+        materialize();
+
         // Compute the length : the isHR flag first, the value and prepared value presence flags
         int length = 1;
         byte[] preparedBytes = null;
@@ -1659,6 +1808,8 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
     @Override
     public void writeExternal( ObjectOutput out ) throws IOException
     {
+        materialize();
+
         // Write a boolean for the HR flag
         out.writeBoolean( isHR );
 
@@ -1719,6 +1870,8 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
      */
     public int compareTo( String other )
     {
+        materialize();
+
         if ( !isHR )
         {
             String msg = I18n.err( I18n.ERR_13224_FAILED_TO_COMPARE_NORM_VALUES, this, other );
@@ -1822,6 +1975,9 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
     @Override
     public int compareTo( Value other )
     {
+        materialize();
+        other.materialize();
+
         // The two values must have the same type
         if ( isHR != other.isHR )
         {
@@ -1915,6 +2071,7 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
         if ( obj instanceof String )
         {
             String other = ( String ) obj;
+            materialize();
             
             if ( !isHR )
             {
@@ -1985,6 +2142,8 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
         }
 
         Value other = ( Value ) obj;
+        materialize();
+        other.materialize();
 
         // Check if the values aren't of the same type
         if ( isHR != other.isHR )
@@ -2119,6 +2278,8 @@ public class Value implements Cloneable, Externalizable, Comparable<Value>
     {
         if ( h == 0 )
         {
+            materialize();
+
             // return zero if the value is null so only one null value can be
             // stored in an attribute - the binary version does the same
             if ( isHR )
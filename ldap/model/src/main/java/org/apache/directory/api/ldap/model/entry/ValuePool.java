@@ -0,0 +1,416 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.entry;
+
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.util.Strings;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+
+/**
+ * A bounded, concurrent pool of canonical {@link Value} instances. Values like
+ * <em>objectClass: inetOrgPerson</em> or group DNs in <em>memberOf</em> are repeated
+ * millions of times in big search results or LDIF files : when a pool is installed,
+ * the {@link DefaultAttribute} will share one single instance for each of those
+ * values instead of keeping millions of copies. As the decoder and the {@link
+ * org.apache.directory.api.ldap.model.ldif.LdifReader} both add their values through
+ * the {@link DefaultAttribute}, they benefit from the pool too.
+ * <p>
+ * Only the attributes that have been explicitly enabled are pooled. The values are
+ * keyed by the attribute ID (the OID for schema aware attributes) and the normalized
+ * form of the value, and a pooled value is only shared if its user provided form is
+ * identical to the added one, so the content of an entry is never modified. When the
+ * pool is full, the least used values are evicted.
+ * <p>
+ * Here is an example :
+ * <pre>
+ * ValuePool pool = new ValuePool( 10_000 );
+ * pool.enable( schemaManager.getAttributeType( "objectClass" ) );
+ * pool.enable( "memberOf", "departmentNumber" );
+ * ValuePool.install( pool );
+ * ...
+ * System.out.println( pool.getHitRate() );
+ * ...
+ * ValuePool.uninstall();
+ * </pre>
+ * <p>
+ * The installed pool is global to the JVM (more precisely, to the class loader which
+ * has loaded this class) : it is shared by all the connections, all the SchemaManagers
+ * and all the LDIF readers, whatever the server or the tenant they are working for.
+ * The pooled values are immutable, and a schema aware value is only shared with a value
+ * having the very same AttributeType instance, so two SchemaManagers never see each
+ * other's values. However, the pool keeps a reference on the values of every tenant until
+ * they are evicted, the statistics are not split per tenant, and the enabled attributes
+ * apply to everyone. An application which wants to release those values, typically when
+ * a tenant is removed or when it is stopped, should call {@link #uninstall()}, or
+ * {@link #clear()} to keep on pooling with an empty pool. An application which needs
+ * to isolate its tenants should not install any pool.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ValuePool
+{
+    /** The default maximum number of pooled values */
+    public static final int DEFAULT_MAX_SIZE = 100_000;
+
+    /** The installed pool, if any */
+    private static final AtomicReference<ValuePool> INSTALLED = new AtomicReference<>();
+
+    /** The pooled values */
+    private final Cache<PoolKey, Value> pool;
+
+    /** The IDs (lower cased names or OIDs) of the attributes which values are pooled */
+    private final Set<String> enabledIds = ConcurrentHashMap.newKeySet();
+
+    /** The number of values found in the pool */
+    private final LongAdder hitCount = new LongAdder();
+
+    /** The number of values not found in the pool */
+    private final LongAdder missCount = new LongAdder();
+
+    /** The number of values evicted from the pool */
+    private final LongAdder evictionCount = new LongAdder();
+
+
+    /**
+     * The key used to store a value in the pool
+     */
+    private static final class PoolKey
+    {
+        /** The attribute ID */
+        private final String id;
+
+        /** The normalized value, for a HR value */
+        private final String normValue;
+
+        /** The bytes, for a binary value */
+        private final byte[] bytes;
+
+        /** The precomputed hashcode */
+        private final int h;
+
+
+        private PoolKey( String id, Value value )
+        {
+            this.id = id;
+
+            if ( value.isHumanReadable() )
+            {
+                normValue = value.getNormalized();
+                bytes = null;
+                h = id.hashCode() * 31 + normValue.hashCode();
+            }
+            else
+            {
+                normValue = null;
+                bytes = value.getBytes();
+                h = id.hashCode() * 31 + Arrays.hashCode( bytes );
+            }
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return h;
+        }
+
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+
+            if ( !( obj instanceof PoolKey ) )
+            {
+                return false;
+            }
+
+            PoolKey other = ( PoolKey ) obj;
+
+            return ( h == other.h ) && id.equals( other.id )
+                && ( normValue == null ? other.normValue == null && Arrays.equals( bytes, other.bytes )
+                    : normValue.equals( other.normValue ) );
+        }
+    }
+
+
+    /**
+     * Creates a new ValuePool, which can contain up to {@link #DEFAULT_MAX_SIZE} values
+     */
+    public ValuePool()
+    {
+        this( DEFAULT_MAX_SIZE );
+    }
+
+
+    /**
+     * Creates a new ValuePool
+     *
+     * @param maxSize The maximum number of pooled values
+     */
+    public ValuePool( int maxSize )
+    {
+        pool = Caffeine.newBuilder().maximumSize( maxSize ).executor( Runnable::run )
+            .removalListener( ( PoolKey key, Value value, RemovalCause cause ) ->
+            {
+                if ( cause.wasEvicted() )
+                {
+                    evictionCount.increment();
+                }
+            } ).build();
+    }
+
+
+    /**
+     * Installs a pool that will be used by all the {@link DefaultAttribute} instances
+     * of the JVM. The previously installed pool, if any, is replaced but not cleared.
+     *
+     * @param pool The pool to install, or null to stop pooling values
+     * @return The previously installed pool, or null if there was none
+     */
+    public static ValuePool install( ValuePool pool )
+    {
+        return INSTALLED.getAndSet( pool );
+    }
+
+
+    /**
+     * Uninstalls the installed pool, if any, and clears it so that the pooled values
+     * can be garbage collected even if the pool itself is still referenced.
+     *
+     * @return The uninstalled pool, or null if there was none
+     */
+    public static ValuePool uninstall()
+    {
+        ValuePool pool = INSTALLED.getAndSet( null );
+
+        if ( pool != null )
+        {
+            pool.clear();
+        }
+
+        return pool;
+    }
+
+
+    /**
+     * @return The installed pool, or null if there is none
+     */
+    public static ValuePool getInstalled()
+    {
+        return INSTALLED.get();
+    }
+
+
+    /**
+     * Enables the pooling of an AttributeType values, for schema aware and schema agnostic
+     * attributes (its OID and all its names are enabled).
+     *
+     * @param attributeType The AttributeType which values will be pooled
+     * @return This pool
+     */
+    public ValuePool enable( AttributeType attributeType )
+    {
+        enabledIds.add( attributeType.getOid() );
+
+        for ( String name : attributeType.getNames() )
+        {
+            enabledIds.add( Strings.toLowerCaseAscii( name ) );
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Enables the pooling of some attributes values, given their name or OID.
+     *
+     * @param attributeIds The attributes names or OIDs
+     * @return This pool
+     */
+    public ValuePool enable( String... attributeIds )
+    {
+        for ( String attributeId : attributeIds )
+        {
+            enabledIds.add( Strings.toLowerCaseAscii( Strings.trim( attributeId ) ) );
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Disables the pooling of an AttributeType values. The already pooled values
+     * will be evicted with time.
+     *
+     * @param attributeType The AttributeType which values won't be pooled anymore
+     * @return This pool
+     */
+    public ValuePool disable( AttributeType attributeType )
+    {
+        enabledIds.remove( attributeType.getOid() );
+
+        for ( String name : attributeType.getNames() )
+        {
+            enabledIds.remove( Strings.toLowerCaseAscii( name ) );
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Tells if the values of a given attribute are pooled.
+     *
+     * @param attributeId The attribute lower cased name, or its OID
+     * @return <code>true</code> if the values are pooled
+     */
+    public boolean isEnabled( String attributeId )
+    {
+        return ( attributeId != null ) && enabledIds.contains( attributeId );
+    }
+
+
+    /**
+     * Gets the canonical instance of a value. If the attribute is not pooled, or if
+     * the value is null, the value is returned as is. Otherwise, if an equal value,
+     * with the same user provided form, is already pooled, the pooled instance is
+     * returned. Last, not least, the value is added into the pool.
+     *
+     * @param attributeId The attribute lower cased name, or its OID
+     * @param value The value to intern
+     * @return The canonical instance of the value
+     */
+    public Value intern( String attributeId, Value value )
+    {
+        if ( ( value == null ) || value.isNull() || !isEnabled( attributeId ) )
+        {
+            return value;
+        }
+
+        Value pooled = pool.get( new PoolKey( attributeId, value ), key -> value );
+
+        if ( pooled == value )
+        {
+            missCount.increment();
+
+            return value;
+        }
+
+        // Only share a value which is strictly identical to the added one
+        if ( ( pooled.getAttributeType() == value.getAttributeType() )
+            && ( pooled.isHumanReadable() == value.isHumanReadable() )
+            && ( !value.isHumanReadable() || pooled.getString().equals( value.getString() ) ) )
+        {
+            hitCount.increment();
+
+            return pooled;
+        }
+
+        missCount.increment();
+
+        return value;
+    }
+
+
+    /**
+     * @return The number of values found in the pool
+     */
+    public long getHitCount()
+    {
+        return hitCount.sum();
+    }
+
+
+    /**
+     * @return The number of values not found in the pool
+     */
+    public long getMissCount()
+    {
+        return missCount.sum();
+    }
+
+
+    /**
+     * @return The number of values evicted from the pool
+     */
+    public long getEvictionCount()
+    {
+        return evictionCount.sum();
+    }
+
+
+    /**
+     * @return The ratio of values found in the pool, between 0 and 1
+     */
+    public double getHitRate()
+    {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+
+        return total == 0L ? 0d : ( double ) hits / total;
+    }
+
+
+    /**
+     * @return The (estimated) number of pooled values
+     */
+    public long size()
+    {
+        return pool.estimatedSize();
+    }
+
+
+    /**
+     * Removes all the pooled values, and resets the statistics
+     */
+    public void clear()
+    {
+        pool.invalidateAll();
+        hitCount.reset();
+        missCount.reset();
+        evictionCount.reset();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "ValuePool[size: " + size() + ", hits: " + getHitCount() + ", misses: " + getMissCount()
+            + ", evictions: " + getEvictionCount() + ", enabled: " + enabledIds + "]";
+    }
+}
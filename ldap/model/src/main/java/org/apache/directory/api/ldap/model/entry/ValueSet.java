@@ -0,0 +1,417 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.entry;
+
+
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+
+/**
+ * The set of values stored in a {@link DefaultAttribute}. Most attributes have
+ * a single value, and only a few of them (like <em>member</em>) have many, so the
+ * storage adapts to the number of values :
+ * <ul>
+ *   <li>a single value is stored inline, without any container</li>
+ *   <li>up to {@link #SMALL_SET_MAX_SIZE} values are stored in an array, and
+ *   looked up with a linear scan</li>
+ *   <li>bigger sets are stored in a {@link LinkedHashSet}</li>
+ * </ul>
+ * In any case, the values are kept in insertion order, and they are compared
+ * the same way a {@link LinkedHashSet} does (hashCode first, then equals). A
+ * null value is never stored.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class ValueSet extends AbstractSet<Value>
+{
+    /** The maximum number of values stored in an array before we switch to a hashed set */
+    static final int SMALL_SET_MAX_SIZE = 8;
+
+    /** The stored values : null, a Value, a Value[] or a Set<Value> */
+    private Object store;
+
+    /** The number of values, when they are not stored in a Set */
+    private int size;
+
+    /** The number of structural modifications, used to detect concurrent modifications */
+    private int modCount;
+
+
+    /**
+     * Creates a new, empty, ValueSet
+     */
+    ValueSet()
+    {
+    }
+
+
+    /**
+     * Creates a new ValueSet containing the given values
+     *
+     * @param values The values to copy
+     */
+    ValueSet( Set<Value> values )
+    {
+        for ( Value value : values )
+        {
+            add( value );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        if ( store instanceof Set )
+        {
+            return asSet().size();
+        }
+
+        return size;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains( Object object )
+    {
+        if ( store == null )
+        {
+            return false;
+        }
+
+        if ( store instanceof Set )
+        {
+            return asSet().contains( object );
+        }
+
+        return indexOf( object ) >= 0;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean add( Value value )
+    {
+        if ( value == null )
+        {
+            // We don't store null values
+            return false;
+        }
+
+        if ( store == null )
+        {
+            store = value;
+            size = 1;
+            modCount++;
+
+            return true;
+        }
+
+        if ( store instanceof Set )
+        {
+            return asSet().add( value );
+        }
+
+        if ( indexOf( value ) >= 0 )
+        {
+            return false;
+        }
+
+        if ( store instanceof Value )
+        {
+            Value[] array = new Value[2];
+            array[0] = ( Value ) store;
+            array[1] = value;
+            store = array;
+            size = 2;
+        }
+        else if ( size < SMALL_SET_MAX_SIZE )
+        {
+            Value[] array = ( Value[] ) store;
+
+            if ( size == array.length )
+            {
+                Value[] newArray = new Value[Math.min( size << 1, SMALL_SET_MAX_SIZE )];
+                System.arraycopy( array, 0, newArray, 0, size );
+                array = newArray;
+                store = array;
+            }
+
+            array[size++] = value;
+        }
+        else
+        {
+            // Too many values, switch to a hashed set
+            Value[] array = ( Value[] ) store;
+            Set<Value> set = new LinkedHashSet<>( ( SMALL_SET_MAX_SIZE + 1 ) * 2 );
+
+            for ( int i = 0; i < size; i++ )
+            {
+                set.add( array[i] );
+            }
+
+            set.add( value );
+            store = set;
+            size = 0;
+        }
+
+        modCount++;
+
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove( Object object )
+    {
+        if ( store == null )
+        {
+            return false;
+        }
+
+        if ( store instanceof Set )
+        {
+            return asSet().remove( object );
+        }
+
+        int pos = indexOf( object );
+
+        if ( pos < 0 )
+        {
+            return false;
+        }
+
+        removeAt( pos );
+
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear()
+    {
+        store = null;
+        size = 0;
+        modCount++;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Value> iterator()
+    {
+        if ( store instanceof Set )
+        {
+            return asSet().iterator();
+        }
+
+        return new SmallIterator();
+    }
+
+
+    /**
+     * Cast the store to a Set
+     */
+    @SuppressWarnings("unchecked")
+    private Set<Value> asSet()
+    {
+        return ( Set<Value> ) store;
+    }
+
+
+    /**
+     * Get the value at a given position, when the values are not stored in a Set
+     */
+    private Value get( int pos )
+    {
+        if ( store instanceof Value )
+        {
+            return ( Value ) store;
+        }
+
+        return ( ( Value[] ) store )[pos];
+    }
+
+
+    /**
+     * Search for a value when the values are not stored in a Set. We mimic what
+     * a HashSet does : the hashCodes must be equal, then the values must be equal.
+     *
+     * @param object The searched value
+     * @return The value position, or -1 if not found
+     */
+    private int indexOf( Object object )
+    {
+        if ( !( object instanceof Value ) )
+        {
+            return -1;
+        }
+
+        int hash = object.hashCode();
+
+        for ( int i = 0; i < size; i++ )
+        {
+            Value value = get( i );
+
+            if ( ( value == object ) || ( ( value.hashCode() == hash ) && object.equals( value ) ) )
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Remove the value at the given position, when the values are not stored in a Set
+     */
+    private void removeAt( int pos )
+    {
+        if ( store instanceof Value )
+        {
+            store = null;
+        }
+        else
+        {
+            Value[] array = ( Value[] ) store;
+            int moved = size - pos - 1;
+
+            if ( moved > 0 )
+            {
+                System.arraycopy( array, pos + 1, array, pos, moved );
+            }
+
+            array[size - 1] = null;
+
+            if ( size == 1 )
+            {
+                store = null;
+            }
+        }
+
+        size--;
+        modCount++;
+    }
+
+
+    /**
+     * An iterator over the inline value or the values array
+     */
+    private class SmallIterator implements Iterator<Value>
+    {
+        /** The position of the next value to return */
+        private int next;
+
+        /** The position of the last returned value, -1 if none */
+        private int last = -1;
+
+        /** The expected modCount */
+        private int expectedModCount = modCount;
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean hasNext()
+        {
+            return next < size;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Value next()
+        {
+            if ( expectedModCount != modCount )
+            {
+                throw new ConcurrentModificationException();
+            }
+
+            if ( next >= size )
+            {
+                throw new NoSuchElementException();
+            }
+
+            last = next++;
+
+            return get( last );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void remove()
+        {
+            if ( last < 0 )
+            {
+                throw new IllegalStateException();
+            }
+
+            if ( expectedModCount != modCount )
+            {
+                throw new ConcurrentModificationException();
+            }
+
+            removeAt( last );
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.filter;
+
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A filter template, parsed and validated once, and then bound to some values as
+ * many times as needed. The place-holders use the {@link FilterEncoder#format(String, String...)}
+ * syntax, like in <code>(&amp;(objectClass=person)(uid={0}))</code>, but each place-holder
+ * must be a whole assertion value, or a whole initial, any or final part of a substring
+ * assertion : <code>(cn={0}*)</code> is a valid template, <code>(cn=a{0})</code> is not.
+ * A place-holder may be used more than once.
+ * <p>
+ * This class is immutable, and can be shared by many threads.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class FilterTemplate
+{
+    /** The pattern used to find the place-holders */
+    private static final Pattern PLACE_HOLDER_PATTERN = Pattern.compile( "\\{(\\d{1,9})\\}" );
+
+    /** The template */
+    private final String template;
+
+    /** The parsed template, with the place-holders as values */
+    private final ExprNode filter;
+
+    /** The number of place-holders */
+    private final int placeHolderCount;
+
+
+    private FilterTemplate( String template, ExprNode filter, int placeHolderCount )
+    {
+        this.template = template;
+        this.filter = filter;
+        this.placeHolderCount = placeHolderCount;
+    }
+
+
+    /**
+     * Parses and validates a filter template.
+     *
+     * @param template The filter template, like <code>(&amp;(objectClass=person)(uid={0}))</code>
+     * @return The parsed template
+     * @throws ParseException If the filter is invalid, or if a place-holder is not a whole value
+     */
+    public static FilterTemplate parse( String template ) throws ParseException
+    {
+        ExprNode filter = FilterParser.parse( template );
+        BitSet used = new BitSet();
+
+        scan( template, filter, used );
+
+        int placeHolderCount = used.length();
+
+        if ( used.cardinality() != placeHolderCount )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_13320_MISSING_PLACE_HOLDER, template,
+                used.nextClearBit( 0 ) ), 0 );
+        }
+
+        return new FilterTemplate( template, filter, placeHolderCount );
+    }
+
+
+    /**
+     * Gets the place-holder index of a value.
+     *
+     * @param value The value to check
+     * @return The place-holder index, or -1 if the value isn't a place-holder
+     */
+    public static int getPlaceHolderIndex( String value )
+    {
+        if ( ( value == null ) || ( value.length() < 3 ) || ( value.length() > 11 ) )
+        {
+            return -1;
+        }
+
+        if ( ( value.charAt( 0 ) != '{' ) || ( value.charAt( value.length() - 1 ) != '}' ) )
+        {
+            return -1;
+        }
+
+        int index = 0;
+
+        for ( int i = 1; i < value.length() - 1; i++ )
+        {
+            char c = value.charAt( i );
+
+            if ( ( c < '0' ) || ( c > '9' ) )
+            {
+                return -1;
+            }
+
+            index = index * 10 + ( c - '0' );
+        }
+
+        return index;
+    }
+
+
+    /**
+     * Gets the place-holder index of a value.
+     *
+     * @param value The value to check
+     * @return The place-holder index, or -1 if the value isn't a place-holder
+     */
+    public static int getPlaceHolderIndex( Value value )
+    {
+        if ( value == null )
+        {
+            return -1;
+        }
+
+        return getPlaceHolderIndex( value.getString() );
+    }
+
+
+    /**
+     * Checks the place-holders of a filter, and collects their indexes
+     */
+    private static void scan( String template, ExprNode node, BitSet used ) throws ParseException
+    {
+        if ( node instanceof BranchNode )
+        {
+            for ( ExprNode child : ( ( BranchNode ) node ).getChildren() )
+            {
+                scan( template, child, used );
+            }
+        }
+        else if ( node instanceof SimpleNode )
+        {
+            Value value = ( ( SimpleNode<?> ) node ).getValue();
+
+            if ( value != null )
+            {
+                check( template, value.getString(), used );
+            }
+        }
+        else if ( node instanceof SubstringNode )
+        {
+            SubstringNode substringNode = ( SubstringNode ) node;
+            check( template, substringNode.getInitial(), used );
+
+            if ( substringNode.getAny() != null )
+            {
+                for ( String any : substringNode.getAny() )
+                {
+                    check( template, any, used );
+                }
+            }
+
+            check( template, substringNode.getFinal(), used );
+        }
+        else if ( node instanceof ExtensibleNode )
+        {
+            Value value = ( ( ExtensibleNode ) node ).getValue();
+
+            if ( value != null )
+            {
+                check( template, value.getString(), used );
+            }
+        }
+    }
+
+
+    /**
+     * Checks that a value is either a place-holder, or doesn't contain any
+     */
+    private static void check( String template, String value, BitSet used ) throws ParseException
+    {
+        if ( value == null )
+        {
+            return;
+        }
+
+        int index = getPlaceHolderIndex( value );
+
+        if ( index >= 0 )
+        {
+            used.set( index );
+        }
+        else if ( PLACE_HOLDER_PATTERN.matcher( value ).find() )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_13319_PLACE_HOLDER_NOT_A_WHOLE_VALUE, template, value ), 0 );
+        }
+    }
+
+
+    /**
+     * @return The filter template
+     */
+    public String getTemplate()
+    {
+        return template;
+    }
+
+
+    /**
+     * @return The parsed filter, with the place-holders as values. It must not be modified.
+     */
+    public ExprNode getFilter()
+    {
+        return filter;
+    }
+
+
+    /**
+     * @return The number of distinct place-holders
+     */
+    public int getPlaceHolderCount()
+    {
+        return placeHolderCount;
+    }
+
+
+    /**
+     * Checks the number of values
+     *
+     * @param values The values to bind
+     */
+    public void checkValues( String... values )
+    {
+        int nbValues = values == null ? 0 : values.length;
+
+        if ( nbValues != placeHolderCount )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_13300_BAD_PLACE_HOLDERS_NUMBER, template,
+                placeHolderCount, nbValues ) );
+        }
+    }
+
+
+    /**
+     * Creates a new filter, replacing the place-holders by the given values. The values
+     * are not escaped, they are the assertion values themselves, stored as UTF-8 bytes like
+     * the values parsed by a {@link FilterParser} without SchemaManager.
+     *
+     * @param values The values, in the place-holders order
+     * @return The new filter
+     * @throws IllegalArgumentException if the number of values does not match the number of place-holders
+     */
+    public ExprNode bind( String... values )
+    {
+        checkValues( values );
+
+        ExprNode boundFilter = filter.clone();
+        bind( boundFilter, values );
+
+        return boundFilter;
+    }
+
+
+    /**
+     * Replaces the place-holders of a cloned filter
+     */
+    private static void bind( ExprNode node, String[] values )
+    {
+        if ( node instanceof BranchNode )
+        {
+            for ( ExprNode child : ( ( BranchNode ) node ).getChildren() )
+            {
+                bind( child, values );
+            }
+        }
+        else if ( node instanceof SimpleNode )
+        {
+            SimpleNode<?> simpleNode = ( SimpleNode<?> ) node;
+            int index = getPlaceHolderIndex( simpleNode.getValue() );
+
+            if ( index >= 0 )
+            {
+                // The template is parsed without SchemaManager : like the parsed nodes, the
+                // bound nodes only store the value bytes
+                simpleNode.bytes = Strings.getBytesUtf8( values[index] );
+            }
+        }
+        else if ( node instanceof SubstringNode )
+        {
+            SubstringNode substringNode = ( SubstringNode ) node;
+            substringNode.setInitial( bind( substringNode.getInitial(), values ) );
+            substringNode.setFinal( bind( substringNode.getFinal(), values ) );
+
+            if ( substringNode.getAny() != null )
+            {
+                List<String> any = new ArrayList<>( substringNode.getAny().size() );
+
+                for ( String part : substringNode.getAny() )
+                {
+                    any.add( bind( part, values ) );
+                }
+
+                substringNode.setAny( any );
+            }
+        }
+        else if ( node instanceof ExtensibleNode )
+        {
+            ExtensibleNode extensibleNode = ( ExtensibleNode ) node;
+            int index = getPlaceHolderIndex( extensibleNode.getValue() );
+
+            if ( index >= 0 )
+            {
+                extensibleNode.setValue( new Value( Strings.getBytesUtf8( values[index] ) ) );
+            }
+        }
+    }
+
+
+    private static String bind( String part, String[] values )
+    {
+        int index = getPlaceHolderIndex( part );
+
+        return index >= 0 ? values[index] : part;
+    }
+
+
+    /**
+     * Formats the filter, replacing the place-holders by the given values, escaped using the
+     * &lt;valueencoding&gt; rule as described in <a href="http://www.ietf.org/rfc/rfc4515.txt">RFC 4515</a>.
+     *
+     * @param values The values, in the place-holders order
+     * @return The formatted filter
+     * @throws IllegalArgumentException if the number of values does not match the number of place-holders
+     */
+    public String format( String... values )
+    {
+        checkValues( values );
+
+        StringBuilder sb = new StringBuilder( template.length() + 16 * placeHolderCount );
+        Matcher matcher = PLACE_HOLDER_PATTERN.matcher( template );
+        int pos = 0;
+
+        while ( matcher.find() )
+        {
+            sb.append( template, pos, matcher.start() );
+            sb.append( FilterEncoder.encodeFilterValue( values[Integer.parseInt( matcher.group( 1 ) )] ) );
+            pos = matcher.end();
+        }
+
+        sb.append( template, pos, template.length() );
+
+        return sb.toString();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return template;
+    }
+}
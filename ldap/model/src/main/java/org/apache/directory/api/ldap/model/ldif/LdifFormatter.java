@@ -0,0 +1,619 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * Formats LDIF records as UTF-8 bytes, in a growable buffer which is reused from one
+ * record to the next. The values are base64 encoded and the lines are folded while they
+ * are copied in the buffer, so no intermediate String is created.
+ * <br>
+ * The LDIF produced is the one {@link LdifUtils} produces, except that the lines are
+ * folded so that they never exceed the line length, the line separator excluded.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class LdifFormatter
+{
+    /** The base64 alphabet */
+    private static final byte[] BASE64 = Strings.getBytesUtf8(
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/" );
+
+    /** The initial buffer size */
+    private static final int INITIAL_SIZE = 1024;
+
+    /** The maximum line length */
+    private int lineLength;
+
+    /** The formatted bytes */
+    private byte[] buffer = new byte[INITIAL_SIZE];
+
+    /** The number of formatted bytes */
+    private int size;
+
+    /** The position in the current line */
+    private int column;
+
+    /** Tells if all the formatted bytes are ASCII */
+    private boolean ascii = true;
+
+
+    /**
+     * Creates a new LdifFormatter
+     *
+     * @param lineLength The maximum line length
+     */
+    LdifFormatter( int lineLength )
+    {
+        this.lineLength = lineLength;
+    }
+
+
+    /**
+     * @param lineLength The maximum line length
+     */
+    void setLineLength( int lineLength )
+    {
+        this.lineLength = lineLength;
+    }
+
+
+    /**
+     * @return The number of formatted bytes
+     */
+    int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * Empties the buffer, keeping its capacity.
+     */
+    void reset()
+    {
+        size = 0;
+        column = 0;
+        ascii = true;
+    }
+
+
+    /**
+     * Writes the formatted bytes, and empties the buffer.
+     *
+     * @param out The output
+     * @throws IOException If the bytes can't be written
+     */
+    void writeTo( OutputStream out ) throws IOException
+    {
+        out.write( buffer, 0, size );
+        reset();
+    }
+
+
+    /**
+     * Writes the formatted bytes as chars, and empties the buffer.
+     *
+     * @param writer The output
+     * @param chars A scratch buffer, at least as big as the formatted bytes when they are ASCII
+     * @throws IOException If the chars can't be written
+     */
+    void writeTo( Writer writer, char[] chars ) throws IOException
+    {
+        if ( ascii )
+        {
+            for ( int i = 0; i < size; i++ )
+            {
+                chars[i] = ( char ) buffer[i];
+            }
+
+            writer.write( chars, 0, size );
+        }
+        else
+        {
+            writer.write( new String( buffer, 0, size, StandardCharsets.UTF_8 ) );
+        }
+
+        reset();
+    }
+
+
+    /**
+     * Appends the bytes formatted by another formatter, and empties it.
+     *
+     * @param formatter The other formatter
+     */
+    void append( LdifFormatter formatter )
+    {
+        ensureCapacity( formatter.size );
+        System.arraycopy( formatter.buffer, 0, buffer, size, formatter.size );
+        size += formatter.size;
+        ascii &= formatter.ascii;
+        formatter.reset();
+    }
+
+
+    /**
+     * Formats the LDIF version line.
+     */
+    void formatVersion()
+    {
+        putString( "version: 1" );
+        endLine();
+    }
+
+
+    /**
+     * Formats an Entry, followed by an empty line.
+     *
+     * @param entry The entry
+     */
+    void format( Entry entry )
+    {
+        if ( entry.getDn() != null )
+        {
+            putDn( entry.getDn().getName() );
+        }
+
+        for ( Attribute attribute : entry )
+        {
+            putAttribute( attribute );
+        }
+
+        endLine();
+    }
+
+
+    /**
+     * Formats a LdifEntry, followed by an empty line. The entry must have been checked
+     * with {@link #check(LdifEntry)}.
+     *
+     * @param entry The entry
+     */
+    void format( LdifEntry entry )
+    {
+        putDn( entry.getDn().getName() );
+
+        ChangeType changeType = entry.getChangeType();
+
+        if ( ( changeType == ChangeType.None ) && entry.hasControls() )
+        {
+            // Controls can only be given with a change record
+            changeType = ChangeType.Add;
+        }
+
+        if ( changeType != ChangeType.None )
+        {
+            if ( entry.hasControls() )
+            {
+                for ( LdifControl control : entry.getControls().values() )
+                {
+                    putString( "control: " );
+                    putString( control.getOid() );
+                    putString( control.isCritical() ? " true" : " false" );
+
+                    if ( control.hasValue() )
+                    {
+                        putString( "::" );
+                        putBase64( control.getValue() );
+                    }
+
+                    endLine();
+                }
+            }
+
+            putString( "changetype: " );
+            putString( Strings.toLowerCaseAscii( changeType.toString() ) );
+            endLine();
+        }
+
+        switch ( changeType )
+        {
+            case None:
+            case Add:
+                for ( Attribute attribute : entry.getEntry() )
+                {
+                    putAttribute( attribute );
+                }
+
+                break;
+
+            case ModDn:
+            case ModRdn:
+                putValue( "newrdn", entry.getNewRdn() );
+                putString( entry.isDeleteOldRdn() ? "deleteoldrdn: 1" : "deleteoldrdn: 0" );
+                endLine();
+
+                if ( !Strings.isEmpty( entry.getNewSuperior() ) )
+                {
+                    putValue( "newsuperior", entry.getNewSuperior() );
+                }
+
+                break;
+
+            case Modify:
+                boolean isFirst = true;
+
+                for ( Modification modification : entry.getModifications() )
+                {
+                    if ( isFirst )
+                    {
+                        isFirst = false;
+                    }
+                    else
+                    {
+                        putString( "-" );
+                        endLine();
+                    }
+
+                    switch ( modification.getOperation() )
+                    {
+                        case ADD_ATTRIBUTE:
+                            putString( "add: " );
+                            break;
+
+                        case REMOVE_ATTRIBUTE:
+                            putString( "delete: " );
+                            break;
+
+                        case REPLACE_ATTRIBUTE:
+                            putString( "replace: " );
+                            break;
+
+                        default:
+                            putString( "increment: " );
+                            break;
+                    }
+
+                    putString( modification.getAttribute().getUpId() );
+                    endLine();
+                    putAttribute( modification.getAttribute() );
+                }
+
+                putString( "-" );
+                endLine();
+                break;
+
+            default:
+                // Delete
+                break;
+        }
+
+        endLine();
+    }
+
+
+    /**
+     * Checks that a LdifEntry can be formatted.
+     *
+     * @param entry The entry
+     * @throws LdapException If the entry is not consistent with its change type
+     */
+    static void check( LdifEntry entry ) throws LdapException
+    {
+        switch ( entry.getChangeType() )
+        {
+            case None:
+            case Add:
+                if ( entry.getEntry() == null )
+                {
+                    throw new LdapException( I18n.err( I18n.ERR_13472_ENTRY_WITH_NO_ATTRIBUTE ) );
+                }
+
+                break;
+
+            case Delete:
+                if ( entry.getEntry() != null )
+                {
+                    throw new LdapException( I18n.err( I18n.ERR_13471_DELETED_ENTRY_WITH_ATTRIBUTES ) );
+                }
+
+                break;
+
+            case ModDn:
+            case ModRdn:
+                if ( entry.getEntry() != null )
+                {
+                    throw new LdapException( I18n.err( I18n.ERR_13473_MODDN_WITH_ATTRIBUTES ) );
+                }
+
+                break;
+
+            case Modify:
+                for ( Modification modification : entry.getModifications() )
+                {
+                    switch ( modification.getOperation() )
+                    {
+                        case ADD_ATTRIBUTE:
+                        case REMOVE_ATTRIBUTE:
+                        case REPLACE_ATTRIBUTE:
+                        case INCREMENT_ATTRIBUTE:
+                            break;
+
+                        default:
+                            throw new IllegalArgumentException( I18n.err( I18n.ERR_13434_UNEXPECTED_MOD_OPERATION,
+                                modification.getOperation() ) );
+                    }
+                }
+
+                break;
+
+            default:
+                throw new IllegalArgumentException( I18n.err( I18n.ERR_13431_UNEXPECTED_CHANGETYPE,
+                    entry.getChangeType() ) );
+        }
+    }
+
+
+    /**
+     * Formats the dn line, base64 encoding the DN if needed.
+     */
+    private void putDn( String dn )
+    {
+        if ( LdifUtils.isLDIFSafe( dn ) )
+        {
+            putString( "dn: " );
+            putString( dn );
+        }
+        else
+        {
+            putString( "dn:: " );
+            putBase64( Strings.getBytesUtf8( dn ) );
+        }
+
+        endLine();
+    }
+
+
+    /**
+     * Formats one line per value of an attribute.
+     */
+    private void putAttribute( Attribute attribute )
+    {
+        String upId = attribute.getUpId();
+
+        for ( Value value : attribute )
+        {
+            putString( upId );
+
+            if ( value.isNull() )
+            {
+                putByte( ( byte ) ':' );
+            }
+            else if ( value.isHumanReadable() )
+            {
+                putSafeValue( value.getString() );
+            }
+            else
+            {
+                putString( ":: " );
+                putBase64( value.getBytes() );
+            }
+
+            endLine();
+        }
+    }
+
+
+    /**
+     * Formats a single String value line.
+     */
+    private void putValue( String upId, String value )
+    {
+        putString( upId );
+        putSafeValue( value );
+        endLine();
+    }
+
+
+    /**
+     * Formats a String value, with its separator, base64 encoding it if needed.
+     */
+    private void putSafeValue( String value )
+    {
+        if ( !LdifUtils.isLDIFSafe( value ) )
+        {
+            putString( ":: " );
+            putBase64( Strings.getBytesUtf8( value ) );
+        }
+        else
+        {
+            putByte( ( byte ) ':' );
+
+            if ( value != null )
+            {
+                putByte( ( byte ) ' ' );
+                putString( value );
+            }
+        }
+    }
+
+
+    /**
+     * Copies a String as UTF-8, folding the line if needed.
+     */
+    private void putString( String str )
+    {
+        int length = str.length();
+        reserve( length );
+
+        for ( int i = 0; i < length; i++ )
+        {
+            char c = str.charAt( i );
+
+            if ( c < 0x80 )
+            {
+                putByte( ( byte ) c );
+            }
+            else
+            {
+                // Non ASCII chars are only found in the attributes names, they are rare
+                putUtf8( Strings.getBytesUtf8( str.substring( i ) ) );
+                ascii = false;
+
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Copies some UTF-8 bytes, folding the line between two chars only : a continuation
+     * line never starts in the middle of a multi-bytes char.
+     */
+    private void putUtf8( byte[] bytes )
+    {
+        int pos = 0;
+
+        while ( pos < bytes.length )
+        {
+            byte b = bytes[pos];
+            int charLength = 1;
+
+            if ( ( b & 0xE0 ) == 0xC0 )
+            {
+                charLength = 2;
+            }
+            else if ( ( b & 0xF0 ) == 0xE0 )
+            {
+                charLength = 3;
+            }
+            else if ( ( b & 0xF8 ) == 0xF0 )
+            {
+                charLength = 4;
+            }
+
+            charLength = Math.min( charLength, bytes.length - pos );
+            ensureCapacity( charLength + 2 );
+
+            if ( ( column + charLength > lineLength ) && ( column > 1 ) )
+            {
+                // The char does not fit in the current line : start a continuation line
+                buffer[size++] = '\n';
+                buffer[size++] = ' ';
+                column = 1;
+            }
+
+            System.arraycopy( bytes, pos, buffer, size, charLength );
+            size += charLength;
+            column += charLength;
+            pos += charLength;
+        }
+    }
+
+
+    /**
+     * Base64 encodes some bytes, folding the line if needed.
+     */
+    private void putBase64( byte[] bytes )
+    {
+        int length = bytes.length;
+        reserve( ( length + 2 ) / 3 * 4 );
+        int pos = 0;
+
+        while ( pos + 2 < length )
+        {
+            int bits = ( ( bytes[pos] & 0xFF ) << 16 ) | ( ( bytes[pos + 1] & 0xFF ) << 8 ) | ( bytes[pos + 2] & 0xFF );
+            putByte( BASE64[bits >>> 18] );
+            putByte( BASE64[( bits >>> 12 ) & 0x3F] );
+            putByte( BASE64[( bits >>> 6 ) & 0x3F] );
+            putByte( BASE64[bits & 0x3F] );
+            pos += 3;
+        }
+
+        if ( pos < length )
+        {
+            int bits = ( bytes[pos] & 0xFF ) << 16;
+
+            if ( pos + 1 < length )
+            {
+                bits |= ( bytes[pos + 1] & 0xFF ) << 8;
+            }
+
+            putByte( BASE64[bits >>> 18] );
+            putByte( BASE64[( bits >>> 12 ) & 0x3F] );
+            putByte( pos + 1 < length ? BASE64[( bits >>> 6 ) & 0x3F] : ( byte ) '=' );
+            putByte( ( byte ) '=' );
+        }
+    }
+
+
+    /**
+     * Adds a byte, starting a continuation line first if the current line is full. The
+     * room for the byte must have been reserved.
+     */
+    private void putByte( byte b )
+    {
+        if ( column == lineLength )
+        {
+            buffer[size++] = '\n';
+            buffer[size++] = ' ';
+            column = 1;
+        }
+
+        buffer[size++] = b;
+        column++;
+    }
+
+
+    /**
+     * Ends the current line.
+     */
+    private void endLine()
+    {
+        ensureCapacity( 1 );
+        buffer[size++] = '\n';
+        column = 0;
+    }
+
+
+    /**
+     * Reserves the room for some bytes, and for the continuation lines they may need.
+     */
+    private void reserve( int length )
+    {
+        ensureCapacity( length + 2 * ( length / ( lineLength - 1 ) + 1 ) );
+    }
+
+
+    private void ensureCapacity( int length )
+    {
+        if ( size + length > buffer.length )
+        {
+            byte[] newBuffer = new byte[Math.max( buffer.length * 2, size + length )];
+            System.arraycopy( buffer, 0, newBuffer, 0, size );
+            buffer = newBuffer;
+        }
+    }
+}
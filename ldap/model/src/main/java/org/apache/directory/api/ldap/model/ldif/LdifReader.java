@@ -47,6 +47,7 @@ import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
 import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
@@ -249,6 +250,9 @@ public class LdifReader implements Iterable<LdifEntry>, Closeable
 
     /** flag to turn on/off of the DN validation. By default DNs are validated after parsing */
     protected boolean validateDn = true;
+
+    /** flag telling if the schema aware values are trusted. By default they are checked */
+    protected boolean trustedValues = false;
     
     /** A counter used to create facked OIDs */
     private int oidCounter = 0;
@@ -1017,6 +1021,13 @@ public class LdifReader implements Iterable<LdifEntry>, Closeable
                         attributeValue = Strings.getBytesUtf8( ( String ) attributeValue );
                     }
                 }
+
+                if ( trustedValues && ( attributeValue != null ) )
+                {
+                    addTrustedValue( entry, attributeType, at, attributeValue );
+
+                    return;
+                }
             }
         }
 
@@ -1040,6 +1051,37 @@ public class LdifReader implements Iterable<LdifEntry>, Closeable
     }
 
 
+    /**
+     * Adds a trusted value to an entry : it is not checked against its syntax, and its
+     * normalized form is computed when first needed.
+     */
+    private void addTrustedValue( LdifEntry entry, String attributeType, AttributeType at, Object attributeValue )
+        throws LdapException
+    {
+        Value value;
+
+        if ( attributeValue instanceof String )
+        {
+            value = Value.createTrusted( at, ( String ) attributeValue );
+        }
+        else
+        {
+            value = Value.createTrusted( at, ( byte[] ) attributeValue );
+        }
+
+        Attribute attribute = entry.get( attributeType );
+
+        if ( attribute == null )
+        {
+            entry.addAttribute( new DefaultAttribute( attributeType, at, value ) );
+        }
+        else
+        {
+            attribute.add( value );
+        }
+    }
+
+
     /**
      * Parse a ModRDN operation
      *
@@ -2212,6 +2254,30 @@ public class LdifReader implements Iterable<LdifEntry>, Closeable
     }
 
 
+    /**
+     * @return true if the schema aware values are trusted
+     */
+    public boolean isTrustedValues()
+    {
+        return trustedValues;
+    }
+
+
+    /**
+     * Tells if the values of the entries read with a SchemaManager come from a trusted source,
+     * like an export of a server using the same schema. A trusted value is not checked against
+     * its syntax, and its normalized form is only computed when first needed (see
+     * {@link Value#createTrusted(AttributeType, String)}). This flag is ignored when there is
+     * no SchemaManager, and for the changes of a modify operation.
+     *
+     * @param trustedValues true if the values are trusted
+     */
+    public void setTrustedValues( boolean trustedValues )
+    {
+        this.trustedValues = trustedValues;
+    }
+
+
     /**
      * @param schemaManager the schemaManager to set
      */
@@ -0,0 +1,437 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif;
+
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+
+
+/**
+ * Writes LDIF records to a Writer or to an OutputStream, in UTF-8. It is the streaming
+ * counterpart of {@link LdifUtils#convertToLdif(Entry)} : the records are formatted in
+ * a buffer which is reused, base64 encoding the values and folding the lines in place,
+ * and written once the buffer is full, so that no String is created per record. Here is
+ * an example :
+ * <pre>
+ * try ( LdifWriter writer = new LdifWriter( Files.newOutputStream( path ) ) )
+ * {
+ *     writer.writeVersion();
+ *
+ *     for ( Entry entry : cursor )
+ *     {
+ *         writer.write( entry );
+ *     }
+ * }
+ * </pre>
+ * Each record is followed by an empty line. The lines are folded so that they are never
+ * longer than {@link #setLineLength(int)} chars, the line separator excluded.
+ * <p>
+ * In parallel mode, the records are formatted by worker threads, and written in the order
+ * they were given. The entries must then not be modified once given to the writer, and
+ * an error raised while formatting a record is thrown by one of the next calls.
+ * <p>
+ * A LdifWriter is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdifWriter implements Closeable, Flushable
+{
+    /** The default line length */
+    public static final int DEFAULT_LINE_LENGTH = 80;
+
+    /** The number of buffered bytes above which they are written */
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    /** The number of records formatted ahead, per worker thread */
+    private static final int RECORDS_PER_WORKER = 16;
+
+    /** The worker threads numbers */
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    /** The output stream, if any */
+    private final OutputStream out;
+
+    /** The writer, if any */
+    private final Writer writer;
+
+    /** The buffer holding the formatted records before they are written */
+    private final LdifFormatter buffer;
+
+    /** The chars written to the writer */
+    private char[] chars;
+
+    /** The line length */
+    private int lineLength = DEFAULT_LINE_LENGTH;
+
+    /** The worker threads, in parallel mode */
+    private final ExecutorService executor;
+
+    /** The records being formatted, in order */
+    private final Deque<Future<LdifFormatter>> pending = new ArrayDeque<>();
+
+    /** The formatters not in use */
+    private final Queue<LdifFormatter> formatters = new ConcurrentLinkedQueue<>();
+
+    /** The maximum number of records formatted ahead */
+    private final int maxPending;
+
+    /** Tells if the writer is closed */
+    private boolean closed;
+
+
+    /**
+     * Creates a new LdifWriter writing to a Writer.
+     *
+     * @param writer The Writer
+     */
+    public LdifWriter( Writer writer )
+    {
+        this( writer, 1 );
+    }
+
+
+    /**
+     * Creates a new LdifWriter writing to a Writer, formatting the records with some
+     * worker threads.
+     *
+     * @param writer The Writer
+     * @param parallelism The number of worker threads, 1 to format the records in the
+     * calling thread
+     */
+    public LdifWriter( Writer writer, int parallelism )
+    {
+        this( null, writer, parallelism );
+    }
+
+
+    /**
+     * Creates a new LdifWriter writing UTF-8 to an OutputStream.
+     *
+     * @param out The OutputStream
+     */
+    public LdifWriter( OutputStream out )
+    {
+        this( out, 1 );
+    }
+
+
+    /**
+     * Creates a new LdifWriter writing UTF-8 to an OutputStream, formatting the records
+     * with some worker threads.
+     *
+     * @param out The OutputStream
+     * @param parallelism The number of worker threads, 1 to format the records in the
+     * calling thread
+     */
+    public LdifWriter( OutputStream out, int parallelism )
+    {
+        this( out, null, parallelism );
+    }
+
+
+    private LdifWriter( OutputStream out, Writer writer, int parallelism )
+    {
+        this.out = out;
+        this.writer = writer;
+        buffer = new LdifFormatter( lineLength );
+
+        if ( parallelism > 1 )
+        {
+            executor = Executors.newFixedThreadPool( parallelism, runnable ->
+            {
+                Thread thread = new Thread( runnable, "ldif-writer-" + THREAD_NUMBER.incrementAndGet() );
+                thread.setDaemon( true );
+
+                return thread;
+            } );
+            maxPending = parallelism * RECORDS_PER_WORKER;
+        }
+        else
+        {
+            executor = null;
+            maxPending = 0;
+        }
+    }
+
+
+    /**
+     * @return The maximum line length
+     */
+    public int getLineLength()
+    {
+        return lineLength;
+    }
+
+
+    /**
+     * @param lineLength The maximum line length, the line separator excluded. It must
+     * be at least 2.
+     */
+    public void setLineLength( int lineLength )
+    {
+        if ( lineLength < 2 )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_13474_LINE_LENGTH_TOO_SHORT ) );
+        }
+
+        this.lineLength = lineLength;
+        buffer.setLineLength( lineLength );
+    }
+
+
+    /**
+     * Writes the "version: 1" line. It has to be written before the first record.
+     *
+     * @throws IOException If the line can't be written
+     */
+    public void writeVersion() throws IOException
+    {
+        drain( 0 );
+        buffer.formatVersion();
+    }
+
+
+    /**
+     * Writes an Entry as a LDIF content record.
+     *
+     * @param entry The entry
+     * @throws IOException If the entry can't be written
+     */
+    public void write( Entry entry ) throws IOException
+    {
+        if ( executor == null )
+        {
+            buffer.format( entry );
+            written();
+        }
+        else
+        {
+            submit( formatter -> formatter.format( entry ) );
+        }
+    }
+
+
+    /**
+     * Writes a LdifEntry, as a content record or a change record.
+     *
+     * @param entry The entry
+     * @throws LdapException If the entry is not consistent with its change type
+     * @throws IOException If the entry can't be written
+     */
+    public void write( LdifEntry entry ) throws LdapException, IOException
+    {
+        LdifFormatter.check( entry );
+
+        if ( executor == null )
+        {
+            buffer.format( entry );
+            written();
+        }
+        else
+        {
+            submit( formatter -> formatter.format( entry ) );
+        }
+    }
+
+
+    /**
+     * Writes the formatted records, and flushes the output.
+     *
+     * @throws IOException If the records can't be written
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        drain( 0 );
+        writeBuffer();
+
+        if ( out != null )
+        {
+            out.flush();
+        }
+        else
+        {
+            writer.flush();
+        }
+    }
+
+
+    /**
+     * Writes the formatted records, stops the worker threads and closes the output.
+     *
+     * @throws IOException If the records can't be written
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        closed = true;
+
+        try
+        {
+            flush();
+        }
+        finally
+        {
+            if ( executor != null )
+            {
+                executor.shutdownNow();
+            }
+
+            if ( out != null )
+            {
+                out.close();
+            }
+            else
+            {
+                writer.close();
+            }
+        }
+    }
+
+
+    /**
+     * Formats a record on a worker thread, with a free formatter.
+     */
+    private void submit( Formatting formatting ) throws IOException
+    {
+        drain( maxPending - 1 );
+        int length = lineLength;
+
+        pending.add( executor.submit( () ->
+        {
+            LdifFormatter formatter = formatters.poll();
+
+            if ( formatter == null )
+            {
+                formatter = new LdifFormatter( length );
+            }
+            else
+            {
+                formatter.setLineLength( length );
+            }
+
+            formatting.format( formatter );
+
+            return formatter;
+        } ) );
+    }
+
+
+    /**
+     * Moves the records formatted by the worker threads to the buffer, in order, until
+     * at most a given number of records are still being formatted. The records already
+     * formatted are moved too.
+     */
+    private void drain( int maxRemaining ) throws IOException
+    {
+        while ( !pending.isEmpty() && ( ( pending.size() > maxRemaining ) || pending.peek().isDone() ) )
+        {
+            LdifFormatter formatter;
+
+            try
+            {
+                formatter = pending.poll().get();
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException( ie.getMessage() );
+            }
+            catch ( ExecutionException ee )
+            {
+                Throwable cause = ee.getCause();
+
+                if ( cause instanceof RuntimeException )
+                {
+                    throw ( RuntimeException ) cause;
+                }
+
+                throw new IOException( cause.getMessage(), cause );
+            }
+
+            buffer.append( formatter );
+            formatters.add( formatter );
+            written();
+        }
+    }
+
+
+    /**
+     * Writes the buffer if it is full enough.
+     */
+    private void written() throws IOException
+    {
+        if ( buffer.size() >= FLUSH_THRESHOLD )
+        {
+            writeBuffer();
+        }
+    }
+
+
+    private void writeBuffer() throws IOException
+    {
+        if ( out != null )
+        {
+            buffer.writeTo( out );
+        }
+        else
+        {
+            if ( ( chars == null ) || ( chars.length < buffer.size() ) )
+            {
+                chars = new char[Math.max( FLUSH_THRESHOLD, buffer.size() )];
+            }
+
+            buffer.writeTo( writer, chars );
+        }
+    }
+
+
+    /**
+     * Formats a record
+     */
+    private interface Formatting
+    {
+        void format( LdifFormatter formatter );
+    }
+}
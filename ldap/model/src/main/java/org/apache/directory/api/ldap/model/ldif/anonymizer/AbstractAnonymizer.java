@@ -25,6 +25,9 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 
 /**
@@ -86,6 +89,23 @@ public abstract class AbstractAnonymizer<K> implements Anonymizer<K>
                65,  66,  67,   0,   0,   0,   0,   0, 
     };
 
+    /**
+     * {@inheritDoc}
+     * Only the human readable values are anonymized.
+     */
+    @Override
+    public Value anonymize( AttributeType attributeType, Value value, long seed )
+        throws LdapInvalidAttributeValueException
+    {
+        if ( !value.isHumanReadable() )
+        {
+            return null;
+        }
+
+        return new Value( attributeType, computeNewValue( value.getString(), seed ) );
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -272,4 +292,67 @@ public abstract class AbstractAnonymizer<K> implements Anonymizer<K>
             return latestBytes;
         }
     }
+    
+    
+    /**
+     * Compute a String value from a seed : the same seed always gives the same value,
+     * with the same length as the original value.
+     *
+     * @param valStr The original value
+     * @param seed The seed the value is derived from
+     * @return The anonymized value
+     */
+    protected String computeNewValue( String valStr, long seed )
+    {
+        char[] charMap = caseSensitive ? SENSITIVE_MAP : NOT_SENSITIVE_MAP;
+        char[] newValue = new char[valStr.length()];
+
+        for ( int i = 0; i < newValue.length; i++ )
+        {
+            newValue[i] = charMap[pick( seed, i, charMap.length )];
+        }
+
+        return new String( newValue );
+    }
+    
+    
+    /**
+     * Compute a byte[] value from a seed : the same seed always gives the same value,
+     * with the same length as the original value.
+     *
+     * @param valBytes The original value
+     * @param seed The seed the value is derived from
+     * @return The anonymized value
+     */
+    protected byte[] computeNewValue( byte[] valBytes, long seed )
+    {
+        byte[] newValue = new byte[valBytes.length];
+
+        for ( int i = 0; i < newValue.length; i++ )
+        {
+            newValue[i] = ( byte ) ( 'A' + pick( seed, i, 26 ) );
+        }
+
+        return newValue;
+    }
+    
+    
+    /**
+     * Picks a number in [0, bound[ for the given position, from a seed. The position
+     * is mixed with the seed using the SplitMix64 finalizer.
+     *
+     * @param seed The seed
+     * @param position The position in the generated value
+     * @param bound The upper bound
+     * @return A number between 0 and bound - 1
+     */
+    protected static int pick( long seed, int position, int bound )
+    {
+        long z = seed + ( position + 1L ) * 0x9E3779B97F4A7C15L;
+        z = ( z ^ ( z >>> 30 ) ) * 0xBF58476D1CE4E5B9L;
+        z = ( z ^ ( z >>> 27 ) ) * 0x94D049BB133111EBL;
+        z = z ^ ( z >>> 31 );
+
+        return ( int ) ( ( z >>> 1 ) % bound );
+    }
 }
@@ -21,11 +21,16 @@
 package org.apache.directory.api.ldap.model.ldif.anonymizer;
 
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
 import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 
 
@@ -47,6 +52,31 @@ public interface Anonymizer<K>
      * @return The anonymized attribute
      */
     Attribute anonymize( Map<Value, Value> valueMap, Set<Value> valueSet, Attribute attribute );
+
+
+    /**
+     * Anonymize a single value, deriving the anonymized value from the given seed only.
+     * The caller computes the seed from the original value, so a value is anonymized the
+     * same way whatever the order the values are processed in, and many threads can use
+     * this method at the same time. The default implementation ignores the seed, and calls
+     * {@link #anonymize(Map, Set, Attribute)}, one thread at a time.
+     *
+     * @param attributeType The value AttributeType
+     * @param value The value to anonymize
+     * @param seed The seed the anonymized value is derived from
+     * @return The anonymized value, or null if this anonymizer does not handle the value
+     * @throws LdapInvalidAttributeValueException If the value is not valid for its AttributeType
+     */
+    default Value anonymize( AttributeType attributeType, Value value, long seed )
+        throws LdapInvalidAttributeValueException
+    {
+        Attribute attribute = new DefaultAttribute( attributeType, value );
+
+        synchronized ( this )
+        {
+            return anonymize( new HashMap<>(), new HashSet<>(), attribute ).get();
+        }
+    }
     
     
     /**
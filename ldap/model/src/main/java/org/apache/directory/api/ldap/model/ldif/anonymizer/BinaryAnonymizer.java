@@ -30,6 +30,7 @@ import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
 
 
 /**
@@ -98,6 +99,17 @@ public class BinaryAnonymizer extends AbstractAnonymizer<byte[]>
     }
     
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Value anonymize( AttributeType attributeType, Value value, long seed )
+        throws LdapInvalidAttributeValueException
+    {
+        return new Value( attributeType, computeNewValue( value.getBytes(), seed ) );
+    }
+    
+    
     /**
      * {@inheritDoc}
      */
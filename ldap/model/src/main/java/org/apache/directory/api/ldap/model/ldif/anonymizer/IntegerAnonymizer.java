@@ -31,6 +31,7 @@ import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
 
 
 /**
@@ -118,6 +119,38 @@ public class IntegerAnonymizer extends AbstractAnonymizer<String>
     }
     
     
+    /**
+     * {@inheritDoc}
+     * The anonymized value has the same number of digits, and does not start with a '0'
+     * unless its length is 1.
+     */
+    @Override
+    public Value anonymize( AttributeType attributeType, Value value, long seed )
+        throws LdapInvalidAttributeValueException
+    {
+        if ( !value.isHumanReadable() )
+        {
+            return null;
+        }
+
+        char[] newValue = new char[value.getString().length()];
+
+        for ( int i = 0; i < newValue.length; i++ )
+        {
+            if ( ( i == 0 ) && ( newValue.length > 1 ) )
+            {
+                newValue[i] = ( char ) ( '1' + pick( seed, i, 9 ) );
+            }
+            else
+            {
+                newValue[i] = ( char ) ( '0' + pick( seed, i, 10 ) );
+            }
+        }
+
+        return new Value( attributeType, new String( newValue ) );
+    }
+    
+    
     /**
      * @return The Map containing the latest anonymized value for each integer
      */
@@ -0,0 +1,912 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif.anonymizer;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A map of original values to their anonymized counterpart which does not keep all
+ * the mappings in memory. Every mapping is appended to a temporary file, organized
+ * as a hash table with a fixed number of buckets, and only the most recently used
+ * mappings are kept in memory. The anonymized values are indexed the same way, in a
+ * second hash table stored in the same file. The memory used by the map is bounded by
+ * the size of this hot set and by the two bucket indexes (16 bytes per bucket), whatever
+ * the number of anonymized values.
+ * <p>
+ * The mappings are never modified once created, which makes the append only file
+ * a good fit. This map is thread safe, and the temporary file is deleted when the
+ * map is closed. The keys are spread over some stripes, each one with its own lock
+ * and its own part of the hot set, so the threads working on different values don't
+ * wait for each other. A record is appended at a position reserved atomically, then
+ * published as the head of its bucket, and it's never modified afterwards. It's used
+ * by the LdifAnonymizer this way :
+ * <pre>
+ * try ( SpillableValueMap valueMap = new SpillableValueMap( schemaManager, tmpDir ) )
+ * {
+ *     anonymizer.setValueMap( valueMap );
+ *     anonymizer.anonymizeFile( ldifFile, writer, nbThreads );
+ * }
+ * </pre>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SpillableValueMap extends AbstractMap<Value, Value> implements Closeable
+{
+    /** The default number of mappings kept in memory */
+    public static final int DEFAULT_HOT_SET_SIZE = 100_000;
+
+    /** The default number of buckets in the file */
+    public static final int DEFAULT_NB_BUCKETS = 1 << 20;
+
+    /** The record header size : the next record offset, and the key length */
+    private static final int HEADER_SIZE = 12;
+
+    /** The number of lock stripes. It must be a power of 2 */
+    private static final int NB_STRIPES = 64;
+
+    /** The SchemaManager used to restore the values AttributeType */
+    private final SchemaManager schemaManager;
+
+    /** The stripes, each one holding the most recently used mappings of its keys */
+    private final Stripe[] stripes = new Stripe[NB_STRIPES];
+
+    /** The offset + 1 of the first record of each bucket, 0 if the bucket is empty */
+    private final AtomicLongArray buckets;
+
+    /** The offset + 1 of the first record of each anonymized value bucket, 0 if the bucket is empty */
+    private final AtomicLongArray valueBuckets;
+
+    /** The file containing the mappings */
+    private final FileChannel channel;
+
+    /** Protects the file against a clear or a close while it's being used */
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+
+    /** The end of the file */
+    private final AtomicLong end = new AtomicLong();
+
+    /** The number of mappings */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** The number of indexed anonymized values */
+    private final AtomicInteger nbAnonymizedValues = new AtomicInteger();
+
+    /** The set of anonymized values, when the anonymizers ask for it */
+    private volatile Set<Value> anonymizedValues;
+
+
+    /**
+     * A part of the hot set. Its lock protects the mappings of its keys, and the
+     * anonymized values it's used for, so that a key is never mapped twice.
+     */
+    private static final class Stripe extends LinkedHashMap<Value, Value>
+    {
+        private static final long serialVersionUID = 1L;
+
+        /** The maximum number of mappings in this stripe */
+        private final int capacity;
+
+
+        Stripe( int capacity )
+        {
+            super( 16, 0.75f, true );
+            this.capacity = capacity;
+        }
+
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Value, Value> eldest )
+        {
+            // The mapping is already in the file
+            return size() > capacity;
+        }
+    }
+
+
+    /**
+     * Creates a new SpillableValueMap, with the default hot set size and number of buckets.
+     *
+     * @param schemaManager The SchemaManager used to restore the values read from the file
+     * @param directory The directory where the temporary file is created
+     * @throws IOException If the temporary file can't be created
+     */
+    public SpillableValueMap( SchemaManager schemaManager, Path directory ) throws IOException
+    {
+        this( schemaManager, directory, DEFAULT_HOT_SET_SIZE, DEFAULT_NB_BUCKETS );
+    }
+
+
+    /**
+     * Creates a new SpillableValueMap.
+     *
+     * @param schemaManager The SchemaManager used to restore the values read from the file
+     * @param directory The directory where the temporary file is created
+     * @param hotSetSize The number of mappings kept in memory. It's split evenly between
+     * the lock stripes.
+     * @param nbBuckets The number of buckets in the file. It should be in the same order
+     * of magnitude than the number of distinct anonymized values.
+     * @throws IOException If the temporary file can't be created
+     */
+    public SpillableValueMap( SchemaManager schemaManager, Path directory, int hotSetSize, int nbBuckets )
+        throws IOException
+    {
+        this.schemaManager = schemaManager;
+        buckets = new AtomicLongArray( nbBuckets );
+        valueBuckets = new AtomicLongArray( nbBuckets );
+
+        int stripeCapacity = Math.max( 1, ( hotSetSize + NB_STRIPES - 1 ) / NB_STRIPES );
+
+        for ( int i = 0; i < NB_STRIPES; i++ )
+        {
+            stripes[i] = new Stripe( stripeCapacity );
+        }
+
+        Path file = Files.createTempFile( directory, "anonymizer", ".map" );
+        channel = FileChannel.open( file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+            StandardOpenOption.DELETE_ON_CLOSE );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Value get( Object key )
+    {
+        if ( !( key instanceof Value ) )
+        {
+            return null;
+        }
+
+        Stripe stripe = getStripe( key );
+
+        fileLock.readLock().lock();
+
+        try
+        {
+            synchronized ( stripe )
+            {
+                return get( stripe, ( Value ) key );
+            }
+        }
+        finally
+        {
+            fileLock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey( Object key )
+    {
+        return get( key ) != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Value put( Value key, Value value )
+    {
+        return put( key, value, true );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Value putIfAbsent( Value key, Value value )
+    {
+        return put( key, value, false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * The mapping function is called without holding any lock, so the values are
+     * computed in parallel. If two threads compute a mapping for the same key at the
+     * same time, only the first stored one is kept, and returned to both threads.
+     */
+    @Override
+    public Value computeIfAbsent( Value key, Function<? super Value, ? extends Value> mappingFunction )
+    {
+        Value value = get( key );
+
+        if ( value == null )
+        {
+            value = mappingFunction.apply( key );
+
+            if ( value != null )
+            {
+                Value existing = putIfAbsent( key, value );
+
+                if ( existing != null )
+                {
+                    return existing;
+                }
+            }
+        }
+
+        return value;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return size.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear()
+    {
+        fileLock.writeLock().lock();
+
+        try
+        {
+            channel.truncate( 0L );
+
+            for ( int i = 0; i < buckets.length(); i++ )
+            {
+                buckets.set( i, 0L );
+                valueBuckets.set( i, 0L );
+            }
+
+            for ( Stripe stripe : stripes )
+            {
+                synchronized ( stripe )
+                {
+                    stripe.clear();
+                }
+            }
+
+            end.set( 0L );
+            size.set( 0 );
+            nbAnonymizedValues.set( 0 );
+        }
+        catch ( IOException ioe )
+        {
+            throw new UncheckedIOException( ioe );
+        }
+        finally
+        {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Iterates over all the mappings, reading them from the file, bucket by bucket.
+     * The mappings can't be removed.
+     */
+    @Override
+    public Set<Map.Entry<Value, Value>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<Value, Value>>()
+        {
+            @Override
+            public Iterator<Map.Entry<Value, Value>> iterator()
+            {
+                return new EntryIterator( buckets );
+            }
+
+
+            @Override
+            public int size()
+            {
+                return SpillableValueMap.this.size();
+            }
+        };
+    }
+
+
+    /**
+     * The set of the anonymized values. The values of this map are added to the set when
+     * a mapping is created, and the anonymizers may add some more. The set is stored in
+     * the file, and indexed : checking if it contains a value reads a single bucket. A
+     * replaced mapping does not remove its former value from the set, and the values
+     * can't be removed. Adding a value is atomic : when two threads add the same value,
+     * only one of them gets <code>true</code>.
+     *
+     * @return The set of anonymized values
+     */
+    public Set<Value> anonymizedValueSet()
+    {
+        if ( anonymizedValues == null )
+        {
+            synchronized ( stripes )
+            {
+                if ( anonymizedValues == null )
+                {
+                    anonymizedValues = new AnonymizedValueSet();
+                }
+            }
+        }
+
+        return anonymizedValues;
+    }
+
+
+    /**
+     * Closes the map, and deletes its file
+     *
+     * @throws IOException If the file can't be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        fileLock.writeLock().lock();
+
+        try
+        {
+            for ( Stripe stripe : stripes )
+            {
+                synchronized ( stripe )
+                {
+                    stripe.clear();
+                }
+            }
+
+            channel.close();
+        }
+        finally
+        {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * The set of anonymized values, stored in the file
+     */
+    private class AnonymizedValueSet extends AbstractSet<Value>
+    {
+        @Override
+        public boolean add( Value value )
+        {
+            fileLock.readLock().lock();
+
+            try
+            {
+                return indexValue( value );
+            }
+            finally
+            {
+                fileLock.readLock().unlock();
+            }
+        }
+
+
+        @Override
+        public boolean contains( Object value )
+        {
+            if ( !( value instanceof Value ) )
+            {
+                return false;
+            }
+
+            fileLock.readLock().lock();
+
+            try
+            {
+                return read( valueBuckets, ( Value ) value ) != null;
+            }
+            finally
+            {
+                fileLock.readLock().unlock();
+            }
+        }
+
+
+        @Override
+        public Iterator<Value> iterator()
+        {
+            EntryIterator entries = new EntryIterator( valueBuckets );
+
+            return new Iterator<Value>()
+            {
+                @Override
+                public boolean hasNext()
+                {
+                    return entries.hasNext();
+                }
+
+
+                @Override
+                public Value next()
+                {
+                    return entries.next().getValue();
+                }
+            };
+        }
+
+
+        @Override
+        public int size()
+        {
+            return nbAnonymizedValues.get();
+        }
+    }
+
+
+    /**
+     * Gets a mapping, from the hot set or from the file. The stripe lock must be held.
+     */
+    private Value get( Stripe stripe, Value key )
+    {
+        Value value = stripe.get( key );
+
+        if ( value == null )
+        {
+            value = read( buckets, key );
+
+            if ( value != null )
+            {
+                stripe.put( key, value );
+            }
+        }
+
+        return value;
+    }
+
+
+    /**
+     * Stores a mapping, replacing the existing one or not
+     */
+    private Value put( Value key, Value value, boolean replace )
+    {
+        Stripe stripe = getStripe( key );
+        Value previous;
+
+        fileLock.readLock().lock();
+
+        try
+        {
+            synchronized ( stripe )
+            {
+                previous = get( stripe, key );
+
+                if ( ( previous != null ) && ( !replace || value.equals( previous ) ) )
+                {
+                    return previous;
+                }
+
+                // The new record shadows the previous one, as it's inserted at the head of the bucket
+                write( buckets, key, value );
+                stripe.put( key, value );
+            }
+
+            if ( previous == null )
+            {
+                size.incrementAndGet();
+            }
+
+            indexValue( value );
+        }
+        finally
+        {
+            fileLock.readLock().unlock();
+        }
+
+        return previous;
+    }
+
+
+    /**
+     * Adds an anonymized value to the index, if it's not already present. The value
+     * stripe lock makes the check and the addition atomic.
+     *
+     * @return <code>true</code> if the value was not already indexed
+     */
+    private boolean indexValue( Value value )
+    {
+        synchronized ( getStripe( value ) )
+        {
+            if ( read( valueBuckets, value ) != null )
+            {
+                return false;
+            }
+
+            // The anonymized value is stored as a mapping to itself
+            write( valueBuckets, value, value );
+        }
+
+        nbAnonymizedValues.incrementAndGet();
+
+        return true;
+    }
+
+
+    /**
+     * Reads a mapping from the file, using the given bucket index. The records are never
+     * modified once published, so no lock is needed.
+     */
+    private Value read( AtomicLongArray table, Value key )
+    {
+        byte[] keyBytes = encodeKey( key );
+        long offset = table.get( getBucket( keyBytes ) ) - 1L;
+
+        try
+        {
+            while ( offset >= 0L )
+            {
+                ByteBuffer header = readBytes( offset, HEADER_SIZE );
+                long next = header.getLong();
+                int keyLength = header.getInt();
+
+                if ( ( keyLength == keyBytes.length )
+                    && Arrays.equals( keyBytes, readBytes( offset + HEADER_SIZE, keyLength ).array() ) )
+                {
+                    long valueOffset = offset + HEADER_SIZE + keyLength;
+                    int valueLength = readBytes( valueOffset, 4 ).getInt();
+
+                    return decodeValue( readBytes( valueOffset + 4, valueLength ).array() );
+                }
+
+                offset = next - 1L;
+            }
+
+            return null;
+        }
+        catch ( IOException ioe )
+        {
+            throw new UncheckedIOException( ioe );
+        }
+    }
+
+
+    /**
+     * Appends a mapping at the end of the file, and makes it the head of its bucket in
+     * the given bucket index. The record is written before being published, and written
+     * again if another thread has published a record in the same bucket meanwhile.
+     */
+    private void write( AtomicLongArray table, Value key, Value value )
+    {
+        byte[] keyBytes = encodeKey( key );
+        byte[] valueBytes = encodeValue( value );
+        int bucket = getBucket( keyBytes );
+
+        ByteBuffer buffer = ByteBuffer.allocate( HEADER_SIZE + keyBytes.length + 4 + valueBytes.length );
+        buffer.putLong( 0L );
+        buffer.putInt( keyBytes.length );
+        buffer.put( keyBytes );
+        buffer.putInt( valueBytes.length );
+        buffer.put( valueBytes );
+
+        long offset = end.getAndAdd( buffer.capacity() );
+
+        try
+        {
+            long head;
+
+            do
+            {
+                head = table.get( bucket );
+                buffer.putLong( 0, head );
+                buffer.rewind();
+
+                while ( buffer.hasRemaining() )
+                {
+                    channel.write( buffer, offset + buffer.position() );
+                }
+            }
+            while ( !table.compareAndSet( bucket, head, offset + 1L ) );
+        }
+        catch ( IOException ioe )
+        {
+            throw new UncheckedIOException( ioe );
+        }
+    }
+
+
+    /**
+     * Reads some bytes at a given position in the file
+     */
+    private ByteBuffer readBytes( long position, int length ) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( length );
+
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read( buffer, position + buffer.position() ) < 0 )
+            {
+                throw new IOException( I18n.err( I18n.ERR_13476_UNEXPECTED_END_OF_MAPPING_FILE, position ) );
+            }
+        }
+
+        buffer.flip();
+
+        return buffer;
+    }
+
+
+    private int getBucket( byte[] keyBytes )
+    {
+        int h = Arrays.hashCode( keyBytes );
+
+        return Math.floorMod( h ^ ( h >>> 16 ), buckets.length() );
+    }
+
+
+    /**
+     * The stripe of a key, from its hashcode, which is consistent with its equals method
+     */
+    private Stripe getStripe( Object key )
+    {
+        int h = key.hashCode();
+
+        return stripes[( h ^ ( h >>> 16 ) ) & ( NB_STRIPES - 1 )];
+    }
+
+
+    /**
+     * The key is the AttributeType OID and the normalized value, as two values of the
+     * same AttributeType with the same normalized value are equal.
+     */
+    private static byte[] encodeKey( Value value )
+    {
+        if ( value.isHumanReadable() )
+        {
+            String normalized = value.getNormalized();
+
+            return encode( value.getAttributeType(), true,
+                Strings.getBytesUtf8( normalized == null ? value.getString() : normalized ) );
+        }
+        else
+        {
+            return encode( value.getAttributeType(), false, value.getBytes() );
+        }
+    }
+
+
+    /**
+     * The user provided value is stored, with its AttributeType OID
+     */
+    private static byte[] encodeValue( Value value )
+    {
+        if ( value.isHumanReadable() )
+        {
+            return encode( value.getAttributeType(), true, Strings.getBytesUtf8( value.getString() ) );
+        }
+        else
+        {
+            return encode( value.getAttributeType(), false, value.getBytes() );
+        }
+    }
+
+
+    private static byte[] encode( AttributeType attributeType, boolean isHR, byte[] bytes )
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream( bytes.length + 32 );
+
+        try ( DataOutputStream out = new DataOutputStream( baos ) )
+        {
+            out.writeUTF( attributeType == null ? "" : attributeType.getOid() );
+            out.writeBoolean( isHR );
+            out.write( bytes );
+        }
+        catch ( IOException ioe )
+        {
+            // Can't happen with a ByteArrayOutputStream
+            throw new UncheckedIOException( ioe );
+        }
+
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * Restores a Value from its serialized form
+     */
+    private Value decodeValue( byte[] encoded )
+    {
+        ByteBuffer buffer = ByteBuffer.wrap( encoded );
+        int oidLength = buffer.getShort() & 0xFFFF;
+        String oid = Strings.utf8ToString( encoded, 2, oidLength );
+        boolean isHR = encoded[2 + oidLength] != 0;
+        int start = 3 + oidLength;
+        AttributeType attributeType = null;
+
+        if ( !oid.isEmpty() && ( schemaManager != null ) )
+        {
+            attributeType = schemaManager.getAttributeType( oid );
+        }
+
+        try
+        {
+            if ( isHR )
+            {
+                String upValue = Strings.utf8ToString( encoded, start, encoded.length - start );
+
+                return attributeType == null ? new Value( upValue ) : new Value( attributeType, upValue );
+            }
+            else
+            {
+                byte[] bytes = Arrays.copyOfRange( encoded, start, encoded.length );
+
+                return attributeType == null ? new Value( bytes ) : new Value( attributeType, bytes );
+            }
+        }
+        catch ( LdapInvalidAttributeValueException liave )
+        {
+            // The value was valid when it was stored
+            throw new IllegalStateException( liave.getMessage(), liave );
+        }
+    }
+
+
+    /**
+     * An iterator over the mappings stored in the file. The buckets are read one by
+     * one, skipping the records shadowed by a newer one for the same key.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<Value, Value>>
+    {
+        /** The bucket index to iterate over */
+        private final AtomicLongArray table;
+
+        /** The next bucket to read */
+        private int bucket;
+
+        /** The mappings of the current bucket */
+        private final List<Map.Entry<Value, Value>> entries = new ArrayList<>();
+
+        /** The position in the current bucket mappings */
+        private int pos;
+
+
+        EntryIterator( AtomicLongArray table )
+        {
+            this.table = table;
+        }
+
+
+        @Override
+        public boolean hasNext()
+        {
+            while ( pos == entries.size() )
+            {
+                if ( bucket == table.length() )
+                {
+                    return false;
+                }
+
+                loadBucket( bucket++ );
+            }
+
+            return true;
+        }
+
+
+        @Override
+        public Map.Entry<Value, Value> next()
+        {
+            if ( !hasNext() )
+            {
+                throw new NoSuchElementException();
+            }
+
+            return entries.get( pos++ );
+        }
+
+
+        private void loadBucket( int index )
+        {
+            entries.clear();
+            pos = 0;
+
+            fileLock.readLock().lock();
+
+            try
+            {
+                long offset = table.get( index ) - 1L;
+                List<byte[]> seenKeys = new ArrayList<>();
+
+                try
+                {
+                    while ( offset >= 0L )
+                    {
+                        ByteBuffer header = readBytes( offset, HEADER_SIZE );
+                        long next = header.getLong();
+                        int keyLength = header.getInt();
+                        byte[] keyBytes = readBytes( offset + HEADER_SIZE, keyLength ).array();
+                        boolean shadowed = false;
+
+                        for ( byte[] seenKey : seenKeys )
+                        {
+                            if ( Arrays.equals( seenKey, keyBytes ) )
+                            {
+                                shadowed = true;
+                                break;
+                            }
+                        }
+
+                        if ( !shadowed )
+                        {
+                            seenKeys.add( keyBytes );
+                            long valueOffset = offset + HEADER_SIZE + keyLength;
+                            int valueLength = readBytes( valueOffset, 4 ).getInt();
+                            Value value = decodeValue( readBytes( valueOffset + 4, valueLength ).array() );
+
+                            // The stored key is the normalized value : it's equal to the original
+                            // value, but its user provided form may differ
+                            entries.add( new AbstractMap.SimpleImmutableEntry<>( decodeValue( keyBytes ), value ) );
+                        }
+
+                        offset = next - 1L;
+                    }
+                }
+                catch ( IOException ioe )
+                {
+                    throw new UncheckedIOException( ioe );
+                }
+            }
+            finally
+            {
+                fileLock.readLock().unlock();
+            }
+        }
+    }
+}
@@ -30,6 +30,8 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 
 /**
  * A Dn parser that is able to parse complex DNs. This is an Antlr based parser.
+ * It is not used anymore to parse the DNs, which are handled by the {@link DnParser},
+ * but it is kept as a reference implementation to check the DnParser results.
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
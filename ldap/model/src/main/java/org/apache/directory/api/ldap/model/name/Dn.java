@@ -1254,15 +1254,7 @@ public class Dn implements Iterable<Rdn>, Externalizable
      */
     private static String parseInternal( SchemaManager schemaManager, String name, List<Rdn> rdns ) throws LdapInvalidDnException
     {
-        try
-        {
-            return FastDnParser.parseDn( schemaManager, name, rdns );
-        }
-        catch ( TooComplexDnException e )
-        {
-            rdns.clear();
-            return new ComplexDnParser().parseDn( schemaManager, name, rdns );
-        }
+        return DnParser.parseDn( schemaManager, name, rdns );
     }
 
 
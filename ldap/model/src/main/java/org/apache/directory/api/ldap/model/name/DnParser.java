@@ -0,0 +1,878 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.name;
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A hand written Dn parser, which handles the full RFC 4514 grammar :
+ * <pre>
+ * distinguishedName = [ relativeDistinguishedName *( COMMA relativeDistinguishedName ) ]
+ * relativeDistinguishedName = attributeTypeAndValue *( PLUS attributeTypeAndValue )
+ * attributeTypeAndValue = attributeType EQUALS attributeValue
+ * attributeType = descr / numericoid
+ * attributeValue = string / hexstring
+ * </pre>
+ * It also accepts the RFC 2253 and RFC 1779 extensions the previous parsers were
+ * accepting : spaces around the separators and the '=' sign, ';' as a separator,
+ * quoted values, "OID." prefixed types and '_' in types.
+ * <p>
+ * The Dn is read only once, character by character. The values which don't contain
+ * any escaped character are extracted without any copy, and when a SchemaManager is
+ * provided, each value is normalized as soon as it has been read.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+/* No protection*/final class DnParser
+{
+    /** The SchemaManager, if the parsed Dn is schema aware */
+    private final SchemaManager schemaManager;
+
+    /** The parsed name */
+    private final String name;
+
+    /** The name length */
+    private final int length;
+
+    /** The current position in the name */
+    private int pos;
+
+    /** A buffer used to unescape the values, created when needed */
+    private StringBuilder valueBuffer;
+
+    /** A buffer used to store the hexpairs bytes, created when needed */
+    private byte[] hexBuffer;
+
+    /** The bytes of the last hexstring value */
+    private byte[] hexValue;
+
+    /** Tells if the last Ava value was a string without any pair */
+    private boolean plainValue;
+
+
+    /**
+     * Creates a new DnParser instance
+     *
+     * @param schemaManager The SchemaManager
+     * @param name The name to parse
+     */
+    private DnParser( SchemaManager schemaManager, String name )
+    {
+        this.schemaManager = schemaManager;
+        this.name = name;
+        length = name.length();
+    }
+
+
+    /**
+     * Parses a Dn from a String
+     *
+     * @param schemaManager The SchemaManager
+     * @param name The Dn to parse
+     * @return A valid Dn
+     * @throws LdapInvalidDnException If the Dn was invalid
+     */
+    /* No protection*/static Dn parse( SchemaManager schemaManager, String name ) throws LdapInvalidDnException
+    {
+        Dn dn = new Dn( schemaManager );
+        String normName = parseDn( schemaManager, name, dn.rdns );
+        dn.setUpName( name );
+        dn.setNormName( normName );
+
+        return dn;
+    }
+
+
+    /**
+     * Parses the given name string and fills the given list of Rdns.
+     *
+     * @param schemaManager The SchemaManager
+     * @param name the name to parse
+     * @param rdns the (empty) list where parsed RDNs are put to
+     * @return The normalized Dn
+     * @throws LdapInvalidDnException the invalid name exception
+     */
+    /* No protection*/static String parseDn( SchemaManager schemaManager, String name, List<Rdn> rdns )
+        throws LdapInvalidDnException
+    {
+        if ( ( name == null ) || ( name.trim().length() == 0 ) )
+        {
+            // We have an empty Dn, just get out of the function.
+            return "";
+        }
+
+        DnParser parser = new DnParser( schemaManager, name );
+        StringBuilder normName = new StringBuilder( parser.length );
+
+        while ( true )
+        {
+            Rdn rdn = new Rdn( schemaManager );
+            parser.parseRdn( rdn );
+            normName.append( rdn.getNormName() );
+            rdns.add( rdn );
+
+            if ( parser.pos == parser.length )
+            {
+                // end of line reached
+                break;
+            }
+
+            // The Rdn parser stops on a ',' a ';' or at the end of the name
+            parser.pos++;
+            normName.append( ',' );
+        }
+
+        return normName.toString();
+    }
+
+
+    /**
+     * Parses the given name string and fills the given Rdn object. The parser stops at the
+     * end of the first Rdn : the caller has to check that the full name has been consumed.
+     *
+     * @param schemaManager The SchemaManager
+     * @param name the name to parse
+     * @param rdn the Rdn to fill, or null if we only want to check the name
+     * @throws LdapInvalidDnException the invalid name exception
+     */
+    /* No protection*/static void parseRdn( SchemaManager schemaManager, String name, Rdn rdn )
+        throws LdapInvalidDnException
+    {
+        if ( Strings.isEmpty( name ) )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_13602_RDN_EMPTY ) );
+        }
+
+        if ( rdn == null )
+        {
+            rdn = new Rdn( schemaManager );
+        }
+
+        new DnParser( schemaManager, name ).parseRdn( rdn );
+    }
+
+
+    /**
+     * Parses a Rdn, starting at the current position, and stops on a ',' or a ';',
+     * or at the end of the name.
+     *
+     * <pre>
+     * relativeDistinguishedName = attributeTypeAndValue *( PLUS attributeTypeAndValue )
+     * </pre>
+     */
+    private void parseRdn( Rdn rdn ) throws LdapInvalidDnException
+    {
+        int rdnStart = pos;
+        Ava ava = parseAva();
+
+        if ( ( pos < length ) && ( name.charAt( pos ) == '+' ) )
+        {
+            // A multi-valued Rdn : the Avas are ordered
+            List<Ava> avas = new ArrayList<>();
+            avas.add( ava );
+
+            do
+            {
+                pos++;
+
+                try
+                {
+                    Rdn.addOrdered( avas, parseAva() );
+                }
+                catch ( IllegalStateException ise )
+                {
+                    // The same attribute type has a String and a binary value : they can't be compared
+                    throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, ise.getMessage(), ise );
+                }
+            }
+            while ( ( pos < length ) && ( name.charAt( pos ) == '+' ) );
+
+            rdn.avaTypes = new HashMap<>();
+            StringBuilder normName = new StringBuilder();
+            boolean isFirst = true;
+
+            for ( Ava parsedAva : avas )
+            {
+                if ( isFirst )
+                {
+                    isFirst = false;
+                }
+                else
+                {
+                    normName.append( '+' );
+                }
+
+                appendNormAva( normName, parsedAva );
+                rdn.avaTypes.computeIfAbsent( parsedAva.normType, k -> new ArrayList<>() ).add( parsedAva );
+            }
+
+            rdn.avas = avas;
+            rdn.nbAvas = avas.size();
+            rdn.setNormName( normName.toString() );
+        }
+        else
+        {
+            StringBuilder normName = new StringBuilder();
+            appendNormAva( normName, ava );
+
+            if ( plainValue )
+            {
+                // A simple Ava keeps a trimmed user provided name
+                ava.upName = ava.upType + '=' + ava.value.getUpValue();
+            }
+
+            rdn.ava = ava;
+            rdn.avaType = ava.normType;
+            rdn.nbAvas = 1;
+            rdn.setNormName( normName.toString() );
+        }
+
+        rdn.setUpName( name.substring( rdnStart, pos ) );
+        rdn.hashCode();
+    }
+
+
+    /**
+     * Appends the normalized form of an Ava
+     */
+    private static void appendNormAva( StringBuilder sb, Ava ava )
+    {
+        sb.append( ava.normType ).append( '=' );
+
+        Value value = ava.value;
+
+        if ( value.getNormalized() != null )
+        {
+            sb.append( value.getNormalized() );
+        }
+        else
+        {
+            // We can't tell if the value is HR or not.
+            // Use the Value User Provided value
+            sb.append( value.getUpValue() );
+        }
+    }
+
+
+    /**
+     * Parses an Ava, and stops on a ',', a ';' or a '+', or at the end of the name.
+     *
+     * <pre>
+     * attributeTypeAndValue = *SPACE attributeType *SPACE EQUALS *SPACE attributeValue *SPACE
+     * </pre>
+     */
+    private Ava parseAva() throws LdapInvalidDnException
+    {
+        int avaStart = pos;
+
+        skipSpaces();
+        String type = parseAttributeType();
+        skipSpaces();
+
+        if ( ( pos == length ) || ( name.charAt( pos ) != '=' ) )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_13609_EQUAL_EXPECTED,
+                pos == length ? "EOF" : name.charAt( pos ), pos ) );
+        }
+
+        pos++;
+        skipSpaces();
+
+        String stringValue = null;
+        hexValue = null;
+        plainValue = false;
+        int avaEnd;
+
+        if ( pos == length )
+        {
+            stringValue = "";
+            plainValue = true;
+            avaEnd = pos;
+        }
+        else
+        {
+            switch ( name.charAt( pos ) )
+            {
+                case '#':
+                    parseHexString();
+                    avaEnd = pos;
+                    skipSpaces();
+                    break;
+
+                case '"':
+                    stringValue = parseQuotedString();
+                    avaEnd = pos;
+                    skipSpaces();
+                    break;
+
+                default:
+                    stringValue = parseString();
+                    avaEnd = pos;
+                    break;
+            }
+
+            if ( pos < length )
+            {
+                char c = name.charAt( pos );
+
+                if ( ( c != ',' ) && ( c != ';' ) && ( c != '+' ) )
+                {
+                    throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX,
+                        I18n.err( I18n.ERR_13628_UNEXPECTED_CHAR_IN_VALUE, c, pos ) );
+                }
+            }
+        }
+
+        return createAva( type, stringValue, name.substring( avaStart, avaEnd ) );
+    }
+
+
+    /**
+     * Creates the Ava, normalizing its type and value if we have a SchemaManager
+     */
+    private Ava createAva( String type, String stringValue, String upName ) throws LdapInvalidDnException
+    {
+        Ava ava = new Ava( schemaManager );
+        AttributeType attributeType = null;
+
+        if ( schemaManager != null )
+        {
+            if ( type.regionMatches( true, 0, "oid.", 0, 4 ) )
+            {
+                type = type.substring( 4 );
+            }
+
+            attributeType = schemaManager.getAttributeType( type );
+
+            if ( attributeType == null )
+            {
+                throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX,
+                    I18n.err( I18n.ERR_13631_UNKNOWN_ATTRIBUTE_TYPE, type ) );
+            }
+
+            ava.attributeType = attributeType;
+            ava.normType = attributeType.getOid();
+        }
+        else
+        {
+            ava.normType = Strings.toLowerCaseAscii( type );
+        }
+
+        ava.upType = type;
+        ava.upName = upName;
+
+        if ( ( stringValue == null ) && ( ( attributeType == null ) || !attributeType.isHR() ) )
+        {
+            // A binary value
+            ava.value = new Value( hexValue );
+        }
+        else
+        {
+            if ( stringValue == null )
+            {
+                // A hexstring for a human readable attributeType
+                stringValue = Strings.utf8ToString( hexValue );
+            }
+
+            if ( attributeType != null )
+            {
+                try
+                {
+                    ava.value = new Value( attributeType, stringValue );
+                }
+                catch ( LdapInvalidAttributeValueException liave )
+                {
+                    throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, liave.getMessage(), liave );
+                }
+            }
+            else
+            {
+                ava.value = new Value( stringValue );
+            }
+        }
+
+        ava.hashCode();
+
+        return ava;
+    }
+
+
+    /**
+     * Parses the attributeType.
+     *
+     * <pre>
+     * attributeType = descr / numericoid
+     * descr = ALPHA *( ALPHA / DIGIT / HYPHEN )
+     * numericoid = number 1*( DOT number )
+     * </pre>
+     *
+     * We also accept the '_' char in a descr, and the "OID." prefix before a numericoid.
+     */
+    private String parseAttributeType() throws LdapInvalidDnException
+    {
+        if ( pos == length )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX,
+                I18n.err( I18n.ERR_13610_NO_MORE_CHAR_AVAILABLE, pos ) );
+        }
+
+        int start = pos;
+        char c = name.charAt( pos );
+
+        if ( isDigit( c ) )
+        {
+            parseNumericOid();
+
+            return name.substring( start, pos );
+        }
+
+        if ( !isAlpha( c ) )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX,
+                I18n.err( I18n.ERR_13604_START_AT_EXPECTED, c, pos ) );
+        }
+
+        if ( name.regionMatches( true, pos, "oid.", 0, 4 ) && ( pos + 4 < length )
+            && isDigit( name.charAt( pos + 4 ) ) )
+        {
+            // The "OID." prefix
+            pos += 4;
+            parseNumericOid();
+
+            return name.substring( start, pos );
+        }
+
+        pos++;
+
+        while ( pos < length )
+        {
+            c = name.charAt( pos );
+
+            if ( isAlpha( c ) || isDigit( c ) || ( c == '-' ) || ( c == '_' ) )
+            {
+                pos++;
+            }
+            else if ( ( c == ' ' ) || ( c == '=' ) )
+            {
+                break;
+            }
+            else
+            {
+                throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX,
+                    I18n.err( I18n.ERR_13605_START_AT_DESCR_EXPECTED, c, pos ) );
+            }
+        }
+
+        return name.substring( start, pos );
+    }
+
+
+    /**
+     * Parses a numericoid : number 1*( DOT number ), with number = DIGIT / ( LDIGIT 1*DIGIT )
+     */
+    private void parseNumericOid() throws LdapInvalidDnException
+    {
+        int dotCount = 0;
+
+        while ( true )
+        {
+            // A number
+            if ( ( pos == length ) || !isDigit( name.charAt( pos ) ) )
+            {
+                throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err(
+                    I18n.ERR_13608_START_AT_NUMERICOID_EXPECTED, pos == length ? "EOF" : name.charAt( pos ), pos ) );
+            }
+
+            if ( name.charAt( pos++ ) != '0' )
+            {
+                while ( ( pos < length ) && isDigit( name.charAt( pos ) ) )
+                {
+                    pos++;
+                }
+            }
+
+            if ( pos == length )
+            {
+                break;
+            }
+
+            char c = name.charAt( pos );
+
+            if ( c == '.' )
+            {
+                dotCount++;
+                pos++;
+            }
+            else if ( ( c == ' ' ) || ( c == '=' ) )
+            {
+                break;
+            }
+            else
+            {
+                // Includes the leading '0' followed by another digit
+                throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX,
+                    I18n.err( I18n.ERR_13606_EXPECTED_NUMERICOID, c, pos ) );
+            }
+        }
+
+        if ( dotCount == 0 )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_13607_DOT_MISSING_IN_OID ) );
+        }
+    }
+
+
+    /**
+     * Parses a string value. The trailing spaces are removed, unless they are escaped.
+     *
+     * <pre>
+     * string = [ ( leadchar / pair ) [ *( stringchar / pair ) ( trailchar / pair ) ] ]
+     * </pre>
+     *
+     * The leading SPACE and SHARP have already been handled by the caller.
+     */
+    private String parseString() throws LdapInvalidDnException
+    {
+        int start = pos;
+
+        // The end of the value, once the trailing spaces have been removed
+        int end = pos;
+
+        // The buffer containing the unescaped value, if we have met a pair
+        StringBuilder sb = null;
+        int sbEnd = 0;
+        plainValue = true;
+
+        while ( pos < length )
+        {
+            char c = name.charAt( pos );
+
+            switch ( c )
+            {
+                case ',':
+                case ';':
+                case '+':
+                    return sb == null ? name.substring( start, end ) : sb.substring( 0, sbEnd );
+
+                case '\\':
+                    if ( sb == null )
+                    {
+                        sb = getValueBuffer();
+                        sb.append( name, start, pos );
+                        plainValue = false;
+                    }
+
+                    parsePair( sb );
+                    end = pos;
+                    sbEnd = sb.length();
+                    break;
+
+                case ' ':
+                    if ( sb != null )
+                    {
+                        sb.append( c );
+                    }
+
+                    pos++;
+                    break;
+
+                case '"':
+                case '<':
+                case '>':
+                case '\u0000':
+                case '\uFFFF':
+                    throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX,
+                        I18n.err( I18n.ERR_13628_UNEXPECTED_CHAR_IN_VALUE, c, pos ) );
+
+                default:
+                    if ( sb != null )
+                    {
+                        sb.append( c );
+                        sbEnd = sb.length();
+                    }
+
+                    pos++;
+                    end = pos;
+                    break;
+            }
+        }
+
+        return sb == null ? name.substring( start, end ) : sb.substring( 0, sbEnd );
+    }
+
+
+    /**
+     * Parses a quoted value, as allowed by RFC 2253.
+     *
+     * <pre>
+     * QUOTATION *( quotechar / pair ) QUOTATION
+     * quotechar = &lt;any character except "\" or QUOTATION &gt;
+     * </pre>
+     */
+    private String parseQuotedString() throws LdapInvalidDnException
+    {
+        int quoteStart = pos;
+
+        // Skip the starting quote
+        pos++;
+        int start = pos;
+        StringBuilder sb = null;
+
+        while ( pos < length )
+        {
+            char c = name.charAt( pos );
+
+            switch ( c )
+            {
+                case '"':
+                    pos++;
+
+                    return sb == null ? name.substring( start, pos - 1 ) : sb.toString();
+
+                case '\\':
+                    if ( sb == null )
+                    {
+                        sb = getValueBuffer();
+                        sb.append( name, start, pos );
+                    }
+
+                    parsePair( sb );
+                    break;
+
+                case '\u0000':
+                case '\uFFFF':
+                    throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX,
+                        I18n.err( I18n.ERR_13628_UNEXPECTED_CHAR_IN_VALUE, c, pos ) );
+
+                default:
+                    if ( sb != null )
+                    {
+                        sb.append( c );
+                    }
+
+                    pos++;
+                    break;
+            }
+        }
+
+        throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX,
+            I18n.err( I18n.ERR_13629_UNTERMINATED_QUOTED_VALUE, quoteStart ) );
+    }
+
+
+    /**
+     * Parses a hexstring value, and stores its bytes.
+     *
+     * <pre>
+     * hexstring = SHARP 1*hexpair
+     * </pre>
+     */
+    private void parseHexString() throws LdapInvalidDnException
+    {
+        int start = pos;
+
+        // Skip the '#'
+        pos++;
+
+        int nbBytes = 0;
+        byte[] bytes = getHexBuffer( ( length - pos ) / 2 );
+
+        while ( ( pos + 1 < length ) && isHex( name.charAt( pos ) ) && isHex( name.charAt( pos + 1 ) ) )
+        {
+            bytes[nbBytes++] = ( byte ) ( ( hexValue( name.charAt( pos ) ) << 4 ) | hexValue( name.charAt( pos + 1 ) ) );
+            pos += 2;
+        }
+
+        if ( ( nbBytes == 0 ) || ( ( pos < length ) && isHex( name.charAt( pos ) ) ) )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX,
+                I18n.err( I18n.ERR_13630_INVALID_HEXSTRING, start ) );
+        }
+
+        hexValue = new byte[nbBytes];
+        System.arraycopy( bytes, 0, hexValue, 0, nbBytes );
+    }
+
+
+    /**
+     * Parses a pair, and appends the unescaped chars to the buffer. A sequence of
+     * hexpairs is decoded as an UTF-8 string.
+     *
+     * <pre>
+     * pair = ESC ( ESC / special / hexpair )
+     * special = escaped / SPACE / SHARP / EQUALS
+     * escaped = DQUOTE / PLUS / COMMA / SEMI / LANGLE / RANGLE
+     * hexpair = HEX HEX
+     * </pre>
+     */
+    private void parsePair( StringBuilder sb ) throws LdapInvalidDnException
+    {
+        if ( pos + 1 == length )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX,
+                I18n.err( I18n.ERR_13627_INVALID_ESCAPE_SEQUENCE, pos ) );
+        }
+
+        char c = name.charAt( pos + 1 );
+
+        if ( isHexPair( pos ) )
+        {
+            // Decode all the following hexpairs at once, they may be a multi-bytes UTF-8 char
+            int nbBytes = 0;
+            byte[] bytes = getHexBuffer( ( length - pos ) / 3 );
+
+            do
+            {
+                bytes[nbBytes++] = ( byte ) ( ( hexValue( name.charAt( pos + 1 ) ) << 4 )
+                    | hexValue( name.charAt( pos + 2 ) ) );
+                pos += 3;
+            }
+            while ( isHexPair( pos ) );
+
+            sb.append( new String( bytes, 0, nbBytes, StandardCharsets.UTF_8 ) );
+
+            return;
+        }
+
+        switch ( c )
+        {
+            case '\\':
+            case '"':
+            case '+':
+            case ',':
+            case ';':
+            case '<':
+            case '>':
+            case ' ':
+            case '#':
+            case '=':
+                sb.append( c );
+                pos += 2;
+                break;
+
+            default:
+                throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX,
+                    I18n.err( I18n.ERR_13627_INVALID_ESCAPE_SEQUENCE, pos ) );
+        }
+    }
+
+
+    /**
+     * Skips the spaces
+     */
+    private void skipSpaces()
+    {
+        while ( ( pos < length ) && ( name.charAt( pos ) == ' ' ) )
+        {
+            pos++;
+        }
+    }
+
+
+    /**
+     * @return The buffer used to unescape the values, emptied
+     */
+    private StringBuilder getValueBuffer()
+    {
+        if ( valueBuffer == null )
+        {
+            valueBuffer = new StringBuilder( length );
+        }
+        else
+        {
+            valueBuffer.setLength( 0 );
+        }
+
+        return valueBuffer;
+    }
+
+
+    /**
+     * @return A buffer able to store at least the given number of bytes
+     */
+    private byte[] getHexBuffer( int size )
+    {
+        if ( ( hexBuffer == null ) || ( hexBuffer.length < size ) )
+        {
+            hexBuffer = new byte[size];
+        }
+
+        return hexBuffer;
+    }
+
+
+    /**
+     * Tells if there is an ESC HEX HEX sequence at the given position
+     */
+    private boolean isHexPair( int index )
+    {
+        return ( index + 2 < length ) && ( name.charAt( index ) == '\\' ) && isHex( name.charAt( index + 1 ) )
+            && isHex( name.charAt( index + 2 ) );
+    }
+
+
+    private static boolean isAlpha( char c )
+    {
+        return ( ( c >= 'a' ) && ( c <= 'z' ) ) || ( ( c >= 'A' ) && ( c <= 'Z' ) );
+    }
+
+
+    private static boolean isDigit( char c )
+    {
+        return ( c >= '0' ) && ( c <= '9' );
+    }
+
+
+    private static boolean isHex( char c )
+    {
+        return isDigit( c ) || ( ( c >= 'a' ) && ( c <= 'f' ) ) || ( ( c >= 'A' ) && ( c <= 'F' ) );
+    }
+
+
+    private static int hexValue( char c )
+    {
+        if ( c <= '9' )
+        {
+            return c - '0';
+        }
+        else if ( c <= 'F' )
+        {
+            return c - 'A' + 10;
+        }
+        else
+        {
+            return c - 'a' + 10;
+        }
+    }
+}
@@ -24,7 +24,8 @@ import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 
 
 /**
- * This exception is used to signal that the complex parser should be used.
+ * This exception was used to signal that the complex parser should be used. The
+ * Dn parser now handles all the DNs, so it is not thrown anymore.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -70,6 +70,10 @@ public class BCrypt
     private static final int GENSALT_DEFAULT_LOG2_ROUNDS = 10;
     private static final int BCRYPT_SALT_LEN = 16;
 
+    // The shared random generator used to create the salts. It is thread safe, and
+    // expensive to create
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     // Blowfish parameters
     private static final int BLOWFISH_NUM_ROUNDS = 16;
 
@@ -886,7 +890,7 @@ public class BCrypt
      */
     public static String genSalt( int logRounds )
     {
-        return genSalt( logRounds, new SecureRandom() );
+        return genSalt( logRounds, RANDOM );
     }
 
 
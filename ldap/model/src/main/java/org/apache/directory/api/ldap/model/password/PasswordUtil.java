@@ -26,9 +26,13 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.KeySpec;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
-import java.util.Date;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
@@ -84,6 +88,16 @@ public final class PasswordUtil
     private static final byte[] CRYPT_SALT_CHARS = Strings
         .getBytesUtf8( "./0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz" );
 
+    /** The random generator used to create the salts. It's thread safe, and costly to create */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** The MessageDigest instances, per thread and per algorithm, as they are costly to look up */
+    private static final ThreadLocal<EnumMap<LdapSecurityConstants, MessageDigest>> DIGESTS =
+        ThreadLocal.withInitial( () -> new EnumMap<>( LdapSecurityConstants.class ) );
+
+    /** The PBKDF2 SecretKeyFactory instance, per thread */
+    private static final ThreadLocal<SecretKeyFactory> PBKDF2_FACTORY = new ThreadLocal<>();
+
     private PasswordUtil()
     {
     }
@@ -198,13 +212,13 @@ public final class PasswordUtil
             case HASH_METHOD_SMD5:
                 // we use 8 byte salt always except for "crypt" which needs 2 byte salt
                 salt = new byte[8];
-                new SecureRandom().nextBytes( salt );
+                RANDOM.nextBytes( salt );
                 break;
 
             case HASH_METHOD_PKCS5S2:
                 // we use 16 byte salt for PKCS5S2
                 salt = new byte[16];
-                new SecureRandom().nextBytes( salt );
+                RANDOM.nextBytes( salt );
                 break;
 
             case HASH_METHOD_CRYPT:
@@ -269,6 +283,39 @@ public final class PasswordUtil
     }
 
 
+    /**
+     * Creates the hashed passwords of many credentials, in parallel, using the common
+     * fork-join pool. This is useful when migrating a whole directory to a new algorithm,
+     * as each credentials is hashed independently of the others.
+     *
+     * @see #createStoragePassword(byte[], LdapSecurityConstants)
+     *
+     * @param credentials the plain text passwords
+     * @param algorithm the hashing algorithm to be applied
+     * @return the passwords after hashing with the given algorithm, in the same order as the
+     * given credentials
+     */
+    public static List<byte[]> createStoragePasswords( Collection<byte[]> credentials,
+        LdapSecurityConstants algorithm )
+    {
+        if ( credentials.size() < 2 )
+        {
+            List<byte[]> hashed = new ArrayList<>( credentials.size() );
+
+            for ( byte[] credential : credentials )
+            {
+                hashed.add( createStoragePassword( credential, algorithm ) );
+            }
+
+            return hashed;
+        }
+
+        return credentials.parallelStream()
+            .map( credential -> createStoragePassword( credential, algorithm ) )
+            .collect( Collectors.toList() );
+    }
+
+
     /**
      * 
      * Compare the credentials.
@@ -354,7 +401,7 @@ public final class PasswordUtil
      * @param stored The stored password
      * @return <tt>true</tt> if the compared passwords are equal
      */
-    private static boolean compareBytes( byte[] provided, byte[] stored )
+    static boolean compareBytes( byte[] provided, byte[] stored )
     {
         if ( stored == null )
         {
@@ -454,15 +501,22 @@ public final class PasswordUtil
      */
     private static byte[] digest( LdapSecurityConstants algorithm, byte[] password, byte[] salt )
     {
-        MessageDigest digest;
+        // The MessageDigest instances are reused by the thread, they are reset after each digest() call
+        EnumMap<LdapSecurityConstants, MessageDigest> digests = DIGESTS.get();
+        MessageDigest digest = digests.get( algorithm );
 
-        try
-        {
-            digest = MessageDigest.getInstance( algorithm.getAlgorithm() );
-        }
-        catch ( NoSuchAlgorithmException e1 )
+        if ( digest == null )
         {
-            return null;
+            try
+            {
+                digest = MessageDigest.getInstance( algorithm.getAlgorithm() );
+            }
+            catch ( NoSuchAlgorithmException e1 )
+            {
+                return null;
+            }
+
+            digests.put( algorithm, digest );
         }
 
         if ( salt != null )
@@ -611,23 +665,10 @@ public final class PasswordUtil
      */
     public static boolean isPwdExpired( String pwdChangedZtime, int pwdMaxAgeSec, TimeProvider timeProvider )
     {
-        Date pwdChangeDate = DateUtils.getDate( pwdChangedZtime );
-
         //DIRSERVER-1735
-        long time = pwdMaxAgeSec * 1000L;
-        time += pwdChangeDate.getTime();
+        long expiryTime = DateUtils.getTime( pwdChangedZtime ) + pwdMaxAgeSec * 1000L;
 
-        Date expiryDate = DateUtils.getDate( DateUtils.getGeneralizedTime( time ) );
-        Date now = DateUtils.getDate( DateUtils.getGeneralizedTime( timeProvider ) );
-
-        boolean expired = false;
-
-        if ( expiryDate.equals( now ) || expiryDate.before( now ) )
-        {
-            expired = true;
-        }
-
-        return expired;
+        return expiryTime <= timeProvider.currentIimeMillis();
     }
 
 
@@ -646,7 +687,14 @@ public final class PasswordUtil
     {
         try
         {
-            SecretKeyFactory sk = SecretKeyFactory.getInstance( algorithm.getAlgorithm() );
+            SecretKeyFactory sk = PBKDF2_FACTORY.get();
+
+            if ( sk == null )
+            {
+                sk = SecretKeyFactory.getInstance( algorithm.getAlgorithm() );
+                PBKDF2_FACTORY.set( sk );
+            }
+
             char[] password = Strings.utf8ToString( credentials ).toCharArray();
             KeySpec keySpec = new PBEKeySpec( password, salt, 10000, PKCS5S2_LENGTH * 8 );
             Key key = sk.generateSecret( keySpec );
@@ -690,10 +738,10 @@ public final class PasswordUtil
     private static byte[] generateCryptSalt( int length )
     {
         byte[] salt = new byte[length];
-        SecureRandom sr = new SecureRandom();
+
         for ( int i = 0; i < salt.length; i++ )
         {
-            salt[i] = CRYPT_SALT_CHARS[sr.nextInt( CRYPT_SALT_CHARS.length )];
+            salt[i] = CRYPT_SALT_CHARS[RANDOM.nextInt( CRYPT_SALT_CHARS.length )];
         }
         
         return salt;
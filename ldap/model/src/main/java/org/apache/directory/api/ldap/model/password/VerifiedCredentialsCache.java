@@ -0,0 +1,258 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+
+package org.apache.directory.api.ldap.model.password;
+
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+
+/**
+ * A bounded cache of recently verified credentials. Verifying a password hashed with
+ * PKCS5S2 or BCrypt is deliberately expensive : when the same users bind again and again,
+ * this cache remembers the credentials that have already been successfully compared to
+ * the stored password, so that the key derivation is not computed again.
+ * <p>
+ * The cache never contains the plain text credentials : only a HMAC of them, computed with
+ * a random key created for each cache instance, is kept, along with the stored password and
+ * the <em>pwdChangedTime</em> value it was verified against. A cached credential is used only
+ * if both of those values are unchanged, and all the comparisons are done in constant time.
+ * Failed comparisons are never cached.
+ * <p>
+ * Here is an example :
+ * <pre>
+ * VerifiedCredentialsCache cache = new VerifiedCredentialsCache( 10_000, Duration.ofMinutes( 10 ) );
+ * ...
+ * boolean valid = cache.compareCredentials( entry.getDn().getNormName(), bindPassword,
+ *     entry.get( "userPassword" ).getBytes(), entry.get( "pwdChangedTime" ).getString() );
+ * </pre>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class VerifiedCredentialsCache
+{
+    /** The default maximum number of cached credentials */
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+
+    /** The algorithm used to fingerprint the received credentials */
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    /** The cached credentials, per key */
+    private final Cache<String, VerifiedCredentials> cache;
+
+    /** The key used to fingerprint the credentials */
+    private final SecretKeySpec fingerprintKey;
+
+    /** The Mac instances, per thread */
+    private final ThreadLocal<Mac> macs = new ThreadLocal<>();
+
+    /** The number of credentials found in the cache */
+    private final LongAdder hitCount = new LongAdder();
+
+    /** The number of credentials not found in the cache */
+    private final LongAdder missCount = new LongAdder();
+
+
+    /**
+     * The credentials which have been successfully compared to a stored password
+     */
+    private static final class VerifiedCredentials
+    {
+        /** The stored password */
+        private final byte[] storedCredentials;
+
+        /** The pwdChangedTime value when the credentials were verified */
+        private final String pwdChangedTime;
+
+        /** The HMAC of the received credentials */
+        private final byte[] fingerprint;
+
+
+        private VerifiedCredentials( byte[] storedCredentials, String pwdChangedTime, byte[] fingerprint )
+        {
+            this.storedCredentials = storedCredentials;
+            this.pwdChangedTime = pwdChangedTime;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+
+    /**
+     * Creates a new VerifiedCredentialsCache, which can contain up to {@link #DEFAULT_MAX_SIZE}
+     * credentials, which never expire
+     */
+    public VerifiedCredentialsCache()
+    {
+        this( DEFAULT_MAX_SIZE, null );
+    }
+
+
+    /**
+     * Creates a new VerifiedCredentialsCache
+     *
+     * @param maxSize The maximum number of cached credentials
+     * @param expiry The duration after which the cached credentials are verified again, or null
+     * if they never expire
+     */
+    public VerifiedCredentialsCache( int maxSize, Duration expiry )
+    {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().maximumSize( maxSize ).executor( Runnable::run );
+
+        if ( expiry != null )
+        {
+            builder.expireAfterWrite( expiry );
+        }
+
+        cache = builder.build();
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes( key );
+        fingerprintKey = new SecretKeySpec( key, HMAC_ALGORITHM );
+    }
+
+
+    /**
+     * Compares the received credentials with the stored password, like
+     * {@link PasswordUtil#compareCredentials(byte[], byte[])} does, unless the same credentials
+     * have already been successfully compared to the same stored password.
+     *
+     * @param key The key the credentials are cached with, typically the normalized Dn of the entry
+     * @param receivedCredentials the credentials provided by user
+     * @param storedCredentials the credentials stored in the server
+     * @param pwdChangedTime The entry's pwdChangedTime value, or null if it has none
+     * @return true if they are equal, false otherwise
+     */
+    public boolean compareCredentials( String key, byte[] receivedCredentials, byte[] storedCredentials,
+        String pwdChangedTime )
+    {
+        if ( ( receivedCredentials == null ) || ( storedCredentials == null ) )
+        {
+            return PasswordUtil.compareCredentials( receivedCredentials, storedCredentials );
+        }
+
+        byte[] fingerprint = fingerprint( receivedCredentials );
+        VerifiedCredentials verified = cache.getIfPresent( key );
+
+        if ( ( verified != null ) && Objects.equals( verified.pwdChangedTime, pwdChangedTime )
+            && PasswordUtil.compareBytes( storedCredentials, verified.storedCredentials )
+            && PasswordUtil.compareBytes( fingerprint, verified.fingerprint ) )
+        {
+            hitCount.increment();
+
+            return true;
+        }
+
+        missCount.increment();
+
+        if ( PasswordUtil.compareCredentials( receivedCredentials, storedCredentials ) )
+        {
+            cache.put( key, new VerifiedCredentials( storedCredentials.clone(), pwdChangedTime, fingerprint ) );
+
+            return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Computes the HMAC of some credentials, reusing the thread's Mac instance
+     */
+    private byte[] fingerprint( byte[] credentials )
+    {
+        Mac mac = macs.get();
+
+        if ( mac == null )
+        {
+            try
+            {
+                mac = Mac.getInstance( HMAC_ALGORITHM );
+                mac.init( fingerprintKey );
+            }
+            catch ( GeneralSecurityException e )
+            {
+                throw new RuntimeException( e );
+            }
+
+            macs.set( mac );
+        }
+
+        // doFinal() resets the Mac, which can be used again
+        return mac.doFinal( credentials );
+    }
+
+
+    /**
+     * Removes the credentials cached with a key, for instance when the password has been
+     * modified or the entry has been deleted.
+     *
+     * @param key The key the credentials are cached with
+     */
+    public void invalidate( String key )
+    {
+        cache.invalidate( key );
+    }
+
+
+    /**
+     * Removes all the cached credentials.
+     */
+    public void clear()
+    {
+        cache.invalidateAll();
+    }
+
+
+    /**
+     * @return The approximate number of cached credentials
+     */
+    public long size()
+    {
+        return cache.estimatedSize();
+    }
+
+
+    /**
+     * @return The number of comparisons which have used the cached credentials
+     */
+    public long getHitCount()
+    {
+        return hitCount.sum();
+    }
+
+
+    /**
+     * @return The number of comparisons which have not used the cached credentials
+     */
+    public long getMissCount()
+    {
+        return missCount.sum();
+    }
+}
@@ -732,6 +732,51 @@ public interface SchemaManager
     boolean delete( SchemaObject schemaObject ) throws LdapException;
 
 
+    /**
+     * Applies a set of changes at once : the deleted SchemaObjects are first unregistered,
+     * then the added SchemaObjects are registered. In Strict mode, the registries will be
+     * updated only if all the changes are valid, and the other threads will see either
+     * none or all of them. If something went wrong during this operation, the
+     * SchemaManager.getErrors() will give the list of generated errors.
+     * <br>
+     * The default implementation applies the changes one by one, using the {@link #delete(SchemaObject)}
+     * and {@link #add(SchemaObject)} methods, and stops at the first failing change : the previous
+     * changes are kept, and may be seen by the other threads.
+     *
+     * @param deleted The SchemaObjects to unregister, may be null
+     * @param added The SchemaObjects to register, may be null
+     * @return true if all the changes have been made, false if there were some errors
+     * @throws LdapException if one of the operations is not supported
+     */
+    default boolean apply( Collection<? extends SchemaObject> deleted, Collection<? extends SchemaObject> added )
+        throws LdapException
+    {
+        if ( deleted != null )
+        {
+            for ( SchemaObject schemaObject : deleted )
+            {
+                if ( !delete( schemaObject ) )
+                {
+                    return false;
+                }
+            }
+        }
+
+        if ( added != null )
+        {
+            for ( SchemaObject schemaObject : added )
+            {
+                if ( !add( schemaObject ) )
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+
     /**
      * Removes the registered attributeType from the attributeTypeRegistry 
      * 
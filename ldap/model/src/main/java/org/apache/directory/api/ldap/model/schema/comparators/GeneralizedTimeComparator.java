@@ -23,6 +23,7 @@ package org.apache.directory.api.ldap.model.schema.comparators;
 import java.text.ParseException;
 
 import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.schema.LdapComparator;
 import org.apache.directory.api.util.GeneralizedTime;
 import org.slf4j.Logger;
@@ -34,7 +35,7 @@ import org.slf4j.LoggerFactory;
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
-public class GeneralizedTimeComparator extends LdapComparator<String>
+public class GeneralizedTimeComparator extends LdapComparator<Object>
 {
     /** The serial version UID */
     private static final long serialVersionUID = 2L;
@@ -58,8 +59,10 @@ public class GeneralizedTimeComparator extends LdapComparator<String>
     /**
      * {@inheritDoc}
      */
-    public int compare( String backendValue, String assertValue )
+    @Override
+    public int compare( Object backendValue, Object assertValue )
     {
+        // The value can be a String or a Value
         if ( LOG.isDebugEnabled() )
         {
             LOG.debug( I18n.msg( I18n.MSG_13753_COMPARING_GENERALIZED_TIME_ORDERING, backendValue, assertValue ) );
@@ -81,29 +84,31 @@ public class GeneralizedTimeComparator extends LdapComparator<String>
             return backendValue == null ? -1 : 1;
         }
 
-        // Both objects must be stored as String for generalized tim.
-        // But we need to normalize the values first.
-        GeneralizedTime backendTime;
-        try
-        {
-            backendTime = new GeneralizedTime( backendValue );
-        }
-        catch ( ParseException pe )
-        {
-            throw new IllegalArgumentException( I18n.err( I18n.ERR_13724_INVALID_VALUE, backendValue ), pe );
-        }
+        // Compare the times, without creating any GeneralizedTime instance.
+        return Long.compare( getEpochMicros( backendValue ), getEpochMicros( assertValue ) );
+    }
+
 
-        GeneralizedTime assertTime;
-        
+    /**
+     * Gets the time of a value, in microseconds since the epoch. A Value keeps
+     * its time once parsed, so it is only parsed the first time it is compared.
+     */
+    private static long getEpochMicros( Object value )
+    {
         try
         {
-            assertTime = new GeneralizedTime( assertValue );
+            if ( value instanceof Value )
+            {
+                return ( ( Value ) value ).getEpochMicros();
+            }
+            else
+            {
+                return GeneralizedTime.parseEpochMicros( ( String ) value );
+            }
         }
         catch ( ParseException pe )
         {
-            throw new IllegalArgumentException( I18n.err( I18n.ERR_13724_INVALID_VALUE, assertValue ), pe );
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_13724_INVALID_VALUE, value ), pe );
         }
-
-        return backendTime.compareTo( assertTime );
     }
 }
@@ -30,9 +30,6 @@ import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.schema.Normalizer;
 import org.apache.directory.api.ldap.model.schema.PrepareString;
 import org.apache.directory.api.util.GeneralizedTime;
-import org.apache.directory.api.util.GeneralizedTime.Format;
-import org.apache.directory.api.util.GeneralizedTime.FractionDelimiter;
-import org.apache.directory.api.util.GeneralizedTime.TimeZoneFormat;
 
 
 /**
@@ -91,9 +88,7 @@ public class GeneralizedTimeNormalizer extends Normalizer
         
         try
         {
-            GeneralizedTime time = new GeneralizedTime( value );
-            return time.toGeneralizedTime( Format.YEAR_MONTH_DAY_HOUR_MIN_SEC_FRACTION,
-                FractionDelimiter.DOT, 3, TimeZoneFormat.Z );
+            return GeneralizedTime.formatEpochMicros( GeneralizedTime.parseEpochMicros( value ) );
         }
         catch ( ParseException pe )
         {
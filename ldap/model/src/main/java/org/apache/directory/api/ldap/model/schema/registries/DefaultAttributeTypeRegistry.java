@@ -23,6 +23,7 @@ package org.apache.directory.api.ldap.model.schema.registries;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -59,6 +60,9 @@ public class DefaultAttributeTypeRegistry extends DefaultSchemaObjectRegistry<At
     /** maps OIDs to a Set of descendants for that OID */
     private Map<String, Set<AttributeType>> oidToDescendantSet;
 
+    /** The descendant sets a snapshot has copied, null if this registry is not a snapshot */
+    private Set<Set<AttributeType>> ownedDescendants;
+
 
     /**
      * Creates a new default AttributeTypeRegistry instance.
@@ -175,15 +179,10 @@ public class DefaultAttributeTypeRegistry extends DefaultSchemaObjectRegistry<At
             throw new LdapSchemaException( LdapSchemaExceptionCodes.AT_CYCLE_TYPE_HIERARCHY );
         }
 
-        // Get the ancestor's descendant, if any
-        Set<AttributeType> descendants = oidToDescendantSet.get( ancestor.getOid() );
-
-        // Initialize the descendant Set to store the descendants for the attributeType
-        if ( descendants == null )
-        {
-            descendants = new HashSet<>( 1 );
-            oidToDescendantSet.put( ancestor.getOid(), descendants );
-        }
+        // Get the ancestor's descendant, if any, or initialize the descendant Set to store
+        // the descendants for the attributeType
+        Set<AttributeType> descendants = getWritableDescendants( ancestor.getOid(),
+            oidToDescendantSet.get( ancestor.getOid() ) );
 
         // Add the current type as a descendant
         descendants.add( attributeType );
@@ -207,6 +206,7 @@ public class DefaultAttributeTypeRegistry extends DefaultSchemaObjectRegistry<At
 
         if ( descendants != null )
         {
+            descendants = getWritableDescendants( ancestor.getOid(), descendants );
             descendants.remove( attributeType );
 
             if ( descendants.isEmpty() )
@@ -333,6 +333,65 @@ public class DefaultAttributeTypeRegistry extends DefaultSchemaObjectRegistry<At
     }
 
 
+    /**
+     * Gets the descendants of an ancestor, which can be modified, creating them if they don't
+     * exist. A snapshot shares the descendants with the original registry : they are copied,
+     * once, the first time they are modified.
+     *
+     * @param ancestorOid The ancestor's OID
+     * @param descendants The ancestor's descendants, or null if it has none
+     * @return The descendants which can be modified
+     */
+    private Set<AttributeType> getWritableDescendants( String ancestorOid, Set<AttributeType> descendants )
+    {
+        Set<AttributeType> writable;
+
+        if ( descendants == null )
+        {
+            writable = new HashSet<>( 1 );
+        }
+        else if ( ( ownedDescendants != null ) && !ownedDescendants.contains( descendants ) )
+        {
+            writable = new HashSet<>( descendants );
+        }
+        else
+        {
+            return descendants;
+        }
+
+        if ( ownedDescendants != null )
+        {
+            ownedDescendants.add( writable );
+        }
+
+        oidToDescendantSet.put( ancestorOid, writable );
+
+        return writable;
+    }
+
+
+    /**
+     * Creates a copy of this registry which shares its SchemaObjects. Only the maps are
+     * copied, so that the copy can be modified without modifying this registry.
+     *
+     * @return The copied registry
+     */
+    public DefaultAttributeTypeRegistry snapshot()
+    {
+        DefaultAttributeTypeRegistry snapshot = new DefaultAttributeTypeRegistry();
+
+        // Share the base data
+        snapshot.share( this );
+
+        // The descendants sets are shared, they will be copied when modified
+        snapshot.oidNormalizerMap = new HashMap<>( oidNormalizerMap );
+        snapshot.oidToDescendantSet = new HashMap<>( oidToDescendantSet );
+        snapshot.ownedDescendants = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+        return snapshot;
+    }
+
+
     /**
      * {@inheritDoc}
      */
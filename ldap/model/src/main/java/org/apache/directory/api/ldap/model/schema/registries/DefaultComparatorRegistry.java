@@ -95,6 +95,23 @@ public class DefaultComparatorRegistry extends DefaultSchemaObjectRegistry<LdapC
     }
 
 
+    /**
+     * Creates a copy of this registry which shares its SchemaObjects. Only the maps are
+     * copied, so that the copy can be modified without modifying this registry.
+     *
+     * @return The copied registry
+     */
+    public DefaultComparatorRegistry snapshot()
+    {
+        DefaultComparatorRegistry snapshot = new DefaultComparatorRegistry();
+
+        // Share the base data
+        snapshot.share( this );
+
+        return snapshot;
+    }
+
+
     /**
      * @see Object#toString()
      */
@@ -250,4 +250,22 @@ public class DefaultDitStructureRuleRegistry extends DefaultSchemaObjectRegistry
 
         return copy;
     }
+
+
+    /**
+     * Creates a copy of this registry which shares its SchemaObjects. Only the maps are
+     * copied, so that the copy can be modified without modifying this registry.
+     *
+     * @return The copied registry
+     */
+    public DefaultDitStructureRuleRegistry snapshot()
+    {
+        DefaultDitStructureRuleRegistry snapshot = new DefaultDitStructureRuleRegistry();
+
+        // Share the base data
+        snapshot.share( this );
+        snapshot.byRuleId = new HashMap<>( byRuleId );
+
+        return snapshot;
+    }
 }
@@ -54,4 +54,21 @@ public class DefaultMatchingRuleRegistry extends DefaultSchemaObjectRegistry<Mat
 
         return copy;
     }
+
+
+    /**
+     * Creates a copy of this registry which shares its SchemaObjects. Only the maps are
+     * copied, so that the copy can be modified without modifying this registry.
+     *
+     * @return The copied registry
+     */
+    public DefaultMatchingRuleRegistry snapshot()
+    {
+        DefaultMatchingRuleRegistry snapshot = new DefaultMatchingRuleRegistry();
+
+        // Share the base data
+        snapshot.share( this );
+
+        return snapshot;
+    }
 }
@@ -57,4 +57,21 @@ public class DefaultMatchingRuleUseRegistry extends DefaultSchemaObjectRegistry<
 
         return copy;
     }
+
+
+    /**
+     * Creates a copy of this registry which shares its SchemaObjects. Only the maps are
+     * copied, so that the copy can be modified without modifying this registry.
+     *
+     * @return The copied registry
+     */
+    public DefaultMatchingRuleUseRegistry snapshot()
+    {
+        DefaultMatchingRuleUseRegistry snapshot = new DefaultMatchingRuleUseRegistry();
+
+        // Share the base data
+        snapshot.share( this );
+
+        return snapshot;
+    }
 }
@@ -54,4 +54,21 @@ public class DefaultNameFormRegistry extends DefaultSchemaObjectRegistry<NameFor
 
         return copy;
     }
+
+
+    /**
+     * Creates a copy of this registry which shares its SchemaObjects. Only the maps are
+     * copied, so that the copy can be modified without modifying this registry.
+     *
+     * @return The copied registry
+     */
+    public DefaultNameFormRegistry snapshot()
+    {
+        DefaultNameFormRegistry snapshot = new DefaultNameFormRegistry();
+
+        // Share the base data
+        snapshot.share( this );
+
+        return snapshot;
+    }
 }
@@ -96,6 +96,23 @@ public class DefaultNormalizerRegistry extends DefaultSchemaObjectRegistry<Norma
     }
 
 
+    /**
+     * Creates a copy of this registry which shares its SchemaObjects. Only the maps are
+     * copied, so that the copy can be modified without modifying this registry.
+     *
+     * @return The copied registry
+     */
+    public DefaultNormalizerRegistry snapshot()
+    {
+        DefaultNormalizerRegistry snapshot = new DefaultNormalizerRegistry();
+
+        // Share the base data
+        snapshot.share( this );
+
+        return snapshot;
+    }
+
+
     /**
      * @see Object#toString()
      */
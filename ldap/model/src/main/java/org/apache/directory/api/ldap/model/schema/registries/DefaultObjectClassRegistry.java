@@ -23,6 +23,7 @@ package org.apache.directory.api.ldap.model.schema.registries;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +47,9 @@ public class DefaultObjectClassRegistry extends DefaultSchemaObjectRegistry<Obje
     /** maps OIDs to a Set of descendants for that OID */
     private Map<String, Set<ObjectClass>> oidToDescendants;
 
+    /** The descendant sets a snapshot has copied, null if this registry is not a snapshot */
+    private Set<Set<ObjectClass>> ownedDescendants;
+
 
     /**
      * Creates a new default ObjectClassRegistry instance.
@@ -117,15 +121,10 @@ public class DefaultObjectClassRegistry extends DefaultSchemaObjectRegistry<Obje
 
         for ( ObjectClass ancestor : ancestors )
         {
-            // Get the ancestor's descendant, if any
-            Set<ObjectClass> descendants = oidToDescendants.get( ancestor.getOid() );
-
-            // Initialize the descendant Set to store the descendants for the attributeType
-            if ( descendants == null )
-            {
-                descendants = new HashSet<>( 1 );
-                oidToDescendants.put( ancestor.getOid(), descendants );
-            }
+            // Get the ancestor's descendant, if any, or initialize the descendant Set to store
+            // the descendants for the ObjectClass
+            Set<ObjectClass> descendants = getWritableDescendants( ancestor.getOid(),
+                oidToDescendants.get( ancestor.getOid() ) );
 
             // Add the current ObjectClass as a descendant
             descendants.add( objectClass );
@@ -163,6 +162,7 @@ public class DefaultObjectClassRegistry extends DefaultSchemaObjectRegistry<Obje
 
             if ( descendants != null )
             {
+                descendants = getWritableDescendants( ancestor.getOid(), descendants );
                 descendants.remove( attributeType );
 
                 if ( descendants.isEmpty() )
@@ -226,6 +226,64 @@ public class DefaultObjectClassRegistry extends DefaultSchemaObjectRegistry<Obje
     }
 
 
+    /**
+     * Gets the descendants of an ancestor, which can be modified, creating them if they don't
+     * exist. A snapshot shares the descendants with the original registry : they are copied,
+     * once, the first time they are modified.
+     *
+     * @param ancestorOid The ancestor's OID
+     * @param descendants The ancestor's descendants, or null if it has none
+     * @return The descendants which can be modified
+     */
+    private Set<ObjectClass> getWritableDescendants( String ancestorOid, Set<ObjectClass> descendants )
+    {
+        Set<ObjectClass> writable;
+
+        if ( descendants == null )
+        {
+            writable = new HashSet<>( 1 );
+        }
+        else if ( ( ownedDescendants != null ) && !ownedDescendants.contains( descendants ) )
+        {
+            writable = new HashSet<>( descendants );
+        }
+        else
+        {
+            return descendants;
+        }
+
+        if ( ownedDescendants != null )
+        {
+            ownedDescendants.add( writable );
+        }
+
+        oidToDescendants.put( ancestorOid, writable );
+
+        return writable;
+    }
+
+
+    /**
+     * Creates a copy of this registry which shares its SchemaObjects. Only the maps are
+     * copied, so that the copy can be modified without modifying this registry.
+     *
+     * @return The copied registry
+     */
+    public DefaultObjectClassRegistry snapshot()
+    {
+        DefaultObjectClassRegistry snapshot = new DefaultObjectClassRegistry();
+
+        // Share the base data
+        snapshot.share( this );
+
+        // The descendants sets are shared, they will be copied when modified
+        snapshot.oidToDescendants = new HashMap<>( oidToDescendants );
+        snapshot.ownedDescendants = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+        return snapshot;
+    }
+
+
     /**
      * {@inheritDoc}
      */
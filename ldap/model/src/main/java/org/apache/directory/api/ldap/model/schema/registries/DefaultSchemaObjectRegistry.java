@@ -519,6 +519,21 @@ public String getOidByName( String name ) throws LdapException
     }
 
 
+    /**
+     * Fills this registry with the content of another registry, sharing the SchemaObjects.
+     * Only the maps are copied, so that the two registries can be modified separately.
+     *
+     * @param original The SchemaObject registry to share
+     */
+    protected void share( DefaultSchemaObjectRegistry<T> original )
+    {
+        byName = new HashMap<>( original.byName );
+        oidRegistry = original.oidRegistry.snapshot();
+        isRelaxed = original.isRelaxed;
+        errorHandler = original.errorHandler;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -96,6 +96,23 @@ public class DefaultSyntaxCheckerRegistry extends DefaultSchemaObjectRegistry<Sy
     }
 
 
+    /**
+     * Creates a copy of this registry which shares its SchemaObjects. Only the maps are
+     * copied, so that the copy can be modified without modifying this registry.
+     *
+     * @return The copied registry
+     */
+    public DefaultSyntaxCheckerRegistry snapshot()
+    {
+        DefaultSyntaxCheckerRegistry snapshot = new DefaultSyntaxCheckerRegistry();
+
+        // Share the base data
+        snapshot.share( this );
+
+        return snapshot;
+    }
+
+
     /**
      * @see Object#toString()
      */
@@ -343,6 +343,22 @@ public class OidRegistry<T extends SchemaObject> implements Iterable<T>
     }
 
 
+    /**
+     * Copy the OidRegistry, sharing the contained values
+     *
+     * @return A new OidRegistry instance
+     */
+    public OidRegistry<T> snapshot()
+    {
+        OidRegistry<T> snapshot = new OidRegistry<>();
+        snapshot.byOid = new HashMap<>( byOid );
+        snapshot.isRelaxed = isRelaxed;
+        snapshot.errorHandler = errorHandler;
+
+        return snapshot;
+    }
+
+
     /**
      * @return The number of stored OIDs
      */
@@ -21,12 +21,15 @@ package org.apache.directory.api.ldap.model.schema.registries;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.UnaryOperator;
 
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.model.constants.MetaSchemaConstants;
@@ -50,6 +53,7 @@ import org.apache.directory.api.ldap.model.schema.Normalizer;
 import org.apache.directory.api.ldap.model.schema.ObjectClass;
 import org.apache.directory.api.ldap.model.schema.SchemaErrorHandler;
 import org.apache.directory.api.ldap.model.schema.SchemaObject;
+import org.apache.directory.api.ldap.model.schema.SchemaObjectType;
 import org.apache.directory.api.ldap.model.schema.SchemaObjectWrapper;
 import org.apache.directory.api.ldap.model.schema.SyntaxChecker;
 import org.apache.directory.api.ldap.model.schema.registries.helper.AttributeTypeHelper;
@@ -128,6 +132,12 @@ public class Registries implements SchemaLoaderListener, Cloneable
 
     private SchemaErrorHandler errorHandler;
 
+    /** A flag set when this Registries is a snapshot, sharing its content with the original Registries */
+    private boolean shared;
+
+    /** The registries, maps and sets a snapshot has copied, and can modify */
+    private Set<Object> owned;
+
     /** Two flags for RELAXED and STRICT modes */
     /** The strict mode */
     public static final boolean STRICT = false;
@@ -512,13 +522,49 @@ public class Registries implements SchemaLoaderListener, Cloneable
         // Check the ObjectClasses
         for ( ObjectClass objectClass : objectClassRegistry )
         {
-            resolve( objectClass );
+            resolve( objectClass, true );
         }
 
         // Step 6-9 aren't yet defined
     }
 
 
+    /**
+     * Attempts to resolve the dependent schema objects of a single SchemaObject. This
+     * is enough when the SchemaObject has been added to consistent registries, as the
+     * other SchemaObjects can't reference it.
+     *
+     * @param schemaObject The SchemaObject to check
+     */
+    public void checkRefInteg( SchemaObject schemaObject )
+    {
+        switch ( schemaObject.getObjectType() )
+        {
+            case LDAP_SYNTAX:
+                resolve( ( LdapSyntax ) schemaObject );
+                break;
+
+            case MATCHING_RULE:
+                resolve( ( MatchingRule ) schemaObject );
+                break;
+
+            case ATTRIBUTE_TYPE:
+                resolve( ( AttributeType ) schemaObject );
+                break;
+
+            case OBJECT_CLASS:
+                // The ObjectClass references have been built when it was added, and its
+                // superiors are already resolved
+                resolve( ( ObjectClass ) schemaObject, false );
+                break;
+
+            default:
+                // Nothing to check
+                break;
+        }
+    }
+
+
     /**
      * Add the SchemaObjectReferences. This method does nothing, it's just
      * a catch all. The other methods will be called for each specific
@@ -653,6 +699,8 @@ public class Registries implements SchemaLoaderListener, Cloneable
      */
     public void buildReference( SchemaObject schemaObject )
     {
+        makeWritable( schemaObject.getObjectType() );
+
         try
         {
             switch ( schemaObject.getObjectType() )
@@ -718,6 +766,8 @@ public class Registries implements SchemaLoaderListener, Cloneable
      */
     public void removeReference( SchemaObject schemaObject )
     {
+        makeWritable( schemaObject.getObjectType() );
+
         try
         {
             switch ( schemaObject.getObjectType() )
@@ -1211,7 +1261,7 @@ public class Registries implements SchemaLoaderListener, Cloneable
     }
 
 
-    private void resolve( ObjectClass objectClass )
+    private void resolve( ObjectClass objectClass, boolean build )
     {
         // This set is used to avoid having more than one error
         // for an ObjectClass. It's mandatory when processing
@@ -1222,7 +1272,7 @@ public class Registries implements SchemaLoaderListener, Cloneable
         processed.add( objectClass.getOid() );
 
         // Call the recursive method, as we may have superiors to deal with
-        resolveRecursive( objectClass, processed );
+        resolveRecursive( objectClass, processed, build );
 
         // Check that the MAY and MUST AT are consistent (no AT in MAY and in MUST
         // in one of its superior
@@ -1247,7 +1297,7 @@ public class Registries implements SchemaLoaderListener, Cloneable
     }
 
 
-    private void resolveRecursive( ObjectClass objectClass, Set<String> processed )
+    private void resolveRecursive( ObjectClass objectClass, Set<String> processed, boolean build )
     {
         // Process the Superiors, if any
         List<String> superiorOids = objectClass.getSuperiorOids();
@@ -1279,7 +1329,7 @@ public class Registries implements SchemaLoaderListener, Cloneable
             {
                 if ( !processed.contains( superior.getOid() ) )
                 {
-                    resolveRecursive( superior, processed );
+                    resolveRecursive( superior, processed, build );
                     processed.add( objectClass.getOid() );
                 }
                 else
@@ -1325,8 +1375,12 @@ public class Registries implements SchemaLoaderListener, Cloneable
             }
         }
 
-        // All is done for this ObjectClass, let's apply the registries
-        ObjectClassHelper.addToRegistries( objectClass, errorHandler, this );
+        // All is done for this ObjectClass, let's apply the registries, unless the superiors
+        // are already resolved and must not be modified
+        if ( build )
+        {
+            ObjectClassHelper.addToRegistries( objectClass, errorHandler, this );
+        }
     }
 
 
@@ -1360,8 +1414,16 @@ public class Registries implements SchemaLoaderListener, Cloneable
 
         if ( check && ( !errorHandler.wasError() ) )
         {
-            // Check the registries now
-            checkRefInteg();
+            // Check the registries now. When the SchemaObjects are shared, only the added
+            // SchemaObject is checked, the others must not be modified
+            if ( shared && !wasRelaxed )
+            {
+                checkRefInteg( schemaObject );
+            }
+            else
+            {
+                checkRefInteg();
+            }
         }
 
         // Get back to Strict mode
@@ -1393,7 +1455,9 @@ public class Registries implements SchemaLoaderListener, Cloneable
         // Unlink the SchemaObject references
         removeReference( removed );
 
-        if ( !errorHandler.wasError() )
+        // When the SchemaObjects are shared, they must not be modified : the deleted
+        // SchemaObject is not referenced, so they are not impacted by the deletion
+        if ( ( !shared || wasRelaxed ) && !errorHandler.wasError() )
         {
             // Check the registries now
             checkRefInteg();
@@ -1416,7 +1480,8 @@ public class Registries implements SchemaLoaderListener, Cloneable
     @Override
     public void schemaLoaded( Schema schema )
     {
-        this.loadedSchemas.put( Strings.toLowerCaseAscii( schema.getSchemaName() ), schema );
+        loadedSchemas = getWritableMap( loadedSchemas );
+        loadedSchemas.put( Strings.toLowerCaseAscii( schema.getSchemaName() ), schema );
     }
 
 
@@ -1429,7 +1494,8 @@ public class Registries implements SchemaLoaderListener, Cloneable
     @Override
     public void schemaUnloaded( Schema schema )
     {
-        this.loadedSchemas.remove( Strings.toLowerCaseAscii( schema.getSchemaName() ) );
+        loadedSchemas = getWritableMap( loadedSchemas );
+        loadedSchemas.remove( Strings.toLowerCaseAscii( schema.getSchemaName() ) );
     }
 
 
@@ -1508,8 +1574,14 @@ public class Registries implements SchemaLoaderListener, Cloneable
     public Set<SchemaObjectWrapper> addSchema( String schemaName )
     {
         Set<SchemaObjectWrapper> content = new HashSet<>();
+        schemaObjects = getWritableMap( schemaObjects );
         schemaObjects.put( schemaName, content );
 
+        if ( shared )
+        {
+            owned.add( content );
+        }
+
         return content;
     }
 
@@ -1537,6 +1609,8 @@ public class Registries implements SchemaLoaderListener, Cloneable
             return;
         }
 
+        makeWritable( schemaObject.getObjectType() );
+
         try
         {
             // First call the specific registry's register method
@@ -1625,12 +1699,13 @@ public class Registries implements SchemaLoaderListener, Cloneable
         String schemaName = getSchemaName( schemaObject );
 
         // And register the schemaObject within its schema
+        makeWritable( schemaObject.getObjectType() );
+        schemaObjects = getWritableMap( schemaObjects );
         Set<SchemaObjectWrapper> content = schemaObjects.get( schemaName );
 
         if ( content == null )
         {
-            content = new HashSet<>();
-            schemaObjects.put( Strings.toLowerCaseAscii( schemaName ), content );
+            content = getWritableSet( schemaObjects, Strings.toLowerCaseAscii( schemaName ), null );
         }
 
         SchemaObjectWrapper schemaObjectWrapper = new SchemaObjectWrapper( schemaObject );
@@ -1645,6 +1720,7 @@ public class Registries implements SchemaLoaderListener, Cloneable
         else
         {
             // Create the association
+            content = getWritableSet( schemaObjects, schemaName, content );
             content.add( schemaObjectWrapper );
 
             // Update the global OidRegistry if the SchemaObject is not
@@ -1700,6 +1776,8 @@ public class Registries implements SchemaLoaderListener, Cloneable
         String oid = schemaObject.getOid();
 
         // And unregister the schemaObject from its schema
+        makeWritable( schemaObject.getObjectType() );
+        schemaObjects = getWritableMap( schemaObjects );
         Set<SchemaObjectWrapper> content = schemaObjects.get( schemaName );
 
         SchemaObjectWrapper schemaObjectWrapper = new SchemaObjectWrapper( schemaObject );
@@ -1717,6 +1795,7 @@ public class Registries implements SchemaLoaderListener, Cloneable
         else
         {
             // Remove the association
+            content = getWritableSet( schemaObjects, schemaName, content );
             content.remove( schemaObjectWrapper );
 
             // Update the global OidRegistry if the SchemaObject is not
@@ -1765,6 +1844,7 @@ public class Registries implements SchemaLoaderListener, Cloneable
         }
 
         SchemaObject unregistered;
+        makeWritable( schemaObject.getObjectType() );
 
         // First call the specific registry's register method
         switch ( schemaObject.getObjectType() )
@@ -1976,6 +2056,45 @@ public class Registries implements SchemaLoaderListener, Cloneable
     }
 
 
+    /**
+     * Gets a set of SchemaObjectWrapper which can be modified, creating it if it does not exist.
+     * When the SchemaObjects are shared with other Registries, the set may be shared too : it is
+     * then copied, once, and the copy replaces it in the map, which must be writable.
+     *
+     * @param map The map containing the set
+     * @param key The set's key
+     * @param set The set, or null if it does not exist yet
+     * @return A set which can be modified
+     */
+    private <K> Set<SchemaObjectWrapper> getWritableSet( Map<K, Set<SchemaObjectWrapper>> map, K key,
+        Set<SchemaObjectWrapper> set )
+    {
+        Set<SchemaObjectWrapper> writable;
+
+        if ( set == null )
+        {
+            writable = new HashSet<>();
+        }
+        else if ( !isWritable( set ) )
+        {
+            writable = new HashSet<>( set );
+        }
+        else
+        {
+            return set;
+        }
+
+        if ( shared )
+        {
+            owned.add( writable );
+        }
+
+        map.put( key, writable );
+
+        return writable;
+    }
+
+
     /**
      * Add an association between a SchemaObject an the SchemaObject it refers
      *
@@ -1990,13 +2109,9 @@ public class Registries implements SchemaLoaderListener, Cloneable
         }
 
         SchemaObjectWrapper wrapper = new SchemaObjectWrapper( reference );
+        using = getWritableMap( using );
 
-        Set<SchemaObjectWrapper> uses = getUsing( reference );
-
-        if ( uses == null )
-        {
-            uses = new HashSet<>();
-        }
+        Set<SchemaObjectWrapper> uses = getWritableSet( using, wrapper, getUsing( reference ) );
 
         uses.add( new SchemaObjectWrapper( referee ) );
 
@@ -2045,13 +2160,9 @@ public class Registries implements SchemaLoaderListener, Cloneable
         }
 
         SchemaObjectWrapper wrapper = new SchemaObjectWrapper( referee );
+        usedBy = getWritableMap( usedBy );
 
-        Set<SchemaObjectWrapper> uses = getUsedBy( referee );
-
-        if ( uses == null )
-        {
-            uses = new HashSet<>();
-        }
+        Set<SchemaObjectWrapper> uses = getWritableSet( usedBy, wrapper, getUsedBy( referee ) );
 
         uses.add( new SchemaObjectWrapper( reference ) );
 
@@ -2080,10 +2191,12 @@ public class Registries implements SchemaLoaderListener, Cloneable
             return;
         }
 
-        uses.remove( new SchemaObjectWrapper( referee ) );
-
         SchemaObjectWrapper wrapper = new SchemaObjectWrapper( reference );
 
+        using = getWritableMap( using );
+        uses = getWritableSet( using, wrapper, uses );
+        uses.remove( new SchemaObjectWrapper( referee ) );
+
         if ( uses.isEmpty() )
         {
             using.remove( wrapper );
@@ -2115,10 +2228,12 @@ public class Registries implements SchemaLoaderListener, Cloneable
             return;
         }
 
-        uses.remove( new SchemaObjectWrapper( reference ) );
-
         SchemaObjectWrapper wrapper = new SchemaObjectWrapper( referee );
 
+        usedBy = getWritableMap( usedBy );
+        uses = getWritableSet( usedBy, wrapper, uses );
+        uses.remove( new SchemaObjectWrapper( reference ) );
+
         if ( uses.isEmpty() )
         {
             usedBy.remove( wrapper );
@@ -2595,6 +2710,8 @@ public class Registries implements SchemaLoaderListener, Cloneable
         clone.objectClassRegistry = objectClassRegistry.copy();
         clone.syntaxCheckerRegistry = syntaxCheckerRegistry.copy();
         clone.errorHandler = errorHandler;
+        clone.shared = false;
+        clone.owned = null;
 
         // Store all the SchemaObjects into the globalOid registry
         for ( AttributeType attributeType : clone.attributeTypeRegistry )
@@ -2696,6 +2813,205 @@ public class Registries implements SchemaLoaderListener, Cloneable
     }
 
 
+    /**
+     * Creates a snapshot of the Registries. Unlike the {@link #clone()} method, nothing is
+     * copied : the snapshot shares the registries, the maps and the SchemaObjects with this
+     * Registries. A registry, a map or a set is only copied the first time the snapshot
+     * modifies it, so a change applied using the {@link #add(SchemaObject, boolean)} and
+     * {@link #delete(SchemaObject)} methods only copies what it touches, without any impact
+     * on this Registries.
+     * <br>
+     * The added SchemaObjects are only checked against the snapshot, as the shared SchemaObjects
+     * are already resolved. This Registries must not be modified while the snapshot is in use,
+     * and the {@link #clear()} method must not be called on a snapshot, as it would clear the
+     * shared SchemaObjects.
+     *
+     * @return The snapshot
+     */
+    public Registries snapshot()
+    {
+        Registries snapshot;
+
+        try
+        {
+            snapshot = ( Registries ) super.clone();
+        }
+        catch ( CloneNotSupportedException cnse )
+        {
+            // Can't happen, we are Cloneable
+            throw new IllegalStateException( cnse.getMessage(), cnse );
+        }
+
+        snapshot.shared = true;
+        snapshot.owned = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+        return snapshot;
+    }
+
+
+    /**
+     * Tells if a registry, a map or a set can be modified : a snapshot can only modify what
+     * it has copied.
+     *
+     * @param structure The registry, map or set to check
+     * @return <code>true</code> if it can be modified
+     */
+    private boolean isWritable( Object structure )
+    {
+        return !shared || owned.contains( structure );
+    }
+
+
+    /**
+     * Gets a map which can be modified. When this Registries is a snapshot, the map is
+     * copied the first time it is modified.
+     *
+     * @param map The map to modify
+     * @return The map, or its copy
+     */
+    private <K, V> Map<K, V> getWritableMap( Map<K, V> map )
+    {
+        if ( isWritable( map ) )
+        {
+            return map;
+        }
+
+        Map<K, V> writable = new HashMap<>( map );
+        owned.add( writable );
+
+        return writable;
+    }
+
+
+    /**
+     * Gets a registry which can be modified. When this Registries is a snapshot, the registry
+     * is copied the first time it is modified, and the copy gets the current mode and error handler.
+     *
+     * @param registry The registry to modify
+     * @param copier The function creating a snapshot of the registry
+     * @return The registry, or its copy
+     */
+    private <R extends DefaultSchemaObjectRegistry<?>> R getWritableRegistry( R registry, UnaryOperator<R> copier )
+    {
+        if ( isWritable( registry ) )
+        {
+            return registry;
+        }
+
+        R writable = copier.apply( registry );
+        writable.setErrorHandler( errorHandler );
+
+        if ( isRelaxed )
+        {
+            writable.setRelaxed();
+        }
+        else
+        {
+            writable.setStrict();
+        }
+
+        owned.add( writable );
+
+        return writable;
+    }
+
+
+    /**
+     * Makes the global OidRegistry and the registry storing the given type of SchemaObjects
+     * writable. The other registries remain shared when this Registries is a snapshot.
+     *
+     * @param type The type of the SchemaObject being modified
+     */
+    private void makeWritable( SchemaObjectType type )
+    {
+        if ( !shared )
+        {
+            return;
+        }
+
+        if ( !owned.contains( globalOidRegistry ) )
+        {
+            globalOidRegistry = globalOidRegistry.snapshot();
+            globalOidRegistry.setErrorHandler( errorHandler );
+
+            if ( isRelaxed )
+            {
+                globalOidRegistry.setRelaxed();
+            }
+            else
+            {
+                globalOidRegistry.setStrict();
+            }
+
+            owned.add( globalOidRegistry );
+        }
+
+        switch ( type )
+        {
+            case ATTRIBUTE_TYPE:
+                attributeTypeRegistry = getWritableRegistry( attributeTypeRegistry, DefaultAttributeTypeRegistry::snapshot );
+                break;
+
+            case COMPARATOR:
+                comparatorRegistry = getWritableRegistry( comparatorRegistry, DefaultComparatorRegistry::snapshot );
+                break;
+
+            case DIT_CONTENT_RULE:
+                ditContentRuleRegistry = getWritableRegistry( ditContentRuleRegistry, DefaultDitContentRuleRegistry::snapshot );
+                break;
+
+            case DIT_STRUCTURE_RULE:
+                ditStructureRuleRegistry = getWritableRegistry( ditStructureRuleRegistry,
+                    DefaultDitStructureRuleRegistry::snapshot );
+                break;
+
+            case LDAP_SYNTAX:
+                ldapSyntaxRegistry = getWritableRegistry( ldapSyntaxRegistry, DefaultLdapSyntaxRegistry::snapshot );
+                break;
+
+            case MATCHING_RULE:
+                matchingRuleRegistry = getWritableRegistry( matchingRuleRegistry, DefaultMatchingRuleRegistry::snapshot );
+                break;
+
+            case MATCHING_RULE_USE:
+                matchingRuleUseRegistry = getWritableRegistry( matchingRuleUseRegistry,
+                    DefaultMatchingRuleUseRegistry::snapshot );
+                break;
+
+            case NAME_FORM:
+                nameFormRegistry = getWritableRegistry( nameFormRegistry, DefaultNameFormRegistry::snapshot );
+                break;
+
+            case NORMALIZER:
+                normalizerRegistry = getWritableRegistry( normalizerRegistry, DefaultNormalizerRegistry::snapshot );
+                break;
+
+            case OBJECT_CLASS:
+                objectClassRegistry = getWritableRegistry( objectClassRegistry, DefaultObjectClassRegistry::snapshot );
+                break;
+
+            case SYNTAX_CHECKER:
+                syntaxCheckerRegistry = getWritableRegistry( syntaxCheckerRegistry, DefaultSyntaxCheckerRegistry::snapshot );
+                break;
+
+            default:
+                // Nothing to copy
+                break;
+        }
+    }
+
+
+    /**
+     * @return The SchemaObject registries, without the global OidRegistry
+     */
+    private List<DefaultSchemaObjectRegistry<?>> getRegistries()
+    {
+        return Arrays.asList( attributeTypeRegistry, comparatorRegistry, ditContentRuleRegistry, ditStructureRuleRegistry,
+            ldapSyntaxRegistry, matchingRuleRegistry, matchingRuleUseRegistry, nameFormRegistry, normalizerRegistry,
+            objectClassRegistry, syntaxCheckerRegistry );
+    }
+
+
     /**
      * Tells if the Registries is permissive or if it must be checked
      * against inconsistencies.
@@ -2726,18 +3042,20 @@ public class Registries implements SchemaLoaderListener, Cloneable
     public void setRelaxed()
     {
         isRelaxed = RELAXED;
-        globalOidRegistry.setRelaxed();
-        attributeTypeRegistry.setRelaxed();
-        comparatorRegistry.setRelaxed();
-        ditContentRuleRegistry.setRelaxed();
-        ditStructureRuleRegistry.setRelaxed();
-        ldapSyntaxRegistry.setRelaxed();
-        matchingRuleRegistry.setRelaxed();
-        matchingRuleUseRegistry.setRelaxed();
-        nameFormRegistry.setRelaxed();
-        normalizerRegistry.setRelaxed();
-        objectClassRegistry.setRelaxed();
-        syntaxCheckerRegistry.setRelaxed();
+
+        // The shared registries are never modified, they keep their own state
+        if ( isWritable( globalOidRegistry ) )
+        {
+            globalOidRegistry.setRelaxed();
+        }
+
+        for ( DefaultSchemaObjectRegistry<?> registry : getRegistries() )
+        {
+            if ( isWritable( registry ) )
+            {
+                registry.setRelaxed();
+            }
+        }
     }
 
 
@@ -2748,18 +3066,19 @@ public class Registries implements SchemaLoaderListener, Cloneable
     public void setStrict()
     {
         isRelaxed = STRICT;
-        globalOidRegistry.setStrict();
-        attributeTypeRegistry.setStrict();
-        comparatorRegistry.setStrict();
-        ditContentRuleRegistry.setStrict();
-        ditStructureRuleRegistry.setStrict();
-        ldapSyntaxRegistry.setStrict();
-        matchingRuleRegistry.setStrict();
-        matchingRuleUseRegistry.setStrict();
-        nameFormRegistry.setStrict();
-        normalizerRegistry.setStrict();
-        objectClassRegistry.setStrict();
-        syntaxCheckerRegistry.setStrict();
+
+        if ( isWritable( globalOidRegistry ) )
+        {
+            globalOidRegistry.setStrict();
+        }
+
+        for ( DefaultSchemaObjectRegistry<?> registry : getRegistries() )
+        {
+            if ( isWritable( registry ) )
+            {
+                registry.setStrict();
+            }
+        }
     }
 
 
@@ -2772,18 +3091,19 @@ public class Registries implements SchemaLoaderListener, Cloneable
     public void setErrorHandler( SchemaErrorHandler errorHandler )
     {
         this.errorHandler = errorHandler;
-        globalOidRegistry.setErrorHandler( errorHandler );
-        attributeTypeRegistry.setErrorHandler( errorHandler );
-        comparatorRegistry.setErrorHandler( errorHandler );
-        ditContentRuleRegistry.setErrorHandler( errorHandler );
-        ditStructureRuleRegistry.setErrorHandler( errorHandler );
-        ldapSyntaxRegistry.setErrorHandler( errorHandler );
-        matchingRuleRegistry.setErrorHandler( errorHandler );
-        matchingRuleUseRegistry.setErrorHandler( errorHandler );
-        nameFormRegistry.setErrorHandler( errorHandler );
-        normalizerRegistry.setErrorHandler( errorHandler );
-        objectClassRegistry.setErrorHandler( errorHandler );
-        syntaxCheckerRegistry.setErrorHandler( errorHandler );
+
+        if ( isWritable( globalOidRegistry ) )
+        {
+            globalOidRegistry.setErrorHandler( errorHandler );
+        }
+
+        for ( DefaultSchemaObjectRegistry<?> registry : getRegistries() )
+        {
+            if ( isWritable( registry ) )
+            {
+                registry.setErrorHandler( errorHandler );
+            }
+        }
     }
 
 
@@ -25,6 +25,9 @@ package org.apache.directory.api.ldap.model.subtree;
 
 import java.io.StringReader;
 import java.text.ParseException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.model.schema.NormalizerMappingResolver;
@@ -34,26 +37,48 @@ import org.apache.directory.api.util.Strings;
 import antlr.RecognitionException;
 import antlr.TokenStreamException;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 
 /**
  * A reusable wrapper around the antlr generated parser for an LDAP subtree
  * specification as defined by <a href="http://www.faqs.org/rfcs/rfc3672.html">
- * RFC 3672</a>. This class enables the reuse of the antlr parser/lexer pair
- * without having to recreate the pair every time.
+ * RFC 3672</a>. This class enables the reuse of the antlr parser/lexer pairs
+ * without having to recreate a pair every time.
+ * <p>
+ * This parser is thread safe : each thread parsing a specification borrows a
+ * parser/lexer pair from a pool, which contains as many pairs as the maximum number
+ * of concurrent parsings. The parsed specifications can also be cached, keyed by
+ * their source string : a cached SubtreeSpecification is shared by all the callers,
+ * and must not be modified.
  * 
  * @see <a href="http://www.faqs.org/rfcs/rfc3672.html">RFC 3672</a>
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class SubtreeSpecificationParser
 {
-    /** the antlr generated parser being wrapped */
-    private ReusableAntlrSubtreeSpecificationParser parser;
+    /** The parser/lexer pairs which are not currently used */
+    private final Queue<ParserPair> parsers = new ConcurrentLinkedQueue<>();
+
+    /** The SchemaManager used by the parsers */
+    private final SchemaManager schemaManager;
 
-    /** the antlr generated lexer being wrapped */
-    private ReusableAntlrSubtreeSpecificationLexer lexer;
+    /** The resolver used by the normalizing parsers */
+    @SuppressWarnings("rawtypes")
+    private final NormalizerMappingResolver resolver;
 
     private final boolean isNormalizing;
 
+    /** The parsed specifications, if the cache is enabled */
+    private final Cache<String, SubtreeSpecification> cache;
+
+    /** The cache hits */
+    private final LongAdder hitCount = new LongAdder();
+
+    /** The cache misses */
+    private final LongAdder missCount = new LongAdder();
+
 
     /**
      * Creates a subtree specification parser.
@@ -62,14 +87,19 @@ public class SubtreeSpecificationParser
      */
     public SubtreeSpecificationParser( SchemaManager schemaManager )
     {
-        // place holder for the first input
-        StringReader in = new StringReader( "" );
-        this.lexer = new ReusableAntlrSubtreeSpecificationLexer( in );
-        this.parser = new ReusableAntlrSubtreeSpecificationParser( lexer );
-        // this method MUST be called while we cannot do
-        // constructor overloading for antlr generated parser
-        this.parser.init( schemaManager );
-        this.isNormalizing = false;
+        this( null, schemaManager, 0, false );
+    }
+
+
+    /**
+     * Creates a subtree specification parser, caching the parsed specifications.
+     * 
+     * @param schemaManager The SchemaManager
+     * @param cacheSize The maximum number of cached specifications. 0 disables the cache.
+     */
+    public SubtreeSpecificationParser( SchemaManager schemaManager, int cacheSize )
+    {
+        this( null, schemaManager, cacheSize, false );
     }
 
 
@@ -82,30 +112,88 @@ public class SubtreeSpecificationParser
     public SubtreeSpecificationParser( @SuppressWarnings("rawtypes") NormalizerMappingResolver resolver,
         SchemaManager schemaManager )
     {
-        // place holder for the first input
-        StringReader in = new StringReader( "" );
-        this.lexer = new ReusableAntlrSubtreeSpecificationLexer( in );
-        this.parser = new ReusableAntlrSubtreeSpecificationParser( lexer );
-        this.parser.setNormalizerMappingResolver( resolver );
-        // this method MUST be called while we cannot do
-        // constructor overloading for antlr generated parser
-        this.parser.init( schemaManager );
-        this.isNormalizing = true;
+        this( resolver, schemaManager, 0, true );
     }
 
 
     /**
-     * Initializes the plumbing by creating a pipe and coupling the parser/lexer
-     * pair with it.
+     * Creates a normalizing subtree specification parser, caching the parsed specifications.
      * 
-     * @param spec The specification to parse
+     * @param resolver The resolver to use
+     * @param schemaManager The SchemaManager
+     * @param cacheSize The maximum number of cached specifications. 0 disables the cache.
+     */
+    public SubtreeSpecificationParser( @SuppressWarnings("rawtypes") NormalizerMappingResolver resolver,
+        SchemaManager schemaManager, int cacheSize )
+    {
+        this( resolver, schemaManager, cacheSize, true );
+    }
+
+
+    /**
+     * An antlr generated parser, and its lexer
      */
-    private synchronized void reset( String spec )
+    private static final class ParserPair
     {
-        // append end of input token
-        StringReader in = new StringReader( spec + "end" );
-        this.lexer.prepareNextInput( in );
-        this.parser.resetState();
+        /** the antlr generated parser being wrapped */
+        private final ReusableAntlrSubtreeSpecificationParser parser;
+
+        /** the antlr generated lexer being wrapped */
+        private final ReusableAntlrSubtreeSpecificationLexer lexer;
+
+
+        private ParserPair( ReusableAntlrSubtreeSpecificationParser parser,
+            ReusableAntlrSubtreeSpecificationLexer lexer )
+        {
+            this.parser = parser;
+            this.lexer = lexer;
+        }
+    }
+
+
+    private SubtreeSpecificationParser( @SuppressWarnings("rawtypes") NormalizerMappingResolver resolver,
+        SchemaManager schemaManager, int cacheSize, boolean isNormalizing )
+    {
+        this.resolver = resolver;
+        this.schemaManager = schemaManager;
+        this.isNormalizing = isNormalizing;
+
+        if ( cacheSize > 0 )
+        {
+            cache = Caffeine.newBuilder().maximumSize( cacheSize ).build();
+        }
+        else
+        {
+            cache = null;
+        }
+
+        // Create the first pair now, so that a schema problem is immediately detected
+        parsers.add( createParser() );
+    }
+
+
+    /**
+     * Creates a new parser/lexer pair
+     * 
+     * @return The new pair
+     */
+    private ParserPair createParser()
+    {
+        // place holder for the first input
+        StringReader in = new StringReader( "" );
+        ReusableAntlrSubtreeSpecificationLexer lexer = new ReusableAntlrSubtreeSpecificationLexer( in );
+        ReusableAntlrSubtreeSpecificationParser parser = new ReusableAntlrSubtreeSpecificationParser( lexer );
+
+        if ( isNormalizing )
+        {
+            parser.setNormalizerMappingResolver( resolver );
+        }
+
+        // this method MUST be called while we cannot do
+        // constructor overloading for antlr generated parser
+        parser.init( schemaManager );
+
+        return new ParserPair( parser, lexer );
     }
 
 
@@ -118,29 +206,68 @@ public class SubtreeSpecificationParser
      * @throws ParseException
      *             if there are any recognition errors (bad syntax)
      */
-    public synchronized SubtreeSpecification parse( String spec ) throws ParseException
+    public SubtreeSpecification parse( String spec ) throws ParseException
     {
-        SubtreeSpecification ss;
-
         if ( ( spec == null ) || Strings.isEmpty( spec.trim() ) )
         {
             return null;
         }
 
-        // reset and initialize the parser / lexer pair
-        reset( spec );
+        if ( cache == null )
+        {
+            return doParse( spec );
+        }
+
+        SubtreeSpecification ss = cache.getIfPresent( spec );
+
+        if ( ss != null )
+        {
+            hitCount.increment();
+
+            return ss;
+        }
+
+        missCount.increment();
+        ss = doParse( spec );
+        cache.put( spec, ss );
+
+        return ss;
+    }
+
+
+    /**
+     * Parses a subtree specification with a parser/lexer pair taken from the pool
+     * 
+     * @param spec the specification to be parsed
+     * @return the specification bean
+     * @throws ParseException if there are any recognition errors (bad syntax)
+     */
+    private SubtreeSpecification doParse( String spec ) throws ParseException
+    {
+        ParserPair pair = parsers.poll();
+
+        if ( pair == null )
+        {
+            pair = createParser();
+        }
 
         try
         {
-            ss = this.parser.wrapperEntryPoint();
+            // reset and initialize the parser / lexer pair, appending the end of input token
+            pair.lexer.prepareNextInput( new StringReader( spec + "end" ) );
+            pair.parser.resetState();
+
+            return pair.parser.wrapperEntryPoint();
         }
         catch ( TokenStreamException | RecognitionException e )
         {
             String msg = I18n.err( I18n.ERR_13028_SUBTREE_SPEC_PARSER_FAILURE, spec, e.getLocalizedMessage() );
             throw new ParseException( msg, 0 );
         }
-
-        return ss;
+        finally
+        {
+            parsers.add( pair );
+        }
     }
 
 
@@ -153,4 +280,34 @@ public class SubtreeSpecificationParser
     {
         return this.isNormalizing;
     }
+
+
+    /**
+     * @return The number of specifications found in the cache
+     */
+    public long getCacheHitCount()
+    {
+        return hitCount.sum();
+    }
+
+
+    /**
+     * @return The number of specifications which had to be parsed, as they were not in the cache
+     */
+    public long getCacheMissCount()
+    {
+        return missCount.sum();
+    }
+
+
+    /**
+     * @return The ratio of specifications found in the cache, between 0 and 1
+     */
+    public double getCacheHitRate()
+    {
+        long hits = hitCount.sum();
+        long requests = hits + missCount.sum();
+
+        return requests == 0L ? 0d : ( double ) hits / requests;
+    }
 }
@@ -21,13 +21,26 @@
 package org.apache.directory.api.ldap.model.csn;
 
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.apache.directory.api.ldap.model.csn.Csn;
 import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.parallel.Execution;
 import org.junit.jupiter.api.parallel.ExecutionMode;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 /**
@@ -66,4 +79,126 @@ public class CsnFactoryTest
             }
         }
     }
+
+
+    /**
+     * Ensure the CSNs generated by many threads are unique, and increasing in each thread.
+     */
+    @Test
+    public void testMonotonicAcrossThreads() throws Exception
+    {
+        int nbThreads = 8;
+        int nbCsns = 20000;
+        CsnFactory csnFactory = new CsnFactory( 1 );
+        Set<Csn> allCsns = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool( nbThreads );
+        List<Future<?>> futures = new ArrayList<>();
+
+        for ( int t = 0; t < nbThreads; t++ )
+        {
+            futures.add( executor.submit( () ->
+            {
+                Csn previous = null;
+
+                for ( int i = 0; i < nbCsns; i++ )
+                {
+                    // Mix single CSNs and ranges
+                    Csn[] csns = ( i % 10 == 0 ) ? csnFactory.newInstances( 5 )
+                        : new Csn[] { csnFactory.newInstance() };
+
+                    for ( Csn csn : csns )
+                    {
+                        if ( previous != null )
+                        {
+                            assertTrue( previous.compareTo( csn ) < 0 );
+                        }
+
+                        assertTrue( allCsns.add( csn ) );
+                        previous = csn;
+                    }
+                }
+            } ) );
+        }
+
+        for ( Future<?> future : futures )
+        {
+            future.get();
+        }
+
+        executor.shutdown();
+
+        assertEquals( nbThreads * ( nbCsns + nbCsns / 10 * 4 ), allCsns.size() );
+    }
+
+
+    /**
+     * Check that a reserved range is contiguous
+     */
+    @Test
+    public void testNewInstances()
+    {
+        CsnFactory csnFactory = new CsnFactory( 2 );
+
+        assertEquals( 0, csnFactory.newInstances( 0 ).length );
+        assertThrows( IllegalArgumentException.class, () -> csnFactory.newInstances( -1 ) );
+
+        Csn before = csnFactory.newInstance();
+        Csn[] csns = csnFactory.newInstances( 1000 );
+        Csn after = csnFactory.newInstance();
+
+        assertEquals( 1000, csns.length );
+        assertTrue( before.compareTo( csns[0] ) < 0 );
+        assertTrue( csns[999].compareTo( after ) < 0 );
+
+        for ( int i = 1; i < csns.length; i++ )
+        {
+            // Within a range, the change count is incremented on the same timestamp
+            assertEquals( csns[0].getTimestamp(), csns[i].getTimestamp() );
+            assertEquals( csns[0].getChangeCount() + i, csns[i].getChangeCount() );
+            assertEquals( 2, csns[i].getReplicaId() );
+        }
+
+        // The CSN can be parsed back
+        assertEquals( csns[10], new Csn( csns[10].toString() ) );
+    }
+
+
+    /**
+     * Measure the CSN generation throughput, from 1 to 64 threads. Enable it to get
+     * some numbers.
+     */
+    @Test
+    @Disabled
+    public void testContention() throws Exception
+    {
+        CsnFactory csnFactory = new CsnFactory( 1 );
+        int nbCsns = 1000000;
+
+        for ( int nbThreads = 1; nbThreads <= 64; nbThreads *= 2 )
+        {
+            ExecutorService executor = Executors.newFixedThreadPool( nbThreads );
+            List<Callable<Object>> tasks = new ArrayList<>();
+
+            for ( int t = 0; t < nbThreads; t++ )
+            {
+                tasks.add( () ->
+                {
+                    for ( int i = 0; i < nbCsns; i++ )
+                    {
+                        csnFactory.newInstance();
+                    }
+
+                    return null;
+                } );
+            }
+
+            long t0 = System.currentTimeMillis();
+            executor.invokeAll( tasks );
+            long t1 = System.currentTimeMillis();
+            executor.shutdown();
+
+            long rate = ( long ) nbThreads * nbCsns * 1000L / Math.max( 1L, t1 - t0 );
+            System.out.println( nbThreads + " threads : " + rate + " CSNs/s" );
+        }
+    }
 }
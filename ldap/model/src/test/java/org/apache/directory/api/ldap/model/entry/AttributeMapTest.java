@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.api.ldap.model.entry;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Test the AttributeMap class, and the footprint of the entries using it
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.CONCURRENT)
+public class AttributeMapTest
+{
+    /**
+     * Check that an AttributeMap behaves like a LinkedHashMap, whatever its size
+     */
+    @Test
+    public void testSameBehaviorAsLinkedHashMap()
+    {
+        for ( int nb : new int[] { 0, 1, 5, AttributeMap.SMALL_MAP_MAX_SIZE, AttributeMap.SMALL_MAP_MAX_SIZE + 1, 100 } )
+        {
+            AttributeMap map = new AttributeMap();
+            Map<String, Attribute> expected = new LinkedHashMap<>();
+
+            for ( int i = 0; i < nb; i++ )
+            {
+                Attribute attribute = new DefaultAttribute( "attr" + i, "value" + i );
+                assertNull( map.put( "attr" + i, attribute ) );
+                expected.put( "attr" + i, attribute );
+            }
+
+            assertEquals( expected.size(), map.size() );
+            assertEquals( expected, map );
+            assertEquals( new ArrayList<>( expected.keySet() ), new ArrayList<>( map.keySet() ) );
+            assertEquals( new ArrayList<>( expected.values() ), new ArrayList<>( map.values() ) );
+            assertEquals( new ArrayList<>( expected.entrySet() ), new ArrayList<>( map.entrySet() ) );
+            assertEquals( expected.entrySet().hashCode(), map.entrySet().hashCode() );
+
+            for ( int i = 0; i < nb; i++ )
+            {
+                // Use a new String instance, to avoid the identity check
+                String key = new String( "attr" + i );
+                assertTrue( map.containsKey( key ) );
+                assertSame( expected.get( key ), map.get( key ) );
+            }
+
+            assertFalse( map.containsKey( "missing" ) );
+            assertNull( map.get( "missing" ) );
+            assertNull( map.remove( "missing" ) );
+        }
+    }
+
+
+    @Test
+    public void testReplaceAndRemove()
+    {
+        AttributeMap map = new AttributeMap();
+        Attribute cn = new DefaultAttribute( "cn", "test" );
+        Attribute sn = new DefaultAttribute( "sn", "test" );
+        Attribute newCn = new DefaultAttribute( "cn", "other" );
+
+        map.put( "cn", cn );
+        map.put( "sn", sn );
+
+        assertSame( cn, map.put( "cn", newCn ) );
+        assertEquals( 2, map.size() );
+        assertSame( newCn, map.get( "cn" ) );
+
+        assertSame( newCn, map.remove( "cn" ) );
+        assertEquals( 1, map.size() );
+        assertFalse( map.containsKey( "cn" ) );
+        assertSame( sn, map.get( "sn" ) );
+
+        map.clear();
+        assertTrue( map.isEmpty() );
+    }
+
+
+    @Test
+    public void testIteratorRemoveAndSetValue()
+    {
+        AttributeMap map = new AttributeMap();
+
+        for ( int i = 0; i < 6; i++ )
+        {
+            map.put( "attr" + i, new DefaultAttribute( "attr" + i, "value" + i ) );
+        }
+
+        Attribute replaced = new DefaultAttribute( "attr1", "replaced" );
+        Iterator<Map.Entry<String, Attribute>> iterator = map.entrySet().iterator();
+
+        while ( iterator.hasNext() )
+        {
+            Map.Entry<String, Attribute> entry = iterator.next();
+
+            if ( "attr0".equals( entry.getKey() ) || "attr5".equals( entry.getKey() ) )
+            {
+                iterator.remove();
+            }
+            else if ( "attr1".equals( entry.getKey() ) )
+            {
+                entry.setValue( replaced );
+            }
+        }
+
+        assertEquals( 4, map.size() );
+        assertFalse( map.containsKey( "attr0" ) );
+        assertFalse( map.containsKey( "attr5" ) );
+        assertSame( replaced, map.get( "attr1" ) );
+    }
+
+
+    @Test
+    public void testKeySetAndValuesIterators()
+    {
+        AttributeMap map = new AttributeMap();
+
+        for ( int i = 0; i < 6; i++ )
+        {
+            map.put( "attr" + i, new DefaultAttribute( "attr" + i, "value" + i ) );
+        }
+
+        assertTrue( map.keySet().contains( new String( "attr3" ) ) );
+        assertFalse( map.keySet().contains( "attr6" ) );
+
+        // Remove through the values and the keys iterators
+        Iterator<Attribute> values = map.values().iterator();
+
+        while ( values.hasNext() )
+        {
+            if ( "attr0".equals( values.next().getUpId() ) )
+            {
+                values.remove();
+            }
+        }
+
+        Iterator<String> keys = map.keySet().iterator();
+
+        while ( keys.hasNext() )
+        {
+            if ( "attr5".equals( keys.next() ) )
+            {
+                keys.remove();
+            }
+        }
+
+        assertEquals( 4, map.size() );
+        assertEquals( 4, map.values().size() );
+        assertFalse( map.containsKey( "attr0" ) );
+        assertFalse( map.containsKey( "attr5" ) );
+
+        // A modification outside of the iterator is detected
+        Iterator<Attribute> iterator = map.values().iterator();
+        iterator.next();
+        map.remove( "attr2" );
+        assertThrows( ConcurrentModificationException.class, () -> iterator.next() );
+
+        map.values().clear();
+        assertTrue( map.isEmpty() );
+        assertFalse( map.keySet().iterator().hasNext() );
+    }
+
+
+    @Test
+    public void testClone()
+    {
+        AttributeMap map = new AttributeMap();
+        Attribute cn = new DefaultAttribute( "cn", "test" );
+        map.put( "cn", cn );
+
+        AttributeMap clone = map.clone();
+        clone.put( "sn", new DefaultAttribute( "sn", "test" ) );
+        clone.remove( "cn" );
+
+        assertEquals( 1, map.size() );
+        assertSame( cn, map.get( "cn" ) );
+        assertEquals( 1, clone.size() );
+    }
+
+
+    /**
+     * Measure the footprint and the creation time of entries. Enable it to get some numbers.
+     */
+    @Test
+    @Disabled
+    public void testEntryFootprintPerf() throws Exception
+    {
+        int nbEntries = 200_000;
+        List<Entry> entries = new ArrayList<>( nbEntries );
+        Runtime runtime = Runtime.getRuntime();
+
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        long t0 = System.currentTimeMillis();
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            Entry entry = new DefaultEntry( new Dn( "uid=user" + i + ",ou=people,dc=example,dc=com" ) );
+            entry.add( "objectClass", "top", "person", "organizationalPerson", "inetOrgPerson" );
+
+            for ( int j = 0; j < 20; j++ )
+            {
+                entry.add( "attr" + j, "value" + j );
+            }
+
+            entries.add( entry );
+        }
+
+        long t1 = System.currentTimeMillis();
+        System.gc();
+        long after = runtime.totalMemory() - runtime.freeMemory();
+
+        long t2 = System.currentTimeMillis();
+        int found = 0;
+
+        for ( Entry entry : entries )
+        {
+            for ( int j = 0; j < 20; j++ )
+            {
+                if ( entry.get( "attr" + j ) != null )
+                {
+                    found++;
+                }
+            }
+        }
+
+        long t3 = System.currentTimeMillis();
+
+        System.out.println( "Created " + entries.size() + " entries in " + ( t1 - t0 ) + " ms, "
+            + ( ( after - before ) / nbEntries ) + " bytes per entry, " + found + " lookups in " + ( t3 - t2 ) + " ms" );
+    }
+}
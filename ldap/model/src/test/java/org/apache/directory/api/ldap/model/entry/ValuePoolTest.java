@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.api.ldap.model.entry;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Iterator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Test the ValuePool class
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.CONCURRENT)
+public class ValuePoolTest
+{
+    @Test
+    public void testInternEnabledAttribute()
+    {
+        ValuePool pool = new ValuePool( 100 );
+        pool.enable( "ObjectClass" );
+
+        assertTrue( pool.isEnabled( "objectclass" ) );
+
+        Value top1 = new Value( "top" );
+        Value top2 = new Value( "top" );
+
+        assertSame( top1, pool.intern( "objectclass", top1 ) );
+        assertSame( top1, pool.intern( "objectclass", top2 ) );
+        assertEquals( 1L, pool.getHitCount() );
+        assertEquals( 1L, pool.getMissCount() );
+        assertEquals( 0.5d, pool.getHitRate(), 0.0001d );
+        assertEquals( 1L, pool.size() );
+    }
+
+
+    @Test
+    public void testInternDisabledAttribute()
+    {
+        ValuePool pool = new ValuePool( 100 );
+        pool.enable( "objectClass" );
+
+        Value value1 = new Value( "test" );
+        Value value2 = new Value( "test" );
+
+        assertSame( value1, pool.intern( "cn", value1 ) );
+        assertSame( value2, pool.intern( "cn", value2 ) );
+        assertEquals( 0L, pool.getHitCount() );
+        assertEquals( 0L, pool.getMissCount() );
+        assertEquals( 0L, pool.size() );
+    }
+
+
+    @Test
+    public void testInternDifferentUpValue()
+    {
+        ValuePool pool = new ValuePool( 100 );
+        pool.enable( "description" );
+
+        Value value1 = new Value( "test" );
+        Value value2 = new Value( "test" );
+        Value binary = new Value( new byte[] { 't', 'e', 's', 't' } );
+
+        pool.intern( "description", value1 );
+
+        // Same normalized value, but one is binary : they must not be shared
+        assertSame( binary, pool.intern( "description", binary ) );
+        assertSame( value1, pool.intern( "description", value2 ) );
+        assertSame( binary, pool.intern( "description", new Value( new byte[] { 't', 'e', 's', 't' } ) ) );
+    }
+
+
+    @Test
+    public void testEviction()
+    {
+        ValuePool pool = new ValuePool( 10 );
+        pool.enable( "cn" );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            pool.intern( "cn", new Value( "value" + i ) );
+        }
+
+        assertTrue( pool.size() <= 10 );
+        assertTrue( pool.getEvictionCount() > 0L );
+
+        pool.clear();
+
+        assertEquals( 0L, pool.size() );
+        assertEquals( 0L, pool.getMissCount() );
+    }
+
+
+    @Test
+    public void testInstalledPool() throws Exception
+    {
+        ValuePool pool = new ValuePool( 100 );
+        pool.enable( "x-value-pool-test" );
+        ValuePool previous = ValuePool.getInstalled();
+
+        try
+        {
+            ValuePool.install( pool );
+
+            Entry entry1 = new DefaultEntry( "dc=test1", "x-value-pool-test: shared", "cn: notShared" );
+            Entry entry2 = new DefaultEntry( "dc=test2", "x-value-pool-test: shared", "cn: notShared" );
+
+            Iterator<Value> values1 = entry1.get( "x-value-pool-test" ).iterator();
+            Iterator<Value> values2 = entry2.get( "x-value-pool-test" ).iterator();
+
+            assertSame( values1.next(), values2.next() );
+            assertNotSame( entry1.get( "cn" ).get(), entry2.get( "cn" ).get() );
+            assertEquals( 1L, pool.getHitCount() );
+            assertFalse( pool.isEnabled( "cn" ) );
+
+            // Uninstalling the pool releases its values, and stops the pooling
+            assertSame( pool, ValuePool.uninstall() );
+            assertNull( ValuePool.getInstalled() );
+            assertEquals( 0L, pool.size() );
+            assertNull( ValuePool.uninstall() );
+
+            Entry entry3 = new DefaultEntry( "dc=test3", "x-value-pool-test: shared" );
+            Entry entry4 = new DefaultEntry( "dc=test4", "x-value-pool-test: shared" );
+
+            assertNotSame( entry3.get( "x-value-pool-test" ).get(), entry4.get( "x-value-pool-test" ).get() );
+            assertEquals( 0L, pool.size() );
+
+            // Installing a pool returns the replaced one
+            assertNull( ValuePool.install( pool ) );
+            assertSame( pool, ValuePool.install( null ) );
+        }
+        finally
+        {
+            ValuePool.install( previous );
+        }
+    }
+}
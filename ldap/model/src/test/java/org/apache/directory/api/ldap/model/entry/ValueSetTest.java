@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.api.ldap.model.entry;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Test the ValueSet class, in its three storage modes
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.CONCURRENT)
+public class ValueSetTest
+{
+    private static List<Value> createValues( int nb )
+    {
+        List<Value> values = new ArrayList<>( nb );
+
+        for ( int i = 0; i < nb; i++ )
+        {
+            values.add( new Value( "value" + i ) );
+        }
+
+        return values;
+    }
+
+
+    /**
+     * Check that a ValueSet behaves like a LinkedHashSet, whatever its size
+     */
+    @Test
+    public void testSameBehaviorAsLinkedHashSet()
+    {
+        for ( int nb : new int[] { 0, 1, 2, ValueSet.SMALL_SET_MAX_SIZE, ValueSet.SMALL_SET_MAX_SIZE + 1, 100 } )
+        {
+            List<Value> values = createValues( nb );
+            ValueSet valueSet = new ValueSet();
+            Set<Value> expected = new LinkedHashSet<>();
+
+            for ( Value value : values )
+            {
+                assertEquals( expected.add( value ), valueSet.add( value ) );
+                assertFalse( valueSet.add( new Value( value.getString() ) ) );
+            }
+
+            assertEquals( expected.size(), valueSet.size() );
+            assertEquals( expected, valueSet );
+            assertEquals( valueSet, expected );
+            assertEquals( new ArrayList<>( expected ), new ArrayList<>( valueSet ) );
+
+            for ( Value value : values )
+            {
+                assertTrue( valueSet.contains( new Value( value.getString() ) ) );
+            }
+
+            assertFalse( valueSet.contains( new Value( "missing" ) ) );
+            assertFalse( valueSet.contains( "value0" ) );
+        }
+    }
+
+
+    @Test
+    public void testRemove()
+    {
+        List<Value> values = createValues( 5 );
+        ValueSet valueSet = new ValueSet();
+        valueSet.addAll( values );
+
+        assertTrue( valueSet.remove( new Value( "value2" ) ) );
+        assertFalse( valueSet.remove( new Value( "value2" ) ) );
+        assertEquals( 4, valueSet.size() );
+
+        List<Value> expected = new ArrayList<>( values );
+        expected.remove( 2 );
+        assertEquals( expected, new ArrayList<>( valueSet ) );
+
+        for ( Value value : expected )
+        {
+            assertTrue( valueSet.remove( value ) );
+        }
+
+        assertTrue( valueSet.isEmpty() );
+        assertTrue( valueSet.add( new Value( "value2" ) ) );
+        assertEquals( 1, valueSet.size() );
+    }
+
+
+    @Test
+    public void testIteratorRemove()
+    {
+        for ( int nb : new int[] { 1, 3, ValueSet.SMALL_SET_MAX_SIZE + 3 } )
+        {
+            ValueSet valueSet = new ValueSet();
+            valueSet.addAll( createValues( nb ) );
+
+            Iterator<Value> iterator = valueSet.iterator();
+            int count = 0;
+
+            while ( iterator.hasNext() )
+            {
+                iterator.next();
+
+                if ( ( count++ % 2 ) == 0 )
+                {
+                    iterator.remove();
+                }
+            }
+
+            assertEquals( nb, count );
+            assertEquals( nb / 2, valueSet.size() );
+
+            for ( Value value : valueSet )
+            {
+                assertEquals( 1, Integer.parseInt( value.getString().substring( 5 ) ) % 2 );
+            }
+        }
+    }
+
+
+    @Test
+    public void testConcurrentModification()
+    {
+        ValueSet valueSet = new ValueSet();
+        valueSet.addAll( createValues( 3 ) );
+
+        Iterator<Value> iterator = valueSet.iterator();
+        iterator.next();
+        valueSet.add( new Value( "other" ) );
+
+        assertThrows( ConcurrentModificationException.class, () -> iterator.next() );
+    }
+
+
+    @Test
+    public void testNullValue()
+    {
+        ValueSet valueSet = new ValueSet();
+
+        assertFalse( valueSet.add( null ) );
+        assertTrue( valueSet.isEmpty() );
+
+        // A Value wrapping null is a valid value
+        assertTrue( valueSet.add( new Value( ( String ) null ) ) );
+        assertFalse( valueSet.add( new Value( ( String ) null ) ) );
+        assertEquals( 1, valueSet.size() );
+    }
+
+
+    @Test
+    public void testClear()
+    {
+        ValueSet valueSet = new ValueSet( new LinkedHashSet<>( createValues( 20 ) ) );
+
+        assertEquals( 20, valueSet.size() );
+
+        valueSet.clear();
+
+        assertTrue( valueSet.isEmpty() );
+        assertFalse( valueSet.iterator().hasNext() );
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.filter;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.text.ParseException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Tests for {@link FilterTemplate}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.CONCURRENT)
+public class FilterTemplateTest
+{
+    @Test
+    public void testPlaceHolderIndex()
+    {
+        assertEquals( 0, FilterTemplate.getPlaceHolderIndex( "{0}" ) );
+        assertEquals( 12, FilterTemplate.getPlaceHolderIndex( "{12}" ) );
+        assertEquals( -1, FilterTemplate.getPlaceHolderIndex( "{}" ) );
+        assertEquals( -1, FilterTemplate.getPlaceHolderIndex( "{a}" ) );
+        assertEquals( -1, FilterTemplate.getPlaceHolderIndex( "x{0}" ) );
+        assertEquals( -1, FilterTemplate.getPlaceHolderIndex( ( String ) null ) );
+    }
+
+
+    @Test
+    public void testParse() throws ParseException
+    {
+        FilterTemplate template = FilterTemplate.parse( "(&(objectClass=person)(|(uid={0})(mail={1})(cn={0}*)))" );
+
+        assertEquals( 2, template.getPlaceHolderCount() );
+
+        assertEquals( 0, FilterTemplate.parse( "(objectClass=*)" ).getPlaceHolderCount() );
+        assertEquals( 3, FilterTemplate.parse( "(cn={0}*{1}*{2})" ).getPlaceHolderCount() );
+        assertEquals( 1, FilterTemplate.parse( "(cn:dn:2.5.13.5:={0})" ).getPlaceHolderCount() );
+    }
+
+
+    @Test
+    public void testParseErrors()
+    {
+        // Not a whole value
+        assertThrows( ParseException.class, () -> FilterTemplate.parse( "(cn=a{0})" ) );
+        assertThrows( ParseException.class, () -> FilterTemplate.parse( "(cn=*a{0}*)" ) );
+
+        // A missing place-holder
+        assertThrows( ParseException.class, () -> FilterTemplate.parse( "(&(cn={0})(sn={2}))" ) );
+
+        // An invalid filter
+        assertThrows( ParseException.class, () -> FilterTemplate.parse( "(cn={0}" ) );
+    }
+
+
+    @Test
+    public void testBind() throws ParseException
+    {
+        FilterTemplate template = FilterTemplate.parse( "(&(objectClass=person)(|(uid={0})(cn={1}*)(sn=*{1}*{0})))" );
+
+        ExprNode filter = template.bind( "a*b", "c)" );
+
+        assertEquals( FilterParser.parse( "(&(objectClass=person)(|(uid=a\\2Ab)(cn=c\\29*)(sn=*c\\29*a\\2Ab)))" ),
+            filter );
+
+        // The template hasn't been modified
+        assertEquals( FilterParser.parse( "(&(objectClass=person)(|(uid={0})(cn={1}*)(sn=*{1}*{0})))" ),
+            template.getFilter() );
+
+        assertThrows( IllegalArgumentException.class, () -> template.bind( "a" ) );
+        assertThrows( IllegalArgumentException.class, () -> template.bind( "a", "b", "c" ) );
+    }
+
+
+    @Test
+    public void testFormat() throws ParseException
+    {
+        FilterTemplate template = FilterTemplate.parse( "(&(objectClass=person)(uid={0})(cn={0}*))" );
+
+        assertEquals( "(&(objectClass=person)(uid=\\28\\5C\\2A\\00\\29)(cn=\\28\\5C\\2A\\00\\29*))",
+            template.format( "(\\*\0)" ) );
+        assertEquals( "(&(objectClass=person)(uid=foo)(cn=foo*))", template.format( "foo" ) );
+
+        // The injection attempt is escaped
+        assertEquals( template.bind( "*)(uid=*" ), FilterParser.parse( template.format( "*)(uid=*" ) ) );
+    }
+}
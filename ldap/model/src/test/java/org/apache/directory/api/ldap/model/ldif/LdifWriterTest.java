@@ -0,0 +1,337 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif;
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.message.controls.ManageDsaITImpl;
+import org.apache.directory.api.util.Strings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Tests the LdifWriter class
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.CONCURRENT)
+public class LdifWriterTest
+{
+    private static Entry createEntry( int i ) throws Exception
+    {
+        return new DefaultEntry( "cn=user " + i + ",ou=people,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: person",
+            "cn", "user " + i,
+            "sn", "user" + i,
+            "description: a rather long description, which has to be folded once it gets longer than the line length "
+                + i,
+            "userPassword", new byte[]
+                { 0x01, 0x02, ( byte ) i, ( byte ) 0xFF } );
+    }
+
+
+    private static String write( List<Entry> entries, int parallelism, int lineLength ) throws Exception
+    {
+        StringWriter out = new StringWriter();
+
+        try ( LdifWriter writer = new LdifWriter( out, parallelism ) )
+        {
+            writer.setLineLength( lineLength );
+            writer.writeVersion();
+
+            for ( Entry entry : entries )
+            {
+                writer.write( entry );
+            }
+        }
+
+        return out.toString();
+    }
+
+
+    /**
+     * Test that a simple entry is written as LdifUtils converts it
+     */
+    @Test
+    public void testWriteSimpleEntry() throws Exception
+    {
+        Entry entry = new DefaultEntry( "ou=test,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: test" );
+        StringWriter out = new StringWriter();
+
+        try ( LdifWriter writer = new LdifWriter( out ) )
+        {
+            writer.write( entry );
+        }
+
+        assertEquals( LdifUtils.convertToLdif( entry ) + "\n", out.toString() );
+    }
+
+
+    /**
+     * Test that the unsafe values are base64 encoded
+     */
+    @Test
+    public void testWriteBase64() throws Exception
+    {
+        Entry entry = new DefaultEntry( "cn=Émile,dc=example,dc=com",
+            "cn: Émile",
+            "description", "<angle",
+            "description", ":colon",
+            "jpegPhoto", new byte[]
+                { 0x00, 0x01, 0x02 } );
+        StringWriter out = new StringWriter();
+
+        try ( LdifWriter writer = new LdifWriter( out ) )
+        {
+            writer.write( entry );
+        }
+
+        String ldif = out.toString();
+
+        assertTrue( ldif.startsWith( "dn:: " ), ldif );
+        assertTrue( ldif.contains( "cn:: w4ltaWxl\n" ), ldif );
+        assertTrue( ldif.contains( "description:: PGFuZ2xl\n" ), ldif );
+        assertTrue( ldif.contains( "description:: OmNvbG9u\n" ), ldif );
+        assertTrue( ldif.contains( "jpegphoto:: AAEC\n" ), ldif );
+
+        try ( LdifReader reader = new LdifReader() )
+        {
+            List<LdifEntry> entries = reader.parseLdif( ldif );
+
+            assertEquals( 1, entries.size() );
+            assertEquals( entry.getDn(), entries.get( 0 ).getDn() );
+            assertEquals( "<angle", entries.get( 0 ).get( "description" ).get().getString() );
+        }
+    }
+
+
+    /**
+     * Test that the lines are folded, and that the folded LDIF can be read back
+     */
+    @Test
+    public void testFolding() throws Exception
+    {
+        List<Entry> entries = new ArrayList<>();
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            entries.add( createEntry( i ) );
+        }
+
+        for ( int lineLength : new int[]
+            { 2, 3, 10, 76, 80 } )
+        {
+            String ldif = write( entries, 1, lineLength );
+
+            for ( String line : ldif.split( "\n" ) )
+            {
+                assertTrue( line.length() <= lineLength, line );
+            }
+
+            try ( LdifReader reader = new LdifReader() )
+            {
+                List<LdifEntry> read = reader.parseLdif( ldif );
+
+                assertEquals( entries.size(), read.size() );
+
+                for ( int i = 0; i < entries.size(); i++ )
+                {
+                    assertEquals( entries.get( i ), read.get( i ).getEntry() );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Test that the change records are written, and can be read back
+     */
+    @Test
+    public void testWriteChanges() throws Exception
+    {
+        LdifEntry add = new LdifEntry( "cn=test,dc=example,dc=com",
+            "changetype: add",
+            "objectClass: person",
+            "cn: test",
+            "sn: test" );
+        add.addControl( new ManageDsaITImpl() );
+
+        LdifEntry modify = new LdifEntry();
+        modify.setDn( "cn=test,dc=example,dc=com" );
+        modify.setChangeType( ChangeType.Modify );
+        modify.addModification( ModificationOperation.ADD_ATTRIBUTE, new DefaultAttribute( "description", "test" ) );
+        modify.addModification( ModificationOperation.REMOVE_ATTRIBUTE, "sn" );
+        modify.addModification( ModificationOperation.REPLACE_ATTRIBUTE, new DefaultAttribute( "cn", "test" ) );
+
+        LdifEntry modDn = new LdifEntry();
+        modDn.setDn( "cn=test,dc=example,dc=com" );
+        modDn.setChangeType( ChangeType.ModDn );
+        modDn.setNewRdn( "cn=moved" );
+        modDn.setDeleteOldRdn( true );
+        modDn.setNewSuperior( "ou=people,dc=example,dc=com" );
+
+        LdifEntry delete = new LdifEntry();
+        delete.setDn( "cn=moved,ou=people,dc=example,dc=com" );
+        delete.setChangeType( ChangeType.Delete );
+
+        List<LdifEntry> changes = new ArrayList<>();
+        changes.add( add );
+        changes.add( modify );
+        changes.add( modDn );
+        changes.add( delete );
+
+        StringWriter out = new StringWriter();
+
+        try ( LdifWriter writer = new LdifWriter( out ) )
+        {
+            writer.writeVersion();
+
+            for ( LdifEntry change : changes )
+            {
+                writer.write( change );
+            }
+        }
+
+        try ( LdifReader reader = new LdifReader() )
+        {
+            List<LdifEntry> read = reader.parseLdif( out.toString() );
+
+            assertEquals( changes, read );
+        }
+    }
+
+
+    /**
+     * Test that the output is the same with a Writer and with an OutputStream
+     */
+    @Test
+    public void testOutputStream() throws Exception
+    {
+        List<Entry> entries = new ArrayList<>();
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            entries.add( createEntry( i ) );
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try ( LdifWriter writer = new LdifWriter( out ) )
+        {
+            writer.writeVersion();
+
+            for ( Entry entry : entries )
+            {
+                writer.write( entry );
+            }
+        }
+
+        assertArrayEquals( Strings.getBytesUtf8( write( entries, 1, LdifWriter.DEFAULT_LINE_LENGTH ) ),
+            out.toByteArray() );
+    }
+
+
+    /**
+     * Test that a line is never folded in the middle of a multi-bytes UTF-8 char
+     */
+    @Test
+    public void testFoldingUtf8() throws Exception
+    {
+        Entry entry = new DefaultEntry( "cn=test,dc=example,dc=com" );
+        entry.add( new DefaultAttribute( "x-\u00e9\u00e9\u00e9\u00e9\u00e9-description", "test" ) );
+        String expected = "x-\u00e9\u00e9\u00e9\u00e9\u00e9-description: test";
+
+        for ( int lineLength = 2; lineLength < 40; lineLength++ )
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            try ( LdifWriter writer = new LdifWriter( out ) )
+            {
+                writer.setLineLength( lineLength );
+                writer.write( entry );
+            }
+
+            byte[] bytes = out.toByteArray();
+
+            for ( int i = 0; i < bytes.length - 2; i++ )
+            {
+                if ( ( bytes[i] == '\n' ) && ( bytes[i + 1] == ' ' ) )
+                {
+                    // A continuation line can't start with a 10xxxxxx byte
+                    assertTrue( ( bytes[i + 2] & 0xC0 ) != 0x80, "line length " + lineLength );
+                }
+            }
+
+            String ldif = Strings.utf8ToString( bytes ).replace( "\n ", "" );
+            assertTrue( ldif.contains( expected + "\n" ), ldif );
+        }
+    }
+
+
+    /**
+     * Test that the parallel mode writes the records in order
+     */
+    @Test
+    public void testParallel() throws Exception
+    {
+        List<Entry> entries = new ArrayList<>();
+
+        for ( int i = 0; i < 2000; i++ )
+        {
+            entries.add( createEntry( i ) );
+        }
+
+        String expected = write( entries, 1, 40 );
+
+        assertEquals( expected, write( entries, 4, 40 ) );
+    }
+
+
+    /**
+     * Test that a too short line length is rejected
+     */
+    @Test
+    public void testLineLengthTooShort() throws Exception
+    {
+        try ( LdifWriter writer = new LdifWriter( new StringWriter() ) )
+        {
+            assertThrows( IllegalArgumentException.class, () -> writer.setLineLength( 1 ) );
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif.anonymizer;
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Tests the SpillableValueMap
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.CONCURRENT)
+public class SpillableValueMapTest
+{
+    @TempDir
+    Path tmpDir;
+
+
+    @Test
+    public void testPutGet() throws Exception
+    {
+        // A hot set of 8 values and 16 buckets : most of the values are read from the file
+        try ( SpillableValueMap valueMap = new SpillableValueMap( null, tmpDir, 8, 16 ) )
+        {
+            for ( int i = 0; i < 1000; i++ )
+            {
+                assertNull( valueMap.put( new Value( "value" + i ), new Value( "anon" + i ) ) );
+            }
+
+            valueMap.put( new Value( new byte[] { 0x01, 0x02 } ), new Value( new byte[] { 0x03, 0x04 } ) );
+
+            assertEquals( 1001, valueMap.size() );
+
+            for ( int i = 999; i >= 0; i-- )
+            {
+                assertEquals( "anon" + i, valueMap.get( new Value( "value" + i ) ).getString() );
+            }
+
+            assertArrayEquals( new byte[] { 0x03, 0x04 }, valueMap.get( new Value( new byte[] { 0x01, 0x02 } ) )
+                .getBytes() );
+            assertNull( valueMap.get( new Value( "value1000" ) ) );
+            assertNull( valueMap.get( "value1" ) );
+            assertTrue( valueMap.containsKey( new Value( "value500" ) ) );
+            assertTrue( valueMap.anonymizedValueSet().contains( new Value( "anon500" ) ) );
+        }
+    }
+
+
+    @Test
+    public void testReplaceAndIterate() throws Exception
+    {
+        try ( SpillableValueMap valueMap = new SpillableValueMap( null, tmpDir, 2, 4 ) )
+        {
+            Map<Value, Value> expected = new HashMap<>();
+
+            for ( int i = 0; i < 100; i++ )
+            {
+                valueMap.put( new Value( "value" + i ), new Value( "anon" + i ) );
+                expected.put( new Value( "value" + i ), new Value( "anon" + i ) );
+            }
+
+            // The replaced value shadows the former one
+            assertEquals( "anon10", valueMap.put( new Value( "value10" ), new Value( "other" ) ).getString() );
+            expected.put( new Value( "value10" ), new Value( "other" ) );
+
+            assertEquals( 100, valueMap.size() );
+            assertEquals( expected, new HashMap<>( valueMap ) );
+
+            // The former anonymized value is still known
+            Set<Value> anonymizedValues = valueMap.anonymizedValueSet();
+            assertTrue( anonymizedValues.contains( new Value( "other" ) ) );
+            assertTrue( anonymizedValues.contains( new Value( "anon10" ) ) );
+            assertEquals( 101, anonymizedValues.size() );
+
+            valueMap.clear();
+
+            assertEquals( 0, valueMap.size() );
+            assertNull( valueMap.get( new Value( "value1" ) ) );
+            assertFalse( valueMap.entrySet().iterator().hasNext() );
+            assertTrue( anonymizedValues.isEmpty() );
+            assertFalse( anonymizedValues.contains( new Value( "anon1" ) ) );
+        }
+    }
+
+
+    @Test
+    public void testAnonymizedValueSet() throws Exception
+    {
+        try ( SpillableValueMap valueMap = new SpillableValueMap( null, tmpDir, 2, 4 ) )
+        {
+            Set<Value> anonymizedValues = valueMap.anonymizedValueSet();
+            Set<Value> expected = new HashSet<>();
+
+            for ( int i = 0; i < 100; i++ )
+            {
+                valueMap.put( new Value( "value" + i ), new Value( "anon" + i ) );
+                expected.add( new Value( "anon" + i ) );
+            }
+
+            // The values of the map are already there
+            assertFalse( anonymizedValues.add( new Value( "anon50" ) ) );
+
+            // Some other values can be added
+            assertTrue( anonymizedValues.add( new Value( "extra" ) ) );
+            assertFalse( anonymizedValues.add( new Value( "extra" ) ) );
+            expected.add( new Value( "extra" ) );
+
+            assertTrue( anonymizedValues.contains( new Value( "extra" ) ) );
+            assertFalse( anonymizedValues.contains( new Value( "value50" ) ) );
+            assertFalse( anonymizedValues.contains( "anon50" ) );
+            assertEquals( 101, anonymizedValues.size() );
+            assertEquals( 100, valueMap.size() );
+            assertEquals( expected, new HashSet<>( anonymizedValues ) );
+
+            // The values can't be removed
+            assertThrows( UnsupportedOperationException.class, () -> anonymizedValues.remove( new Value( "extra" ) ) );
+        }
+    }
+
+
+    @Test
+    public void testComputeIfAbsent() throws Exception
+    {
+        try ( SpillableValueMap valueMap = new SpillableValueMap( null, tmpDir, 2, 4 ) )
+        {
+            assertEquals( "anon", valueMap.computeIfAbsent( new Value( "value" ), v -> new Value( "anon" ) ).getString() );
+            assertEquals( "anon", valueMap.computeIfAbsent( new Value( "value" ), v -> new Value( "other" ) ).getString() );
+            assertNull( valueMap.computeIfAbsent( new Value( "none" ), v -> null ) );
+            assertEquals( 1, valueMap.size() );
+            assertTrue( valueMap.anonymizedValueSet().contains( new Value( "anon" ) ) );
+        }
+    }
+
+
+    @Test
+    public void testComputeIfAbsentOutsideLock() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try ( SpillableValueMap valueMap = new SpillableValueMap( null, tmpDir, 2, 4 ) )
+        {
+            CountDownLatch otherDone = new CountDownLatch( 1 );
+
+            // The other thread uses the map while a mapping is being computed
+            Value anon = valueMap.computeIfAbsent( new Value( "value" ), v ->
+            {
+                Future<?> other = executor.submit( () ->
+                {
+                    valueMap.computeIfAbsent( new Value( "other" ), o -> new Value( "anonOther" ) );
+                    otherDone.countDown();
+                } );
+
+                try
+                {
+                    assertTrue( otherDone.await( 10, TimeUnit.SECONDS ) );
+                    other.get();
+                }
+                catch ( Exception e )
+                {
+                    throw new IllegalStateException( e );
+                }
+
+                return new Value( "anon" );
+            } );
+
+            assertEquals( "anon", anon.getString() );
+            assertEquals( "anonOther", valueMap.get( new Value( "other" ) ).getString() );
+            assertEquals( 2, valueMap.size() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void testConcurrentComputeIfAbsent() throws Exception
+    {
+        int nbThreads = 8;
+        int nbValues = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool( nbThreads );
+        AtomicInteger nbCalls = new AtomicInteger();
+
+        try ( SpillableValueMap valueMap = new SpillableValueMap( null, tmpDir, 16, 64 ) )
+        {
+            Future<?>[] futures = new Future<?>[nbThreads];
+
+            for ( int t = 0; t < nbThreads; t++ )
+            {
+                futures[t] = executor.submit( () ->
+                {
+                    for ( int i = 0; i < nbValues; i++ )
+                    {
+                        Value anon = valueMap.computeIfAbsent( new Value( "value" + i ), v ->
+                        {
+                            nbCalls.incrementAndGet();
+
+                            return new Value( "anon" + v.getString() );
+                        } );
+
+                        assertEquals( "anonvalue" + i, anon.getString() );
+                    }
+                } );
+            }
+
+            for ( Future<?> future : futures )
+            {
+                future.get();
+            }
+
+            // A mapping may have been computed by many threads, but is stored once
+            assertTrue( nbCalls.get() >= nbValues );
+            assertEquals( nbValues, valueMap.size() );
+            assertEquals( nbValues, valueMap.anonymizedValueSet().size() );
+            assertEquals( nbValues, new HashMap<>( valueMap ).size() );
+
+            for ( int i = 0; i < nbValues; i++ )
+            {
+                assertEquals( "anonvalue" + i, valueMap.get( new Value( "value" + i ) ).getString() );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void testFileDeletedOnClose() throws Exception
+    {
+        Path dir = Files.createDirectory( tmpDir.resolve( "close" ) );
+
+        try ( SpillableValueMap valueMap = new SpillableValueMap( null, dir ) )
+        {
+            valueMap.put( new Value( "a" ), new Value( "b" ) );
+        }
+
+        assertEquals( 0L, Files.list( dir ).count() );
+    }
+}
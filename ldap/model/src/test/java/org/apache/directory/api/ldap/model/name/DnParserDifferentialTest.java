@@ -0,0 +1,419 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.name;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Checks that the DnParser and the Antlr based ComplexDnParser produce the same
+ * DNs and RDNs, and reject the same names.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.CONCURRENT)
+public class DnParserDifferentialTest
+{
+    /** Some valid DNs */
+    private static final String[] VALID_DNS =
+        {
+            "",
+            " ",
+            "a=b",
+            "a=",
+            "a = b",
+            "  ou  =  Example ,  ou  =  COM ",
+            "cn=Doe\\, John,ou=people,dc=example,dc=com",
+            "cn=Doe\\2C John,ou=people,dc=example,dc=com",
+            "cn=J\\C3\\A9r\\C3\\B4me,dc=example,dc=com",
+            "cn=\\ leading and trailing\\ ,dc=com",
+            "cn=\\#hash,dc=com",
+            "cn=a#b,dc=com",
+            "cn=a=b,dc=com",
+            "cn=#0403414243,dc=com",
+            "cn=#F180,dc=com",
+            "cn = #0403414243 ,dc=com",
+            "cn=\"Doe, John\",dc=com",
+            "cn=\"a\\\"b\" ,dc=com",
+            "cn=\\\"quoted\\\",dc=com",
+            "cn=John+sn=Doe,dc=com",
+            "sn=Doe+cn=John,dc=com",
+            " cn = John + sn = Doe ,dc=com",
+            "cn=a+cn=b+cn=c,dc=com",
+            "cn=T\\+ST\\ +ou=Ex\\+mple,ou=COM",
+            "ou=a;ou=b;dc=com",
+            "2.5.4.3=John,dc=com",
+            "OID.2.5.4.3=John,dc=com",
+            "oid.2.5.4.3=John,dc=com",
+            "0.9.2342.19200300.100.1.25=com",
+            "cn-1=a,cn_2=b",
+            "cn=\\<\\>\\;\\=,dc=com",
+            "cn=café,dc=com",
+            "cn=\\e9,dc=com",
+            "cn=a\\\\b,dc=com"
+        };
+
+    /** Some invalid DNs */
+    private static final String[] INVALID_DNS =
+        {
+            "a",
+            "=b",
+            "a=b,",
+            ",a=b",
+            "a=b,,c=d",
+            "cn=Doe+cn=#98D3",
+            "a=b+",
+            "+a=b",
+            "1a=b",
+            "01.2=b",
+            "1.2.=b",
+            "1=b",
+            "a b=c",
+            "a=b<c",
+            "a=b>c",
+            "a=b\"c",
+            "a=\\",
+            "a=\\z",
+            "a=\\4",
+            "a=#",
+            "a=#0",
+            "a=#041",
+            "a=#zz",
+            "a=#0403 b",
+            "a=\"unterminated",
+            "a=\"quoted\" b",
+            "a=b\u0000"
+        };
+
+    /** The types used to generate some random DNs */
+    private static final String[] TYPES =
+        { "cn", "CN", "sn", "ou", "dc", "commonName", "2.5.4.3", "OID.2.5.4.11", "x-attr", "a_b" };
+
+    /** The pieces used to generate some random values */
+    private static final String[] PIECES =
+        { "a", "Doe", "John", " ", "  ", "\\,", "\\+", "\\;", "\\\"", "\\<", "\\>", "\\=", "\\#", "#", "=", "\\2C",
+            "\\C3\\A9", "é", "中文", "-", "_", "." };
+
+
+    /**
+     * Parses a DN with both parsers, and checks that the results are the same
+     */
+    private static void checkDn( String name )
+    {
+        List<Rdn> expectedRdns = new ArrayList<>();
+        String expectedNormName = null;
+        Exception expectedException = null;
+
+        if ( name.trim().isEmpty() )
+        {
+            // A blank name is the empty Dn : it was never given to the ComplexDnParser
+            expectedNormName = "";
+        }
+        else
+        {
+            try
+            {
+                expectedNormName = new ComplexDnParser().parseDn( null, name, expectedRdns );
+            }
+            catch ( LdapInvalidDnException lide )
+            {
+                expectedException = lide;
+            }
+        }
+
+        List<Rdn> rdns = new ArrayList<>();
+        String normName = null;
+
+        try
+        {
+            normName = DnParser.parseDn( null, name, rdns );
+        }
+        catch ( LdapInvalidDnException lide )
+        {
+            if ( expectedException == null )
+            {
+                fail( "'" + name + "' has been rejected : " + lide.getMessage() );
+            }
+
+            return;
+        }
+
+        if ( expectedException != null )
+        {
+            fail( "'" + name + "' should have been rejected : " + expectedException.getMessage() );
+        }
+
+        assertEquals( expectedNormName, normName, name );
+        assertEquals( expectedRdns.size(), rdns.size(), name );
+
+        for ( int i = 0; i < rdns.size(); i++ )
+        {
+            checkRdn( name, expectedRdns.get( i ), rdns.get( i ) );
+        }
+    }
+
+
+    /**
+     * Parses a RDN with both parsers, and checks that the results are the same
+     */
+    private static void checkRdn( String name )
+    {
+        Rdn expected = new Rdn();
+        Exception expectedException = null;
+
+        try
+        {
+            new ComplexDnParser().parseRdn( null, name, expected );
+        }
+        catch ( LdapInvalidDnException lide )
+        {
+            expectedException = lide;
+        }
+
+        Rdn rdn = new Rdn();
+
+        try
+        {
+            DnParser.parseRdn( null, name, rdn );
+        }
+        catch ( LdapInvalidDnException lide )
+        {
+            if ( expectedException == null )
+            {
+                fail( "'" + name + "' has been rejected : " + lide.getMessage() );
+            }
+
+            return;
+        }
+
+        if ( expectedException != null )
+        {
+            fail( "'" + name + "' should have been rejected : " + expectedException.getMessage() );
+        }
+
+        checkRdn( name, expected, rdn );
+    }
+
+
+    /**
+     * Checks that two RDNs are the same. The user provided name of a single Ava is
+     * trimmed by the DnParser, as it was by the former fast parser, so it is not
+     * compared.
+     */
+    private static void checkRdn( String name, Rdn expected, Rdn rdn )
+    {
+        assertEquals( expected.getName(), rdn.getName(), name );
+        assertEquals( expected.getNormName(), rdn.getNormName(), name );
+        assertEquals( expected.size(), rdn.size(), name );
+        assertEquals( expected, rdn, name );
+        assertEquals( expected.hashCode(), rdn.hashCode(), name );
+
+        Iterator<Ava> expectedAvas = expected.iterator();
+        Iterator<Ava> avas = rdn.iterator();
+
+        while ( expectedAvas.hasNext() )
+        {
+            Ava expectedAva = expectedAvas.next();
+            Ava ava = avas.next();
+
+            assertEquals( expectedAva.getType(), ava.getType(), name );
+            assertEquals( expectedAva.getNormType(), ava.getNormType(), name );
+            assertEquals( expectedAva.getValue(), ava.getValue(), name );
+            assertEquals( expectedAva.getValue().isHumanReadable(), ava.getValue().isHumanReadable(), name );
+
+            if ( expected.size() > 1 )
+            {
+                assertEquals( expectedAva.getName(), ava.getName(), name );
+            }
+        }
+    }
+
+
+    /**
+     * Generates a random DN, made of valid RDNs
+     */
+    private static String randomDn( Random random )
+    {
+        StringBuilder sb = new StringBuilder();
+        int nbRdns = 1 + random.nextInt( 4 );
+
+        for ( int i = 0; i < nbRdns; i++ )
+        {
+            if ( i > 0 )
+            {
+                sb.append( random.nextInt( 5 ) == 0 ? ';' : ',' );
+            }
+
+            int nbAvas = random.nextInt( 4 ) == 0 ? 2 + random.nextInt( 2 ) : 1;
+
+            for ( int j = 0; j < nbAvas; j++ )
+            {
+                if ( j > 0 )
+                {
+                    sb.append( '+' );
+                }
+
+                sb.append( random.nextBoolean() ? " " : "" );
+                sb.append( TYPES[random.nextInt( TYPES.length )] );
+                sb.append( random.nextBoolean() ? " = " : "=" );
+
+                switch ( random.nextInt( 6 ) )
+                {
+                    case 0:
+                        // A hexstring
+                        sb.append( '#' );
+
+                        for ( int k = 0; k <= random.nextInt( 4 ); k++ )
+                        {
+                            sb.append( String.format( Locale.ROOT, "%02X", random.nextInt( 256 ) ) );
+                        }
+
+                        break;
+
+                    case 1:
+                        // A quoted string, without any '#'
+                        sb.append( "\"Doe, " ).append( random.nextInt( 100 ) ).append( "+\\\"x\\\";\"" );
+                        break;
+
+                    default:
+                        // A string, which can't start with a '#' or a space
+                        sb.append( ( char ) ( 'a' + random.nextInt( 26 ) ) );
+
+                        for ( int k = random.nextInt( 6 ); k > 0; k-- )
+                        {
+                            sb.append( PIECES[random.nextInt( PIECES.length )] );
+                        }
+
+                        break;
+                }
+
+                sb.append( random.nextBoolean() ? " " : "" );
+            }
+        }
+
+        return sb.toString();
+    }
+
+
+    @Test
+    public void testValidDns()
+    {
+        for ( String name : VALID_DNS )
+        {
+            checkDn( name );
+        }
+    }
+
+
+    @Test
+    public void testInvalidDns()
+    {
+        for ( String name : INVALID_DNS )
+        {
+            checkDn( name );
+        }
+    }
+
+
+    @Test
+    public void testRdns()
+    {
+        for ( String name : new String[]
+            { "a=b", " a = b ", "cn=John+sn=Doe", "cn=Doe\\, John", "cn=#0403414243", "cn=\"a,b\"", "a=b,c=d",
+                "cn", "cn=a+" } )
+        {
+            checkRdn( name );
+        }
+    }
+
+
+    @Test
+    public void testRandomDns()
+    {
+        Random random = new Random( 4514L );
+
+        for ( int i = 0; i < 10000; i++ )
+        {
+            checkDn( randomDn( random ) );
+        }
+    }
+
+
+    /**
+     * Compare the DnParser and the ComplexDnParser speed, for simple, escaped and
+     * multi-valued DNs. Enable it to get some numbers.
+     */
+    @Test
+    @Disabled
+    public void testPerf() throws LdapInvalidDnException
+    {
+        String[][] names =
+            {
+                { "simple", "uid=jdoe,ou=people,dc=example,dc=com" },
+                { "escaped", "cn=Doe\\, John,ou=J\\C3\\A9r\\C3\\B4me,dc=example,dc=com" },
+                { "multi-valued", "cn=John+sn=Doe+uid=jdoe,ou=people,dc=example,dc=com" }
+            };
+
+        int nbLoops = 1000000;
+
+        for ( String[] name : names )
+        {
+            // Warm up
+            for ( int i = 0; i < nbLoops; i++ )
+            {
+                DnParser.parseDn( null, name[1], new ArrayList<>() );
+                new ComplexDnParser().parseDn( null, name[1], new ArrayList<>() );
+            }
+
+            long t0 = System.currentTimeMillis();
+
+            for ( int i = 0; i < nbLoops; i++ )
+            {
+                DnParser.parseDn( null, name[1], new ArrayList<>() );
+            }
+
+            long t1 = System.currentTimeMillis();
+
+            for ( int i = 0; i < nbLoops; i++ )
+            {
+                new ComplexDnParser().parseDn( null, name[1], new ArrayList<>() );
+            }
+
+            long t2 = System.currentTimeMillis();
+
+            System.out.println( name[0] + " DN, " + nbLoops + " parsings : DnParser " + ( t1 - t0 )
+                + " ms, ComplexDnParser " + ( t2 - t1 ) + " ms" );
+        }
+    }
+}
@@ -20,7 +20,9 @@
 package org.apache.directory.api.ldap.model.name;
 
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -28,9 +30,7 @@ import static org.junit.jupiter.api.Assertions.fail;
 import java.nio.charset.StandardCharsets;
 
 import org.apache.directory.api.ldap.model.exception.LdapException;
-import org.apache.directory.api.ldap.model.name.Dn;
-import org.apache.directory.api.ldap.model.name.FastDnParser;
-import org.apache.directory.api.ldap.model.name.TooComplexDnException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.util.Strings;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.parallel.Execution;
@@ -38,15 +38,15 @@ import org.junit.jupiter.api.parallel.ExecutionMode;
 
 
 /**
- * Tests the fast Dn parser.
+ * Tests the RFC 4514 Dn parser, without any SchemaManager.
  * 
- * The test cases are copied from DnParserTest and adjusted when an
- * TooComplexDnException is expected.
+ * The test cases are the former FastDnParser ones : the DNs the fast parser
+ * rejected as too complex are now parsed.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 @Execution(ExecutionMode.CONCURRENT)
-public class FastDnParserTest
+public class DnParserRfc4514Test
 {
 
     /**
@@ -55,7 +55,7 @@ public class FastDnParserTest
     @Test
     public void testLdapDNEmpty() throws LdapException
     {
-        assertEquals( "", FastDnParser.parse( "" ).getName() );
+        assertEquals( "", DnParser.parse( null, "" ).getName() );
     }
 
 
@@ -67,12 +67,12 @@ public class FastDnParserTest
     public void testLdapDNIncomplete() throws LdapException
     {
         // empty Dn is ok
-        FastDnParser.parse( " " );
+        DnParser.parse( null, " " );
 
         // test DNs starting with an descr
         try
         {
-            FastDnParser.parse( " a" );
+            DnParser.parse( null, " a" );
             fail();
         }
         catch ( LdapException ine )
@@ -81,7 +81,7 @@ public class FastDnParserTest
         }
         try
         {
-            FastDnParser.parse( " a " );
+            DnParser.parse( null, " a " );
             fail();
         }
         catch ( LdapException ine )
@@ -90,21 +90,21 @@ public class FastDnParserTest
         }
         try
         {
-            FastDnParser.parse( " a- " );
+            DnParser.parse( null, " a- " );
             fail();
         }
         catch ( LdapException ine )
         {
             // expected
         }
-        FastDnParser.parse( " a =" );
-        FastDnParser.parse( " a = " );
-        FastDnParser.parse( " a = b" );
+        DnParser.parse( null, " a =" );
+        DnParser.parse( null, " a = " );
+        DnParser.parse( null, " a = b" );
 
         // test DNs starting with an OID
         try
         {
-            FastDnParser.parse( " 1 = b " );
+            DnParser.parse( null, " 1 = b " );
             fail( "OID must contain at least on dot." );
         }
         catch ( LdapException ine )
@@ -113,7 +113,7 @@ public class FastDnParserTest
         }
         try
         {
-            FastDnParser.parse( " 0" );
+            DnParser.parse( null, " 0" );
             fail();
         }
         catch ( LdapException ine )
@@ -122,7 +122,7 @@ public class FastDnParserTest
         }
         try
         {
-            FastDnParser.parse( " 0." );
+            DnParser.parse( null, " 0." );
             fail();
         }
         catch ( LdapException ine )
@@ -131,7 +131,7 @@ public class FastDnParserTest
         }
         try
         {
-            FastDnParser.parse( " 0.5" );
+            DnParser.parse( null, " 0.5" );
             fail();
         }
         catch ( LdapException ine )
@@ -140,7 +140,7 @@ public class FastDnParserTest
         }
         try
         {
-            FastDnParser.parse( " 0.5 " );
+            DnParser.parse( null, " 0.5 " );
             fail();
         }
         catch ( LdapException ine )
@@ -148,9 +148,9 @@ public class FastDnParserTest
             // expected
         }
 
-        FastDnParser.parse( " 0.5=" );
-        FastDnParser.parse( " 0.5 = " );
-        FastDnParser.parse( " 0.5 = b" );
+        DnParser.parse( null, " 0.5=" );
+        DnParser.parse( null, " 0.5 = " );
+        DnParser.parse( null, " 0.5 = b" );
     }
 
 
@@ -160,7 +160,7 @@ public class FastDnParserTest
     @Test
     public void testLdapDNSimple() throws LdapException
     {
-        Dn dn = FastDnParser.parse( "a = b" );
+        Dn dn = DnParser.parse( null, "a = b" );
 
         assertEquals( "a = b", dn.getName() );
         assertEquals( "a=b", dn.getEscaped() );
@@ -185,7 +185,7 @@ public class FastDnParserTest
     @Test
     public void testLdapDNComposite() throws LdapException
     {
-        Dn dn = FastDnParser.parse( "a = b, c = d" );
+        Dn dn = DnParser.parse( null, "a = b, c = d" );
         assertEquals( "a=b,c=d", dn.getEscaped() );
         assertEquals( "a = b, c = d", dn.getName() );
     }
@@ -197,7 +197,7 @@ public class FastDnParserTest
     @Test
     public void testLdapDNCompositeWithSpace() throws LdapException
     {
-        Dn dn = FastDnParser.parse( "a=b, a =b, a= b, a = b, a  =  b" );
+        Dn dn = DnParser.parse( null, "a=b, a =b, a= b, a = b, a  =  b" );
         assertEquals( "a=b,a=b,a=b,a=b,a=b", dn.getEscaped() );
         assertEquals( "a=b, a =b, a= b, a = b, a  =  b", dn.getName() );
     }
@@ -210,7 +210,7 @@ public class FastDnParserTest
     @Test
     public void testLdapDNCompositeSepators() throws LdapException
     {
-        Dn dn = FastDnParser.parse( "a=b;c=d,e=f" );
+        Dn dn = DnParser.parse( null, "a=b;c=d,e=f" );
         assertEquals( "a=b,c=d,e=f", dn.getEscaped() );
         assertEquals( "a=b;c=d,e=f", dn.getName() );
     }
@@ -221,7 +221,7 @@ public class FastDnParserTest
     @Test
     public void testAttributeTypeWithUnderscore() throws LdapException
     {
-        Dn dn = FastDnParser.parse( "microsoft_developpers=morons" );
+        Dn dn = DnParser.parse( null, "microsoft_developpers=morons" );
         assertEquals( "microsoft_developpers=morons", dn.getEscaped() );
     }
 
@@ -232,10 +232,11 @@ public class FastDnParserTest
     @Test
     public void testLdapDNSimpleMultivaluedAttribute() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( "a = b + c = d" );
-        } );
+        Dn dn = DnParser.parse( null, "a = b + c = d" );
+
+        assertEquals( "a = b + c = d", dn.getName() );
+        assertEquals( "a=b+c=d", dn.getEscaped() );
+        assertEquals( 2, dn.getRdn().size() );
     }
 
 
@@ -246,10 +247,12 @@ public class FastDnParserTest
     @Test
     public void testLdapDNCompositeMultivaluedAttribute() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( "a=b+c=d, e=f + g=h + i=j" );
-        } );
+        Dn dn = DnParser.parse( null, "a=b+c=d, e=f + g=h + i=j" );
+
+        assertEquals( "a=b+c=d,e=f+g=h+i=j", dn.getEscaped() );
+        assertEquals( "a=b+c=d, e=f + g=h + i=j", dn.getName() );
+        assertEquals( 2, dn.size() );
+        assertEquals( 3, dn.getRdn( 1 ).size() );
     }
 
 
@@ -259,10 +262,11 @@ public class FastDnParserTest
     @Test
     public void testLdapDNOidUpper() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( "OID.12.34.56 = azerty" );
-        } );
+        Dn dn = DnParser.parse( null, "OID.12.34.56 = azerty" );
+
+        assertEquals( "OID.12.34.56=azerty", dn.getEscaped() );
+        assertEquals( "oid.12.34.56=azerty", dn.getNormName() );
+        assertEquals( "OID.12.34.56 = azerty", dn.getName() );
     }
 
 
@@ -272,10 +276,10 @@ public class FastDnParserTest
     @Test
     public void testLdapDNOidLower() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( "oid.12.34.56 = azerty" );
-        } );
+        Dn dn = DnParser.parse( null, "oid.12.34.56 = azerty" );
+
+        assertEquals( "oid.12.34.56=azerty", dn.getEscaped() );
+        assertEquals( "oid.12.34.56 = azerty", dn.getName() );
     }
 
 
@@ -286,7 +290,7 @@ public class FastDnParserTest
     @Test
     public void testLdapDNOidWithoutPrefix() throws LdapException
     {
-        Dn dn = FastDnParser.parse( "12.34.56 = azerty" );
+        Dn dn = DnParser.parse( null, "12.34.56 = azerty" );
         assertEquals( "12.34.56=azerty", dn.getEscaped() );
         assertEquals( "12.34.56 = azerty", dn.getName() );
     }
@@ -299,7 +303,7 @@ public class FastDnParserTest
     @Test
     public void testLdapDNCompositeOidWithoutPrefix() throws LdapException
     {
-        Dn dn = FastDnParser.parse( "12.34.56 = azerty; 7.8 = test" );
+        Dn dn = DnParser.parse( null, "12.34.56 = azerty; 7.8 = test" );
         assertEquals( "12.34.56=azerty,7.8=test", dn.getEscaped() );
         assertEquals( "12.34.56 = azerty; 7.8 = test", dn.getName() );
     }
@@ -311,10 +315,11 @@ public class FastDnParserTest
     @Test
     public void testLdapDNPairCharAttributeValue() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( "a = \\,\\=\\+\\<\\>\\#\\;\\\\\\\"\\C3\\A9" );
-        } );
+        Dn dn = DnParser.parse( null, "a = \\,\\=\\+\\<\\>\\#\\;\\\\\\\"\\C3\\A9" );
+
+        assertEquals( "a = \\,\\=\\+\\<\\>\\#\\;\\\\\\\"\\C3\\A9", dn.getName() );
+        assertEquals( "a=\\,=\\+\\<\\>#\\;\\\\\\\"\u00e9", dn.getEscaped() );
+        assertEquals( ",=+<>#;\\\"\u00e9", dn.getRdn().getValue() );
     }
 
 
@@ -324,10 +329,12 @@ public class FastDnParserTest
     @Test
     public void testLdapDNHexStringAttributeValue() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( "a = #0010A0AAFF" );
-        } );
+        Dn dn = DnParser.parse( null, "a = #0010A0AAFF" );
+
+        assertEquals( "a = #0010A0AAFF", dn.getName() );
+        assertFalse( dn.getRdn().getAva().getValue().isHumanReadable() );
+        assertArrayEquals( new byte[]
+            { 0x00, 0x10, ( byte ) 0xA0, ( byte ) 0xAA, ( byte ) 0xFF }, dn.getRdn().getAva().getValue().getBytes() );
     }
 
 
@@ -337,9 +344,9 @@ public class FastDnParserTest
     @Test
     public void testBadLdapDNHexStringAttributeValue() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
+        assertThrows( LdapInvalidDnException.class, () -> 
         {
-            FastDnParser.parse( "a=#zz" );
+            DnParser.parse( null, "a=#zz" );
         } );
     }
 
@@ -350,10 +357,11 @@ public class FastDnParserTest
     @Test
     public void testLdapDNQuotedAttributeValue() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( "a = quoted \\\"value" );
-        } );
+        Dn dn = DnParser.parse( null, "a = quoted \\\"value" );
+
+        assertEquals( "a = quoted \\\"value", dn.getName() );
+        assertEquals( "a=quoted \\\"value", dn.getEscaped() );
+        assertEquals( "quoted \"value", dn.getRdn().getValue() );
     }
 
 
@@ -364,7 +372,7 @@ public class FastDnParserTest
             { 'C', 'N', ' ', '=', ' ', 'E', 'm', 'm', 'a', 'n', 'u', 'e', 'l', ' ', ' ', 'L', ( byte ) 0xc3,
                 ( byte ) 0xa9, 'c', 'h', 'a', 'r', 'n', 'y' } );
 
-        Dn name = FastDnParser.parse( dn );
+        Dn name = DnParser.parse( null, dn );
 
         assertEquals( "CN = Emmanuel  L\u00e9charny", name.getName() );
         assertEquals( "CN=Emmanuel  L\u00e9charny", name.getEscaped() );
@@ -377,7 +385,7 @@ public class FastDnParserTest
         String dn = Strings.utf8ToString( new byte[]
             { 'C', '=', ' ', 'E', ( byte ) 0xc3, ( byte ) 0xa9, 'c' } );
 
-        Dn name = FastDnParser.parse( dn );
+        Dn name = DnParser.parse( null, dn );
 
         assertEquals( "C= E\u00e9c", name.getName() );
         assertEquals( "C=E\u00e9c", name.getEscaped() );
@@ -387,11 +395,13 @@ public class FastDnParserTest
     @Test
     public void testVsldapExtras() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser
-                .parse( "cn=Billy Bakers, OID.2.5.4.11=Corporate Tax, ou=Fin-Accounting, ou=Americas, ou=Search, o=IMC, c=US" );
-        } );
+        Dn dn = DnParser
+            .parse( null, "cn=Billy Bakers, OID.2.5.4.11=Corporate Tax, ou=Fin-Accounting, ou=Americas, ou=Search, o=IMC, c=US" );
+
+        assertEquals( "cn=Billy Bakers,OID.2.5.4.11=Corporate Tax,ou=Fin-Accounting,ou=Americas,ou=Search,o=IMC,c=US",
+            dn.getEscaped() );
+        assertEquals( "cn=Billy Bakers,oid.2.5.4.11=Corporate Tax,ou=Fin-Accounting,ou=Americas,ou=Search,o=IMC,c=US",
+            dn.getNormName() );
     }
 
 
@@ -401,7 +411,7 @@ public class FastDnParserTest
     @Test
     public final void testParseStringEmpty() throws LdapException
     {
-        Dn nameEmpty = FastDnParser.parse( "" );
+        Dn nameEmpty = DnParser.parse( null, "" );
 
         assertNotNull( nameEmpty );
     }
@@ -413,7 +423,7 @@ public class FastDnParserTest
     @Test
     public final void testParseStringNull() throws LdapException
     {
-        Dn nameNull = FastDnParser.parse( null );
+        Dn nameNull = DnParser.parse( null, null );
 
         assertEquals( "", nameNull.toString(), "Null Dn are legal : " );
     }
@@ -425,8 +435,8 @@ public class FastDnParserTest
     @Test
     public final void testParseStringRFC1779_1() throws LdapException
     {
-        Dn nameRFC1779_1 = FastDnParser
-            .parse( "CN=Marshall T. Rose, O=Dover Beach Consulting, L=Santa Clara, ST=California, C=US" );
+        Dn nameRFC1779_1 = DnParser
+            .parse( null, "CN=Marshall T. Rose, O=Dover Beach Consulting, L=Santa Clara, ST=California, C=US" );
 
         assertEquals( 
             "CN=Marshall T. Rose, O=Dover Beach Consulting, L=Santa Clara, ST=California, C=US",
@@ -442,7 +452,7 @@ public class FastDnParserTest
     @Test
     public final void testParseStringRFC2253_1() throws LdapException
     {
-        Dn nameRFC2253_1 = FastDnParser.parse( "CN=Steve Kille,O=Isode limited,C=GB" );
+        Dn nameRFC2253_1 = DnParser.parse( null, "CN=Steve Kille,O=Isode limited,C=GB" );
 
         assertEquals( "CN=Steve Kille,O=Isode limited,C=GB", nameRFC2253_1.getName(), "RFC2253_1 : " );
     }
@@ -454,10 +464,11 @@ public class FastDnParserTest
     @Test
     public final void testParseStringRFC2253_2() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( "CN = Sales + CN =   J. Smith , O = Widget Inc. , C = US" );
-        } );
+        Dn nameRFC2253_2 = DnParser.parse( null, "CN = Sales + CN =   J. Smith , O = Widget Inc. , C = US" );
+
+        assertEquals( "CN = Sales + CN =   J. Smith , O = Widget Inc. , C = US", nameRFC2253_2.getName(),
+            "RFC2253_2 : " );
+        assertEquals( "CN=J. Smith+CN=Sales,O=Widget Inc.,C=US", nameRFC2253_2.getEscaped(), "RFC2253_2 : " );
     }
 
 
@@ -467,10 +478,10 @@ public class FastDnParserTest
     @Test
     public final void testParseStringRFC2253_3() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( "CN=L. Eagle,   O=Sue\\, Grabbit and Runn, C=GB" );
-        } );
+        Dn nameRFC2253_3 = DnParser.parse( null, "CN=L. Eagle,   O=Sue\\, Grabbit and Runn, C=GB" );
+
+        assertEquals( "CN=L. Eagle,   O=Sue\\, Grabbit and Runn, C=GB", nameRFC2253_3.getName(), "RFC2253_3 : " );
+        assertEquals( "CN=L. Eagle,O=Sue\\, Grabbit and Runn,C=GB", nameRFC2253_3.getEscaped(), "RFC2253_3 : " );
     }
 
 
@@ -480,10 +491,10 @@ public class FastDnParserTest
     @Test
     public final void testParseStringRFC2253_4() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( "CN=Before\\0DAfter,O=Test,C=GB" );
-        } );
+        Dn nameRFC2253_4 = DnParser.parse( null, "CN=Before\\0DAfter,O=Test,C=GB" );
+
+        assertEquals( "CN=Before\\0DAfter,O=Test,C=GB", nameRFC2253_4.getName(), "RFC2253_4 : " );
+        assertEquals( "Before\rAfter", nameRFC2253_4.getRdn().getValue(), "RFC2253_4 : " );
     }
 
 
@@ -493,10 +504,11 @@ public class FastDnParserTest
     @Test
     public final void testParseStringRFC2253_5() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( "1.3.6.1.4.1.1466.0=#04024869,O=Test,C=GB" );
-        } );
+        Dn nameRFC2253_5 = DnParser.parse( null, "1.3.6.1.4.1.1466.0=#04024869,O=Test,C=GB" );
+
+        assertEquals( "1.3.6.1.4.1.1466.0=#04024869,O=Test,C=GB", nameRFC2253_5.getName(), "RFC2253_5 : " );
+        assertArrayEquals( new byte[]
+            { 0x04, 0x02, 0x48, 0x69 }, nameRFC2253_5.getRdn().getAva().getValue().getBytes(), "RFC2253_5 : " );
     }
 
 
@@ -506,10 +518,10 @@ public class FastDnParserTest
     @Test
     public final void testParseStringRFC2253_6() throws LdapException
     {
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( "SN=Lu\\C4\\8Di\\C4\\87" );
-        } );
+        Dn nameRFC2253_6 = DnParser.parse( null, "SN=Lu\\C4\\8Di\\C4\\87" );
+
+        assertEquals( "SN=Lu\\C4\\8Di\\C4\\87", nameRFC2253_6.getName(), "RFC2253_6 : " );
+        assertEquals( "SN=Lu\u010di\u0107", nameRFC2253_6.getEscaped(), "RFC2253_6 : " );
     }
 
 
@@ -521,7 +533,7 @@ public class FastDnParserTest
     {
         try
         {
-            FastDnParser.parse( "&#347;=&#347;rasulu,dc=example,dc=com" );
+            DnParser.parse( null, "&#347;=&#347;rasulu,dc=example,dc=com" );
             fail( "the invalid name should never succeed in a parse" );
         }
         catch ( LdapException e )
@@ -541,11 +553,10 @@ public class FastDnParserTest
     public final void testPreserveSpaceAfterEscape() throws LdapException
     {
         String input = "ou=some test\\,  something else";
+        String result = DnParser.parse( null, input ).toString();
 
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( input ).toString();
-        } );
+        assertEquals( "ou=some test\\,  something else", result );
+        assertEquals( "some test,  something else", DnParser.parse( null, input ).getRdn().getValue() );
     }
 
 
@@ -554,11 +565,10 @@ public class FastDnParserTest
     {
         // '\' should be escaped as stated in RFC 2253
         String path = "windowsFilePath=C:\\\\cygwin";
+        Dn result = DnParser.parse( null, path );
 
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( path );
-        } );
+        assertEquals( path, result.getName() );
+        assertEquals( "C:\\cygwin", result.getRdn().getValue() );
     }
 
 
@@ -569,7 +579,7 @@ public class FastDnParserTest
             { 'c', 'n', '=', 0x4A, ( byte ) 0xC3, ( byte ) 0xA9, 0x72, ( byte ) 0xC3, ( byte ) 0xB4, 0x6D, 0x65 },
             StandardCharsets.UTF_8 );
 
-        String result = FastDnParser.parse( cn ).toString();
+        String result = DnParser.parse( null, cn ).toString();
 
         assertEquals( "cn=J\u00e9r\u00f4me", result );
     }
@@ -583,15 +593,14 @@ public class FastDnParserTest
                 ( byte ) 0xC3, ( byte ) 0x9F, ( byte ) 0xC3, ( byte ) 0xA4, ( byte ) 0xC3, ( byte ) 0xB6,
                 ( byte ) 0xC3, ( byte ) 0xBC }, StandardCharsets.UTF_8 );
 
-        String result = FastDnParser.parse( cn ).toString();
+        String result = DnParser.parse( null, cn ).toString();
 
         assertEquals( "cn=\u00C4\u00D6\u00DC\u00DF\u00E4\u00F6\u00FC", result );
     }
 
 
     /**
-     * Test that we can have non-ascii characters in a DN when we use the 
-     * fast DN parser
+     * Test that we can have non-ascii characters in a DN
      */
     @Test
     public void testNameTurkishChars() throws Exception
@@ -602,7 +611,7 @@ public class FastDnParserTest
                 ( byte ) 0xC3, ( byte ) 0x9C, ( byte ) 0xC3, ( byte ) 0xBC, ( byte ) 0xC4, ( byte ) 0x9E,
                 ( byte ) 0xC4, ( byte ) 0x9F }, StandardCharsets.UTF_8 );
 
-        String result = FastDnParser.parse( cn ).toString();
+        String result = DnParser.parse( null, cn ).toString();
 
         assertEquals( "cn=\u0130\u0131\u015E\u015F\u00D6\u00F6\u00DC\u00FC\u011E\u011F", result );
 
@@ -610,51 +619,50 @@ public class FastDnParserTest
 
 
     /**
-     * Test that we can have non-ascii characters in a DN when we use the 
-     * fast DN parser, but not followded by bytes
+     * Test that we can have non-ascii characters in a DN, followed by an
+     * escaped hexpair
      */
     @Test
     public void testAUmlautPlusBytes() throws Exception
     {
         String cn = new String( new byte[]
             { 'c', 'n', '=', ( byte ) 0xC3, ( byte ) 0x84, 0x5C, 0x32, 0x42 }, StandardCharsets.UTF_8 );
+        Dn result = DnParser.parse( null, cn );
 
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( cn ).toString();
-        } );
+        assertEquals( "cn=\u00c4\\2B", result.getName() );
+        assertEquals( "cn=\u00c4\\+", result.getEscaped() );
+        assertEquals( "\u00c4+", result.getRdn().getValue() );
     }
 
 
     /**
-     * Test that we can't have escaped characters in a DN when we use the 
-     * fast DN parser
+     * Test that we can have non-ascii characters in a DN, followed by an
+     * escaped character
      */
     @Test
     public void testAUmlautPlusChar() throws Exception
     {
         String cn = new String( new byte[]
             { 'c', 'n', '=', ( byte ) 0xC3, ( byte ) 0x84, '\\', '+' }, StandardCharsets.UTF_8 );
+        Dn result = DnParser.parse( null, cn );
 
-        assertThrows( TooComplexDnException.class, () -> 
-        {
-            FastDnParser.parse( cn ).toString();
-        } );
+        assertEquals( "cn=\u00c4\\+", result.getName() );
+        assertEquals( "\u00c4+", result.getRdn().getValue() );
     }
 
 
     /**
-     * Test to check that even with a non escaped char, the Dn is parsed ok
-     * or at least an error is generated.
+     * Test to check that a non escaped '+' which is not followed by an Ava
+     * is rejected.
      */
     @Test
     public final void testNonEscapedChars() throws LdapException
     {
         String input = "ou=ou+test";
 
-        assertThrows( TooComplexDnException.class, () -> 
+        assertThrows( LdapInvalidDnException.class, () -> 
         {
-            FastDnParser.parse( input ).toString();
+            DnParser.parse( null, input ).toString();
         } );
     }
 }
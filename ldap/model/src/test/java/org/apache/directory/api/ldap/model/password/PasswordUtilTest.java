@@ -54,8 +54,12 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.directory.api.ldap.model.constants.LdapSecurityConstants;
 import org.apache.directory.api.util.Strings;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.parallel.Execution;
 import org.junit.jupiter.api.parallel.ExecutionMode;
@@ -371,6 +375,86 @@ public class PasswordUtilTest
     }
 
 
+    @Test
+    public void testCreateStoragePasswords()
+    {
+        List<byte[]> credentials = new ArrayList<>();
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            credentials.add( Strings.getBytesUtf8( "secret" + i ) );
+        }
+
+        List<byte[]> hashed = PasswordUtil.createStoragePasswords( credentials, HASH_METHOD_SSHA512 );
+
+        assertEquals( 100, hashed.size() );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertEquals( HASH_METHOD_SSHA512, PasswordUtil.findAlgorithm( hashed.get( i ) ) );
+            assertTrue( PasswordUtil.compareCredentials( credentials.get( i ), hashed.get( i ) ) );
+            assertFalse( PasswordUtil.compareCredentials( credentials.get( ( i + 1 ) % 100 ), hashed.get( i ) ) );
+        }
+    }
+
+
+    /**
+     * Measures the cost of hashing and verifying a password, for each algorithm, with
+     * and without a cache of verified credentials
+     */
+    @Test
+    @Disabled
+    public void testPasswordPerf()
+    {
+        byte[] password = Strings.getBytesUtf8( "secret" );
+        VerifiedCredentialsCache cache = new VerifiedCredentialsCache();
+
+        for ( LdapSecurityConstants algorithm : LdapSecurityConstants.values() )
+        {
+            byte[] stored = PasswordUtil.createStoragePassword( password, algorithm );
+            int nbLoops = 20;
+
+            // Warm up, and estimate the number of loops needed to run for one second
+            long t0 = System.nanoTime();
+
+            for ( int i = 0; i < nbLoops; i++ )
+            {
+                PasswordUtil.compareCredentials( password, stored );
+            }
+
+            nbLoops = ( int ) Math.max( nbLoops, 1_000_000_000L * nbLoops / ( System.nanoTime() - t0 ) );
+
+            long t1 = System.nanoTime();
+
+            for ( int i = 0; i < nbLoops; i++ )
+            {
+                PasswordUtil.createStoragePassword( password, algorithm );
+            }
+
+            long t2 = System.nanoTime();
+
+            for ( int i = 0; i < nbLoops; i++ )
+            {
+                PasswordUtil.compareCredentials( password, stored );
+            }
+
+            long t3 = System.nanoTime();
+
+            for ( int i = 0; i < nbLoops; i++ )
+            {
+                cache.compareCredentials( "uid=admin,ou=system", password, stored, null );
+            }
+
+            long t4 = System.nanoTime();
+
+            System.out.println( algorithm.getName() + " : create " + ( ( t2 - t1 ) / nbLoops ) + " ns, compare "
+                + ( ( t3 - t2 ) / nbLoops ) + " ns, cached compare " + ( ( t4 - t3 ) / nbLoops ) + " ns" );
+
+            cache.clear();
+        }
+    }
+
+
     private void testPassword(String plainText, String encrypted, LdapSecurityConstants algorithm, int passwordLength,
                               int saltLength )
     {
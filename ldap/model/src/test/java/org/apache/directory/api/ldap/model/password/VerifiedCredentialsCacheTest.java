@@ -0,0 +1,111 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+
+package org.apache.directory.api.ldap.model.password;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.directory.api.ldap.model.constants.LdapSecurityConstants;
+import org.apache.directory.api.util.Strings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * A test for the VerifiedCredentialsCache class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.CONCURRENT)
+public class VerifiedCredentialsCacheTest
+{
+    private static final String DN = "uid=admin,ou=system";
+
+
+    @Test
+    public void testCachedCredentials()
+    {
+        VerifiedCredentialsCache cache = new VerifiedCredentialsCache();
+        byte[] stored = PasswordUtil.createStoragePassword( "secret", LdapSecurityConstants.HASH_METHOD_PKCS5S2 );
+
+        assertTrue( cache.compareCredentials( DN, Strings.getBytesUtf8( "secret" ), stored, "20240101000000Z" ) );
+        assertEquals( 0, cache.getHitCount() );
+        assertEquals( 1, cache.getMissCount() );
+        assertEquals( 1, cache.size() );
+
+        // The second comparison uses the cache
+        assertTrue( cache.compareCredentials( DN, Strings.getBytesUtf8( "secret" ), stored, "20240101000000Z" ) );
+        assertEquals( 1, cache.getHitCount() );
+
+        // A wrong password is still rejected, and does not evict the verified credentials
+        assertFalse( cache.compareCredentials( DN, Strings.getBytesUtf8( "Secret" ), stored, "20240101000000Z" ) );
+        assertEquals( 1, cache.getHitCount() );
+        assertEquals( 1, cache.size() );
+        assertTrue( cache.compareCredentials( DN, Strings.getBytesUtf8( "secret" ), stored, "20240101000000Z" ) );
+        assertEquals( 2, cache.getHitCount() );
+    }
+
+
+    @Test
+    public void testChangedPassword()
+    {
+        VerifiedCredentialsCache cache = new VerifiedCredentialsCache();
+        byte[] stored = PasswordUtil.createStoragePassword( "secret", LdapSecurityConstants.HASH_METHOD_SSHA512 );
+        byte[] changed = PasswordUtil.createStoragePassword( "changed", LdapSecurityConstants.HASH_METHOD_SSHA512 );
+
+        assertTrue( cache.compareCredentials( DN, Strings.getBytesUtf8( "secret" ), stored, "20240101000000Z" ) );
+
+        // The stored password has changed
+        assertFalse( cache.compareCredentials( DN, Strings.getBytesUtf8( "secret" ), changed, "20240101000000Z" ) );
+        assertTrue( cache.compareCredentials( DN, Strings.getBytesUtf8( "changed" ), changed, "20240101000000Z" ) );
+
+        // The pwdChangedTime has changed : the credentials are verified again
+        assertTrue( cache.compareCredentials( DN, Strings.getBytesUtf8( "changed" ), changed, "20240202000000Z" ) );
+        assertEquals( 0, cache.getHitCount() );
+        assertEquals( 4, cache.getMissCount() );
+
+        assertTrue( cache.compareCredentials( DN, Strings.getBytesUtf8( "changed" ), changed, "20240202000000Z" ) );
+        assertEquals( 1, cache.getHitCount() );
+
+        cache.invalidate( DN );
+        assertEquals( 0, cache.size() );
+        assertTrue( cache.compareCredentials( DN, Strings.getBytesUtf8( "changed" ), changed, "20240202000000Z" ) );
+        assertEquals( 1, cache.getHitCount() );
+    }
+
+
+    @Test
+    public void testNullCredentials()
+    {
+        VerifiedCredentialsCache cache = new VerifiedCredentialsCache();
+
+        assertTrue( cache.compareCredentials( DN, null, null, null ) );
+        assertFalse( cache.compareCredentials( DN, null, Strings.getBytesUtf8( "secret" ), null ) );
+        assertTrue( cache.compareCredentials( DN, Strings.getBytesUtf8( "secret" ), Strings.getBytesUtf8( "secret" ),
+            null ) );
+        assertTrue( cache.compareCredentials( DN, Strings.getBytesUtf8( "secret" ), Strings.getBytesUtf8( "secret" ),
+            null ) );
+        assertEquals( 1, cache.getHitCount() );
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.schema.comparators;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+/**
+ * Test the GeneralizedTime comparator
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.CONCURRENT)
+public class GeneralizedTimeComparatorTest
+{
+    private GeneralizedTimeComparator comparator;
+
+    @BeforeEach
+    public void init()
+    {
+        comparator = new GeneralizedTimeComparator( null );
+    }
+
+
+    @Test
+    public void testNullTimes()
+    {
+        assertEquals( 0, comparator.compare( null, null ) );
+        assertEquals( -1, comparator.compare( null, "20240101000000Z" ) );
+        assertEquals( 1, comparator.compare( "20240101000000Z", null ) );
+    }
+
+
+    @Test
+    public void testStrings()
+    {
+        assertEquals( 0, comparator.compare( "20240101000000Z", "20240101010000+0100" ) );
+        assertTrue( comparator.compare( "20240101000000Z", "20240101000000.5Z" ) < 0 );
+        assertTrue( comparator.compare( "99991231235959Z", "20240101000000Z" ) > 0 );
+    }
+
+
+    @Test
+    public void testValues()
+    {
+        Value value1 = new Value( "20240101000000Z" );
+        Value value2 = new Value( "20240101010000+0100" );
+        Value value3 = new Value( "20240101000001Z" );
+
+        // The Values are compared many times, using the time they keep
+        for ( int i = 0; i < 3; i++ )
+        {
+            assertEquals( 0, comparator.compare( value1, value2 ) );
+            assertTrue( comparator.compare( value1, value3 ) < 0 );
+            assertTrue( comparator.compare( value3, value2 ) > 0 );
+        }
+
+        // A Value can be compared with a String
+        assertEquals( 0, comparator.compare( value1, "2024010100Z" ) );
+        assertTrue( comparator.compare( "20231231235959Z", value1 ) < 0 );
+    }
+
+
+    @Test
+    public void testInvalidValues()
+    {
+        assertThrows( IllegalArgumentException.class, () -> comparator.compare( "20240101000000Z", "not a time" ) );
+        assertThrows( IllegalArgumentException.class,
+            () -> comparator.compare( new Value( "2024" ), new Value( "20240101000000Z" ) ) );
+    }
+}
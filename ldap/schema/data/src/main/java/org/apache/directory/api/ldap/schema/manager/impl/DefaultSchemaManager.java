@@ -1914,10 +1914,11 @@ public class DefaultSchemaManager implements SchemaManager
     /**
      * Check that the given OID exists in the globalOidRegistry.
      * 
+     * @param registries The registries to check
      * @param schemaObject The SchemaObject to check
      * @return <tt>true</tt> if the OID exists
      */
-    private boolean checkOidExist( SchemaObject schemaObject )
+    private static boolean checkOidExist( Registries registries, SchemaObject schemaObject )
     {
         if ( !( schemaObject instanceof LoadableSchemaObject ) )
         {
@@ -1946,11 +1947,13 @@ public class DefaultSchemaManager implements SchemaManager
     /**
      * Get the inner SchemaObject if it's not a C/N/SC
      * 
+     * @param registries The registries containing the SchemaObject
      * @param schemaObject The SchemaObject to retreive
      * @return The found SchemaObject
      * @throws LdapException If the SchemaObject can't be found
      */
-    private SchemaObject getSchemaObject( SchemaObject schemaObject ) throws LdapException
+    private static SchemaObject getSchemaObject( Registries registries, SchemaObject schemaObject )
+        throws LdapException
     {
         if ( schemaObject instanceof LoadableSchemaObject )
         {
@@ -2021,14 +2024,16 @@ public class DefaultSchemaManager implements SchemaManager
     // SchemaObject operations
     //-----------------------------------------------------------------------------------
     /**
-     * {@inheritDoc}
+     * Adds a SchemaObject into the given registries, which are a snapshot of the current
+     * registries. The current registries are not modified.
+     *
+     * @param snapshot The registries to update
+     * @param schemaObject The SchemaObject to add
+     * @return <tt>true</tt> if the SchemaObject has been added without error
+     * @throws LdapException If the addition is not supported
      */
-    @Override
-    public boolean add( SchemaObject schemaObject ) throws LdapException
+    private boolean add( Registries snapshot, SchemaObject schemaObject ) throws LdapException
     {
-        // First, clear the errors
-        errorHandler.reset();
-
         // Clone the schemaObject
         SchemaObject copy = copy( schemaObject );
 
@@ -2037,117 +2042,175 @@ public class DefaultSchemaManager implements SchemaManager
             return false;
         }
 
-        if ( registries.isRelaxed() )
+        // The new schemaObject's OID must not already exist
+        if ( checkOidExist( snapshot, copy ) )
         {
-            // Apply the addition right away
-            registries.add( copy, true );
+            LdapSchemaException ldapSchemaException = new LdapSchemaException(
+                LdapSchemaExceptionCodes.OID_ALREADY_REGISTERED, I18n.err( I18n.ERR_16036_OID_NOT_UNIQUE,
+                    schemaObject.getOid() ) );
+            ldapSchemaException.setSourceObject( schemaObject );
+            errorHandler.handle( LOG, ldapSchemaException.getMessage(), ldapSchemaException );
 
-            return !errorHandler.wasError();
+            return false;
         }
-        else
+
+        // Build the new AttributeType from the given entry
+        String schemaName = getSchemaName( copy );
+
+        if ( schemaName == null )
         {
-            // Clone, apply, check, then apply again if ok
-            // The new schemaObject's OID must not already exist
-            if ( checkOidExist( copy ) )
-            {
-                LdapSchemaException ldapSchemaException = new LdapSchemaException(
-                    LdapSchemaExceptionCodes.OID_ALREADY_REGISTERED, I18n.err( I18n.ERR_16036_OID_NOT_UNIQUE, 
-                        schemaObject.getOid() ) );
-                ldapSchemaException.setSourceObject( schemaObject );
-                errorHandler.handle( LOG, ldapSchemaException.getMessage(), ldapSchemaException );
+            // The schema associated with the SchemaaObject does not exist. This is not valid.
 
-                return false;
-            }
+            LdapSchemaException ldapSchemaException = new LdapSchemaException(
+                LdapSchemaExceptionCodes.NONEXISTENT_SCHEMA, I18n.err( I18n.ERR_16037_NON_EXISTING_SCHEMA,
+                    schemaObject.getOid(), copy.getSchemaName() ) );
+            ldapSchemaException.setSourceObject( schemaObject );
+            ldapSchemaException.setRelatedId( copy.getSchemaName() );
+            errorHandler.handle( LOG, ldapSchemaException.getMessage(), ldapSchemaException );
 
-            // Build the new AttributeType from the given entry
-            String schemaName = getSchemaName( copy );
+            return false;
+        }
 
-            if ( schemaName == null )
-            {
-                // The schema associated with the SchemaaObject does not exist. This is not valid.
+        // At this point, the constructed AttributeType has not been checked against the
+        // existing Registries. It may be broken (missing SUP, or such), it will be checked
+        // there, if the schema and the AttributeType are both enabled.
+        Schema schema = getLoadedSchema( schemaName );
 
-                LdapSchemaException ldapSchemaException = new LdapSchemaException(
-                    LdapSchemaExceptionCodes.NONEXISTENT_SCHEMA, I18n.err( I18n.ERR_16037_NON_EXISTING_SCHEMA, 
-                        schemaObject.getOid(), copy.getSchemaName() ) );
-                ldapSchemaException.setSourceObject( schemaObject );
-                ldapSchemaException.setRelatedId( copy.getSchemaName() );
-                errorHandler.handle( LOG, ldapSchemaException.getMessage(), ldapSchemaException );
+        if ( schema == null )
+        {
+            // The SchemaObject must be associated with an existing schema
+            String msg = I18n.err( I18n.ERR_16038_NOT_ASSOCIATED_TO_A_SCHEMA, copy.getOid() );
+            Throwable error = new LdapProtocolErrorException( msg );
+            errorHandler.handle( LOG, msg, error );
+            return false;
+        }
 
-                return false;
-            }
+        if ( schema.isEnabled() && copy.isEnabled() )
+        {
+            // Inject the new SchemaObject in the snapshot. The SchemaObjects it shares with the
+            // current registries are not modified, only the new SchemaObject is.
+            snapshot.add( copy, true );
 
-            // At this point, the constructed AttributeType has not been checked against the
-            // existing Registries. It may be broken (missing SUP, or such), it will be checked
-            // there, if the schema and the AttributeType are both enabled.
-            Schema schema = getLoadedSchema( schemaName );
+            if ( !errorHandler.wasError() )
+            {
+                if ( LOG.isDebugEnabled() )
+                {
+                    LOG.debug( I18n.msg( I18n.MSG_16019_ENABLED_SCHEMA_ADDED, copy.getName(), schemaName ) );
+                }
 
-            if ( schema == null )
+                return true;
+            }
+            else
             {
-                // The SchemaObject must be associated with an existing schema
-                String msg = I18n.err( I18n.ERR_16038_NOT_ASSOCIATED_TO_A_SCHEMA, copy.getOid() );
-                Throwable error = new LdapProtocolErrorException( msg );
-                errorHandler.handle( LOG, msg, error );
+                // We have some error : reject the addition and get out
+                errorHandler.handle( LOG, I18n.msg( I18n.MSG_16020_CANNOT_LOAD_SCHEMAOBJECT,
+                        copy.getOid(), Strings.listToString( errorHandler.getErrors() ) ), null );
                 return false;
             }
+        }
+        else
+        {
+            // At least, we register the OID in the globalOidRegistry, and associates it with the
+            // schema
+            snapshot.associateWithSchema( copy );
 
-            if ( schema.isEnabled() && copy.isEnabled() )
+            if ( LOG.isDebugEnabled() )
             {
-                // As we may break the registries, work on a cloned registries
-                Registries clonedRegistries = null;
+                LOG.debug( I18n.msg( I18n.MSG_16021_ADDED_INTO_DISABLED_SCHEMA, copy.getName(), schemaName ) );
+            }
 
-                try
-                {
-                    clonedRegistries = registries.clone();
-                }
-                catch ( CloneNotSupportedException cnse )
-                {
-                    throw new LdapOtherException( cnse.getMessage(), cnse );
-                }
+            return !errorHandler.wasError();
+        }
+    }
 
-                // Inject the new SchemaObject in the cloned registries
-                clonedRegistries.add( copy, true );
 
-                // Remove the cloned registries
-                clonedRegistries.clear();
+    /**
+     * Removes a SchemaObject from the given registries, which are a snapshot of the current
+     * registries. The current registries are not modified.
+     *
+     * @param snapshot The registries to update
+     * @param schemaObject The SchemaObject to delete
+     * @return <tt>true</tt> if the SchemaObject has been deleted without error
+     * @throws LdapException If the deletion is not supported
+     */
+    private boolean delete( Registries snapshot, SchemaObject schemaObject ) throws LdapException
+    {
+        // The schemaObject's OID must exist
+        if ( !checkOidExist( snapshot, schemaObject ) )
+        {
+            Throwable error = new LdapProtocolErrorException( I18n.err( I18n.ERR_16039_OID_DOES_NOT_EXIST,
+                schemaObject.getOid() ) );
+            errorHandler.handle( LOG, error.getMessage(), error );
+            return false;
+        }
 
-                // If we didn't get any error, apply the addition to the real registries
-                if ( !errorHandler.wasError() )
-                {
-                    // Copy again as the clonedRegistries clear has removed the previous copy
-                    copy = copy( schemaObject );
+        // Get the SchemaObject to delete if it's not a LoadableSchemaObject
+        SchemaObject toDelete = getSchemaObject( snapshot, schemaObject );
 
-                    // Apply the addition to the real registries
-                    registries.add( copy, true );
+        // First check that this SchemaObject does not have any referencing SchemaObjects
+        Set<SchemaObjectWrapper> referencing = snapshot.getReferencing( toDelete );
 
-                    if ( LOG.isDebugEnabled() )
-                    {
-                        LOG.debug( I18n.msg( I18n.MSG_16019_ENABLED_SCHEMA_ADDED, copy.getName(), schemaName ) );
-                    }
+        if ( ( referencing != null ) && !referencing.isEmpty() )
+        {
+            String msg = I18n.err( I18n.ERR_16040_CANNOT_REMOVE_FROM_REGISTRY, schemaObject.getOid(),
+                Strings.setToString( referencing ) );
 
-                    return true;
-                }
-                else
+            Throwable error = new LdapProtocolErrorException( msg );
+            errorHandler.handle( LOG, msg, error );
+            return false;
+        }
+
+        String schemaName = getSchemaName( toDelete );
+
+        // At this point, the deleted AttributeType may be referenced, it will be checked
+        // there, if the schema and the AttributeType are both enabled.
+        Schema schema = getLoadedSchema( schemaName );
+
+        if ( schema == null )
+        {
+            // The SchemaObject must be associated with an existing schema
+            String msg = I18n.err( I18n.ERR_16041_CANNOT_DELETE_SCHEMA_OBJECT, schemaObject.getOid() );
+            Throwable error = new LdapProtocolErrorException( msg );
+            errorHandler.handle( LOG, msg, error );
+            return false;
+        }
+
+        if ( schema.isEnabled() && schemaObject.isEnabled() )
+        {
+            // Delete the SchemaObject from the snapshot
+            snapshot.delete( toDelete );
+
+            if ( !errorHandler.wasError() )
+            {
+                if ( LOG.isDebugEnabled() )
                 {
-                    // We have some error : reject the addition and get out
-                    errorHandler.handle( LOG, I18n.msg( I18n.MSG_16020_CANNOT_LOAD_SCHEMAOBJECT, 
-                            copy.getOid(), Strings.listToString( errorHandler.getErrors() ) ), null );
-                    return false;
+                    LOG.debug( I18n.msg( I18n.MSG_16022_REMOVED_FROM_ENABLED_SCHEMA, toDelete.getName(), schemaName ) );
                 }
+
+                return true;
             }
             else
             {
-                // At least, we register the OID in the globalOidRegistry, and associates it with the
-                // schema
-                registries.associateWithSchema( copy );
+                // We have some error : reject the deletion and get out
+                errorHandler.handle( LOG, I18n.msg( I18n.MSG_16023_CANNOT_DELETE_SCHEMAOBJECT,
+                        schemaObject.getOid(), Strings.listToString( errorHandler.getErrors() ) ), null );
 
-                if ( LOG.isDebugEnabled() )
-                {
-                    LOG.debug( I18n.msg( I18n.MSG_16021_ADDED_INTO_DISABLED_SCHEMA, copy.getName(), schemaName ) );
-                }
-                
-                return !errorHandler.wasError();
+                return false;
             }
         }
+        else
+        {
+            // At least, we register the OID in the globalOidRegistry, and associates it with the
+            // schema
+            snapshot.associateWithSchema( schemaObject );
+
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( I18n.msg( I18n.MSG_16024_REMOVED_FROM_DISABLED_SCHEMA, schemaObject.getName(), schemaName ) );
+            }
+
+            return !errorHandler.wasError();
+        }
     }
 
 
@@ -2155,117 +2218,149 @@ public class DefaultSchemaManager implements SchemaManager
      * {@inheritDoc}
      */
     @Override
-    public boolean delete( SchemaObject schemaObject ) throws LdapException
+    public synchronized boolean add( SchemaObject schemaObject ) throws LdapException
     {
         // First, clear the errors
         errorHandler.reset();
 
         if ( registries.isRelaxed() )
         {
+            // Clone the schemaObject
+            SchemaObject copy = copy( schemaObject );
+
+            if ( copy == null )
+            {
+                return false;
+            }
+
             // Apply the addition right away
-            registries.delete( schemaObject );
+            registries.add( copy, true );
 
             return !errorHandler.wasError();
         }
         else
         {
-            // Clone, apply, check, then apply again if ok
-            // The new schemaObject's OID must exist
-            if ( !checkOidExist( schemaObject ) )
+            // Apply the addition on a snapshot of the registries, sharing the SchemaObjects,
+            // and publish it if it's consistent
+            Registries snapshot = registries.snapshot();
+
+            if ( add( snapshot, schemaObject ) )
             {
-                Throwable error = new LdapProtocolErrorException( I18n.err( I18n.ERR_16039_OID_DOES_NOT_EXIST, 
-                    schemaObject.getOid() ) );
-                errorHandler.handle( LOG, error.getMessage(), error );
-                return false;
+                registries = snapshot;
+
+                return true;
             }
 
-            // Get the SchemaObject to delete if it's not a LoadableSchemaObject
-            SchemaObject toDelete = getSchemaObject( schemaObject );
+            return false;
+        }
+    }
 
-            // First check that this SchemaObject does not have any referencing SchemaObjects
-            Set<SchemaObjectWrapper> referencing = registries.getReferencing( toDelete );
 
-            if ( ( referencing != null ) && !referencing.isEmpty() )
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean delete( SchemaObject schemaObject ) throws LdapException
+    {
+        // First, clear the errors
+        errorHandler.reset();
+
+        if ( registries.isRelaxed() )
+        {
+            // Apply the addition right away
+            registries.delete( schemaObject );
+
+            return !errorHandler.wasError();
+        }
+        else
+        {
+            // Apply the deletion on a snapshot of the registries, sharing the SchemaObjects,
+            // and publish it if it's consistent
+            Registries snapshot = registries.snapshot();
+
+            if ( delete( snapshot, schemaObject ) )
             {
-                String msg = I18n.err( I18n.ERR_16040_CANNOT_REMOVE_FROM_REGISTRY, schemaObject.getOid(), 
-                    Strings.setToString( referencing ) );
+                registries = snapshot;
 
-                Throwable error = new LdapProtocolErrorException( msg );
-                errorHandler.handle( LOG, msg, error );
-                return false;
+                return true;
             }
 
-            String schemaName = getSchemaName( toDelete );
+            return false;
+        }
+    }
 
-            // At this point, the deleted AttributeType may be referenced, it will be checked
-            // there, if the schema and the AttributeType are both enabled.
-            Schema schema = getLoadedSchema( schemaName );
 
-            if ( schema == null )
-            {
-                // The SchemaObject must be associated with an existing schema
-                String msg = I18n.err( I18n.ERR_16041_CANNOT_DELETE_SCHEMA_OBJECT, schemaObject.getOid() );
-                Throwable error = new LdapProtocolErrorException( msg );
-                errorHandler.handle( LOG, msg, error );
-                return false;
-            }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean apply( Collection<? extends SchemaObject> deleted,
+        Collection<? extends SchemaObject> added ) throws LdapException
+    {
+        // First, clear the errors
+        errorHandler.reset();
 
-            if ( schema.isEnabled() && schemaObject.isEnabled() )
-            {
-                // As we may break the registries, work on a cloned registries
-                Registries clonedRegistries = null;
+        if ( registries.isRelaxed() )
+        {
+            boolean applied = true;
 
-                try
-                {
-                    clonedRegistries = registries.clone();
-                }
-                catch ( CloneNotSupportedException cnse )
+            if ( deleted != null )
+            {
+                for ( SchemaObject schemaObject : deleted )
                 {
-                    throw new LdapOtherException( cnse.getMessage(), cnse );
+                    registries.delete( schemaObject );
                 }
+            }
 
-                // Delete the SchemaObject from the cloned registries
-                clonedRegistries.delete( toDelete );
-
-                // Remove the cloned registries
-                clonedRegistries.clear();
-
-                // If we didn't get any error, apply the deletion to the real retistries
-                if ( !errorHandler.wasError() )
+            if ( added != null )
+            {
+                for ( SchemaObject schemaObject : added )
                 {
-                    // Apply the deletion to the real registries
-                    registries.delete( toDelete );
+                    SchemaObject copy = copy( schemaObject );
 
-                    if ( LOG.isDebugEnabled() )
+                    if ( copy == null )
                     {
-                        LOG.debug( I18n.msg( I18n.MSG_16022_REMOVED_FROM_ENABLED_SCHEMA, toDelete.getName(), schemaName ) );
+                        applied = false;
+                    }
+                    else
+                    {
+                        registries.add( copy, true );
                     }
-
-                    return true;
                 }
-                else
-                {
-                    // We have some error : reject the deletion and get out
-                    errorHandler.handle( LOG, I18n.msg( I18n.MSG_16023_CANNOT_DELETE_SCHEMAOBJECT, 
-                            schemaObject.getOid(), Strings.listToString( errorHandler.getErrors() ) ), null );
+            }
+
+            return applied && !errorHandler.wasError();
+        }
 
+        // All the changes are applied on the same snapshot, which is published only
+        // if all of them are consistent
+        Registries snapshot = registries.snapshot();
+
+        if ( deleted != null )
+        {
+            for ( SchemaObject schemaObject : deleted )
+            {
+                if ( !delete( snapshot, schemaObject ) )
+                {
                     return false;
                 }
             }
-            else
-            {
-                // At least, we register the OID in the globalOidRegistry, and associates it with the
-                // schema
-                registries.associateWithSchema( schemaObject );
+        }
 
-                if ( LOG.isDebugEnabled() )
+        if ( added != null )
+        {
+            for ( SchemaObject schemaObject : added )
+            {
+                if ( !add( snapshot, schemaObject ) )
                 {
-                    LOG.debug( I18n.msg( I18n.MSG_16024_REMOVED_FROM_DISABLED_SCHEMA, schemaObject.getName(), schemaName ) );
+                    return false;
                 }
-                
-                return !errorHandler.wasError();
             }
         }
+
+        registries = snapshot;
+
+        return true;
     }
 
 
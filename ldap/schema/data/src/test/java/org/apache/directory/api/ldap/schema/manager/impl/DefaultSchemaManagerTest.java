@@ -20,7 +20,24 @@
 package org.apache.directory.api.ldap.schema.manager.impl;
 
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.ObjectClass;
+import org.apache.directory.api.ldap.model.schema.SchemaObject;
 import org.apache.directory.api.ldap.model.schema.SyntaxChecker;
+import org.apache.directory.api.ldap.model.schema.registries.Registries;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
 
@@ -46,4 +63,200 @@ public class DefaultSchemaManagerTest
             sc.isValidSyntax( "foo" );
         }
     }
+
+
+    private static AttributeType createAttributeType( String oid, String name, String syntaxOid )
+    {
+        AttributeType attributeType = new AttributeType( oid );
+        attributeType.setNames( name );
+        attributeType.setSchemaName( "other" );
+        attributeType.setSyntaxOid( syntaxOid );
+        attributeType.setEqualityOid( "2.5.13.2" );
+
+        return attributeType;
+    }
+
+
+    /**
+     * Test that a set of changes is applied at once
+     */
+    @Test
+    public void testApply() throws Exception
+    {
+        DefaultSchemaManager schemaManager = new DefaultSchemaManager();
+        int atrSize = schemaManager.getAttributeTypeRegistry().size();
+        int ocrSize = schemaManager.getObjectClassRegistry().size();
+
+        AttributeType attributeType = createAttributeType( "1.1.1", "testAT", "1.3.6.1.4.1.1466.115.121.1.15" );
+        ObjectClass objectClass = new ObjectClass( "1.1.2" );
+        objectClass.setNames( "testOC" );
+        objectClass.setSchemaName( "other" );
+        objectClass.setSuperiorOids( Collections.singletonList( "top" ) );
+        objectClass.setMayAttributeTypeOids( Collections.singletonList( "testAT" ) );
+
+        assertTrue( schemaManager.apply( null, Arrays.asList( attributeType, objectClass ) ) );
+        assertEquals( 0, schemaManager.getErrors().size() );
+        assertEquals( atrSize + 1, schemaManager.getAttributeTypeRegistry().size() );
+        assertEquals( ocrSize + 1, schemaManager.getObjectClassRegistry().size() );
+        assertEquals( "1.1.1",
+            schemaManager.lookupObjectClassRegistry( "testOC" ).getMayAttributeTypes().get( 0 ).getOid() );
+
+        // Now, remove them, the ObjectClass first as it references the AttributeType
+        assertTrue( schemaManager.apply( Arrays.asList( objectClass, attributeType ), null ) );
+        assertEquals( atrSize, schemaManager.getAttributeTypeRegistry().size() );
+        assertEquals( ocrSize, schemaManager.getObjectClassRegistry().size() );
+    }
+
+
+    /**
+     * Test that the changes are not applied if one of them is invalid
+     */
+    @Test
+    public void testApplyInvalidChange() throws Exception
+    {
+        DefaultSchemaManager schemaManager = new DefaultSchemaManager();
+        Registries registries = schemaManager.getRegistries();
+        int atrSize = schemaManager.getAttributeTypeRegistry().size();
+
+        AttributeType valid = createAttributeType( "1.1.1", "testAT", "1.3.6.1.4.1.1466.115.121.1.15" );
+        AttributeType invalid = createAttributeType( "1.1.2", "badAT", "0.0.0" );
+
+        assertFalse( schemaManager.apply( null, Arrays.asList( valid, invalid ) ) );
+        assertFalse( schemaManager.getErrors().isEmpty() );
+        assertSame( registries, schemaManager.getRegistries() );
+        assertEquals( atrSize, schemaManager.getAttributeTypeRegistry().size() );
+        assertFalse( schemaManager.getAttributeTypeRegistry().contains( "1.1.1" ) );
+
+        // The valid AttributeType can still be added alone
+        assertTrue( schemaManager.add( valid ) );
+        assertEquals( atrSize + 1, schemaManager.getAttributeTypeRegistry().size() );
+    }
+
+
+    /**
+     * Test that the registries seen before a change are not modified by the change
+     */
+    @Test
+    public void testChangeDoesNotModifyPreviousRegistries() throws Exception
+    {
+        DefaultSchemaManager schemaManager = new DefaultSchemaManager();
+        Registries before = schemaManager.getRegistries();
+        int atrSize = before.getAttributeTypeRegistry().size();
+        SchemaObject syntax = before.getLdapSyntaxRegistry().lookup( "1.3.6.1.4.1.1466.115.121.1.15" );
+        int usedBySize = before.getUsedBy( syntax ).size();
+
+        assertTrue( schemaManager.add( createAttributeType( "1.1.1", "testAT", "1.3.6.1.4.1.1466.115.121.1.15" ) ) );
+
+        Registries after = schemaManager.getRegistries();
+
+        assertNotSame( before, after );
+        assertEquals( atrSize, before.getAttributeTypeRegistry().size() );
+        assertFalse( before.getGlobalOidRegistry().contains( "1.1.1" ) );
+        assertEquals( usedBySize, before.getUsedBy( syntax ).size() );
+        assertEquals( atrSize + 1, after.getAttributeTypeRegistry().size() );
+        assertEquals( usedBySize + 1, after.getUsedBy( syntax ).size() );
+
+        // The SchemaObjects are shared
+        assertSame( before.getAttributeTypeRegistry().lookup( "cn" ), after.getAttributeTypeRegistry().lookup( "cn" ) );
+
+        // Delete it, the intermediate registries must not be modified
+        assertTrue( schemaManager.delete( after.getAttributeTypeRegistry().lookup( "1.1.1" ) ) );
+        assertEquals( atrSize + 1, after.getAttributeTypeRegistry().size() );
+        assertEquals( usedBySize + 1, after.getUsedBy( syntax ).size() );
+        assertEquals( atrSize, schemaManager.getAttributeTypeRegistry().size() );
+        assertEquals( usedBySize, schemaManager.getRegistries().getUsedBy( syntax ).size() );
+    }
+
+
+    /**
+     * Test that a change only copies the registries it modifies
+     */
+    @Test
+    public void testChangeSharesUntouchedRegistries() throws Exception
+    {
+        DefaultSchemaManager schemaManager = new DefaultSchemaManager();
+        Registries before = schemaManager.getRegistries();
+        AttributeType name = before.getAttributeTypeRegistry().lookup( "name" );
+
+        AttributeType attributeType = createAttributeType( "1.1.1", "testAT", "1.3.6.1.4.1.1466.115.121.1.15" );
+        attributeType.setSuperiorOid( name.getOid() );
+
+        assertTrue( schemaManager.add( attributeType ) );
+
+        Registries after = schemaManager.getRegistries();
+
+        // The modified registries have been copied
+        assertNotSame( before.getAttributeTypeRegistry(), after.getAttributeTypeRegistry() );
+        assertNotSame( before.getGlobalOidRegistry(), after.getGlobalOidRegistry() );
+        assertFalse( hasDescendant( before, name, "1.1.1" ) );
+        assertTrue( hasDescendant( after, name, "1.1.1" ) );
+
+        // The other ones are shared
+        assertSame( before.getObjectClassRegistry(), after.getObjectClassRegistry() );
+        assertSame( before.getMatchingRuleRegistry(), after.getMatchingRuleRegistry() );
+        assertSame( before.getLdapSyntaxRegistry(), after.getLdapSyntaxRegistry() );
+        assertSame( before.getComparatorRegistry(), after.getComparatorRegistry() );
+
+        // Deleting it restores the descendants, without modifying the previous registries
+        assertTrue( schemaManager.delete( after.getAttributeTypeRegistry().lookup( "1.1.1" ) ) );
+        assertTrue( hasDescendant( after, name, "1.1.1" ) );
+        assertFalse( hasDescendant( schemaManager.getRegistries(), name, "1.1.1" ) );
+        assertTrue( schemaManager.getRegistries().isStrict() );
+    }
+
+
+    private static boolean hasDescendant( Registries registries, AttributeType attributeType, String oid )
+        throws Exception
+    {
+        Iterator<AttributeType> descendants = registries.getAttributeTypeRegistry().descendants( attributeType );
+
+        while ( descendants.hasNext() )
+        {
+            if ( oid.equals( descendants.next().getOid() ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Compares the cost of adding AttributeTypes one by one, and all at once
+     */
+    @Test
+    @Disabled
+    public void testAddPerf() throws Exception
+    {
+        int nbAttributeTypes = 200;
+
+        for ( int round = 0; round < 3; round++ )
+        {
+            DefaultSchemaManager schemaManager = new DefaultSchemaManager();
+            DefaultSchemaManager batchSchemaManager = new DefaultSchemaManager();
+            List<SchemaObject> attributeTypes = new ArrayList<>();
+
+            for ( int i = 0; i < nbAttributeTypes; i++ )
+            {
+                attributeTypes.add( createAttributeType( "1.1.1." + i, "testAT" + i, "1.3.6.1.4.1.1466.115.121.1.15" ) );
+            }
+
+            long t0 = System.nanoTime();
+
+            for ( SchemaObject attributeType : attributeTypes )
+            {
+                schemaManager.add( attributeType );
+            }
+
+            long t1 = System.nanoTime();
+
+            batchSchemaManager.apply( null, attributeTypes );
+
+            long t2 = System.nanoTime();
+
+            System.out.println( "add : " + ( ( t1 - t0 ) / nbAttributeTypes / 1000 ) + " us/AttributeType, apply : "
+                + ( ( t2 - t1 ) / nbAttributeTypes / 1000 ) + " us/AttributeType" );
+        }
+    }
 }
@@ -59,6 +59,32 @@ public final class DateUtils
     }
 
 
+    /**
+     * Converts a generalized time string to a number of milliseconds since the epoch,
+     * without creating any intermediate object.
+     *
+     * @param zuluTime the generalized time string
+     * @return the number of milliseconds since the epoch
+     */
+    public static long getTime( String zuluTime )
+    {
+        try
+        {
+            return Math.floorDiv( GeneralizedTime.parseEpochMicros( zuluTime ), 1000L );
+        }
+        catch ( ParseException pe )
+        {
+            // The never ending date
+            if ( "9223372036854775807".equals( zuluTime ) )
+            {
+                return Long.MAX_VALUE;
+            }
+
+            throw new RuntimeException( pe );
+        }
+    }
+
+
     /**
      * Gets the generalized time right now. {@link GeneralizedTime}
      * 
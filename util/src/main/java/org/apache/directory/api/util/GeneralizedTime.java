@@ -22,6 +22,8 @@ package org.apache.directory.api.util;
 import static org.apache.directory.api.util.TimeZones.GMT;
 
 import java.text.ParseException;
+import java.time.Month;
+import java.time.Year;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -114,6 +116,24 @@ public class GeneralizedTime implements Comparable<GeneralizedTime>
     /** A Date far in the future, when Micro$oft would have vanished for a long time... */
     private static final Date INFINITE = new Date( 0x7FFFFFFFFFFFFFFFL );
 
+    /** The number of microseconds in a second */
+    private static final long MICROS_PER_SECOND = 1_000_000L;
+
+    /** The number of microseconds in a minute */
+    private static final long MICROS_PER_MINUTE = 60L * MICROS_PER_SECOND;
+
+    /** The number of microseconds in an hour */
+    private static final long MICROS_PER_HOUR = 60L * MICROS_PER_MINUTE;
+
+    /** The number of seconds in a day */
+    private static final long SECONDS_PER_DAY = 86_400L;
+
+    /** The number of days in a 400 years cycle */
+    private static final long DAYS_PER_CYCLE = 146_097L;
+
+    /** The number of days from year zero to year 1970 */
+    private static final long DAYS_0000_TO_1970 = ( DAYS_PER_CYCLE * 5L ) - ( 30L * 365L + 7L );
+
     /**
      * The format of the generalized time.
      */
@@ -1089,6 +1109,402 @@ public class GeneralizedTime implements Comparable<GeneralizedTime>
     }
 
 
+    /**
+     * Parses a generalized time string and returns the number of microseconds
+     * since the epoch (1970-01-01T00:00:00Z). This is equivalent to
+     * <code>new GeneralizedTime( generalizedTime ).getTime() * 1000</code>, but the
+     * String is read in place, without creating any Calendar, TimeZone or
+     * intermediate String. The dates are expressed in the proleptic ISO calendar,
+     * as {@link java.time.LocalDate} does.
+     * <br>
+     * Microseconds are used instead of nanoseconds because a long cannot hold
+     * nanoseconds after year 2262, when "99991231235959Z" is a common value.
+     * Fraction digits beyond the microsecond are ignored.
+     *
+     * @param generalizedTime the generalized time
+     * @return The time, in microseconds since the epoch
+     * @throws ParseException if the given generalized time can't be parsed.
+     */
+    public static long parseEpochMicros( String generalizedTime ) throws ParseException
+    {
+        if ( generalizedTime == null )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17043_GENERALIZED_TIME_NULL ), 0 );
+        }
+
+        int length = generalizedTime.length();
+
+        if ( length < 4 )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17066_TIME_TO_SHORT_MISSING_YEAR ), 0 );
+        }
+
+        int year = parseDigits( generalizedTime, 0, 4 );
+
+        if ( year < 0 )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17067_YEAR_NOT_NUM ), 0 );
+        }
+
+        if ( length < 6 )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17064_TIME_TO_SHORT_MISSING_MONTH ), 4 );
+        }
+
+        int month = parseDigits( generalizedTime, 4, 2 );
+
+        if ( month < 0 )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17065_MONTH_NOT_NUM ), 4 );
+        }
+
+        if ( length < 8 )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17062_TIME_TO_SHORT_MISSING_DAY ), 6 );
+        }
+
+        int day = parseDigits( generalizedTime, 6, 2 );
+
+        if ( day < 0 )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17063_DAY_NOT_NUM ), 6 );
+        }
+
+        if ( length < 10 )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17060_TIME_TO_SHORT_MISSING_HOUR ), 8 );
+        }
+
+        int hour = parseDigits( generalizedTime, 8, 2 );
+
+        if ( hour < 0 )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17061_HOUR_NOT_NUM ), 8 );
+        }
+
+        if ( length < 11 )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17044_BAD_GENERALIZED_TIME ), 10 );
+        }
+
+        int minute = 0;
+        int second = 0;
+
+        // The fraction, expressed in microseconds
+        long fraction = 0L;
+
+        // The number of microseconds a fraction of 1 represents
+        long fractionUnit = 0L;
+
+        int pos = 10;
+        char c = generalizedTime.charAt( pos );
+
+        if ( Chars.isDigit( c ) )
+        {
+            if ( length < 12 )
+            {
+                throw new ParseException( I18n.err( I18n.ERR_17058_MISSING_MINUTE ), 10 );
+            }
+
+            minute = parseDigits( generalizedTime, 10, 2 );
+
+            if ( minute < 0 )
+            {
+                throw new ParseException( I18n.err( I18n.ERR_17059_MIN_NOT_NUM ), 10 );
+            }
+
+            if ( length < 13 )
+            {
+                throw new ParseException( I18n.err( I18n.ERR_17045_BAD_GENERALIZED_TIME ), 12 );
+            }
+
+            pos = 12;
+            c = generalizedTime.charAt( pos );
+
+            if ( Chars.isDigit( c ) )
+            {
+                if ( length < 14 )
+                {
+                    throw new ParseException( I18n.err( I18n.ERR_17056_TIME_TOO_SHORT_NO_SECOND ), 12 );
+                }
+
+                second = parseDigits( generalizedTime, 12, 2 );
+
+                if ( second < 0 )
+                {
+                    throw new ParseException( I18n.err( I18n.ERR_17057_SECOND_NOT_NUM ), 12 );
+                }
+
+                if ( length < 15 )
+                {
+                    throw new ParseException( I18n.err( I18n.ERR_17046_BAD_GENERALIZED_TIME ), 14 );
+                }
+
+                pos = 14;
+                c = generalizedTime.charAt( pos );
+
+                if ( ( c == '.' ) || ( c == ',' ) )
+                {
+                    fractionUnit = MICROS_PER_SECOND;
+                }
+                else if ( ( c != 'Z' ) && ( c != '+' ) && ( c != '-' ) )
+                {
+                    throw new ParseException( I18n.err( I18n.ERR_17047_TIME_TOO_SHORT ), 14 );
+                }
+            }
+            else if ( ( c == '.' ) || ( c == ',' ) )
+            {
+                fractionUnit = MICROS_PER_MINUTE;
+            }
+            else if ( ( c != 'Z' ) && ( c != '+' ) && ( c != '-' ) )
+            {
+                throw new ParseException( I18n.err( I18n.ERR_17048_TIME_TOO_SHORT ), 12 );
+            }
+        }
+        else if ( ( c == '.' ) || ( c == ',' ) )
+        {
+            fractionUnit = MICROS_PER_HOUR;
+        }
+        else if ( ( c != 'Z' ) && ( c != '+' ) && ( c != '-' ) )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17049_INVALID_GENERALIZED_TIME ), 10 );
+        }
+
+        if ( fractionUnit != 0L )
+        {
+            // Read the fraction digits. We keep at most 9 of them, which is
+            // enough for a microsecond precision on a fraction of hour
+            pos++;
+            int start = pos;
+            long digits = 0L;
+            long scale = 1L;
+
+            while ( ( pos < length ) && Chars.isDigit( generalizedTime.charAt( pos ) ) )
+            {
+                if ( pos - start < 9 )
+                {
+                    digits = digits * 10L + ( generalizedTime.charAt( pos ) - '0' );
+                    scale *= 10L;
+                }
+
+                pos++;
+            }
+
+            if ( pos == start )
+            {
+                throw new ParseException( I18n.err( I18n.ERR_17055_MISSING_FRACTION ), start );
+            }
+
+            fraction = digits * fractionUnit / scale;
+        }
+
+        // Now, the timezone
+        if ( length < pos + 1 )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17052_TIME_TOO_SHOR_NO_TZ ), pos );
+        }
+
+        int offsetSeconds = 0;
+        c = generalizedTime.charAt( pos );
+
+        if ( c == 'Z' )
+        {
+            pos++;
+        }
+        else if ( ( c == '+' ) || ( c == '-' ) )
+        {
+            int start = pos + 1;
+            int end = start;
+
+            while ( ( end < length ) && Chars.isDigit( generalizedTime.charAt( end ) ) )
+            {
+                end++;
+            }
+
+            if ( ( end - start != 2 ) && ( end - start != 4 ) )
+            {
+                throw new ParseException( I18n.err( I18n.ERR_17054_TZ_MUST_BE_2_OR_4_DIGITS ), pos );
+            }
+
+            int offsetHour = parseDigits( generalizedTime, start, 2 );
+            int offsetMinute = end - start == 4 ? parseDigits( generalizedTime, start + 2, 2 ) : 0;
+
+            if ( ( offsetHour > 23 ) || ( offsetMinute > 59 ) )
+            {
+                throw new ParseException( I18n.err( I18n.ERR_17054_TZ_MUST_BE_2_OR_4_DIGITS ), pos );
+            }
+
+            offsetSeconds = offsetHour * 3600 + offsetMinute * 60;
+
+            if ( c == '-' )
+            {
+                offsetSeconds = -offsetSeconds;
+            }
+
+            pos = end;
+        }
+        else
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17053_MISSING_TZ ), pos );
+        }
+
+        if ( length > pos )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17053_MISSING_TZ ), pos );
+        }
+
+        // Check the date and the time, as a non lenient Calendar would do
+        if ( ( year == 0 ) || ( month < 1 ) || ( month > 12 ) || ( day < 1 )
+            || ( day > Month.of( month ).length( Year.isLeap( year ) ) )
+            || ( hour > 23 ) || ( minute > 59 ) || ( second > 59 ) )
+        {
+            throw new ParseException( I18n.err( I18n.ERR_17050_INVALID_DATE_TIME ), 0 );
+        }
+
+        long epochSecond = toEpochDay( year, month, day ) * SECONDS_PER_DAY
+            + hour * 3600L + minute * 60L + second - offsetSeconds;
+
+        return epochSecond * MICROS_PER_SECOND + fraction;
+    }
+
+
+    /**
+     * Formats a time, expressed in microseconds since the epoch, using the
+     * normalized generalized time format (<em>yyyyMMddHHmmss.SSSZ</em>). This
+     * is the format produced by {@link #toGeneralizedTime()} for a UTC time.
+     *
+     * @param epochMicros The time, in microseconds since the epoch
+     * @return The normalized generalized time
+     */
+    public static String formatEpochMicros( long epochMicros )
+    {
+        long epochSecond = Math.floorDiv( epochMicros, MICROS_PER_SECOND );
+        int millisecond = ( int ) ( Math.floorMod( epochMicros, MICROS_PER_SECOND ) / 1000L );
+        long epochDay = Math.floorDiv( epochSecond, SECONDS_PER_DAY );
+        int secondOfDay = ( int ) Math.floorMod( epochSecond, SECONDS_PER_DAY );
+
+        // Convert the epoch day to a year, month and day. This is the
+        // algorithm used by java.time.LocalDate.ofEpochDay()
+        long zeroDay = epochDay + DAYS_0000_TO_1970 - 60L;
+        long adjust = 0L;
+
+        if ( zeroDay < 0L )
+        {
+            long adjustCycles = ( zeroDay + 1L ) / DAYS_PER_CYCLE - 1L;
+            adjust = adjustCycles * 400L;
+            zeroDay += -adjustCycles * DAYS_PER_CYCLE;
+        }
+
+        long yearEst = ( 400L * zeroDay + 591L ) / DAYS_PER_CYCLE;
+        long doyEst = zeroDay - ( 365L * yearEst + yearEst / 4L - yearEst / 100L + yearEst / 400L );
+
+        if ( doyEst < 0L )
+        {
+            yearEst--;
+            doyEst = zeroDay - ( 365L * yearEst + yearEst / 4L - yearEst / 100L + yearEst / 400L );
+        }
+
+        yearEst += adjust;
+        int marchDoy0 = ( int ) doyEst;
+        int marchMonth0 = ( marchDoy0 * 5 + 2 ) / 153;
+        int month = ( marchMonth0 + 2 ) % 12 + 1;
+        int day = marchDoy0 - ( marchMonth0 * 306 + 5 ) / 10 + 1;
+        int year = ( int ) ( yearEst + marchMonth0 / 10 );
+
+        char[] result = new char[19];
+
+        result[0] = ( char ) ( ( year / 1000 ) % 10 + '0' );
+        result[1] = ( char ) ( ( year / 100 ) % 10 + '0' );
+        result[2] = ( char ) ( ( year / 10 ) % 10 + '0' );
+        result[3] = ( char ) ( year % 10 + '0' );
+        writeTwoDigits( result, 4, month );
+        writeTwoDigits( result, 6, day );
+        writeTwoDigits( result, 8, secondOfDay / 3600 );
+        writeTwoDigits( result, 10, ( secondOfDay / 60 ) % 60 );
+        writeTwoDigits( result, 12, secondOfDay % 60 );
+        result[14] = '.';
+        result[15] = ( char ) ( millisecond / 100 + '0' );
+        writeTwoDigits( result, 16, millisecond % 100 );
+        result[18] = 'Z';
+
+        return new String( result );
+    }
+
+
+    /**
+     * Compares two generalized time strings, without creating any object.
+     *
+     * @param generalizedTime1 The first generalized time
+     * @param generalizedTime2 The second generalized time
+     * @return a negative integer, zero, or a positive integer as the first time
+     *      is before, equal to, or after the second time.
+     * @throws ParseException if one of the generalized time can't be parsed.
+     */
+    public static int compare( String generalizedTime1, String generalizedTime2 ) throws ParseException
+    {
+        return Long.compare( parseEpochMicros( generalizedTime1 ), parseEpochMicros( generalizedTime2 ) );
+    }
+
+
+    /**
+     * Parses a number of digits in a String.
+     *
+     * @return The parsed number, or -1 if one of the chars is not a digit
+     */
+    private static int parseDigits( String value, int start, int nbDigits )
+    {
+        int result = 0;
+
+        for ( int i = start; i < start + nbDigits; i++ )
+        {
+            char c = value.charAt( i );
+
+            if ( !Chars.isDigit( c ) )
+            {
+                return -1;
+            }
+
+            result = result * 10 + ( c - '0' );
+        }
+
+        return result;
+    }
+
+
+    private static void writeTwoDigits( char[] buffer, int pos, int value )
+    {
+        buffer[pos] = ( char ) ( value / 10 + '0' );
+        buffer[pos + 1] = ( char ) ( value % 10 + '0' );
+    }
+
+
+    /**
+     * Computes the epoch day of a date. This is the algorithm used by
+     * java.time.LocalDate.toEpochDay()
+     */
+    private static long toEpochDay( int year, int month, int day )
+    {
+        long y = year;
+        long total = 365L * y;
+
+        total += ( y + 3L ) / 4L - ( y + 99L ) / 100L + ( y + 399L ) / 400L;
+        total += ( 367L * month - 362L ) / 12L;
+        total += day - 1L;
+
+        if ( month > 2 )
+        {
+            total--;
+
+            if ( !Year.isLeap( year ) )
+            {
+                total--;
+            }
+        }
+
+        return total - DAYS_0000_TO_1970;
+    }
+
+
     /**
      * Get a Dat einstance from a given String
      *
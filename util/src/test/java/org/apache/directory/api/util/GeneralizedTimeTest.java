@@ -39,6 +39,7 @@ import java.util.TimeZone;
 
 import org.apache.directory.api.util.GeneralizedTime.Format;
 import org.apache.directory.api.util.GeneralizedTime.TimeZoneFormat;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.parallel.Execution;
 import org.junit.jupiter.api.parallel.ExecutionMode;
@@ -1230,4 +1231,196 @@ public class GeneralizedTimeTest
         assertThat( larger.getDate(), is( equalTo( format.parse( "01/01/2000 00:00:00.900 GMT" ) ) ) );
         
     }
+
+
+    /**
+     * Check that the allocation free parser gives the same time as the Calendar based one
+     */
+    @Test
+    public void testParseEpochMicros() throws ParseException
+    {
+        String[] times = new String[]
+            {
+                "20080102121314Z",
+                "20080102121314.987Z",
+                "20080102121314,987654Z",
+                "200801021213.5Z",
+                "2008010212.25Z",
+                "2008010212Z",
+                "20080102121314+0530",
+                "20080102121314-08",
+                "20000229235959.999-2359",
+                "19500101000000Z",
+                "99991231235959Z"
+            };
+
+        for ( String time : times )
+        {
+            assertEquals( new GeneralizedTime( time ).getTime(),
+                Math.floorDiv( GeneralizedTime.parseEpochMicros( time ), 1000L ), time );
+        }
+
+        assertEquals( 0L, GeneralizedTime.parseEpochMicros( "19700101000000Z" ) );
+        assertEquals( 123456L, GeneralizedTime.parseEpochMicros( "19700101000000.1234567Z" ) );
+        assertEquals( 3_600_000_000L, GeneralizedTime.parseEpochMicros( "19700101020000+0100" ) );
+    }
+
+
+    /**
+     * Check that the allocation free parser rejects the same values as the Calendar based one
+     */
+    @Test
+    public void testParseEpochMicrosInvalid()
+    {
+        String[] times = new String[]
+            {
+                "2008",
+                "200801021213141",
+                "20080102121314",
+                "20080102121314.Z",
+                "20081302121314Z",
+                "20080230121314Z",
+                "20080102241314Z",
+                "20080102126014Z",
+                "20080102121360Z",
+                "20080102121314+1",
+                "20080102121314+2400",
+                "20080102121314Zabc",
+                "2008a102121314Z"
+            };
+
+        for ( String time : times )
+        {
+            try
+            {
+                GeneralizedTime.parseEpochMicros( time );
+                fail( time );
+            }
+            catch ( ParseException pe )
+            {
+                try
+                {
+                    new GeneralizedTime( time );
+                    fail( time );
+                }
+                catch ( ParseException pe2 )
+                {
+                    assertEquals( pe2.getMessage(), pe.getMessage() );
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void testFormatEpochMicros() throws ParseException
+    {
+        assertEquals( "19700101000000.000Z", GeneralizedTime.formatEpochMicros( 0L ) );
+        assertEquals( "19691231235959.999Z", GeneralizedTime.formatEpochMicros( -1L ) );
+        assertEquals( "20080102074314.987Z",
+            GeneralizedTime.formatEpochMicros( GeneralizedTime.parseEpochMicros( "20080102121314.987654+0430" ) ) );
+        assertEquals( "99991231235959.000Z",
+            GeneralizedTime.formatEpochMicros( GeneralizedTime.parseEpochMicros( "99991231235959Z" ) ) );
+        assertEquals( "00010101000000.000Z",
+            GeneralizedTime.formatEpochMicros( GeneralizedTime.parseEpochMicros( "00010101000000Z" ) ) );
+        assertEquals( "20000229120000.000Z",
+            GeneralizedTime.formatEpochMicros( GeneralizedTime.parseEpochMicros( "2000022912Z" ) ) );
+    }
+
+
+    @Test
+    public void testCompare() throws ParseException
+    {
+        assertEquals( 0, GeneralizedTime.compare( "20080102121314Z", "20080102131314+0100" ) );
+        assertTrue( GeneralizedTime.compare( "20080102121314Z", "20080102121314.001Z" ) < 0 );
+        assertTrue( GeneralizedTime.compare( "20080102121314Z", "20080102121314-01" ) < 0 );
+        assertTrue( GeneralizedTime.compare( "99991231235959Z", "20080102121314Z" ) > 0 );
+    }
+
+
+    /**
+     * Compare the Calendar based and the allocation free parsing, formatting and comparison.
+     * Enable it to get some numbers.
+     */
+    @Test
+    @Disabled
+    public void testGeneralizedTimePerf() throws ParseException
+    {
+        String[] times = new String[1000];
+
+        for ( int i = 0; i < times.length; i++ )
+        {
+            times[i] = String.format( Locale.ROOT, "2020%02d%02d%02d%02d%02d.%03dZ", 1 + i % 12, 1 + i % 28, i % 24,
+                i % 60, ( i * 7 ) % 60, i );
+        }
+
+        int nbLoops = 1000;
+        long result = 0L;
+
+        long t0 = System.currentTimeMillis();
+
+        for ( int i = 0; i < nbLoops; i++ )
+        {
+            for ( String time : times )
+            {
+                result += new GeneralizedTime( time ).getTime();
+            }
+        }
+
+        long t1 = System.currentTimeMillis();
+
+        for ( int i = 0; i < nbLoops; i++ )
+        {
+            for ( String time : times )
+            {
+                result += GeneralizedTime.parseEpochMicros( time );
+            }
+        }
+
+        long t2 = System.currentTimeMillis();
+
+        for ( int i = 0; i < nbLoops; i++ )
+        {
+            for ( String time : times )
+            {
+                result += new GeneralizedTime( time ).toGeneralizedTime().length();
+            }
+        }
+
+        long t3 = System.currentTimeMillis();
+
+        for ( int i = 0; i < nbLoops; i++ )
+        {
+            for ( String time : times )
+            {
+                result += GeneralizedTime.formatEpochMicros( GeneralizedTime.parseEpochMicros( time ) ).length();
+            }
+        }
+
+        long t4 = System.currentTimeMillis();
+
+        for ( int i = 0; i < nbLoops; i++ )
+        {
+            for ( int j = 1; j < times.length; j++ )
+            {
+                result += new GeneralizedTime( times[j - 1] ).compareTo( new GeneralizedTime( times[j] ) );
+            }
+        }
+
+        long t5 = System.currentTimeMillis();
+
+        for ( int i = 0; i < nbLoops; i++ )
+        {
+            for ( int j = 1; j < times.length; j++ )
+            {
+                result += GeneralizedTime.compare( times[j - 1], times[j] );
+            }
+        }
+
+        long t6 = System.currentTimeMillis();
+
+        System.out.println( "Parse : Calendar " + ( t1 - t0 ) + " ms, epoch " + ( t2 - t1 ) + " ms" );
+        System.out.println( "Parse + format : Calendar " + ( t3 - t2 ) + " ms, epoch " + ( t4 - t3 ) + " ms" );
+        System.out.println( "Compare : Calendar " + ( t5 - t4 ) + " ms, epoch " + ( t6 - t5 ) + " ms (" + result + ")" );
+    }
 }